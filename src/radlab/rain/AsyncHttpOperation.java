@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain;
+
+import java.io.IOException;
+
+import radlab.rain.util.AsyncHttpClient;
+import radlab.rain.util.AsyncHttpRequest;
+import radlab.rain.util.AsyncHttpResponse;
+import radlab.rain.util.HttpTransport;
+import radlab.rain.util.IAsyncHttpCallback;
+
+/**
+ * The AsyncHttpOperation class is the base for operations that can issue
+ * their request through the track's non-blocking AsyncHttpClient. When the
+ * operation runs asynchronously (open loop) and the track has an async
+ * client, <code>run()</code> only issues the request and returns, freeing the
+ * shared pool thread; the completion callback stops the clock and drops the
+ * results off at the scoreboard. Otherwise the operation runs synchronously
+ * through <code>execute()</code> as usual.
+ */
+public abstract class AsyncHttpOperation extends Operation implements IAsyncHttpCallback 
+{
+	/** When (System.nanoTime()) the asynchronous request was issued. */
+	private long _asyncStartNanos = 0;
+	
+	public AsyncHttpOperation( boolean interactive, IScoreboard scoreboard )
+	{
+		super( interactive, scoreboard );
+	}
+	
+	/**
+	 * Creates the request to issue asynchronously.
+	 * 
+	 * @return  The request, or null to run <code>execute()</code> instead.
+	 */
+	public abstract AsyncHttpRequest createAsyncRequest();
+	
+	/**
+	 * Checks the response to an asynchronous request. The default accepts
+	 * any status code below 400.
+	 * 
+	 * @param response      The response.
+	 * @throws Throwable    To mark the operation as failed.
+	 */
+	public void checkAsyncResponse( AsyncHttpResponse response ) throws Throwable
+	{
+		if( response.getStatusCode() >= 400 )
+			throw new IOException( "HTTP status code " + response.getStatusCode() + " for " + response.getRequest() );
+	}
+	
+	public void run()
+	{
+		AsyncHttpClient client = null;
+		if( this.getAsync() && this._generator != null && this._generator.getTrack() != null )
+			client = this._generator.getTrack().getAsyncHttpClient();
+		
+		AsyncHttpRequest request = null;
+		if( client != null )
+			request = this.createAsyncRequest();
+		
+		if( request == null || !client.supports( request ) )
+		{
+			super.run();
+			return;
+		}
+		
+		this.preExecute();
+		this._bytesReceived = 0;
+		this.setTimeStarted( System.currentTimeMillis() );
+		this.recordPoolWait();
+		this.markStarted();
+		this._asyncStartNanos = System.nanoTime();
+		client.execute( request, this );
+	}
+	
+	public void completed( AsyncHttpResponse response )
+	{
+		long bytesReceivedBefore = HttpTransport.getBytesReceivedByCurrentThread();
+		try
+		{
+			this.addBytesReceived( response.getBytesReceived() );
+			this.checkAsyncResponse( response );
+			this.setFailed( false );
+		}
+		catch( Throwable e )
+		{
+			this.setFailed( true );
+			this.setFailureReason( e );
+		}
+		finally
+		{
+			this.finishExecution( this._asyncStartNanos, bytesReceivedBefore );
+		}
+	}
+	
+	public void failed( AsyncHttpRequest request, Throwable cause )
+	{
+		long bytesReceivedBefore = HttpTransport.getBytesReceivedByCurrentThread();
+		this.setFailed( true );
+		this.setFailureReason( cause );
+		this.finishExecution( this._asyncStartNanos, bytesReceivedBefore );
+	}
+}
@@ -44,8 +44,13 @@ import java.util.concurrent.TimeUnit;
 
 import org.json.*;
 
+import radlab.rain.communication.AgentAssignmentMessage;
+import radlab.rain.communication.MessageHeader;
+import radlab.rain.communication.MetricsEndpoint;
 import radlab.rain.communication.RainPipe;
 import radlab.rain.util.ConfigUtil;
+import radlab.rain.util.HashedTimerWheel;
+import radlab.rain.util.ResultsExporter;
 
 /**
  * The Benchmark class provides a framework to initialize and run a benchmark
@@ -67,6 +72,27 @@ public class Benchmark
 	
 	public boolean waitingForStartSignal = false;
 	
+	// What a coordinator sees of the benchmark when it is one of several agents
+	public static final int WAITING 	= 0;
+	public static final int RUNNING 	= 1;
+	public static final int FINISHED 	= 2;
+	public volatile int state = WAITING;
+	
+	/**
+	 * When load generation starts (msecs), set by a coordinator so that all
+	 * of its agents start together. If it is not set, threads start issuing
+	 * requests timeToStart msecs after the benchmark starts.
+	 */
+	public volatile long startTime = -1;
+	
+	/** The users this benchmark runs when a coordinator split the load across several agents. */
+	private AgentAssignmentMessage _agentAssignment = null;
+	/** Where the scoreboards post their scorecards for the coordinator to collect. */
+	private ScorecardOutbox _scorecardOutbox = null;
+	
+	public synchronized AgentAssignmentMessage getAgentAssignment() { return this._agentAssignment; }
+	public synchronized ScorecardOutbox getScorecardOutbox() { return this._scorecardOutbox; }
+	
 	public static Benchmark getBenchmarkInstance()
 	{
 		if( BenchmarkInstance == null )
@@ -80,6 +106,48 @@ public class Benchmark
 		return BenchmarkScenario;
 	}
 	
+	/**
+	 * Makes this benchmark one of several agents run by a coordinator. The
+	 * assignment names the users of every track this benchmark runs, users
+	 * keep their global ids. Assignments are only taken before the run starts.
+	 * 
+	 * @param assignment    The users to run.
+	 * 
+	 * @return MessageHeader.OK if the assignment was taken, an error code otherwise.
+	 */
+	public synchronized int assign( AgentAssignmentMessage assignment )
+	{
+		if( this.state != WAITING || !this.waitingForStartSignal )
+		{
+			System.out.println( "[BENCHMARK] Rejecting agent assignment, the run has already started." );
+			return MessageHeader.ERROR_BAD_ASSIGNMENT;
+		}
+		
+		for( String trackName : assignment._userCount.keySet() )
+		{
+			ScenarioTrack track = BenchmarkScenario.getTracks().get( trackName );
+			if( track == null )
+			{
+				System.out.println( "[BENCHMARK] Rejecting agent assignment, unknown track: " + trackName );
+				return ScenarioTrack.ERROR_TRACK_NOT_FOUND;
+			}
+			
+			long firstUser = assignment.getFirstUser( trackName );
+			long userCount = assignment.getUserCount( trackName );
+			if( firstUser < 0 || userCount < 0 || firstUser + userCount > track.getMaxUsers() )
+			{
+				System.out.println( "[BENCHMARK] Rejecting agent assignment, users " + firstUser + "-" + ( firstUser + userCount - 1 ) + " out of range for track: " + trackName );
+				return MessageHeader.ERROR_BAD_ASSIGNMENT;
+			}
+		}
+		
+		System.out.println( "[BENCHMARK] Running as agent: " + assignment );
+		this._agentAssignment = assignment;
+		if( this._scorecardOutbox == null )
+			this._scorecardOutbox = new ScorecardOutbox();
+		return MessageHeader.OK;
+	}
+	
 	/**
 	 * Initializes the benchmark as specified by the provided scenario. This
 	 * includes creating the n-threads needed, giving them the scenario, and
@@ -90,6 +158,10 @@ public class Benchmark
 	public void start( Scenario scenario ) throws Exception
 	{
 		Thread.currentThread().setName( threadName );
+		this.state = RUNNING;
+		
+		AgentAssignmentMessage assignment = this.getAgentAssignment();
+		ScorecardOutbox scorecardOutbox = this.getScorecardOutbox();
 		
 		// Create a new thread pool -- either a fixed or an unbounded thread pool.
 		// (In practice, we should put a limit on the size of the thread pool).
@@ -99,15 +171,66 @@ public class Benchmark
 		ExecutorService pool = Executors.newFixedThreadPool( sharedThreads );
 		System.out.println( "[BENCHMARK] Creating " + sharedThreads + " shared threads." );
 				
+		// Optionally have all load generation threads wake up through a shared timer wheel.
+		HashedTimerWheel timerWheel = null;
+		RainConfig config = RainConfig.getInstance();
+		if( config._useTimerWheel )
+		{
+			timerWheel = new HashedTimerWheel( config._timerWheelTickNanos, config._timerWheelSpinNanos, HashedTimerWheel.DEFAULT_WHEEL_SIZE );
+			timerWheel.start();
+			System.out.println( "[BENCHMARK] Using timer wheel (tick: " + ( config._timerWheelTickNanos / 1000 ) + " usecs, spin: " + ( config._timerWheelSpinNanos / 1000 ) + " usecs)." );
+		}
+		
 		LinkedList<LoadGenerationStrategy> threads = new LinkedList<LoadGenerationStrategy>();
 		
 		// Calculate the run timings that will be used for all threads.
 		//     start     startS.S.              endS.S.     end
 		//     | ramp up |------ duration ------| ramp down |
-		long start = System.currentTimeMillis() + timeToStart;
+		long start = ( this.startTime > 0 ) ? this.startTime : System.currentTimeMillis() + timeToStart;
 		long startSteadyState = start + (scenario.getRampUp() * 1000);
 		long endSteadyState   = startSteadyState + (scenario.getDuration() * 1000);
 		
+		ResultsExporter resultsExporter = scenario.getResultsExporter();
+		if( resultsExporter != null )
+		{
+			System.out.println( "[BENCHMARK] Exporting " + resultsExporter.getFormat() + " results to: " + resultsExporter.getFilename() );
+			JSONObject run = new JSONObject();
+			run.put( "start", start );
+			run.put( "startSteadyState", startSteadyState );
+			run.put( "endSteadyState", endSteadyState );
+			run.put( "rampUp", scenario.getRampUp() );
+			run.put( "duration", scenario.getDuration() );
+			run.put( "rampDown", scenario.getRampDown() );
+			run.put( "tracks", new JSONArray( scenario.getTracks().keySet() ) );
+			resultsExporter.writeRecord( ResultsExporter.RUN_RECORD, "", "run", run );
+		}
+		
+		// Optionally expose live metrics over HTTP while the run is going
+		MetricsEndpoint metricsEndpoint = null;
+		if( config._metricsPort >= 0 )
+		{
+			metricsEndpoint = new MetricsEndpoint( config._metricsPort, scenario.getTracks(), pool );
+			try
+			{
+				metricsEndpoint.startEndpoint();
+				System.out.println( "[BENCHMARK] Live metrics endpoint listening on port: " + config._metricsPort + " (" + MetricsEndpoint.PROMETHEUS_PATH + ", " + MetricsEndpoint.JSON_PATH + ")" );
+			}
+			catch( IOException ioe )
+			{
+				System.out.println( "[BENCHMARK] Unable to start live metrics endpoint on port: " + config._metricsPort + ". Reason: " + ioe.toString() );
+				metricsEndpoint = null;
+			}
+		}
+		
+		// Watch the generator's own health, so we know whether it kept up with the load
+		GeneratorHealth generatorHealth = null;
+		if( config._generatorHealth )
+		{
+			generatorHealth = new GeneratorHealth( config._generatorHealthConfig );
+			generatorHealth.start();
+			System.out.println( "[BENCHMARK] Watching generator health every " + generatorHealth.getSampleIntervalMsecs() + " msecs." );
+		}
+		
 		System.out.println( "[BENCHMARK] Initializing " + scenario.getTracks().size() + " track(s)." );
 		for ( ScenarioTrack track : scenario.getTracks().values() )
 		{
@@ -119,6 +242,15 @@ public class Benchmark
 				scoreboard.initialize( startSteadyState, endSteadyState );
 				scoreboard.setMetricSnapshotInterval( (long) (track.getMetricSnapshotInterval() * 1000) );
 				scoreboard.setMetricWriter( track.getMetricWriter() );
+				scoreboard.setResultsExporter( resultsExporter );
+				// A capacity search measures its steps with the live metrics too
+				if( metricsEndpoint != null || track.getCapacitySearch() != null )
+					scoreboard.setLiveMetrics( new LiveMetrics( track.getName(), config._metricsWindowSecs ) );
+				scoreboard.setGeneratorHealth( generatorHealth );
+				scoreboard.setScorecardOutbox( scorecardOutbox );
+				// Controllers subscribed through the pipe get each interval's results pushed to them
+				if( config._usePipe )
+					scoreboard.setScorecardListener( RainPipe.getInstance().getScorecardListener() );
 				scoreboard.start();
 			}
 			track.setScoreboard(scoreboard);
@@ -130,9 +262,17 @@ public class Benchmark
 			// 2) whether to forge ahead
 						
 			long maxUsers = track.getMaxUsers();
-			System.out.println( "[BENCHMARK] Creating " + maxUsers + " threads for track." );
+			// As an agent only run our share of the users
+			long firstUser = 0;
+			long users = maxUsers;
+			if( assignment != null )
+			{
+				firstUser = assignment.getFirstUser( track.getName() );
+				users = assignment.getUserCount( track.getName() );
+			}
+			System.out.println( "[BENCHMARK] Creating " + users + " threads for track." );
 			// Create enough threads for maximum users needed by the scenario.
-			for( int i = 0; i < maxUsers; i++ )
+			for( int i = (int) firstUser; i < firstUser + users; i++ )
 			{
 				Generator generator = track.createWorkloadGenerator( track.getGeneratorClassName(), track.getGeneratorParams() );
 				generator.setScoreboard( scoreboard );
@@ -141,9 +281,11 @@ public class Benchmark
 				// Allow the load generation strategy to be configurable
 				LoadGenerationStrategy lgThread = track.createLoadGenerationStrategy( track.getLoadGenerationStrategyClassName(), track.getLoadGenerationStrategyParams(), generator, i );
 				generator.setName( lgThread.getName() );
+				generator.setUserId( i );
 				generator.initialize();
 				lgThread.setInteractive( track.getInteractive() );
 				lgThread.setSharedWorkPool( pool );
+				lgThread.setTimerWheel( timerWheel );
 				lgThread.setTimeStarted( start );
 				
 				threads.add( lgThread );
@@ -157,7 +299,7 @@ public class Benchmark
 		{
 			try
 			{
-				lgThread.join();
+				lgThread.waitForCompletion();
 			}
 			catch( InterruptedException ie )
 			{
@@ -173,6 +315,13 @@ public class Benchmark
 		System.out.println( "[BENCHMARK] Purging threads and shutting down... exiting!" );
 		threads.clear();
 		
+		if( timerWheel != null )
+			timerWheel.stopWheel();
+		
+		// The load is over, later samples would only show the wind down
+		if( generatorHealth != null )
+			generatorHealth.stopMonitor();
+		
 		// Set up for stats aggregation across tracks based on the generators used
 		TreeMap<String,Scorecard> aggStats = new TreeMap<String,Scorecard>();
 		
@@ -205,7 +354,27 @@ public class Benchmark
 			aggStats.put( generatorClassName, aggCard );
 			// Collect scoreboard results
 			// Collect object pool results
+			if( resultsExporter != null )
+				resultsExporter.writeRecord( ResultsExporter.OBJECT_POOL_RECORD, track.getName(), "objectPool", track.getObjectPool().toJSONObject() );
 			track.getObjectPool().shutdown();
+			// Close the shared HTTP connections
+			if( track.getHttpConnectionPool() != null )
+				track.getHttpConnectionPool().shutdown();
+			if( track.getAsyncHttpClient() != null )
+				track.getAsyncHttpClient().stopClient();
+		}
+		
+		// Every scorecard has been posted
+		if( scorecardOutbox != null )
+			scorecardOutbox.close();
+		this.state = FINISHED;
+		
+		if( generatorHealth != null )
+		{
+			generatorHealth.printStatistics( System.out );
+			System.out.println( "" );
+			if( resultsExporter != null )
+				resultsExporter.writeRecord( ResultsExporter.GENERATOR_HEALTH_RECORD, "", "generatorHealth", generatorHealth.toJSONObject() );
 		}
 		
 		// Check whether we're printing out aggregated stats
@@ -218,10 +387,19 @@ public class Benchmark
 			for( String generatorName : aggStats.keySet() )
 			{
 				Scorecard card = aggStats.get( generatorName );
+				// Export before printing, printing purges the percentile samples
+				if( resultsExporter != null )
+					resultsExporter.writeRecord( ResultsExporter.AGGREGATE_RECORD, card._trackName, card._name, card.toJSONObject() );
 				card.printStatistics( System.out );
 			}
 		}
 		
+		if( resultsExporter != null )
+			resultsExporter.close();
+		
+		if( metricsEndpoint != null )
+			metricsEndpoint.stopEndpoint();
+		
 		// Shutdown the shared threadpool.
 		pool.shutdown();
 		try
@@ -238,6 +416,14 @@ public class Benchmark
 			System.out.println( "[BENCHMARK] INTERRUPTED while waiting for shared threadpool to shutdown!" );
 		}
 		
+		// Give the coordinator a chance to collect the last scorecards before the pipe goes away
+		if( scorecardOutbox != null )
+		{
+			System.out.println( "[BENCHMARK] Waiting up to " + ( ScorecardOutbox.DEFAULT_COLLECT_TIMEOUT / 1000 ) + " seconds for the coordinator to collect the results." );
+			if( !scorecardOutbox.awaitCollected( ScorecardOutbox.DEFAULT_COLLECT_TIMEOUT ) )
+				System.out.println( "[BENCHMARK] Coordinator did not collect the results, last collected: " + scorecardOutbox.getCollectedSequence() + " of: " + scorecardOutbox.getLastSequence() );
+		}
+		
 		// Close down the pipe
 		if( RainConfig.getInstance()._usePipe )
 		{
@@ -248,6 +434,30 @@ public class Benchmark
 		System.out.println( "[BENCHMARK] finished!" );
 	}
 	
+	/**
+	 * Cleans up after a run that died. A coordinator would otherwise keep
+	 * waiting for our final scorecards (and the pipe threads would keep the
+	 * process alive), so tell it the run failed and shut down the pipe.
+	 */
+	private void abort() throws InterruptedException
+	{
+		this.state = FINISHED;
+		
+		ScorecardOutbox scorecardOutbox = this.getScorecardOutbox();
+		if( scorecardOutbox != null )
+		{
+			scorecardOutbox.fail();
+			System.out.println( "[BENCHMARK] Waiting up to " + ( ScorecardOutbox.DEFAULT_COLLECT_TIMEOUT / 1000 ) + " seconds for the coordinator to hear about it." );
+			scorecardOutbox.awaitCloseReported( ScorecardOutbox.DEFAULT_COLLECT_TIMEOUT );
+		}
+		
+		if( RainConfig.getInstance()._usePipe )
+		{
+			System.out.println( "[BENCHMARK] Shutting down the communication pipe!" );
+			RainPipe.getInstance().stop();
+		}
+	}
+	
 	/**
 	 * Runs the benchmark. The only required argument is the configuration
 	 * file path (e.g. config/rain.config.sample.json).
@@ -360,7 +570,7 @@ public class Benchmark
 		if( RainConfig.getInstance()._usePipe )
 		{
 			RainPipe pipe = RainPipe.getInstance();
-			System.out.println( "[BENCHMARK] Starting communication pipe! Using port: " + pipe.getPort() + " and running: " + pipe.getNumThreads() + " communication threads." );
+			System.out.println( "[BENCHMARK] Starting communication pipe! Using port: " + pipe.getPort() + ", protocol: " + pipe.getProtocol() + " and running: " + pipe.getNumThreads() + " communication threads." );
 			pipe.start();
 		}
 		
@@ -374,10 +584,35 @@ public class Benchmark
 			System.out.println( "[BENCHMARK] Checking for wakeup" );
 		}
 		
+		// A coordinator starts all of its agents at the same time, line up with it. The
+		// load schedule starts timeToStart msecs ahead of the threads, just like it does
+		// when we start right away.
+		if( benchmark.startTime > 0 )
+		{
+			long delay = benchmark.startTime - benchmark.timeToStart - System.currentTimeMillis();
+			if( delay > 0 )
+			{
+				System.out.println( "[BENCHMARK] Starting in " + delay + " msecs, at the time set by the coordinator." );
+				Thread.sleep( delay );
+			}
+			else System.out.println( "[BENCHMARK] Start time set by the coordinator is only " + ( delay + benchmark.timeToStart ) + " msecs away, the load schedule starts late." );
+		}
+		
 		System.out.println( "[BENCHMARK] Starting..." );
 		
 		scenario.start();
-		benchmark.start( scenario );
+		try
+		{
+			benchmark.start( scenario );
+		}
+		catch( Throwable e )
+		{
+			// Threads of the dead run (and the pipe) would keep us from exiting
+			System.out.println( "[BENCHMARK] Run failed! Reason: " + e.toString() );
+			e.printStackTrace();
+			benchmark.abort();
+			System.exit( 1 );
+		}
 		
 		scenario.end();
 	}
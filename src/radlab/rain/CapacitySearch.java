@@ -0,0 +1,510 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain;
+
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Closed-loop search for the most load a track can sustain under a latency
+ * and error-rate SLO. Instead of following the load schedule, the track's
+ * load manager runs one step after another: each step holds a load level
+ * (a number of users, or an open loop arrival rate) for a settle time, then
+ * measures throughput, errors and a latency percentile over the measure
+ * time using the track's live metrics. A step fails if it misses the SLO, or
+ * if its throughput has stopped growing with the load (a plateau), or it is
+ * repeated if the generator itself was saturated while measuring.<br />
+ * <br />
+ * The search grows the load geometrically until a step fails, then bisects
+ * between the highest passing and the lowest failing level until they are
+ * within the configured resolution. The track then holds the highest
+ * passing level for the rest of the run. Every step is kept so the report
+ * shows the measured capacity curve, not just the knee.<br />
+ * <br />
+ * The number of load generation threads is fixed when the run starts, so
+ * when searching over users the largest level is capped by the track's
+ * maximum users (use the track's maxUsers setting to allow more).
+ */
+public class CapacitySearch 
+{
+	public static String CFG_VARIABLE				= "variable";
+	public static String CFG_SLO_LATENCY			= "sloLatency"; // msecs
+	public static String CFG_SLO_PERCENTILE			= "sloPercentile";
+	public static String CFG_MAX_ERROR_RATE			= "maxErrorRate"; // Fraction of operations failed
+	public static String CFG_INITIAL				= "initial";
+	public static String CFG_MINIMUM				= "minimum";
+	public static String CFG_MAXIMUM				= "maximum";
+	public static String CFG_USERS					= "users"; // Users when searching over the arrival rate
+	public static String CFG_GROWTH_FACTOR			= "growthFactor";
+	public static String CFG_RESOLUTION				= "resolution"; // Fraction of the passing level
+	public static String CFG_PLATEAU_EFFICIENCY		= "plateauEfficiency";
+	public static String CFG_SETTLE_TIME			= "settleTime"; // secs
+	public static String CFG_MEASURE_TIME			= "measureTime"; // secs
+	public static String CFG_MAX_STEPS				= "maxSteps";
+	public static String CFG_MAX_SATURATED_RETRIES	= "maxSaturatedRetries";
+	public static String CFG_MIX					= "mix";
+	
+	/** What the search varies. */
+	public static String USERS_VARIABLE				= "users";
+	public static String ARRIVAL_RATE_VARIABLE		= "arrivalRate";
+	
+	public static double DEFAULT_SLO_PERCENTILE		= 99.0;
+	public static double DEFAULT_MAX_ERROR_RATE		= 0.01;
+	public static double DEFAULT_GROWTH_FACTOR		= 2.0;
+	public static double DEFAULT_RESOLUTION			= 0.05;
+	// Throughput has to grow by at least this fraction of the relative load increase
+	public static double DEFAULT_PLATEAU_EFFICIENCY	= 0.25;
+	public static long DEFAULT_SETTLE_TIME			= 5;
+	public static long DEFAULT_MEASURE_TIME			= 10;
+	public static int DEFAULT_MAX_STEPS				= 20;
+	public static int DEFAULT_MAX_SATURATED_RETRIES	= 2;
+	
+	/** Step verdicts. */
+	public static String PASS						= "pass";
+	public static String LATENCY					= "latency";
+	public static String ERRORS						= "errors";
+	public static String PLATEAU					= "plateau";
+	public static String SATURATED					= "saturated";
+	
+	/** Why the search stopped. */
+	public static String CONVERGED					= "converged";
+	public static String AT_MAXIMUM					= "passedAtMaximum";
+	public static String AT_MINIMUM					= "failedAtMinimum";
+	public static String GENERATOR_SATURATED		= "generatorSaturated";
+	public static String MAX_STEPS					= "maxSteps";
+	public static String RUN_ENDED					= "runEnded";
+	
+	/** The measurements of one step. */
+	public static class Step
+	{
+		public int _index					= 0;
+		public double _level				= 0.0;
+		public int _users					= 0;
+		public double _arrivalRate			= 0.0;
+		public double _measuredSecs			= 0.0;
+		public long _succeeded				= 0;
+		public long _failed					= 0;
+		public double _throughput			= 0.0; // Successful ops/sec
+		public double _errorRate			= 0.0; // Fraction of operations failed
+		public double _averageLatency		= 0.0; // msecs
+		public double _sloLatency			= 0.0; // The SLO percentile (msecs)
+		public double _saturatedSecs		= 0.0;
+		public String _verdict				= "";
+		
+		public boolean isPassed() { return this._verdict.equals( PASS ); }
+		
+		public JSONObject toJSONObject() throws JSONException
+		{
+			JSONObject step = new JSONObject();
+			step.put( "step", this._index );
+			step.put( "level", this._level );
+			step.put( "users", this._users );
+			step.put( "arrivalRate", this._arrivalRate );
+			step.put( "measuredSecs", this._measuredSecs );
+			step.put( "succeeded", this._succeeded );
+			step.put( "failed", this._failed );
+			step.put( "throughput", this._throughput );
+			step.put( "errorRate", this._errorRate );
+			step.put( "averageLatencyMsecs", this._averageLatency );
+			step.put( "sloLatencyMsecs", this._sloLatency );
+			step.put( "saturatedSecs", this._saturatedSecs );
+			step.put( "verdict", this._verdict );
+			return step;
+		}
+	}
+	
+	private ScenarioTrack _track					= null;
+	private String _variable						= USERS_VARIABLE;
+	private double _sloLatencyMsecs					= 0.0;
+	private double _sloPercentile					= DEFAULT_SLO_PERCENTILE;
+	private double _maxErrorRate					= DEFAULT_MAX_ERROR_RATE;
+	private double _initial							= 0.0;
+	private double _minimum							= 1.0;
+	private double _maximum							= 0.0;
+	private int _users								= 0;
+	private double _growthFactor					= DEFAULT_GROWTH_FACTOR;
+	private double _resolution						= DEFAULT_RESOLUTION;
+	private double _plateauEfficiency				= DEFAULT_PLATEAU_EFFICIENCY;
+	private long _settleTime						= DEFAULT_SETTLE_TIME;
+	private long _measureTime						= DEFAULT_MEASURE_TIME;
+	private int _maxSteps							= DEFAULT_MAX_STEPS;
+	private int _maxSaturatedRetries				= DEFAULT_MAX_SATURATED_RETRIES;
+	private String _mixName							= "";
+	// Settings the step profiles copy from the first profile of the schedule
+	private LoadProfile _template					= null;
+	
+	// Search state, only the track's load manager touches these
+	private ArrayList<Step> _steps					= new ArrayList<Step>();
+	private Step _highestPassed						= null;
+	private Step _lowestFailed						= null;
+	private Step _best								= null;
+	private double _retryLevel						= -1.0;
+	private int _saturatedRetries					= 0;
+	private String _finishedReason					= null;
+	
+	private NumberFormat _formatter					= new DecimalFormat( "#0.00" );
+	
+	public CapacitySearch( ScenarioTrack track, JSONObject config ) throws JSONException
+	{
+		this._track = track;
+		if( config.has( CFG_VARIABLE ) )
+			this._variable = config.getString( CFG_VARIABLE );
+		if( !this._variable.equals( USERS_VARIABLE ) && !this._variable.equals( ARRIVAL_RATE_VARIABLE ) )
+			throw new JSONException( "Unknown capacity search variable: " + this._variable + " (expected " + USERS_VARIABLE + " or " + ARRIVAL_RATE_VARIABLE + ")" );
+		
+		this._sloLatencyMsecs = config.getDouble( CFG_SLO_LATENCY );
+		if( config.has( CFG_SLO_PERCENTILE ) )
+			this._sloPercentile = config.getDouble( CFG_SLO_PERCENTILE );
+		if( config.has( CFG_MAX_ERROR_RATE ) )
+			this._maxErrorRate = config.getDouble( CFG_MAX_ERROR_RATE );
+		if( config.has( CFG_GROWTH_FACTOR ) )
+			this._growthFactor = config.getDouble( CFG_GROWTH_FACTOR );
+		if( this._growthFactor <= 1.0 )
+			throw new JSONException( "Capacity search growth factor must be > 1.0, got: " + this._growthFactor );
+		if( config.has( CFG_RESOLUTION ) )
+			this._resolution = config.getDouble( CFG_RESOLUTION );
+		if( config.has( CFG_PLATEAU_EFFICIENCY ) )
+			this._plateauEfficiency = config.getDouble( CFG_PLATEAU_EFFICIENCY );
+		if( config.has( CFG_SETTLE_TIME ) )
+			this._settleTime = config.getLong( CFG_SETTLE_TIME );
+		if( config.has( CFG_MEASURE_TIME ) )
+			this._measureTime = Math.max( 1, config.getLong( CFG_MEASURE_TIME ) );
+		if( config.has( CFG_MAX_STEPS ) )
+			this._maxSteps = Math.max( 1, config.getInt( CFG_MAX_STEPS ) );
+		if( config.has( CFG_MAX_SATURATED_RETRIES ) )
+			this._maxSaturatedRetries = config.getInt( CFG_MAX_SATURATED_RETRIES );
+		
+		this._template = track._loadSchedule.getFirst();
+		this._mixName = config.optString( CFG_MIX, this._template.getMixName() );
+		
+		if( this._variable.equals( USERS_VARIABLE ) )
+		{
+			// Can't run more users than there are threads
+			this._maximum = Math.min( config.optDouble( CFG_MAXIMUM, track.getMaxUsers() ), track.getMaxUsers() );
+			this._minimum = Math.max( 1.0, Math.floor( config.optDouble( CFG_MINIMUM, 1.0 ) ) );
+			this._initial = Math.floor( config.optDouble( CFG_INITIAL, Math.max( this._minimum, Math.floor( this._maximum / 32.0 ) ) ) );
+		}
+		else
+		{
+			this._maximum = config.getDouble( CFG_MAXIMUM );
+			this._minimum = config.optDouble( CFG_MINIMUM, 1.0 );
+			this._initial = config.optDouble( CFG_INITIAL, Math.max( this._minimum, this._maximum / 32.0 ) );
+			this._users = Math.min( config.optInt( CFG_USERS, track.getMaxUsers() ), track.getMaxUsers() );
+		}
+		if( this._minimum <= 0 || this._maximum < this._minimum )
+			throw new JSONException( "Bad capacity search range: " + this._minimum + " - " + this._maximum );
+		this._initial = Math.min( this._maximum, Math.max( this._minimum, this._initial ) );
+	}
+	
+	public String getVariable() { return this._variable; }
+	public long getSettleTime() { return this._settleTime * 1000; }
+	public long getMeasureTime() { return this._measureTime * 1000; }
+	public boolean isFinished() { return this._finishedReason != null; }
+	public String getFinishedReason() { return this._finishedReason; }
+	
+	/**
+	 * Returns the highest throughput step that met the SLO (null if none did).
+	 */
+	public Step getCapacity() { return this._best; }
+	
+	/**
+	 * Stops the search (if it is still going).
+	 */
+	public void finish( String reason )
+	{
+		if( this._finishedReason == null )
+			this._finishedReason = reason;
+	}
+	
+	/**
+	 * Returns the profile for the next step, or null once the search is done.
+	 */
+	public LoadProfile nextStep()
+	{
+		if( this.isFinished() )
+			return null;
+		if( this._steps.size() >= this._maxSteps )
+		{
+			this.finish( MAX_STEPS );
+			return null;
+		}
+		
+		double level = this.nextLevel();
+		if( level < 0 )
+			return null;
+		return this.createProfile( level, this._settleTime + this._measureTime, "search-" + this.formatLevel( level ) );
+	}
+	
+	/**
+	 * Returns the profile to hold for the rest of the run once the search is
+	 * done: the capacity found, or the minimum if nothing met the SLO.
+	 */
+	public LoadProfile createHoldProfile( long intervalSecs )
+	{
+		double level = ( this._best != null ) ? this._best._level : this._minimum;
+		return this.createProfile( level, intervalSecs, "capacity" );
+	}
+	
+	private double nextLevel()
+	{
+		// Repeat a step the generator could not drive properly
+		if( this._retryLevel > 0 )
+			return this._retryLevel;
+		
+		if( this._highestPassed == null && this._lowestFailed == null )
+			return this._initial;
+		
+		double level = 0.0;
+		if( this._lowestFailed == null )
+		{
+			// Still growing
+			double passed = this._highestPassed._level;
+			if( passed >= this._maximum )
+			{
+				this.finish( AT_MAXIMUM );
+				return -1;
+			}
+			level = Math.min( this._maximum, this.round( passed * this._growthFactor, passed ) );
+		}
+		else if( this._highestPassed == null )
+		{
+			// Even the first step failed, back off
+			double failed = this._lowestFailed._level;
+			if( failed <= this._minimum )
+			{
+				this.finish( AT_MINIMUM );
+				return -1;
+			}
+			level = Math.max( this._minimum, this.round( failed / this._growthFactor, failed ) );
+		}
+		else
+		{
+			// Bisect between the highest passing and the lowest failing level
+			double passed = this._highestPassed._level;
+			double failed = this._lowestFailed._level;
+			double unit = this._variable.equals( USERS_VARIABLE ) ? 1.0 : 0.0;
+			if( failed - passed <= Math.max( unit, passed * this._resolution ) )
+			{
+				this.finish( CONVERGED );
+				return -1;
+			}
+			level = this.round( ( passed + failed ) / 2.0, passed );
+			if( level <= passed || level >= failed )
+			{
+				this.finish( CONVERGED );
+				return -1;
+			}
+		}
+		return level;
+	}
+	
+	// Users are whole, make sure a change in level actually changes the load
+	private double round( double level, double from )
+	{
+		if( !this._variable.equals( USERS_VARIABLE ) )
+			return level;
+		
+		double rounded = Math.round( level );
+		if( rounded == from )
+			rounded = ( level > from ) ? from + 1 : from - 1;
+		return rounded;
+	}
+	
+	private LoadProfile createProfile( double level, long intervalSecs, String name )
+	{
+		int users = this._variable.equals( USERS_VARIABLE ) ? (int) level : this._users;
+		LoadProfile profile = new LoadProfile( intervalSecs, users, this._mixName, 0, name );
+		profile.setOpenLoopMaxOpsPerSec( this._template.getOpenLoopMaxOpsPerSec() );
+		profile.setArrivalProcess( this._template.getArrivalProcess() );
+		profile.setArrivalRate( this._variable.equals( ARRIVAL_RATE_VARIABLE ) ? level : this._template.getArrivalRate() );
+		return profile;
+	}
+	
+	private double levelOf( LoadProfile profile )
+	{
+		return this._variable.equals( USERS_VARIABLE ) ? profile.getNumberOfUsers() : profile.getArrivalRate();
+	}
+	
+	private String formatLevel( double level )
+	{
+		if( this._variable.equals( USERS_VARIABLE ) )
+			return ( (long) level ) + "u";
+		return this._formatter.format( level ) + "ops";
+	}
+	
+	/**
+	 * Judges a step from the track's metrics between two marks.
+	 * 
+	 * @param profile         The profile the step ran.
+	 * @param from            Live metrics at the start of the measurement.
+	 * @param to              Live metrics at the end of the measurement.
+	 * @param saturatedSecs   How long the generator was saturated while measuring.
+	 * @return                The step.
+	 */
+	public Step recordStep( LoadProfile profile, LiveMetrics.Mark from, LiveMetrics.Mark to, double saturatedSecs )
+	{
+		LiveMetrics.OperationSnapshot measured = LiveMetrics.between( from, to );
+		Step step = new Step();
+		step._index = this._steps.size() + 1;
+		step._level = this.levelOf( profile );
+		step._users = profile.getNumberOfUsers();
+		step._arrivalRate = profile.getArrivalRate();
+		step._measuredSecs = measured.windowSecs;
+		step._succeeded = measured.succeeded;
+		step._failed = measured.failed;
+		step._throughput = measured.throughput;
+		long completed = measured.succeeded + measured.failed;
+		step._errorRate = ( completed > 0 ) ? (double) measured.failed / (double) completed : 1.0;
+		step._averageLatency = measured.averageLatency / 1000000.0;
+		step._sloLatency = LiveMetrics.getPercentileLatency( from, to, this._sloPercentile ) / 1000000.0;
+		step._saturatedSecs = saturatedSecs;
+		this._steps.add( step );
+		
+		// Numbers measured while the generator was the bottleneck say nothing about the target
+		if( saturatedSecs > 0 )
+		{
+			step._verdict = SATURATED;
+			this._saturatedRetries++;
+			if( this._saturatedRetries > this._maxSaturatedRetries )
+			{
+				this._retryLevel = -1.0;
+				this.finish( GENERATOR_SATURATED );
+			}
+			else this._retryLevel = step._level;
+			return step;
+		}
+		this._retryLevel = -1.0;
+		this._saturatedRetries = 0;
+		
+		if( completed == 0 || step._errorRate > this._maxErrorRate )
+			step._verdict = ERRORS;
+		else if( step._sloLatency > this._sloLatencyMsecs )
+			step._verdict = LATENCY;
+		else if( this.isPlateau( step ) )
+			step._verdict = PLATEAU;
+		else step._verdict = PASS;
+		
+		if( step.isPassed() )
+		{
+			if( this._highestPassed == null || step._level > this._highestPassed._level )
+				this._highestPassed = step;
+			if( this._best == null || step._throughput > this._best._throughput )
+				this._best = step;
+		}
+		else if( this._lowestFailed == null || step._level < this._lowestFailed._level )
+			this._lowestFailed = step;
+		
+		return step;
+	}
+	
+	/**
+	 * Did adding load (over the highest passing step) buy too little throughput?
+	 */
+	private boolean isPlateau( Step step )
+	{
+		Step passed = this._highestPassed;
+		if( passed == null || step._level <= passed._level || passed._throughput <= 0 )
+			return false;
+		
+		double loadGain = ( step._level / passed._level ) - 1.0;
+		double throughputGain = ( step._throughput / passed._throughput ) - 1.0;
+		return throughputGain < ( loadGain * this._plateauEfficiency );
+	}
+	
+	public String describeStep( Step step )
+	{
+		return "step " + step._index + " " + this._variable + ": " + this.formatLevel( step._level ) + " throughput: " + this._formatter.format( step._throughput ) + " ops/sec p" + this._formatter.format( this._sloPercentile ) + ": " + this._formatter.format( step._sloLatency ) + " ms errors: " + this._formatter.format( step._errorRate * 100.0 ) + "% -> " + step._verdict;
+	}
+	
+	// The steps ordered by level (retries keep their order)
+	private ArrayList<Step> getCurve()
+	{
+		ArrayList<Step> curve = new ArrayList<Step>( this._steps );
+		Collections.sort( curve, new Comparator<Step>()
+		{
+			public int compare( Step lhs, Step rhs )
+			{
+				if( lhs._level != rhs._level )
+					return ( lhs._level < rhs._level ) ? -1 : 1;
+				return lhs._index - rhs._index;
+			}
+		} );
+		return curve;
+	}
+	
+	public void printReport( PrintStream out )
+	{
+		out.println( this + " Search finished                    : " + ( this.isFinished() ? this._finishedReason : "no" ) + " after " + this._steps.size() + " steps" );
+		out.println( this + " SLO                                : p" + this._formatter.format( this._sloPercentile ) + " <= " + this._formatter.format( this._sloLatencyMsecs ) + " ms, errors <= " + this._formatter.format( this._maxErrorRate * 100.0 ) + "%" );
+		if( this._best != null )
+			out.println( this + " Capacity                           : " + this.formatLevel( this._best._level ) + " at " + this._formatter.format( this._best._throughput ) + " ops/sec (p" + this._formatter.format( this._sloPercentile ) + " " + this._formatter.format( this._best._sloLatency ) + " ms)" );
+		else out.println( this + " Capacity                           : none, no step met the SLO" );
+		out.println( this + " Capacity curve (" + this._variable + ", ops/sec, avg ms, p" + this._formatter.format( this._sloPercentile ) + " ms, errors %, verdict):" );
+		for( Step step : this.getCurve() )
+			out.println( this + "   " + this.formatLevel( step._level ) + "\t" + this._formatter.format( step._throughput ) + "\t" + this._formatter.format( step._averageLatency ) + "\t" + this._formatter.format( step._sloLatency ) + "\t" + this._formatter.format( step._errorRate * 100.0 ) + "\t" + step._verdict );
+	}
+	
+	/**
+	 * Returns the capacity and the measured curve as a JSON object for the
+	 * results exporter.
+	 */
+	public JSONObject toJSONObject() throws JSONException
+	{
+		JSONObject search = new JSONObject();
+		search.put( "variable", this._variable );
+		search.put( "finished", this.isFinished() ? this._finishedReason : "no" );
+		search.put( "sloPercentile", this._sloPercentile );
+		search.put( "sloLatencyMsecs", this._sloLatencyMsecs );
+		search.put( "maxErrorRate", this._maxErrorRate );
+		if( this._best != null )
+			search.put( "capacity", this._best.toJSONObject() );
+		
+		JSONArray curve = new JSONArray();
+		for( Step step : this.getCurve() )
+			curve.put( step.toJSONObject() );
+		search.put( "curve", curve );
+		return search;
+	}
+	
+	public String toString()
+	{
+		return "[CAPACITY SEARCH TRACK: " + this._track.getName() + "]";
+	}
+}
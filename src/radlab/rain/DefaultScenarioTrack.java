@@ -38,6 +38,8 @@ import java.util.Calendar;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 
+import radlab.rain.util.ResultsExporter;
+
 /**
  * The DefaultScenarioTrack class is a generic implementation of the abstract
  * <code>ScenarioTrack</code> class that supports load profiles that specify
@@ -316,6 +318,10 @@ public class DefaultScenarioTrack extends ScenarioTrack
 		
 		public LoadProfile getNextLoadProfile()
 		{
+			// A capacity search decides the next profile itself, stay put until it does
+			if( this._track.getCapacitySearch() != null )
+				return this._currentProfile;
+			
 			// Compute the next load profile from what should be the current load schedule index
 			int nextLoadScheduleIndex = (this.loadScheduleIndex + 1) % this._track._loadSchedule.size();
 			return this._track._loadSchedule.get( nextLoadScheduleIndex );
@@ -336,8 +342,12 @@ public class DefaultScenarioTrack extends ScenarioTrack
 			
 			// Prepare the first load profile before ramp up so that we at
 			// lease have a load profile to use during the ramp up.
-			this._currentProfile = this._track._loadSchedule.get( loadScheduleIndex );
+			CapacitySearch search = this._track.getCapacitySearch();
+			if( search != null )
+				this._currentProfile = search.nextStep();
+			else this._currentProfile = this._track._loadSchedule.get( loadScheduleIndex );
 			this._track._currentLoadProfile = this._currentProfile;
+			this._track.updateRateLimiter( this._currentProfile );
 			this._track._currentLoadProfile.setTimeStarted( now + rampUp );
 			this._track._currentLoadProfile._activeCount++;
 			System.out.println( this + " ramping up for " + rampUp + "ms." );
@@ -359,6 +369,13 @@ public class DefaultScenarioTrack extends ScenarioTrack
 			cal.setTimeInMillis(now);
 			System.out.println( this + " current time: " + formatter.format(cal.getTime()) + " (" +  now + ") " + this._track._currentLoadProfile.toString() );
 			
+			if( search != null )
+			{
+				this.runCapacitySearch( search, now + rampUp + ( this._track.getDuration() * 1000 ) );
+				System.out.println( this + " finished!" );
+				return;
+			}
+			
 			while( !this.getDone() )
 			{
 				try
@@ -398,6 +415,7 @@ public class DefaultScenarioTrack extends ScenarioTrack
 							this._currentProfile = dynProfile;
 							// Update the track
 							this._track._currentLoadProfile = this._currentProfile;
+							this._track.updateRateLimiter( this._currentProfile );
 							this._track._currentLoadProfile._activeCount++;
 							this._track._currentLoadProfile.setTimeStarted( now );
 							System.out.println( this + " Dynamic load profile activated! Profile: " + dynProfile.toString() );
@@ -437,6 +455,111 @@ public class DefaultScenarioTrack extends ScenarioTrack
 			System.out.println( this + " finished!" );
 		}
 		
+		/**
+		 * Runs the capacity search: every step settles, gets measured and
+		 * judged, and its verdict picks the next step. Once the search is done
+		 * the track holds the capacity it found until the run ends.
+		 * 
+		 * @param search            The track's capacity search, its first step is already current.
+		 * @param steadyStateEnd    When the run stops generating load, no step is measured past this.
+		 */
+		private void runCapacitySearch( CapacitySearch search, long steadyStateEnd )
+		{
+			LiveMetrics liveMetrics = this._track.getScoreboard().getLiveMetrics();
+			GeneratorHealth generatorHealth = this._track.getScoreboard().getGeneratorHealth();
+			if( liveMetrics == null )
+			{
+				System.out.println( this + " No live metrics for the capacity search, holding the first step." );
+				search.finish( CapacitySearch.RUN_ENDED );
+			}
+			try
+			{
+				while( !this.getDone() && !search.isFinished() )
+				{
+					// Dynamic load profiles would skew the steps, the search owns the load
+					synchronized( this._dynamicLoadProfiles )
+					{
+						if( this._dynamicLoadProfiles.size() > 0 )
+						{
+							System.out.println( this + " Ignoring " + this._dynamicLoadProfiles.size() + " dynamic load profile(s) during capacity search." );
+							this._dynamicLoadProfiles.clear();
+						}
+					}
+					
+					// The first step started at the end of ramp up, the others right away
+					long settleUntil = this._currentProfile.getTimeStarted() + search.getSettleTime();
+					if( settleUntil + search.getMeasureTime() > steadyStateEnd )
+					{
+						System.out.println( this + " Not enough time left for another capacity search step." );
+						search.finish( CapacitySearch.RUN_ENDED );
+						break;
+					}
+					Thread.sleep( Math.max( 0, settleUntil - System.currentTimeMillis() ) );
+					LiveMetrics.Mark from = liveMetrics.mark( System.currentTimeMillis() );
+					Thread.sleep( search.getMeasureTime() );
+					LiveMetrics.Mark to = liveMetrics.mark( System.currentTimeMillis() );
+					
+					double saturatedSecs = ( generatorHealth != null ) ? generatorHealth.getSaturatedSecs( from.time, to.time ) : 0.0;
+					CapacitySearch.Step step = search.recordStep( this._currentProfile, from, to, saturatedSecs );
+					System.out.println( this + " Capacity search " + search.describeStep( step ) );
+					
+					LoadProfile next = search.nextStep();
+					if( next == null )
+						break;
+					this.activateProfile( next );
+				}
+				
+				// Hold the capacity we found for the rest of the run
+				search.printReport( System.out );
+				this.exportCapacity( search );
+				LoadProfile hold = search.createHoldProfile( this._track.getDuration() + this._track.getRampDown() );
+				this.activateProfile( hold );
+				System.out.println( this + " Capacity search done, holding: " + hold.toString() );
+				while( !this.getDone() )
+					Thread.sleep( hold.getInterval() );
+			}
+			catch( InterruptedException ie )
+			{
+				// The run ended before the search did, report what we have
+				if( !search.isFinished() )
+				{
+					search.finish( CapacitySearch.RUN_ENDED );
+					search.printReport( System.out );
+					this.exportCapacity( search );
+				}
+				this._done = true;
+			}
+		}
+		
+		private void activateProfile( LoadProfile profile )
+		{
+			long now = System.currentTimeMillis();
+			this._currentProfile = profile;
+			this._track._currentLoadProfile = this._currentProfile;
+			this._track.updateRateLimiter( this._currentProfile );
+			this._track._currentLoadProfile._activeCount++;
+			this._track._currentLoadProfile.setTimeStarted( now );
+			
+			cal.setTimeInMillis(now);
+			System.out.println( this + " current time: " + formatter.format(cal.getTime()) + " (" +  now + ") " + this._track._currentLoadProfile.toString() );
+		}
+		
+		private void exportCapacity( CapacitySearch search )
+		{
+			ResultsExporter resultsExporter = this._track.getScoreboard().getResultsExporter();
+			if( resultsExporter == null )
+				return;
+			
+			try
+			{
+				resultsExporter.writeRecord( ResultsExporter.CAPACITY_RECORD, this._track.getName(), "capacity", search.toJSONObject() );
+			}
+			catch( Exception e )
+			{
+				System.out.println( this + " Error exporting capacity search results. Reason: " + e.toString() );
+			}
+		}
+		
 		/**
 		 * Default way to advance the load schedule
 		 * @return	true if schedule advanced or false if at the end of the schedule
@@ -462,6 +585,7 @@ public class DefaultScenarioTrack extends ScenarioTrack
 				// Save the current loadprofile locally as well as in the track
 				this._currentProfile = this._track._loadSchedule.get( loadScheduleIndex );
 				this._track._currentLoadProfile = this._currentProfile;
+				this._track.updateRateLimiter( this._currentProfile );
 				this._track._currentLoadProfile._activeCount++;
 				this._track._currentLoadProfile.setTimeStarted( now );
 				
@@ -0,0 +1,547 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The EventLoopLoadGeneration class supports partly open loop load generation
+ * without dedicating a thread to each emulated user. Each instance is a
+ * single user whose think times, cycle times and inactive periods are timers
+ * on a small pool of carrier threads shared by all the users of a track, so a
+ * single JVM can drive a very large number of mostly idle users.<br />
+ * <br />
+ * The carrier threads (set by the "carrierThreads" load generation strategy
+ * parameter) never block on an operation. Synchronous operations are handed
+ * to a pool of blocking threads that grows with the number of synchronous
+ * operations in flight, and the user's next step is scheduled once its
+ * operation is done, so closed loop users still wait on their own operations
+ * and the number of them in flight is bounded by the number of users, not
+ * carriers. A blocking operation still needs a thread while it runs: users
+ * with short think times that mostly run synchronous operations need about a
+ * thread each. Asynchronous operations go to the shared work pool as usual.<br />
+ * <br />
+ * All users of a track share one trace log and one error log, so operations
+ * are tagged with the name of the event loop rather than the user.
+ */
+public class EventLoopLoadGeneration extends PartlyOpenLoopLoadGeneration 
+{
+	public static String CFG_CARRIER_THREADS = "carrierThreads";
+	
+	/** Default number of carrier threads per track. */
+	public static int DEFAULT_CARRIER_THREADS = Runtime.getRuntime().availableProcessors() * 4;
+	
+	/** The event loops currently running, one per track. */
+	private static Hashtable<String,EventLoop> EventLoops = new Hashtable<String,EventLoop>();
+	
+	/** Number of carrier threads requested by this user's configuration. */
+	protected int _carrierThreads = DEFAULT_CARRIER_THREADS;
+	
+	/** The event loop this user is scheduled on. */
+	protected EventLoop _eventLoop = null;
+	
+	/** Index of the last operation issued, carried from one step to the next. */
+	protected int _lastOperationIndex = NO_OPERATION_INDEX;
+	
+	/** The operation (and start time) of the think/cycle time we're waiting out, for reporting lateness. */
+	protected String _waitingAfter = null;
+	protected long _waitStarted = TIME_NOT_SET;
+	
+	/** When (as given by System.nanoTime()) the next step is due. */
+	protected long _nextStepDeadline = 0;
+	
+	/** Released once this user has quit. */
+	private CountDownLatch _finished = new CountDownLatch( 1 );
+	
+	/** The task that runs this user's next step. */
+	private Runnable _nextStep = new Runnable()
+	{
+		public void run()
+		{
+			EventLoopLoadGeneration.this.step();
+		}
+	};
+	
+	/** The synchronous operation this user is waiting on. */
+	private Operation _syncOperation = null;
+	
+	/** Runs the synchronous operation on a blocking thread. */
+	private Runnable _runSyncOperation = new Runnable()
+	{
+		public void run()
+		{
+			EventLoopLoadGeneration.this.completeSyncOperation();
+		}
+	};
+	
+	/** Hands the next step from the timer wheel to a carrier thread. */
+	private Runnable _handOffStep = new Runnable()
+	{
+		public void run()
+		{
+			EventLoopLoadGeneration.this._eventLoop._executor.execute( EventLoopLoadGeneration.this._nextStep );
+		}
+	};
+	
+	public EventLoopLoadGeneration( Generator generator, long id )
+	{
+		super( generator, id );
+	}
+	
+	public EventLoopLoadGeneration( Generator generator, long id, JSONObject params )
+	{
+		super( generator, id, params );
+		
+		try
+		{
+			if( params != null && params.has( CFG_CARRIER_THREADS ) )
+				this._carrierThreads = params.getInt( CFG_CARRIER_THREADS );
+		}
+		catch( JSONException e )
+		{
+			System.out.println( "[" + this.getName() + "] could not read event loop parameters. Reason: " + e.toString() );
+		}
+	}
+	
+	/**
+	 * Registers this user with its track's event loop and schedules its
+	 * first step for the start time. No thread is started.
+	 */
+	@Override
+	public synchronized void start()
+	{
+		this.resetStatistics();
+		this.loadTrackConfiguration( this._generator.getTrack() );
+		this._eventLoop = EventLoopLoadGeneration.register( this._generator, this._carrierThreads );
+		this._lgState = LGState.WaitingToBegin;
+		this.scheduleStep( this._timeStarted );
+	}
+	
+	/** Users are driven by their event loop, see <code>step</code>. */
+	@Override
+	public void run()
+	{
+	}
+	
+	@Override
+	public void waitForCompletion() throws InterruptedException
+	{
+		this._finished.await();
+	}
+	
+	/**
+	 * Runs one iteration of the load generation loop, i.e., issues the next
+	 * operation and schedules the following step after the think or cycle
+	 * time.
+	 */
+	protected void step()
+	{
+		try
+		{
+			if( this._waitingAfter != null )
+			{
+				long lateness = Math.max( 0, System.nanoTime() - this._nextStepDeadline );
+				this._generator.getScoreboard().dropOffSchedulingLateness( this._waitStarted, this._waitingAfter, lateness );
+				this._waitingAfter = null;
+			}
+			
+			long now = System.currentTimeMillis();
+			if( now > this._timeToQuit )
+			{
+				this.finish();
+				return;
+			}
+			
+			if ( !this.isActive() )
+			{
+				this._lgState = LGState.Inactive;
+				this.scheduleStep( now + INACTIVE_DURATION );
+				return;
+			}
+			
+			this._lgState = LGState.Active;
+			Operation nextOperation = this.nextRequest( this._lastOperationIndex );
+			// This will let generators do no-ops by returning null.
+			if( nextOperation == null )
+			{
+				this.scheduleStep( now );
+				return;
+			}
+			
+			// Update last operation index.
+			this._lastOperationIndex = nextOperation.getOperationIndex();
+			
+			// Traces are organized per event loop, not per user.
+			nextOperation.setGeneratedBy( this._eventLoop._name );
+			nextOperation.setGeneratorThreadID( this._id );
+			
+			// Decide whether to do things open or closed
+			double randomDouble = this._random.nextDouble();
+			if ( randomDouble <= this._openLoopProbability )
+			{
+				this.scheduleStep( this.issueAsyncOperation( nextOperation ) );
+			}
+			else
+			{
+				// The next step is scheduled once the operation is done
+				this.issueSyncOperation( nextOperation );
+			}
+		}
+		catch( Exception e )
+		{
+			this.die( e );
+		}
+	}
+	
+	private void die( Exception e )
+	{
+		System.out.println( "[" + this.getName() + "] load generation user died by exception! Reason: " + e.toString() );
+		e.printStackTrace();
+		this.finish();
+	}
+	
+	/**
+	 * Runs the provided operation asynchronously.
+	 * 
+	 * @param operation     The operation to run asynchronously.
+	 * @return              The time at which the cycle time is over.
+	 */
+	protected long issueAsyncOperation( Operation operation )
+	{
+		this._asynchOperations++;
+		
+		long cycleTime = this._generator.getCycleTime();
+		long now = System.currentTimeMillis();
+		long wakeUpTime = now + cycleTime;
+		
+		operation.setAsync( true );
+		this.doOperation( operation );
+		
+		if( wakeUpTime > this._timeToQuit )
+		{
+			if( now < this._startSteadyState )
+				wakeUpTime = this._startSteadyState;
+			else wakeUpTime = this._timeToQuit;
+			cycleTime = wakeUpTime - now;
+		}
+		
+		// Save the cycle time - if we're in the steady state
+		this._generator.getScoreboard().dropOffWaitTime( now, operation._operationName, cycleTime );
+		this._waitingAfter = operation._operationName;
+		this._waitStarted = now;
+		return wakeUpTime;
+	}
+	
+	/**
+	 * Hands the provided operation to the event loop's blocking threads, the
+	 * carrier thread is needed by other users.
+	 * 
+	 * @param operation     The operation to run synchronously.
+	 */
+	protected void issueSyncOperation( Operation operation )
+	{
+		this._synchOperations++;
+		
+		operation.setAsync( false );
+		// Waiting for a blocking thread counts against the operation
+		if( operation.getIntendedStartNanos() == Operation.NO_INTENDED_START )
+			operation.setIntendedStartNanos( System.nanoTime() );
+		this._syncOperation = operation;
+		this._eventLoop._blockingExecutor.execute( this._runSyncOperation );
+	}
+	
+	/**
+	 * Runs the synchronous operation on a blocking thread and schedules the
+	 * next step after the think time.
+	 */
+	protected void completeSyncOperation()
+	{
+		try
+		{
+			Operation operation = this._syncOperation;
+			this._syncOperation = null;
+			this.doOperation( operation );
+			this.scheduleStep( this.getThinkTimeWakeUp( operation ) );
+		}
+		catch( Exception e )
+		{
+			this.die( e );
+		}
+	}
+	
+	/**
+	 * Saves the think time after a synchronous operation.
+	 * 
+	 * @param operation     The operation that just finished.
+	 * @return              The time at which the think time is over.
+	 */
+	protected long getThinkTimeWakeUp( Operation operation )
+	{
+		long thinkTime = this._generator.getThinkTime();
+		long now = System.currentTimeMillis();
+		long wakeUpTime = now + thinkTime;
+		if( wakeUpTime > this._timeToQuit )
+		{
+			// If we're in the ramp up period then sleep until the start of
+			// steady state
+			if( now < this._startSteadyState )
+				wakeUpTime = this._startSteadyState;
+			else wakeUpTime = this._timeToQuit;
+			thinkTime = wakeUpTime - now;
+		}
+		
+		// Save the think time
+		this._generator.getScoreboard().dropOffWaitTime( now, operation._operationName, thinkTime );
+		this._waitingAfter = operation._operationName;
+		this._waitStarted = now;
+		return wakeUpTime;
+	}
+	
+	/**
+	 * Schedules the submission instead of sleeping through the rate limit
+	 * delays, the carrier thread is needed by other users.
+	 */
+	@Override
+	protected void submitAsyncOperation( final Operation operation, long delay )
+	{
+		if( !this._interactive )
+		{
+			this.releaseAsyncOperation( operation );
+			return;
+		}
+		
+		Runnable takeTrackToken = new Runnable()
+			{
+				public void run()
+				{
+					long trackDelay = EventLoopLoadGeneration.this.getTrackRateLimitDelay();
+					if( trackDelay <= 0 )
+					{
+						EventLoopLoadGeneration.this.releaseAsyncOperation( operation );
+						return;
+					}
+					
+					EventLoopLoadGeneration.this._eventLoop._executor.schedule( new Runnable()
+						{
+							public void run()
+							{
+								EventLoopLoadGeneration.this.releaseAsyncOperation( operation );
+							}
+						}, trackDelay, TimeUnit.NANOSECONDS );
+				}
+			};
+		
+		if( delay <= 0 )
+			takeTrackToken.run();
+		else this._eventLoop._executor.schedule( takeTrackToken, delay, TimeUnit.NANOSECONDS );
+	}
+	
+	/**
+	 * Schedules this user's next step, through the shared timer wheel if
+	 * there is one. If we are simply generating a trace there is no point in
+	 * waiting, so the step is scheduled right away.
+	 * 
+	 * @param time  The time to wake up.
+	 */
+	protected void scheduleStep( long time )
+	{
+		long delay = 0;
+		if( this._interactive )
+			delay = Math.max( 0, time - System.currentTimeMillis() );
+		this._nextStepDeadline = System.nanoTime() + ( delay * 1000000 );
+		
+		if( this._timerWheel != null && delay > 0 )
+			this._timerWheel.schedule( this._handOffStep, this._nextStepDeadline );
+		else this._eventLoop._executor.schedule( this._nextStep, delay, TimeUnit.MILLISECONDS );
+	}
+	
+	private void finish()
+	{
+		this._lgState = LGState.Inactive;
+		EventLoopLoadGeneration.deregister( this._eventLoop );
+		this._finished.countDown();
+	}
+	
+	/**
+	 * Returns the event loop for the generator's track, creating it (and its
+	 * shared log writers) for the first user.
+	 */
+	private static EventLoop register( Generator generator, int carrierThreads )
+	{
+		String trackName = generator.getTrack().getName();
+		synchronized( EventLoops )
+		{
+			EventLoop eventLoop = EventLoops.get( trackName );
+			if( eventLoop == null )
+			{
+				eventLoop = new EventLoop( trackName, carrierThreads, generator.getScoreboard() );
+				EventLoops.put( trackName, eventLoop );
+				System.out.println( "[" + eventLoop._name + "] Starting event loop with " + carrierThreads + " carrier threads." );
+			}
+			eventLoop._users++;
+			return eventLoop;
+		}
+	}
+	
+	/**
+	 * Shuts down the event loop once its last user has quit.
+	 */
+	private static void deregister( EventLoop eventLoop )
+	{
+		synchronized( EventLoops )
+		{
+			eventLoop._users--;
+			if( eventLoop._users > 0 )
+				return;
+			
+			EventLoops.remove( eventLoop._trackName );
+		}
+		
+		eventLoop.shutdown();
+	}
+	
+	/**
+	 * The EventLoop class holds the carrier threads and the trace logs shared
+	 * by the users of a track.
+	 */
+	protected static class EventLoop implements ThreadFactory
+	{
+		protected String _trackName;
+		protected String _name;
+		protected ScheduledThreadPoolExecutor _executor;
+		protected ExecutorService _blockingExecutor;
+		protected IScoreboard _scoreboard;
+		protected FileWriter _logWriter;
+		protected FileWriter _errorLogWriter;
+		protected int _users = 0;
+		private int _carriersCreated = 0;
+		private int _blockingThreadsCreated = 0;
+		
+		public EventLoop( String trackName, int carrierThreads, IScoreboard scoreboard )
+		{
+			this._trackName = trackName;
+			if( trackName.length() > 0 )
+				this._name = trackName + ".EventLoop";
+			else this._name = "NoTrack.EventLoop";
+			this._scoreboard = scoreboard;
+			this._executor = new ScheduledThreadPoolExecutor( Math.max( 1, carrierThreads ), this );
+			// Threads come and go with the synchronous operations in flight
+			this._blockingExecutor = Executors.newCachedThreadPool( new ThreadFactory()
+				{
+					public Thread newThread( Runnable r )
+					{
+						synchronized( EventLoop.this )
+						{
+							Thread blocking = new Thread( r, EventLoop.this._name + ".Blocking-" + EventLoop.this._blockingThreadsCreated++ );
+							blocking.setDaemon( true );
+							return blocking;
+						}
+					}
+				} );
+			
+			// The users of the loop share the track's binary trace log if there is one
+			if( scoreboard.getTraceLogWriter() != null )
+				return;
+			
+			try
+			{
+				this._logWriter = new FileWriter( new File( "thread-" + this._name + ".log" ) );
+				this._scoreboard.registerLogHandle( this._name, this._logWriter );
+				this._errorLogWriter = new FileWriter( new File( "error-thread-" + this._name + ".log" ) );
+				this._scoreboard.registerErrorLogHandle( this._name, this._errorLogWriter );
+			}
+			catch( IOException ioe )
+			{
+				System.out.println( "[" + this._name + "] could not create trace log. Reason: " + ioe.toString() );
+			}
+		}
+		
+		public synchronized Thread newThread( Runnable r )
+		{
+			Thread carrier = new Thread( r, this._name + ".Carrier-" + this._carriersCreated++ );
+			carrier.setDaemon( true );
+			return carrier;
+		}
+		
+		public void shutdown()
+		{
+			this._executor.shutdown();
+			this._blockingExecutor.shutdown();
+			
+			if( this._logWriter != null )
+			{
+				this._scoreboard.deRegisterLogHandle( this._name );
+				synchronized( this._logWriter )
+				{
+					try
+					{
+						this._logWriter.flush();
+						this._logWriter.close();
+					}
+					catch( IOException ioe )
+					{
+						System.out.println( "[" + this._name + "] failed to close trace log Reason: " + ioe.toString() );
+					}
+				}
+			}
+			
+			if( this._errorLogWriter != null )
+			{
+				this._scoreboard.deRegisterErrorLogHandle( this._name );
+				synchronized( this._errorLogWriter )
+				{
+					try
+					{
+						this._errorLogWriter.flush();
+						this._errorLogWriter.close();
+					}
+					catch( IOException ioe )
+					{
+						System.out.println( "[" + this._name + "] failed to close error trace log Reason: " + ioe.toString() );
+					}
+				}
+			}
+		}
+	}
+}
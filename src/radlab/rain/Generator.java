@@ -31,9 +31,13 @@
 
 package radlab.rain;
 
+import java.util.Random;
+
 import org.json.JSONObject;
 import org.json.JSONException;
 
+import radlab.rain.util.HttpTransport;
+
 /**
  * The Generator abstract class provides a default constructor, required
  * properties, and specifies the methods that must be implemented in order
@@ -59,6 +63,11 @@ public abstract class Generator
 	/** A reference to the latest load profile used */
 	protected LoadProfile _latestLoadProfile = null;
 	
+	/** The id of the user (load generation thread) driving this generator, -1 if unknown. */
+	protected long _userId = -1;
+	/** This generator's own random stream, created on first use. */
+	private Random _random = null;
+	
 	public String getName() { return this._name; }
 	public void setName( String val ) { this._name = val; }
 	
@@ -70,6 +79,9 @@ public abstract class Generator
 	public void setLatestLoadProfile( LoadProfile val ) { this._latestLoadProfile = val; }
 	public LoadProfile getLatestLoadProfile() { return this._latestLoadProfile; }
 	
+	public long getUserId() { return this._userId; }
+	public void setUserId( long val ) { this._userId = val; }
+	
 	/**
 	 * Creates a new Generator.
 	 * 
@@ -81,6 +93,59 @@ public abstract class Generator
 		//this.initialize(); // let the Benchmark call initialize
 	}
 	
+	/**
+	 * Creates the HttpTransport for this generator's user. If the track has a
+	 * shared connection pool the transport leases its connections from it.
+	 * 
+	 * @return  A new HttpTransport.
+	 */
+	public HttpTransport createHttpTransport()
+	{
+		if( this._loadTrack == null )
+			return new HttpTransport();
+		return new HttpTransport( this._loadTrack.getHttpConnectionPool() );
+	}
+	
+	/**
+	 * Returns this generator's random stream. The stream is derived from
+	 * the scenario's master seed, the track and the user id, so it must
+	 * only be used once the user id has been set (i.e. from initialize()
+	 * on, not from the constructor).
+	 * 
+	 * @return  A generator that is not shared with any other user.
+	 */
+	public Random getRandom()
+	{
+		if( this._random == null )
+			this._random = this.createRandom( RandomStreams.GENERATOR_STREAM );
+		return this._random;
+	}
+	
+	/**
+	 * Creates another named random stream for this generator's user, e.g.
+	 * for think times or key selection.
+	 * 
+	 * @param stream    The name of the stream.
+	 * @return          A new deterministic generator.
+	 */
+	public Random createRandom( String stream )
+	{
+		return RandomStreams.create( this._loadTrack, this._userId, stream );
+	}
+	
+	/**
+	 * Creates a named random stream from a workload specific seed rather
+	 * than the scenario's master seed. A negative seed (the usual "unset"
+	 * value of the workloads' rngSeed settings) falls back to the master
+	 * seed.
+	 */
+	public Random createRandom( long seed, String stream )
+	{
+		if( seed < 0 )
+			return this.createRandom( stream );
+		return RandomStreams.create( seed, this._loadTrack, this._userId, stream );
+	}
+	
 	public abstract long getThinkTime();
 	public void setMeanThinkTime( long val ){ this._thinkTime = val; }
 	public abstract long getCycleTime();
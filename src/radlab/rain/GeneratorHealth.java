@@ -0,0 +1,570 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import radlab.rain.util.StripedCounter;
+
+/**
+ * Watches the load generator's own health during a run, so a run where Rain
+ * (and not the system under test) was the bottleneck can be told apart. The
+ * load generation threads, the shared pool and the scoreboards report how
+ * long they spend in <code>Generator.nextRequest</code>, how long
+ * asynchronous operations wait in the shared pool, how late threads wake up
+ * from think/cycle times and how far behind the scoreboard workers are, using
+ * striped counters so the hot paths never block. Every sample interval this
+ * thread takes the differences, adds GC time and per-thread CPU time (from
+ * the MXBeans) and flags the interval as saturated if any of them is over its
+ * threshold. Scoreboards ask for the saturated time within each load profile
+ * activation and mark their interval scorecards with it.
+ */
+public class GeneratorHealth extends Thread
+{
+	public static String CFG_SAMPLE_INTERVAL			= "sampleInterval"; // Seconds
+	public static String CFG_MAX_CPU_UTILIZATION		= "maxCpuUtilization";
+	public static String CFG_MAX_THREAD_CPU_UTILIZATION	= "maxThreadCpuUtilization";
+	public static String CFG_MAX_GC_FRACTION			= "maxGcFraction";
+	public static String CFG_MAX_NEXT_REQUEST_MSECS		= "maxNextRequestMsecs";
+	public static String CFG_MAX_POOL_WAIT_MSECS		= "maxPoolWaitMsecs";
+	public static String CFG_MAX_OVERSLEEP_MSECS		= "maxOversleepMsecs";
+	public static String CFG_MAX_DROP_OFF_LAG_MSECS		= "maxDropOffLagMsecs";
+	
+	public static long DEFAULT_SAMPLE_INTERVAL_MSECS		= 1000;
+	// All the cores busy (most of it generating load, not waiting on the system under test)
+	public static double DEFAULT_MAX_CPU_UTILIZATION		= 0.90;
+	// A single thread pegged, e.g., the scoreboard worker or a busy event loop
+	public static double DEFAULT_MAX_THREAD_CPU_UTILIZATION	= 0.95;
+	public static double DEFAULT_MAX_GC_FRACTION			= 0.10;
+	public static double DEFAULT_MAX_NEXT_REQUEST_MSECS		= 5.0;
+	public static double DEFAULT_MAX_POOL_WAIT_MSECS		= 10.0;
+	public static double DEFAULT_MAX_OVERSLEEP_MSECS		= 10.0;
+	// The locked drop off queue is swapped once a second when it runs dry
+	public static double DEFAULT_MAX_DROP_OFF_LAG_MSECS		= 2000.0;
+	
+	/** Saturated samples kept for attributing saturation to intervals (a day's worth at the default interval). */
+	public static int MAX_SATURATED_SAMPLES				= 86400;
+	
+	public static String CPU_CAUSE				= "cpu";
+	public static String THREAD_CPU_CAUSE		= "threadCpu";
+	public static String GC_CAUSE				= "gc";
+	public static String NEXT_REQUEST_CAUSE		= "nextRequest";
+	public static String POOL_WAIT_CAUSE		= "poolWait";
+	public static String OVERSLEEP_CAUSE		= "oversleep";
+	public static String DROP_OFF_LAG_CAUSE		= "dropOffLag";
+	
+	/** What the generator looked like over one sample interval. */
+	public static class Sample
+	{
+		public long _time						= 0; // Start of the interval
+		public long _durationMsecs				= 0;
+		public double _cpuUtilization			= 0.0; // Fraction of all cores
+		public double _maxThreadCpuUtilization	= 0.0; // Fraction of one core
+		public String _busiestThread			= "";
+		public double _gcFraction				= 0.0;
+		public double _nextRequestMsecs			= 0.0; // Averages over the interval
+		public double _poolWaitMsecs			= 0.0;
+		public double _oversleepMsecs			= 0.0;
+		public double _dropOffLagMsecs			= 0.0;
+		public String _causes					= null; // Null unless saturated
+		
+		public boolean isSaturated() { return this._causes != null; }
+		
+		public JSONObject toJSONObject() throws JSONException
+		{
+			JSONObject sample = new JSONObject();
+			sample.put( "time", this._time );
+			sample.put( "durationMsecs", this._durationMsecs );
+			sample.put( "cpuUtilization", this._cpuUtilization );
+			sample.put( "maxThreadCpuUtilization", this._maxThreadCpuUtilization );
+			sample.put( "busiestThread", this._busiestThread );
+			sample.put( "gcFraction", this._gcFraction );
+			sample.put( "nextRequestMsecs", this._nextRequestMsecs );
+			sample.put( "poolWaitMsecs", this._poolWaitMsecs );
+			sample.put( "oversleepMsecs", this._oversleepMsecs );
+			sample.put( "dropOffLagMsecs", this._dropOffLagMsecs );
+			sample.put( "saturated", this.isSaturated() );
+			if( this._causes != null )
+				sample.put( "causes", this._causes );
+			return sample;
+		}
+		
+		public String toString()
+		{
+			NumberFormat formatter = new DecimalFormat( "#0.00" );
+			return "cpu: " + formatter.format( this._cpuUtilization * 100.0 ) + "%" + 
+				", busiest thread: " + this._busiestThread + " " + formatter.format( this._maxThreadCpuUtilization * 100.0 ) + "%" +
+				", gc: " + formatter.format( this._gcFraction * 100.0 ) + "%" +
+				", nextRequest: " + formatter.format( this._nextRequestMsecs ) + " ms" +
+				", pool wait: " + formatter.format( this._poolWaitMsecs ) + " ms" +
+				", oversleep: " + formatter.format( this._oversleepMsecs ) + " ms" +
+				", drop off lag: " + formatter.format( this._dropOffLagMsecs ) + " ms";
+		}
+	}
+	
+	private long _sampleIntervalMsecs				= DEFAULT_SAMPLE_INTERVAL_MSECS;
+	private double _maxCpuUtilization				= DEFAULT_MAX_CPU_UTILIZATION;
+	private double _maxThreadCpuUtilization			= DEFAULT_MAX_THREAD_CPU_UTILIZATION;
+	private double _maxGcFraction					= DEFAULT_MAX_GC_FRACTION;
+	private double _maxNextRequestMsecs				= DEFAULT_MAX_NEXT_REQUEST_MSECS;
+	private double _maxPoolWaitMsecs				= DEFAULT_MAX_POOL_WAIT_MSECS;
+	private double _maxOversleepMsecs				= DEFAULT_MAX_OVERSLEEP_MSECS;
+	private double _maxDropOffLagMsecs				= DEFAULT_MAX_DROP_OFF_LAG_MSECS;
+	
+	// Reported from the hot paths
+	private StripedCounter _nextRequests			= new StripedCounter();
+	private StripedCounter _nextRequestNanos		= new StripedCounter();
+	private StripedCounter _poolWaits				= new StripedCounter();
+	private StripedCounter _poolWaitMsecs			= new StripedCounter();
+	private StripedCounter _wakeups					= new StripedCounter();
+	private StripedCounter _oversleepNanos			= new StripedCounter();
+	private StripedCounter _dropOffs				= new StripedCounter();
+	private StripedCounter _dropOffLagMsecs			= new StripedCounter();
+	
+	// Sums at the last sample, only this thread touches these
+	private long _lastSampleTime					= 0;
+	private long _lastSampleNanos					= 0;
+	private long _lastNextRequests					= 0;
+	private long _lastNextRequestNanos				= 0;
+	private long _lastPoolWaits						= 0;
+	private long _lastPoolWaitMsecs					= 0;
+	private long _lastWakeups						= 0;
+	private long _lastOversleepNanos				= 0;
+	private long _lastDropOffs						= 0;
+	private long _lastDropOffLagMsecs				= 0;
+	private long _lastGcMsecs						= 0;
+	private HashMap<Long,Long> _lastThreadCpuNanos	= new HashMap<Long,Long>();
+	
+	// Run totals, written by this thread and read once it is stopped
+	private long _samples							= 0;
+	private long _saturatedSamples					= 0;
+	private double _totalCpuUtilization				= 0.0;
+	private Sample _worst							= new Sample();
+	private TreeMap<String,Long> _causeCounts		= new TreeMap<String,Long>();
+	
+	private volatile Sample _lastSample				= null;
+	private volatile boolean _saturated				= false;
+	private volatile boolean _done					= false;
+	
+	/** Start times of the saturated samples. */
+	private TreeMap<Long,String> _saturatedTimes	= new TreeMap<Long,String>();
+	
+	private ThreadMXBean _threadMXBean				= ManagementFactory.getThreadMXBean();
+	private boolean _threadCpuTimeSupported			= false;
+	private int _processors							= Runtime.getRuntime().availableProcessors();
+	
+	private NumberFormat _formatter = new DecimalFormat( "#0.0000" );
+	
+	public GeneratorHealth()
+	{
+		this.setName( "Generator-Health" );
+		this.setDaemon( true );
+		
+		this._threadCpuTimeSupported = this._threadMXBean.isThreadCpuTimeSupported();
+		if( this._threadCpuTimeSupported && !this._threadMXBean.isThreadCpuTimeEnabled() )
+			this._threadMXBean.setThreadCpuTimeEnabled( true );
+	}
+	
+	/**
+	 * @param config    Sample interval and thresholds, anything missing keeps its default (may be null).
+	 */
+	public GeneratorHealth( JSONObject config ) throws JSONException
+	{
+		this();
+		if( config == null )
+			return;
+		
+		if( config.has( CFG_SAMPLE_INTERVAL ) )
+			this._sampleIntervalMsecs = Math.max( 1, (long) ( config.getDouble( CFG_SAMPLE_INTERVAL ) * 1000 ) );
+		if( config.has( CFG_MAX_CPU_UTILIZATION ) )
+			this._maxCpuUtilization = config.getDouble( CFG_MAX_CPU_UTILIZATION );
+		if( config.has( CFG_MAX_THREAD_CPU_UTILIZATION ) )
+			this._maxThreadCpuUtilization = config.getDouble( CFG_MAX_THREAD_CPU_UTILIZATION );
+		if( config.has( CFG_MAX_GC_FRACTION ) )
+			this._maxGcFraction = config.getDouble( CFG_MAX_GC_FRACTION );
+		if( config.has( CFG_MAX_NEXT_REQUEST_MSECS ) )
+			this._maxNextRequestMsecs = config.getDouble( CFG_MAX_NEXT_REQUEST_MSECS );
+		if( config.has( CFG_MAX_POOL_WAIT_MSECS ) )
+			this._maxPoolWaitMsecs = config.getDouble( CFG_MAX_POOL_WAIT_MSECS );
+		if( config.has( CFG_MAX_OVERSLEEP_MSECS ) )
+			this._maxOversleepMsecs = config.getDouble( CFG_MAX_OVERSLEEP_MSECS );
+		if( config.has( CFG_MAX_DROP_OFF_LAG_MSECS ) )
+			this._maxDropOffLagMsecs = config.getDouble( CFG_MAX_DROP_OFF_LAG_MSECS );
+	}
+	
+	public long getSampleIntervalMsecs() { return this._sampleIntervalMsecs; }
+	public long getSamples() { return this._samples; }
+	public long getSaturatedSamples() { return this._saturatedSamples; }
+	
+	/** True if the last sample was saturated. */
+	public boolean isSaturated() { return this._saturated; }
+	
+	/** The most recent sample, null until the first interval is over. */
+	public Sample getLastSample() { return this._lastSample; }
+	
+	/**
+	 * Records the time a load generation thread spent in <code>Generator.nextRequest</code>.
+	 */
+	public void recordNextRequest( long nanos )
+	{
+		this._nextRequests.increment();
+		this._nextRequestNanos.add( nanos );
+	}
+	
+	/**
+	 * Records how long an asynchronous operation waited for a thread in the shared pool.
+	 */
+	public void recordPoolWait( long msecs )
+	{
+		this._poolWaits.increment();
+		this._poolWaitMsecs.add( Math.max( 0, msecs ) );
+	}
+	
+	/**
+	 * Records how late a load generation thread woke up from a think/cycle time.
+	 */
+	public void recordOversleep( long nanos )
+	{
+		this._wakeups.increment();
+		this._oversleepNanos.add( nanos );
+	}
+	
+	/**
+	 * Records how long a result sat in a scoreboard before the worker got to it.
+	 */
+	public void recordDropOffLag( long msecs )
+	{
+		this._dropOffs.increment();
+		this._dropOffLagMsecs.add( Math.max( 0, msecs ) );
+	}
+	
+	/**
+	 * Returns how long the generator was saturated between two times. Samples
+	 * that overlap the range count in full.
+	 * 
+	 * @param from  Start of the range (inclusive).
+	 * @param to    End of the range (exclusive).
+	 * @return      Saturated time in seconds.
+	 */
+	public double getSaturatedSecs( long from, long to )
+	{
+		if( to <= from )
+			return 0.0;
+		
+		synchronized( this._saturatedTimes )
+		{
+			int samples = this._saturatedTimes.subMap( from - this._sampleIntervalMsecs + 1, to ).size();
+			return ( samples * this._sampleIntervalMsecs ) / 1000.0;
+		}
+	}
+	
+	public void run()
+	{
+		this.takeSample();
+		while( !this._done )
+		{
+			try
+			{
+				Thread.sleep( this._sampleIntervalMsecs );
+			}
+			catch( InterruptedException ie )
+			{
+				// Stopping, the partial interval doesn't count
+				break;
+			}
+			this.takeSample();
+		}
+	}
+	
+	/**
+	 * Stops sampling and waits for this thread to exit.
+	 */
+	public void stopMonitor()
+	{
+		this._done = true;
+		this.interrupt();
+		try
+		{
+			this.join();
+		}
+		catch( InterruptedException ie )
+		{
+			System.out.println( this + " Interrupted waiting for the monitor thread to exit!" );
+		}
+	}
+	
+	private void takeSample()
+	{
+		long now = System.currentTimeMillis();
+		long nowNanos = System.nanoTime();
+		
+		long nextRequests = this._nextRequests.sum();
+		long nextRequestNanos = this._nextRequestNanos.sum();
+		long poolWaits = this._poolWaits.sum();
+		long poolWaitMsecs = this._poolWaitMsecs.sum();
+		long wakeups = this._wakeups.sum();
+		long oversleepNanos = this._oversleepNanos.sum();
+		long dropOffs = this._dropOffs.sum();
+		long dropOffLagMsecs = this._dropOffLagMsecs.sum();
+		
+		long gcMsecs = 0;
+		for( GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() )
+			gcMsecs += Math.max( 0, gc.getCollectionTime() );
+		
+		// Per-thread CPU since the last sample, threads that died in between are lost
+		HashMap<Long,Long> threadCpuNanos = new HashMap<Long,Long>();
+		long totalCpuNanos = 0;
+		long maxThreadCpuNanos = 0;
+		long busiestThreadId = -1;
+		if( this._threadCpuTimeSupported )
+		{
+			for( long threadId : this._threadMXBean.getAllThreadIds() )
+			{
+				long cpuNanos = this._threadMXBean.getThreadCpuTime( threadId );
+				if( cpuNanos < 0 )
+					continue;
+				threadCpuNanos.put( threadId, cpuNanos );
+				Long lastCpuNanos = this._lastThreadCpuNanos.get( threadId );
+				long delta = cpuNanos - ( ( lastCpuNanos != null ) ? lastCpuNanos : 0 );
+				totalCpuNanos += delta;
+				if( delta > maxThreadCpuNanos )
+				{
+					maxThreadCpuNanos = delta;
+					busiestThreadId = threadId;
+				}
+			}
+		}
+		
+		if( this._lastSampleNanos > 0 )
+		{
+			long elapsedNanos = Math.max( 1, nowNanos - this._lastSampleNanos );
+			
+			Sample sample = new Sample();
+			sample._time = this._lastSampleTime;
+			sample._durationMsecs = now - this._lastSampleTime;
+			sample._cpuUtilization = (double) totalCpuNanos / ( (double) elapsedNanos * this._processors );
+			sample._maxThreadCpuUtilization = (double) maxThreadCpuNanos / (double) elapsedNanos;
+			if( busiestThreadId >= 0 )
+			{
+				ThreadInfo info = this._threadMXBean.getThreadInfo( busiestThreadId );
+				if( info != null )
+					sample._busiestThread = info.getThreadName();
+			}
+			sample._gcFraction = (double) ( gcMsecs - this._lastGcMsecs ) * 1000000.0 / (double) elapsedNanos;
+			sample._nextRequestMsecs = average( nextRequestNanos - this._lastNextRequestNanos, nextRequests - this._lastNextRequests ) / 1000000.0;
+			sample._poolWaitMsecs = average( poolWaitMsecs - this._lastPoolWaitMsecs, poolWaits - this._lastPoolWaits );
+			sample._oversleepMsecs = average( oversleepNanos - this._lastOversleepNanos, wakeups - this._lastWakeups ) / 1000000.0;
+			sample._dropOffLagMsecs = average( dropOffLagMsecs - this._lastDropOffLagMsecs, dropOffs - this._lastDropOffs );
+			sample._causes = this.checkThresholds( sample );
+			
+			this.accept( sample );
+		}
+		
+		this._lastSampleTime = now;
+		this._lastSampleNanos = nowNanos;
+		this._lastNextRequests = nextRequests;
+		this._lastNextRequestNanos = nextRequestNanos;
+		this._lastPoolWaits = poolWaits;
+		this._lastPoolWaitMsecs = poolWaitMsecs;
+		this._lastWakeups = wakeups;
+		this._lastOversleepNanos = oversleepNanos;
+		this._lastDropOffs = dropOffs;
+		this._lastDropOffLagMsecs = dropOffLagMsecs;
+		this._lastGcMsecs = gcMsecs;
+		this._lastThreadCpuNanos = threadCpuNanos;
+	}
+	
+	private static double average( long total, long count )
+	{
+		if( count <= 0 )
+			return 0.0;
+		return (double) total / (double) count;
+	}
+	
+	/**
+	 * @return  The thresholds the sample is over (comma separated), null if none.
+	 */
+	private String checkThresholds( Sample sample )
+	{
+		StringBuffer causes = new StringBuffer();
+		if( sample._cpuUtilization > this._maxCpuUtilization )
+			appendCause( causes, CPU_CAUSE );
+		if( sample._maxThreadCpuUtilization > this._maxThreadCpuUtilization )
+			appendCause( causes, THREAD_CPU_CAUSE );
+		if( sample._gcFraction > this._maxGcFraction )
+			appendCause( causes, GC_CAUSE );
+		if( sample._nextRequestMsecs > this._maxNextRequestMsecs )
+			appendCause( causes, NEXT_REQUEST_CAUSE );
+		if( sample._poolWaitMsecs > this._maxPoolWaitMsecs )
+			appendCause( causes, POOL_WAIT_CAUSE );
+		if( sample._oversleepMsecs > this._maxOversleepMsecs )
+			appendCause( causes, OVERSLEEP_CAUSE );
+		if( sample._dropOffLagMsecs > this._maxDropOffLagMsecs )
+			appendCause( causes, DROP_OFF_LAG_CAUSE );
+		
+		if( causes.length() == 0 )
+			return null;
+		return causes.toString();
+	}
+	
+	private static void appendCause( StringBuffer causes, String cause )
+	{
+		if( causes.length() > 0 )
+			causes.append( "," );
+		causes.append( cause );
+	}
+	
+	private void accept( Sample sample )
+	{
+		this._samples++;
+		this._totalCpuUtilization += sample._cpuUtilization;
+		if( sample._cpuUtilization > this._worst._cpuUtilization )
+			this._worst._cpuUtilization = sample._cpuUtilization;
+		if( sample._maxThreadCpuUtilization > this._worst._maxThreadCpuUtilization )
+		{
+			this._worst._maxThreadCpuUtilization = sample._maxThreadCpuUtilization;
+			this._worst._busiestThread = sample._busiestThread;
+		}
+		if( sample._gcFraction > this._worst._gcFraction )
+			this._worst._gcFraction = sample._gcFraction;
+		if( sample._nextRequestMsecs > this._worst._nextRequestMsecs )
+			this._worst._nextRequestMsecs = sample._nextRequestMsecs;
+		if( sample._poolWaitMsecs > this._worst._poolWaitMsecs )
+			this._worst._poolWaitMsecs = sample._poolWaitMsecs;
+		if( sample._oversleepMsecs > this._worst._oversleepMsecs )
+			this._worst._oversleepMsecs = sample._oversleepMsecs;
+		if( sample._dropOffLagMsecs > this._worst._dropOffLagMsecs )
+			this._worst._dropOffLagMsecs = sample._dropOffLagMsecs;
+		
+		if( sample.isSaturated() )
+		{
+			this._saturatedSamples++;
+			for( String cause : sample._causes.split( "," ) )
+			{
+				Long count = this._causeCounts.get( cause );
+				this._causeCounts.put( cause, ( count != null ) ? count + 1 : 1 );
+			}
+			
+			synchronized( this._saturatedTimes )
+			{
+				this._saturatedTimes.put( sample._time, sample._causes );
+				if( this._saturatedTimes.size() > MAX_SATURATED_SAMPLES )
+					this._saturatedTimes.remove( this._saturatedTimes.firstKey() );
+			}
+			
+			// Only say so when it starts, not every interval
+			if( !this._saturated )
+				System.out.println( this + " Generator saturated (" + sample._causes + ") - " + sample.toString() );
+		}
+		else if( this._saturated )
+			System.out.println( this + " Generator no longer saturated - " + sample.toString() );
+		
+		this._saturated = sample.isSaturated();
+		this._lastSample = sample;
+	}
+	
+	public void printStatistics( PrintStream out )
+	{
+		double overallNextRequestMsecs = average( this._nextRequestNanos.sum(), this._nextRequests.sum() ) / 1000000.0;
+		double overallPoolWaitMsecs = average( this._poolWaitMsecs.sum(), this._poolWaits.sum() );
+		double overallOversleepMsecs = average( this._oversleepNanos.sum(), this._wakeups.sum() ) / 1000000.0;
+		double overallDropOffLagMsecs = average( this._dropOffLagMsecs.sum(), this._dropOffs.sum() );
+		
+		StringBuffer causes = new StringBuffer();
+		for( Map.Entry<String,Long> entry : this._causeCounts.entrySet() )
+			appendCause( causes, entry.getKey() + "=" + entry.getValue() );
+		
+		out.println( this + " Samples                            : " + this._samples + " x " + this._sampleIntervalMsecs + " msecs" );
+		out.println( this + " Saturated samples                  : " + this._saturatedSamples + " " + this._formatter.format( ( this._samples > 0 ) ? ( (double) this._saturatedSamples / (double) this._samples ) * 100.0 : 0.0 ) + "%" );
+		if( causes.length() > 0 )
+			out.println( this + " Saturation causes                  : " + causes.toString() );
+		out.println( this + " Average CPU utilization (%)        : " + this._formatter.format( ( this._samples > 0 ) ? ( this._totalCpuUtilization / this._samples ) * 100.0 : 0.0 ) );
+		out.println( this + " Max CPU utilization (%)            : " + this._formatter.format( this._worst._cpuUtilization * 100.0 ) );
+		out.println( this + " Max thread CPU utilization (%)     : " + this._formatter.format( this._worst._maxThreadCpuUtilization * 100.0 ) + " (" + this._worst._busiestThread + ")" );
+		out.println( this + " Max GC time (%)                    : " + this._formatter.format( this._worst._gcFraction * 100.0 ) );
+		out.println( this + " Average/max nextRequest (ms)       : " + this._formatter.format( overallNextRequestMsecs ) + " / " + this._formatter.format( this._worst._nextRequestMsecs ) );
+		out.println( this + " Average/max shared pool wait (ms)  : " + this._formatter.format( overallPoolWaitMsecs ) + " / " + this._formatter.format( this._worst._poolWaitMsecs ) );
+		out.println( this + " Average/max oversleep (ms)         : " + this._formatter.format( overallOversleepMsecs ) + " / " + this._formatter.format( this._worst._oversleepMsecs ) );
+		out.println( this + " Average/max drop off lag (ms)      : " + this._formatter.format( overallDropOffLagMsecs ) + " / " + this._formatter.format( this._worst._dropOffLagMsecs ) );
+	}
+	
+	/**
+	 * Returns the run's totals and the worst sample interval as a JSON object
+	 * for the results exporter.
+	 */
+	public JSONObject toJSONObject() throws JSONException
+	{
+		JSONObject health = new JSONObject();
+		health.put( "sampleIntervalMsecs", this._sampleIntervalMsecs );
+		health.put( "samples", this._samples );
+		health.put( "saturatedSamples", this._saturatedSamples );
+		health.put( "averageCpuUtilization", ( this._samples > 0 ) ? this._totalCpuUtilization / this._samples : 0.0 );
+		health.put( "averageNextRequestMsecs", average( this._nextRequestNanos.sum(), this._nextRequests.sum() ) / 1000000.0 );
+		health.put( "averagePoolWaitMsecs", average( this._poolWaitMsecs.sum(), this._poolWaits.sum() ) );
+		health.put( "averageOversleepMsecs", average( this._oversleepNanos.sum(), this._wakeups.sum() ) / 1000000.0 );
+		health.put( "averageDropOffLagMsecs", average( this._dropOffLagMsecs.sum(), this._dropOffs.sum() ) );
+		health.put( "worst", this._worst.toJSONObject() );
+		
+		JSONObject causes = new JSONObject();
+		for( Map.Entry<String,Long> entry : this._causeCounts.entrySet() )
+			causes.put( entry.getKey(), entry.getValue().longValue() );
+		health.put( "causes", causes );
+		
+		JSONObject thresholds = new JSONObject();
+		thresholds.put( CFG_MAX_CPU_UTILIZATION, this._maxCpuUtilization );
+		thresholds.put( CFG_MAX_THREAD_CPU_UTILIZATION, this._maxThreadCpuUtilization );
+		thresholds.put( CFG_MAX_GC_FRACTION, this._maxGcFraction );
+		thresholds.put( CFG_MAX_NEXT_REQUEST_MSECS, this._maxNextRequestMsecs );
+		thresholds.put( CFG_MAX_POOL_WAIT_MSECS, this._maxPoolWaitMsecs );
+		thresholds.put( CFG_MAX_OVERSLEEP_MSECS, this._maxOversleepMsecs );
+		thresholds.put( CFG_MAX_DROP_OFF_LAG_MSECS, this._maxDropOffLagMsecs );
+		health.put( "thresholds", thresholds );
+		return health;
+	}
+	
+	public String toString()
+	{
+		return "[GENERATOR HEALTH]";
+	}
+}
@@ -0,0 +1,17 @@
+package radlab.rain;
+
+import radlab.rain.util.ReplayTrace;
+
+/**
+ * Generators that can turn a recorded request into an operation. The
+ * ReplayLoadGeneration strategy hands the next request of the trace to the
+ * generator right before asking it for the next operation.
+ */
+public interface IReplayGenerator 
+{
+	/**
+	 * Sets the request the next call to nextRequest() should return an
+	 * operation for. The entry is reused, copy anything you keep.
+	 */
+	void setReplayEntry( ReplayTrace.Entry entry );
+}
@@ -35,6 +35,8 @@ import java.io.FileWriter;
 import java.io.PrintStream;
 
 import radlab.rain.util.MetricWriter;
+import radlab.rain.util.ResultsExporter;
+import radlab.rain.util.TraceLogWriter;
 
 /**
  * The IScoreboard interface allows an implemented scoreboard to interface
@@ -101,6 +103,16 @@ public interface IScoreboard
 
 	void dropOffWaitTime( long time, String opName, long waitTime );
 	
+	/**
+	 * Receives how late a load generation thread woke up from the think or
+	 * cycle time that followed an operation.
+	 * 
+	 * @param time          The time at which the think/cycle time started.
+	 * @param opName        The operation that preceded the think/cycle time.
+	 * @param lateness      Actual minus intended wake time (in nanos).
+	 */
+	void dropOffSchedulingLateness( long time, String opName, long lateness );
+	
 	/**
 	 * Prints the statistics processed by this scoreboard.
 	 */
@@ -150,13 +162,102 @@ public interface IScoreboard
 	
 	long getMeanResponseTimeSamplingInterval();
 	void setMeanResponseTimeSamplingInterval( long val );
+	
+	/**
+	 * Selects how response times are kept for percentiles: Poisson sampling
+	 * of raw values ("poisson") or a log-linear histogram of every value
+	 * ("histogram").
+	 */
+	String getResponseTimeSampler();
+	void setResponseTimeSampler( String val );
+	
+	int getResponseTimeHistogramPrecision();
+	void setResponseTimeHistogramPrecision( int val );
+	
+	long getResponseTimeHistogramMaxValue();
+	void setResponseTimeHistogramMaxValue( long val );
 
 	String getTargetHost();
 	void setTargetHost( String val );
 	
 	Scorecard getFinalScorecard();
 	
+	/**
+	 * Selects how results are handed off to the scoreboard: a single locked
+	 * queue ("locked") or striped lock-free ring buffers ("striped"). Must be
+	 * set before <code>initialize</code> is called.
+	 */
+	String getDropOffQueueType();
+	void setDropOffQueueType( String val );
+	
+	int getDropOffQueueStripes();
+	void setDropOffQueueStripes( int val );
+	
+	int getDropOffQueueStripeCapacity();
+	void setDropOffQueueStripeCapacity( int val );
+	
+	/**
+	 * Returns the number of results dropped off but not yet processed.
+	 */
+	long getDropOffQueueDepth();
+	
 	MetricWriter getMetricWriter();
 	void setMetricWriter( MetricWriter val );
 	
+	/**
+	 * Structured results (interval, final) are also written to the results
+	 * exporter, if one is set.
+	 */
+	ResultsExporter getResultsExporter();
+	void setResultsExporter( ResultsExporter val );
+	
+	/**
+	 * Live (in-run) counters updated by operations as they start and finish,
+	 * null unless the metrics endpoint is enabled.
+	 */
+	LiveMetrics getLiveMetrics();
+	void setLiveMetrics( LiveMetrics val );
+	
+	/**
+	 * Monitor of the load generator's own health, shared by all the tracks
+	 * (null if it is turned off). Interval scorecards are marked with the
+	 * time it found the generator saturated.
+	 */
+	GeneratorHealth getGeneratorHealth();
+	void setGeneratorHealth( GeneratorHealth val );
+	
+	/**
+	 * Where copies of the scorecards are posted for a coordinator to collect
+	 * when this process is one of several agents (null otherwise).
+	 */
+	ScorecardOutbox getScorecardOutbox();
+	void setScorecardOutbox( ScorecardOutbox val );
+	
+	/**
+	 * Gets the results of every interval activation when it closes (null if
+	 * nobody is listening). Must be set before the scoreboard is started.
+	 */
+	IScorecardListener getScorecardListener();
+	void setScorecardListener( IScorecardListener val );
+	
+	/**
+	 * Width and maximum number of the time series buckets, a width of 0
+	 * turns the time series off. Must be set before <code>initialize</code>
+	 * is called.
+	 */
+	long getTimeSeriesBucketMsecs();
+	void setTimeSeriesBucketMsecs( long val );
+	
+	int getTimeSeriesMaxBuckets();
+	void setTimeSeriesMaxBuckets( int val );
+	
+	TimeSeries getTimeSeries();
+	
+	/**
+	 * Binary trace log writer for the track. If one is set, trace and error
+	 * records go to it instead of the registered per-thread log handles. Must
+	 * be set before <code>start</code> is called.
+	 */
+	TraceLogWriter getTraceLogWriter();
+	void setTraceLogWriter( TraceLogWriter val );
 }
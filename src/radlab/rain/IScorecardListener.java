@@ -0,0 +1,14 @@
+package radlab.rain;
+
+/**
+ * Gets the results of every interval activation of a track as soon as the
+ * activation closes, i.e., the results of just that activation rather than
+ * the running totals of the interval. Called from the scoreboard's worker
+ * thread, so implementations must hand the results off quickly. The
+ * scorecards passed in are only valid for the duration of the call.
+ */
+public interface IScorecardListener 
+{
+	void intervalClosed( Scorecard activationCard, int activation, long intervalStartTime );
+	void runFinished( Scorecard finalCard );
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package radlab.rain;
+
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import radlab.rain.util.ConcurrentLatencyHistogram;
+import radlab.rain.util.StripedCounter;
+
+/**
+ * Per-track counters for watching a run while it is going. Operations update
+ * them when they start and finish using striped, lock-free counters, so the
+ * hot path never blocks. Once a second <code>tick</code> takes a cumulative
+ * snapshot of every operation, rolling throughput and latency percentiles are
+ * the difference between the newest and the oldest snapshot kept.
+ */
+public class LiveMetrics 
+{
+	public static int DEFAULT_WINDOW_SECS = 10;
+	
+	/** Rolling view of an operation's metrics. Times are in nanos. */
+	public static class OperationSnapshot
+	{
+		public String operationName		= "";
+		public long started				= 0;
+		public long succeeded			= 0;
+		public long failed				= 0;
+		public long inFlight			= 0;
+		public double windowSecs		= 0.0;
+		public double throughput		= 0.0; // Successful ops/sec over the window
+		public double errorRate			= 0.0; // Failed ops/sec over the window
+		public double averageLatency	= 0.0;
+		public long p50Latency			= 0;
+		public long p90Latency			= 0;
+		public long p99Latency			= 0;
+		public long p999Latency			= 0;
+	}
+	
+	/** Cumulative totals of all of a track's operations at one point in time. */
+	public static class Mark
+	{
+		public long time				= 0; // msecs
+		public long started				= 0;
+		public long succeeded			= 0;
+		public long failed				= 0;
+		public long latencyNanos		= 0;
+		public long[] latencies			= new long[ConcurrentLatencyHistogram.BUCKETS];
+	}
+	
+	private static class OperationMetrics
+	{
+		StripedCounter started		= new StripedCounter();
+		StripedCounter succeeded	= new StripedCounter();
+		StripedCounter failed		= new StripedCounter();
+		StripedCounter latencyNanos	= new StripedCounter();
+		ConcurrentLatencyHistogram latencies = new ConcurrentLatencyHistogram();
+		
+		// Cumulative values at each tick, only the ticker thread writes these
+		long[] succeededHistory;
+		long[] failedHistory;
+		long[] latencyNanosHistory;
+		long[][] latencyHistory;
+		
+		OperationMetrics( int slots )
+		{
+			this.succeededHistory = new long[slots];
+			this.failedHistory = new long[slots];
+			this.latencyNanosHistory = new long[slots];
+			this.latencyHistory = new long[slots][ConcurrentLatencyHistogram.BUCKETS];
+		}
+	}
+	
+	private String _trackName = "";
+	private ConcurrentHashMap<String,OperationMetrics> _operations = new ConcurrentHashMap<String,OperationMetrics>();
+	// Ring of tick times, one slot more than the window so the window is full
+	private int _slots;
+	private long[] _tickTimes;
+	private long _ticks = 0;
+	
+	public LiveMetrics( String trackName )
+	{
+		this( trackName, DEFAULT_WINDOW_SECS );
+	}
+	
+	public LiveMetrics( String trackName, int windowSecs )
+	{
+		this._trackName = trackName;
+		this._slots = Math.max( 1, windowSecs ) + 1;
+		this._tickTimes = new long[this._slots];
+	}
+	
+	public String getTrackName() { return this._trackName; }
+	
+	private OperationMetrics getOperationMetrics( String opName )
+	{
+		OperationMetrics metrics = this._operations.get( opName );
+		if( metrics == null )
+		{
+			metrics = new OperationMetrics( this._slots );
+			OperationMetrics existing = this._operations.putIfAbsent( opName, metrics );
+			if( existing != null )
+				metrics = existing;
+		}
+		return metrics;
+	}
+	
+	public void operationStarted( String opName )
+	{
+		this.getOperationMetrics( opName ).started.increment();
+	}
+	
+	public void operationFinished( String opName, long latencyNanos, boolean failed )
+	{
+		OperationMetrics metrics = this.getOperationMetrics( opName );
+		if( failed )
+			metrics.failed.increment();
+		else
+		{
+			metrics.succeeded.increment();
+			metrics.latencyNanos.add( latencyNanos );
+			metrics.latencies.record( latencyNanos );
+		}
+	}
+	
+	/**
+	 * Takes a snapshot of the cumulative counters. Call this about once a
+	 * second from a single thread.
+	 * 
+	 * @param now   The current time (in msecs).
+	 */
+	public synchronized void tick( long now )
+	{
+		int slot = (int) ( this._ticks % this._slots );
+		this._tickTimes[slot] = now;
+		for( OperationMetrics metrics : this._operations.values() )
+		{
+			metrics.succeededHistory[slot] = metrics.succeeded.sum();
+			metrics.failedHistory[slot] = metrics.failed.sum();
+			metrics.latencyNanosHistory[slot] = metrics.latencyNanos.sum();
+			metrics.latencies.snapshot( metrics.latencyHistory[slot] );
+		}
+		this._ticks++;
+	}
+	
+	/**
+	 * Returns the rolling metrics of each operation as of the last tick.
+	 */
+	public synchronized TreeMap<String,OperationSnapshot> getSnapshots()
+	{
+		TreeMap<String,OperationSnapshot> snapshots = new TreeMap<String,OperationSnapshot>();
+		
+		int newest = (int) ( ( this._ticks - 1 ) % this._slots );
+		// The slot after the newest is the oldest once the ring has filled up
+		int oldest = ( this._ticks <= this._slots ) ? 0 : (int) ( this._ticks % this._slots );
+		double windowSecs = 0.0;
+		if( this._ticks > 1 )
+			windowSecs = ( this._tickTimes[newest] - this._tickTimes[oldest] ) / 1000.0;
+		
+		long[] latencies = new long[ConcurrentLatencyHistogram.BUCKETS];
+		for( String opName : this._operations.keySet() )
+		{
+			OperationMetrics metrics = this._operations.get( opName );
+			OperationSnapshot snapshot = new OperationSnapshot();
+			snapshot.operationName = opName;
+			snapshot.succeeded = metrics.succeeded.sum();
+			snapshot.failed = metrics.failed.sum();
+			snapshot.started = metrics.started.sum();
+			// Counters are read one after the other, don't report a negative count
+			snapshot.inFlight = Math.max( 0, snapshot.started - snapshot.succeeded - snapshot.failed );
+			snapshot.windowSecs = windowSecs;
+			
+			if( windowSecs > 0 )
+			{
+				long succeeded = metrics.succeededHistory[newest] - metrics.succeededHistory[oldest];
+				long failed = metrics.failedHistory[newest] - metrics.failedHistory[oldest];
+				snapshot.throughput = succeeded / windowSecs;
+				snapshot.errorRate = failed / windowSecs;
+				if( succeeded > 0 )
+					snapshot.averageLatency = ( metrics.latencyNanosHistory[newest] - metrics.latencyNanosHistory[oldest] ) / (double) succeeded;
+				
+				for( int i = 0; i < latencies.length; i++ )
+					latencies[i] = metrics.latencyHistory[newest][i] - metrics.latencyHistory[oldest][i];
+				snapshot.p50Latency = ConcurrentLatencyHistogram.getPercentile( latencies, 50 );
+				snapshot.p90Latency = ConcurrentLatencyHistogram.getPercentile( latencies, 90 );
+				snapshot.p99Latency = ConcurrentLatencyHistogram.getPercentile( latencies, 99 );
+				snapshot.p999Latency = ConcurrentLatencyHistogram.getPercentile( latencies, 99.9 );
+			}
+			snapshots.put( opName, snapshot );
+		}
+		return snapshots;
+	}
+	
+	/**
+	 * Takes a snapshot of the cumulative counters of all operations together.
+	 * Unlike <code>tick</code> this does not touch the rolling window, so a
+	 * load controller can measure whatever range it wants with two marks
+	 * (see <code>between</code>).
+	 * 
+	 * @param now   The current time (in msecs).
+	 */
+	public Mark mark( long now )
+	{
+		Mark mark = new Mark();
+		mark.time = now;
+		long[] latencies = new long[ConcurrentLatencyHistogram.BUCKETS];
+		for( OperationMetrics metrics : this._operations.values() )
+		{
+			mark.started += metrics.started.sum();
+			mark.succeeded += metrics.succeeded.sum();
+			mark.failed += metrics.failed.sum();
+			mark.latencyNanos += metrics.latencyNanos.sum();
+			metrics.latencies.snapshot( latencies );
+			for( int i = 0; i < latencies.length; i++ )
+				mark.latencies[i] += latencies[i];
+		}
+		return mark;
+	}
+	
+	/**
+	 * Returns the metrics of all operations together between two marks. The
+	 * counts in the result are for the range only, inFlight is as of the
+	 * later mark.
+	 */
+	public static OperationSnapshot between( Mark from, Mark to )
+	{
+		OperationSnapshot snapshot = new OperationSnapshot();
+		snapshot.operationName = "all";
+		snapshot.started = to.started - from.started;
+		snapshot.succeeded = to.succeeded - from.succeeded;
+		snapshot.failed = to.failed - from.failed;
+		snapshot.inFlight = Math.max( 0, to.started - to.succeeded - to.failed );
+		snapshot.windowSecs = ( to.time - from.time ) / 1000.0;
+		if( snapshot.windowSecs <= 0 )
+			return snapshot;
+		
+		snapshot.throughput = snapshot.succeeded / snapshot.windowSecs;
+		snapshot.errorRate = snapshot.failed / snapshot.windowSecs;
+		if( snapshot.succeeded > 0 )
+			snapshot.averageLatency = ( to.latencyNanos - from.latencyNanos ) / (double) snapshot.succeeded;
+		
+		long[] latencies = new long[ConcurrentLatencyHistogram.BUCKETS];
+		for( int i = 0; i < latencies.length; i++ )
+			latencies[i] = to.latencies[i] - from.latencies[i];
+		snapshot.p50Latency = ConcurrentLatencyHistogram.getPercentile( latencies, 50 );
+		snapshot.p90Latency = ConcurrentLatencyHistogram.getPercentile( latencies, 90 );
+		snapshot.p99Latency = ConcurrentLatencyHistogram.getPercentile( latencies, 99 );
+		snapshot.p999Latency = ConcurrentLatencyHistogram.getPercentile( latencies, 99.9 );
+		return snapshot;
+	}
+	
+	/**
+	 * Returns a latency percentile (in nanos) of all operations between two marks.
+	 */
+	public static long getPercentileLatency( Mark from, Mark to, double pct )
+	{
+		long[] latencies = new long[ConcurrentLatencyHistogram.BUCKETS];
+		for( int i = 0; i < latencies.length; i++ )
+			latencies[i] = to.latencies[i] - from.latencies[i];
+		return ConcurrentLatencyHistogram.getPercentile( latencies, pct );
+	}
+	
+	public String toString()
+	{
+		return "[LIVE METRICS TRACK: " + this._trackName + "]";
+	}
+}
@@ -35,6 +35,9 @@ import java.util.concurrent.ExecutorService;
 
 import org.json.JSONObject;
 
+import radlab.rain.util.HashedTimerWheel;
+import radlab.rain.util.TokenBucket;
+
 /**
  * The LoadGenerationStrategy abstract class is a basic thread that keeps
  * track of its state (waiting to begin, active, or inactive) and associates
@@ -76,14 +79,16 @@ public abstract class LoadGenerationStrategy extends Thread
 	/** If false, requests won't be issued; only the trace is generated. */
 	protected boolean _interactive = true;
 	
-	/** Determine whether we async requests should be limited/throttled down to a max of x/sec */
-	protected long _sendNextRequest = -1;
+	/** The last load profile this thread saw. */
 	protected LoadProfile _lastLoadProfile = null;
 	
 	
 	/** The shared pool of worker threads. */
 	protected ExecutorService _sharedWorkPool;
 	
+	/** The shared timer wheel used for wakeups (null to use Thread.sleep). */
+	protected HashedTimerWheel _timerWheel = null;
+	
 	/**
 	 * Creates a new LoadGenerationStrategy thread.
 	 * 
@@ -139,6 +144,16 @@ public abstract class LoadGenerationStrategy extends Thread
 		this._sharedWorkPool = workPool;
 	}
 	
+	/**
+	 * Set the shared timer wheel to wake up through.
+	 * 
+	 * @param timerWheel    The shared timer wheel, or null to use Thread.sleep.
+	 */
+	public void setTimerWheel( HashedTimerWheel timerWheel )
+	{
+		this._timerWheel = timerWheel;
+	}
+	
 	public long getTimeStarted() { return this._timeStarted; }
 	public void setTimeStarted( long val ) { this._timeStarted = val; }
 	
@@ -147,15 +162,41 @@ public abstract class LoadGenerationStrategy extends Thread
 	public boolean getInteractive() { return this._interactive; }
 	public void setInteractive( boolean val ) { this._interactive = val; }
 	
-	public void resetRateLimitCounters()
-	{
-		this._sendNextRequest = -1;
-	}
-	
 	public abstract void run();
 	
 	public abstract void dispose();
 	
+	/**
+	 * Blocks until this load generation strategy has finished. Strategies
+	 * that run on their own thread simply join it.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void waitForCompletion() throws InterruptedException
+	{
+		this.join();
+	}
+	
+	/**
+	 * Asks the generator for the next operation, timing the call for the
+	 * generator health monitor (if any).
+	 * 
+	 * @param lastOperationIndex    The index of the last operation issued.
+	 * @return                      The next operation (or null for a no-op).
+	 */
+	protected Operation nextRequest( int lastOperationIndex )
+	{
+		IScoreboard scoreboard = this._generator.getScoreboard();
+		GeneratorHealth health = ( scoreboard != null ) ? scoreboard.getGeneratorHealth() : null;
+		if( health == null )
+			return this._generator.nextRequest( lastOperationIndex );
+		
+		long start = System.nanoTime();
+		Operation operation = this._generator.nextRequest( lastOperationIndex );
+		health.recordNextRequest( System.nanoTime() - start );
+		return operation;
+	}
+	
 	// Do the operation synchronously or asynchronously
 	
 	public void doOperation( Operation operation )
@@ -167,64 +208,93 @@ public abstract class LoadGenerationStrategy extends Thread
 		// synchronously or asynchronously.
 		if( !operation.getAsync() )
 		{
+			// Unless it was scheduled ahead of time, the operation is supposed to start now
+			if( operation.getIntendedStartNanos() == Operation.NO_INTENDED_START )
+				operation.setIntendedStartNanos( System.nanoTime() );
 			operation.run();
 		}
 		else 
 		{
-			LoadProfile currentProfile = operation.getGeneratedDuringProfile();
-			if( currentProfile != null )
-			{				
-				long activeUsers = currentProfile._numberOfUsers;
-				long aggRatePerSec = currentProfile._openLoopMaxOpsPerSec;
-				
-				if( aggRatePerSec == 0 )
-				{
-					// no rate limit, just submit and leave
-					this._sharedWorkPool.submit( operation );
-				}
-				else
-				{
-					// Check whether intervals have changed if they have then reset the rate counters
-					long now = System.currentTimeMillis(); 
-					
-					if( now >= this._sendNextRequest ) 
-					{
-						double myRate = (aggRatePerSec)/(double) activeUsers;
-						// Send at most 1 per second
-						if( myRate == 0 )
-							myRate = 1000.0;
-						else if( myRate < 0 )
-						{
-							; // probabilistic send
-							myRate = 1000.0;
-						}
-						
-						double waitIntervalMsecs = (1000.0/myRate);
-						
-						this._sendNextRequest = System.currentTimeMillis() + new Double(waitIntervalMsecs).longValue();
-						//System.out.println( this.getName() + " my rate: " + myRate + " wait interval: " + waitIntervalMsecs +  " now: " + now + " next Request @ " + this._sendNextRequest );
-						// Send a request now and figure out the timestamp of the next request based on the
-						// rate
-						this._sharedWorkPool.submit( operation );	
-					}
-					else
-					{
-						// Sleep until it's time to send another request
-						long sleepTime = this._sendNextRequest - now;
-						try 
-						{
-							Thread.sleep( sleepTime );
-						} 
-						catch (InterruptedException e) 
-						{
-							System.out.println( this.getName() + " interrupted from sleep" );
-						}
-						
-						this._sharedWorkPool.submit( operation );
-					}
-				}
-			}
-			else this._sharedWorkPool.submit( operation );
+			long delay = this.getRateLimitDelay( operation );
+			this.submitAsyncOperation( operation, delay );
+		}
+	}
+	
+	/**
+	 * Hands an asynchronous operation to the shared pool of worker threads
+	 * once its tokens are good: after the given delay (for the operation's
+	 * own rate limiter), this thread takes a token from the track's rate
+	 * limiter and sleeps until that one is good too.
+	 * 
+	 * @param operation     The operation to submit.
+	 * @param delay         Time (in nanoseconds) to wait before taking the track's token.
+	 */
+	protected void submitAsyncOperation( Operation operation, long delay )
+	{
+		this.sleepNanos( delay );
+		this.sleepNanos( this.getTrackRateLimitDelay() );
+		this.releaseAsyncOperation( operation );
+	}
+	
+	/**
+	 * Submits an asynchronous operation to the shared pool once it is done
+	 * waiting on the rate limiters. Waiting on the rate limiters is holding
+	 * the operation back on purpose, not queueing: unless it was scheduled
+	 * ahead of time, the operation is supposed to start now.
+	 * 
+	 * @param operation     The operation to submit.
+	 */
+	protected void releaseAsyncOperation( Operation operation )
+	{
+		operation.setTimeQueued( System.currentTimeMillis() );
+		if( operation.getIntendedStartNanos() == Operation.NO_INTENDED_START )
+			operation.setIntendedStartNanos( System.nanoTime() );
+		this._sharedWorkPool.submit( operation );
+	}
+	
+	private void sleepNanos( long delay )
+	{
+		if( delay <= 0 )
+			return;
+		
+		// Sleep until our token is good
+		try 
+		{
+			Thread.sleep( delay / 1000000, (int) ( delay % 1000000 ) );
+		} 
+		catch (InterruptedException e) 
+		{
+			System.out.println( this.getName() + " interrupted from sleep" );
 		}
 	}
+	
+	/**
+	 * Reserves a token for an asynchronous operation from the operation's own
+	 * rate limiter, if it has one. The track's token is only taken once this
+	 * one is good (see getTrackRateLimitDelay), so track tokens never go
+	 * unused while an operation waits on its own limiter. The limiters are
+	 * shared by all the load generation threads of the track, so the
+	 * aggregate rates hold no matter how many users are active.
+	 * 
+	 * @param operation     The operation about to be submitted.
+	 * @return              The delay in nanoseconds (0 to go on right away).
+	 */
+	protected long getRateLimitDelay( Operation operation )
+	{
+		TokenBucket operationRateLimiter = this._generator.getTrack().getOperationRateLimiters().get( operation.getOperationName() );
+		if( operationRateLimiter == null )
+			return 0;
+		return operationRateLimiter.reserve();
+	}
+	
+	/**
+	 * Reserves a token for an asynchronous operation from the track's shared
+	 * rate limiter (openLoopMaxOpsPerSec of the current profile).
+	 * 
+	 * @return  The delay in nanoseconds (0 to send right away).
+	 */
+	protected long getTrackRateLimitDelay()
+	{
+		return this._generator.getTrack().getRateLimiter().reserve();
+	}
 }
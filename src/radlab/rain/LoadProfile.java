@@ -42,6 +42,12 @@ public class LoadProfile
 	public static String CFG_LOAD_PROFILE_MIX_KEY             = "mix";
 	public static String CFG_LOAD_PROFILE_NAME_KEY			  = "name";
 	public static String CFG_OPEN_LOOP_MAX_OPS_PER_SEC_KEY	  = "openLoopMaxOpsPerSec";	
+	public static String CFG_ARRIVAL_RATE_KEY				  = "arrivalRate";
+	public static String CFG_ARRIVAL_PROCESS_KEY			  = "arrivalProcess";
+	
+	/** Arrival processes for open loop arrival schedules. */
+	public static String POISSON_ARRIVALS					  = "poisson";
+	public static String CONSTANT_ARRIVALS					  = "constant";
 	// Allow LoadProfile intervals to have names (no getter/setter)
 	public String _name = "";
 	
@@ -51,6 +57,8 @@ public class LoadProfile
 	protected String _mixName = "";
 	protected long _activeCount = 0; // How often has this interval become active, the load scheduler updates this
 	protected int _openLoopMaxOpsPerSec	= 0; // Rate limit on async operations. A value of 0 means no rate limiting.
+	protected double _arrivalRate = 0.0; // Target arrivals/sec for open loop arrival schedules. A value of 0 means none.
+	protected String _arrivalProcess = POISSON_ARRIVALS;
 	protected JSONObject _config = null; // Save the original configuration object if its passed
 	
 	private long _timeStarted = -1; // LoadManagerThreads need to update this every time they advance the "clock"
@@ -77,6 +85,16 @@ public class LoadProfile
 				this._openLoopMaxOpsPerSec = 0;
 		}
 		
+		// Open loop arrival schedule (if that's configured)
+		if( profileObj.has( CFG_ARRIVAL_RATE_KEY ) )
+		{
+			this._arrivalRate = profileObj.getDouble( CFG_ARRIVAL_RATE_KEY );
+			if( this._arrivalRate < 0 )
+				this._arrivalRate = 0.0;
+		}
+		if( profileObj.has( CFG_ARRIVAL_PROCESS_KEY ) )
+			this._arrivalProcess = profileObj.getString( CFG_ARRIVAL_PROCESS_KEY );
+		
 		this._config = profileObj;
 	}
 
@@ -124,6 +142,12 @@ public class LoadProfile
 	public int getOpenLoopMaxOpsPerSec() { return this._openLoopMaxOpsPerSec; }
 	public void setOpenLoopMaxOpsPerSec( int val ) { this._openLoopMaxOpsPerSec = val; }
 	
+	public double getArrivalRate() { return this._arrivalRate; }
+	public void setArrivalRate( double val ) { this._arrivalRate = val; }
+	
+	public String getArrivalProcess() { return this._arrivalProcess; }
+	public void setArrivalProcess( String val ) { this._arrivalProcess = val; }
+	
 	public String toString()
 	{
 		StringBuffer buf = new StringBuffer();
@@ -31,65 +31,37 @@
 
 package radlab.rain;
 
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.util.Enumeration;
-import java.util.Hashtable;
-import java.util.LinkedList;
 import java.io.PrintStream;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Recycles operations, keyed by operation name. Renting and returning go
+ * through per-thread free lists (see ThreadLocalPool), so recycling takes no
+ * global lock.
+ */
 public class ObjectPool
 {
-	private long _maxPoolSize = 100000; // Upper-bound on number of pooled objects we keep around
-	private Hashtable<String,LinkedList<Operation>> _pool = new Hashtable<String,LinkedList<Operation>>(); 
-	// Pool stats
-	private long _timeStarted;
-	private long _timeShutdown;
-	
-	private long _misses = 0;
-	private long _hits = 0;
-	
-	private long _totalRentQTime = 0;
-	private long _totalRentServiceTime = 0;
-	private long _totalRentRequests = 0;
-	
-	private long _totalReturnQTime = 0;
-	private long _totalReturnServiceTime = 0;
-	private long _totalReturnRequests = 0;
-	private long _totalSuccessfulReturns = 0;
+	private long _maxPoolSize = 100000; // Upper-bound on number of pooled objects (per operation) we keep around
+	private ThreadLocalPool<Operation> _pool = null;
 	
-	private long _totalCleanupDiscards = 0;
-	private long _totalOverflowDiscards = 0;
-
 	private String _trackName = "None";
-	private NumberFormat _formatter = new DecimalFormat( "#0.0000" );
 	
 	public ObjectPool( long maxPoolSize )
 	{
 		this._maxPoolSize = maxPoolSize;
+		this._pool = new ThreadLocalPool<Operation>( this._maxPoolSize );
 	}
 	
 	public boolean isActive()
 	{
-		return this._totalRentRequests > 0;
+		return this._pool.isActive();
 	}
 	
 	public void resetStatistics()
 	{
-		_misses = 0;
-		_hits = 0;
-		
-		_totalRentQTime = 0;
-		_totalRentServiceTime = 0;
-		_totalRentRequests = 0;
-		
-		_totalReturnQTime = 0;
-		_totalReturnServiceTime = 0;
-		_totalReturnRequests = 0;
-		_totalSuccessfulReturns = 0;
-		
-		_totalCleanupDiscards = 0;
-		_totalOverflowDiscards = 0;	
+		this._pool.resetStatistics();
 	}
 
 	public String getTrackName() { return this._trackName; }
@@ -97,86 +69,46 @@ public class ObjectPool
 	
 	public void printStatistics( PrintStream out)
 	{
-		//String trackName = 
-		out.println( "[OBJECTPOOL " + this._trackName + "] Start time                       : " + this._timeStarted );
-		out.println( "[OBJECTPOOL " + this._trackName + "] Total rent requests              : " + this._totalRentRequests );
-		out.println( "[OBJECTPOOL " + this._trackName + "] Request rate                     : " + this._formatter.format( ( (double)this._totalRentRequests/(double)(this._timeShutdown - this._timeStarted) ) * 1000 ) );
-		if( this._hits != 0 )
-			out.println( "[OBJECTPOOL " + this._trackName + "] Hits                             : " + this._hits + "(" + this._formatter.format( ( (double)this._hits/(double)this._totalRentRequests ) * 100 ) + "%)" );
-		else 
-			out.println( "[OBJECTPOOL " + this._trackName + "] Hits                             : " + this._hits + "(0%)" );
-		if( this._misses != 0 )
-			out.println( "[OBJECTPOOL " + this._trackName + "] Misses                           : " + this._misses + "(" + this._formatter.format( ( (double)this._misses/(double)this._totalRentRequests ) * 100 ) + "%)" );
-		else
-			out.println( "[OBJECTPOOL " + this._trackName + "] Misses                           : " + this._misses + "(0%)" );
-		if( this._totalRentRequests != 0 )
-		{	
-			out.println( "[OBJECTPOOL " + this._trackName + "] Average rentQ time (ms)          : " + this._formatter.format((double)this._totalRentQTime/(double)this._totalRentRequests) );
-			out.println( "[OBJECTPOOL " + this._trackName + "] Average rent service time (ms)   : " + this._formatter.format((double)this._totalRentServiceTime/(double)this._totalRentRequests) );
-		}
-		else
-		{
-			out.println( "[OBJECTPOOL " + this._trackName + "] Average rentQ time (ms)          : 0" );
-			out.println( "[OBJECTPOOL " + this._trackName + "] Average rent service time (ms)   : 0" );		
-		}	
-			
-		out.println( "[OBJECTPOOL " + this._trackName + "] Total return requests            : " + this._totalReturnRequests );
-		out.println( "[OBJECTPOOL " + this._trackName + "] Total successful returns         : " + this._totalSuccessfulReturns );
-		out.println( "[OBJECTPOOL " + this._trackName + "] Total overflow discards          : " + this._totalOverflowDiscards );
-		out.println( "[OBJECTPOOL " + this._trackName + "] Total cleanup discards           : " + this._totalCleanupDiscards );
-		
-		if( (this._totalSuccessfulReturns+this._totalOverflowDiscards) > 0 )
-		{
-			out.println( "[OBJECTPOOL " + this._trackName + "] Average returnQ time (ms)        : " + this._formatter.format( (double)this._totalReturnQTime/(double)(this._totalSuccessfulReturns+this._totalOverflowDiscards) ) );
-			out.println( "[OBJECTPOOL " + this._trackName + "] Average return service time (ms) : " + this._formatter.format( (double)this._totalReturnServiceTime/(double)(this._totalSuccessfulReturns+this._totalOverflowDiscards) ) );
-		}
-		else
-		{
-			out.println( "[OBJECTPOOL " + this._trackName + "] Average returnQ time (ms)        : 0" );
-			out.println( "[OBJECTPOOL " + this._trackName + "] Average return service time (ms) : 0" );
-		}
+		this._pool.printStatistics( out, "[OBJECTPOOL " + this._trackName + "] " );
 	}
 	
+	/**
+	 * Returns the pool statistics as a JSON object for the results exporter.
+	 * Call this before <code>shutdown</code>, which resets the statistics.
+	 */
+	public JSONObject toJSONObject() throws JSONException
+	{
+		return this._pool.toJSONObject();
+	}
+	
+	/**
+	 * Returns the slot of a pool tag. Resolve the slots of the operations a
+	 * generator rents once, and rent by slot on the hot path.
+	 */
+	public static int slotOf( String tag )
+	{
+		return ThreadLocalPool.slotOf( tag );
+	}
+	
+	public Operation rentObject( int slot )
+	{
+		return this._pool.rent( slot );
+	}
+	
+	/**
+	 * Looks up the slot of the tag on every call, prefer <code>rentObject( int slot )</code>.
+	 */
 	public Operation rentObject( String tag )
 	{
-		Operation obj = null;
-		//this._totalRentRequests++;
-		
-		if( this._totalRentRequests == 1 )
-		{
-			this._timeStarted = System.currentTimeMillis();
-			this._timeShutdown = -1;
-		}
-		
-		long qStart = System.currentTimeMillis();
-		synchronized( this._pool )
-		{
-			long qEnd = System.currentTimeMillis();
-			this._totalRentRequests++;			
-			LinkedList<Operation> objs = this._pool.get( tag );
-			if( objs == null || objs.size() == 0 )
-			{
-				this._misses++;
-			}
-			else 
-			{
-				this._hits++;
-				obj = objs.remove(); // hit
-			}
-			this._totalRentQTime += ( qEnd - qStart ); // Total time waiting for pool look
-			this._totalRentServiceTime += (System.currentTimeMillis() - qEnd); // Total time to get an answer
-		}
-		return obj;
+		return this._pool.rent( ThreadLocalPool.slotOf( tag ) );
 	}
 	
 	public void returnObject( Operation op )
 	{
 		boolean cleanupSuccess = true;
 		
-		// Do object cleanup before grabbing object pool lock and just note
-		// whether the cleanup was unsuccessful. This way, lengthy cleanup operations
-		// don't happen while holding the lock, which would back up the object pool and
-		// slow down serving object rent requests from other threads.
+		// Cleanup happens on the returning thread, before the object is put
+		// on that thread's free list.
 		try
 		{
 			op.cleanup();
@@ -186,67 +118,13 @@ public class ObjectPool
 			cleanupSuccess = false;
 		}
 		
-		// If no one is asking for objects then the pool is probably inactive.
-		// We don't just want to hold onto objects that won't be re-used/recycled
-		if( this._totalRentRequests == 0 )
-		{
-			op = null;
-			return;
-		}
-		
-		long qStart = System.currentTimeMillis();
-		synchronized( this._pool )
-		{
-			long qEnd = System.currentTimeMillis();
-			
-			this._totalReturnRequests++;
-			
-			if( !cleanupSuccess )
-			{
-				// Don't pool an object that didn't cleanup properly
-				this._totalCleanupDiscards++;
-				op = null;
-				return;
-			}
-						
-			LinkedList<Operation> objs = this._pool.get( op._operationName );
-			if( objs == null )
-			{
-				objs = new LinkedList<Operation>();
-				this._pool.put( op._operationName, objs ); 
-			}
-		
-			if( objs.size() + 1 <= this._maxPoolSize )
-			{
-				objs.add( op );
-				this._totalSuccessfulReturns++;
-			}
-			else 
-			{
-				op = null; // Toss it
-				this._totalOverflowDiscards++;
-			}
-			
-			this._totalReturnQTime += qEnd - qStart;
-			this._totalReturnServiceTime += System.currentTimeMillis() - qEnd;
-		}
+		// An inactive pool (no one renting) drops the object, see ThreadLocalPool.giveBack
+		this._pool.giveBack( op.getPoolSlot(), op, cleanupSuccess );
 	}
 	
 	public void shutdown()
 	{
-		this._timeShutdown = System.currentTimeMillis();
-		// Dump each linked list in the hashtable
-		synchronized( this._pool )
-		{
-			Enumeration<LinkedList<Operation>> it = this._pool.elements();
-			while( it.hasMoreElements() )
-			{
-				LinkedList<Operation> objs = it.nextElement();
-				objs.clear();
-			}
-			
-			this._pool.clear();
-		}
+		this._pool.clear();
 		this.printStatistics( System.out );
 		this.resetStatistics();
 	}
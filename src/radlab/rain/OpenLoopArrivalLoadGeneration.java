@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain;
+
+import org.json.JSONObject;
+
+import radlab.rain.util.NegativeExponential;
+
+/**
+ * The OpenLoopArrivalLoadGeneration class issues operations on an arrival
+ * schedule instead of on think/cycle times. Each active thread is one arrival
+ * process with the profile's arrival rate split across its users, so the
+ * track as a whole sees the profile's arrivalRate (Poisson arrivals stay
+ * Poisson when superposed). The schedule depends only on the arrival process,
+ * never on when earlier operations complete.<br />
+ * <br />
+ * Every operation carries its intended start time, so the Scoreboard can
+ * report the time an operation spent waiting to start (queueing delay), the
+ * time it took to run (service time) and the response time as measured from
+ * the intended start, which is free of coordinated omission.
+ */
+public class OpenLoopArrivalLoadGeneration extends PartlyOpenLoopLoadGeneration 
+{
+	/** Value of the next arrival time before it has been scheduled. */
+	private static long NO_ARRIVAL = Long.MIN_VALUE;
+	
+	/** Intended start time (as given by System.nanoTime()) of the next operation. */
+	protected long _nextArrival = NO_ARRIVAL;
+	
+	/** Exponential interarrival times for Poisson arrivals. */
+	protected NegativeExponential _interarrivals = new NegativeExponential( 0.0, this._random );
+	
+	public OpenLoopArrivalLoadGeneration( Generator generator, long id )
+	{
+		super( generator, id );
+	}
+	
+	public OpenLoopArrivalLoadGeneration( Generator generator, long id, JSONObject params )
+	{
+		super( generator, id, params );
+	}
+	
+	/** Runs this open loop arrival thread. */
+	public void run()
+	{
+		String threadName = this.getName();
+		this.resetStatistics();
+		this.createLogWriters();
+		
+		this.loadTrackConfiguration( this._generator.getTrack() );
+		
+		try
+		{
+			this.sleepUntil( this._timeStarted );
+			
+			int lastOperationIndex = NO_OPERATION_INDEX;
+			while ( System.currentTimeMillis() <= this._timeToQuit )
+			{
+				LoadProfile currentProfile = this._generator.getTrack().getCurrentLoadProfile();
+				if ( !this.isActive() || currentProfile.getArrivalRate() <= 0 )
+				{
+					this._lgState = LGState.Inactive;
+					this._nextArrival = NO_ARRIVAL;
+					Thread.sleep( INACTIVE_DURATION );
+					continue;
+				}
+				
+				this._lgState = LGState.Active;
+				// Re-rate as soon as the profile changes
+				if( this._nextArrival == NO_ARRIVAL || currentProfile != this._lastLoadProfile )
+				{
+					this._lastLoadProfile = currentProfile;
+					this._nextArrival = System.nanoTime() + this.getFirstInterarrivalTime( currentProfile );
+				}
+				
+				long intendedStart = this._nextArrival;
+				this._nextArrival += this.getInterarrivalTime( currentProfile );
+				long now = System.currentTimeMillis();
+				long lateness = this.sleepUntilNanos( intendedStart );
+				
+				Operation nextOperation = this.nextRequest( lastOperationIndex );
+				// This will let generators do no-ops by returning null.
+				if( nextOperation == null ) 
+					continue;
+				
+				// Update last operation index.
+				lastOperationIndex = nextOperation.getOperationIndex();
+				
+				// Store the thread name/ID so we can organize the traces.
+				nextOperation.setGeneratedBy( threadName );
+				nextOperation.setGeneratorThreadID( this._id );
+				
+				// Everything is asynchronous and the schedule is the rate limit
+				this._asynchOperations++;
+				nextOperation.setAsync( true );
+				nextOperation.setIntendedStartNanos( intendedStart );
+				nextOperation.setTimeQueued( System.currentTimeMillis() );
+				this._sharedWorkPool.submit( nextOperation );
+				
+				this._generator.getScoreboard().dropOffSchedulingLateness( now, nextOperation._operationName, lateness );
+			}
+		}
+		catch( InterruptedException ie )
+		{
+			System.out.println( "[" + threadName + "] load generation thread interrupted exiting!" );
+		}
+		catch( Exception e )
+		{
+			System.out.println( "[" + threadName + "] load generation thread died by exception! Reason: " + e.toString() );
+			e.printStackTrace();
+		}
+		finally
+		{
+			this.closeLogWriters();
+		}
+	}
+	
+	/**
+	 * Returns the mean time (in nanos) between this thread's arrivals.
+	 */
+	protected double getMeanInterarrivalTime( LoadProfile profile )
+	{
+		double myRate = profile.getArrivalRate() / (double) Math.max( 1, profile.getNumberOfUsers() );
+		return 1000000000.0 / myRate;
+	}
+	
+	/**
+	 * Returns the time (in nanos) until this thread's next arrival.
+	 */
+	protected long getInterarrivalTime( LoadProfile profile )
+	{
+		double mean = this.getMeanInterarrivalTime( profile );
+		if( profile.getArrivalProcess().equalsIgnoreCase( LoadProfile.CONSTANT_ARRIVALS ) )
+			return (long) mean;
+		
+		this._interarrivals.setMean( mean );
+		return (long) this._interarrivals.nextDouble();
+	}
+	
+	/**
+	 * Returns the time (in nanos) until the first arrival after a (re-)rate.
+	 * Constant rate threads start at a random phase so they don't all arrive
+	 * together.
+	 */
+	protected long getFirstInterarrivalTime( LoadProfile profile )
+	{
+		if( profile.getArrivalProcess().equalsIgnoreCase( LoadProfile.CONSTANT_ARRIVALS ) )
+			return (long) ( this._random.nextDouble() * this.getMeanInterarrivalTime( profile ) );
+		
+		// Exponential interarrivals are memoryless, so no phase needed
+		return this.getInterarrivalTime( profile );
+	}
+}
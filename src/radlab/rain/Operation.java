@@ -33,6 +33,8 @@ package radlab.rain;
 
 import java.util.Set;
 
+import radlab.rain.util.HttpTransport;
+
 /**
  * The Operation class is a (delegatable) encapsulation of "tasks to be done".
  * An operation contains all features of the state necessary to execute at an
@@ -45,6 +47,9 @@ public abstract class Operation implements Runnable
 	// Describes the operation
 	protected int _operationIndex       = -1;
 	protected String _operationName     = "";
+	// Pool slot of the operation name, resolved once rather than on every return
+	private int _poolSlot				= -1;
+	private String _poolSlotName		= null;
 	protected String _operationRequest	= "";
 	// Describes who generated the operation and when (during what interval)
 	protected String _generatedBy       			= "";
@@ -57,6 +62,11 @@ public abstract class Operation implements Runnable
 	private long _timeQueued            = 0;
 	private long _timeStarted           = 0;
 	private long _timeFinished          = 0;
+	// When (System.nanoTime()) the operation was supposed to start, for coordinated omission correction
+	private long _intendedStartNanos	= NO_INTENDED_START;
+	
+	/** Value of the intended start time before one has been set. */
+	public static long NO_INTENDED_START = Long.MIN_VALUE;
 		
 	private long _thinkTimeUsed			= 0; // Track how much thinktime we used
 	private long _cycleTimeUsed			= 0; // Track how much cycle delays we took advantage of
@@ -72,6 +82,7 @@ public abstract class Operation implements Runnable
 	// Used to collect execution metrics
 	protected IScoreboard _scoreboard   = null;
 	protected long _actionsPerformed    = 0; // Defaults to 1, should be >= 1
+	protected long _bytesReceived		= 0; // Response bytes received while executing
 	protected Generator _generator      = null;
 	
 	public Operation( boolean interactive, IScoreboard scoreboard )
@@ -82,6 +93,20 @@ public abstract class Operation implements Runnable
 	
 	public int getOperationIndex() { return this._operationIndex; }
 	public String getOperationName() { return this._operationName; }
+	
+	/**
+	 * Returns the ObjectPool slot of this operation's name, resolving it again
+	 * only if the name changed.
+	 */
+	public int getPoolSlot()
+	{
+		if( this._poolSlotName != this._operationName )
+		{
+			this._poolSlot = ObjectPool.slotOf( this._operationName );
+			this._poolSlotName = this._operationName;
+		}
+		return this._poolSlot;
+	}
 	public boolean isInteractive() { return this._interactive; }
 	
 	public long getTimeQueued() { return this._timeQueued; }
@@ -91,6 +116,9 @@ public abstract class Operation implements Runnable
 	public long getTimeFinished() { return this._timeFinished; }
 	public void setTimeFinished( long val ) { this._timeFinished = val; }
 	
+	public long getIntendedStartNanos() { return this._intendedStartNanos; }
+	public void setIntendedStartNanos( long val ) { this._intendedStartNanos = val; }
+	
 	public long getThinkTimeUsed() { return this._thinkTimeUsed; }
 	public void setThinkTimeUsed( long val ) { this._thinkTimeUsed = val; }
 	public long getCycleTimeUsed() { return this._cycleTimeUsed; }
@@ -118,6 +146,9 @@ public abstract class Operation implements Runnable
 	public void setFailureReason( Throwable t ){ this._failureReason = t; }
 	public long getActionsPerformed(){ return _actionsPerformed; }
 	public void setActionsPerformed( long val ){ this._actionsPerformed = val; }
+	public long getBytesReceived() { return this._bytesReceived; }
+	public void setBytesReceived( long val ) { this._bytesReceived = val; }
+	public void addBytesReceived( long val ) { this._bytesReceived += val; }
 	public long getGeneratorThreadID() { return this._generatorThreadID; }
 	public void setGeneratorThreadID( long val ) { this._generatorThreadID = val; }
 	
@@ -174,6 +205,17 @@ public abstract class Operation implements Runnable
 		return buf;
 	}
 	
+	/**
+	 * Hands the trace over to the caller (e.g., a trace log writer) without
+	 * clearing it, the operation no longer refers to it afterwards.
+	 */
+	public TraceRecord detachTrace()
+	{
+		TraceRecord traceRec = this._trace;
+		this._trace = null;
+		return traceRec;
+	}
+	
 	public void disposeOfTrace() 
 	{ 
 		if( this._trace == null )
@@ -194,7 +236,13 @@ public abstract class Operation implements Runnable
 		// Invoke the pre-execute hook here before we start the clock to time the
 		// operation's execution
 		this.preExecute();
+		// HttpTransports count the bytes they receive per thread, anything else
+		// can add to the count itself
+		this._bytesReceived = 0;
+		long bytesReceivedBefore = HttpTransport.getBytesReceivedByCurrentThread();
 		this.setTimeStarted( System.currentTimeMillis() );
+		this.recordPoolWait();
+		this.markStarted();
 		long startNanos = System.nanoTime();
 		try
 		{
@@ -207,24 +255,81 @@ public abstract class Operation implements Runnable
 		}
 		finally
 		{
-			long endNanos = System.nanoTime();
-			this.setTimeFinished( System.currentTimeMillis() );
-			//System.out.println( this + " " + ( this.getTimeFinished() - this.getTimeStarted() ) + " ns" );
-			
-			// Invoke the post-execute hook here after we stop the clock to time the
-			// operation's execution
-			this.postExecute();
-			
-			if ( this._scoreboard != null )
-			{
-				OperationExecution result = new OperationExecution(this);
-				//System.out.println( "[EXEC-RESULT]" + this + " " + result.getExecutionTime() + " ns" );
-				result.setExecutionTimeNanos( endNanos - startNanos );
-				this._scoreboard.dropOff(result);
-			}
+			this.finishExecution( startNanos, bytesReceivedBefore );
 		}
 	}
 	
+	/**
+	 * Stops the clock on an execution, invokes the post-execute hook and drops
+	 * the results off at the scoreboard. Operations that complete
+	 * asynchronously call this from their completion callback.
+	 * 
+	 * @param startNanos            When (System.nanoTime()) the execution started.
+	 * @param bytesReceivedBefore   Bytes received by HttpTransports on this thread before the execution (or before the callback).
+	 */
+	protected void finishExecution( long startNanos, long bytesReceivedBefore )
+	{
+		long endNanos = System.nanoTime();
+		this.setTimeFinished( System.currentTimeMillis() );
+		LiveMetrics liveMetrics = this.getLiveMetrics();
+		if( liveMetrics != null )
+			liveMetrics.operationFinished( this._operationName, endNanos - startNanos, this.isFailed() );
+		// Anything between the intended start and the actual start (e.g., waiting
+		// for a thread in the shared pool) is queueing delay
+		long queueingDelayNanos = 0;
+		if( this._intendedStartNanos != NO_INTENDED_START )
+			queueingDelayNanos = Math.max( 0, startNanos - this._intendedStartNanos );
+		// Pooled operations get re-used, so don't carry the intended start over
+		this._intendedStartNanos = NO_INTENDED_START;
+		//System.out.println( this + " " + ( this.getTimeFinished() - this.getTimeStarted() ) + " ns" );
+		
+		// Invoke the post-execute hook here after we stop the clock to time the
+		// operation's execution
+		this.postExecute();
+		this._bytesReceived += HttpTransport.getBytesReceivedByCurrentThread() - bytesReceivedBefore;
+		
+		if ( this._scoreboard != null )
+		{
+			OperationExecution result = OperationExecution.obtain( this );
+			//System.out.println( "[EXEC-RESULT]" + this + " " + result.getExecutionTime() + " ns" );
+			result.setExecutionTimeNanos( endNanos - startNanos );
+			result.setQueueingDelayNanos( queueingDelayNanos );
+			this._scoreboard.dropOff(result);
+		}
+	}
+	
+	/**
+	 * Reports how long an asynchronous operation waited for a thread in the
+	 * shared pool to the generator health monitor (if any).
+	 */
+	protected void recordPoolWait()
+	{
+		if( !this._async || this._timeQueued <= 0 || this._scoreboard == null )
+			return;
+		
+		GeneratorHealth health = this._scoreboard.getGeneratorHealth();
+		if( health != null )
+			health.recordPoolWait( this._timeStarted - this._timeQueued );
+	}
+	
+	private LiveMetrics getLiveMetrics()
+	{
+		if( this._scoreboard == null )
+			return null;
+		return this._scoreboard.getLiveMetrics();
+	}
+	
+	/**
+	 * Counts this operation as in flight on the live metrics (if any). Every
+	 * call has to be matched by a call to <code>finishExecution</code>.
+	 */
+	protected void markStarted()
+	{
+		LiveMetrics liveMetrics = this.getLiveMetrics();
+		if( liveMetrics != null )
+			liveMetrics.operationStarted( this._operationName );
+	}
+	
 	/**
 	 * Prepares this operation for execution. This involves copying any features
 	 * about the current state into this operation.
@@ -34,10 +34,23 @@ package radlab.rain;
 /**
  * The OperationExecution class is a wrapper for the results recorded from the
  * execution of an operation. This wrapper can be passed off to an IScoreboard
- * to be recorded and presented at a later time.
+ * to be recorded and presented at a later time.<br />
+ * <br />
+ * Executions are recycled: get one with <code>obtain</code> and, once the
+ * scoreboard is done with it, hand it back with <code>recycle</code>. In the
+ * steady state no results are allocated on the way from an operation to the
+ * scoreboard.
  */
 public class OperationExecution implements Comparable<OperationExecution>
 {
+	/** Upper bound on the number of idle results kept for re-use. */
+	public static long RECYCLED_MAX_POOL_SIZE = 65536;
+	/** Results move between the executing threads and the scoreboard worker in batches of this size. */
+	public static int RECYCLED_BATCH_SIZE = 64;
+	
+	private static ThreadLocalPool<OperationExecution> _recycled = new ThreadLocalPool<OperationExecution>( RECYCLED_MAX_POOL_SIZE, RECYCLED_BATCH_SIZE );
+	private static int _recycledSlot = ThreadLocalPool.slotOf( OperationExecution.class.getName() );
+	
 	/** The owner operation for/in which the results are stored. */
 	private Operation _owner = null;
 	private boolean _interactive = true;
@@ -45,18 +58,24 @@ public class OperationExecution implements Comparable<OperationExecution>
 	private long _timeStarted = 0;
 	private long _timeFinished = 0;
 	private long _executionTimeNanos = 0;
+	private long _queueingDelayNanos = 0;
 	public String _operationName;
 	public String _operationRequest;
 	public LoadProfile _generatedDuring = null;
 	public long _profileStartTime = -1;
 	public long _actionsPerformed = 1;
+	public long _bytesReceived = 0;
 	public boolean _async = false;
 	public boolean _failed = true;
+	private Throwable _failureReason = null;
 	public Operation getOperation() { return this._owner; }
 	
 	public String getTraceLabel() { return this._traceLabel; }
 	public void setTraceLabel( String val ) { this._traceLabel = val; }
 	
+	public Throwable getFailureReason() { return this._failureReason; }
+	public void setFailureReason( Throwable val ) { this._failureReason = val; }
+	
 	/**
 	 * Creates a new OperationExecution for the specified operation.
 	 * 
@@ -64,7 +83,47 @@ public class OperationExecution implements Comparable<OperationExecution>
 	 */
 	public OperationExecution( Operation operation )
 	{ 
+		this.reset( operation );
+	}
+	
+	/**
+	 * Returns an OperationExecution for the specified operation, re-using a
+	 * recycled one if there is one.
+	 * 
+	 * @param operation     The operation for/in which results are stored.
+	 */
+	public static OperationExecution obtain( Operation operation )
+	{
+		OperationExecution result = _recycled.rent( _recycledSlot );
+		if( result == null )
+			return new OperationExecution( operation );
+		
+		result.reset( operation );
+		return result;
+	}
+	
+	/**
+	 * Makes this OperationExecution available for re-use. Only the last
+	 * holder of the result (normally the scoreboard's worker thread) may
+	 * call this and must not touch the result afterwards.
+	 */
+	public void recycle()
+	{
+		// Don't keep the operation, profile or failure reachable while idle
+		this._owner = null;
+		this._generatedDuring = null;
+		this._failureReason = null;
+		this._operationRequest = null;
+		_recycled.giveBack( _recycledSlot, this, true );
+	}
+	
+	private void reset( Operation operation )
+	{
 		this._owner = operation;
+		this._traceLabel = Scoreboard.NO_TRACE_LABEL;
+		this._executionTimeNanos = 0;
+		this._queueingDelayNanos = 0;
+		this._failureReason = null;
 		this._interactive = operation.isInteractive();
 		this._timeStarted = operation.getTimeStarted();
 		this._timeFinished = operation.getTimeFinished();
@@ -75,6 +134,7 @@ public class OperationExecution implements Comparable<OperationExecution>
 		// Pull out any info on when this operation was created
 		this._generatedDuring = operation.getGeneratedDuringProfile();
 		this._profileStartTime = operation.getProfileStartTime();
+		this._bytesReceived = operation.getBytesReceived();
 		
 		TraceRecord traceRec = operation.getTrace();
 		if ( traceRec != null && traceRec._lstRequests.size() > 0 )
@@ -94,6 +154,7 @@ public class OperationExecution implements Comparable<OperationExecution>
 	public long getTimeFinished() { return this._timeFinished; }
 	
 	public long getActionsPerformed() { return this._actionsPerformed; }
+	public long getBytesReceived() { return this._bytesReceived; }
 	
 	//public long getDelayTime() { return (this._owner != null) ? this.getDelayTime() : 0; }
 	
@@ -107,6 +168,13 @@ public class OperationExecution implements Comparable<OperationExecution>
 	public long getExecutionTimeNanos() { return this._executionTimeNanos; }
 	public void setExecutionTimeNanos( long val ) { this._executionTimeNanos = val; }
 	
+	/** Time between the operation's intended start and when it actually started. */
+	public long getQueueingDelayNanos() { return this._queueingDelayNanos; }
+	public void setQueueingDelayNanos( long val ) { this._queueingDelayNanos = val; }
+	
+	/** Response time measured from the intended start (queueing delay plus service time). */
+	public long getCorrectedResponseTimeNanos() { return this._queueingDelayNanos + this._executionTimeNanos; }
+	
 	//public long getTotalTime()     { return this.getWaitTime()     + this.getExecutionTime() + this.getDelayTime(); }
 	
 	/**
@@ -31,42 +31,149 @@
 
 package radlab.rain;
 
+import java.io.Serializable;
 import java.util.LinkedList;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import radlab.rain.util.HistogramSamplingStrategy;
 import radlab.rain.util.ISamplingStrategy;
+import radlab.rain.util.NullSamplingStrategy;
 
-public class OperationSummary 
+public class OperationSummary implements Serializable
 {
+	private static final long serialVersionUID = 1L;
+	
 	public long succeeded 					= 0;
 	public long failed 						= 0;
 	public long totalActions				= 0;
+	public long totalBytesReceived			= 0;
 	public long totalResponseTime 			= 0;
 	public long totalAsyncInvocations		= 0;
 	public long totalSyncInvocations		= 0;
 	public long minResponseTime				= Long.MAX_VALUE;
 	public long maxResponseTime				= Long.MIN_VALUE;
+	// Queueing delay (intended start to actual start) and the response time
+	// measured from the intended start, i.e., corrected for coordinated omission
+	public long totalQueueingDelay			= 0;
+	public long maxQueueingDelay			= 0;
+	public long totalCorrectedResponseTime	= 0;
+	public long maxCorrectedResponseTime	= 0;
 	// Sample the response times so that we can give a "reasonable" 
 	// estimate of the 90th and 99th percentiles.	
 	private ISamplingStrategy responseTimeSampler; 
+	private ISamplingStrategy correctedResponseTimeSampler = null;
 	
 	public OperationSummary( ISamplingStrategy strategy )
 	{
 		this.responseTimeSampler = strategy;
 	}
 	
+	public OperationSummary( ISamplingStrategy strategy, ISamplingStrategy correctedStrategy )
+	{
+		this.responseTimeSampler = strategy;
+		this.correctedResponseTimeSampler = correctedStrategy;
+	}
+	
+	/**
+	 * Returns an empty summary that another summary like this one can be
+	 * merged into, i.e., one whose samplers simply accept all of the samples
+	 * of the merged sampler (or empty histograms, which merge losslessly).
+	 */
+	public OperationSummary createMergeTarget()
+	{
+		ISamplingStrategy corrected = null;
+		if( this.correctedResponseTimeSampler != null )
+			corrected = OperationSummary.createMergeTarget( this.correctedResponseTimeSampler );
+		return new OperationSummary( OperationSummary.createMergeTarget( this.responseTimeSampler ), corrected );
+	}
+	
+	private static ISamplingStrategy createMergeTarget( ISamplingStrategy sampler )
+	{
+		if( sampler instanceof HistogramSamplingStrategy )
+			return ( (HistogramSamplingStrategy) sampler ).createEmptyCopy();
+		return new NullSamplingStrategy();
+	}
+	
 	public long getNthPercentileResponseTime( int pct )
 	{
 		return this.responseTimeSampler.getNthPercentile( pct );
 	}
 	
+	/**
+	 * Returns a fractional percentile (e.g., 99.9) if the summary records
+	 * response times in a histogram, otherwise the nearest whole percentile.
+	 */
+	public long getPercentileResponseTime( double pct )
+	{
+		if( this.isUsingHistogram() )
+			return ( (HistogramSamplingStrategy) this.responseTimeSampler ).getPercentile( pct );
+		return this.responseTimeSampler.getNthPercentile( (int) Math.round( pct ) );
+	}
+	
+	public boolean isUsingHistogram()
+	{
+		return ( this.responseTimeSampler instanceof HistogramSamplingStrategy );
+	}
+	
 	public boolean acceptSample( long respTime )
 	{
 		return this.responseTimeSampler.accept( respTime );
 	}
 	
+	/**
+	 * Records the queueing delay and corrected response time of an operation.
+	 * 
+	 * @param queueingDelay             Time from the intended start to the actual start.
+	 * @param correctedResponseTime     Time from the intended start to the finish.
+	 */
+	public void acceptCorrectedSample( long queueingDelay, long correctedResponseTime )
+	{
+		this.totalQueueingDelay += queueingDelay;
+		if( queueingDelay > this.maxQueueingDelay )
+			this.maxQueueingDelay = queueingDelay;
+		this.totalCorrectedResponseTime += correctedResponseTime;
+		if( correctedResponseTime > this.maxCorrectedResponseTime )
+			this.maxCorrectedResponseTime = correctedResponseTime;
+		if( this.correctedResponseTimeSampler != null )
+			this.correctedResponseTimeSampler.accept( correctedResponseTime );
+	}
+	
+	public long getNthPercentileCorrectedResponseTime( int pct )
+	{
+		if( this.correctedResponseTimeSampler == null )
+			return 0;
+		return this.correctedResponseTimeSampler.getNthPercentile( pct );
+	}
+	
+	public double getAverageQueueingDelay()
+	{
+		if( this.succeeded == 0 )
+			return 0.0;
+		else return (double) this.totalQueueingDelay/(double)this.succeeded;
+	}
+	
+	public double getAverageCorrectedResponseTime()
+	{
+		if( this.succeeded == 0 )
+			return 0.0;
+		else return (double) this.totalCorrectedResponseTime/(double)this.succeeded;
+	}
+	
+	public double getAverageBytesReceived()
+	{
+		long operations = this.succeeded + this.failed;
+		if( operations == 0 )
+			return 0.0;
+		else return (double) this.totalBytesReceived/(double) operations;
+	}
+	
 	public void resetSamples()
 	{
 		this.responseTimeSampler.reset();
+		if( this.correctedResponseTimeSampler != null )
+			this.correctedResponseTimeSampler.reset();
 	}
 	
 	public int getSamplesSeen()
@@ -100,6 +207,52 @@ public class OperationSummary
 		return this.responseTimeSampler.getTvalue( averageResponseTime );
 	}
 	
+	/**
+	 * Returns the summary as a JSON object for the results exporter. Times
+	 * are converted from nanos to seconds.
+	 */
+	public JSONObject toJSONObject() throws JSONException
+	{
+		JSONObject summary = new JSONObject();
+		summary.put( "succeeded", this.succeeded );
+		summary.put( "failed", this.failed );
+		summary.put( "actions", this.totalActions );
+		summary.put( "asyncInvocations", this.totalAsyncInvocations );
+		summary.put( "syncInvocations", this.totalSyncInvocations );
+		summary.put( "bytesReceived", this.totalBytesReceived );
+		summary.put( "averageBytesReceived", this.getAverageBytesReceived() );
+		summary.put( "averageResponseTime", this.getAverageResponseTime() / 1000000000.0 );
+		// Min and max are only set once an operation succeeds
+		summary.put( "minResponseTime", ( this.minResponseTime == Long.MAX_VALUE ? 0 : this.minResponseTime ) / 1000000000.0 );
+		summary.put( "maxResponseTime", ( this.maxResponseTime == Long.MIN_VALUE ? 0 : this.maxResponseTime ) / 1000000000.0 );
+		
+		JSONObject percentiles = new JSONObject();
+		percentiles.put( "p50", this.getPercentileResponseTime( 50 ) / 1000000000.0 );
+		percentiles.put( "p90", this.getPercentileResponseTime( 90 ) / 1000000000.0 );
+		percentiles.put( "p95", this.getPercentileResponseTime( 95 ) / 1000000000.0 );
+		percentiles.put( "p99", this.getPercentileResponseTime( 99 ) / 1000000000.0 );
+		// Without a histogram fractional percentiles would just round to the max
+		if( this.isUsingHistogram() )
+		{
+			percentiles.put( "p99.9", this.getPercentileResponseTime( 99.9 ) / 1000000000.0 );
+			percentiles.put( "p99.99", this.getPercentileResponseTime( 99.99 ) / 1000000000.0 );
+		}
+		percentiles.put( "max", this.getPercentileResponseTime( 100 ) / 1000000000.0 );
+		summary.put( "percentiles", percentiles );
+		summary.put( "samplesSeen", this.getSamplesSeen() );
+		summary.put( "samplesCollected", this.getSamplesCollected() );
+		
+		JSONObject corrected = new JSONObject();
+		corrected.put( "averageQueueingDelay", this.getAverageQueueingDelay() / 1000000000.0 );
+		corrected.put( "maxQueueingDelay", this.maxQueueingDelay / 1000000000.0 );
+		corrected.put( "averageResponseTime", this.getAverageCorrectedResponseTime() / 1000000000.0 );
+		corrected.put( "maxResponseTime", this.maxCorrectedResponseTime / 1000000000.0 );
+		corrected.put( "p90", this.getNthPercentileCorrectedResponseTime( 90 ) / 1000000000.0 );
+		corrected.put( "p99", this.getNthPercentileCorrectedResponseTime( 99 ) / 1000000000.0 );
+		summary.put( "corrected", corrected );
+		return summary;
+	}
+	
 	protected ISamplingStrategy getResponseTimeSampler()
 	{ return this.responseTimeSampler; }
 	
@@ -108,14 +261,33 @@ public class OperationSummary
 		this.succeeded += rhs.succeeded;
 		this.failed += rhs.failed;
 		this.totalActions += rhs.totalActions;
+		this.totalBytesReceived += rhs.totalBytesReceived;
 		this.totalResponseTime += rhs.totalResponseTime;
 		this.totalAsyncInvocations += rhs.totalAsyncInvocations;
 		this.totalSyncInvocations += rhs.totalSyncInvocations;
 		this.minResponseTime = Math.min( this.minResponseTime, rhs.minResponseTime );
 		this.maxResponseTime = Math.max( this.maxResponseTime, rhs.maxResponseTime );
+		this.totalQueueingDelay += rhs.totalQueueingDelay;
+		this.maxQueueingDelay = Math.max( this.maxQueueingDelay, rhs.maxQueueingDelay );
+		this.totalCorrectedResponseTime += rhs.totalCorrectedResponseTime;
+		this.maxCorrectedResponseTime = Math.max( this.maxCorrectedResponseTime, rhs.maxCorrectedResponseTime );
+		
+		OperationSummary.mergeSamples( this.responseTimeSampler, rhs.responseTimeSampler );
+		if( this.correctedResponseTimeSampler != null && rhs.correctedResponseTimeSampler != null )
+			OperationSummary.mergeSamples( this.correctedResponseTimeSampler, rhs.correctedResponseTimeSampler );
+	}
+	
+	private static void mergeSamples( ISamplingStrategy lhs, ISamplingStrategy rhs )
+	{
+		// Histograms merge bucket-by-bucket without losing any observations
+		if( lhs instanceof HistogramSamplingStrategy && rhs instanceof HistogramSamplingStrategy )
+		{
+			( (HistogramSamplingStrategy) lhs ).merge( (HistogramSamplingStrategy) rhs );
+			return;
+		}
 		
-		LinkedList<Long> rhsRawSamples = rhs.getResponseTimeSampler().getRawSamples();
+		LinkedList<Long> rhsRawSamples = rhs.getRawSamples();
 		for( Long obs : rhsRawSamples )
-			this.responseTimeSampler.accept( obs );
+			lhs.accept( obs );
 	}
 }
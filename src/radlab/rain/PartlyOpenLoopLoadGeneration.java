@@ -135,7 +135,7 @@ public class PartlyOpenLoopLoadGeneration extends LoadGenerationStrategy
 				else
 				{
 					this._lgState = LGState.Active;
-					Operation nextOperation = this._generator.nextRequest( lastOperationIndex );
+					Operation nextOperation = this.nextRequest( lastOperationIndex );
 					// This will let generators do no-ops by returning null.
 					// We might end up making sure that we count/account for the no-ops
 					if( nextOperation != null ) 
@@ -191,6 +191,7 @@ public class PartlyOpenLoopLoadGeneration extends LoadGenerationStrategy
 		long cycleTime = this._generator.getCycleTime();
 		long now = System.currentTimeMillis();
 		long wakeUpTime = now + cycleTime;
+		long lateness = 0;
 		
 		operation.setAsync( true );
 		this.doOperation( operation );
@@ -201,20 +202,21 @@ public class PartlyOpenLoopLoadGeneration extends LoadGenerationStrategy
 			{
 				//System.out.println( "[" + this.getName() + "] In rampUp attempt to sleep past end of run! Adjusting." );
 				cycleTime = this._startSteadyState - now;
-				this.sleepUntil( this._startSteadyState );
+				lateness = this.sleepUntil( this._startSteadyState );
 			}
 			else
 			{
 				//System.out.println( "[" + this.getName() + "] Attempt to sleep past end of run! Adjusting." );
 				// Revise the cycle time
 				cycleTime = this._timeToQuit - now;
-				this.sleepUntil( this._timeToQuit );
+				lateness = this.sleepUntil( this._timeToQuit );
 			}
 		}
-		else this.sleepUntil( wakeUpTime );
+		else lateness = this.sleepUntil( wakeUpTime );
 		
 		// Save the cycle time - if we're in the steady state
 		this._generator.getScoreboard().dropOffWaitTime( now, operation._operationName, cycleTime );
+		this._generator.getScoreboard().dropOffSchedulingLateness( now, operation._operationName, lateness );
 	}
 	
 	/**
@@ -236,6 +238,7 @@ public class PartlyOpenLoopLoadGeneration extends LoadGenerationStrategy
 		//System.out.println( "[" + this.getName() + "] Think time: " + thinkTime );
 		
 		long now = System.currentTimeMillis();
+		long lateness = 0;
 		if( (now + thinkTime) > this._timeToQuit )
 		{
 			// If we're in the ramp up period then sleep until the start of
@@ -244,20 +247,21 @@ public class PartlyOpenLoopLoadGeneration extends LoadGenerationStrategy
 			{
 				//System.out.println( "[" + this.getName() + "] In rampUp attempt to sleep past end of run! Adjusting." );
 				thinkTime = this._startSteadyState - now;
-				this.sleepUntil( this._startSteadyState );
+				lateness = this.sleepUntil( this._startSteadyState );
 			}
 			else // we're in the steadystate or rampdown
 			{
 				//System.out.println( "[" + this.getName() + "] Attempt to sleep past end of run! Adjusting." );
 				// Revise the think time
 				thinkTime = this._timeToQuit - now;
-				this.sleepUntil( this._timeToQuit );
+				lateness = this.sleepUntil( this._timeToQuit );
 			}
 		}
-		else this.sleepUntil( now +  thinkTime );
+		else lateness = this.sleepUntil( now +  thinkTime );
 		
 		// Save the think time
 		this._generator.getScoreboard().dropOffWaitTime( now, operation._operationName, thinkTime );
+		this._generator.getScoreboard().dropOffSchedulingLateness( now, operation._operationName, lateness );
 	}
 	
 	/**
@@ -289,11 +293,15 @@ public class PartlyOpenLoopLoadGeneration extends LoadGenerationStrategy
 	
 	/**
 	 * Creates log and error writers and registers them with the scoreboard. 
+	 * Nothing to do if the scoreboard writes a binary trace log for the track.
 	 */
 	protected void createLogWriters()
 	{
 		String threadName = this.getName();
 		
+		if( this._generator.getScoreboard().getTraceLogWriter() != null )
+			return;
+		
 		try
 		{
 			this._logWriter = new FileWriter( new File( "thread-" + threadName + ".log" ) );
@@ -362,22 +370,43 @@ public class PartlyOpenLoopLoadGeneration extends LoadGenerationStrategy
 	/**
 	 * Sleep this thread until the provided time if this thread is being run
 	 * in interactive mode. No point in sleeping if we are simply generating
-	 * a trace. 
+	 * a trace. Uses the shared timer wheel if there is one.
 	 * 
 	 * @param time  The time to wake up.
+	 * @return      How late (in nanos) we woke up, 0 if we did not sleep.
+	 * 
+	 * @throws InterruptedException 
+	 */
+	protected long sleepUntil( long time ) throws InterruptedException
+	{
+		long preRunSleep = time - System.currentTimeMillis();
+		return this.sleepUntilNanos( System.nanoTime() + ( preRunSleep * 1000000 ) );
+	}
+	
+	/**
+	 * Sleep this thread until the provided time (as given by System.nanoTime())
+	 * if this thread is being run in interactive mode.
+	 * 
+	 * @param deadline  The time to wake up.
+	 * @return          How late (in nanos) we woke up, 0 if we did not sleep.
 	 * 
 	 * @throws InterruptedException 
 	 */
-	protected void sleepUntil( long time ) throws InterruptedException
+	protected long sleepUntilNanos( long deadline ) throws InterruptedException
 	{
 		if ( this._interactive )
 		{
-			long preRunSleep = time - System.currentTimeMillis();
+			long preRunSleep = deadline - System.nanoTime();
 			if ( preRunSleep > 0 )
 			{
-				Thread.sleep( preRunSleep );
+				if( this._timerWheel != null )
+					return this._timerWheel.sleepUntil( deadline );
+				
+				Thread.sleep( preRunSleep / 1000000, (int) ( preRunSleep % 1000000 ) );
 			}
+			return Math.max( 0, System.nanoTime() - deadline );
 		}
+		return 0;
 	}
 	
 	/**
@@ -3,6 +3,9 @@ package radlab.rain;
 public abstract class Poolable implements IPoolable
 {
 	protected String _poolTag = ""; // Used to identify the type/name of object being pooled
+	// Pool slot of the tag, resolved once rather than on every return
+	private int _poolSlot = -1;
+	private String _poolSlotTag = null;
 
 	protected Poolable()
 	{}
@@ -13,5 +16,15 @@ public abstract class Poolable implements IPoolable
 		this._poolTag = tag;
 	}
 	
+	public int getPoolSlot()
+	{
+		if( this._poolSlotTag != this._poolTag )
+		{
+			this._poolSlot = ThreadLocalPool.slotOf( this._poolTag );
+			this._poolSlotTag = this._poolTag;
+		}
+		return this._poolSlot;
+	}
+	
 	public abstract void cleanup();
 }
@@ -31,7 +31,10 @@
 
 package radlab.rain;
 
+import org.json.JSONObject;
+
 import radlab.rain.communication.RainPipe;
+import radlab.rain.util.HashedTimerWheel;
 
 // Singleton configuration class
 public class RainConfig 
@@ -42,8 +45,21 @@ public class RainConfig
 	public boolean _usePipe = false;
 	public int _pipePort = RainPipe.DEFAULT_PORT;
 	public int _pipeThreads = RainPipe.DEFAULT_NUM_THREADS;
+	public String _pipeProtocol = RainPipe.PROTOCOL_SERIALIZED;
 	// Should we wait for a start message before we start the run, default is no
 	public boolean _waitForStartSignal = false;
+	// Do load generation threads wake up through a shared timer wheel (instead of Thread.sleep)?
+	public boolean _useTimerWheel = false;
+	public long _timerWheelTickNanos = HashedTimerWheel.DEFAULT_TICK_NANOS;
+	public long _timerWheelSpinNanos = HashedTimerWheel.DEFAULT_SPIN_NANOS;
+	// Master seed for the per-user random streams, negative means pick one at startup
+	public long _rngSeed = -1;
+	// Port of the live metrics HTTP endpoint, negative means no endpoint
+	public int _metricsPort = -1;
+	public int _metricsWindowSecs = LiveMetrics.DEFAULT_WINDOW_SECS;
+	// Do we watch the load generator's own health (sample interval and thresholds in the config, null for defaults)?
+	public boolean _generatorHealth = true;
+	public JSONObject _generatorHealthConfig = null;
 	// Do we have a zookeeper address?
 	public String _zooKeeper = "";
 	public String _zkPath = "";
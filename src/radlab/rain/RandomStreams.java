@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain;
+
+import java.util.Random;
+
+import radlab.rain.util.SplitMixRandom;
+
+/**
+ * Hands out independent, deterministic random number streams.<br />
+ * <br />
+ * Every stream is seeded from the scenario's master seed (the rngSeed
+ * key), the name of the track, the id of the user (load generation
+ * thread) and the name of the stream (e.g. think times vs. keys). Two runs
+ * with the same master seed and the same configuration therefore draw the
+ * same numbers for every user, no matter how the threads are interleaved,
+ * and no two threads ever share generator state.<br />
+ * <br />
+ * If no master seed is configured one is picked at startup and printed so
+ * the run can be replayed.
+ */
+public class RandomStreams 
+{
+	public static final String GENERATOR_STREAM 	= "generator";
+	public static final String THINK_TIME_STREAM 	= "thinkTime";
+	public static final String CYCLE_TIME_STREAM 	= "cycleTime";
+	public static final String KEY_STREAM 			= "keys";
+	
+	private static Object seedLock = new Object();
+	private static volatile boolean seedResolved = false;
+	private static long masterSeed = 0;
+	
+	/**
+	 * Returns the scenario's master seed, picking (and reporting) a random
+	 * one on first use if none was configured.
+	 */
+	public static long getMasterSeed()
+	{
+		if( !seedResolved )
+		{
+			synchronized( seedLock )
+			{
+				if( !seedResolved )
+				{
+					RainConfig config = RainConfig.getInstance();
+					if( config._rngSeed >= 0 )
+						masterSeed = config._rngSeed;
+					else
+					{
+						masterSeed = SplitMixRandom.mix64( System.currentTimeMillis() ^ System.nanoTime() ) & Long.MAX_VALUE;
+						System.out.println( "[RANDOM] No rngSeed configured, using master seed: " + masterSeed );
+					}
+					seedResolved = true;
+				}
+			}
+		}
+		return masterSeed;
+	}
+	
+	/**
+	 * Creates the named stream of a user, seeded from the master seed.
+	 * 
+	 * @param track     The track the user belongs to (may be null).
+	 * @param userId    The id of the user's load generation thread.
+	 * @param stream    The name of the stream, e.g. THINK_TIME_STREAM.
+	 * @return          A new generator owned by the caller's thread.
+	 */
+	public static Random create( ScenarioTrack track, long userId, String stream )
+	{
+		return create( getMasterSeed(), track, userId, stream );
+	}
+	
+	/**
+	 * Creates the named stream of a user, seeded from a workload specific
+	 * seed instead of the master seed.
+	 */
+	public static Random create( long seed, ScenarioTrack track, long userId, String stream )
+	{
+		String trackName = ( track == null ) ? "" : track.getName();
+		return new SplitMixRandom( deriveSeed( seed, trackName, userId, stream ) );
+	}
+	
+	public static long deriveSeed( long seed, String trackName, long userId, String stream )
+	{
+		long h = SplitMixRandom.mix64( seed );
+		h = SplitMixRandom.mix64( h ^ hash( trackName ) );
+		h = SplitMixRandom.mix64( h ^ userId );
+		return SplitMixRandom.mix64( h ^ hash( stream ) );
+	}
+	
+	// 64-bit FNV-1a; String.hashCode() is too narrow to keep names apart
+	private static long hash( String s )
+	{
+		long h = 0xcbf29ce484222325L;
+		if( s == null )
+			return h;
+		for( int i = 0; i < s.length(); i++ )
+		{
+			h ^= s.charAt( i );
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import radlab.rain.util.ConcurrentLatencyHistogram;
+import radlab.rain.util.ReplayTrace;
+import radlab.rain.util.ResultsExporter;
+
+/**
+ * The ReplayLoadGeneration class replays a recorded trace (see ReplayTrace)
+ * instead of generating requests. Each request is sent at its recorded
+ * offset from the start of the trace, divided by the speedup, no matter how
+ * long earlier requests take, so a production trace can be replayed as it
+ * happened or compressed (e.g. 10x) to test headroom.<br />
+ * <br />
+ * Every thread of the track is one replay user and owns the shards of the
+ * trace whose number modulo the track's maximum number of users is its id,
+ * so the requests of a session (or a key) are always sent by the same user,
+ * in order. The load profiles only set how long the run lasts, the trace
+ * sets the load. The track's generator must implement IReplayGenerator.<br />
+ * <br />
+ * Parameters (loadGenerationStrategyParams):<br />
+ * <ul>
+ * <li>trace - the replay trace file (required)</li>
+ * <li>speedup - how much faster than recorded to replay (default 1.0)</li>
+ * <li>loop - start over once the trace is done (default false)</li>
+ * <li>maxLateness - skip requests that are due more than this many msecs
+ * ago instead of sending a burst of them (default -1, never skip)</li>
+ * </ul>
+ * How late requests went out relative to the trace's timing (the drift) is
+ * tracked per operation like the other open loop schedules, and for the
+ * replay as a whole, which is printed and exported when the track is done.
+ */
+public class ReplayLoadGeneration extends PartlyOpenLoopLoadGeneration 
+{
+	public static String CFG_TRACE			= "trace";
+	public static String CFG_SPEEDUP		= "speedup";
+	public static String CFG_LOOP			= "loop";
+	public static String CFG_MAX_LATENESS	= "maxLateness";
+	
+	/** The replay statistics of the tracks currently replaying, by track name. */
+	private static Hashtable<String,ReplayStatistics> Replays = new Hashtable<String,ReplayStatistics>();
+	
+	/**
+	 * How far the replay of a track drifted from the trace's timing, shared by
+	 * all of its users.
+	 */
+	public static class ReplayStatistics
+	{
+		private String _trackName = "";
+		private ReplayTrace _trace = null;
+		private double _speedup = 1.0;
+		private int _running = 0;
+		private int _users = 0;
+		private ConcurrentLatencyHistogram _lateness = new ConcurrentLatencyHistogram();
+		private AtomicLong _replayed = new AtomicLong();
+		private AtomicLong _skipped = new AtomicLong();
+		private AtomicLong _maxLatenessNanos = new AtomicLong();
+		private AtomicLong _lastOffsetMicros = new AtomicLong();
+		private AtomicLong _loops = new AtomicLong();
+		private long _started = TIME_NOT_SET;
+		private long _finished = TIME_NOT_SET;
+		
+		public ReplayStatistics( String trackName, ReplayTrace trace, double speedup )
+		{
+			this._trackName = trackName;
+			this._trace = trace;
+			this._speedup = speedup;
+		}
+		
+		public void recordReplayed( long latenessNanos, long offsetMicros )
+		{
+			this._replayed.incrementAndGet();
+			this._lateness.record( latenessNanos );
+			long max = this._maxLatenessNanos.get();
+			while( latenessNanos > max && !this._maxLatenessNanos.compareAndSet( max, latenessNanos ) )
+				max = this._maxLatenessNanos.get();
+			long last = this._lastOffsetMicros.get();
+			while( offsetMicros > last && !this._lastOffsetMicros.compareAndSet( last, offsetMicros ) )
+				last = this._lastOffsetMicros.get();
+		}
+		
+		public void recordSkipped() { this._skipped.incrementAndGet(); }
+		public void recordLoop( long loop )
+		{
+			long loops = this._loops.get();
+			while( loop > loops && !this._loops.compareAndSet( loops, loop ) )
+				loops = this._loops.get();
+		}
+		
+		public long getReplayed() { return this._replayed.get(); }
+		public long getSkipped() { return this._skipped.get(); }
+		
+		/** Returns the achieved speedup: trace time covered per second of replay. */
+		public double getAchievedSpeedup()
+		{
+			long elapsed = this._finished - this._started;
+			if( this._started == TIME_NOT_SET || elapsed <= 0 )
+				return 0.0;
+			return ( this._lastOffsetMicros.get() / 1000.0 ) / elapsed;
+		}
+		
+		public void printStatistics( PrintStream out )
+		{
+			long[] counts = this._lateness.snapshot();
+			out.println( "[REPLAY] Track: " + this._trackName + " trace: " + this._trace.getFile().getName() 
+					+ " users: " + this._users + " speedup: " + this._speedup + " achieved: " + String.format( "%.2f", this.getAchievedSpeedup() ) );
+			out.println( "[REPLAY] Replayed: " + this.getReplayed() + " skipped (too late): " + this.getSkipped() 
+					+ " loops: " + this._loops.get() + " trace time covered (msecs): " + ( this._lastOffsetMicros.get() / 1000 ) );
+			out.println( "[REPLAY] Drift from the trace's timing (msecs) 50th: " + formatMsecs( ConcurrentLatencyHistogram.getPercentile( counts, 50 ) ) 
+					+ " 90th: " + formatMsecs( ConcurrentLatencyHistogram.getPercentile( counts, 90 ) ) 
+					+ " 99th: " + formatMsecs( ConcurrentLatencyHistogram.getPercentile( counts, 99 ) ) 
+					+ " max: " + formatMsecs( this._maxLatenessNanos.get() ) );
+		}
+		
+		private static String formatMsecs( long nanos )
+		{
+			return String.format( "%.3f", nanos / 1000000.0 );
+		}
+		
+		public JSONObject toJSONObject() throws JSONException
+		{
+			long[] counts = this._lateness.snapshot();
+			JSONObject replay = new JSONObject();
+			replay.put( "trace", this._trace.getFile().getPath() );
+			replay.put( "users", this._users );
+			replay.put( "speedup", this._speedup );
+			replay.put( "achievedSpeedup", this.getAchievedSpeedup() );
+			replay.put( "replayed", this.getReplayed() );
+			replay.put( "skipped", this.getSkipped() );
+			replay.put( "loops", this._loops.get() );
+			replay.put( "traceTimeCoveredMsecs", this._lastOffsetMicros.get() / 1000 );
+			JSONObject drift = new JSONObject();
+			drift.put( "p50", ConcurrentLatencyHistogram.getPercentile( counts, 50 ) / 1000000.0 );
+			drift.put( "p90", ConcurrentLatencyHistogram.getPercentile( counts, 90 ) / 1000000.0 );
+			drift.put( "p99", ConcurrentLatencyHistogram.getPercentile( counts, 99 ) / 1000000.0 );
+			drift.put( "max", this._maxLatenessNanos.get() / 1000000.0 );
+			replay.put( "driftMsecs", drift );
+			return replay;
+		}
+	}
+	
+	/** Name of the replay trace file. */
+	protected String _traceFilename = null;
+	
+	/** How much faster than recorded to replay. */
+	protected double _speedup = 1.0;
+	
+	/** Whether to start over once the trace is done. */
+	protected boolean _loop = false;
+	
+	/** Requests due more than this long ago (nanos) are skipped, negative never skips. */
+	protected long _maxLatenessNanos = -1;
+	
+	public ReplayLoadGeneration( Generator generator, long id )
+	{
+		super( generator, id );
+	}
+	
+	public ReplayLoadGeneration( Generator generator, long id, JSONObject params )
+	{
+		super( generator, id, params );
+		
+		try
+		{
+			if( params != null )
+			{
+				this._traceFilename = params.optString( CFG_TRACE, null );
+				this._speedup = params.optDouble( CFG_SPEEDUP, 1.0 );
+				this._loop = params.optBoolean( CFG_LOOP, false );
+				long maxLateness = params.optLong( CFG_MAX_LATENESS, -1 );
+				this._maxLatenessNanos = ( maxLateness < 0 ) ? -1 : maxLateness * 1000000;
+			}
+			if( this._speedup <= 0 )
+				throw new JSONException( "Replay speedup must be positive: " + this._speedup );
+		}
+		catch( JSONException e )
+		{
+			System.out.println( "[" + this.getName() + "] could not read replay parameters. Reason: " + e.toString() );
+			this._traceFilename = null;
+		}
+	}
+	
+	/**
+	 * Joins (or starts) the replay of this thread's track.
+	 */
+	private static ReplayStatistics join( String trackName, ReplayTrace trace, double speedup, long started )
+	{
+		synchronized( Replays )
+		{
+			ReplayStatistics replay = Replays.get( trackName );
+			if( replay == null )
+			{
+				replay = new ReplayStatistics( trackName, trace, speedup );
+				replay._started = started;
+				Replays.put( trackName, replay );
+			}
+			replay._running++;
+			replay._users++;
+			return replay;
+		}
+	}
+	
+	/**
+	 * Leaves the replay of this thread's track. Returns true for the last
+	 * thread out, which reports for the track.
+	 */
+	private static boolean leave( ReplayStatistics replay )
+	{
+		synchronized( Replays )
+		{
+			replay._running--;
+			replay._finished = Math.max( replay._finished, System.currentTimeMillis() );
+			if( replay._running > 0 )
+				return false;
+			Replays.remove( replay._trackName );
+			return true;
+		}
+	}
+	
+	/** Runs this replay thread. */
+	public void run()
+	{
+		String threadName = this.getName();
+		ScenarioTrack track = this._generator.getTrack();
+		if( this._traceFilename == null )
+		{
+			System.out.println( "[" + threadName + "] no replay trace configured (" + CFG_TRACE + "), nothing to replay!" );
+			return;
+		}
+		if( !( this._generator instanceof IReplayGenerator ) )
+		{
+			System.out.println( "[" + threadName + "] generator " + this._generator.getClass().getName() + " can't replay requests, it must implement IReplayGenerator!" );
+			return;
+		}
+		IReplayGenerator replayGenerator = (IReplayGenerator) this._generator;
+		
+		ReplayTrace trace = null;
+		try
+		{
+			trace = ReplayTrace.open( this._traceFilename );
+		}
+		catch( IOException ioe )
+		{
+			System.out.println( "[" + threadName + "] could not open replay trace: " + this._traceFilename + ". Reason: " + ioe.toString() );
+			return;
+		}
+		
+		this.resetStatistics();
+		this.createLogWriters();
+		this.loadTrackConfiguration( track );
+		
+		ReplayTrace.Cursor cursor = trace.createCursor( (int) this._id, track.getMaxUsers() );
+		ReplayStatistics replay = join( track.getName(), trace, this._speedup, this._timeStarted );
+		IScoreboard scoreboard = this._generator.getScoreboard();
+		try
+		{
+			// The trace starts when the run does (as given by System.nanoTime())
+			long origin = System.nanoTime() + ( ( this._timeStarted - System.currentTimeMillis() ) * 1000000 );
+			this.sleepUntil( this._timeStarted );
+			this._lgState = LGState.Active;
+			
+			int loop = 0;
+			int lastOperationIndex = NO_OPERATION_INDEX;
+			while ( System.currentTimeMillis() <= this._timeToQuit )
+			{
+				ReplayTrace.Entry entry = cursor.next();
+				if( entry == null )
+				{
+					if( !this._loop || cursor.getShards() == 0 )
+						break;
+					cursor.rewind( ++loop );
+					replay.recordLoop( loop );
+					continue;
+				}
+				
+				long intendedStart = origin + (long) ( ( entry._offsetMicros * 1000 ) / this._speedup );
+				if( this._maxLatenessNanos >= 0 && System.nanoTime() - intendedStart > this._maxLatenessNanos )
+				{
+					replay.recordSkipped();
+					continue;
+				}
+				
+				// Build the operation ahead of time so it goes out right when it's due
+				replayGenerator.setReplayEntry( entry );
+				Operation nextOperation = this.nextRequest( lastOperationIndex );
+				// This will let generators do no-ops by returning null.
+				if( nextOperation == null ) 
+					continue;
+				
+				long offsetMicros = entry._offsetMicros;
+				long now = System.currentTimeMillis();
+				long lateness = this.sleepUntilNanos( intendedStart );
+				
+				// Update last operation index.
+				lastOperationIndex = nextOperation.getOperationIndex();
+				
+				// Store the thread name/ID so we can organize the traces.
+				nextOperation.setGeneratedBy( threadName );
+				nextOperation.setGeneratorThreadID( this._id );
+				
+				// Everything is asynchronous and the trace is the schedule
+				this._asynchOperations++;
+				nextOperation.setAsync( true );
+				nextOperation.setIntendedStartNanos( intendedStart );
+				nextOperation.setTimeQueued( System.currentTimeMillis() );
+				this._sharedWorkPool.submit( nextOperation );
+				
+				scoreboard.dropOffSchedulingLateness( now, nextOperation._operationName, lateness );
+				replay.recordReplayed( lateness, offsetMicros );
+			}
+			
+			if( cursor.getShards() == 0 )
+				System.out.println( "[" + threadName + "] has no shards of the trace to replay (more users than sessions or keys?)." );
+			else if( System.currentTimeMillis() <= this._timeToQuit )
+				System.out.println( "[" + threadName + "] replayed all of its " + cursor.getShards() + " shards of the trace." );
+		}
+		catch( InterruptedException ie )
+		{
+			System.out.println( "[" + threadName + "] replay thread interrupted exiting!" );
+		}
+		catch( Exception e )
+		{
+			System.out.println( "[" + threadName + "] replay thread died by exception! Reason: " + e.toString() );
+			e.printStackTrace();
+		}
+		finally
+		{
+			this._lgState = LGState.Inactive;
+			this.closeLogWriters();
+			if( leave( replay ) )
+				this.report( replay, scoreboard );
+		}
+	}
+	
+	private void report( ReplayStatistics replay, IScoreboard scoreboard )
+	{
+		replay.printStatistics( System.out );
+		ResultsExporter resultsExporter = ( scoreboard != null ) ? scoreboard.getResultsExporter() : null;
+		if( resultsExporter == null )
+			return;
+		
+		try
+		{
+			resultsExporter.writeRecord( ResultsExporter.REPLAY_RECORD, replay._trackName, "replay", replay.toJSONObject() );
+		}
+		catch( Exception e )
+		{
+			System.out.println( "[" + this.getName() + "] Error exporting replay statistics. Reason: " + e.toString() );
+		}
+	}
+}
@@ -43,6 +43,7 @@ import org.json.JSONObject;
 
 import radlab.rain.communication.RainPipe;
 import radlab.rain.util.ConfigUtil;
+import radlab.rain.util.ResultsExporter;
 
 /**
  * The Scenario class contains the specifications for a benchmark scenario,
@@ -62,9 +63,19 @@ public class Scenario
 	public static String CFG_USE_PIPE							= "usePipe";
 	public static String CFG_PIPE_PORT							= "pipePort";
 	public static String CFG_PIPE_THREADS						= "pipeThreads";
+	public static String CFG_PIPE_PROTOCOL						= "pipeProtocol";
 	public static String CFG_WAIT_FOR_START_SIGNAL				= "waitForStartSignal";
 	public static String CFG_MAX_SHARED_THREADS					= "maxSharedThreads";
 	public static String CFG_AGGREGATE_STATS					= "aggregateStats";
+	public static String CFG_TIMER_WHEEL						= "timerWheel";
+	public static String CFG_TIMER_WHEEL_TICK_MICROS			= "timerWheelTickMicros";
+	public static String CFG_TIMER_WHEEL_SPIN_MICROS			= "timerWheelSpinMicros";
+	public static String CFG_RNG_SEED							= "rngSeed";
+	public static String CFG_RESULTS							= "results";
+	public static String CFG_METRICS_PORT						= "metricsPort";
+	public static String CFG_METRICS_WINDOW						= "metricsWindow";
+	public static String CFG_GENERATOR_HEALTH					= "generatorHealth";
+	public static String CFG_GENERATOR_HEALTH_CONFIG			= "generatorHealthConfig";
 	
 	public static final int DEFAULT_MAX_SHARED_THREADS			= 10;
 	public static final boolean DEFAULT_AGGREGATE_STATS			= false;
@@ -83,6 +94,9 @@ public class Scenario
 	
 	private boolean _aggregateStats = DEFAULT_AGGREGATE_STATS;
 	
+	/** Writes structured (JSON/CSV) results alongside the text report, if configured. */
+	private ResultsExporter _resultsExporter = null;
+	
 	/** The instantiated tracks specified by the JSON configuration. */
 	// Use Hashtable instead of flat list
 	//private LinkedList<ScenarioTrack> _tracks = new LinkedList<ScenarioTrack>();
@@ -103,6 +117,9 @@ public class Scenario
 	public boolean getAggregateStats() { return this._aggregateStats; }
 	public void setAggregateStats( boolean val ) { this._aggregateStats = val; }
 	
+	public ResultsExporter getResultsExporter() { return this._resultsExporter; }
+	public void setResultsExporter( ResultsExporter val ) { this._resultsExporter = val; }
+	
 	public TreeMap<String,ScenarioTrack> getTracks() { return this._tracks; }
 	
 	/** Create a new and uninitialized <code>Scenario</code>. */
@@ -180,6 +197,15 @@ public class Scenario
 				RainPipe.getInstance().setNumThreads( RainConfig.getInstance()._pipeThreads );
 			}
 			
+			if( jsonConfig.has( Scenario.CFG_PIPE_PROTOCOL ) )
+			{
+				String protocol = jsonConfig.getString( Scenario.CFG_PIPE_PROTOCOL );
+				if( !protocol.equalsIgnoreCase( RainPipe.PROTOCOL_SERIALIZED ) && !protocol.equalsIgnoreCase( RainPipe.PROTOCOL_FRAMED ) )
+					throw new JSONException( "Unknown pipe protocol: " + protocol + ", expected: " + RainPipe.PROTOCOL_SERIALIZED + " or " + RainPipe.PROTOCOL_FRAMED );
+				RainConfig.getInstance()._pipeProtocol = protocol;
+				RainPipe.getInstance().setProtocol( protocol );
+			}
+			
 			boolean usePipe = false;
 			if( jsonConfig.has( Scenario.CFG_USE_PIPE) )
 				usePipe = jsonConfig.getBoolean( Scenario.CFG_USE_PIPE );
@@ -197,6 +223,30 @@ public class Scenario
 				}
 			}
 			
+			// Figure out whether think/cycle time wakeups go through a shared timer wheel
+			if( jsonConfig.has( Scenario.CFG_TIMER_WHEEL ) )
+				RainConfig.getInstance()._useTimerWheel = jsonConfig.getBoolean( Scenario.CFG_TIMER_WHEEL );
+			if( jsonConfig.has( Scenario.CFG_TIMER_WHEEL_TICK_MICROS ) )
+				RainConfig.getInstance()._timerWheelTickNanos = jsonConfig.getLong( Scenario.CFG_TIMER_WHEEL_TICK_MICROS ) * 1000;
+			if( jsonConfig.has( Scenario.CFG_TIMER_WHEEL_SPIN_MICROS ) )
+				RainConfig.getInstance()._timerWheelSpinNanos = jsonConfig.getLong( Scenario.CFG_TIMER_WHEEL_SPIN_MICROS ) * 1000;
+			
+			// Master seed for the per-user random streams
+			if( jsonConfig.has( Scenario.CFG_RNG_SEED ) )
+				RainConfig.getInstance()._rngSeed = jsonConfig.getLong( Scenario.CFG_RNG_SEED );
+			
+			// Live metrics endpoint, the window (in seconds) is what rolling rates/percentiles cover
+			if( jsonConfig.has( Scenario.CFG_METRICS_PORT ) )
+				RainConfig.getInstance()._metricsPort = jsonConfig.getInt( Scenario.CFG_METRICS_PORT );
+			if( jsonConfig.has( Scenario.CFG_METRICS_WINDOW ) )
+				RainConfig.getInstance()._metricsWindowSecs = jsonConfig.getInt( Scenario.CFG_METRICS_WINDOW );
+			
+			// Watch the load generator's own health (on by default)
+			if( jsonConfig.has( Scenario.CFG_GENERATOR_HEALTH ) )
+				RainConfig.getInstance()._generatorHealth = jsonConfig.getBoolean( Scenario.CFG_GENERATOR_HEALTH );
+			if( jsonConfig.has( Scenario.CFG_GENERATOR_HEALTH_CONFIG ) )
+				RainConfig.getInstance()._generatorHealthConfig = jsonConfig.getJSONObject( Scenario.CFG_GENERATOR_HEALTH_CONFIG );
+			
 			// Look for the profiles key OR the name of a class that generates the
 			// profiles.
 			if( jsonConfig.has( CFG_PROFILES_CREATOR_CLASS_KEY ) )
@@ -228,6 +278,9 @@ public class Scenario
 			
 			if( jsonConfig.has( CFG_AGGREGATE_STATS ) )
 				this._aggregateStats = jsonConfig.getBoolean( CFG_AGGREGATE_STATS );
+			
+			if( jsonConfig.has( CFG_RESULTS ) )
+				this._resultsExporter = new ResultsExporter( jsonConfig.getJSONObject( CFG_RESULTS ) );
 		}
 		catch ( JSONException e )
 		{
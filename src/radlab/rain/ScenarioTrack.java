@@ -32,6 +32,7 @@
 package radlab.rain;
 
 import java.lang.reflect.Constructor;
+import java.io.IOException;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -40,8 +41,13 @@ import org.json.JSONObject;
 import org.json.JSONArray;
 import org.json.JSONException;
 
+import radlab.rain.util.AsyncHttpClient;
+import radlab.rain.util.HistogramSamplingStrategy;
+import radlab.rain.util.HttpConnectionPool;
 import radlab.rain.util.MetricWriter;
 import radlab.rain.util.MetricWriterFactory;
+import radlab.rain.util.TokenBucket;
+import radlab.rain.util.TraceLogWriter;
 
 /**
  * The ScenarioTrack abstract class represents a single workload among
@@ -88,7 +94,27 @@ public abstract class ScenarioTrack
 	public static String CFG_RESOURCE_PATH                      = "resourcePath";
 	public static String CFG_OBJECT_POOL_MAX_SIZE               = "objectPoolMaxSize";
 	public static String CFG_MEAN_RESPONSE_TIME_SAMPLE_INTERVAL = "meanResponseTimeSamplingInterval";
+	public static String CFG_RESPONSE_TIME_SAMPLER				= "responseTimeSampler";
+	public static String CFG_RESPONSE_TIME_HISTOGRAM_PRECISION	= "responseTimeHistogramPrecision";
+	public static String CFG_RESPONSE_TIME_HISTOGRAM_MAX_VALUE	= "responseTimeHistogramMaxValue";
 	public static String CFG_MAX_USERS							= "maxUsers";
+	public static String CFG_SCOREBOARD_DROP_OFF_QUEUE			= "scoreboardDropOffQueue";
+	public static String CFG_SCOREBOARD_DROP_OFF_STRIPES		= "scoreboardDropOffStripes";
+	public static String CFG_SCOREBOARD_DROP_OFF_STRIPE_CAPACITY = "scoreboardDropOffStripeCapacity";
+	public static String CFG_OPEN_LOOP_BURST_SIZE				= "openLoopBurstSize";
+	public static String CFG_OPEN_LOOP_MAX_OPS_PER_SEC_PER_OPERATION = "openLoopMaxOpsPerSecPerOperation";
+	public static String CFG_HTTP_CONNECTION_POOL				= "httpConnectionPool";
+	public static String CFG_HTTP_MAX_CONNECTIONS				= "httpMaxConnections";
+	public static String CFG_HTTP_MAX_CONNECTIONS_PER_ROUTE		= "httpMaxConnectionsPerRoute";
+	public static String CFG_HTTP_IDLE_CONNECTION_TIMEOUT		= "httpIdleConnectionTimeout";
+	public static String CFG_HTTP_KEEP_ALIVE					= "httpKeepAlive";
+	public static String CFG_ASYNC_HTTP							= "asyncHttp";
+	public static String CFG_ASYNC_HTTP_MAX_CONNECTIONS_PER_HOST	= "asyncHttpMaxConnectionsPerHost";
+	public static String CFG_ASYNC_HTTP_TIMEOUT					= "asyncHttpTimeout";
+	public static String CFG_TIME_SERIES_BUCKET					= "timeSeriesBucket";
+	public static String CFG_TIME_SERIES_MAX_BUCKETS			= "timeSeriesMaxBuckets";
+	public static String CFG_TRACE_LOG							= "traceLog";
+	public static String CFG_CAPACITY_SEARCH					= "capacitySearch";
 		
 	// Defaults
 	public static long DEFAULT_OBJECT_POOL_MAX_SIZE             		= 50000;
@@ -123,7 +149,27 @@ public abstract class ScenarioTrack
 	protected String _metricSnapshotFileSuffix					= "";
 	protected ObjectPool _objPool                               = null;
 	protected long _meanResponseTimeSamplingInterval            = DEFAULT_MEAN_RESPONSE_TIME_SAMPLE_INTERVAL;
+	protected String _responseTimeSampler						= Scoreboard.POISSON_SAMPLER;
+	protected int _responseTimeHistogramPrecision				= HistogramSamplingStrategy.DEFAULT_SIGNIFICANT_DIGITS;
+	protected long _responseTimeHistogramMaxValue				= HistogramSamplingStrategy.DEFAULT_MAX_VALUE; // (nanos)
 	protected int _maxUsersFromConfig							= 0;
+	protected String _scoreboardDropOffQueue					= Scoreboard.LOCKED_DROP_OFF_QUEUE;
+	protected int _scoreboardDropOffStripes						= StripedDropOffQueue.DEFAULT_STRIPES;
+	protected int _scoreboardDropOffStripeCapacity				= StripedDropOffQueue.DEFAULT_STRIPE_CAPACITY;
+	protected long _openLoopBurstSize							= 1;
+	// Shared limit on async operations (the current profile's openLoopMaxOpsPerSec), plus optional per-operation limits
+	protected TokenBucket _rateLimiter							= new TokenBucket();
+	protected Hashtable<String,TokenBucket> _operationRateLimiters = new Hashtable<String,TokenBucket>();
+	// Connection pool shared by the track's HttpTransports (null if every user has its own client)
+	protected HttpConnectionPool _httpConnectionPool			= null;
+	// Non-blocking client for asynchronous (open loop) HTTP operations (null if not used)
+	protected AsyncHttpClient _asyncHttpClient					= null;
+	protected long _timeSeriesBucketMsecs						= TimeSeries.DEFAULT_BUCKET_MSECS;
+	protected int _timeSeriesMaxBuckets							= TimeSeries.DEFAULT_MAX_BUCKETS;
+	// Binary trace log writer shared by the track (null if every thread writes its own text logs)
+	protected TraceLogWriter _traceLogWriter					= null;
+	// Searches for the track's capacity instead of following the load schedule (null if not searching)
+	protected CapacitySearch _capacitySearch					= null;
 	
 	/**
 	 * Create a new scenario track that will be benchmarked as part of the
@@ -369,6 +415,13 @@ public abstract class ScenarioTrack
 		// 12 Configure the response time sampler
 		if( config.has( ScenarioTrack.CFG_MEAN_RESPONSE_TIME_SAMPLE_INTERVAL ) )
 			this._meanResponseTimeSamplingInterval = config.getLong( ScenarioTrack.CFG_MEAN_RESPONSE_TIME_SAMPLE_INTERVAL );
+		if( config.has( ScenarioTrack.CFG_RESPONSE_TIME_SAMPLER ) )
+			this._responseTimeSampler = config.getString( ScenarioTrack.CFG_RESPONSE_TIME_SAMPLER );
+		if( config.has( ScenarioTrack.CFG_RESPONSE_TIME_HISTOGRAM_PRECISION ) )
+			this._responseTimeHistogramPrecision = config.getInt( ScenarioTrack.CFG_RESPONSE_TIME_HISTOGRAM_PRECISION );
+		// Max value is given in seconds, histograms record nanos
+		if( config.has( ScenarioTrack.CFG_RESPONSE_TIME_HISTOGRAM_MAX_VALUE ) )
+			this._responseTimeHistogramMaxValue = (long) ( config.getDouble( ScenarioTrack.CFG_RESPONSE_TIME_HISTOGRAM_MAX_VALUE ) * 1000000000.0 );
 		// 13 Configure the maxUsers if specified
 		if( config.has( ScenarioTrack.CFG_MAX_USERS ) )
 			this._maxUsersFromConfig = config.getInt( ScenarioTrack.CFG_MAX_USERS );
@@ -391,6 +444,93 @@ public abstract class ScenarioTrack
 		{
 			this._resourcePath = config.getString(ScenarioTrack.CFG_RESOURCE_PATH);
 		}
+		// 16 Select the scoreboard's drop off queue (locked by default)
+		if( config.has( ScenarioTrack.CFG_SCOREBOARD_DROP_OFF_QUEUE ) )
+			this._scoreboardDropOffQueue = config.getString( ScenarioTrack.CFG_SCOREBOARD_DROP_OFF_QUEUE );
+		if( config.has( ScenarioTrack.CFG_SCOREBOARD_DROP_OFF_STRIPES ) )
+			this._scoreboardDropOffStripes = config.getInt( ScenarioTrack.CFG_SCOREBOARD_DROP_OFF_STRIPES );
+		if( config.has( ScenarioTrack.CFG_SCOREBOARD_DROP_OFF_STRIPE_CAPACITY ) )
+			this._scoreboardDropOffStripeCapacity = config.getInt( ScenarioTrack.CFG_SCOREBOARD_DROP_OFF_STRIPE_CAPACITY );
+		// 17 Configure the async rate limiters (the track-wide rate comes from each load profile)
+		if( config.has( ScenarioTrack.CFG_OPEN_LOOP_BURST_SIZE ) )
+			this._openLoopBurstSize = Math.max( 1, config.getLong( ScenarioTrack.CFG_OPEN_LOOP_BURST_SIZE ) );
+		if( config.has( ScenarioTrack.CFG_OPEN_LOOP_MAX_OPS_PER_SEC_PER_OPERATION ) )
+		{
+			JSONObject operationRates = config.getJSONObject( ScenarioTrack.CFG_OPEN_LOOP_MAX_OPS_PER_SEC_PER_OPERATION );
+			Iterator<String> operationNames = operationRates.keys();
+			while( operationNames.hasNext() )
+			{
+				String operationName = operationNames.next();
+				this._operationRateLimiters.put( operationName, new TokenBucket( operationRates.getDouble( operationName ), this._openLoopBurstSize ) );
+			}
+		}
+		// 18 Configure the shared HTTP connection pool
+		if( config.has( ScenarioTrack.CFG_HTTP_CONNECTION_POOL ) && config.getBoolean( ScenarioTrack.CFG_HTTP_CONNECTION_POOL ) )
+		{
+			int maxConnections = HttpConnectionPool.DEFAULT_MAX_CONNECTIONS;
+			int maxConnectionsPerRoute = HttpConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+			long idleTimeout = HttpConnectionPool.DEFAULT_IDLE_TIMEOUT_MSECS;
+			long keepAlive = HttpConnectionPool.DEFAULT_KEEP_ALIVE_MSECS;
+			if( config.has( ScenarioTrack.CFG_HTTP_MAX_CONNECTIONS ) )
+				maxConnections = config.getInt( ScenarioTrack.CFG_HTTP_MAX_CONNECTIONS );
+			if( config.has( ScenarioTrack.CFG_HTTP_MAX_CONNECTIONS_PER_ROUTE ) )
+				maxConnectionsPerRoute = config.getInt( ScenarioTrack.CFG_HTTP_MAX_CONNECTIONS_PER_ROUTE );
+			// Timeouts are specified in seconds
+			if( config.has( ScenarioTrack.CFG_HTTP_IDLE_CONNECTION_TIMEOUT ) )
+				idleTimeout = config.getLong( ScenarioTrack.CFG_HTTP_IDLE_CONNECTION_TIMEOUT ) * 1000;
+			if( config.has( ScenarioTrack.CFG_HTTP_KEEP_ALIVE ) )
+				keepAlive = config.getLong( ScenarioTrack.CFG_HTTP_KEEP_ALIVE ) * 1000;
+			this._httpConnectionPool = new HttpConnectionPool( maxConnections, maxConnectionsPerRoute, idleTimeout, keepAlive );
+		}
+		// 19 Configure the non-blocking HTTP client for asynchronous operations
+		if( config.has( ScenarioTrack.CFG_ASYNC_HTTP ) && config.getBoolean( ScenarioTrack.CFG_ASYNC_HTTP ) )
+		{
+			int maxConnectionsPerHost = AsyncHttpClient.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+			long timeout = AsyncHttpClient.DEFAULT_TIMEOUT_MSECS;
+			if( config.has( ScenarioTrack.CFG_ASYNC_HTTP_MAX_CONNECTIONS_PER_HOST ) )
+				maxConnectionsPerHost = config.getInt( ScenarioTrack.CFG_ASYNC_HTTP_MAX_CONNECTIONS_PER_HOST );
+			// Timeout is specified in seconds
+			if( config.has( ScenarioTrack.CFG_ASYNC_HTTP_TIMEOUT ) )
+				timeout = config.getLong( ScenarioTrack.CFG_ASYNC_HTTP_TIMEOUT ) * 1000;
+			try
+			{
+				this._asyncHttpClient = new AsyncHttpClient( maxConnectionsPerHost, timeout, AsyncHttpClient.DEFAULT_IDLE_TIMEOUT_MSECS );
+				this._asyncHttpClient.start();
+			}
+			catch( IOException e )
+			{
+				System.out.println( this + " Error creating the async HTTP client, asynchronous operations will block. Reason: " + e.toString() );
+				this._asyncHttpClient = null;
+			}
+		}
+		// 20 Configure the scoreboard's time series (bucket width is given in seconds, 0 turns it off)
+		if( config.has( ScenarioTrack.CFG_TIME_SERIES_BUCKET ) )
+			this._timeSeriesBucketMsecs = (long) ( config.getDouble( ScenarioTrack.CFG_TIME_SERIES_BUCKET ) * 1000 );
+		if( config.has( ScenarioTrack.CFG_TIME_SERIES_MAX_BUCKETS ) )
+			this._timeSeriesMaxBuckets = config.getInt( ScenarioTrack.CFG_TIME_SERIES_MAX_BUCKETS );
+		// 21 Configure the binary trace log (replaces the per-thread text logs)
+		if( config.has( ScenarioTrack.CFG_TRACE_LOG ) )
+			this._traceLogWriter = new TraceLogWriter( this._name, config.getJSONObject( ScenarioTrack.CFG_TRACE_LOG ) );
+		// 22 Configure the SLO-driven capacity search (needs the load schedule for its defaults)
+		if( config.has( ScenarioTrack.CFG_CAPACITY_SEARCH ) )
+			this._capacitySearch = new CapacitySearch( this, config.getJSONObject( ScenarioTrack.CFG_CAPACITY_SEARCH ) );
+	}
+	
+	public TokenBucket getRateLimiter() { return this._rateLimiter; }
+	public Hashtable<String,TokenBucket> getOperationRateLimiters() { return this._operationRateLimiters; }
+	public HttpConnectionPool getHttpConnectionPool() { return this._httpConnectionPool; }
+	public AsyncHttpClient getAsyncHttpClient() { return this._asyncHttpClient; }
+	public CapacitySearch getCapacitySearch() { return this._capacitySearch; }
+	
+	/**
+	 * Re-rates the track-wide rate limiter for a new load profile. Load
+	 * managers call this as soon as they switch profiles.
+	 * 
+	 * @param profile   The profile that just became current.
+	 */
+	public void updateRateLimiter( LoadProfile profile )
+	{
+		this._rateLimiter.setRate( profile.getOpenLoopMaxOpsPerSec(), this._openLoopBurstSize );
 	}
 	
 	// Factory methods
@@ -441,6 +581,15 @@ public abstract class ScenarioTrack
 		scoreboard.setScenarioTrack( this );
 		scoreboard.setUsingMetricSnapshots( this._useMetricSnapshots );
 		scoreboard.setMeanResponseTimeSamplingInterval( this._meanResponseTimeSamplingInterval );
+		scoreboard.setResponseTimeSampler( this._responseTimeSampler );
+		scoreboard.setResponseTimeHistogramPrecision( this._responseTimeHistogramPrecision );
+		scoreboard.setResponseTimeHistogramMaxValue( this._responseTimeHistogramMaxValue );
+		scoreboard.setDropOffQueueType( this._scoreboardDropOffQueue );
+		scoreboard.setDropOffQueueStripes( this._scoreboardDropOffStripes );
+		scoreboard.setDropOffQueueStripeCapacity( this._scoreboardDropOffStripeCapacity );
+		scoreboard.setTimeSeriesBucketMsecs( this._timeSeriesBucketMsecs );
+		scoreboard.setTimeSeriesMaxBuckets( this._timeSeriesMaxBuckets );
+		scoreboard.setTraceLogWriter( this._traceLogWriter );
 		return scoreboard;
 	}
 	
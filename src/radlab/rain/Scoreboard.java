@@ -32,12 +32,14 @@
 package radlab.rain;
 
 //import java.lang.Thread.State;
+import java.util.ArrayDeque;
 import java.util.LinkedList;
 import java.util.Hashtable;
 import java.util.TreeMap;
 import java.util.Iterator;
 //import java.util.Enumeration;
 import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.io.PrintStream;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -46,7 +48,16 @@ import java.text.NumberFormat;
 import java.text.DecimalFormat;
 
 import radlab.rain.util.MetricWriter;
+import radlab.rain.util.AsyncHttpClient;
+import radlab.rain.util.HistogramSamplingStrategy;
+import radlab.rain.util.HttpConnectionPool;
+import radlab.rain.util.ISamplingStrategy;
 import radlab.rain.util.PoissonSamplingStrategy;
+import radlab.rain.util.ResultsExporter;
+import radlab.rain.util.TokenBucket;
+import radlab.rain.util.TraceLogWriter;
+
+import org.json.JSONObject;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -75,6 +86,15 @@ public class Scoreboard implements Runnable, IScoreboard
 	public static String LATE_LABEL               	= "[LATE]";
 	public static String RAMP_UP_LABEL            	= "[RAMP-UP]";
 	public static String RAMP_DOWN_LABEL          	= "[RAMP-DOWN]";
+	public static String GENERATOR_SATURATED_LABEL	= "[GENERATOR-SATURATED]";
+	
+	/** Drop off queue types: a single locked queue or striped lock-free ring buffers. */
+	public static String LOCKED_DROP_OFF_QUEUE		= "locked";
+	public static String STRIPED_DROP_OFF_QUEUE		= "striped";
+	
+	/** Response time samplers: Poisson sampling of raw values or a log-linear histogram of every value. */
+	public static String POISSON_SAMPLER			= "poisson";
+	public static String HISTOGRAM_SAMPLER			= "histogram";
 	
 	/** Time in seconds to wait for worker thread to exit before interrupt. */
 	public static int WORKER_EXIT_TIMEOUT 			= 60;
@@ -84,7 +104,11 @@ public class Scoreboard implements Runnable, IScoreboard
 	private long _metricSnapshotInterval			= (1 * 60 * 1000); // Every minute
 	/* Response time sampling interval */
 	private long _meanResponseTimeSamplingInterval 	= 500;
+	private String _responseTimeSampler				= POISSON_SAMPLER;
+	private int _responseTimeHistogramPrecision		= HistogramSamplingStrategy.DEFAULT_SIGNIFICANT_DIGITS;
+	private long _responseTimeHistogramMaxValue		= HistogramSamplingStrategy.DEFAULT_MAX_VALUE;
 	private static String NEWLINE 					= System.getProperty("line.separator");
+	private static int RESPONSE_TIME_STAT_SLOT		= ObjectPoolGeneric.slotOf( ResponseTimeStat.NAME );
 	
 	/* Time markers. */
 	private long _startTime 			= 0;
@@ -92,15 +116,34 @@ public class Scoreboard implements Runnable, IScoreboard
 	private long _totalDropOffWaitTime 	= 0;
 	private long _maxDropOffWaitTime 	= 0;
 	private long _totalDropoffs 		= 0;
+	private long _maxDropOffQDepth 		= 0;
+	private long _totalDropOffQDepth 	= 0;
+	private long _dropOffQDepthSamples 	= 0;
 	private boolean _usingMetricSnapshots = false;
 	private MetricWriter _metricWriter	= null;
+	private ResultsExporter _resultsExporter = null;
+	private LiveMetrics _liveMetrics	= null;
+	private GeneratorHealth _generatorHealth = null;
+	private ScorecardOutbox _scorecardOutbox = null;
+	private IScorecardListener _scorecardListener = null;
+	// Per-second (by default) series of every operation, covering the whole run
+	private long _timeSeriesBucketMsecs	= TimeSeries.DEFAULT_BUCKET_MSECS;
+	private int _timeSeriesMaxBuckets	= TimeSeries.DEFAULT_MAX_BUCKETS;
+	private TimeSeries _timeSeries		= null;
+	// Binary trace log shared by the track (null if every thread writes its own text logs)
+	private TraceLogWriter _traceLogWriter = null;
+	// Name and start time of the latest load profile interval we saw results for
+	private String _lastIntervalName	= null;
+	private long _lastIntervalStartTime	= 0;
+	// Results of just the latest interval activation (only kept for a listener)
+	private Scorecard _activationScorecard = null;
 	
 	// Scorecards - per-interval scorecards plus the final scorecard
 	private TreeMap<String,Scorecard> _intervalScorecards = new TreeMap<String,Scorecard>();
 	private Scorecard finalCard 							= null;
 	// Interim stats support
 	ObjectPoolGeneric _statsObjPool 			= null;
-	LinkedList<ResponseTimeStat> _responseTimeQ = new LinkedList<ResponseTimeStat>();
+	ArrayDeque<ResponseTimeStat> _responseTimeQ = new ArrayDeque<ResponseTimeStat>();
 	Object _responseTimeQLock 					= new Object();
 	
 	/* Other aggregate counters for steady state. */
@@ -122,17 +165,24 @@ public class Scoreboard implements Runnable, IScoreboard
 	/** If true, this scoreboard will refuse any new results. */
 	private boolean _done = false;
 	
-	/** Queue that contains all results that have been dropped off. */
-	private LinkedList<OperationExecution> _dropOffQ = new LinkedList<OperationExecution>();
+	/** Queue that contains all results that have been dropped off. The worker
+	 * swaps it with the processing queue; ArrayDeques keep their capacity across
+	 * swaps, so drop offs don't allocate once the queues have grown. */
+	private ArrayDeque<OperationExecution> _dropOffQ = new ArrayDeque<OperationExecution>();
 	
 	/** Queue that contains all results that need to be processed. */
-	private LinkedList<OperationExecution> _processingQ = new LinkedList<OperationExecution>();
+	private ArrayDeque<OperationExecution> _processingQ = new ArrayDeque<OperationExecution>();
 	
 	/** Lock for access to _dropOffQ */
 	private Object _dropOffQLock = new Object();
 	
-	/** Lock for access to waitTime table */
-	private Object _waitTimeDropOffLock = new Object();
+	/** Which drop off queue to use (locked or striped). */
+	private String _dropOffQueueType = LOCKED_DROP_OFF_QUEUE;
+	private int _dropOffQueueStripes = StripedDropOffQueue.DEFAULT_STRIPES;
+	private int _dropOffQueueStripeCapacity = StripedDropOffQueue.DEFAULT_STRIPE_CAPACITY;
+	
+	/** Lock-free replacement for _dropOffQ (only created if the striped drop off queue is selected). */
+	private StripedDropOffQueue _stripedDropOffQ = null;
 	
 	/** Lock for error summary table */
 	private Object _errorSummaryDropOffLock = new Object();
@@ -143,9 +193,9 @@ public class Scoreboard implements Runnable, IScoreboard
 	/** A mapping of each operation with its summary. */
 	//private Hashtable<String,OperationSummary> _operationMap = new Hashtable<String,OperationSummary>();
 	
-	/** A mapping of each operation with its wait/cycle time. */
+	/** A mapping of each operation with its wait/cycle time. Each summary is locked individually. */
 	//private Hashtable<String,WaitTimeSummary> _waitTimeMap = new Hashtable<String,WaitTimeSummary>();
-	private TreeMap<String,WaitTimeSummary> _waitTimeMap = new TreeMap<String,WaitTimeSummary>();
+	private ConcurrentSkipListMap<String,WaitTimeSummary> _waitTimeMap = new ConcurrentSkipListMap<String,WaitTimeSummary>();
 	
 	private Thread _workerThread = null;
 	private ScenarioTrack _owner = null;
@@ -168,6 +218,31 @@ public class Scoreboard implements Runnable, IScoreboard
 			this._meanResponseTimeSamplingInterval = val; 
 	}
 	
+	public String getResponseTimeSampler() { return this._responseTimeSampler; }
+	public void setResponseTimeSampler( String val ) { this._responseTimeSampler = val; }
+	
+	public int getResponseTimeHistogramPrecision() { return this._responseTimeHistogramPrecision; }
+	public void setResponseTimeHistogramPrecision( int val ) { this._responseTimeHistogramPrecision = val; }
+	
+	public long getResponseTimeHistogramMaxValue() { return this._responseTimeHistogramMaxValue; }
+	public void setResponseTimeHistogramMaxValue( long val ) { this._responseTimeHistogramMaxValue = val; }
+	
+	/**
+	 * Creates a new sampler for response (and wait) times using the
+	 * configured strategy.
+	 */
+	private ISamplingStrategy createSamplingStrategy()
+	{
+		if( this.isUsingHistograms() )
+			return new HistogramSamplingStrategy( this._responseTimeHistogramPrecision, this._responseTimeHistogramMaxValue );
+		return new PoissonSamplingStrategy( this._meanResponseTimeSamplingInterval );
+	}
+	
+	private boolean isUsingHistograms()
+	{
+		return this._responseTimeSampler.equalsIgnoreCase( HISTOGRAM_SAMPLER );
+	}
+	
 	public long getStartTimestamp() { return this._startTime; }
 	public void setStartTimestamp( long val ) { this._startTime = val; }
 	
@@ -192,11 +267,61 @@ public class Scoreboard implements Runnable, IScoreboard
 	public MetricWriter getMetricWriter() { return this._metricWriter; }
 	public void setMetricWriter( MetricWriter val ) { this._metricWriter = val; }
 	
+	public ResultsExporter getResultsExporter() { return this._resultsExporter; }
+	public void setResultsExporter( ResultsExporter val ) { this._resultsExporter = val; }
+	
+	public LiveMetrics getLiveMetrics() { return this._liveMetrics; }
+	public void setLiveMetrics( LiveMetrics val ) { this._liveMetrics = val; }
+	
+	public GeneratorHealth getGeneratorHealth() { return this._generatorHealth; }
+	public void setGeneratorHealth( GeneratorHealth val ) { this._generatorHealth = val; }
+	
+	public ScorecardOutbox getScorecardOutbox() { return this._scorecardOutbox; }
+	public void setScorecardOutbox( ScorecardOutbox val ) { this._scorecardOutbox = val; }
+	
+	public IScorecardListener getScorecardListener() { return this._scorecardListener; }
+	public void setScorecardListener( IScorecardListener val ) { this._scorecardListener = val; }
+	
+	public long getTimeSeriesBucketMsecs() { return this._timeSeriesBucketMsecs; }
+	public void setTimeSeriesBucketMsecs( long val ) { this._timeSeriesBucketMsecs = val; }
+	
+	public int getTimeSeriesMaxBuckets() { return this._timeSeriesMaxBuckets; }
+	public void setTimeSeriesMaxBuckets( int val ) { this._timeSeriesMaxBuckets = val; }
+	
+	public TimeSeries getTimeSeries() { return this._timeSeries; }
+	
+	public TraceLogWriter getTraceLogWriter() { return this._traceLogWriter; }
+	public void setTraceLogWriter( TraceLogWriter val ) { this._traceLogWriter = val; }
+	
 	public String getTargetHost() { return this._trackTargetHost; }
 	public void setTargetHost( String val ) { this._trackTargetHost = val; }
 	
 	public Scorecard getFinalScorecard() { return this.finalCard; }
 	
+	public String getDropOffQueueType() { return this._dropOffQueueType; }
+	public void setDropOffQueueType( String val ) { this._dropOffQueueType = val; }
+	
+	public int getDropOffQueueStripes() { return this._dropOffQueueStripes; }
+	public void setDropOffQueueStripes( int val ) { this._dropOffQueueStripes = val; }
+	
+	public int getDropOffQueueStripeCapacity() { return this._dropOffQueueStripeCapacity; }
+	public void setDropOffQueueStripeCapacity( int val ) { this._dropOffQueueStripeCapacity = val; }
+	
+	/**
+	 * Returns the number of results dropped off but not yet picked up by the
+	 * worker thread.
+	 */
+	public long getDropOffQueueDepth()
+	{
+		if( this._stripedDropOffQ != null )
+			return this._stripedDropOffQ.getDepth();
+		
+		synchronized( this._dropOffQLock )
+		{
+			return this._dropOffQ.size();
+		}
+	}
+	
 	public void registerErrorLogHandle( String owner, FileWriter logHandle )
 	{
 		synchronized( this._errorLogHandleMap )
@@ -257,6 +382,14 @@ public class Scoreboard implements Runnable, IScoreboard
 		double runDuration = (double) ( this._endTime - this._startTime ) / 1000.0;
 		this.finalCard = new Scorecard( "final", runDuration, this._trackName );
 		
+		if( STRIPED_DROP_OFF_QUEUE.equalsIgnoreCase( this._dropOffQueueType ) )
+			this._stripedDropOffQ = new StripedDropOffQueue( this._dropOffQueueStripes, this._dropOffQueueStripeCapacity );
+		else this._stripedDropOffQ = null;
+		
+		if( this._timeSeriesBucketMsecs > 0 )
+			this._timeSeries = new TimeSeries( this._timeSeriesBucketMsecs, this._timeSeriesMaxBuckets );
+		else this._timeSeries = null;
+		
 		this.reset();
 	}
 	
@@ -269,12 +402,11 @@ public class Scoreboard implements Runnable, IScoreboard
 			this._dropOffQ.clear();
 		}
 		this._processingQ.clear();
+		if( this._stripedDropOffQ != null )
+			this._stripedDropOffQ.clear();
 		
 		// Clear the wait/cycle time map
-		synchronized( this._waitTimeDropOffLock )
-		{
-			this._waitTimeMap.clear();
-		}
+		this._waitTimeMap.clear();
 		
 		this.finalCard._totalActionsSuccessful = 0;
 		this._totalDropoffs = 0;
@@ -285,8 +417,12 @@ public class Scoreboard implements Runnable, IScoreboard
 		this.finalCard._totalOpsSuccessful = 0;
 		this.finalCard._totalOpsSync = 0;
 		this._maxDropOffWaitTime = 0;
+		this._maxDropOffQDepth = 0;
+		this._totalDropOffQDepth = 0;
+		this._dropOffQDepthSamples = 0;
 		this.finalCard._totalOpsLate = 0;
 		this.finalCard._totalOpResponseTime = 0;
+		this.finalCard._generatorSaturatedSecs = 0;
 	}
 	
 	public void dropOffWaitTime( long time, String opName, long waitTime )
@@ -297,15 +433,11 @@ public class Scoreboard implements Runnable, IScoreboard
 		if( !this.isSteadyState( time ) )
 			return;
 		
-		synchronized( this._waitTimeDropOffLock )
+		WaitTimeSummary waitTimeSummary = this.getWaitTimeSummary( opName );
+		
+		// Only threads issuing the same operation contend for a summary
+		synchronized( waitTimeSummary )
 		{
-			WaitTimeSummary waitTimeSummary = this._waitTimeMap.get( opName );
-			if( waitTimeSummary == null )
-			{
-				waitTimeSummary = new WaitTimeSummary( new PoissonSamplingStrategy( this._meanResponseTimeSamplingInterval ) );
-				this._waitTimeMap.put( opName, waitTimeSummary );
-			}
-			
 			waitTimeSummary.count++;
 			waitTimeSummary.totalWaitTime += waitTime;
 			if( waitTime < waitTimeSummary.minWaitTime )
@@ -316,10 +448,46 @@ public class Scoreboard implements Runnable, IScoreboard
 		}
 	}
 	
+	public void dropOffSchedulingLateness( long time, String opName, long lateness )
+	{
+		// Oversleeping is a sign of an overloaded generator whenever it happens
+		if( this._generatorHealth != null )
+			this._generatorHealth.recordOversleep( lateness );
+		
+		if( this._done )
+			return;
+		
+		if( !this.isSteadyState( time ) )
+			return;
+		
+		WaitTimeSummary waitTimeSummary = this.getWaitTimeSummary( opName );
+		synchronized( waitTimeSummary )
+		{
+			waitTimeSummary.wakeups++;
+			waitTimeSummary.totalLateness += lateness;
+			if( lateness > waitTimeSummary.maxLateness )
+				waitTimeSummary.maxLateness = lateness;
+		}
+	}
+	
+	private WaitTimeSummary getWaitTimeSummary( String opName )
+	{
+		WaitTimeSummary waitTimeSummary = this._waitTimeMap.get( opName );
+		if( waitTimeSummary == null )
+		{
+			waitTimeSummary = new WaitTimeSummary( this.createSamplingStrategy() );
+			WaitTimeSummary existing = this._waitTimeMap.putIfAbsent( opName, waitTimeSummary );
+			if( existing != null )
+				waitTimeSummary = existing;
+		}
+		return waitTimeSummary;
+	}
+	
 	public void dropOff( OperationExecution result )
 	{
 		if ( this._done )
 		{
+			result.recycle();
 			return;
 		}
 		
@@ -330,23 +498,6 @@ public class Scoreboard implements Runnable, IScoreboard
 		 * Effective Load: Number of operations that complete successfully
 		 *                 within the steady state period.
 		 */
-		long qStart = System.currentTimeMillis();
-		synchronized( this._dropOffQLock )
-		{
-			long qEnd = System.currentTimeMillis();
-			long qTime = ( qEnd - qStart );
-			
-			this._totalDropOffWaitTime += qTime; 
-			this._totalDropoffs++;
-			
-			if ( qTime > this._maxDropOffWaitTime )
-			{
-				this._maxDropOffWaitTime = qTime;
-			}
-			
-			this._dropOffQ.add( result );
-		}
-		
 		boolean isSteadyState = false;
 		
 		// Set the trace label accordingly.
@@ -372,30 +523,33 @@ public class Scoreboard implements Runnable, IScoreboard
 			result.setTraceLabel( Scoreboard.RAMP_DOWN_LABEL );
 		}
 		
+		// Capture the failure reason now, the operation may be recycled before
+		// the worker thread gets to this result. The trace label is set before
+		// the hand off so the worker thread never sees an unlabelled result.
+		result.setFailureReason( result.getOperation().getFailureReason() );
+		
 		String generatedBy = result.getOperation().getGeneratedBy(); 
+		TraceLogWriter traceLog = this._traceLogWriter;
 		
-		// If this operation failed, write out the error information.
-		if ( isSteadyState && result.getOperation().isFailed() )
+		// If this operation failed, write out the error information. The error
+		// summary is tallied by the worker thread (see processSteadyStateResult).
+		if ( isSteadyState && result.getOperation().isFailed() && traceLog != null )
 		{
-			// Keep track of why the operation failed so we can report it at the end
-			synchronized( this._errorSummaryDropOffLock )
+			Throwable failureReason = result.getOperation().getFailureReason();
+			if( failureReason != null )
 			{
-				Throwable failure = result.getOperation().getFailureReason();
-				if( failure != null )
+				LinkedList<String> lines = new LinkedList<String>();
+				lines.add( failureReason.toString() );
+				if( RainConfig.getInstance()._verboseErrors )
 				{
-					StringBuffer failureKey = new StringBuffer();
-					failureKey.append( failure.getMessage() ).append( " (" ).append( failure.getClass().toString() ).append( ")" );
-					String failureClass = failureKey.toString();
-					ErrorSummary errors = this._errorMap.get( failureClass );
-					if( errors == null )
-					{
-						errors = new ErrorSummary( failureClass );
-						this._errorMap.put( failureClass, errors );
-					}
-					errors._errorCount++;
+					for( StackTraceElement frame : failureReason.getStackTrace() )
+						lines.add( frame.toString() );
 				}
+				traceLog.offer( new TraceLogWriter.Record( TraceLogWriter.ERROR_RECORD, result.getTimeStarted(), result._operationName, generatedBy, result.getExecutionTimeNanos(), TraceLogWriter.STATUS_FAILED, lines ) );
 			}
-			
+		}
+		else if ( isSteadyState && result.getOperation().isFailed() )
+		{
 			FileWriter errorLogger = null;
 			synchronized( this._errorLogHandleMap )
 			{
@@ -433,7 +587,14 @@ public class Scoreboard implements Runnable, IScoreboard
 		// Flip a coin to determine whether we log or not?
 		double randomVal = this._random.nextDouble();
 		
-		if( this._logSamplingProbability == 1.0 || randomVal <= this._logSamplingProbability )
+		if( traceLog != null && ( this._logSamplingProbability == 1.0 || randomVal <= this._logSamplingProbability ) )
+		{
+			// Hand the requests over to the trace log writer as they are, no formatting on this thread
+			TraceRecord traceRec = result.getOperation().detachTrace();
+			if( traceRec != null && traceRec._lstRequests.size() > 0 )
+				traceLog.offer( new TraceLogWriter.Record( TraceLogWriter.TRACE_RECORD, result.getTimeStarted(), result._operationName, generatedBy, result.getExecutionTimeNanos(), result.isFailed() ? TraceLogWriter.STATUS_FAILED : TraceLogWriter.STATUS_SUCCEEDED, traceRec._lstRequests ) );
+		}
+		else if( this._logSamplingProbability == 1.0 || randomVal <= this._logSamplingProbability )
 		{	
 			FileWriter logger = null;
 			synchronized( this._logHandleMap )
@@ -469,9 +630,38 @@ public class Scoreboard implements Runnable, IScoreboard
 			// Discard the trace
 			result.getOperation().disposeOfTrace();
 		}
+		
+		// Hand the result off to the worker thread last. From here on the
+		// worker owns it and recycles it once it's been processed, so the
+		// result must not be touched after the hand off.
+		Operation operation = result.getOperation();
+		if( this._stripedDropOffQ != null )
+		{
+			this._stripedDropOffQ.offer( result );
+		}
+		else
+		{
+			long qStart = System.currentTimeMillis();
+			synchronized( this._dropOffQLock )
+			{
+				long qEnd = System.currentTimeMillis();
+				long qTime = ( qEnd - qStart );
+				
+				this._totalDropOffWaitTime += qTime; 
+				this._totalDropoffs++;
+				
+				if ( qTime > this._maxDropOffWaitTime )
+				{
+					this._maxDropOffWaitTime = qTime;
+				}
+				
+				this._dropOffQ.add( result );
+			}
+		}
+		
 		// Return operation object to pool
 		if( this._owner.getObjectPool().isActive() )
-			this._owner.getObjectPool().returnObject( result.getOperation() );
+			this._owner.getObjectPool().returnObject( operation );
 	}
 	
 	public boolean isSteadyState( long time )
@@ -549,6 +739,14 @@ public class Scoreboard implements Runnable, IScoreboard
 		
 		double totalUsers = 0.0;
 		double totalIntervalActivations = 0.0;
+		// The last interval activation never got closed
+		if( this._lastIntervalName != null && this._intervalScorecards.containsKey( this._lastIntervalName ) )
+		{
+			this.markGeneratorSaturation( this._intervalScorecards.get( this._lastIntervalName ), this._lastIntervalStartTime, this._endTime );
+			this.closeActivationScorecard( (int) Math.round( this._intervalScorecards.get( this._lastIntervalName )._activeCount ), this._endTime );
+		}
+		if( this._generatorHealth != null )
+			this.finalCard._generatorSaturatedSecs = this._generatorHealth.getSaturatedSecs( this._startTime, this._endTime );
 		out.println( this + " Interval results-------------------: " );
 		// Print out per-interval stats?
 		for( Scorecard card : this._intervalScorecards.values() )
@@ -588,6 +786,10 @@ public class Scoreboard implements Runnable, IScoreboard
 			
 			totalUsers += card._numberOfUsers * card._activeCount;
 			totalIntervalActivations += card._activeCount;
+			// Export before printing, printing purges the percentile samples
+			this.exportScorecard( card );
+			if( this._scorecardOutbox != null )
+				this._scorecardOutbox.post( card, (int) Math.ceil( card._activeCount ), 0, true );
 			card.printStatistics( out );
 		}
 		
@@ -605,21 +807,46 @@ public class Scoreboard implements Runnable, IScoreboard
 		if( totalIntervalActivations != 0 )
 			averageNumberOfUsers = totalUsers/totalIntervalActivations;
 		finalCard._numberOfUsers = averageNumberOfUsers;		
+		if( this._scorecardOutbox != null )
+			this._scorecardOutbox.post( this.finalCard, 0, this._startTime, true );
+		if( this._scorecardListener != null )
+			this._scorecardListener.runFinished( this.finalCard );
 		out.println( this + " Final results----------------------: " );
 		out.println( this + " Target host                        : " + this._trackTargetHost );
-		out.println( this + " Total drop offs                    : " + this._totalDropoffs );
-		out.println( this + " Average drop off Q time (ms)       : " + this._formatter.format( (double) this._totalDropOffWaitTime / (double) this._totalDropoffs ) );
-		out.println( this + " Max drop off Q time (ms)           : " + this._maxDropOffWaitTime );
+		if( this._stripedDropOffQ != null )
+		{
+			// The striped queue measures hand off times in nanos
+			long totalDropoffs = this._stripedDropOffQ.getTotalDropOffs();
+			out.println( this + " Drop off queue                     : " + this._stripedDropOffQ.toString() );
+			out.println( this + " Total drop offs                    : " + totalDropoffs );
+			out.println( this + " Average drop off Q time (ms)       : " + this._formatter.format( ( (double) this._stripedDropOffQ.getTotalWaitNanos() / (double) totalDropoffs ) / 1000000.0 ) );
+			out.println( this + " Max drop off Q time (ms)           : " + this._formatter.format( (double) this._stripedDropOffQ.getMaxWaitNanos() / 1000000.0 ) );
+			out.println( this + " Average drop off Q depth           : " + this._formatter.format( this._stripedDropOffQ.getAverageDepth() ) );
+			out.println( this + " Max drop off Q depth               : " + this._stripedDropOffQ.getMaxDepth() );
+		}
+		else
+		{
+			double averageDepth = 0.0;
+			if( this._dropOffQDepthSamples > 0 )
+				averageDepth = (double) this._totalDropOffQDepth / (double) this._dropOffQDepthSamples;
+			out.println( this + " Drop off queue                     : " + LOCKED_DROP_OFF_QUEUE );
+			out.println( this + " Total drop offs                    : " + this._totalDropoffs );
+			out.println( this + " Average drop off Q time (ms)       : " + this._formatter.format( (double) this._totalDropOffWaitTime / (double) this._totalDropoffs ) );
+			out.println( this + " Max drop off Q time (ms)           : " + this._maxDropOffWaitTime );
+			out.println( this + " Average drop off Q depth           : " + this._formatter.format( averageDepth ) );
+			out.println( this + " Max drop off Q depth               : " + this._maxDropOffQDepth );
+		}
 		out.println( this + " Total interval activations         : " + this._formatter.format( totalIntervalActivations ) );
 		out.println( this + " Average number of users            : " + this._formatter.format( averageNumberOfUsers ) );
 		out.println( this + " Offered load (ops/sec)             : " + this._formatter.format( offeredLoadOps ) );
 		out.println( this + " Effective load (ops/sec)           : " + this._formatter.format( effectiveLoadOps ) );
 		// Still a rough estimate, need to compute the bounds on this estimate
+		double littlesEstimate = 0.0;
 		if( averageOpResponseTimeSecs > 0.0 )
 		{
 			//double opsPerUser = averageNumberOfUsers / this.finalCard._totalOpsSuccessful;
 						
-			double littlesEstimate = averageNumberOfUsers / (averageOpResponseTimeSecs + thinkTimeDeltaSecs);
+			littlesEstimate = averageNumberOfUsers / (averageOpResponseTimeSecs + thinkTimeDeltaSecs);
 			double littlesDelta = Math.abs( (effectiveLoadOps - littlesEstimate)/ littlesEstimate ) * 100;
 			out.println( this + " Little's Law Estimate (ops/sec)    : " + this._formatter.format( littlesEstimate ) );
 			out.println( this + " Variation from Little's Law (%)    : " + this._formatter.format( littlesDelta ) );
@@ -635,14 +862,179 @@ public class Scoreboard implements Runnable, IScoreboard
 		out.println( this + " Operations failed                  : " + this.finalCard._totalOpsFailed );
 		out.println( this + " Async Ops                          : " + this.finalCard._totalOpsAsync + " " + this._formatter.format( ( ( (double) this.finalCard._totalOpsAsync / (double) totalOperations) * 100) ) + "%" );
 		out.println( this + " Sync Ops                           : " + this.finalCard._totalOpsSync + " " + this._formatter.format( ( ( (double) this.finalCard._totalOpsSync / (double) totalOperations) * 100) ) + "%" );
+		if( this._generatorHealth != null )
+			out.println( this + " Generator saturated (s)            : " + this._formatter.format( this.finalCard._generatorSaturatedSecs ) );
+		
+		if( this._timeSeries != null )
+			out.println( this + " Time series buckets                : " + this._timeSeries.getBuckets() + " x " + this._timeSeries.getBucketMsecs() + " msecs" );
+		if( this.isUsingHistograms() )
+			out.println( this + " Response time histogram precision  : " + this._responseTimeHistogramPrecision + " significant digits (max value (s): " + this._formatter.format( this._responseTimeHistogramMaxValue / 1000000000.0 ) + ")" );
+		else out.println( this + " Mean response time sample interval : " + this._meanResponseTimeSamplingInterval + " (using Poisson sampling)");
 		
-		out.println( this + " Mean response time sample interval : " + this._meanResponseTimeSamplingInterval + " (using Poisson sampling)");
+		HttpConnectionPool connectionPool = track.getHttpConnectionPool();
+		if( connectionPool != null )
+		{
+			// Lease waits are how long requests queued for a pooled connection
+			out.println( this + " HTTP connection pool               : " + connectionPool.getMaxConnections() + " max connections (" + connectionPool.getMaxConnectionsPerRoute() + " per route)" );
+			out.println( this + " HTTP connection leases             : " + connectionPool.getLeases() );
+			out.println( this + " Average HTTP lease wait (ms)       : " + this._formatter.format( connectionPool.getAverageLeaseWaitNanos() / 1000000.0 ) );
+			out.println( this + " Max HTTP lease wait (ms)           : " + this._formatter.format( connectionPool.getMaxLeaseWaitNanos() / 1000000.0 ) );
+			out.println( this + " Average HTTP connections leased    : " + this._formatter.format( connectionPool.getAverageLeased() ) );
+			out.println( this + " Max HTTP connections leased        : " + connectionPool.getMaxLeased() );
+			out.println( this + " Average HTTP leases pending        : " + this._formatter.format( connectionPool.getAveragePending() ) );
+			out.println( this + " Max HTTP leases pending            : " + connectionPool.getMaxPending() );
+		}
+		
+		AsyncHttpClient asyncHttpClient = track.getAsyncHttpClient();
+		if( asyncHttpClient != null )
+		{
+			out.println( this + " Async HTTP requests                : " + asyncHttpClient.getRequests() );
+			out.println( this + " Async HTTP requests failed         : " + asyncHttpClient.getFailed() + " (" + asyncHttpClient.getTimeouts() + " timeouts)" );
+			out.println( this + " Async HTTP requests retried        : " + asyncHttpClient.getRetries() );
+			out.println( this + " Async HTTP connections opened      : " + asyncHttpClient.getConnectionsOpened() );
+			out.println( this + " Max async HTTP requests in flight  : " + asyncHttpClient.getMaxInFlight() );
+		}
 				
 		this.printOperationStatistics( out, false );
 		out.println( "" );
+		if( this.isUsingHistograms() )
+		{
+			this.printPercentileStatistics( out );
+			out.println( "" );
+		}
 		this.printErrorSummaryStatistics( out, false );
 		out.println( "" );
+		this.printCorrectedResponseTimeStatistics( out );
+		out.println( "" );
 		this.printWaitTimeStatistics( out, false );
+		out.println( "" );
+		this.printSchedulingLatenessStatistics( out );
+		this.printRateLimiterStatistics( out );
+		this.printBytesReceivedStatistics( out );
+		
+		this.exportFinalResults( totalIntervalActivations, littlesEstimate );
+	}
+	
+	/**
+	 * Adds the time the generator was saturated between two times to a
+	 * scorecard.
+	 * 
+	 * @param card    The scorecard to mark.
+	 * @param from    Start of the interval activation.
+	 * @param to      End of the interval activation.
+	 */
+	private void markGeneratorSaturation( Scorecard card, long from, long to )
+	{
+		if( this._generatorHealth == null )
+			return;
+		
+		double saturatedSecs = this._generatorHealth.getSaturatedSecs( from, to );
+		if( saturatedSecs > 0 )
+			card._generatorSaturatedSecs += saturatedSecs;
+	}
+	
+	/**
+	 * Hands the results of the interval activation that just closed to the
+	 * scorecard listener (if any).
+	 * 
+	 * @param activation    Activation count of the interval.
+	 * @param to            End of the interval activation.
+	 */
+	private void closeActivationScorecard( int activation, long to )
+	{
+		if( this._activationScorecard == null )
+			return;
+		
+		this.markGeneratorSaturation( this._activationScorecard, this._lastIntervalStartTime, to );
+		this._scorecardListener.intervalClosed( this._activationScorecard, activation, this._lastIntervalStartTime );
+		this._activationScorecard = null;
+	}
+	
+	/**
+	 * Writes an interval scorecard to the results exporter (if any).
+	 * 
+	 * @param card    The interval scorecard to write.
+	 */
+	private void exportScorecard( Scorecard card )
+	{
+		if( this._resultsExporter == null )
+			return;
+		
+		try
+		{
+			this._resultsExporter.writeRecord( ResultsExporter.INTERVAL_RECORD, this._trackName, card._name, card.toJSONObject() );
+		}
+		catch( Exception e )
+		{
+			System.out.println( this + " Error exporting results for interval: " + card._name + ". Reason: " + e.toString() );
+		}
+	}
+	
+	/**
+	 * Writes the final scorecard along with the error, wait time and drop off
+	 * queue summaries to the results exporter (if any).
+	 */
+	private void exportFinalResults( double totalIntervalActivations, double littlesEstimate )
+	{
+		if( this._resultsExporter == null )
+			return;
+		
+		try
+		{
+			JSONObject results = this.finalCard.toJSONObject();
+			results.put( "targetHost", this._trackTargetHost );
+			results.put( "totalIntervalActivations", totalIntervalActivations );
+			results.put( "littlesLawEstimateOps", littlesEstimate );
+			
+			JSONObject dropOffQ = new JSONObject();
+			if( this._stripedDropOffQ != null )
+			{
+				long totalDropoffs = this._stripedDropOffQ.getTotalDropOffs();
+				dropOffQ.put( "type", STRIPED_DROP_OFF_QUEUE );
+				dropOffQ.put( "dropOffs", totalDropoffs );
+				dropOffQ.put( "averageWaitMsecs", ( totalDropoffs > 0 ) ? ( (double) this._stripedDropOffQ.getTotalWaitNanos() / (double) totalDropoffs ) / 1000000.0 : 0.0 );
+				dropOffQ.put( "maxWaitMsecs", (double) this._stripedDropOffQ.getMaxWaitNanos() / 1000000.0 );
+				dropOffQ.put( "averageDepth", this._stripedDropOffQ.getAverageDepth() );
+				dropOffQ.put( "maxDepth", this._stripedDropOffQ.getMaxDepth() );
+			}
+			else
+			{
+				dropOffQ.put( "type", LOCKED_DROP_OFF_QUEUE );
+				dropOffQ.put( "dropOffs", this._totalDropoffs );
+				dropOffQ.put( "averageWaitMsecs", ( this._totalDropoffs > 0 ) ? (double) this._totalDropOffWaitTime / (double) this._totalDropoffs : 0.0 );
+				dropOffQ.put( "maxWaitMsecs", this._maxDropOffWaitTime );
+				dropOffQ.put( "averageDepth", ( this._dropOffQDepthSamples > 0 ) ? (double) this._totalDropOffQDepth / (double) this._dropOffQDepthSamples : 0.0 );
+				dropOffQ.put( "maxDepth", this._maxDropOffQDepth );
+			}
+			results.put( "dropOffQueue", dropOffQ );
+			
+			JSONObject errors = new JSONObject();
+			long totalFailures = 0;
+			synchronized( this._errorSummaryDropOffLock )
+			{
+				for( ErrorSummary summary : this._errorMap.values() )
+				{
+					errors.put( summary._failureClass, summary._errorCount );
+					totalFailures += summary._errorCount;
+				}
+			}
+			results.put( "errors", errors );
+			results.put( "totalFailures", totalFailures );
+			
+			JSONObject waitTimes = new JSONObject();
+			for( String opName : this._waitTimeMap.keySet() )
+				waitTimes.put( opName, this._waitTimeMap.get( opName ).toJSONObject() );
+			results.put( "waitTimes", waitTimes );
+			
+			this._resultsExporter.writeRecord( ResultsExporter.FINAL_RECORD, this._trackName, this.finalCard._name, results );
+			
+			if( this._timeSeries != null )
+				this._resultsExporter.writeRecord( ResultsExporter.TIME_SERIES_RECORD, this._trackName, "timeSeries", this._timeSeries.toJSONObject() );
+		}
+		catch( Exception e )
+		{
+			System.out.println( this + " Error exporting final results. Reason: " + e.toString() );
+		}
 	}
 	
 	private void printErrorSummaryStatistics( PrintStream out, boolean purgeStats )
@@ -662,6 +1054,189 @@ public class Scoreboard implements Runnable, IScoreboard
 		}
 	}
 	
+	private void printPercentileStatistics( PrintStream out )
+	{
+		synchronized( this.finalCard._operationMap )
+		{
+			try
+			{
+				String outputFormatSpec = "|%20s|%12s|%12s|%12s|%12s|%12s|%12s|";
+				
+				out.println( this + String.format( outputFormatSpec, "operation", "50th (s)", "90th (s)", "99th (s)", "99.9th (s)", "max (s)", "samples" ) );
+				
+				Iterator<String> keys = this.finalCard._operationMap.keySet().iterator();
+				while ( keys.hasNext() )
+				{
+					String opName = keys.next();
+					OperationSummary summary = this.finalCard._operationMap.get( opName );
+					
+					out.println( this + String.format( outputFormatSpec, 
+							opName, 
+							this._formatter.format( summary.getPercentileResponseTime( 50 ) / 1000000000.0 ),
+							this._formatter.format( summary.getPercentileResponseTime( 90 ) / 1000000000.0 ),
+							this._formatter.format( summary.getPercentileResponseTime( 99 ) / 1000000000.0 ),
+							this._formatter.format( summary.getPercentileResponseTime( 99.9 ) / 1000000000.0 ),
+							this._formatter.format( summary.getPercentileResponseTime( 100 ) / 1000000000.0 ),
+							summary.getSamplesSeen()
+							) 
+						);
+				}
+			}
+			catch( Exception e )
+			{
+				System.out.println( this + " Error printing response time percentiles. Reason: " + e.toString() );
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	private void printCorrectedResponseTimeStatistics( PrintStream out )
+	{
+		synchronized( this.finalCard._operationMap )
+		{
+			try
+			{
+				// Service time is the response time reported above (measured from the actual start),
+				// corrected response times are measured from the intended start
+				String outputFormatSpec = "|%20s|%12s|%12s|%12s|%12s|%12s|%12s|%12s|";
+				
+				out.println( this + String.format( outputFormatSpec, "operation", "avg service", "avg queueing", "max queueing", "avg corr.", "max corr.", "90th corr.", "99th corr." ) );
+				out.println( this + String.format( outputFormatSpec, "", "time (s)", "delay (s)", "delay (s)", "resp. (s)", "resp. (s)", "resp. (s)", "resp. (s)" ) );
+				
+				Iterator<String> keys = this.finalCard._operationMap.keySet().iterator();
+				while ( keys.hasNext() )
+				{
+					String opName = keys.next();
+					OperationSummary summary = this.finalCard._operationMap.get( opName );
+					
+					out.println( this + String.format( outputFormatSpec, 
+							opName, 
+							this._formatter.format( summary.getAverageResponseTime() / 1000000000.0 ),
+							this._formatter.format( summary.getAverageQueueingDelay() / 1000000000.0 ),
+							this._formatter.format( summary.maxQueueingDelay / 1000000000.0 ),
+							this._formatter.format( summary.getAverageCorrectedResponseTime() / 1000000000.0 ),
+							this._formatter.format( summary.maxCorrectedResponseTime / 1000000000.0 ),
+							this._formatter.format( summary.getNthPercentileCorrectedResponseTime( 90 ) / 1000000000.0 ),
+							this._formatter.format( summary.getNthPercentileCorrectedResponseTime( 99 ) / 1000000000.0 )
+							) 
+						);
+				}
+			}
+			catch( Exception e )
+			{
+				System.out.println( this + " Error printing corrected response time summary. Reason: " + e.toString() );
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	private void printSchedulingLatenessStatistics( PrintStream out )
+	{
+		synchronized( this.finalCard._operationMap )
+		{
+			try
+			{
+				// Lateness is how long after the end of the think/cycle time that 
+				// followed an operation the load generator actually woke up
+				String outputFormatSpec = "|%20s|%12s|%14s|%14s|";
+				
+				out.println( this + String.format( outputFormatSpec, "operation", "wakeups", "avg lateness", "max lateness" ) );
+				out.println( this + String.format( outputFormatSpec, "", "", "(ms)", "(ms)" ) );
+				
+				Iterator<String> keys = this.finalCard._operationMap.keySet().iterator();
+				while ( keys.hasNext() )
+				{
+					String opName = keys.next();
+					WaitTimeSummary summary = this._waitTimeMap.get( opName );
+					if( summary == null )
+						continue;
+					
+					out.println( this + String.format( outputFormatSpec, 
+							opName, 
+							summary.wakeups,
+							this._formatter.format( summary.getAverageLateness() / 1000000.0 ),
+							this._formatter.format( summary.maxLateness / 1000000.0 )
+							) 
+						);
+				}
+			}
+			catch( Exception e )
+			{
+				System.out.println( this + " Error printing scheduling lateness summary. Reason: " + e.toString() );
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	private void printBytesReceivedStatistics( PrintStream out )
+	{
+		synchronized( this.finalCard._operationMap )
+		{
+			long totalBytesReceived = 0;
+			for( OperationSummary summary : this.finalCard._operationMap.values() )
+				totalBytesReceived += summary.totalBytesReceived;
+			if( totalBytesReceived == 0 )
+				return;
+			
+			String outputFormatSpec = "|%20s|%16s|%14s|";
+			
+			out.println( "" );
+			out.println( this + String.format( outputFormatSpec, "operation", "bytes received", "avg bytes/op" ) );
+			
+			for( String opName : this.finalCard._operationMap.keySet() )
+			{
+				OperationSummary summary = this.finalCard._operationMap.get( opName );
+				out.println( this + String.format( outputFormatSpec, 
+						opName, 
+						summary.totalBytesReceived,
+						this._formatter.format( summary.getAverageBytesReceived() )
+						) 
+					);
+			}
+		}
+	}
+	
+	private void printRateLimiterStatistics( PrintStream out )
+	{
+		if( this._owner == null )
+			return;
+		
+		TokenBucket trackRateLimiter = this._owner.getRateLimiter();
+		Hashtable<String,TokenBucket> operationRateLimiters = this._owner.getOperationRateLimiters();
+		if( trackRateLimiter.getTokensRequested() == 0 && operationRateLimiters.isEmpty() )
+			return;
+		
+		// Only tokens that had to wait contribute to the delay, the average
+		// is over all tokens requested
+		String outputFormatSpec = "|%20s|%12s|%12s|%12s|%14s|";
+		
+		out.println( "" );
+		out.println( this + String.format( outputFormatSpec, "rate limiter", "max rate", "tokens", "tokens", "avg delay" ) );
+		out.println( this + String.format( outputFormatSpec, "", "(ops/sec)", "requested", "not delayed", "(ms)" ) );
+		this.printRateLimiterStatistics( out, outputFormatSpec, "[track]", trackRateLimiter );
+		
+		TreeMap<String,TokenBucket> sortedLimiters = new TreeMap<String,TokenBucket>( operationRateLimiters );
+		for( String opName : sortedLimiters.keySet() )
+			this.printRateLimiterStatistics( out, outputFormatSpec, opName, sortedLimiters.get( opName ) );
+	}
+	
+	private void printRateLimiterStatistics( PrintStream out, String outputFormatSpec, String name, TokenBucket rateLimiter )
+	{
+		long requested = rateLimiter.getTokensRequested();
+		double avgDelayMsecs = 0.0;
+		if( requested > 0 )
+			avgDelayMsecs = ( rateLimiter.getTotalWaitNanos() / (double) requested ) / 1000000.0;
+		
+		out.println( this + String.format( outputFormatSpec, 
+				name, 
+				this._formatter.format( rateLimiter.getRate() ),
+				requested,
+				rateLimiter.getTokensGranted(),
+				this._formatter.format( avgDelayMsecs )
+				) 
+			);
+	}
+	
 	private void printWaitTimeStatistics( PrintStream out, boolean purgePercentileData )
 	{
 		synchronized( this.finalCard._operationMap )
@@ -800,6 +1375,11 @@ public class Scoreboard implements Runnable, IScoreboard
 			this._workerThread = new Thread( this );
 			this._workerThread.setName( "Scoreboard-Worker" );
 			this._workerThread.start();
+			if( this._traceLogWriter != null && !this._traceLogWriter.isAlive() )
+			{
+				System.out.println( this + " Binary trace logging enabled - writing " + this._traceLogWriter.getFile( 0 ) + ( this._traceLogWriter.getCompress() ? " (compressed)" : "" ) );
+				this._traceLogWriter.start();
+			}
 			// Start the snapshot thread
 			if( this._usingMetricSnapshots )
 			{
@@ -822,6 +1402,9 @@ public class Scoreboard implements Runnable, IScoreboard
 		if ( this.isRunning() )
 		{
 			this._done = true;
+			// Don't leave the worker parked until its timeout expires
+			if( this._stripedDropOffQ != null )
+				this._stripedDropOffQ.wakeUp();
 			try
 			{
 				// Check whether the thread is sleeping. If it is, then interrupt it.
@@ -860,6 +1443,13 @@ public class Scoreboard implements Runnable, IScoreboard
 				if( this._statsObjPool.isActive() )
 					this._statsObjPool.shutdown();
 				
+				// The worker is done with the results, flush whatever is left of the trace log
+				if( this._traceLogWriter != null )
+				{
+					this._traceLogWriter.close();
+					System.out.println( this + " trace log: " + this._traceLogWriter.getRecordsWritten() + " records in " + this._traceLogWriter.getFilesWritten() + " file(s), " + this._traceLogWriter.getBytesWritten() + " bytes, " + this._traceLogWriter.getDropped() + " dropped." );
+				}
+				
 				//System.out.println( this + " processingQ contains: " + this._processingQ.size() + " unprocessed records." );
 			}
 			catch( InterruptedException ie )
@@ -886,6 +1476,12 @@ public class Scoreboard implements Runnable, IScoreboard
 	public void run()
 	{
 		System.out.println( this + " worker thread started." );
+		if( this._stripedDropOffQ != null )
+		{
+			this.drainStripedDropOffQueue();
+			return;
+		}
+		
 		while ( !this._done || this._dropOffQ.size() > 0 )
 		{
 			if ( this._dropOffQ.size() > 0 )
@@ -893,26 +1489,23 @@ public class Scoreboard implements Runnable, IScoreboard
 				// Queue swap
 				synchronized( this._dropOffQLock )
 				{
-					LinkedList<OperationExecution> temp = _processingQ;
+					ArrayDeque<OperationExecution> temp = _processingQ;
 					_processingQ = _dropOffQ;
 					_dropOffQ = temp;
 				}
 				
+				// The swapped-in queue holds everything dropped off since the last swap
+				long depth = this._processingQ.size();
+				this._totalDropOffQDepth += depth;
+				this._dropOffQDepthSamples++;
+				if( depth > this._maxDropOffQDepth )
+					this._maxDropOffQDepth = depth;
+				
 				while ( !this._processingQ.isEmpty() )
 				{
 					OperationExecution result = this._processingQ.remove();
-					String traceLabel = result.getTraceLabel();
-					
-					if ( traceLabel.equals( Scoreboard.STEADY_STATE_TRACE_LABEL ) )
-					{
-						this.finalCard._totalOpsInitiated++;
-						this.processSteadyStateResult( result );
-					}
-					else if ( traceLabel.equals( Scoreboard.LATE_LABEL ) )
-					{
-						this.finalCard._totalOpsInitiated++;
-						this.finalCard._totalOpsLate++;
-					}
+					this.processResult( result );
+					result.recycle();
 				}
 			}
 			else
@@ -934,6 +1527,160 @@ public class Scoreboard implements Runnable, IScoreboard
 		System.out.println( this + " worker thread finished!" );
 	}
 	
+	/**
+	 * Worker thread loop used with the striped drop off queue. Rather than
+	 * sleep-polling, the worker drains the stripes and parks until a producer
+	 * hands off the next result.
+	 */
+	private void drainStripedDropOffQueue()
+	{
+		this._stripedDropOffQ.setConsumer( Thread.currentThread() );
+		while ( !this._done || !this._stripedDropOffQ.isEmpty() )
+		{
+			if( this._stripedDropOffQ.isEmpty() )
+			{
+				this._stripedDropOffQ.await( StripedDropOffQueue.MAX_PARK_NANOS );
+				if( Thread.interrupted() )
+					System.out.println( this + " worker thread interrupted." );
+				continue;
+			}
+			
+			this._stripedDropOffQ.sampleDepth();
+			OperationExecution result = null;
+			while ( ( result = this._stripedDropOffQ.poll() ) != null )
+			{
+				this.processResult( result );
+				result.recycle();
+			}
+		}
+		this._stripedDropOffQ.setConsumer( null );
+		System.out.println( this + " drop off queue size: " + this._stripedDropOffQ.getDepth() );
+		System.out.println( this + " worker thread finished!" );
+	}
+	
+	/**
+	 * Does the accounting for a result picked up from the drop off queue.
+	 * 
+	 * @param result    The operation execution result to process.
+	 */
+	private void processResult( OperationExecution result )
+	{
+		String traceLabel = result.getTraceLabel();
+		
+		if( this._generatorHealth != null )
+			this._generatorHealth.recordDropOffLag( System.currentTimeMillis() - result.getTimeFinished() );
+		
+		// The time series covers the whole run, not just the steady state
+		if( this._timeSeries != null )
+			this._timeSeries.record( result._operationName, result.getTimeFinished(), result.getExecutionTimeNanos(), result.isFailed() );
+		
+		if ( traceLabel.equals( Scoreboard.STEADY_STATE_TRACE_LABEL ) )
+		{
+			this.finalCard._totalOpsInitiated++;
+			this.processSteadyStateResult( result );
+		}
+		else if ( traceLabel.equals( Scoreboard.LATE_LABEL ) )
+		{
+			this.finalCard._totalOpsInitiated++;
+			this.finalCard._totalOpsLate++;
+		}
+	}
+	
+	/**
+	 * Keeps track of why an operation failed so we can report it at the end.
+	 * 
+	 * @param result    The failed operation execution result.
+	 */
+	private void processFailure( OperationExecution result )
+	{
+		Throwable failure = result.getFailureReason();
+		if( failure == null )
+			return;
+		
+		synchronized( this._errorSummaryDropOffLock )
+		{
+			StringBuffer failureKey = new StringBuffer();
+			failureKey.append( failure.getMessage() ).append( " (" ).append( failure.getClass().toString() ).append( ")" );
+			String failureClass = failureKey.toString();
+			ErrorSummary errors = this._errorMap.get( failureClass );
+			if( errors == null )
+			{
+				errors = new ErrorSummary( failureClass );
+				this._errorMap.put( failureClass, errors );
+			}
+			errors._errorCount++;
+		}
+	}
+	
+	/**
+	 * Does the accounting for a steady state result on an interval scorecard.
+	 * 
+	 * @param card      The interval scorecard to update.
+	 * @param result    The operation execution result to account for.
+	 */
+	private void accountIntervalResult( Scorecard card, OperationExecution result )
+	{
+		String opName = result._operationName;
+		card._totalOpsInitiated += 1;
+		
+		// Do accounting for this interval's scorecard
+		OperationSummary intervalSummary = card._operationMap.get( opName );
+		if( intervalSummary == null )
+		{
+			intervalSummary = new OperationSummary( this.createSamplingStrategy() );
+			card._operationMap.put( opName, intervalSummary );
+		}
+		
+		if ( result.isFailed() )
+		{
+			intervalSummary.failed++;
+			card._totalOpsFailed++;
+		}
+		else // Result was successful
+		{
+			// Intervals passed in seconds, convert to msecs
+			long intervalMsecs = result._generatedDuring._interval * 1000;
+			long intervalEndTime = result._profileStartTime + intervalMsecs;
+			if( result.getTimeFinished() <= intervalEndTime )
+			{
+				// Count sync vs. async for the operations that complete
+				// within the interval only. Ignore the late operations
+				if ( result.isAsynchronous() )
+					card._totalOpsAsync++;
+				else card._totalOpsSync++;
+				//System.out.println( "Cover (msecs): " + ( intervalEndTime - result.getTimeFinished() ) );
+				
+				card._totalOpsSuccessful++;
+				card._totalActionsSuccessful += result.getActionsPerformed();
+				intervalSummary.succeeded++;
+				intervalSummary.totalActions += result.getActionsPerformed();
+				
+				if ( result.isAsynchronous() )
+					intervalSummary.totalAsyncInvocations++;
+				else intervalSummary.totalSyncInvocations++;
+				
+				// If interactive, look at the total response time.
+				if ( result.isInteractive() )
+				{
+					long responseTime = result.getExecutionTimeNanos();
+					intervalSummary.acceptSample( responseTime );
+					
+					intervalSummary.totalResponseTime += responseTime;
+					card._totalOpResponseTime += responseTime;
+					if( responseTime > intervalSummary.maxResponseTime )
+						intervalSummary.maxResponseTime = responseTime;
+					if( responseTime < intervalSummary.minResponseTime )
+						intervalSummary.minResponseTime = responseTime; 
+				}
+			}
+			else
+			{
+				// Mark the result as late for this interval
+				card._totalOpsLate++;
+			}
+		}
+	}
+	
 	/**
 	 * Processes a result (from the processingQ) if it was received during the
 	 * steady state period.
@@ -948,81 +1695,54 @@ public class Scoreboard implements Runnable, IScoreboard
 		if( activeProfile != null && (activeProfile._name != null && activeProfile._name.length() > 0 ) )
 		{
 			String intervalName = activeProfile._name;
-			Scorecard intervalScorecard = this._intervalScorecards.get( intervalName );
-			if( intervalScorecard == null )
+			// The first result of a new interval activation closes the previous one, stream
+			// out what we have for it. Stragglers from older activations don't count.
+			if( result._profileStartTime > this._lastIntervalStartTime )
 			{
-				intervalScorecard = new Scorecard( intervalName, activeProfile._interval, this._trackName );
-				intervalScorecard._numberOfUsers = activeProfile._numberOfUsers;
-				this._intervalScorecards.put( intervalName, intervalScorecard );
-			}
-			intervalScorecard._activeCount = activeProfile._activeCount;
-			intervalScorecard._totalOpsInitiated += 1;
-			
-			// Do accounting for this interval's scorecard
-			OperationSummary intervalSummary = intervalScorecard._operationMap.get( opName );
-			if( intervalSummary == null )
-			{
-				intervalSummary = new OperationSummary( new PoissonSamplingStrategy( this._meanResponseTimeSamplingInterval ) );
-				intervalScorecard._operationMap.put( opName, intervalSummary );
-			}
-			
-			if ( result.isFailed() )
-			{
-				intervalSummary.failed++;
-				intervalScorecard._totalOpsFailed++;
-			}
-			else // Result was successful
-			{
-				// Intervals passed in seconds, convert to msecs
-				long intervalMsecs = result._generatedDuring._interval * 1000;
-				long intervalEndTime = result._profileStartTime + intervalMsecs;
-				if( result.getTimeFinished() <= intervalEndTime )
+				if( this._lastIntervalName != null )
 				{
-					// Count sync vs. async for the operations that complete
-					// within the interval only. Ignore the late operations
-					if ( result.isAsynchronous() )
-						intervalScorecard._totalOpsAsync++;
-					else intervalScorecard._totalOpsSync++;
-					//System.out.println( "Cover (msecs): " + ( intervalEndTime - result.getTimeFinished() ) );
-					
-					intervalScorecard._totalOpsSuccessful++;
-					intervalScorecard._totalActionsSuccessful += result.getActionsPerformed();
-					intervalSummary.succeeded++;
-					intervalSummary.totalActions += result.getActionsPerformed();
-					
-					if ( result.isAsynchronous() )
-						intervalSummary.totalAsyncInvocations++;
-					else intervalSummary.totalSyncInvocations++;
-					
-					// If interactive, look at the total response time.
-					if ( result.isInteractive() )
+					Scorecard closedScorecard = this._intervalScorecards.get( this._lastIntervalName );
+					if( closedScorecard != null )
 					{
-						long responseTime = result.getExecutionTimeNanos();
-						intervalSummary.acceptSample( responseTime );
-						
-						intervalSummary.totalResponseTime += responseTime;
-						intervalScorecard._totalOpResponseTime += responseTime;
-						if( responseTime > intervalSummary.maxResponseTime )
-							intervalSummary.maxResponseTime = responseTime;
-						if( responseTime < intervalSummary.minResponseTime )
-							intervalSummary.minResponseTime = responseTime; 
+						this.markGeneratorSaturation( closedScorecard, this._lastIntervalStartTime, result._profileStartTime );
+						this.exportScorecard( closedScorecard );
+						if( this._scorecardOutbox != null )
+							this._scorecardOutbox.post( closedScorecard, (int) Math.round( closedScorecard._activeCount ), this._lastIntervalStartTime, false );
+						this.closeActivationScorecard( (int) Math.round( closedScorecard._activeCount ), result._profileStartTime );
 					}
 				}
-				else
+				this._lastIntervalName = intervalName;
+				this._lastIntervalStartTime = result._profileStartTime;
+				if( this._scorecardListener != null )
 				{
-					// Mark the result as late for this interval
-					intervalScorecard._totalOpsLate++;
+					this._activationScorecard = new Scorecard( intervalName, activeProfile._interval, this._trackName );
+					this._activationScorecard._numberOfUsers = activeProfile._numberOfUsers;
+					this._activationScorecard._activeCount = 1;
 				}
 			}
+			Scorecard intervalScorecard = this._intervalScorecards.get( intervalName );
+			if( intervalScorecard == null )
+			{
+				intervalScorecard = new Scorecard( intervalName, activeProfile._interval, this._trackName );
+				intervalScorecard._numberOfUsers = activeProfile._numberOfUsers;
+				this._intervalScorecards.put( intervalName, intervalScorecard );
+			}
+			intervalScorecard._activeCount = activeProfile._activeCount;
+			this.accountIntervalResult( intervalScorecard, result );
+			// Listeners get the results of the current activation on their own
+			if( this._activationScorecard != null && result._profileStartTime == this._lastIntervalStartTime )
+				this.accountIntervalResult( this._activationScorecard, result );
 		}
 				
 		// Do the accounting for the final score card
 		OperationSummary summary = this.finalCard._operationMap.get( opName );
 		if ( summary == null )
 		{
-			summary = new OperationSummary( new PoissonSamplingStrategy( this._meanResponseTimeSamplingInterval ) );
+			summary = new OperationSummary( this.createSamplingStrategy(), this.createSamplingStrategy() );
 			this.finalCard._operationMap.put( opName, summary );
 		}
+		// Failed operations may have received (error) responses too
+		summary.totalBytesReceived += result.getBytesReceived();
 					
 		if ( result.isAsynchronous() )
 		{
@@ -1037,6 +1757,7 @@ public class Scoreboard implements Runnable, IScoreboard
 		{
 			summary.failed++;
 			this.finalCard._totalOpsFailed++;
+			this.processFailure( result );
 		}
 		else
 		{
@@ -1061,6 +1782,8 @@ public class Scoreboard implements Runnable, IScoreboard
 				long responseTime = result.getExecutionTimeNanos();
 				// Save the response time
 				summary.acceptSample( responseTime );
+				// Save the queueing delay and the response time measured from the intended start
+				summary.acceptCorrectedSample( result.getQueueingDelayNanos(), result.getCorrectedResponseTimeNanos() );
 				// Update the total response time
 				summary.totalResponseTime += responseTime;
 								
@@ -1079,7 +1802,7 @@ public class Scoreboard implements Runnable, IScoreboard
 				{
 					// Save the response time for the snapshot thread
 					ResponseTimeStat stat = null;
-					stat = (ResponseTimeStat) this._statsObjPool.rentObject( ResponseTimeStat.NAME );
+					stat = (ResponseTimeStat) this._statsObjPool.rentObject( RESPONSE_TIME_STAT_SLOT );
 					if( stat == null )
 					{
 						//System.out.println( "Got stats container from heap (not pool)" );
@@ -1135,7 +1858,7 @@ public class Scoreboard implements Runnable, IScoreboard
 		public MetricWriter getMetricWriter() { return this._metricWriter; }
 		public void setMetricWriter( MetricWriter val ) { this._metricWriter = val; }
 				
-		private LinkedList<ResponseTimeStat> _todoQ = new LinkedList<ResponseTimeStat>();
+		private ArrayDeque<ResponseTimeStat> _todoQ = new ArrayDeque<ResponseTimeStat>();
 		
 		public SnapshotWriterThread( Scoreboard owner )
 		{
@@ -1225,7 +1948,7 @@ public class Scoreboard implements Runnable, IScoreboard
 					// grab the queue lock and swap queues so we can write what's currently there
 					synchronized( this._owner._responseTimeQLock )
 					{
-						LinkedList<ResponseTimeStat> temp = this._owner._responseTimeQ;
+						ArrayDeque<ResponseTimeStat> temp = this._owner._responseTimeQ;
 						this._owner._responseTimeQ = this._todoQ;
 						this._todoQ = temp;
 					}
@@ -1,18 +1,23 @@
 package radlab.rain;
 
 import java.io.PrintStream;
+import java.io.Serializable;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 //import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.TreeMap;
-//import java.util.Hashtable;
 
-import radlab.rain.util.NullSamplingStrategy;
+import org.json.JSONException;
+import org.json.JSONObject;
+//import java.util.Hashtable;
 
 // Not even going to try to make Scorecards thread-safe, the Scoreboard must do "the right thing"(tm)
-public class Scorecard 
+// Serializable so snapshots can be shipped from an agent to a coordinator (see ScorecardOutbox)
+public class Scorecard implements Serializable
 {
+	private static final long serialVersionUID = 1L;
+	
 	// Eventually all stats reporting will be done using Scorecards. There will
 	// be per-interval Scorecards as well as a final Scorecard for the entire run.
 	// The Scoreboard will maintain/manage a hashtable of Scorecards.
@@ -35,6 +40,8 @@ public class Scorecard
 	public double _intervalDuration		= 0;
 	public double _numberOfUsers		= 0.0;
 	public double _activeCount			= 0.0;
+	// How long the load generator itself was saturated during the interval (seconds)
+	public double _generatorSaturatedSecs = 0.0;
 	
 	/** A mapping of each operation with its summary. */
 	public TreeMap<String,OperationSummary> _operationMap = new TreeMap<String,OperationSummary>();
@@ -67,6 +74,7 @@ public class Scorecard
 		this._intervalDuration = 0;
 		this._activeCount = 0.0;
 		this._numberOfUsers = 0.0;
+		this._generatorSaturatedSecs = 0.0;
 	}
 	
 	public void printStatistics( PrintStream out )
@@ -97,7 +105,7 @@ public class Scorecard
 		 * - average requests per second
 		 * - async % vs. sync %
 		 */ 
-		out.println( this + " Interval name                      : " + this._name );
+		out.println( this + " Interval name                      : " + this._name + ( this._generatorSaturatedSecs > 0 ? " " + Scoreboard.GENERATOR_SATURATED_LABEL : "" ) );
 		out.println( this + " Active users                       : " + this._formatter.format( this._numberOfUsers ) );
 		out.println( this + " Activation count                   : " + this._formatter.format( this._activeCount ) );
 		out.println( this + " Offered load (ops/sec)             : " + this._formatter.format( offeredLoadOps/(double) this._activeCount ) );
@@ -113,6 +121,8 @@ public class Scorecard
 		out.println( this + " Operations failed                  : " + this._totalOpsFailed );
 		out.println( this + " Async Ops                          : " + this._totalOpsAsync + " " + this._formatter.format( ( ( (double) this._totalOpsAsync / (double) totalOperations) * 100) ) + "%" );
 		out.println( this + " Sync Ops                           : " + this._totalOpsSync + " " + this._formatter.format( ( ( (double) this._totalOpsSync / (double) totalOperations) * 100) ) + "%" );
+		if( this._generatorSaturatedSecs > 0 )
+			out.println( this + " Generator saturated (s)            : " + this._formatter.format( this._generatorSaturatedSecs ) );
 		
 		//out.println( this + " Mean response time sample interval : " + this._meanResponseTimeSamplingInterval + " (using Poisson sampling)");
 		
@@ -195,6 +205,61 @@ public class Scorecard
 		}
 	}
 	
+	/**
+	 * Returns the scorecard and its per-operation summaries as a JSON object
+	 * for the results exporter. Loads are per activation of the interval, the
+	 * same as in the text report.
+	 */
+	public JSONObject toJSONObject() throws JSONException
+	{
+		long totalOperations = this._totalOpsSuccessful + this._totalOpsFailed;
+		// The final scorecard is never activated, its loads are over the whole run
+		double activations = ( this._activeCount > 0 ) ? this._activeCount : 1.0;
+		double intervalDuration = ( this._intervalDuration > 0 ) ? this._intervalDuration : 1.0;
+		
+		JSONObject card = new JSONObject();
+		card.put( "name", this._name );
+		card.put( "intervalDuration", this._intervalDuration );
+		card.put( "activeUsers", this._numberOfUsers );
+		card.put( "activationCount", this._activeCount );
+		card.put( "offeredLoadOps", ( totalOperations > 0 ? this._totalOpsInitiated / intervalDuration : 0.0 ) / activations );
+		card.put( "effectiveLoadOps", ( this._totalOpsSuccessful / intervalDuration ) / activations );
+		card.put( "effectiveLoadRequests", ( this._totalActionsSuccessful / intervalDuration ) / activations );
+		card.put( "operationsInitiated", this._totalOpsInitiated );
+		card.put( "operationsSuccessful", this._totalOpsSuccessful );
+		card.put( "operationsLate", this._totalOpsLate );
+		card.put( "operationsFailed", this._totalOpsFailed );
+		card.put( "operationsAsync", this._totalOpsAsync );
+		card.put( "operationsSync", this._totalOpsSync );
+		if( this._totalOpsSuccessful > 0 )
+			card.put( "averageResponseTime", ( (double) this._totalOpResponseTime / (double) this._totalOpsSuccessful ) / 1000000000.0 );
+		else card.put( "averageResponseTime", 0.0 );
+		card.put( "generatorSaturated", this._generatorSaturatedSecs > 0 );
+		card.put( "generatorSaturatedSecs", this._generatorSaturatedSecs );
+		
+		JSONObject operations = new JSONObject();
+		synchronized( this._operationMap )
+		{
+			for( String opName : this._operationMap.keySet() )
+				operations.put( opName, this._operationMap.get( opName ).toJSONObject() );
+		}
+		card.put( "operations", operations );
+		return card;
+	}
+	
+	/**
+	 * Returns a deep copy of the scorecard (samplers included) that can be
+	 * shipped elsewhere while this scorecard keeps being updated.
+	 */
+	public Scorecard createSnapshot()
+	{
+		Scorecard snapshot = new Scorecard( this._name, this._intervalDuration, this._trackName );
+		snapshot.merge( this );
+		// The merge treats the copy as an aggregate, keep the activations we had
+		snapshot._activeCount = this._activeCount;
+		return snapshot;
+	}
+	
 	public void merge( Scorecard rhs )
 	{
 		// We expect to merge only "final" scorecards
@@ -212,6 +277,8 @@ public class Scorecard
 		this._totalOpsLate += rhs._totalOpsLate;
 		this._totalOpResponseTime += rhs._totalOpResponseTime;
 		this._numberOfUsers += rhs._numberOfUsers;
+		// Tracks share the generator, so they were saturated at the same times
+		this._generatorSaturatedSecs = Math.max( this._generatorSaturatedSecs, rhs._generatorSaturatedSecs );
 		
 		// Merge operation maps
 		for( String opName : rhs._operationMap.keySet() )
@@ -220,10 +287,11 @@ public class Scorecard
 			OperationSummary rhsOpSummary = rhs._operationMap.get( opName );
 			// Do we have an operationSummary for this operation yet?
 			// If we don't have one, initialize an OperationSummary with a Null/dummy sampler that will
-			// simply accept all of the samples from the rhs' sampler
+			// simply accept all of the samples from the rhs' sampler (or an empty histogram if the rhs
+			// uses histograms, so the merge stays lossless)
 			if( this._operationMap.containsKey( opName ) )
 				lhsOpSummary = this._operationMap.get( opName );
-			else lhsOpSummary = new OperationSummary( new NullSamplingStrategy() );
+			else lhsOpSummary = rhsOpSummary.createMergeTarget();
 			lhsOpSummary.merge( rhsOpSummary );
 			this._operationMap.put( opName, lhsOpSummary );
 		}
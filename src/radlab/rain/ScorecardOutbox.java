@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain;
+
+import java.io.Serializable;
+import java.util.LinkedList;
+
+/**
+ * The ScorecardOutbox holds copies of the scorecards of the tracks of an
+ * agent until a coordinator collects them. The scoreboards post a copy of
+ * an interval scorecard every time an interval activation closes and a copy
+ * of every scorecard (intervals and final) at the end of the run.<br />
+ * <br />
+ * Interval scorecards are cumulative (all the activations of an interval so
+ * far), so a coordinator can merge the latest copies from every agent without
+ * having to see all of them. Snapshots are numbered, the coordinator asks for
+ * the ones after the last number it saw, which also acknowledges (and
+ * releases) the earlier ones.
+ */
+public class ScorecardOutbox 
+{
+	/** Agents wait this long (msecs) for their last scorecards to be collected. */
+	public static long DEFAULT_COLLECT_TIMEOUT = 60000;
+	
+	/**
+	 * A copy of a scorecard along with where it came from.
+	 */
+	public static class Snapshot implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+		
+		public long _sequence 				= 0;
+		public String _trackName 			= "";
+		// Activation of the interval the snapshot covers up to, 0 for final snapshots
+		public int _activation 				= 0;
+		// Start of the latest activation covered, in the agent's clock
+		public long _intervalStartTime 		= 0;
+		// Set for the snapshots taken at the end of the run
+		public boolean _final 				= false;
+		public Scorecard _card 				= null;
+	}
+	
+	private LinkedList<Snapshot> _snapshots = new LinkedList<Snapshot>();
+	private long _lastSequence 				= 0;
+	private long _collectedSequence 		= 0;
+	private boolean _closed 				= false;
+	// Set when the run died before posting its final scorecards
+	private boolean _failed 				= false;
+	// Set once a collector has been told the outbox is closed
+	private boolean _closeReported 			= false;
+	
+	public synchronized long getLastSequence() { return this._lastSequence; }
+	public synchronized long getCollectedSequence() { return this._collectedSequence; }
+	public synchronized boolean isClosed() { return this._closed; }
+	public synchronized boolean isFailed() { return this._failed; }
+	
+	/**
+	 * Posts a copy of a scorecard. The copy is taken right away, the caller
+	 * can keep updating (or purge) the scorecard.
+	 * 
+	 * @param card                  The scorecard to copy.
+	 * @param activation            Activation of the interval, 0 for the final scorecard.
+	 * @param intervalStartTime     Start of the latest activation covered by the scorecard.
+	 * @param isFinal               Whether this is a snapshot taken at the end of the run.
+	 */
+	public void post( Scorecard card, int activation, long intervalStartTime, boolean isFinal )
+	{
+		Snapshot snapshot = new Snapshot();
+		snapshot._trackName = card._trackName;
+		snapshot._activation = activation;
+		snapshot._intervalStartTime = intervalStartTime;
+		snapshot._final = isFinal;
+		snapshot._card = card.createSnapshot();
+		
+		synchronized( this )
+		{
+			if( this._closed )
+				return;
+			snapshot._sequence = ++this._lastSequence;
+			this._snapshots.add( snapshot );
+		}
+	}
+	
+	/**
+	 * Returns the snapshots posted after a given sequence number and releases
+	 * the ones up to it, they have been collected.
+	 * 
+	 * @param afterSequence     The last sequence number the collector has.
+	 * 
+	 * @return The snapshots posted since.
+	 */
+	public synchronized LinkedList<Snapshot> collect( long afterSequence )
+	{
+		while( !this._snapshots.isEmpty() && this._snapshots.getFirst()._sequence <= afterSequence )
+			this._snapshots.removeFirst();
+		
+		if( afterSequence > this._collectedSequence )
+		{
+			this._collectedSequence = afterSequence;
+			this.notifyAll();
+		}
+		return new LinkedList<Snapshot>( this._snapshots );
+	}
+	
+	/**
+	 * Marks the end of the run, no more snapshots get posted.
+	 */
+	public synchronized void close()
+	{
+		this._closed = true;
+	}
+	
+	/**
+	 * Marks the end of a run that died, the scorecards posted so far are all
+	 * there is going to be.
+	 */
+	public synchronized void fail()
+	{
+		this._failed = true;
+		this._closed = true;
+	}
+	
+	/**
+	 * Returns whether the outbox is closed, for the reply to a collector.
+	 * Once a closed outbox has been reported awaitCloseReported() returns.
+	 */
+	public synchronized boolean reportClosed()
+	{
+		if( this._closed && !this._closeReported )
+		{
+			this._closeReported = true;
+			this.notifyAll();
+		}
+		return this._closed;
+	}
+	
+	/**
+	 * Waits until every snapshot has been collected (or the timeout expires).
+	 * 
+	 * @param timeoutMsecs     How long to wait.
+	 * 
+	 * @return True if everything was collected.
+	 */
+	public synchronized boolean awaitCollected( long timeoutMsecs ) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + timeoutMsecs;
+		while( this._collectedSequence < this._lastSequence )
+		{
+			long remaining = deadline - System.currentTimeMillis();
+			if( remaining <= 0 )
+				return false;
+			this.wait( remaining );
+		}
+		return true;
+	}
+	
+	/**
+	 * Waits until a collector has been told the outbox is closed (or the
+	 * timeout expires).
+	 * 
+	 * @param timeoutMsecs     How long to wait.
+	 * 
+	 * @return True if a collector knows we are done.
+	 */
+	public synchronized boolean awaitCloseReported( long timeoutMsecs ) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + timeoutMsecs;
+		while( !this._closeReported )
+		{
+			long remaining = deadline - System.currentTimeMillis();
+			if( remaining <= 0 )
+				return false;
+			this.wait( remaining );
+		}
+		return true;
+	}
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The StripedDropOffQueue class is a lock-free alternative to the single
+ * monitor-protected drop off queue used by the Scoreboard. Results are
+ * spread over a number of stripes (chosen by the id of the thread dropping
+ * off) and each stripe is a bounded multi-producer/single-consumer ring
+ * buffer. The Scoreboard worker thread is the only consumer; it parks when
+ * every stripe is empty and producers unpark it when they publish.<br />
+ * <br />
+ * The queue also keeps the metrics the Scoreboard reports about drop offs:
+ * the time producers spend handing off a result and the queue depth seen by
+ * the consumer.
+ */
+public class StripedDropOffQueue 
+{
+	public static final int DEFAULT_STRIPES			= 16;
+	public static final int DEFAULT_STRIPE_CAPACITY	= 4096;
+	
+	/** How long the consumer parks (in nanos) before re-checking the stripes on its own. */
+	public static long MAX_PARK_NANOS				= 100L * 1000000L;
+	
+	private final Stripe[] _stripes;
+	private final int _stripeMask;
+	private final int _stripeCapacity;
+	
+	/** The single consumer (the Scoreboard worker thread). */
+	private volatile Thread _consumer = null;
+	/** Set by the consumer just before it parks, cleared by whoever wakes it up. */
+	private final AtomicBoolean _consumerParked = new AtomicBoolean( false );
+	/** Index of the stripe the consumer polls next. */
+	private int _nextStripe = 0;
+	
+	// Consumer-side depth statistics (only touched by the consumer)
+	private long _maxDepth = 0;
+	private long _totalDepth = 0;
+	private long _depthSamples = 0;
+	private long _totalParks = 0;
+	
+	/**
+	 * Creates a new StripedDropOffQueue.
+	 * 
+	 * @param stripes           The number of stripes, rounded up to a power of 2.
+	 * @param stripeCapacity    The capacity of each stripe, rounded up to a power of 2.
+	 */
+	public StripedDropOffQueue( int stripes, int stripeCapacity )
+	{
+		int numStripes = nextPowerOfTwo( Math.max( 1, stripes ) );
+		this._stripeCapacity = nextPowerOfTwo( Math.max( 2, stripeCapacity ) );
+		this._stripeMask = numStripes - 1;
+		this._stripes = new Stripe[numStripes];
+		for( int i = 0; i < numStripes; i++ )
+			this._stripes[i] = new Stripe( this._stripeCapacity );
+	}
+	
+	public int getStripes() { return this._stripes.length; }
+	public int getStripeCapacity() { return this._stripeCapacity; }
+	
+	public Thread getConsumer() { return this._consumer; }
+	public void setConsumer( Thread val ) { this._consumer = val; }
+	
+	/**
+	 * Hands off a result to the consumer. If the producer's stripe is full
+	 * the producer spins (yielding) until the consumer makes room, so results
+	 * are never dropped; that time shows up in the drop off latency.
+	 * 
+	 * @param result    The result to hand off.
+	 */
+	public void offer( OperationExecution result )
+	{
+		long start = System.nanoTime();
+		Stripe stripe = this._stripes[(int) Thread.currentThread().getId() & this._stripeMask];
+		while( !stripe.offer( result ) )
+		{
+			// Make sure the consumer is awake to drain the full stripe
+			this.wakeUp();
+			Thread.yield();
+		}
+		long waitTime = System.nanoTime() - start;
+		stripe._totalDropOffs.incrementAndGet();
+		stripe._totalWaitNanos.addAndGet( waitTime );
+		long max = stripe._maxWaitNanos.get();
+		while( waitTime > max && !stripe._maxWaitNanos.compareAndSet( max, waitTime ) )
+			max = stripe._maxWaitNanos.get();
+		
+		this.wakeUp();
+	}
+	
+	/**
+	 * Removes the next result, visiting the stripes round-robin so that no
+	 * producer is starved. Must only be called by the consumer.
+	 * 
+	 * @return  The next result or null if every stripe is empty.
+	 */
+	public OperationExecution poll()
+	{
+		for( int i = 0; i < this._stripes.length; i++ )
+		{
+			Stripe stripe = this._stripes[this._nextStripe];
+			this._nextStripe = ( this._nextStripe + 1 ) & this._stripeMask;
+			OperationExecution result = stripe.poll();
+			if( result != null )
+				return result;
+		}
+		return null;
+	}
+	
+	/**
+	 * Parks the consumer until a producer publishes a result, the timeout
+	 * expires or the consumer is woken up/interrupted. Must only be called by
+	 * the consumer.
+	 * 
+	 * @param timeoutNanos  The maximum time to park.
+	 */
+	public void await( long timeoutNanos )
+	{
+		this._consumerParked.set( true );
+		// Re-check after advertising that we're parking so we don't miss a
+		// hand off that happened in between.
+		if( this.isEmpty() )
+		{
+			this._totalParks++;
+			LockSupport.parkNanos( this, Math.min( timeoutNanos, MAX_PARK_NANOS ) );
+		}
+		this._consumerParked.set( false );
+	}
+	
+	/**
+	 * Unparks the consumer if it is parked.
+	 */
+	public void wakeUp()
+	{
+		if( this._consumerParked.get() && this._consumerParked.compareAndSet( true, false ) )
+		{
+			Thread consumer = this._consumer;
+			if( consumer != null )
+				LockSupport.unpark( consumer );
+		}
+	}
+	
+	/**
+	 * Records the current queue depth. Called by the consumer each time it
+	 * starts a drain.
+	 */
+	public long sampleDepth()
+	{
+		long depth = this.getDepth();
+		this._totalDepth += depth;
+		this._depthSamples++;
+		if( depth > this._maxDepth )
+			this._maxDepth = depth;
+		return depth;
+	}
+	
+	public boolean isEmpty()
+	{
+		for( Stripe stripe : this._stripes )
+		{
+			if( !stripe.isEmpty() )
+				return false;
+		}
+		return true;
+	}
+	
+	/** Returns the number of results waiting to be consumed. */
+	public long getDepth()
+	{
+		long depth = 0;
+		for( Stripe stripe : this._stripes )
+			depth += stripe.size();
+		return depth;
+	}
+	
+	public long getMaxDepth() { return this._maxDepth; }
+	
+	public double getAverageDepth()
+	{
+		if( this._depthSamples == 0 )
+			return 0.0;
+		return (double) this._totalDepth / (double) this._depthSamples;
+	}
+	
+	public long getTotalParks() { return this._totalParks; }
+	
+	public long getTotalDropOffs()
+	{
+		long total = 0;
+		for( Stripe stripe : this._stripes )
+			total += stripe._totalDropOffs.get();
+		return total;
+	}
+	
+	public long getTotalWaitNanos()
+	{
+		long total = 0;
+		for( Stripe stripe : this._stripes )
+			total += stripe._totalWaitNanos.get();
+		return total;
+	}
+	
+	public long getMaxWaitNanos()
+	{
+		long max = 0;
+		for( Stripe stripe : this._stripes )
+			max = Math.max( max, stripe._maxWaitNanos.get() );
+		return max;
+	}
+	
+	public void clear()
+	{
+		while( this.poll() != null );
+		for( Stripe stripe : this._stripes )
+		{
+			stripe._totalDropOffs.set( 0 );
+			stripe._totalWaitNanos.set( 0 );
+			stripe._maxWaitNanos.set( 0 );
+		}
+		this._maxDepth = 0;
+		this._totalDepth = 0;
+		this._depthSamples = 0;
+		this._totalParks = 0;
+	}
+	
+	public String toString()
+	{
+		return "striped (" + this._stripes.length + " x " + this._stripeCapacity + ")";
+	}
+	
+	private static int nextPowerOfTwo( int val )
+	{
+		int power = 1;
+		while( power < val )
+			power <<= 1;
+		return power;
+	}
+	
+	/**
+	 * A bounded multi-producer/single-consumer ring buffer. Producers claim a
+	 * slot by advancing the tail and then publish into it; the consumer treats
+	 * a claimed but not yet published slot as the end of the queue.
+	 */
+	private static class Stripe
+	{
+		private final AtomicReferenceArray<OperationExecution> _buffer;
+		private final int _mask;
+		private final AtomicLong _tail = new AtomicLong( 0 );
+		private final AtomicLong _head = new AtomicLong( 0 );
+		
+		// Producer-side statistics, per stripe so they're only as contended as the stripe
+		final AtomicLong _totalDropOffs = new AtomicLong( 0 );
+		final AtomicLong _totalWaitNanos = new AtomicLong( 0 );
+		final AtomicLong _maxWaitNanos = new AtomicLong( 0 );
+		
+		Stripe( int capacity )
+		{
+			this._buffer = new AtomicReferenceArray<OperationExecution>( capacity );
+			this._mask = capacity - 1;
+		}
+		
+		boolean offer( OperationExecution result )
+		{
+			long tail;
+			do
+			{
+				tail = this._tail.get();
+				if( tail - this._head.get() >= this._buffer.length() )
+					return false; // Full
+			}
+			while( !this._tail.compareAndSet( tail, tail + 1 ) );
+			
+			this._buffer.lazySet( (int) tail & this._mask, result );
+			return true;
+		}
+		
+		OperationExecution poll()
+		{
+			long head = this._head.get();
+			int index = (int) head & this._mask;
+			OperationExecution result = this._buffer.get( index );
+			if( result == null )
+				return null; // Empty, or the producer hasn't published yet
+			
+			this._buffer.lazySet( index, null );
+			this._head.lazySet( head + 1 );
+			return result;
+		}
+		
+		boolean isEmpty()
+		{
+			return this._head.get() == this._tail.get();
+		}
+		
+		long size()
+		{
+			return Math.max( 0, this._tail.get() - this._head.get() );
+		}
+	}
+}
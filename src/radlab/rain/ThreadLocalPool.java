@@ -0,0 +1,456 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain;
+
+import java.io.PrintStream;
+import java.lang.ref.WeakReference;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The ThreadLocalPool class is the recycling engine behind ObjectPool and
+ * ObjectPoolGeneric. Every thread keeps its own free list per kind of
+ * object, so renting and returning normally touch no shared state at all.
+ * When a thread's free list fills up, it moves a batch of objects to a
+ * shared, lock-free depot; when it runs dry, it takes a whole batch from the
+ * depot. Objects returned by one thread (e.g., the Scoreboard returning
+ * operations executed asynchronously) therefore flow back to the threads
+ * renting them in batches rather than one at a time.<br />
+ * <br />
+ * The kinds of objects (pool tags) are interned into small integers (slots)
+ * shared by all pools, so the free lists are plain arrays. The depot holds at
+ * most maxPoolSize objects per kind; each thread may additionally hold up to
+ * two batches per kind.<br />
+ * <br />
+ * Statistics are kept per thread and summed when they are reported. Once a
+ * thread exits its cache (and the objects it still holds) is dropped and its
+ * statistics are kept in a running total.
+ */
+public class ThreadLocalPool<T>
+{
+	public static final int DEFAULT_BATCH_SIZE = 8;
+	
+	// Pool tags -> slots, shared by all pools
+	private static ConcurrentHashMap<String,Integer> _slots = new ConcurrentHashMap<String,Integer>();
+	private static AtomicInteger _nextSlot = new AtomicInteger( 0 );
+	
+	/**
+	 * Returns the slot of a pool tag, assigning one the first time the tag
+	 * is seen.
+	 */
+	public static int slotOf( String tag )
+	{
+		Integer slot = _slots.get( tag );
+		if( slot == null )
+		{
+			Integer newSlot = _nextSlot.getAndIncrement();
+			slot = _slots.putIfAbsent( tag, newSlot );
+			if( slot == null )
+				slot = newSlot;
+		}
+		return slot.intValue();
+	}
+	
+	/** Full batches of free objects of one kind, shared by all threads. */
+	private static class Depot
+	{
+		ConcurrentLinkedQueue<Object[]> _batches = new ConcurrentLinkedQueue<Object[]>();
+		AtomicInteger _size = new AtomicInteger( 0 );
+	}
+	
+	/**
+	 * A thread's free lists and statistics. Only the owner thread writes to
+	 * it, the statistics are volatile so they can be summed by other threads.
+	 */
+	private static class Cache
+	{
+		final WeakReference<Thread> _owner;
+		int _generation = 0;
+		Object[][] _stacks = new Object[0][];
+		int[] _sizes = new int[0];
+		
+		volatile long _rentRequests = 0;
+		volatile long _hits = 0;
+		volatile long _misses = 0;
+		volatile long _returnRequests = 0;
+		volatile long _successfulReturns = 0;
+		volatile long _overflowDiscards = 0;
+		volatile long _cleanupDiscards = 0;
+		volatile long _depotPuts = 0;
+		volatile long _depotTakes = 0;
+		
+		Cache( Thread owner )
+		{
+			this._owner = new WeakReference<Thread>( owner );
+		}
+		
+		boolean isOwnerAlive()
+		{
+			Thread owner = this._owner.get();
+			return owner != null && owner.isAlive();
+		}
+		
+		void addStatistics( long[] totals )
+		{
+			totals[0] += this._rentRequests;
+			totals[1] += this._hits;
+			totals[2] += this._misses;
+			totals[3] += this._returnRequests;
+			totals[4] += this._successfulReturns;
+			totals[5] += this._overflowDiscards;
+			totals[6] += this._cleanupDiscards;
+			totals[7] += this._depotPuts;
+			totals[8] += this._depotTakes;
+		}
+		
+		void resetStatistics()
+		{
+			this._rentRequests = 0;
+			this._hits = 0;
+			this._misses = 0;
+			this._returnRequests = 0;
+			this._successfulReturns = 0;
+			this._overflowDiscards = 0;
+			this._cleanupDiscards = 0;
+			this._depotPuts = 0;
+			this._depotTakes = 0;
+		}
+	}
+	
+	private final int _batchSize;
+	private final int _localCapacity;
+	private final int _maxDepotBatches;
+	private volatile Depot[] _depots = new Depot[0];
+	private ThreadLocal<Cache> _cache = new ThreadLocal<Cache>();
+	private CopyOnWriteArrayList<Cache> _caches = new CopyOnWriteArrayList<Cache>();
+	// Statistics of the threads that have exited (guarded by itself)
+	private long[] _retiredTotals = new long[9];
+	
+	// Bumped by shutdown so threads drop the objects they still hold
+	private volatile int _generation = 0;
+	private volatile boolean _active = false;
+	private long _timeStarted = -1;
+	private long _timeShutdown = -1;
+	
+	private NumberFormat _formatter = new DecimalFormat( "#0.0000" );
+	
+	public ThreadLocalPool( long maxPoolSize )
+	{
+		this( maxPoolSize, DEFAULT_BATCH_SIZE );
+	}
+	
+	public ThreadLocalPool( long maxPoolSize, int batchSize )
+	{
+		this._batchSize = Math.max( 1, batchSize );
+		this._localCapacity = (int) Math.min( 2 * this._batchSize, Math.max( 0, maxPoolSize ) );
+		this._maxDepotBatches = (int) Math.min( Integer.MAX_VALUE, Math.max( 0, maxPoolSize ) / this._batchSize );
+	}
+	
+	/**
+	 * The pool counts as active once anyone has rented from it. An inactive
+	 * pool does not keep returned objects.
+	 */
+	public boolean isActive() { return this._active; }
+	
+	public long getTimeStarted() { return this._timeStarted; }
+	
+	/**
+	 * Returns a free object of the kind in the slot or null if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public T rent( int slot )
+	{
+		if( !this._active )
+		{
+			synchronized( this )
+			{
+				if( !this._active )
+				{
+					this._timeStarted = System.currentTimeMillis();
+					this._timeShutdown = -1;
+					this._active = true;
+				}
+			}
+		}
+		
+		Cache cache = this.getCache( slot );
+		cache._rentRequests++;
+		
+		if( cache._sizes[slot] == 0 )
+		{
+			// Refill from the depot
+			Depot depot = this.getDepot( slot );
+			Object[] batch = depot._batches.poll();
+			if( batch == null )
+			{
+				cache._misses++;
+				return null;
+			}
+			depot._size.decrementAndGet();
+			System.arraycopy( batch, 0, cache._stacks[slot], 0, batch.length );
+			cache._sizes[slot] = batch.length;
+			cache._depotTakes++;
+		}
+		
+		cache._hits++;
+		int top = --cache._sizes[slot];
+		T obj = (T) cache._stacks[slot][top];
+		cache._stacks[slot][top] = null;
+		return obj;
+	}
+	
+	/**
+	 * Keeps an object (that has already been cleaned up) for re-use.
+	 * 
+	 * @param slot              The kind of the object.
+	 * @param obj               The object.
+	 * @param cleanupSuccess    Whether the object cleaned up properly, if not it's discarded.
+	 */
+	public void giveBack( int slot, T obj, boolean cleanupSuccess )
+	{
+		// If no one is asking for objects then the pool is probably inactive.
+		// We don't just want to hold onto objects that won't be re-used/recycled
+		if( !this._active )
+			return;
+		
+		Cache cache = this.getCache( slot );
+		cache._returnRequests++;
+		if( !cleanupSuccess )
+		{
+			// Don't pool an object that didn't cleanup properly
+			cache._cleanupDiscards++;
+			return;
+		}
+		
+		if( cache._sizes[slot] >= this._localCapacity )
+		{
+			// Free list is full, hand a batch to the depot (or toss the object if the depot is full too)
+			Depot depot = this.getDepot( slot );
+			if( this._maxDepotBatches == 0 || depot._size.incrementAndGet() > this._maxDepotBatches )
+			{
+				if( this._maxDepotBatches > 0 )
+					depot._size.decrementAndGet();
+				cache._overflowDiscards++;
+				return;
+			}
+			
+			Object[] batch = new Object[this._batchSize];
+			int remaining = cache._sizes[slot] - this._batchSize;
+			System.arraycopy( cache._stacks[slot], remaining, batch, 0, this._batchSize );
+			for( int i = remaining; i < cache._sizes[slot]; i++ )
+				cache._stacks[slot][i] = null;
+			cache._sizes[slot] = remaining;
+			depot._batches.offer( batch );
+			cache._depotPuts++;
+		}
+		
+		cache._stacks[slot][cache._sizes[slot]++] = obj;
+		cache._successfulReturns++;
+	}
+	
+	/**
+	 * Drops every pooled object. Objects still held by other threads are
+	 * dropped by those threads the next time they use the pool.
+	 */
+	public void clear()
+	{
+		this._timeShutdown = System.currentTimeMillis();
+		this._generation++;
+		for( Depot depot : this._depots )
+		{
+			if( depot == null )
+				continue;
+			depot._batches.clear();
+			depot._size.set( 0 );
+		}
+	}
+	
+	public void resetStatistics()
+	{
+		for( Cache cache : this._caches )
+			cache.resetStatistics();
+		synchronized( this._retiredTotals )
+		{
+			for( int i = 0; i < this._retiredTotals.length; i++ )
+				this._retiredTotals[i] = 0;
+		}
+		this._active = false;
+	}
+	
+	private Cache getCache( int slot )
+	{
+		Cache cache = this._cache.get();
+		if( cache == null )
+		{
+			// A new thread, a good time to let go of the ones that are gone
+			this.retireDeadCaches();
+			cache = new Cache( Thread.currentThread() );
+			cache._generation = this._generation;
+			this._cache.set( cache );
+			this._caches.add( cache );
+		}
+		
+		if( cache._generation != this._generation )
+		{
+			// The pool was cleared since this thread last used it
+			cache._stacks = new Object[0][];
+			cache._sizes = new int[0];
+			cache._generation = this._generation;
+		}
+		
+		if( slot >= cache._sizes.length )
+		{
+			int length = Math.max( slot + 1, cache._sizes.length * 2 );
+			Object[][] stacks = new Object[length][];
+			System.arraycopy( cache._stacks, 0, stacks, 0, cache._stacks.length );
+			for( int i = cache._stacks.length; i < length; i++ )
+				stacks[i] = new Object[this._localCapacity];
+			int[] sizes = new int[length];
+			System.arraycopy( cache._sizes, 0, sizes, 0, cache._sizes.length );
+			cache._stacks = stacks;
+			cache._sizes = sizes;
+		}
+		return cache;
+	}
+	
+	private Depot getDepot( int slot )
+	{
+		Depot[] depots = this._depots;
+		if( slot < depots.length && depots[slot] != null )
+			return depots[slot];
+		
+		// Rare: the first batch of a new kind of object
+		synchronized( this )
+		{
+			depots = this._depots;
+			if( slot >= depots.length )
+			{
+				Depot[] grown = new Depot[Math.max( slot + 1, depots.length * 2 )];
+				System.arraycopy( depots, 0, grown, 0, depots.length );
+				depots = grown;
+			}
+			if( depots[slot] == null )
+				depots[slot] = new Depot();
+			this._depots = depots;
+			return depots[slot];
+		}
+	}
+	
+	/**
+	 * Drops the caches of threads that have exited (along with the objects
+	 * they held), keeping their statistics.
+	 */
+	private void retireDeadCaches()
+	{
+		for( Cache cache : this._caches )
+		{
+			// Only one thread gets to remove (and count) a cache
+			if( !cache.isOwnerAlive() && this._caches.remove( cache ) )
+			{
+				synchronized( this._retiredTotals )
+				{
+					cache.addStatistics( this._retiredTotals );
+				}
+			}
+		}
+	}
+	
+	/** Sums the statistics kept by every thread. */
+	private long[] sumStatistics()
+	{
+		this.retireDeadCaches();
+		long[] totals = new long[9];
+		synchronized( this._retiredTotals )
+		{
+			System.arraycopy( this._retiredTotals, 0, totals, 0, totals.length );
+		}
+		for( Cache cache : this._caches )
+			cache.addStatistics( totals );
+		return totals;
+	}
+	
+	private String percentOf( long part, long whole )
+	{
+		if( part == 0 || whole == 0 )
+			return part + "(0%)";
+		return part + "(" + this._formatter.format( ( (double) part / (double) whole ) * 100 ) + "%)";
+	}
+	
+	public void printStatistics( PrintStream out, String prefix )
+	{
+		long[] totals = this.sumStatistics();
+		long timeShutdown = ( this._timeShutdown > 0 ) ? this._timeShutdown : System.currentTimeMillis();
+		
+		out.println( prefix + "Start time                       : " + this._timeStarted );
+		out.println( prefix + "Total rent requests              : " + totals[0] );
+		out.println( prefix + "Request rate                     : " + this._formatter.format( ( (double) totals[0] / (double) ( timeShutdown - this._timeStarted ) ) * 1000 ) );
+		out.println( prefix + "Hits                             : " + this.percentOf( totals[1], totals[0] ) );
+		out.println( prefix + "Misses                           : " + this.percentOf( totals[2], totals[0] ) );
+		out.println( prefix + "Total return requests            : " + totals[3] );
+		out.println( prefix + "Total successful returns         : " + totals[4] );
+		out.println( prefix + "Total overflow discards          : " + totals[5] );
+		out.println( prefix + "Total cleanup discards           : " + totals[6] );
+		out.println( prefix + "Batches moved to depot           : " + totals[7] );
+		out.println( prefix + "Batches taken from depot         : " + totals[8] );
+		out.println( prefix + "Threads using the pool           : " + this._caches.size() );
+	}
+	
+	public JSONObject toJSONObject() throws JSONException
+	{
+		long[] totals = this.sumStatistics();
+		long timeShutdown = ( this._timeShutdown > 0 ) ? this._timeShutdown : System.currentTimeMillis();
+		
+		JSONObject stats = new JSONObject();
+		stats.put( "startTime", this._timeStarted );
+		stats.put( "rentRequests", totals[0] );
+		if( totals[0] > 0 && timeShutdown > this._timeStarted )
+			stats.put( "requestRate", ( (double) totals[0] / (double) ( timeShutdown - this._timeStarted ) ) * 1000 );
+		else stats.put( "requestRate", 0.0 );
+		stats.put( "hits", totals[1] );
+		stats.put( "misses", totals[2] );
+		stats.put( "returnRequests", totals[3] );
+		stats.put( "successfulReturns", totals[4] );
+		stats.put( "overflowDiscards", totals[5] );
+		stats.put( "cleanupDiscards", totals[6] );
+		stats.put( "depotPuts", totals[7] );
+		stats.put( "depotTakes", totals[8] );
+		stats.put( "threads", this._caches.size() );
+		return stats;
+	}
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain;
+
+import java.io.Serializable;
+import java.util.LinkedList;
+import java.util.TreeMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import radlab.rain.util.ConcurrentLatencyHistogram;
+
+/**
+ * Time series of the operations a scoreboard processes: per operation and per
+ * bucket (1 second by default) the number of operations that succeeded and
+ * failed, their total latency and a compact latency histogram.<br />
+ * <br />
+ * Memory is bounded by the maximum number of buckets. The series covers the
+ * whole run: when a result falls past the last bucket, adjacent buckets are
+ * merged pairwise and the bucket width doubles. Histograms use the log-linear
+ * buckets of ConcurrentLatencyHistogram, coarsened to 4 linear sub-buckets per
+ * power of two of microseconds (about 20% relative error), and are only
+ * allocated for buckets that saw a successful operation.
+ */
+public class TimeSeries 
+{
+	public static long DEFAULT_BUCKET_MSECS	= 1000;
+	public static int DEFAULT_MAX_BUCKETS	= 3600;
+	
+	// Latencies past 2^36 usecs (~19 hours) all land in the last bucket
+	private static ConcurrentLatencyHistogram.Buckets HISTOGRAM = new ConcurrentLatencyHistogram.Buckets( 1000, 2, 36 );
+	private static int HISTOGRAM_BUCKETS	= HISTOGRAM.getCount();
+	
+	/** One bucket of one operation, latencies are in nanos. */
+	public static class Point implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+		
+		public String operationName		= "";
+		public long timestamp			= 0; // Start of the bucket (msecs)
+		public long bucketMsecs			= 0;
+		public long succeeded			= 0;
+		public long failed				= 0;
+		public double averageLatency	= 0.0;
+		public long p50Latency			= 0;
+		public long p90Latency			= 0;
+		public long p99Latency			= 0;
+		public long maxLatency			= 0;
+		
+		public String toString()
+		{
+			StringBuffer buf = new StringBuffer();
+			buf.append( "[" ).append( this.operationName ).append( " " ).append( this.timestamp ).append( "] " );
+			buf.append( "succeeded: " ).append( this.succeeded ).append( " failed: " ).append( this.failed );
+			buf.append( " avg (ns): " ).append( (long) this.averageLatency ).append( " 99th (ns): " ).append( this.p99Latency );
+			return buf.toString();
+		}
+	}
+	
+	private static class OperationSeries
+	{
+		long[] succeeded;
+		long[] failed;
+		long[] latencyNanos;
+		int[][] latencies;
+		
+		OperationSeries( int maxBuckets )
+		{
+			this.succeeded = new long[maxBuckets];
+			this.failed = new long[maxBuckets];
+			this.latencyNanos = new long[maxBuckets];
+			this.latencies = new int[maxBuckets][];
+		}
+	}
+	
+	private long _bucketMsecs = DEFAULT_BUCKET_MSECS;
+	private int _maxBuckets = DEFAULT_MAX_BUCKETS;
+	private long _originTime = -1;
+	private int _buckets = 0; // Buckets in use
+	private TreeMap<String,OperationSeries> _operations = new TreeMap<String,OperationSeries>();
+	
+	public TimeSeries( long bucketMsecs, int maxBuckets )
+	{
+		this._bucketMsecs = Math.max( 1, bucketMsecs );
+		// Keep an even number of buckets so they always merge pairwise
+		this._maxBuckets = Math.max( 2, maxBuckets + ( maxBuckets % 2 ) );
+	}
+	
+	public synchronized long getBucketMsecs() { return this._bucketMsecs; }
+	public synchronized int getBuckets() { return this._buckets; }
+	public int getMaxBuckets() { return this._maxBuckets; }
+	public synchronized long getOriginTime() { return this._originTime; }
+	
+	/**
+	 * Records an operation that finished at the given time.
+	 * 
+	 * @param opName            The operation name.
+	 * @param timeFinished      When the operation finished (msecs).
+	 * @param latencyNanos      The operation's execution time.
+	 * @param failed            Whether the operation failed.
+	 */
+	public synchronized void record( String opName, long timeFinished, long latencyNanos, boolean failed )
+	{
+		// Align the series to whole buckets
+		if( this._originTime < 0 )
+			this._originTime = timeFinished - ( timeFinished % this._bucketMsecs );
+		
+		// Results are processed in roughly finishing order, anything older than
+		// the first result goes into the first bucket
+		long index = Math.max( 0, ( timeFinished - this._originTime ) / this._bucketMsecs );
+		while( index >= this._maxBuckets )
+		{
+			this.coarsen();
+			index = ( timeFinished - this._originTime ) / this._bucketMsecs;
+		}
+		int bucket = (int) index;
+		if( bucket >= this._buckets )
+			this._buckets = bucket + 1;
+		
+		OperationSeries series = this._operations.get( opName );
+		if( series == null )
+		{
+			series = new OperationSeries( this._maxBuckets );
+			this._operations.put( opName, series );
+		}
+		
+		if( failed )
+		{
+			series.failed[bucket]++;
+			return;
+		}
+		
+		series.succeeded[bucket]++;
+		series.latencyNanos[bucket] += latencyNanos;
+		if( series.latencies[bucket] == null )
+			series.latencies[bucket] = new int[HISTOGRAM_BUCKETS];
+		series.latencies[bucket][HISTOGRAM.bucketOf( latencyNanos )]++;
+	}
+	
+	/**
+	 * Merges adjacent buckets and doubles the bucket width.
+	 */
+	private void coarsen()
+	{
+		for( OperationSeries series : this._operations.values() )
+		{
+			for( int i = 0; i < this._maxBuckets; i += 2 )
+			{
+				int j = i / 2;
+				series.succeeded[j] = series.succeeded[i] + series.succeeded[i + 1];
+				series.failed[j] = series.failed[i] + series.failed[i + 1];
+				series.latencyNanos[j] = series.latencyNanos[i] + series.latencyNanos[i + 1];
+				int[] merged = series.latencies[i];
+				int[] rhs = series.latencies[i + 1];
+				if( merged == null )
+					merged = rhs;
+				else if( rhs != null )
+				{
+					for( int k = 0; k < HISTOGRAM_BUCKETS; k++ )
+						merged[k] += rhs[k];
+				}
+				series.latencies[j] = merged;
+			}
+			
+			for( int j = this._maxBuckets / 2; j < this._maxBuckets; j++ )
+			{
+				series.succeeded[j] = 0;
+				series.failed[j] = 0;
+				series.latencyNanos[j] = 0;
+				series.latencies[j] = null;
+			}
+		}
+		this._buckets = ( this._buckets + 1 ) / 2;
+		this._bucketMsecs *= 2;
+	}
+	
+	/**
+	 * Returns the points of one operation (or of every operation if the name
+	 * is null) whose buckets start between the given times, inclusive.
+	 * 
+	 * @param opName    The operation name, or null for all of them.
+	 * @param fromTime  Earliest bucket start (msecs), 0 for the first bucket.
+	 * @param toTime    Latest bucket start (msecs), Long.MAX_VALUE for the last bucket.
+	 */
+	public synchronized LinkedList<Point> getPoints( String opName, long fromTime, long toTime )
+	{
+		LinkedList<Point> points = new LinkedList<Point>();
+		for( String name : this._operations.keySet() )
+		{
+			if( opName != null && !opName.equals( name ) )
+				continue;
+			
+			OperationSeries series = this._operations.get( name );
+			for( int i = 0; i < this._buckets; i++ )
+			{
+				long timestamp = this._originTime + ( i * this._bucketMsecs );
+				if( timestamp < fromTime || timestamp > toTime )
+					continue;
+				points.add( this.createPoint( name, series, i, timestamp ) );
+			}
+		}
+		return points;
+	}
+	
+	private Point createPoint( String opName, OperationSeries series, int bucket, long timestamp )
+	{
+		Point point = new Point();
+		point.operationName = opName;
+		point.timestamp = timestamp;
+		point.bucketMsecs = this._bucketMsecs;
+		point.succeeded = series.succeeded[bucket];
+		point.failed = series.failed[bucket];
+		if( point.succeeded > 0 )
+			point.averageLatency = (double) series.latencyNanos[bucket] / (double) point.succeeded;
+		
+		int[] latencies = series.latencies[bucket];
+		if( latencies != null )
+		{
+			point.p50Latency = HISTOGRAM.getPercentile( latencies, point.succeeded, 50 );
+			point.p90Latency = HISTOGRAM.getPercentile( latencies, point.succeeded, 90 );
+			point.p99Latency = HISTOGRAM.getPercentile( latencies, point.succeeded, 99 );
+			point.maxLatency = HISTOGRAM.getPercentile( latencies, point.succeeded, 100 );
+		}
+		return point;
+	}
+	
+	/**
+	 * Returns the whole series as columns (one array per metric) per
+	 * operation. Latencies are in seconds.
+	 */
+	public synchronized JSONObject toJSONObject() throws JSONException
+	{
+		JSONObject timeSeries = new JSONObject();
+		timeSeries.put( "originTime", this._originTime );
+		timeSeries.put( "bucketMsecs", this._bucketMsecs );
+		timeSeries.put( "buckets", this._buckets );
+		
+		JSONObject operations = new JSONObject();
+		for( String opName : this._operations.keySet() )
+		{
+			OperationSeries series = this._operations.get( opName );
+			JSONArray succeeded = new JSONArray();
+			JSONArray failed = new JSONArray();
+			JSONArray average = new JSONArray();
+			JSONArray p50 = new JSONArray();
+			JSONArray p90 = new JSONArray();
+			JSONArray p99 = new JSONArray();
+			JSONArray max = new JSONArray();
+			for( int i = 0; i < this._buckets; i++ )
+			{
+				Point point = this.createPoint( opName, series, i, this._originTime + ( i * this._bucketMsecs ) );
+				succeeded.put( point.succeeded );
+				failed.put( point.failed );
+				average.put( point.averageLatency / 1000000000.0 );
+				p50.put( point.p50Latency / 1000000000.0 );
+				p90.put( point.p90Latency / 1000000000.0 );
+				p99.put( point.p99Latency / 1000000000.0 );
+				max.put( point.maxLatency / 1000000000.0 );
+			}
+			
+			JSONObject columns = new JSONObject();
+			columns.put( "succeeded", succeeded );
+			columns.put( "failed", failed );
+			columns.put( "averageLatency", average );
+			columns.put( "p50Latency", p50 );
+			columns.put( "p90Latency", p90 );
+			columns.put( "p99Latency", p99 );
+			columns.put( "maxLatency", max );
+			operations.put( opName, columns );
+		}
+		timeSeries.put( "operations", operations );
+		return timeSeries;
+	}
+}
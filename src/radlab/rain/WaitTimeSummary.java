@@ -31,6 +31,9 @@
 
 package radlab.rain;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import radlab.rain.util.ISamplingStrategy;
 
 public class WaitTimeSummary 
@@ -39,6 +42,10 @@ public class WaitTimeSummary
 	public long totalWaitTime			= 0;
 	public long minWaitTime				= Long.MAX_VALUE;
 	public long maxWaitTime				= Long.MIN_VALUE;
+	// Scheduling lateness (nanos) of the wakeups that end the wait times
+	public long wakeups					= 0;
+	public long totalLateness			= 0;
+	public long maxLateness				= 0;
 	
 	// Sample the response times so that we can give a "reasonable" 
 	// estimate of the 90th and 99th percentiles.	
@@ -81,6 +88,13 @@ public class WaitTimeSummary
 		else return (double) this.totalWaitTime/(double)this.count;
 	}
 
+	public double getAverageLateness()
+	{
+		if( this.wakeups == 0 )
+			return 0.0;
+		else return (double) this.totalLateness/(double)this.wakeups;
+	}
+
 	public double getSampleMean() 
 	{
 		return this.waitTimeSampler.getSampleMean();
@@ -95,4 +109,25 @@ public class WaitTimeSummary
 	{
 		return this.waitTimeSampler.getTvalue( averageWaitTime );
 	}
+	
+	/**
+	 * Returns the summary as a JSON object for the results exporter. Wait
+	 * times are in seconds, scheduling lateness in milliseconds.
+	 */
+	public JSONObject toJSONObject() throws JSONException
+	{
+		JSONObject summary = new JSONObject();
+		summary.put( "count", this.count );
+		summary.put( "averageWaitTime", this.getAverageWaitTime() / 1000000000.0 );
+		summary.put( "minWaitTime", ( this.minWaitTime == Long.MAX_VALUE ? 0 : this.minWaitTime ) / 1000000000.0 );
+		summary.put( "maxWaitTime", ( this.maxWaitTime == Long.MIN_VALUE ? 0 : this.maxWaitTime ) / 1000000000.0 );
+		summary.put( "p90", this.getNthPercentileResponseTime( 90 ) / 1000000000.0 );
+		summary.put( "p99", this.getNthPercentileResponseTime( 99 ) / 1000000000.0 );
+		summary.put( "samplesSeen", this.getSamplesSeen() );
+		summary.put( "samplesCollected", this.getSamplesCollected() );
+		summary.put( "wakeups", this.wakeups );
+		summary.put( "averageLatenessMsecs", this.getAverageLateness() / 1000000.0 );
+		summary.put( "maxLatenessMsecs", this.maxLateness / 1000000.0 );
+		return summary;
+	}
 }
@@ -0,0 +1,622 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import radlab.rain.DefaultScenarioTrack;
+import radlab.rain.Generator;
+import radlab.rain.MixMatrix;
+import radlab.rain.ObjectPool;
+import radlab.rain.Operation;
+import radlab.rain.OperationSummary;
+import radlab.rain.Scoreboard;
+import radlab.rain.hotspots.Multinomial;
+import radlab.rain.util.EmpiricalCDF;
+import radlab.rain.util.HistogramSamplingStrategy;
+import radlab.rain.util.HttpTransport;
+import radlab.rain.util.PoissonSamplingStrategy;
+import radlab.rain.util.ResponseScanner;
+import radlab.rain.util.storage.LongZipfKeyGenerator;
+import radlab.rain.util.storage.ZipfKeyGenerator;
+
+/**
+ * Microbenchmarks of the load generator's own overhead: the work Rain does
+ * per operation on top of the operation itself (recording results, recycling
+ * objects, picking the next operation and key, parsing responses). Run them
+ * with the Benchmark-overhead ant target (pass options with -Dbench.args=...)
+ * or directly:<br />
+ * <br />
+ * java radlab.rain.bench.GeneratorOverheadBenchmarks [options]<br />
+ * <br />
+ * -f regex           only run the benchmarks whose names match<br />
+ * -t threads         threads for the contended benchmarks (default: number of cores)<br />
+ * -w iterations      warm up iterations (default 3)<br />
+ * -i iterations      measurement iterations (default 5)<br />
+ * -s msecs           length of an iteration (default 1000)<br />
+ * -o file            write the results as JSON lines<br />
+ * -b file            compare against a results file written with -o and exit
+ *                    with status 1 if a benchmark got slower or allocates more<br />
+ * -r tolerance       allowed slow down as a fraction (default 0.10)<br />
+ * -l                 list the benchmarks and exit<br />
+ * <br />
+ * Keep the machine otherwise idle and compare results from the same machine
+ * and JVM only.
+ */
+public class GeneratorOverheadBenchmarks 
+{
+	public static double DEFAULT_TOLERANCE = 0.10;
+	/** Allocation changes below this many bytes per operation are noise (TLAB refills etc.). */
+	public static double ALLOCATION_NOISE_BYTES = 16.0;
+	
+	private static NumberFormat _formatter = new DecimalFormat( "#0.00" );
+	
+	/** An operation that does nothing, so only Rain's own bookkeeping is measured. */
+	public static class NoopOperation extends Operation
+	{
+		public static String NAME = "Noop";
+		
+		public NoopOperation( Scoreboard scoreboard )
+		{
+			super( true, scoreboard );
+			this._operationName = NAME;
+			this._operationIndex = 0;
+			this.setGeneratedBy( Thread.currentThread().getName() );
+		}
+		
+		public void prepare( Generator generator ) 
+		{}
+		
+		public void execute() throws Throwable 
+		{
+			this.setFailed( false );
+		}
+		
+		public void cleanup() 
+		{}
+	}
+	
+	/** A track with an object pool but without a scenario. */
+	public static class BenchmarkTrack extends DefaultScenarioTrack
+	{
+		public BenchmarkTrack( String name, long maxPoolSize )
+		{
+			super( name, null );
+			this._objPool = new ObjectPool( maxPoolSize );
+			this._objPool.setTrackName( name );
+		}
+	}
+	
+	/**
+	 * Runs operations to completion against a live scoreboard: the path
+	 * Operation.run -> Scoreboard.dropOff -> worker thread.
+	 */
+	public static class DropOffBenchmark extends MicroBenchmark
+	{
+		private String _queueType;
+		private Scoreboard _scoreboard = null;
+		private NoopOperation[] _operations = null;
+		
+		public DropOffBenchmark( String queueType, int threads )
+		{
+			super( "scoreboard.dropOff." + queueType + ".t" + threads, threads );
+			this._queueType = queueType;
+		}
+		
+		public void setup() throws Exception
+		{
+			BenchmarkTrack track = new BenchmarkTrack( "bench", 0 );
+			this._scoreboard = new Scoreboard( "bench" );
+			this._scoreboard.setScenarioTrack( track );
+			this._scoreboard.setDropOffQueueType( this._queueType );
+			this._scoreboard.setTimeSeriesBucketMsecs( 0 );
+			long now = System.currentTimeMillis();
+			// Every result counts as steady state
+			this._scoreboard.initialize( now - 1000, now + 24L * 3600L * 1000L );
+			this._scoreboard.start();
+			// Operations aren't pooled (the pool is never rented from), so each thread re-uses its own
+			this._operations = new NoopOperation[this._threads];
+			for( int i = 0; i < this._threads; i++ )
+				this._operations[i] = new NoopOperation( this._scoreboard );
+		}
+		
+		public void teardown() throws Exception
+		{
+			this._scoreboard.stop();
+		}
+		
+		public long run( int threadIndex, int iterations )
+		{
+			NoopOperation operation = this._operations[threadIndex];
+			for( int i = 0; i < iterations; i++ )
+				operation.run();
+			return operation.getTimeFinished();
+		}
+	}
+	
+	/** Rents an operation from the track's pool and returns it. */
+	public static class ObjectPoolBenchmark extends MicroBenchmark
+	{
+		private ObjectPool _pool = null;
+		private int _slot = ObjectPool.slotOf( NoopOperation.NAME );
+		private Scoreboard _scoreboard = new Scoreboard( "bench" );
+		
+		public ObjectPoolBenchmark( int threads )
+		{
+			super( "objectPool.rentReturn.t" + threads, threads );
+		}
+		
+		public void setup()
+		{
+			this._pool = new ObjectPool( 100000 );
+		}
+		
+		public long run( int threadIndex, int iterations )
+		{
+			long sink = 0;
+			for( int i = 0; i < iterations; i++ )
+			{
+				Operation operation = this._pool.rentObject( this._slot );
+				if( operation == null )
+					operation = new NoopOperation( this._scoreboard );
+				sink += operation.getOperationIndex();
+				this._pool.returnObject( operation );
+			}
+			return sink;
+		}
+	}
+	
+	/** Picks the next operation from a mix's selection matrix the way the generators do. */
+	public static class MixSelectionBenchmark extends MicroBenchmark
+	{
+		private double[][] _selectionMix = null;
+		private Random _random = new Random( 1 );
+		
+		public MixSelectionBenchmark()
+		{
+			super( "mixMatrix.selectNext", 1 );
+			double[][] mix = { 	{ 1, 50, 0, 49,  0, 0, 0, 0 }, 
+								{ 1,  0, 0, 99,  0, 0, 0, 0 }, 
+								{ 1, 50, 0, 49,  0, 0,  0, 0 }, 
+								{ 0,  5, 5, 10, 80, 0, 0, 0 }, 
+								{ 0,  5, 5, 20, 0, 70, 0, 0 },
+								{ 0,  0, 5, 35, 0, 0, 60, 0 },
+								{ 0,  0, 10, 30, 0, 0, 0, 60 },
+								{ 0,  0, 10, 80, 0, 0, 10, 0 }  };
+			this._selectionMix = new MixMatrix( mix ).getSelectionMix();
+		}
+		
+		public long run( int threadIndex, int iterations )
+		{
+			int lastOperation = 0;
+			long sink = 0;
+			for( int i = 0; i < iterations; i++ )
+			{
+				double rand = this._random.nextDouble();
+				int j;
+				for ( j = 0; j < this._selectionMix.length; j++ )
+				{
+					if ( rand <= this._selectionMix[lastOperation][j] )
+						break;
+				}
+				lastOperation = ( j < this._selectionMix.length ) ? j : 0;
+				sink += lastOperation;
+			}
+			return sink;
+		}
+	}
+	
+	/** Draws keys from a Zipf key generator over keyspaces of different sizes. */
+	public static class ZipfBenchmark extends MicroBenchmark
+	{
+		private int _maxKey;
+		private int _method;
+		private ZipfKeyGenerator _generator = null;
+		
+		public ZipfBenchmark( int maxKey, int method )
+		{
+			super( "zipf.generateKey." + ( method == ZipfKeyGenerator.DIRECT_SAMPLING_METHOD ? "direct" : "rejection" ) + "." + maxKey, 1 );
+			this._maxKey = maxKey;
+			this._method = method;
+		}
+		
+		public void setup()
+		{
+			this._generator = new ZipfKeyGenerator( 1.001, 3.456, 1, this._maxKey, 1, this._method );
+			// Build any tables before the clock starts
+			this._generator.generateKey();
+		}
+		
+		public long run( int threadIndex, int iterations )
+		{
+			long sink = 0;
+			for( int i = 0; i < iterations; i++ )
+				sink += this._generator.generateKey();
+			return sink;
+		}
+	}
+	
+	/** Draws keys from the long (rejection-inversion) Zipf key generator. */
+	public static class LongZipfBenchmark extends MicroBenchmark
+	{
+		private long _maxKey;
+		private LongZipfKeyGenerator _generator = null;
+		private Random _random = new Random( 1 );
+		
+		public LongZipfBenchmark( long maxKey )
+		{
+			super( "zipf.generateKey.long." + maxKey, 1 );
+			this._maxKey = maxKey;
+		}
+		
+		public void setup()
+		{
+			this._generator = new LongZipfKeyGenerator( 1.001, 1, this._maxKey, 1 );
+		}
+		
+		public long run( int threadIndex, int iterations )
+		{
+			long sink = 0;
+			for( int i = 0; i < iterations; i++ )
+				sink += this._generator.generateLongKey( this._random );
+			return sink;
+		}
+	}
+	
+	/** Samples a Zipf-shaped multinomial (the hotspot object popularity). */
+	public static class MultinomialBenchmark extends MicroBenchmark
+	{
+		private int _size;
+		private Multinomial _multinomial = null;
+		private Random _random = new Random( 1 );
+		
+		public MultinomialBenchmark( int size )
+		{
+			super( "multinomial.sampleOne." + size, 1 );
+			this._size = size;
+		}
+		
+		public void setup()
+		{
+			this._multinomial = Multinomial.zipf( this._size, 1.0 );
+		}
+		
+		public long run( int threadIndex, int iterations )
+		{
+			long sink = 0;
+			for( int i = 0; i < iterations; i++ )
+				sink += this._multinomial.sampleOne( this._random );
+			return sink;
+		}
+	}
+	
+	/** Samples an empirical CDF given as a percentile summary (e.g., think times). */
+	public static class EmpiricalCDFBenchmark extends MicroBenchmark
+	{
+		private EmpiricalCDF _cdf = null;
+		
+		public EmpiricalCDFBenchmark()
+		{
+			super( "empiricalCDF.nextDouble", 1 );
+			TreeMap<Double,Double> cdfSummary = new TreeMap<Double,Double>();
+			cdfSummary.put( 0.01, 10.0 );
+			cdfSummary.put( 0.25, 15.0 );
+			cdfSummary.put( 0.50, 17.0 );
+			cdfSummary.put( 0.75, 19.0 );
+			cdfSummary.put( 0.99, 30.0 );
+			this._cdf = new EmpiricalCDF( cdfSummary, new Random( 1 ) );
+		}
+		
+		public long run( int threadIndex, int iterations )
+		{
+			double sink = 0;
+			for( int i = 0; i < iterations; i++ )
+				sink += this._cdf.nextDouble();
+			return (long) sink;
+		}
+	}
+	
+	/** Reads a canned HTML response the way HttpTransport does (buffered or scanned). */
+	public static class ResponseParsingBenchmark extends MicroBenchmark
+	{
+		private boolean _scan;
+		private byte[] _body = null;
+		private StringBuilder _buffer = new StringBuilder();
+		private ResponseScanner _scanner = null;
+		
+		public ResponseParsingBenchmark( boolean scan, int bodyBytes )
+		{
+			super( "httpTransport." + ( scan ? "streamResponse" : "readResponseIntoBuffer" ) + "." + bodyBytes, 1 );
+			this._scan = scan;
+			StringBuilder body = new StringBuilder( "<html><head><title>Rain</title></head><body>" );
+			int row = 0;
+			while( body.length() < bodyBytes - 32 )
+				body.append( "<tr><td><a href=\"/item?id=" ).append( row ).append( "\">Item " ).append( row++ ).append( "</a></td></tr>\n" );
+			body.append( "<div id=\"footer\"></div></body></html>" );
+			this._body = body.toString().getBytes();
+			this._scanner = new ResponseScanner( "id=\"footer\"", "</html>" );
+		}
+		
+		public long run( int threadIndex, int iterations ) throws IOException
+		{
+			long sink = 0;
+			for( int i = 0; i < iterations; i++ )
+			{
+				ByteArrayEntity entity = new ByteArrayEntity( this._body );
+				if( this._scan )
+				{
+					this._scanner.reset();
+					sink += HttpTransport.streamResponse( entity, this._scanner ) + this._scanner.getFoundCount();
+				}
+				else
+				{
+					this._buffer.setLength( 0 );
+					HttpTransport.readResponseIntoBuffer( entity, this._buffer );
+					sink += this._buffer.length();
+				}
+			}
+			return sink;
+		}
+	}
+	
+	/** Records response times in an operation summary with either sampler. */
+	public static class AcceptSampleBenchmark extends MicroBenchmark
+	{
+		private boolean _histogram;
+		private OperationSummary _summary = null;
+		private Random _random = new Random( 1 );
+		
+		public AcceptSampleBenchmark( boolean histogram )
+		{
+			super( "operationSummary.acceptSample." + ( histogram ? "histogram" : "poisson" ), 1 );
+			this._histogram = histogram;
+		}
+		
+		public void setup()
+		{
+			if( this._histogram )
+				this._summary = new OperationSummary( new HistogramSamplingStrategy() );
+			else this._summary = new OperationSummary( new PoissonSamplingStrategy( 500 ) );
+		}
+		
+		public long run( int threadIndex, int iterations )
+		{
+			long sink = 0;
+			for( int i = 0; i < iterations; i++ )
+			{
+				// Response times between 1 and ~16 msecs
+				long responseTime = 1000000L + ( this._random.nextInt( 1 << 24 ) );
+				if( this._summary.acceptSample( responseTime ) )
+					sink++;
+			}
+			// Don't let the poisson sampler grow without bound across iterations
+			if( !this._histogram )
+				this.setup();
+			return sink;
+		}
+	}
+	
+	public static ArrayList<MicroBenchmark> createBenchmarks( int threads )
+	{
+		ArrayList<MicroBenchmark> benchmarks = new ArrayList<MicroBenchmark>();
+		benchmarks.add( new DropOffBenchmark( Scoreboard.LOCKED_DROP_OFF_QUEUE, 1 ) );
+		benchmarks.add( new DropOffBenchmark( Scoreboard.STRIPED_DROP_OFF_QUEUE, 1 ) );
+		if( threads > 1 )
+		{
+			benchmarks.add( new DropOffBenchmark( Scoreboard.LOCKED_DROP_OFF_QUEUE, threads ) );
+			benchmarks.add( new DropOffBenchmark( Scoreboard.STRIPED_DROP_OFF_QUEUE, threads ) );
+		}
+		benchmarks.add( new ObjectPoolBenchmark( 1 ) );
+		if( threads > 1 )
+			benchmarks.add( new ObjectPoolBenchmark( threads ) );
+		benchmarks.add( new MixSelectionBenchmark() );
+		benchmarks.add( new ZipfBenchmark( 1000, ZipfKeyGenerator.DIRECT_SAMPLING_METHOD ) );
+		benchmarks.add( new ZipfBenchmark( 1000000, ZipfKeyGenerator.DIRECT_SAMPLING_METHOD ) );
+		benchmarks.add( new ZipfBenchmark( 1000000, ZipfKeyGenerator.REJECTION_SAMPLING_METHOD ) );
+		benchmarks.add( new LongZipfBenchmark( 1000000000000L ) );
+		benchmarks.add( new MultinomialBenchmark( 1000 ) );
+		benchmarks.add( new MultinomialBenchmark( 100000 ) );
+		benchmarks.add( new EmpiricalCDFBenchmark() );
+		benchmarks.add( new ResponseParsingBenchmark( false, 16 * 1024 ) );
+		benchmarks.add( new ResponseParsingBenchmark( true, 16 * 1024 ) );
+		benchmarks.add( new AcceptSampleBenchmark( false ) );
+		benchmarks.add( new AcceptSampleBenchmark( true ) );
+		return benchmarks;
+	}
+	
+	public static Hashtable<String,MicroBenchmarkRunner.Result> readResults( String filename ) throws IOException, JSONException
+	{
+		Hashtable<String,MicroBenchmarkRunner.Result> results = new Hashtable<String,MicroBenchmarkRunner.Result>();
+		BufferedReader reader = new BufferedReader( new FileReader( filename ) );
+		try
+		{
+			String line = null;
+			while( ( line = reader.readLine() ) != null )
+			{
+				if( line.trim().length() == 0 )
+					continue;
+				MicroBenchmarkRunner.Result result = MicroBenchmarkRunner.Result.fromJSONObject( new JSONObject( line ) );
+				results.put( result._name, result );
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return results;
+	}
+	
+	/**
+	 * Compares a result with its baseline.
+	 * 
+	 * @return  A description of the regression or null if there is none.
+	 */
+	public static String checkRegression( MicroBenchmarkRunner.Result result, MicroBenchmarkRunner.Result baseline, double tolerance )
+	{
+		if( result._opsPerSec < baseline._opsPerSec * ( 1.0 - tolerance ) )
+			return "throughput " + _formatter.format( result._opsPerSec ) + " ops/sec vs. " + _formatter.format( baseline._opsPerSec ) + " ops/sec";
+		if( result._bytesPerOp >= 0 && baseline._bytesPerOp >= 0 && result._bytesPerOp > baseline._bytesPerOp + Math.max( ALLOCATION_NOISE_BYTES, baseline._bytesPerOp * tolerance ) )
+			return "allocation " + _formatter.format( result._bytesPerOp ) + " bytes/op vs. " + _formatter.format( baseline._bytesPerOp ) + " bytes/op";
+		return null;
+	}
+	
+	public static void main( String[] args ) throws Exception
+	{
+		String filter = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int warmupIterations = MicroBenchmarkRunner.DEFAULT_WARMUP_ITERATIONS;
+		int measurementIterations = MicroBenchmarkRunner.DEFAULT_MEASUREMENT_ITERATIONS;
+		long iterationMsecs = MicroBenchmarkRunner.DEFAULT_ITERATION_MSECS;
+		String outputFile = null;
+		String baselineFile = null;
+		double tolerance = DEFAULT_TOLERANCE;
+		boolean listOnly = false;
+		
+		for( int i = 0; i < args.length; i++ )
+		{
+			String arg = args[i];
+			if( arg.equals( "-l" ) )
+				listOnly = true;
+			else if( i + 1 >= args.length )
+			{
+				System.out.println( "[BENCH] Missing value for option: " + arg );
+				System.exit( 2 );
+			}
+			else if( arg.equals( "-f" ) )
+				filter = args[++i];
+			else if( arg.equals( "-t" ) )
+				threads = Integer.parseInt( args[++i] );
+			else if( arg.equals( "-w" ) )
+				warmupIterations = Integer.parseInt( args[++i] );
+			else if( arg.equals( "-i" ) )
+				measurementIterations = Integer.parseInt( args[++i] );
+			else if( arg.equals( "-s" ) )
+				iterationMsecs = Long.parseLong( args[++i] );
+			else if( arg.equals( "-o" ) )
+				outputFile = args[++i];
+			else if( arg.equals( "-b" ) )
+				baselineFile = args[++i];
+			else if( arg.equals( "-r" ) )
+				tolerance = Double.parseDouble( args[++i] );
+			else
+			{
+				System.out.println( "[BENCH] Unknown option: " + arg );
+				System.exit( 2 );
+			}
+		}
+		
+		Pattern pattern = ( filter != null ) ? Pattern.compile( filter ) : null;
+		ArrayList<MicroBenchmark> benchmarks = new ArrayList<MicroBenchmark>();
+		for( MicroBenchmark benchmark : createBenchmarks( threads ) )
+		{
+			if( pattern == null || pattern.matcher( benchmark.getName() ).find() )
+				benchmarks.add( benchmark );
+		}
+		
+		if( listOnly )
+		{
+			for( MicroBenchmark benchmark : benchmarks )
+				System.out.println( benchmark.getName() );
+			return;
+		}
+		
+		Hashtable<String,MicroBenchmarkRunner.Result> baseline = null;
+		if( baselineFile != null )
+			baseline = readResults( baselineFile );
+		
+		PrintStream out = null;
+		if( outputFile != null )
+			out = new PrintStream( new File( outputFile ) );
+		
+		MicroBenchmarkRunner runner = new MicroBenchmarkRunner( warmupIterations, measurementIterations, iterationMsecs );
+		int regressions = 0;
+		System.out.println( "[BENCH] " + benchmarks.size() + " benchmark(s), " + warmupIterations + " warm up and " + measurementIterations + " measurement iteration(s) of " + iterationMsecs + " msecs each" );
+		for( MicroBenchmark benchmark : benchmarks )
+		{
+			MicroBenchmarkRunner.Result result = runner.measure( benchmark );
+			
+			StringBuffer line = new StringBuffer();
+			line.append( "[BENCH] " ).append( result._name );
+			for( int pad = result._name.length(); pad < 50; pad++ )
+				line.append( ' ' );
+			line.append( ": " ).append( _formatter.format( result._opsPerSec ) ).append( " ops/sec" );
+			line.append( " (+/- " ).append( _formatter.format( result._opsPerSecStdDev ) ).append( ")" );
+			if( result._bytesPerOp >= 0 )
+			{
+				line.append( ", " ).append( _formatter.format( result._bytesPerOp ) ).append( " bytes/op" );
+				line.append( ", " ).append( _formatter.format( result._allocMBytesPerSec ) ).append( " MB/sec allocated" );
+			}
+			System.out.println( line.toString() );
+			
+			if( out != null )
+			{
+				out.println( result.toJSONObject().toString() );
+				out.flush();
+			}
+			
+			if( baseline != null && baseline.containsKey( result._name ) )
+			{
+				String regression = checkRegression( result, baseline.get( result._name ), tolerance );
+				if( regression != null )
+				{
+					System.out.println( "[BENCH] REGRESSION " + result._name + ": " + regression );
+					regressions++;
+				}
+			}
+		}
+		
+		if( out != null )
+			out.close();
+		
+		if( baseline != null )
+		{
+			System.out.println( "[BENCH] " + regressions + " regression(s) against " + baselineFile );
+			if( regressions > 0 )
+				System.exit( 1 );
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.bench;
+
+/**
+ * A microbenchmark of some piece of the load generator's own machinery. The
+ * runner calls <code>run</code> from one or more threads (see
+ * <code>getThreads</code>) in batches until the measurement iteration is over
+ * and counts every invocation as one operation.
+ */
+public abstract class MicroBenchmark 
+{
+	protected String _name = "";
+	protected int _threads = 1;
+	
+	public MicroBenchmark( String name, int threads )
+	{
+		this._name = name;
+		this._threads = Math.max( 1, threads );
+	}
+	
+	public String getName() { return this._name; }
+	public int getThreads() { return this._threads; }
+	
+	/** Called once before the warm up iterations. */
+	public void setup() throws Exception
+	{}
+	
+	/** Called once after the last measurement iteration. */
+	public void teardown() throws Exception
+	{}
+	
+	/**
+	 * Runs the operation under test <code>iterations</code> times on the
+	 * calling thread. The return value must depend on the work done, the
+	 * runner folds it into a sink so the JIT can't drop the work.
+	 * 
+	 * @param threadIndex   Index of the calling thread (0 .. threads-1).
+	 * @param iterations    How many operations to run.
+	 */
+	public abstract long run( int threadIndex, int iterations ) throws Exception;
+}
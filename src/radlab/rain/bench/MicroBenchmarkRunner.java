@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CyclicBarrier;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Runs MicroBenchmarks: a number of timed warm up iterations followed by timed
+ * measurement iterations, each with the benchmark's threads hammering it
+ * concurrently. Reports throughput (operations/sec across all threads, mean
+ * and standard deviation over the measurement iterations) and the bytes
+ * allocated per operation by the benchmark threads (HotSpot only, -1
+ * otherwise).
+ */
+public class MicroBenchmarkRunner 
+{
+	public static int DEFAULT_WARMUP_ITERATIONS		= 3;
+	public static int DEFAULT_MEASUREMENT_ITERATIONS = 5;
+	public static long DEFAULT_ITERATION_MSECS		= 1000;
+	/** Operations a thread runs between checks of the clock. */
+	public static int BATCH_SIZE					= 1000;
+	
+	/** Folded results, keeps the JIT from eliminating benchmark code. */
+	public static volatile long _sink = 0;
+	
+	/** Results of one benchmark. */
+	public static class Result
+	{
+		public String _name;
+		public int _threads;
+		public double _opsPerSec;
+		public double _opsPerSecStdDev;
+		public double _bytesPerOp = -1;
+		public double _allocMBytesPerSec = -1;
+		
+		public JSONObject toJSONObject() throws JSONException
+		{
+			JSONObject result = new JSONObject();
+			result.put( "benchmark", this._name );
+			result.put( "threads", this._threads );
+			result.put( "opsPerSec", this._opsPerSec );
+			result.put( "opsPerSecStdDev", this._opsPerSecStdDev );
+			result.put( "bytesPerOp", this._bytesPerOp );
+			result.put( "allocMBytesPerSec", this._allocMBytesPerSec );
+			return result;
+		}
+		
+		public static Result fromJSONObject( JSONObject obj ) throws JSONException
+		{
+			Result result = new Result();
+			result._name = obj.getString( "benchmark" );
+			result._threads = obj.getInt( "threads" );
+			result._opsPerSec = obj.getDouble( "opsPerSec" );
+			result._opsPerSecStdDev = obj.getDouble( "opsPerSecStdDev" );
+			result._bytesPerOp = obj.getDouble( "bytesPerOp" );
+			result._allocMBytesPerSec = obj.getDouble( "allocMBytesPerSec" );
+			return result;
+		}
+	}
+	
+	private int _warmupIterations = DEFAULT_WARMUP_ITERATIONS;
+	private int _measurementIterations = DEFAULT_MEASUREMENT_ITERATIONS;
+	private long _iterationMsecs = DEFAULT_ITERATION_MSECS;
+	
+	public MicroBenchmarkRunner( int warmupIterations, int measurementIterations, long iterationMsecs )
+	{
+		this._warmupIterations = Math.max( 0, warmupIterations );
+		this._measurementIterations = Math.max( 1, measurementIterations );
+		this._iterationMsecs = Math.max( 1, iterationMsecs );
+	}
+	
+	public Result measure( MicroBenchmark benchmark ) throws Exception
+	{
+		benchmark.setup();
+		try
+		{
+			for( int i = 0; i < this._warmupIterations; i++ )
+				this.runIteration( benchmark );
+			
+			double[] opsPerSec = new double[this._measurementIterations];
+			long totalOps = 0;
+			long totalBytes = 0;
+			long totalNanos = 0;
+			boolean allocationSupported = true;
+			for( int i = 0; i < this._measurementIterations; i++ )
+			{
+				long[] iteration = this.runIteration( benchmark );
+				opsPerSec[i] = (double) iteration[0] / ( (double) iteration[2] / 1000000000.0 );
+				totalOps += iteration[0];
+				totalNanos += iteration[2];
+				if( iteration[1] < 0 )
+					allocationSupported = false;
+				else totalBytes += iteration[1];
+			}
+			
+			Result result = new Result();
+			result._name = benchmark.getName();
+			result._threads = benchmark.getThreads();
+			double mean = 0.0;
+			for( double val : opsPerSec )
+				mean += val;
+			mean /= opsPerSec.length;
+			double variance = 0.0;
+			for( double val : opsPerSec )
+				variance += ( val - mean ) * ( val - mean );
+			result._opsPerSec = mean;
+			result._opsPerSecStdDev = ( opsPerSec.length > 1 ) ? Math.sqrt( variance / ( opsPerSec.length - 1 ) ) : 0.0;
+			if( allocationSupported && totalOps > 0 )
+			{
+				result._bytesPerOp = (double) totalBytes / (double) totalOps;
+				result._allocMBytesPerSec = ( (double) totalBytes / ( 1024.0 * 1024.0 ) ) / ( (double) totalNanos / 1000000000.0 );
+			}
+			return result;
+		}
+		finally
+		{
+			benchmark.teardown();
+		}
+	}
+	
+	/**
+	 * Runs one timed iteration on the benchmark's threads.
+	 * 
+	 * @return  Operations run, bytes allocated (-1 if unknown) and elapsed nanos.
+	 */
+	private long[] runIteration( final MicroBenchmark benchmark ) throws Exception
+	{
+		final int threads = benchmark.getThreads();
+		final long[] ops = new long[threads];
+		final long[] bytes = new long[threads];
+		final Throwable[] failures = new Throwable[threads];
+		final CyclicBarrier startLine = new CyclicBarrier( threads + 1 );
+		final long iterationNanos = this._iterationMsecs * 1000000L;
+		
+		Thread[] workers = new Thread[threads];
+		for( int t = 0; t < threads; t++ )
+		{
+			final int threadIndex = t;
+			workers[t] = new Thread( benchmark.getName() + "-" + t )
+			{
+				public void run()
+				{
+					try
+					{
+						long allocatedBefore = allocatedBytes();
+						startLine.await();
+						long sink = 0;
+						long count = 0;
+						long deadline = System.nanoTime() + iterationNanos;
+						do
+						{
+							sink += benchmark.run( threadIndex, BATCH_SIZE );
+							count += BATCH_SIZE;
+						}
+						while( System.nanoTime() < deadline );
+						_sink += sink;
+						ops[threadIndex] = count;
+						long allocatedAfter = allocatedBytes();
+						bytes[threadIndex] = ( allocatedBefore < 0 || allocatedAfter < 0 ) ? -1 : allocatedAfter - allocatedBefore;
+					}
+					catch( Throwable e )
+					{
+						failures[threadIndex] = e;
+					}
+				}
+			};
+			workers[t].start();
+		}
+		
+		startLine.await();
+		long start = System.nanoTime();
+		for( Thread worker : workers )
+			worker.join();
+		long elapsed = System.nanoTime() - start;
+		
+		long totalOps = 0;
+		long totalBytes = 0;
+		for( int t = 0; t < threads; t++ )
+		{
+			if( failures[t] != null )
+				throw new Exception( "Benchmark " + benchmark.getName() + " failed on thread " + t + ". Reason: " + failures[t].toString(), failures[t] );
+			totalOps += ops[t];
+			if( bytes[t] < 0 || totalBytes < 0 )
+				totalBytes = -1;
+			else totalBytes += bytes[t];
+		}
+		return new long[] { totalOps, totalBytes, elapsed };
+	}
+	
+	/**
+	 * Bytes allocated so far by the calling thread or -1 if the JVM can't
+	 * tell.
+	 */
+	public static long allocatedBytes()
+	{
+		java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if( !( threadBean instanceof com.sun.management.ThreadMXBean ) )
+			return -1;
+		
+		com.sun.management.ThreadMXBean hotspotBean = (com.sun.management.ThreadMXBean) threadBean;
+		if( !hotspotBean.isThreadAllocatedMemorySupported() || !hotspotBean.isThreadAllocatedMemoryEnabled() )
+			return -1;
+		return hotspotBean.getThreadAllocatedBytes( Thread.currentThread().getId() );
+	}
+}
@@ -0,0 +1,56 @@
+package radlab.rain.communication;
+
+import java.util.TreeMap;
+
+/*
+ * Tells an agent which users of each track it generates load for. Users keep
+ * their global ids, so load profiles (which name the number of active users
+ * for the whole run) mean the same thing on every agent. Tracks missing from
+ * the assignment get no users on the agent.
+ * */
+public class AgentAssignmentMessage extends RainMessage 
+{
+	public AgentAssignmentMessage()
+	{
+		this._header = new MessageHeader( MessageHeader.VERSION_1, MessageHeader.AGENT_ASSIGNMENT_MSG_TYPE );
+	}
+	
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+	public int _agentIndex 							= 0;
+	public int _agentCount 							= 1;
+	// Id of the first user of every track assigned to the agent
+	public TreeMap<String,Long> _firstUser 			= new TreeMap<String,Long>();
+	// Number of users of every track assigned to the agent
+	public TreeMap<String,Long> _userCount 			= new TreeMap<String,Long>();
+	
+	public long getFirstUser( String trackName )
+	{
+		Long firstUser = this._firstUser.get( trackName );
+		return ( firstUser != null ) ? firstUser.longValue() : 0;
+	}
+	
+	public long getUserCount( String trackName )
+	{
+		Long userCount = this._userCount.get( trackName );
+		return ( userCount != null ) ? userCount.longValue() : 0;
+	}
+	
+	public String toString()
+	{
+		StringBuffer buf = new StringBuffer();
+		buf.append( "[Agent " ).append( this._agentIndex ).append( "/" ).append( this._agentCount );
+		for( String trackName : this._userCount.keySet() )
+		{
+			long firstUser = this.getFirstUser( trackName );
+			long userCount = this.getUserCount( trackName );
+			if( userCount > 0 )
+				buf.append( " " ).append( trackName ).append( ": users " ).append( firstUser ).append( "-" ).append( firstUser + userCount - 1 );
+			else buf.append( " " ).append( trackName ).append( ": no users" );
+		}
+		buf.append( "]" );
+		return buf.toString();
+	}
+}
@@ -0,0 +1,24 @@
+package radlab.rain.communication;
+
+import java.util.TreeMap;
+
+public class AgentStatusReplyMessage extends RainMessage 
+{
+	public AgentStatusReplyMessage()
+	{
+		this._header = new MessageHeader( MessageHeader.VERSION_1, MessageHeader.AGENT_STATUS_REPLY_MSG_TYPE );
+	}
+	
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+	// The agent's clock when it built the reply
+	public long _agentTimestamp 					= -1;
+	// One of Benchmark.WAITING, Benchmark.RUNNING or Benchmark.FINISHED
+	public int _state 								= -1;
+	// The maximum number of users of every track in the agent's scenario
+	public TreeMap<String,Long> _trackMaxUsers 		= new TreeMap<String,Long>();
+	// How long (msecs) the run lasts: ramp up, steady state and ramp down
+	public long _runDuration 						= 0;
+}
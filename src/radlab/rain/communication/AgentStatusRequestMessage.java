@@ -0,0 +1,18 @@
+package radlab.rain.communication;
+
+/*
+ * Sent by a coordinator to find out what an agent is running and how far along
+ * it is. The coordinator also uses the round trip to estimate the agent's clock offset.
+ * */
+public class AgentStatusRequestMessage extends RainMessage 
+{
+	public AgentStatusRequestMessage()
+	{
+		this._header = new MessageHeader( MessageHeader.VERSION_1, MessageHeader.AGENT_STATUS_REQUEST_MSG_TYPE );
+	}
+	
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+}
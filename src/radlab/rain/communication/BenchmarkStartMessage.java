@@ -11,5 +11,6 @@ public class BenchmarkStartMessage extends RainMessage
 	 * 
 	 */
 	private static final long serialVersionUID 	= 1L;
+	// When the run starts (load generation begins) in the receiver's clock, -1 starts it right away
 	public long _controllerTimestamp 			= -1;	
 }
@@ -0,0 +1,771 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.communication;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import radlab.rain.Benchmark;
+import radlab.rain.Scorecard;
+import radlab.rain.ScorecardOutbox;
+import radlab.rain.util.ResultsExporter;
+
+/**
+ * The Coordinator runs one benchmark across several Rain processes (agents),
+ * e.g., on several machines, and reports their results as if they came from
+ * a single one.<br />
+ * <br />
+ * Every agent is a regular benchmark started with the same configuration
+ * plus <code>"usePipe": true</code> and <code>"waitForStartSignal": true</code>
+ * (and its own <code>pipePort</code> if several agents share a host). The
+ * coordinator talks to the agents over their pipes:
+ * <ol>
+ * <li>It checks that every agent is waiting and runs the same tracks, and
+ * estimates every agent's clock offset from the round trips.</li>
+ * <li>It splits the users of every track into contiguous ranges, one per agent
+ * (or hands out whole tracks round-robin) and sends out the assignments.</li>
+ * <li>It sends every agent the same start time, translated into the agent's
+ * clock, so all of them ramp up and move through the load schedule together.</li>
+ * <li>While the run is going it collects the agents' scorecard snapshots and
+ * prints the global results of every interval activation once every agent
+ * has reported it (or moved past it). At the end it merges the final
+ * scorecards into one global report.</li>
+ * </ol>
+ * Scorecards merge losslessly when the tracks use the histogram response
+ * time sampler, with the Poisson sampler the global percentiles come from the
+ * union of the agents' samples.<br />
+ * <br />
+ * Load profiles name the number of active users for the whole run, so with
+ * user ranges the users of an interval that does not use all of them run on
+ * the first agents.<br />
+ * <br />
+ * To try it on one host start two agents and then the coordinator:<br />
+ * <code>ant Benchmark-null-agent -Dagent.config=config/rain.config.null.agent-1.json</code><br />
+ * <code>ant Benchmark-null-agent -Dagent.config=config/rain.config.null.agent-2.json</code><br />
+ * <code>ant Coordinator -Dcoordinator.args="-o results.jsonl localhost:7861 localhost:7862"</code>
+ */
+public class Coordinator 
+{
+	public static String USAGE = "Usage: Coordinator [-d <start delay secs>] [-p <poll secs>] [-t <agent timeout secs>] [-s users|tracks] [-o <results file>] [-f json|csv] <host:port> [<host:port> ...]";
+	
+	public static String SHARD_BY_USERS 		= "users";
+	public static String SHARD_BY_TRACKS 		= "tracks";
+	
+	/** How far ahead (msecs) of now the run starts, leaves the agents time to line up their load schedules. */
+	public static long DEFAULT_START_DELAY 		= 10000;
+	public static long DEFAULT_POLL_INTERVAL 	= 2000;
+	/** How long (msecs) an agent can go without answering before it is given up on. */
+	public static long DEFAULT_AGENT_TIMEOUT 	= 60000;
+	/** Socket connect and read timeout (msecs) for a single message. */
+	public static int SOCKET_TIMEOUT 			= 10000;
+	/** Round trips used to estimate an agent's clock offset, the fastest one wins. */
+	public static int CLOCK_SYNC_ROUNDS 		= 5;
+	
+	/**
+	 * What the coordinator knows about one agent.
+	 */
+	private class Agent
+	{
+		public String _host 					= "";
+		public int _port 						= RainPipe.DEFAULT_PORT;
+		public int _index 						= 0;
+		// Agent clock minus coordinator clock, and the round trip it was measured with
+		public long _clockOffset 				= 0;
+		public long _roundTrip 					= Long.MAX_VALUE;
+		public TreeMap<String,Long> _trackMaxUsers = null;
+		// How long (msecs) the agent's run lasts
+		public long _runDuration 				= 0;
+		public AgentAssignmentMessage _assignment = null;
+		public long _lastSequence 				= 0;
+		public long _lastContact 				= 0;
+		public boolean _finished 				= false;
+		public boolean _lost 					= false;
+		// Track name -> interval name -> activation -> latest snapshot
+		public TreeMap<String,TreeMap<String,TreeMap<Integer,ScorecardOutbox.Snapshot>>> _intervals = new TreeMap<String,TreeMap<String,TreeMap<Integer,ScorecardOutbox.Snapshot>>>();
+		// Track name -> start of the latest interval activation reported (coordinator clock)
+		public TreeMap<String,Long> _latestIntervalStart = new TreeMap<String,Long>();
+		// Track name -> interval name -> the snapshot taken at the end of the run
+		public TreeMap<String,TreeMap<String,Scorecard>> _finalIntervals = new TreeMap<String,TreeMap<String,Scorecard>>();
+		// Track name -> final scorecard
+		public TreeMap<String,Scorecard> _finalCards = new TreeMap<String,Scorecard>();
+		
+		public boolean runs( String trackName )
+		{
+			return this._assignment != null && this._assignment.getUserCount( trackName ) > 0;
+		}
+		
+		public String toString()
+		{
+			return this._host + ":" + this._port;
+		}
+	}
+	
+	private LinkedList<Agent> _agents 		= new LinkedList<Agent>();
+	private long _startDelay 				= DEFAULT_START_DELAY;
+	private long _pollInterval 				= DEFAULT_POLL_INTERVAL;
+	private long _agentTimeout 				= DEFAULT_AGENT_TIMEOUT;
+	private String _shardBy 				= SHARD_BY_USERS;
+	private ResultsExporter _resultsExporter = null;
+	// Track name -> maximum number of users
+	private TreeMap<String,Long> _tracks 	= null;
+	// Track name -> interval name -> last activation reported
+	private TreeMap<String,TreeMap<String,Integer>> _reportedActivations = new TreeMap<String,TreeMap<String,Integer>>();
+	private long _startTime 				= 0;
+	// When (coordinator clock) to stop waiting on agents that have not finished
+	private long _deadline 					= Long.MAX_VALUE;
+	
+	public long getStartDelay() { return this._startDelay; }
+	public void setStartDelay( long val ) { this._startDelay = val; }
+	
+	public long getPollInterval() { return this._pollInterval; }
+	public void setPollInterval( long val ) { this._pollInterval = val; }
+	
+	public long getAgentTimeout() { return this._agentTimeout; }
+	public void setAgentTimeout( long val ) { this._agentTimeout = val; }
+	
+	public String getShardBy() { return this._shardBy; }
+	public void setShardBy( String val ) { this._shardBy = val; }
+	
+	public ResultsExporter getResultsExporter() { return this._resultsExporter; }
+	public void setResultsExporter( ResultsExporter val ) { this._resultsExporter = val; }
+	
+	public void addAgent( String host, int port )
+	{
+		Agent agent = new Agent();
+		agent._host = host;
+		agent._port = port;
+		agent._index = this._agents.size();
+		this._agents.add( agent );
+	}
+	
+	/**
+	 * Sends a message to an agent's pipe and returns the reply.
+	 */
+	private RainMessage sendMessage( Agent agent, RainMessage message ) throws IOException
+	{
+		Socket sck = new Socket();
+		try
+		{
+			sck.connect( new InetSocketAddress( agent._host, agent._port ), SOCKET_TIMEOUT );
+			sck.setSoTimeout( SOCKET_TIMEOUT );
+			ObjectOutputStream out = new ObjectOutputStream( sck.getOutputStream() );
+			out.writeObject( message );
+			out.flush();
+			ObjectInputStream in = new ObjectInputStream( sck.getInputStream() );
+			return (RainMessage) in.readObject();
+		}
+		catch( ClassNotFoundException cne )
+		{
+			throw new IOException( "Unexpected reply from agent: " + agent + ". Reason: " + cne.toString() );
+		}
+		finally
+		{
+			sck.close();
+		}
+	}
+	
+	/**
+	 * Contacts every agent (retrying until they come up), checks that they are
+	 * all waiting to run the same tracks and estimates their clock offsets.
+	 */
+	public void connect( long timeoutMsecs ) throws Exception
+	{
+		for( Agent agent : this._agents )
+		{
+			long deadline = System.currentTimeMillis() + timeoutMsecs;
+			for( int round = 0; round < CLOCK_SYNC_ROUNDS; )
+			{
+				AgentStatusReplyMessage status = null;
+				long sent = System.currentTimeMillis();
+				try
+				{
+					RainMessage reply = this.sendMessage( agent, new AgentStatusRequestMessage() );
+					if( !( reply instanceof AgentStatusReplyMessage ) )
+						throw new Exception( this + " Agent: " + agent + " sent an unexpected reply to a status request: " + reply );
+					status = (AgentStatusReplyMessage) reply;
+				}
+				catch( IOException ioe )
+				{
+					// The agent may not be listening yet
+					if( System.currentTimeMillis() > deadline )
+						throw new Exception( this + " Unable to reach agent: " + agent + ". Reason: " + ioe.toString() );
+					Thread.sleep( 1000 );
+					continue;
+				}
+				long received = System.currentTimeMillis();
+				round++;
+				
+				if( status._state != Benchmark.WAITING )
+					throw new Exception( this + " Agent: " + agent + " is not waiting for a start signal (state: " + status._state + ")." );
+				
+				// Assume the reply was stamped halfway through the round trip
+				if( received - sent < agent._roundTrip )
+				{
+					agent._roundTrip = received - sent;
+					agent._clockOffset = status._agentTimestamp - ( ( sent + received ) / 2 );
+				}
+				agent._trackMaxUsers = status._trackMaxUsers;
+				agent._runDuration = status._runDuration;
+				agent._lastContact = received;
+			}
+			
+			if( this._tracks == null )
+				this._tracks = agent._trackMaxUsers;
+			else if( !this._tracks.equals( agent._trackMaxUsers ) )
+				throw new Exception( this + " Agent: " + agent + " runs different tracks " + agent._trackMaxUsers + " than the first agent " + this._tracks + "." );
+			
+			System.out.println( this + " Agent " + agent._index + " (" + agent + ") is waiting. Clock offset: " + agent._clockOffset + " msecs (round trip: " + agent._roundTrip + " msecs)." );
+		}
+	}
+	
+	/**
+	 * Splits the users of every track across the agents and sends out the
+	 * assignments.
+	 */
+	public void assign() throws Exception
+	{
+		int agentCount = this._agents.size();
+		int trackIndex = 0;
+		for( String trackName : this._tracks.keySet() )
+		{
+			long maxUsers = this._tracks.get( trackName ).longValue();
+			long firstUser = 0;
+			for( Agent agent : this._agents )
+			{
+				if( agent._assignment == null )
+				{
+					agent._assignment = new AgentAssignmentMessage();
+					agent._assignment._agentIndex = agent._index;
+					agent._assignment._agentCount = agentCount;
+				}
+				
+				long users = 0;
+				if( this._shardBy.equals( SHARD_BY_TRACKS ) )
+					users = ( trackIndex % agentCount == agent._index ) ? maxUsers : 0;
+				else users = ( maxUsers / agentCount ) + ( ( agent._index < maxUsers % agentCount ) ? 1 : 0 );
+				
+				agent._assignment._firstUser.put( trackName, Long.valueOf( firstUser ) );
+				agent._assignment._userCount.put( trackName, Long.valueOf( users ) );
+				if( this._shardBy.equals( SHARD_BY_USERS ) )
+					firstUser += users;
+			}
+			trackIndex++;
+		}
+		
+		for( Agent agent : this._agents )
+		{
+			RainMessage reply = this.sendMessage( agent, agent._assignment );
+			if( !( reply instanceof StatusMessage ) || ( (StatusMessage) reply )._statusCode != MessageHeader.OK )
+				throw new Exception( this + " Agent: " + agent + " rejected its assignment " + agent._assignment + ". Reply: " + reply );
+			System.out.println( this + " Assigned agent " + agent._index + " (" + agent + "): " + agent._assignment );
+		}
+	}
+	
+	/**
+	 * Sends every agent the start time, in its own clock.
+	 */
+	public void startAgents() throws Exception
+	{
+		this._startTime = System.currentTimeMillis() + this._startDelay;
+		// Every agent should be done once its run is over, give it the agent timeout on top
+		long runDuration = 0;
+		for( Agent agent : this._agents )
+			runDuration = Math.max( runDuration, agent._runDuration );
+		this._deadline = this._startTime + runDuration + this._agentTimeout;
+		for( Agent agent : this._agents )
+		{
+			BenchmarkStartMessage start = new BenchmarkStartMessage();
+			start._controllerTimestamp = this._startTime + agent._clockOffset;
+			RainMessage reply = this.sendMessage( agent, start );
+			if( !( reply instanceof StatusMessage ) || ( (StatusMessage) reply )._statusCode != MessageHeader.OK )
+				throw new Exception( this + " Agent: " + agent + " did not accept the start signal. Reply: " + reply );
+		}
+		System.out.println( this + " Started " + this._agents.size() + " agent(s), load generation starts in " + this._startDelay + " msecs." );
+	}
+	
+	/**
+	 * Collects the agents' scorecards until all of them finished (or were
+	 * given up on), reporting the global results of every interval activation
+	 * along the way. Agents that are still not done the agent timeout after
+	 * the end of the run are given up on.
+	 */
+	public void collect() throws InterruptedException
+	{
+		while( true )
+		{
+			if( System.currentTimeMillis() > this._deadline )
+			{
+				for( Agent agent : this._agents )
+				{
+					if( agent._finished || agent._lost )
+						continue;
+					agent._lost = true;
+					System.out.println( this + " Giving up on agent " + agent._index + " (" + agent + "), still not finished " + ( this._agentTimeout / 1000 ) + " secs after the end of the run." );
+				}
+				this.reportIntervals( System.out );
+				break;
+			}
+			
+			int running = 0;
+			for( Agent agent : this._agents )
+			{
+				if( agent._finished || agent._lost )
+					continue;
+				
+				this.poll( agent );
+				if( !agent._finished && !agent._lost )
+					running++;
+			}
+			
+			this.reportIntervals( System.out );
+			if( running == 0 )
+				break;
+			Thread.sleep( this._pollInterval );
+		}
+	}
+	
+	private void poll( Agent agent )
+	{
+		long now = System.currentTimeMillis();
+		try
+		{
+			ScorecardRequestMessage request = new ScorecardRequestMessage();
+			request._afterSequence = agent._lastSequence;
+			RainMessage reply = this.sendMessage( agent, request );
+			if( !( reply instanceof ScorecardReplyMessage ) )
+				throw new IOException( "Unexpected reply to a scorecard request: " + reply );
+			agent._lastContact = now;
+			
+			ScorecardReplyMessage scorecards = (ScorecardReplyMessage) reply;
+			for( ScorecardOutbox.Snapshot snapshot : scorecards._snapshots )
+				this.accept( agent, snapshot );
+			
+			if( scorecards._finished )
+			{
+				// We have everything, whether or not the acknowledgement makes it
+				agent._finished = true;
+				if( scorecards._failed )
+				{
+					// Its results are incomplete, do not report them as if they were not
+					agent._lost = true;
+					System.out.println( this + " Agent " + agent._index + " (" + agent + ") failed, giving up on it." );
+				}
+				else System.out.println( this + " Agent " + agent._index + " (" + agent + ") finished." );
+				
+				// Acknowledge the last snapshots so the agent can shut down. If this
+				// request already acknowledged them the agent may be gone by now.
+				if( agent._lastSequence > request._afterSequence )
+				{
+					request._afterSequence = agent._lastSequence;
+					try
+					{
+						this.sendMessage( agent, request );
+					}
+					catch( IOException ioe )
+					{
+						System.out.println( this + " Unable to acknowledge the results of agent " + agent._index + " (" + agent + "). Reason: " + ioe.toString() );
+					}
+				}
+			}
+		}
+		catch( IOException ioe )
+		{
+			if( now - agent._lastContact > this._agentTimeout )
+			{
+				agent._lost = true;
+				System.out.println( this + " Giving up on agent " + agent._index + " (" + agent + "), no answer for " + ( ( now - agent._lastContact ) / 1000 ) + " secs. Reason: " + ioe.toString() );
+			}
+		}
+	}
+	
+	private void accept( Agent agent, ScorecardOutbox.Snapshot snapshot )
+	{
+		if( snapshot._sequence <= agent._lastSequence )
+			return;
+		agent._lastSequence = snapshot._sequence;
+		
+		String trackName = snapshot._trackName;
+		if( snapshot._final )
+		{
+			if( snapshot._activation == 0 )
+			{
+				agent._finalCards.put( trackName, snapshot._card );
+				return;
+			}
+			
+			TreeMap<String,Scorecard> finalIntervals = agent._finalIntervals.get( trackName );
+			if( finalIntervals == null )
+			{
+				finalIntervals = new TreeMap<String,Scorecard>();
+				agent._finalIntervals.put( trackName, finalIntervals );
+			}
+			finalIntervals.put( snapshot._card._name, snapshot._card );
+			return;
+		}
+		
+		TreeMap<String,TreeMap<Integer,ScorecardOutbox.Snapshot>> intervals = agent._intervals.get( trackName );
+		if( intervals == null )
+		{
+			intervals = new TreeMap<String,TreeMap<Integer,ScorecardOutbox.Snapshot>>();
+			agent._intervals.put( trackName, intervals );
+		}
+		TreeMap<Integer,ScorecardOutbox.Snapshot> activations = intervals.get( snapshot._card._name );
+		if( activations == null )
+		{
+			activations = new TreeMap<Integer,ScorecardOutbox.Snapshot>();
+			intervals.put( snapshot._card._name, activations );
+		}
+		activations.put( Integer.valueOf( snapshot._activation ), snapshot );
+		
+		// Move the snapshot's start into our clock
+		long intervalStart = snapshot._intervalStartTime - agent._clockOffset;
+		Long latest = agent._latestIntervalStart.get( trackName );
+		if( latest == null || intervalStart > latest.longValue() )
+			agent._latestIntervalStart.put( trackName, Long.valueOf( intervalStart ) );
+	}
+	
+	/**
+	 * Reports the global results of the interval activations that every
+	 * agent running the track has either reported or moved past. Interval
+	 * scorecards are cumulative, an agent that had no results for an
+	 * activation contributes its results up to the activation before.
+	 */
+	private void reportIntervals( PrintStream out )
+	{
+		for( String trackName : this._tracks.keySet() )
+		{
+			TreeMap<String,Integer> reported = this._reportedActivations.get( trackName );
+			if( reported == null )
+			{
+				reported = new TreeMap<String,Integer>();
+				this._reportedActivations.put( trackName, reported );
+			}
+			
+			// Every interval (and its newest activation) reported by some agent
+			TreeMap<String,Integer> newest = new TreeMap<String,Integer>();
+			for( Agent agent : this._agents )
+			{
+				TreeMap<String,TreeMap<Integer,ScorecardOutbox.Snapshot>> intervals = agent._intervals.get( trackName );
+				if( intervals == null )
+					continue;
+				for( Map.Entry<String,TreeMap<Integer,ScorecardOutbox.Snapshot>> interval : intervals.entrySet() )
+				{
+					Integer activation = interval.getValue().lastKey();
+					if( !newest.containsKey( interval.getKey() ) || newest.get( interval.getKey() ).intValue() < activation.intValue() )
+						newest.put( interval.getKey(), activation );
+				}
+			}
+			
+			for( String intervalName : newest.keySet() )
+			{
+				int activation = reported.containsKey( intervalName ) ? reported.get( intervalName ).intValue() + 1 : 1;
+				for( ; activation <= newest.get( intervalName ).intValue(); activation++ )
+				{
+					LinkedList<Scorecard> cards = this.getIntervalCards( trackName, intervalName, activation );
+					if( cards == null )
+						break;
+					
+					reported.put( intervalName, Integer.valueOf( activation ) );
+					if( cards.size() == 0 )
+						continue;
+					
+					Scorecard global = Coordinator.mergeScorecards( cards );
+					out.println( this + " Global results of interval: " + intervalName + " (activation " + activation + ") of track: " + trackName + " across " + cards.size() + " agent(s)" );
+					this.exportScorecard( ResultsExporter.INTERVAL_RECORD, global, cards.size() );
+					global.printStatistics( out );
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the scorecards of every agent running a track that covers an
+	 * interval activation, or null if some agent has not gotten that far.
+	 */
+	private LinkedList<Scorecard> getIntervalCards( String trackName, String intervalName, int activation )
+	{
+		// When did the activation start (as far as the agents that got to it know)
+		long activationStart = Long.MAX_VALUE;
+		for( Agent agent : this._agents )
+		{
+			ScorecardOutbox.Snapshot snapshot = this.getIntervalSnapshot( agent, trackName, intervalName, activation );
+			if( snapshot != null && snapshot._activation == activation )
+				activationStart = Math.min( activationStart, snapshot._intervalStartTime - agent._clockOffset );
+		}
+		
+		LinkedList<Scorecard> cards = new LinkedList<Scorecard>();
+		for( Agent agent : this._agents )
+		{
+			if( !agent.runs( trackName ) )
+				continue;
+			
+			ScorecardOutbox.Snapshot snapshot = this.getIntervalSnapshot( agent, trackName, intervalName, activation );
+			boolean reportedIt = ( snapshot != null && snapshot._activation == activation );
+			Long latest = agent._latestIntervalStart.get( trackName );
+			boolean movedPast = ( latest != null && latest.longValue() > activationStart );
+			if( !reportedIt && !movedPast && !agent._finished && !agent._lost )
+				return null;
+			
+			if( snapshot != null )
+				cards.add( snapshot._card );
+		}
+		return cards;
+	}
+	
+	private ScorecardOutbox.Snapshot getIntervalSnapshot( Agent agent, String trackName, String intervalName, int activation )
+	{
+		TreeMap<String,TreeMap<Integer,ScorecardOutbox.Snapshot>> intervals = agent._intervals.get( trackName );
+		if( intervals == null || !intervals.containsKey( intervalName ) )
+			return null;
+		Map.Entry<Integer,ScorecardOutbox.Snapshot> entry = intervals.get( intervalName ).floorEntry( Integer.valueOf( activation ) );
+		return ( entry != null ) ? entry.getValue() : null;
+	}
+	
+	/**
+	 * Merges the scorecards of the same track (or interval) from several
+	 * agents. The agents share the load schedule, so the users and the
+	 * activations are those of any one of them rather than the sum.
+	 */
+	private static Scorecard mergeScorecards( LinkedList<Scorecard> cards )
+	{
+		Scorecard first = cards.getFirst();
+		Scorecard global = new Scorecard( first._name, first._intervalDuration, first._trackName );
+		double activeCount = 0.0;
+		double numberOfUsers = 0.0;
+		for( Scorecard card : cards )
+		{
+			global.merge( card );
+			activeCount = Math.max( activeCount, card._activeCount );
+			numberOfUsers = Math.max( numberOfUsers, card._numberOfUsers );
+		}
+		
+		// The final scorecards are never activated, keep the count the merge set
+		if( activeCount > 0 )
+			global._activeCount = activeCount;
+		global._numberOfUsers = numberOfUsers;
+		return global;
+	}
+	
+	private void exportScorecard( String record, Scorecard card, int agents )
+	{
+		if( this._resultsExporter == null )
+			return;
+		
+		try
+		{
+			JSONObject payload = card.toJSONObject();
+			payload.put( "agents", agents );
+			this._resultsExporter.writeRecord( record, card._trackName, card._name, payload );
+		}
+		catch( JSONException e )
+		{
+			System.out.println( this + " Error exporting results for: " + card._name + ". Reason: " + e.toString() );
+		}
+	}
+	
+	/**
+	 * Prints (and exports) the global results: per track the merged interval
+	 * and final scorecards, and across tracks the aggregate.
+	 */
+	public void printStatistics( PrintStream out )
+	{
+		Scorecard aggCard = null;
+		for( String trackName : this._tracks.keySet() )
+		{
+			LinkedList<Scorecard> finalCards = new LinkedList<Scorecard>();
+			TreeMap<String,LinkedList<Scorecard>> intervalCards = new TreeMap<String,LinkedList<Scorecard>>();
+			for( Agent agent : this._agents )
+			{
+				if( !agent.runs( trackName ) || !agent._finalCards.containsKey( trackName ) )
+					continue;
+				
+				finalCards.add( agent._finalCards.get( trackName ) );
+				TreeMap<String,Scorecard> finalIntervals = agent._finalIntervals.get( trackName );
+				if( finalIntervals == null )
+					continue;
+				for( Scorecard card : finalIntervals.values() )
+				{
+					if( !intervalCards.containsKey( card._name ) )
+						intervalCards.put( card._name, new LinkedList<Scorecard>() );
+					intervalCards.get( card._name ).add( card );
+				}
+			}
+			
+			if( finalCards.size() == 0 )
+			{
+				out.println( this + " No results for track: " + trackName );
+				continue;
+			}
+			
+			out.println( this + " Global results of track: " + trackName + " across " + finalCards.size() + " agent(s)" );
+			out.println( this + " Interval results-------------------: " );
+			for( LinkedList<Scorecard> cards : intervalCards.values() )
+			{
+				Scorecard global = Coordinator.mergeScorecards( cards );
+				this.exportScorecard( ResultsExporter.INTERVAL_RECORD, global, cards.size() );
+				global.printStatistics( out );
+			}
+			
+			out.println( this + " Final results----------------------: " );
+			Scorecard global = Coordinator.mergeScorecards( finalCards );
+			if( aggCard == null )
+				aggCard = new Scorecard( "aggregated", global._intervalDuration, "all tracks (agg)" );
+			aggCard.merge( global );
+			this.exportScorecard( ResultsExporter.FINAL_RECORD, global, finalCards.size() );
+			global.printStatistics( out );
+		}
+		
+		if( aggCard != null && this._tracks.size() > 1 )
+		{
+			this.exportScorecard( ResultsExporter.AGGREGATE_RECORD, aggCard, this._agents.size() );
+			aggCard.printStatistics( out );
+		}
+		
+		out.println( this + " Agents-----------------------------: " );
+		for( Agent agent : this._agents )
+		{
+			String state = agent._lost ? "lost" : ( agent._finished ? "finished" : "running" );
+			out.println( this + " Agent " + agent._index + " (" + agent + ") " + state + ", clock offset: " + agent._clockOffset + " msecs, round trip: " + agent._roundTrip + " msecs, " + agent._assignment );
+		}
+		out.println( "" );
+	}
+	
+	public boolean lostAgents()
+	{
+		for( Agent agent : this._agents )
+		{
+			if( agent._lost )
+				return true;
+		}
+		return false;
+	}
+	
+	public String toString()
+	{
+		return "[COORDINATOR]";
+	}
+	
+	/**
+	 * Runs a benchmark across the agents listed on the command line (as
+	 * host:port of their pipes). Exits with 1 if an agent could not be
+	 * reached or was lost during the run.
+	 */
+	public static void main( String[] args ) throws Exception
+	{
+		Coordinator coordinator = new Coordinator();
+		String resultsFile = null;
+		String resultsFormat = ResultsExporter.JSON_FORMAT;
+		
+		try
+		{
+			int i = 0;
+			for( ; i < args.length && args[i].startsWith( "-" ); i += 2 )
+			{
+				if( i + 1 >= args.length )
+					throw new IllegalArgumentException( "Missing value for: " + args[i] );
+				
+				String value = args[i + 1];
+				if( args[i].equals( "-d" ) )
+					coordinator.setStartDelay( (long) ( Double.parseDouble( value ) * 1000 ) );
+				else if( args[i].equals( "-p" ) )
+					coordinator.setPollInterval( (long) ( Double.parseDouble( value ) * 1000 ) );
+				else if( args[i].equals( "-t" ) )
+					coordinator.setAgentTimeout( (long) ( Double.parseDouble( value ) * 1000 ) );
+				else if( args[i].equals( "-s" ) )
+				{
+					if( !value.equals( SHARD_BY_USERS ) && !value.equals( SHARD_BY_TRACKS ) )
+						throw new IllegalArgumentException( "Unknown sharding: " + value );
+					coordinator.setShardBy( value );
+				}
+				else if( args[i].equals( "-o" ) )
+					resultsFile = value;
+				else if( args[i].equals( "-f" ) )
+					resultsFormat = value;
+				else throw new IllegalArgumentException( "Unknown option: " + args[i] );
+			}
+			
+			for( ; i < args.length; i++ )
+			{
+				int colon = args[i].lastIndexOf( ':' );
+				if( colon == -1 )
+					coordinator.addAgent( args[i], RainPipe.DEFAULT_PORT );
+				else coordinator.addAgent( args[i].substring( 0, colon ), Integer.parseInt( args[i].substring( colon + 1 ) ) );
+			}
+			
+			if( coordinator._agents.size() == 0 )
+				throw new IllegalArgumentException( "No agents given." );
+		}
+		catch( IllegalArgumentException e )
+		{
+			System.out.println( e.getMessage() );
+			System.out.println( USAGE );
+			System.exit( 1 );
+		}
+		
+		if( resultsFile != null )
+		{
+			JSONObject exporterConfig = new JSONObject();
+			exporterConfig.put( ResultsExporter.CFG_FILENAME_KEY, resultsFile );
+			exporterConfig.put( ResultsExporter.CFG_FORMAT_KEY, resultsFormat );
+			coordinator.setResultsExporter( new ResultsExporter( exporterConfig ) );
+		}
+		
+		try
+		{
+			coordinator.connect( coordinator.getAgentTimeout() );
+			coordinator.assign();
+			coordinator.startAgents();
+		}
+		catch( Exception e )
+		{
+			System.out.println( e.getMessage() );
+			System.exit( 1 );
+		}
+		
+		coordinator.collect();
+		coordinator.printStatistics( System.out );
+		if( coordinator.getResultsExporter() != null )
+			coordinator.getResultsExporter().close();
+		
+		System.exit( coordinator.lostAgents() ? 1 : 0 );
+	}
+}
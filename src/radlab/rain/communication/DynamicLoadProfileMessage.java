@@ -1,6 +1,8 @@
 package radlab.rain.communication;
 
 import java.io.Serializable;
+import java.util.LinkedList;
+
 import radlab.rain.LoadProfile;
 
 public class DynamicLoadProfileMessage extends RainMessage implements Serializable
@@ -12,6 +14,8 @@ public class DynamicLoadProfileMessage extends RainMessage implements Serializab
 	public int    _numberOfUsers 	= 0;
 	public String _mixName 			= "";
 	public String _name				= "";
+	// Profiles for more tracks, submitted in the same round trip (all or none of them are accepted)
+	public LinkedList<DynamicLoadProfileMessage> _additionalProfiles = new LinkedList<DynamicLoadProfileMessage>();
 		
 	public DynamicLoadProfileMessage()
 	{
@@ -29,6 +33,26 @@ public class DynamicLoadProfileMessage extends RainMessage implements Serializab
 		this._name = profile._name;
 	}
 		
+	/*
+	 * Adds the profile for another track to the message. 
+	 * */
+	public void addProfile( String destTrack, LoadProfile profile )
+	{
+		this._additionalProfiles.add( new DynamicLoadProfileMessage( destTrack, profile ) );
+	}
+	
+	/*
+	 * Returns this profile followed by the additional ones.
+	 * */
+	public LinkedList<DynamicLoadProfileMessage> getProfileMessages()
+	{
+		LinkedList<DynamicLoadProfileMessage> messages = new LinkedList<DynamicLoadProfileMessage>();
+		messages.add( this );
+		if( this._additionalProfiles != null )
+			messages.addAll( this._additionalProfiles );
+		return messages;
+	}
+	
 	public LoadProfile convertToLoadProfile()
 	{
 		LoadProfile profile = new LoadProfile( this._interval, this._numberOfUsers, this._mixName, this._transitionTime, this._name );
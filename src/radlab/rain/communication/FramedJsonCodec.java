@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.communication;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import radlab.rain.ScorecardOutbox;
+import radlab.rain.TimeSeries;
+
+/**
+ * Encodes pipe messages for the framed pipe. Every frame is a 4 byte (big
+ * endian) length followed by that many bytes of UTF-8 JSON, one message per
+ * frame. Every message has a "type" (one of the MessageHeader message types)
+ * and a request may carry an "id", which the reply echoes so a client can
+ * have several requests in flight on one connection. Pushed messages (e.g.,
+ * scorecards) have no id.<br />
+ * <br />
+ * Requests: 
+ * <ul>
+ * <li>3 (load profile): "track", "interval", "transitionTime", "users", "mix",
+ * "name", or a "profiles" array of those to update many tracks at once.</li>
+ * <li>5 (start): optional "startTime" (msecs).</li>
+ * <li>8 (track list).</li>
+ * <li>10 (time series): "track", optional "operation", "from", "to".</li>
+ * <li>12 (agent status), 14 (agent assignment): "agentIndex", "agentCount",
+ * "firstUser" and "userCount" (track to number), 15 (scorecards): "afterSequence".</li>
+ * <li>17 (subscribe), 18 (unsubscribe): optional "tracks" array (default all).</li>
+ * </ul>
+ */
+public class FramedJsonCodec 
+{
+	public static int MAX_FRAME_BYTES 	= 16 * 1024 * 1024;
+	public static String CHARSET 		= "UTF-8";
+	
+	public static String TYPE_KEY 		= "type";
+	public static String ID_KEY 		= "id";
+	
+	/**
+	 * Returns a message as a frame ready to be written.
+	 */
+	public static ByteBuffer encodeFrame( JSONObject message ) throws IOException
+	{
+		byte[] body = message.toString().getBytes( CHARSET );
+		ByteBuffer frame = ByteBuffer.allocate( 4 + body.length );
+		frame.putInt( body.length );
+		frame.put( body );
+		frame.flip();
+		return frame;
+	}
+	
+	/**
+	 * Writes a frame to a (blocking) stream, for simple clients.
+	 */
+	public static void writeFrame( OutputStream out, JSONObject message ) throws IOException
+	{
+		ByteBuffer frame = FramedJsonCodec.encodeFrame( message );
+		out.write( frame.array(), 0, frame.limit() );
+		out.flush();
+	}
+	
+	/**
+	 * Reads a frame from a (blocking) stream, for simple clients.
+	 */
+	public static JSONObject readFrame( InputStream in ) throws IOException, JSONException
+	{
+		DataInputStream data = new DataInputStream( in );
+		int length = data.readInt();
+		if( length < 0 || length > MAX_FRAME_BYTES )
+			throw new IOException( "Bad frame length: " + length );
+		byte[] body = new byte[length];
+		data.readFully( body );
+		return new JSONObject( new String( body, CHARSET ) );
+	}
+	
+	/**
+	 * Builds the request a JSON message stands for, or returns null if the
+	 * message type is not a request we know.
+	 */
+	public static RainMessage decode( JSONObject json ) throws JSONException
+	{
+		int type = json.getInt( TYPE_KEY );
+		switch( type )
+		{
+			case MessageHeader.DYNAMIC_LOAD_PROFILE_MSG_TYPE:
+			{
+				if( !json.has( "profiles" ) )
+					return FramedJsonCodec.decodeLoadProfile( json );
+				
+				JSONArray profiles = json.getJSONArray( "profiles" );
+				if( profiles.length() == 0 )
+					throw new JSONException( "No load profiles given." );
+				DynamicLoadProfileMessage msg = FramedJsonCodec.decodeLoadProfile( profiles.getJSONObject( 0 ) );
+				for( int i = 1; i < profiles.length(); i++ )
+					msg._additionalProfiles.add( FramedJsonCodec.decodeLoadProfile( profiles.getJSONObject( i ) ) );
+				return msg;
+			}
+			case MessageHeader.BENCHMARK_START_MSG_TYPE:
+			{
+				BenchmarkStartMessage msg = new BenchmarkStartMessage();
+				msg._controllerTimestamp = json.optLong( "startTime", -1 );
+				return msg;
+			}
+			case MessageHeader.TRACK_LIST_REQUEST_MSG_TYPE:
+				return new TrackListRequestMessage();
+			case MessageHeader.TIME_SERIES_REQUEST_MSG_TYPE:
+			{
+				TimeSeriesRequestMessage msg = new TimeSeriesRequestMessage();
+				msg._destTrackName = json.getString( "track" );
+				msg._operationName = json.has( "operation" ) ? json.getString( "operation" ) : null;
+				msg._fromTime = json.optLong( "from", 0 );
+				msg._toTime = json.optLong( "to", Long.MAX_VALUE );
+				return msg;
+			}
+			case MessageHeader.AGENT_STATUS_REQUEST_MSG_TYPE:
+				return new AgentStatusRequestMessage();
+			case MessageHeader.AGENT_ASSIGNMENT_MSG_TYPE:
+			{
+				AgentAssignmentMessage msg = new AgentAssignmentMessage();
+				msg._agentIndex = json.optInt( "agentIndex", 0 );
+				msg._agentCount = json.optInt( "agentCount", 1 );
+				JSONObject firstUser = json.getJSONObject( "firstUser" );
+				JSONObject userCount = json.getJSONObject( "userCount" );
+				Iterator<?> trackNames = userCount.keys();
+				while( trackNames.hasNext() )
+				{
+					String trackName = (String) trackNames.next();
+					msg._firstUser.put( trackName, Long.valueOf( firstUser.optLong( trackName, 0 ) ) );
+					msg._userCount.put( trackName, Long.valueOf( userCount.getLong( trackName ) ) );
+				}
+				return msg;
+			}
+			case MessageHeader.SCORECARD_REQUEST_MSG_TYPE:
+			{
+				ScorecardRequestMessage msg = new ScorecardRequestMessage();
+				msg._afterSequence = json.optLong( "afterSequence", 0 );
+				return msg;
+			}
+			case MessageHeader.SUBSCRIBE_MSG_TYPE:
+			case MessageHeader.UNSUBSCRIBE_MSG_TYPE:
+			{
+				SubscriptionMessage msg = new SubscriptionMessage( type == MessageHeader.SUBSCRIBE_MSG_TYPE );
+				JSONArray tracks = json.optJSONArray( "tracks" );
+				for( int i = 0; tracks != null && i < tracks.length(); i++ )
+					msg._trackNames.add( tracks.getString( i ) );
+				return msg;
+			}
+		}
+		return null;
+	}
+	
+	private static DynamicLoadProfileMessage decodeLoadProfile( JSONObject json ) throws JSONException
+	{
+		DynamicLoadProfileMessage msg = new DynamicLoadProfileMessage();
+		msg._destTrackName = json.getString( "track" );
+		msg._interval = json.getLong( "interval" );
+		msg._transitionTime = json.optLong( "transitionTime", 0 );
+		msg._numberOfUsers = json.getInt( "users" );
+		msg._mixName = json.getString( "mix" );
+		msg._name = json.optString( "name", "" );
+		return msg;
+	}
+	
+	/**
+	 * Returns a reply (or any message we send) as JSON.
+	 */
+	public static JSONObject encode( RainMessage message ) throws JSONException
+	{
+		JSONObject json = new JSONObject();
+		json.put( TYPE_KEY, message._header._messageType );
+		
+		if( message instanceof StatusMessage )
+		{
+			StatusMessage msg = (StatusMessage) message;
+			json.put( "statusCode", msg._statusCode );
+			if( msg._trackStatusCodes != null && msg._trackStatusCodes.size() > 0 )
+			{
+				JSONObject tracks = new JSONObject();
+				for( Map.Entry<String,Integer> entry : msg._trackStatusCodes.entrySet() )
+					tracks.put( entry.getKey(), entry.getValue().intValue() );
+				json.put( "trackStatusCodes", tracks );
+			}
+		}
+		else if( message instanceof TrackListReplyMessage )
+		{
+			json.put( "tracks", new JSONArray( ( (TrackListReplyMessage) message )._trackNames ) );
+		}
+		else if( message instanceof TimeSeriesReplyMessage )
+		{
+			TimeSeriesReplyMessage msg = (TimeSeriesReplyMessage) message;
+			json.put( "track", msg._trackName );
+			json.put( "bucketMsecs", msg._bucketMsecs );
+			JSONArray points = new JSONArray();
+			for( TimeSeries.Point point : msg._points )
+			{
+				JSONObject p = new JSONObject();
+				p.put( "operation", point.operationName );
+				p.put( "timestamp", point.timestamp );
+				p.put( "succeeded", point.succeeded );
+				p.put( "failed", point.failed );
+				p.put( "averageLatency", point.averageLatency );
+				p.put( "p50Latency", point.p50Latency );
+				p.put( "p90Latency", point.p90Latency );
+				p.put( "p99Latency", point.p99Latency );
+				p.put( "maxLatency", point.maxLatency );
+				points.put( p );
+			}
+			json.put( "points", points );
+		}
+		else if( message instanceof AgentStatusReplyMessage )
+		{
+			AgentStatusReplyMessage msg = (AgentStatusReplyMessage) message;
+			json.put( "agentTimestamp", msg._agentTimestamp );
+			json.put( "state", msg._state );
+			JSONObject tracks = new JSONObject();
+			for( Map.Entry<String,Long> entry : msg._trackMaxUsers.entrySet() )
+				tracks.put( entry.getKey(), entry.getValue().longValue() );
+			json.put( "trackMaxUsers", tracks );
+			json.put( "runDuration", msg._runDuration );
+		}
+		else if( message instanceof ScorecardReplyMessage )
+		{
+			ScorecardReplyMessage msg = (ScorecardReplyMessage) message;
+			json.put( "finished", msg._finished );
+			json.put( "failed", msg._failed );
+			JSONArray snapshots = new JSONArray();
+			for( ScorecardOutbox.Snapshot snapshot : msg._snapshots )
+			{
+				JSONObject s = new JSONObject();
+				s.put( "sequence", snapshot._sequence );
+				s.put( "track", snapshot._trackName );
+				s.put( "activation", snapshot._activation );
+				s.put( "intervalStartTime", snapshot._intervalStartTime );
+				s.put( "final", snapshot._final );
+				s.put( "scorecard", snapshot._card.toJSONObject() );
+				snapshots.put( s );
+			}
+			json.put( "snapshots", snapshots );
+		}
+		return json;
+	}
+}
@@ -0,0 +1,588 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.communication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import radlab.rain.IScorecardListener;
+import radlab.rain.Scorecard;
+
+/**
+ * Non-blocking pipe that keeps client connections open and multiplexes
+ * requests over them. Messages are length-prefixed JSON frames (see
+ * FramedJsonCodec) instead of serialized Java objects, so controllers need
+ * not be written in Java.<br />
+ * <br />
+ * A single selector thread accepts connections, reads frames and writes
+ * replies. Requests are processed by a small pool of workers, replies carry
+ * the id of their request and may come back in a different order than the
+ * requests went out.<br />
+ * <br />
+ * A connection that subscribes gets the results of every interval
+ * activation of the tracks it subscribed to as soon as the activation
+ * closes (and the final results at the end of the run), without having to
+ * poll. A subscriber that stops reading is disconnected once too much is
+ * queued up for it, so it cannot hold up the scoreboards.
+ */
+public class FramedPipeServer extends Thread implements IScorecardListener
+{
+	/** Most bytes queued for a single connection before we give up on it. */
+	public static long MAX_QUEUED_BYTES 	= 8 * 1024 * 1024;
+	/** How long (msecs) we try to flush what is queued when shutting down. */
+	public static long SHUTDOWN_FLUSH_TIME 	= 2000;
+	
+	/**
+	 * A client connection and whatever is queued up for it.
+	 */
+	private class Connection
+	{
+		public SocketChannel _channel 				= null;
+		public SelectionKey _key 					= null;
+		public ByteBuffer _lengthBuffer 			= ByteBuffer.allocate( 4 );
+		public ByteBuffer _frameBuffer 				= null;
+		public LinkedList<ByteBuffer> _writeQ 		= new LinkedList<ByteBuffer>();
+		public long _queuedBytes 					= 0;
+		// Tracks subscribed to, null if not subscribed, empty for all of them. Replaced
+		// (never changed in place) by the selector thread, read by the scoreboard threads
+		public volatile TreeSet<String> _subscriptions = null;
+		public boolean _overflowed 					= false;
+		
+		public boolean isSubscribed( String trackName )
+		{
+			TreeSet<String> subscriptions = this._subscriptions;
+			return subscriptions != null && ( subscriptions.isEmpty() || subscriptions.contains( trackName ) );
+		}
+		
+		public String toString()
+		{
+			return String.valueOf( this._channel.socket().getRemoteSocketAddress() );
+		}
+	}
+	
+	private int _port 								= RainPipe.DEFAULT_PORT;
+	private int _numThreads 						= RainPipe.DEFAULT_NUM_THREADS;
+	private Selector _selector 						= null;
+	private ServerSocketChannel _serverChannel 		= null;
+	private ExecutorService _workers 				= null;
+	private LinkedList<Connection> _connections 	= new LinkedList<Connection>();
+	// Connections with something new to write (or to drop), picked up by the selector thread
+	private LinkedList<Connection> _pendingWrites 	= new LinkedList<Connection>();
+	// Set first when shutting down, no new requests are read after this
+	private volatile boolean _stopping 				= false;
+	private volatile boolean _done 					= false;
+	
+	// Stats
+	private long _connectionsAccepted 				= 0;
+	private long _framesReceived 					= 0;
+	private volatile long _repliesSent 				= 0;
+	private volatile long _pushesSent 				= 0;
+	private long _subscribersDropped 				= 0;
+	
+	public FramedPipeServer( int port, int numThreads )
+	{
+		this._port = port;
+		this._numThreads = Math.max( 1, numThreads );
+		this.setName( "Framed-Pipe" );
+		this.setDaemon( true );
+	}
+	
+	public int getPort() { return this._port; }
+	
+	/**
+	 * Binds the server socket and starts the selector thread.
+	 */
+	public void startServer() throws IOException
+	{
+		this._selector = Selector.open();
+		this._serverChannel = ServerSocketChannel.open();
+		this._serverChannel.configureBlocking( false );
+		this._serverChannel.socket().setReuseAddress( true );
+		this._serverChannel.socket().bind( new InetSocketAddress( this._port ) );
+		this._serverChannel.register( this._selector, SelectionKey.OP_ACCEPT );
+		this._workers = Executors.newFixedThreadPool( this._numThreads );
+		this.start();
+	}
+	
+	/**
+	 * Stops accepting requests, flushes what is queued (for a little while)
+	 * and closes every connection.
+	 */
+	public void stopServer()
+	{
+		// Stop reading before the workers go away, or new requests would be
+		// handed to a pool that no longer takes them
+		this._stopping = true;
+		this._selector.wakeup();
+		this._workers.shutdown();
+		try
+		{
+			this._workers.awaitTermination( SHUTDOWN_FLUSH_TIME, TimeUnit.MILLISECONDS );
+		}
+		catch( InterruptedException ie )
+		{}
+		
+		this._done = true;
+		this._selector.wakeup();
+		try
+		{
+			this.join( SHUTDOWN_FLUSH_TIME * 2 );
+		}
+		catch( InterruptedException ie )
+		{}
+	}
+	
+	public void run()
+	{
+		long stopDeadline = Long.MAX_VALUE;
+		boolean readsStopped = false;
+		while( true )
+		{
+			if( this._done )
+			{
+				if( stopDeadline == Long.MAX_VALUE )
+					stopDeadline = System.currentTimeMillis() + SHUTDOWN_FLUSH_TIME;
+				if( !this.hasQueuedData() || System.currentTimeMillis() > stopDeadline )
+					break;
+			}
+			
+			try
+			{
+				this._selector.select( this._done ? 100 : 0 );
+				if( this._stopping && !readsStopped )
+				{
+					this.stopReading();
+					readsStopped = true;
+				}
+				this.processPendingWrites();
+				
+				Iterator<SelectionKey> keys = this._selector.selectedKeys().iterator();
+				while( keys.hasNext() )
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+					if( !key.isValid() )
+						continue;
+					
+					if( key.isAcceptable() )
+						this.accept();
+					else
+					{
+						Connection connection = (Connection) key.attachment();
+						try
+						{
+							if( key.isReadable() && !this._stopping )
+								this.read( connection );
+							if( key.isValid() && key.isWritable() )
+								this.write( connection );
+						}
+						catch( IOException ioe )
+						{
+							this.close( connection );
+						}
+					}
+				}
+			}
+			catch( IOException ioe )
+			{
+				System.out.println( this + " Error in selector loop. Reason: " + ioe.toString() );
+			}
+		}
+		
+		// Shut everything down
+		synchronized( this._connections )
+		{
+			for( Connection connection : new LinkedList<Connection>( this._connections ) )
+				this.close( connection );
+		}
+		try
+		{
+			this._serverChannel.close();
+			this._selector.close();
+		}
+		catch( IOException ioe )
+		{}
+	}
+	
+	private void accept() throws IOException
+	{
+		SocketChannel channel = this._serverChannel.accept();
+		if( channel == null )
+			return;
+		
+		channel.configureBlocking( false );
+		channel.socket().setTcpNoDelay( true );
+		Connection connection = new Connection();
+		connection._channel = channel;
+		connection._key = channel.register( this._selector, this._stopping ? 0 : SelectionKey.OP_READ, connection );
+		synchronized( this._connections )
+		{
+			this._connections.add( connection );
+		}
+		this._connectionsAccepted++;
+	}
+	
+	private void read( Connection connection ) throws IOException
+	{
+		while( true )
+		{
+			// Read the length first, then the rest of the frame
+			if( connection._frameBuffer == null )
+			{
+				if( connection._channel.read( connection._lengthBuffer ) < 0 )
+					throw new IOException( "Connection closed by client." );
+				if( connection._lengthBuffer.hasRemaining() )
+					return;
+				
+				connection._lengthBuffer.flip();
+				int length = connection._lengthBuffer.getInt();
+				connection._lengthBuffer.clear();
+				if( length < 0 || length > FramedJsonCodec.MAX_FRAME_BYTES )
+					throw new IOException( "Bad frame length: " + length );
+				connection._frameBuffer = ByteBuffer.allocate( length );
+			}
+			
+			if( connection._channel.read( connection._frameBuffer ) < 0 )
+				throw new IOException( "Connection closed by client." );
+			if( connection._frameBuffer.hasRemaining() )
+				return;
+			
+			byte[] frame = connection._frameBuffer.array();
+			connection._frameBuffer = null;
+			this._framesReceived++;
+			this.dispatch( connection, new String( frame, FramedJsonCodec.CHARSET ) );
+		}
+	}
+	
+	/**
+	 * Handles subscriptions right away (so the results of the next interval
+	 * go out to the subscriber) and hands everything else off to the workers.
+	 */
+	private void dispatch( final Connection connection, String frame )
+	{
+		final JSONObject request;
+		final RainMessage message;
+		try
+		{
+			request = new JSONObject( frame );
+			message = FramedJsonCodec.decode( request );
+		}
+		catch( JSONException e )
+		{
+			System.out.println( this + " Bad request from: " + connection + ". Reason: " + e.toString() );
+			this.reply( connection, null, MessageHeader.ERROR );
+			return;
+		}
+		
+		if( message == null )
+		{
+			this.reply( connection, request, MessageHeader.ERROR_UNEXPECTED_MESSAGE_TYPE );
+			return;
+		}
+		
+		if( message instanceof SubscriptionMessage )
+		{
+			SubscriptionMessage msg = (SubscriptionMessage) message;
+			// Copy on write, the scoreboards read the subscriptions without locking
+			TreeSet<String> subscriptions = null;
+			if( msg.isSubscribe() )
+			{
+				// Subscribing to everything (now or before) wins over a list of tracks
+				subscriptions = new TreeSet<String>();
+				boolean all = msg._trackNames.isEmpty() || ( connection._subscriptions != null && connection._subscriptions.isEmpty() );
+				if( !all )
+				{
+					subscriptions.addAll( msg._trackNames );
+					if( connection._subscriptions != null )
+						subscriptions.addAll( connection._subscriptions );
+				}
+			}
+			else if( connection._subscriptions != null && !msg._trackNames.isEmpty() )
+			{
+				subscriptions = new TreeSet<String>( connection._subscriptions );
+				subscriptions.removeAll( msg._trackNames );
+				if( subscriptions.isEmpty() )
+					subscriptions = null;
+			}
+			connection._subscriptions = subscriptions;
+			this.reply( connection, request, MessageHeader.OK );
+			return;
+		}
+		
+		try
+		{
+			this._workers.execute( new Runnable()
+			{
+				public void run()
+				{
+					RainMessage reply = MessageProcessor.process( message, FramedPipeServer.this );
+					try
+					{
+						JSONObject json = FramedJsonCodec.encode( reply );
+						if( request.has( FramedJsonCodec.ID_KEY ) )
+							json.put( FramedJsonCodec.ID_KEY, request.get( FramedJsonCodec.ID_KEY ) );
+						FramedPipeServer.this.send( connection, FramedJsonCodec.encodeFrame( json ) );
+						FramedPipeServer.this._repliesSent++;
+					}
+					catch( Exception e )
+					{
+						System.out.println( FramedPipeServer.this + " Error sending reply to: " + connection + ". Reason: " + e.toString() );
+						FramedPipeServer.this.reply( connection, request, MessageHeader.ERROR );
+					}
+				}
+			} );
+		}
+		catch( RejectedExecutionException ree )
+		{
+			// Shutting down
+			this.reply( connection, request, MessageHeader.ERROR );
+		}
+	}
+	
+	/**
+	 * Sends a status reply to a request (which may be null if it could not be read).
+	 */
+	private void reply( Connection connection, JSONObject request, int statusCode )
+	{
+		StatusMessage status = new StatusMessage();
+		status._statusCode = statusCode;
+		try
+		{
+			JSONObject json = FramedJsonCodec.encode( status );
+			if( request != null && request.has( FramedJsonCodec.ID_KEY ) )
+				json.put( FramedJsonCodec.ID_KEY, request.get( FramedJsonCodec.ID_KEY ) );
+			this.send( connection, FramedJsonCodec.encodeFrame( json ) );
+			this._repliesSent++;
+		}
+		catch( Exception e )
+		{
+			System.out.println( this + " Error sending status to: " + connection + ". Reason: " + e.toString() );
+		}
+	}
+	
+	/**
+	 * Queues a frame for a connection, the selector thread writes it out.
+	 */
+	private void send( Connection connection, ByteBuffer frame )
+	{
+		synchronized( connection )
+		{
+			if( connection._overflowed )
+				return;
+			
+			if( connection._queuedBytes + frame.remaining() > MAX_QUEUED_BYTES )
+				connection._overflowed = true;
+			else
+			{
+				connection._writeQ.add( frame );
+				connection._queuedBytes += frame.remaining();
+			}
+		}
+		
+		synchronized( this._pendingWrites )
+		{
+			this._pendingWrites.add( connection );
+		}
+		this._selector.wakeup();
+	}
+	
+	private void processPendingWrites()
+	{
+		LinkedList<Connection> pending = null;
+		synchronized( this._pendingWrites )
+		{
+			if( this._pendingWrites.isEmpty() )
+				return;
+			pending = new LinkedList<Connection>( this._pendingWrites );
+			this._pendingWrites.clear();
+		}
+		
+		for( Connection connection : pending )
+		{
+			if( !connection._key.isValid() )
+				continue;
+			
+			if( connection._overflowed )
+			{
+				System.out.println( this + " Dropping connection: " + connection + ", it is not keeping up (more than " + MAX_QUEUED_BYTES + " bytes queued)." );
+				this._subscribersDropped++;
+				this.close( connection );
+				continue;
+			}
+			connection._key.interestOps( connection._key.interestOps() | SelectionKey.OP_WRITE );
+		}
+	}
+	
+	private void write( Connection connection ) throws IOException
+	{
+		synchronized( connection )
+		{
+			while( !connection._writeQ.isEmpty() )
+			{
+				ByteBuffer frame = connection._writeQ.getFirst();
+				int written = connection._channel.write( frame );
+				connection._queuedBytes -= written;
+				if( frame.hasRemaining() )
+					return; // The socket is full, wait until it is writable again
+				connection._writeQ.removeFirst();
+			}
+			connection._key.interestOps( this._stopping ? 0 : SelectionKey.OP_READ );
+		}
+	}
+	
+	/**
+	 * Stops watching every connection for reads (writes still go out) so the
+	 * selector does not keep waking up for requests we will not read.
+	 */
+	private void stopReading()
+	{
+		synchronized( this._connections )
+		{
+			for( Connection connection : this._connections )
+			{
+				synchronized( connection )
+				{
+					if( connection._key.isValid() )
+						connection._key.interestOps( connection._key.interestOps() & ~SelectionKey.OP_READ );
+				}
+			}
+		}
+	}
+	
+	private boolean hasQueuedData()
+	{
+		synchronized( this._connections )
+		{
+			for( Connection connection : this._connections )
+			{
+				synchronized( connection )
+				{
+					if( connection._queuedBytes > 0 && connection._key.isValid() )
+						return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	private void close( Connection connection )
+	{
+		synchronized( this._connections )
+		{
+			this._connections.remove( connection );
+		}
+		connection._subscriptions = null;
+		connection._key.cancel();
+		try
+		{
+			connection._channel.close();
+		}
+		catch( IOException ioe )
+		{}
+	}
+	
+	/**
+	 * Pushes a scorecard to every connection subscribed to its track.
+	 */
+	private void publish( Scorecard card, int activation, long intervalStartTime, boolean isFinal )
+	{
+		LinkedList<Connection> subscribers = new LinkedList<Connection>();
+		synchronized( this._connections )
+		{
+			for( Connection connection : this._connections )
+			{
+				if( connection.isSubscribed( card._trackName ) )
+					subscribers.add( connection );
+			}
+		}
+		if( subscribers.isEmpty() )
+			return;
+		
+		try
+		{
+			JSONObject json = new JSONObject();
+			json.put( FramedJsonCodec.TYPE_KEY, MessageHeader.SCORECARD_PUSH_MSG_TYPE );
+			json.put( "track", card._trackName );
+			json.put( "interval", card._name );
+			json.put( "activation", activation );
+			json.put( "intervalStartTime", intervalStartTime );
+			json.put( "final", isFinal );
+			json.put( "scorecard", card.toJSONObject() );
+			// Encode once, every subscriber gets its own view of the same bytes
+			ByteBuffer frame = FramedJsonCodec.encodeFrame( json );
+			for( Connection connection : subscribers )
+			{
+				this.send( connection, frame.duplicate() );
+				this._pushesSent++;
+			}
+		}
+		catch( Exception e )
+		{
+			System.out.println( this + " Error publishing scorecard: " + card._name + ". Reason: " + e.toString() );
+		}
+	}
+	
+	public void intervalClosed( Scorecard activationCard, int activation, long intervalStartTime )
+	{
+		this.publish( activationCard, activation, intervalStartTime, false );
+	}
+	
+	public void runFinished( Scorecard finalCard )
+	{
+		this.publish( finalCard, 0, 0, true );
+	}
+	
+	public void printStatistics()
+	{
+		System.out.println( this + " Connections accepted: " + this._connectionsAccepted + " Frames received: " + this._framesReceived + " Replies sent: " + this._repliesSent + " Scorecards pushed: " + this._pushesSent + " Subscribers dropped: " + this._subscribersDropped );
+	}
+	
+	public String toString()
+	{
+		return "[FRAMED PIPE]";
+	}
+}
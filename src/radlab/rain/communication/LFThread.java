@@ -6,11 +6,6 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.IOException;
 
-//import radlab.rain.Benchmark;
-import radlab.rain.Benchmark;
-import radlab.rain.LoadProfile;
-import radlab.rain.ScenarioTrack;
-
 /*
  * Socket handling threadpool based on the leader-followers pattern
  * */
@@ -104,78 +99,7 @@ public class LFThread extends Thread
 				try
 				{
 					clientOutput = new ObjectOutputStream( this._rawMessage._clientSocket.getOutputStream() );
-					if( this._rawMessage._rainMessage instanceof DynamicLoadProfileMessage )
-					{
-						// Extract message
-						DynamicLoadProfileMessage msg = (DynamicLoadProfileMessage) this._rawMessage._rainMessage;
-						// Find the track it should go to and validate it. 
-						// We should make Scenarios singletons since there's only one
-						// Scenario ever (a Scenario holds one or more ScenarioTracks)
-						ScenarioTrack track = Benchmark.getBenchmarkScenario().getTracks().get( msg._destTrackName );
-						if( track != null )
-						{
-							System.out.println( this + " Found target track" );
-							LoadProfile profile = msg.convertToLoadProfile();
-							int validationResult = track.validateLoadProfile( profile ); 
-							// Try to validate and submit to the track's load scheduler
-							if( validationResult == ScenarioTrack.VALID_LOAD_PROFILE )
-							{
-								System.out.println( this + " Profile validated" );
-								// Submit to load scheduler thread
-								track.submitDynamicLoadProfile( profile );
-								
-								StatusMessage reply = new StatusMessage();
-								reply._statusCode = MessageHeader.OK;
-								clientOutput.writeObject( reply );
-							}
-							else // Dynamic LoadProfile failed validation
-							{
-								System.out.println( this + " Profile validation failed!" );
-								StatusMessage reply = new StatusMessage();
-								reply._statusCode = validationResult;
-								clientOutput.writeObject( reply );
-							}
-						}
-						else // Could not find track
-						{
-							System.out.println( this + " Target track not found: " + msg._destTrackName );
-							StatusMessage reply = new StatusMessage();
-							reply._statusCode = ScenarioTrack.ERROR_TRACK_NOT_FOUND;
-							clientOutput.writeObject( reply );
-						}	
-					}
-					else if( this._rawMessage._rainMessage instanceof BenchmarkStartMessage )
-					{
-						System.out.println( this + " Received benchmark start message." );
-						// Extract message
-						Benchmark.getBenchmarkInstance().waitingForStartSignal = false;
-						// Send an OK message back to the client
-						StatusMessage reply = new StatusMessage();
-						reply._statusCode = MessageHeader.OK;
-						clientOutput.writeObject( reply );
-					}
-					else if( this._rawMessage._rainMessage instanceof TrackListRequestMessage )
-					{
-						System.out.println( this + " Received track list request message." );
-						TrackListReplyMessage reply = new TrackListReplyMessage();
-						
-						for( ScenarioTrack track : Benchmark.BenchmarkScenario.getTracks().values() )
-						{
-							System.out.println( this + " Adding track name: " + track.getName() );
-							reply._trackNames.add( track.getName() );
-						}
-						
-						System.out.println( this + " Sending track list reply message." );
-						clientOutput.writeObject( reply );
-						System.out.println( this + " Sent track list reply message." );
-					}
-					else
-					{
-						// No idea what kind of message the client sent, bail.
-						StatusMessage reply = new StatusMessage();
-						reply._statusCode = MessageHeader.ERROR_UNEXPECTED_MESSAGE_TYPE;
-						clientOutput.writeObject( reply );
-					}
+					clientOutput.writeObject( MessageProcessor.process( this._rawMessage._rainMessage, this ) );
 					
 					synchronized( statsLock )
 					{
@@ -15,10 +15,21 @@ public class MessageHeader implements Serializable
 	public static final int ERROR_MESSAGE_TYPE						= 7;
 	public static final int TRACK_LIST_REQUEST_MSG_TYPE				= 8;
 	public static final int TRACK_LIST_REPLY_MSG_TYPE				= 9;
+	public static final int TIME_SERIES_REQUEST_MSG_TYPE			= 10;
+	public static final int TIME_SERIES_REPLY_MSG_TYPE				= 11;
+	public static final int AGENT_STATUS_REQUEST_MSG_TYPE			= 12;
+	public static final int AGENT_STATUS_REPLY_MSG_TYPE				= 13;
+	public static final int AGENT_ASSIGNMENT_MSG_TYPE				= 14;
+	public static final int SCORECARD_REQUEST_MSG_TYPE				= 15;
+	public static final int SCORECARD_REPLY_MSG_TYPE				= 16;
+	public static final int SUBSCRIBE_MSG_TYPE						= 17;
+	public static final int UNSUBSCRIBE_MSG_TYPE					= 18;
+	public static final int SCORECARD_PUSH_MSG_TYPE					= 19;
 	
 	public static final int OK 											= 0;
 	public static final int ERROR										= 1775;
 	public static final int ERROR_UNEXPECTED_MESSAGE_TYPE				= 1779;
+	public static final int ERROR_BAD_ASSIGNMENT						= 1781;
 			
 	public int _version 			= MessageHeader.VERSION_1; // Protocol version
 	public int _messageType 		= 0; // Kind of message
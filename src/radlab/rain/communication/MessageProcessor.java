@@ -0,0 +1,177 @@
+package radlab.rain.communication;
+
+import java.util.LinkedList;
+
+import radlab.rain.Benchmark;
+import radlab.rain.LoadProfile;
+import radlab.rain.Scenario;
+import radlab.rain.ScenarioTrack;
+import radlab.rain.ScorecardOutbox;
+import radlab.rain.TimeSeries;
+
+/*
+ * Handles the control messages that arrive over a pipe and builds the replies. The
+ * same messages arrive over both the serialized (LFThread) and the framed
+ * (FramedPipeServer) pipes, only the way they get here is different.
+ * */
+public class MessageProcessor 
+{
+	/*
+	 * Processes a request and returns the reply to send back. The caller is only used
+	 * to tell who did the processing in the log.
+	 * */
+	public static RainMessage process( RainMessage message, Object caller )
+	{
+		if( message instanceof DynamicLoadProfileMessage )
+		{
+			return MessageProcessor.processDynamicLoadProfiles( (DynamicLoadProfileMessage) message, caller );
+		}
+		else if( message instanceof BenchmarkStartMessage )
+		{
+			System.out.println( caller + " Received benchmark start message." );
+			// Extract message
+			BenchmarkStartMessage msg = (BenchmarkStartMessage) message;
+			// A coordinator tells us when to start (so all its agents start together)
+			if( msg._controllerTimestamp > 0 )
+				Benchmark.getBenchmarkInstance().startTime = msg._controllerTimestamp;
+			Benchmark.getBenchmarkInstance().waitingForStartSignal = false;
+			// Send an OK message back to the client
+			StatusMessage reply = new StatusMessage();
+			reply._statusCode = MessageHeader.OK;
+			return reply;
+		}
+		else if( message instanceof TrackListRequestMessage )
+		{
+			System.out.println( caller + " Received track list request message." );
+			TrackListReplyMessage reply = new TrackListReplyMessage();
+			
+			for( ScenarioTrack track : Benchmark.BenchmarkScenario.getTracks().values() )
+			{
+				System.out.println( caller + " Adding track name: " + track.getName() );
+				reply._trackNames.add( track.getName() );
+			}
+			
+			System.out.println( caller + " Sending track list reply message." );
+			return reply;
+		}
+		else if( message instanceof TimeSeriesRequestMessage )
+		{
+			TimeSeriesRequestMessage msg = (TimeSeriesRequestMessage) message;
+			ScenarioTrack track = Benchmark.getBenchmarkScenario().getTracks().get( msg._destTrackName );
+			TimeSeries timeSeries = null;
+			if( track != null && track.getScoreboard() != null )
+				timeSeries = track.getScoreboard().getTimeSeries();
+			
+			if( timeSeries != null )
+			{
+				TimeSeriesReplyMessage reply = new TimeSeriesReplyMessage();
+				reply._trackName = msg._destTrackName;
+				reply._bucketMsecs = timeSeries.getBucketMsecs();
+				reply._points = timeSeries.getPoints( msg._operationName, msg._fromTime, msg._toTime );
+				return reply;
+			}
+			else // Could not find track (or it keeps no time series)
+			{
+				System.out.println( caller + " No time series for track: " + msg._destTrackName );
+				StatusMessage reply = new StatusMessage();
+				reply._statusCode = ScenarioTrack.ERROR_TRACK_NOT_FOUND;
+				return reply;
+			}
+		}
+		else if( message instanceof AgentStatusRequestMessage )
+		{
+			Benchmark benchmark = Benchmark.getBenchmarkInstance();
+			AgentStatusReplyMessage reply = new AgentStatusReplyMessage();
+			reply._state = benchmark.state;
+			Scenario scenario = Benchmark.getBenchmarkScenario();
+			for( ScenarioTrack track : scenario.getTracks().values() )
+				reply._trackMaxUsers.put( track.getName(), Long.valueOf( track.getMaxUsers() ) );
+			reply._runDuration = ( scenario.getRampUp() + scenario.getDuration() + scenario.getRampDown() ) * 1000;
+			// Stamp as late as possible, the coordinator uses it to estimate our clock offset
+			reply._agentTimestamp = System.currentTimeMillis();
+			return reply;
+		}
+		else if( message instanceof AgentAssignmentMessage )
+		{
+			AgentAssignmentMessage msg = (AgentAssignmentMessage) message;
+			StatusMessage reply = new StatusMessage();
+			reply._statusCode = Benchmark.getBenchmarkInstance().assign( msg );
+			return reply;
+		}
+		else if( message instanceof ScorecardRequestMessage )
+		{
+			ScorecardRequestMessage msg = (ScorecardRequestMessage) message;
+			ScorecardOutbox outbox = Benchmark.getBenchmarkInstance().getScorecardOutbox();
+			ScorecardReplyMessage reply = new ScorecardReplyMessage();
+			if( outbox != null )
+			{
+				// Check before collecting, once closed nothing else gets posted
+				reply._finished = outbox.reportClosed();
+				reply._failed = outbox.isFailed();
+				reply._snapshots = outbox.collect( msg._afterSequence );
+			}
+			return reply;
+		}
+		
+		// No idea what kind of message the client sent, bail.
+		StatusMessage reply = new StatusMessage();
+		reply._statusCode = MessageHeader.ERROR_UNEXPECTED_MESSAGE_TYPE;
+		return reply;
+	}
+	
+	/*
+	 * Validates the load profiles in the message (one per track, as many tracks as the
+	 * message names) and submits them to the tracks' load schedulers. Either all of the
+	 * profiles are submitted or none are, the reply has the status of every track.
+	 * */
+	private static RainMessage processDynamicLoadProfiles( DynamicLoadProfileMessage message, Object caller )
+	{
+		LinkedList<DynamicLoadProfileMessage> messages = message.getProfileMessages();
+		LinkedList<ScenarioTrack> tracks = new LinkedList<ScenarioTrack>();
+		LinkedList<LoadProfile> profiles = new LinkedList<LoadProfile>();
+		StatusMessage reply = new StatusMessage();
+		reply._statusCode = MessageHeader.OK;
+		
+		for( DynamicLoadProfileMessage msg : messages )
+		{
+			// Find the track it should go to and validate it. 
+			// We should make Scenarios singletons since there's only one
+			// Scenario ever (a Scenario holds one or more ScenarioTracks)
+			ScenarioTrack track = Benchmark.getBenchmarkScenario().getTracks().get( msg._destTrackName );
+			int validationResult = ScenarioTrack.ERROR_TRACK_NOT_FOUND;
+			LoadProfile profile = null;
+			if( track != null )
+			{
+				profile = msg.convertToLoadProfile();
+				validationResult = track.validateLoadProfile( profile );
+				if( validationResult != ScenarioTrack.VALID_LOAD_PROFILE )
+					System.out.println( caller + " Profile validation failed for track: " + msg._destTrackName );
+			}
+			else System.out.println( caller + " Target track not found: " + msg._destTrackName );
+			
+			reply._trackStatusCodes.put( msg._destTrackName, Integer.valueOf( validationResult ) );
+			if( validationResult != ScenarioTrack.VALID_LOAD_PROFILE )
+			{
+				// A single profile keeps reporting its own error code
+				if( reply._statusCode == MessageHeader.OK )
+					reply._statusCode = ( messages.size() == 1 ) ? validationResult : MessageHeader.ERROR;
+				continue;
+			}
+			
+			tracks.add( track );
+			profiles.add( profile );
+		}
+		
+		if( reply._statusCode != MessageHeader.OK )
+		{
+			System.out.println( caller + " Rejected " + messages.size() + " load profile(s)." );
+			return reply;
+		}
+		
+		// Submit to the load scheduler threads
+		for( int i = 0; i < tracks.size(); i++ )
+			tracks.get( i ).submitDynamicLoadProfile( profiles.get( i ) );
+		System.out.println( caller + " Submitted " + profiles.size() + " load profile(s)." );
+		return reply;
+	}
+}
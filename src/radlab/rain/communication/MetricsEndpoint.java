@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package radlab.rain.communication;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import radlab.rain.IScoreboard;
+import radlab.rain.LiveMetrics;
+import radlab.rain.LoadProfile;
+import radlab.rain.ScenarioTrack;
+import radlab.rain.TimeSeries;
+
+/**
+ * Embedded HTTP endpoint that exposes the live metrics of a running
+ * benchmark. <code>/metrics</code> serves the Prometheus text format and
+ * <code>/metrics.json</code> serves the same numbers as JSON and
+ * <code>/timeseries.json</code> serves a track's time series. A ticker thread
+ * snapshots each track's <code>LiveMetrics</code> once a second so requests
+ * only read the snapshots and never touch the load generation hot path.
+ */
+public class MetricsEndpoint extends Thread
+{
+	public static int DEFAULT_PORT 			= 7852;
+	public static long TICK_INTERVAL		= 1000; // msecs
+	
+	public static String PROMETHEUS_PATH	= "/metrics";
+	public static String JSON_PATH			= "/metrics.json";
+	public static String TIME_SERIES_PATH	= "/timeseries.json";
+	
+	private int _port = MetricsEndpoint.DEFAULT_PORT;
+	private TreeMap<String,ScenarioTrack> _tracks = null;
+	private ExecutorService _sharedPool = null;
+	private HttpServer _server = null;
+	private volatile boolean _done = false;
+	private NumberFormat _formatter = new DecimalFormat( "#0.000000" );
+	
+	public MetricsEndpoint( int port, TreeMap<String,ScenarioTrack> tracks, ExecutorService sharedPool )
+	{
+		this._port = port;
+		this._tracks = tracks;
+		this._sharedPool = sharedPool;
+		this.setName( "MetricsEndpoint-ticker" );
+		this.setDaemon( true );
+	}
+	
+	public int getPort() { return this._port; }
+	
+	public void startEndpoint() throws IOException
+	{
+		this._server = HttpServer.create( new InetSocketAddress( this._port ), 0 );
+		this._server.createContext( PROMETHEUS_PATH, new HttpHandler()
+		{
+			public void handle( HttpExchange exchange ) throws IOException
+			{
+				// The /metrics context also matches longer paths, e.g., /metrics.json
+				if( exchange.getRequestURI().getPath().equals( JSON_PATH ) )
+					respond( exchange, "application/json", renderJSON() );
+				else respond( exchange, "text/plain; version=0.0.4", renderPrometheus() );
+			}
+		});
+		// Query parameters: track (required), operation, from and to (msecs)
+		this._server.createContext( TIME_SERIES_PATH, new HttpHandler()
+		{
+			public void handle( HttpExchange exchange ) throws IOException
+			{
+				respond( exchange, "application/json", renderTimeSeries( exchange.getRequestURI().getRawQuery() ) );
+			}
+		});
+		this._server.start();
+		this.start();
+	}
+	
+	public void stopEndpoint()
+	{
+		this._done = true;
+		this.interrupt();
+		if( this._server != null )
+			this._server.stop( 0 );
+	}
+	
+	public void run()
+	{
+		while( !this._done )
+		{
+			long now = System.currentTimeMillis();
+			for( ScenarioTrack track : this._tracks.values() )
+			{
+				LiveMetrics liveMetrics = getLiveMetrics( track );
+				if( liveMetrics != null )
+					liveMetrics.tick( now );
+			}
+			
+			try
+			{
+				Thread.sleep( TICK_INTERVAL );
+			}
+			catch( InterruptedException ie )
+			{}
+		}
+	}
+	
+	private static LiveMetrics getLiveMetrics( ScenarioTrack track )
+	{
+		IScoreboard scoreboard = track.getScoreboard();
+		if( scoreboard == null )
+			return null;
+		return scoreboard.getLiveMetrics();
+	}
+	
+	private void respond( HttpExchange exchange, String contentType, String body ) throws IOException
+	{
+		byte[] bytes = body.getBytes( "UTF-8" );
+		exchange.getResponseHeaders().set( "Content-Type", contentType );
+		exchange.sendResponseHeaders( 200, bytes.length );
+		OutputStream out = exchange.getResponseBody();
+		try
+		{
+			out.write( bytes );
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+	
+	private int getSharedPoolQueueDepth()
+	{
+		if( this._sharedPool instanceof ThreadPoolExecutor )
+			return ( (ThreadPoolExecutor) this._sharedPool ).getQueue().size();
+		return 0;
+	}
+	
+	private int getSharedPoolActiveThreads()
+	{
+		if( this._sharedPool instanceof ThreadPoolExecutor )
+			return ( (ThreadPoolExecutor) this._sharedPool ).getActiveCount();
+		return 0;
+	}
+	
+	// Prometheus metric families: name, type and help text
+	private static String[][] METRIC_FAMILIES = 
+	{
+		{ "rain_shared_pool_queue_depth", "gauge", "Operations waiting for a thread in the shared pool." },
+		{ "rain_shared_pool_active_threads", "gauge", "Shared pool threads running operations." },
+		{ "rain_track_active_users", "gauge", "Users of the current load profile." },
+		{ "rain_track_load_profile", "gauge", "Current load profile (always 1)." },
+		{ "rain_track_scoreboard_queue_depth", "gauge", "Results dropped off but not yet processed by the scoreboard." },
+		{ "rain_operations_started_total", "counter", "Operations started." },
+		{ "rain_operations_succeeded_total", "counter", "Operations that succeeded." },
+		{ "rain_operations_failed_total", "counter", "Operations that failed." },
+		{ "rain_operations_in_flight", "gauge", "Operations started but not yet finished." },
+		{ "rain_operation_throughput_ops", "gauge", "Successful operations per second over the rolling window." },
+		{ "rain_operation_error_rate_ops", "gauge", "Failed operations per second over the rolling window." },
+		{ "rain_operation_latency_average_seconds", "gauge", "Average latency over the rolling window." },
+		{ "rain_operation_latency_seconds", "gauge", "Latency percentiles over the rolling window." }
+	};
+	
+	private String renderPrometheus()
+	{
+		TreeMap<String,StringBuffer> samples = new TreeMap<String,StringBuffer>();
+		sample( samples, "rain_shared_pool_queue_depth", "", String.valueOf( this.getSharedPoolQueueDepth() ) );
+		sample( samples, "rain_shared_pool_active_threads", "", String.valueOf( this.getSharedPoolActiveThreads() ) );
+		
+		for( ScenarioTrack track : this._tracks.values() )
+		{
+			String trackLabel = "track=\"" + escape( track.getName() ) + "\"";
+			LoadProfile profile = track.getCurrentLoadProfile();
+			IScoreboard scoreboard = track.getScoreboard();
+			
+			sample( samples, "rain_track_active_users", trackLabel, String.valueOf( profile == null ? 0 : profile.getNumberOfUsers() ) );
+			if( profile != null )
+				sample( samples, "rain_track_load_profile", trackLabel + ",profile=\"" + escape( profile._name ) + "\",mix=\"" + escape( profile.getMixName() ) + "\"", "1" );
+			if( scoreboard != null )
+				sample( samples, "rain_track_scoreboard_queue_depth", trackLabel, String.valueOf( scoreboard.getDropOffQueueDepth() ) );
+			
+			LiveMetrics liveMetrics = getLiveMetrics( track );
+			if( liveMetrics == null )
+				continue;
+			
+			for( LiveMetrics.OperationSnapshot snapshot : liveMetrics.getSnapshots().values() )
+			{
+				String labels = trackLabel + ",operation=\"" + escape( snapshot.operationName ) + "\"";
+				sample( samples, "rain_operations_started_total", labels, String.valueOf( snapshot.started ) );
+				sample( samples, "rain_operations_succeeded_total", labels, String.valueOf( snapshot.succeeded ) );
+				sample( samples, "rain_operations_failed_total", labels, String.valueOf( snapshot.failed ) );
+				sample( samples, "rain_operations_in_flight", labels, String.valueOf( snapshot.inFlight ) );
+				sample( samples, "rain_operation_throughput_ops", labels, this._formatter.format( snapshot.throughput ) );
+				sample( samples, "rain_operation_error_rate_ops", labels, this._formatter.format( snapshot.errorRate ) );
+				sample( samples, "rain_operation_latency_average_seconds", labels, this._formatter.format( snapshot.averageLatency / 1000000000.0 ) );
+				sample( samples, "rain_operation_latency_seconds", labels + ",quantile=\"0.5\"", this._formatter.format( snapshot.p50Latency / 1000000000.0 ) );
+				sample( samples, "rain_operation_latency_seconds", labels + ",quantile=\"0.9\"", this._formatter.format( snapshot.p90Latency / 1000000000.0 ) );
+				sample( samples, "rain_operation_latency_seconds", labels + ",quantile=\"0.99\"", this._formatter.format( snapshot.p99Latency / 1000000000.0 ) );
+				sample( samples, "rain_operation_latency_seconds", labels + ",quantile=\"0.999\"", this._formatter.format( snapshot.p999Latency / 1000000000.0 ) );
+			}
+		}
+		
+		// Samples of a metric family have to follow its HELP/TYPE lines
+		StringBuffer buf = new StringBuffer();
+		for( String[] family : METRIC_FAMILIES )
+		{
+			StringBuffer lines = samples.get( family[0] );
+			if( lines == null )
+				continue;
+			buf.append( "# HELP " ).append( family[0] ).append( " " ).append( family[2] ).append( "\n" );
+			buf.append( "# TYPE " ).append( family[0] ).append( " " ).append( family[1] ).append( "\n" );
+			buf.append( lines );
+		}
+		return buf.toString();
+	}
+	
+	private static void sample( TreeMap<String,StringBuffer> samples, String name, String labels, String value )
+	{
+		StringBuffer lines = samples.get( name );
+		if( lines == null )
+		{
+			lines = new StringBuffer();
+			samples.put( name, lines );
+		}
+		lines.append( name );
+		if( labels.length() > 0 )
+			lines.append( "{" ).append( labels ).append( "}" );
+		lines.append( " " ).append( value ).append( "\n" );
+	}
+	
+	private static String escape( String label )
+	{
+		if( label == null )
+			return "";
+		return label.replace( "\\", "\\\\" ).replace( "\"", "\\\"" ).replace( "\n", "\\n" );
+	}
+	
+	private String renderJSON()
+	{
+		try
+		{
+			JSONObject metrics = new JSONObject();
+			metrics.put( "timestamp", System.currentTimeMillis() );
+			metrics.put( "sharedPoolQueueDepth", this.getSharedPoolQueueDepth() );
+			metrics.put( "sharedPoolActiveThreads", this.getSharedPoolActiveThreads() );
+			
+			JSONObject tracks = new JSONObject();
+			for( ScenarioTrack track : this._tracks.values() )
+			{
+				JSONObject trackMetrics = new JSONObject();
+				LoadProfile profile = track.getCurrentLoadProfile();
+				IScoreboard scoreboard = track.getScoreboard();
+				trackMetrics.put( "activeUsers", profile == null ? 0 : profile.getNumberOfUsers() );
+				if( profile != null )
+				{
+					trackMetrics.put( "loadProfile", profile._name );
+					trackMetrics.put( "mix", profile.getMixName() );
+				}
+				if( scoreboard != null )
+					trackMetrics.put( "scoreboardQueueDepth", scoreboard.getDropOffQueueDepth() );
+				
+				long inFlight = 0;
+				double throughput = 0.0;
+				JSONObject operations = new JSONObject();
+				LiveMetrics liveMetrics = getLiveMetrics( track );
+				if( liveMetrics != null )
+				{
+					for( LiveMetrics.OperationSnapshot snapshot : liveMetrics.getSnapshots().values() )
+					{
+						inFlight += snapshot.inFlight;
+						throughput += snapshot.throughput;
+						operations.put( snapshot.operationName, toJSONObject( snapshot ) );
+					}
+				}
+				trackMetrics.put( "inFlight", inFlight );
+				trackMetrics.put( "throughput", throughput );
+				trackMetrics.put( "operations", operations );
+				tracks.put( track.getName(), trackMetrics );
+			}
+			metrics.put( "tracks", tracks );
+			return metrics.toString();
+		}
+		catch( JSONException e )
+		{
+			System.out.println( this + " Error rendering JSON metrics. Reason: " + e.toString() );
+			return "{}";
+		}
+	}
+	
+	private String renderTimeSeries( String query )
+	{
+		HashMap<String,String> params = new HashMap<String,String>();
+		try
+		{
+			if( query != null )
+			{
+				for( String param : query.split( "&" ) )
+				{
+					int equals = param.indexOf( '=' );
+					if( equals > 0 )
+						params.put( param.substring( 0, equals ), URLDecoder.decode( param.substring( equals + 1 ), "UTF-8" ) );
+				}
+			}
+			
+			JSONObject reply = new JSONObject();
+			ScenarioTrack track = this._tracks.get( params.get( "track" ) );
+			TimeSeries timeSeries = null;
+			if( track != null && track.getScoreboard() != null )
+				timeSeries = track.getScoreboard().getTimeSeries();
+			if( timeSeries == null )
+			{
+				reply.put( "error", "No time series for track: " + params.get( "track" ) );
+				return reply.toString();
+			}
+			
+			long fromTime = params.containsKey( "from" ) ? Long.parseLong( params.get( "from" ) ) : 0;
+			long toTime = params.containsKey( "to" ) ? Long.parseLong( params.get( "to" ) ) : Long.MAX_VALUE;
+			JSONArray points = new JSONArray();
+			for( TimeSeries.Point point : timeSeries.getPoints( params.get( "operation" ), fromTime, toTime ) )
+			{
+				JSONObject obj = new JSONObject();
+				obj.put( "operation", point.operationName );
+				obj.put( "timestamp", point.timestamp );
+				obj.put( "bucketMsecs", point.bucketMsecs );
+				obj.put( "succeeded", point.succeeded );
+				obj.put( "failed", point.failed );
+				obj.put( "averageLatency", point.averageLatency / 1000000000.0 );
+				obj.put( "p50Latency", point.p50Latency / 1000000000.0 );
+				obj.put( "p90Latency", point.p90Latency / 1000000000.0 );
+				obj.put( "p99Latency", point.p99Latency / 1000000000.0 );
+				obj.put( "maxLatency", point.maxLatency / 1000000000.0 );
+				points.put( obj );
+			}
+			reply.put( "track", track.getName() );
+			reply.put( "points", points );
+			return reply.toString();
+		}
+		catch( Exception e )
+		{
+			System.out.println( this + " Error rendering time series. Reason: " + e.toString() );
+			return "{}";
+		}
+	}
+	
+	private static JSONObject toJSONObject( LiveMetrics.OperationSnapshot snapshot ) throws JSONException
+	{
+		JSONObject operation = new JSONObject();
+		operation.put( "started", snapshot.started );
+		operation.put( "succeeded", snapshot.succeeded );
+		operation.put( "failed", snapshot.failed );
+		operation.put( "inFlight", snapshot.inFlight );
+		operation.put( "windowSecs", snapshot.windowSecs );
+		operation.put( "throughput", snapshot.throughput );
+		operation.put( "errorRate", snapshot.errorRate );
+		operation.put( "averageLatency", snapshot.averageLatency / 1000000000.0 );
+		operation.put( "p50Latency", snapshot.p50Latency / 1000000000.0 );
+		operation.put( "p90Latency", snapshot.p90Latency / 1000000000.0 );
+		operation.put( "p99Latency", snapshot.p99Latency / 1000000000.0 );
+		operation.put( "p999Latency", snapshot.p999Latency / 1000000000.0 );
+		return operation;
+	}
+	
+	public String toString()
+	{
+		return "[METRICS ENDPOINT]";
+	}
+}
@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.util.LinkedList;
 
+import radlab.rain.IScorecardListener;
+
 /*
  * Singleton conduit into Rain driver from the outside world.
  * Listens on a socket and waits for commands from a controller
@@ -12,6 +14,10 @@ public class RainPipe
 {
 	public static int DEFAULT_PORT 			= 7851;
 	public static int DEFAULT_NUM_THREADS 	= 3;
+	// Wire protocols: one serialized Java object per connection (the original pipe),
+	// or length-prefixed JSON frames over persistent connections (see FramedPipeServer)
+	public static String PROTOCOL_SERIALIZED 	= "serialized";
+	public static String PROTOCOL_FRAMED 		= "framed";
 	private static Object _instLock 		= new Object();
 	private static RainPipe _instance 		= null;
 	
@@ -20,6 +26,8 @@ public class RainPipe
 	private LinkedList<LFThread> _workers 		= new LinkedList<LFThread>();
 	private long _numThreads					= RainPipe.DEFAULT_NUM_THREADS;
 	private boolean _threadpoolActive			= false;
+	private String _protocol					= RainPipe.PROTOCOL_SERIALIZED;
+	private FramedPipeServer _framedServer		= null;
 	/*private Benchmark _benchmark				= null;
 	
 	public Benchmark getBenchmark() { return this._benchmark; }
@@ -51,8 +59,27 @@ public class RainPipe
 	public long getNumThreads() { return this._numThreads; }
 	public void setNumThreads( long val ) { this._numThreads = val; }
 	
+	public String getProtocol() { return this._protocol; }
+	public void setProtocol( String val ) { this._protocol = val; }
+	
+	/**
+	 * Returns the listener that pushes interval results to subscribed
+	 * controllers, or null if the pipe's protocol does not support
+	 * subscriptions.
+	 */
+	public IScorecardListener getScorecardListener()
+	{
+		return this._framedServer;
+	}
+	
 	public void printThreadStats()
 	{
+		if( this._framedServer != null )
+		{
+			this._framedServer.printStatistics();
+			return;
+		}
+		
 		int leaders = 0;
 		int followers = 0;
 		int busy = 0;
@@ -87,6 +114,16 @@ public class RainPipe
 	
 	public void start() throws IOException
 	{
+		if( this._protocol.equalsIgnoreCase( RainPipe.PROTOCOL_FRAMED ) )
+		{
+			if( this._framedServer == null )
+			{
+				this._framedServer = new FramedPipeServer( this._port, (int) this._numThreads );
+				this._framedServer.startServer();
+			}
+			return;
+		}
+		
 		// Create a new server socket for the pipe
 		this._sck = new ServerSocket( this._port );		
 		// Now that the socket is connected, let the threads take waiting on client
@@ -139,6 +176,13 @@ public class RainPipe
 	
 	public boolean disconnect()
 	{
+		if( this._framedServer != null )
+		{
+			this._framedServer.stopServer();
+			this._framedServer.printStatistics();
+			this._framedServer = null;
+		}
+		
 		// Close the socket
 		if( this._sck != null )
 		{
@@ -0,0 +1,23 @@
+package radlab.rain.communication;
+
+import java.util.LinkedList;
+
+import radlab.rain.ScorecardOutbox;
+
+public class ScorecardReplyMessage extends RainMessage 
+{
+	public ScorecardReplyMessage()
+	{
+		this._header = new MessageHeader( MessageHeader.VERSION_1, MessageHeader.SCORECARD_REPLY_MSG_TYPE );
+	}
+	
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+	// Set once the agent has posted its final scorecards, i.e., these are the last snapshots
+	public boolean _finished 									= false;
+	// Set along with finished if the agent's run died, its results are incomplete
+	public boolean _failed 										= false;
+	public LinkedList<ScorecardOutbox.Snapshot> _snapshots 		= new LinkedList<ScorecardOutbox.Snapshot>();
+}
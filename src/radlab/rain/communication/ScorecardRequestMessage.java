@@ -0,0 +1,16 @@
+package radlab.rain.communication;
+
+public class ScorecardRequestMessage extends RainMessage 
+{
+	public ScorecardRequestMessage()
+	{
+		this._header = new MessageHeader( MessageHeader.VERSION_1, MessageHeader.SCORECARD_REQUEST_MSG_TYPE );
+	}
+	
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+	// Every snapshot up to (and including) this sequence number has been collected
+	public long _afterSequence 					= 0;
+}
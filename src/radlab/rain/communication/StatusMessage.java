@@ -1,11 +1,14 @@
 package radlab.rain.communication;
 
 import java.io.Serializable;
+import java.util.TreeMap;
 
 public class StatusMessage extends RainMessage implements Serializable
 {
 	private static final long serialVersionUID = 1L;
 	public int _statusCode 			= MessageHeader.ERROR;
+	// Status of every track a request touched (e.g., a batch of load profiles)
+	public TreeMap<String,Integer> _trackStatusCodes = new TreeMap<String,Integer>();
 	
 	public StatusMessage()
 	{
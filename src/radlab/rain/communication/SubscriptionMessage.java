@@ -0,0 +1,28 @@
+package radlab.rain.communication;
+
+import java.util.LinkedList;
+
+/*
+ * Subscribes to (or unsubscribes from) the results of every interval activation of
+ * some tracks, pushed as they close. Only the framed pipe can push, the connection
+ * that subscribed is the one that gets the results.
+ * */
+public class SubscriptionMessage extends RainMessage 
+{
+	public SubscriptionMessage( boolean subscribe )
+	{
+		this._header = new MessageHeader( MessageHeader.VERSION_1, subscribe ? MessageHeader.SUBSCRIBE_MSG_TYPE : MessageHeader.UNSUBSCRIBE_MSG_TYPE );
+	}
+	
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+	// Tracks to (un)subscribe, empty means all of them
+	public LinkedList<String> _trackNames = new LinkedList<String>();
+	
+	public boolean isSubscribe()
+	{
+		return this._header._messageType == MessageHeader.SUBSCRIBE_MSG_TYPE;
+	}
+}
@@ -0,0 +1,21 @@
+package radlab.rain.communication;
+
+import java.util.LinkedList;
+
+import radlab.rain.TimeSeries;
+
+public class TimeSeriesReplyMessage extends RainMessage 
+{
+	public TimeSeriesReplyMessage()
+	{
+		this._header = new MessageHeader( MessageHeader.VERSION_1, MessageHeader.TIME_SERIES_REPLY_MSG_TYPE );
+	}
+	
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+	public String _trackName		= "";
+	public long _bucketMsecs		= 0;
+	public LinkedList<TimeSeries.Point> _points = new LinkedList<TimeSeries.Point>();
+}
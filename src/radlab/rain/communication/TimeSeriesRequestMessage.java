@@ -0,0 +1,20 @@
+package radlab.rain.communication;
+
+// Asks for the time series of a track, optionally limited to one operation
+// and to buckets starting in a time range (msecs)
+public class TimeSeriesRequestMessage extends RainMessage 
+{
+	public TimeSeriesRequestMessage()
+	{
+		this._header = new MessageHeader( MessageHeader.VERSION_1, MessageHeader.TIME_SERIES_REQUEST_MSG_TYPE );
+	}
+	
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+	public String _destTrackName 	= "";
+	public String _operationName	= null; // null means every operation
+	public long _fromTime			= 0;
+	public long _toTime				= Long.MAX_VALUE;
+}
@@ -1,10 +1,12 @@
 package radlab.rain.hotspots;
 
 import java.util.ArrayList;
+import java.util.Random;
 
 public interface IMultinomial {
 	public Integer size();
 	public Integer sampleOne();
+	public Integer sampleOne(Random random);
 	public ArrayList<Integer> sampleWithReplacement(Integer n);
 	public ArrayList<Integer> sampleWithoutReplacement(Integer n);
 }
@@ -1,9 +1,11 @@
 package radlab.rain.hotspots;
 
 import java.util.List;
+import java.util.Random;
 
 public interface IObjectGenerator<E> {
 	public abstract E next();
+	public abstract E next(Random random);
 	public abstract Integer numberOfObjects();
 	public abstract List<E> objects();
 }
@@ -5,9 +5,11 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Random;
 
+import radlab.rain.util.AliasTable;
+
 public class Multinomial implements IMultinomial {
 	private ArrayList<Double> probabilities;
-	private ArrayList<Double> cdf;
+	private AliasTable aliasTable;
 	private Random rnd = new Random();
 	
 	/*public void shrink( int targetSize )
@@ -17,7 +19,7 @@ public class Multinomial implements IMultinomial {
 			this.probabilities.remove( (this.probabilities.size() - 1) );
 		}
 		this.probabilities = normalize( this.probabilities );
-		this.cdf = computeCDF(this.probabilities);
+		this.aliasTable = computeAliasTable(this.probabilities);
 	}*/
 	
 	public Multinomial( double[] arrProbabilities )
@@ -26,12 +28,12 @@ public class Multinomial implements IMultinomial {
 		for( int i = 0; i < arrProbabilities.length; i++ )
 			rawData.add( arrProbabilities[i] );
 		this.probabilities = normalize( rawData );
-		this.cdf = computeCDF(this.probabilities);
+		this.aliasTable = computeAliasTable(this.probabilities);
 	}	
 	
 	public Multinomial(ArrayList<Double> probabilities) {
 		this.probabilities = normalize(probabilities);
-		this.cdf = computeCDF(this.probabilities);
+		this.aliasTable = computeAliasTable(this.probabilities);
 	}
 	
 	public static Multinomial uniform(Integer n) {
@@ -72,14 +74,10 @@ public class Multinomial implements IMultinomial {
 		return(normalized);
 	}
 	
-	private ArrayList<Double> computeCDF(ArrayList<Double> p) {
-		ArrayList<Double> cdf = new ArrayList<Double>();
-		Double sum = 0.0;
-		for (Double d: p) {
-			sum += d;
-			cdf.add(sum);
-		}
-		return(cdf);
+	private AliasTable computeAliasTable(ArrayList<Double> p) {
+		double[] weights = new double[p.size()];
+		for (int i=0; i<weights.length; i++) weights[i] = p.get(i);
+		return(new AliasTable(weights));
 	}
 
 	public Multinomial shuffle() {
@@ -135,20 +133,15 @@ public class Multinomial implements IMultinomial {
 	}
 	
 	public Integer sampleOne() {
-		Integer i0 = -1;
-		Integer i1 = cdf.size();
-		Integer i = 0;
-		Double r = rnd.nextDouble() * cdf.get(cdf.size()-1);
-		Boolean found = false;
-		
-		while (!found) {
-			i = (i0+i1)/2;
-//			System.out.println(r+" "+i0+" "+i+" "+i1);
-			if ( (i==0&&r<=cdf.get(0)) || (i>0&&cdf.get(i-1)<r&&r<=cdf.get(i)) ) found = true;
-			else if (i>0&&r<=cdf.get(i-1)) i1=i;
-			else i0=i;			
-		}
-		return(i);
+		return(sampleOne(rnd));
+	}
+	
+	/**
+	 * Draws one index in O(1) using the caller's random stream. The alias table is
+	 * immutable, so one Multinomial can be shared by all users of a profile.
+	 */
+	public Integer sampleOne(Random random) {
+		return(aliasTable.sample(random));
 	}
 	
 	public String toString() {
@@ -1,6 +1,7 @@
 package radlab.rain.hotspots;
 
 import java.util.ArrayList;
+import java.util.Random;
 
 public class MultinomialMixture implements IMultinomial {
 
@@ -23,6 +24,10 @@ public class MultinomialMixture implements IMultinomial {
 		return( multinomials.get( mix.sampleOne() ).sampleOne() ); 
 	}
 
+	public Integer sampleOne(Random random) { 
+		return( multinomials.get( mix.sampleOne(random) ).sampleOne(random) ); 
+	}
+
 	public ArrayList<Integer> sampleWithReplacement(Integer n) {
 		return( multinomials.get( mix.sampleOne() ).sampleWithReplacement(n) ); 
 	}
@@ -2,6 +2,7 @@ package radlab.rain.hotspots;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 public class SimpleObjectGenerator<O> implements IObjectGenerator<O> {
 
@@ -19,6 +20,10 @@ public class SimpleObjectGenerator<O> implements IObjectGenerator<O> {
 		return( objects.get( probabilities.sampleOne() ) );
 	}
 
+	public O next(Random random) {
+		return( objects.get( probabilities.sampleOne(random) ) );
+	}
+
 	public Integer numberOfObjects() {
 		return(objects.size());
 	}
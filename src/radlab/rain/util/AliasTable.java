@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util;
+
+import java.util.Random;
+
+/**
+ * Samples a discrete distribution in constant time using Walker's alias
+ * method, built with Vose's numerically stable O(n) construction.<br />
+ * <br />
+ * The table is immutable once built, so one instance can be shared by all
+ * users of a load profile; each caller passes its own random stream to
+ * sample(). Drawing a value costs one random number and two array reads,
+ * and allocates nothing.
+ */
+public class AliasTable 
+{
+	/** Probability of keeping column i rather than taking its alias. */
+	private final double[] _keep;
+	private final int[] _alias;
+	
+	/**
+	 * Builds the table from (not necessarily normalized) weights.
+	 * 
+	 * @param weights   Non-negative weights, at least one of them positive.
+	 */
+	public AliasTable( double[] weights )
+	{
+		int n = weights.length;
+		if( n == 0 )
+			throw new IllegalArgumentException( "Alias table needs at least one weight" );
+		
+		double sum = 0.0;
+		for( int i = 0; i < n; i++ )
+		{
+			if( weights[i] < 0 || Double.isNaN( weights[i] ) || Double.isInfinite( weights[i] ) )
+				throw new IllegalArgumentException( "Invalid weight at index " + i + ": " + weights[i] );
+			sum += weights[i];
+		}
+		if( sum <= 0 )
+			throw new IllegalArgumentException( "Alias table needs at least one positive weight" );
+		
+		this._keep = new double[n];
+		this._alias = new int[n];
+		
+		// Scale so the average column holds exactly 1.0, then split the
+		// columns into the ones that under- and overflow. Both work lists
+		// share one array: small ones fill it from the front, large ones
+		// from the back.
+		int[] work = new int[n];
+		int small = 0;
+		int large = n;
+		for( int i = 0; i < n; i++ )
+		{
+			this._keep[i] = weights[i] * n / sum;
+			if( this._keep[i] < 1.0 )
+				work[small++] = i;
+			else work[--large] = i;
+		}
+		
+		// Top each small column up with mass from a large one. A large
+		// column that drops below 1.0 is appended to the small list, which
+		// can always reuse the slot the large list just gave up.
+		int s = 0;
+		while( s < small && large < n )
+		{
+			int less = work[s++];
+			int more = work[large];
+			this._alias[less] = more;
+			this._keep[more] = ( this._keep[more] + this._keep[less] ) - 1.0;
+			if( this._keep[more] < 1.0 )
+			{
+				large++;
+				work[small++] = more;
+			}
+		}
+		
+		// Whatever is left is (up to rounding error) exactly full
+		while( large < n )
+			this._keep[work[large++]] = 1.0;
+		while( s < small )
+			this._keep[work[s++]] = 1.0;
+	}
+	
+	public int size() { return this._keep.length; }
+	
+	/**
+	 * Draws an index with probability proportional to its weight.
+	 * 
+	 * @param random    The caller's random stream.
+	 * @return          An index in [0, size()).
+	 */
+	public int sample( Random random )
+	{
+		// One uniform supplies both the column (integer part) and the coin
+		// flip (fractional part)
+		double u = random.nextDouble() * this._keep.length;
+		int column = (int) u;
+		return ( u - column < this._keep[column] ) ? column : this._alias[column];
+	}
+}
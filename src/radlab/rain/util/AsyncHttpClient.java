@@ -0,0 +1,824 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The AsyncHttpClient class is a non-blocking HTTP/1.1 client. A single I/O
+ * thread multiplexes every connection with a Selector, so the number of
+ * requests in flight is bounded by the number of connections rather than
+ * by the number of threads.<br />
+ * <br />
+ * Connections are kept alive and reused per host:port, up to a maximum per
+ * host; requests beyond that wait for a connection to free up (the wait
+ * counts against their timeout). A GET or HEAD that finds its reused
+ * connection closed by the server before any byte of the response arrives
+ * is retried once on a new connection.<br />
+ * <br />
+ * Requests can be issued from any thread, callbacks run on the I/O thread.
+ * Only plain HTTP is supported.
+ */
+public class AsyncHttpClient extends Thread 
+{
+	public static int DEFAULT_MAX_CONNECTIONS_PER_HOST		= 10000;
+	public static long DEFAULT_TIMEOUT_MSECS				= 10000;
+	public static long DEFAULT_IDLE_TIMEOUT_MSECS			= 30000;
+	public static int READ_BUFFER_SIZE						= 65536;
+	public static int MAX_HEAD_SIZE							= 65536;
+	/** How often timeouts are checked. */
+	public static long SWEEP_INTERVAL_MSECS					= 100;
+	
+	private static Charset ISO_8859_1 = Charset.forName( "ISO-8859-1" );
+	
+	// Connection states
+	private static final int CONNECTING 			= 0;
+	private static final int WRITING 				= 1;
+	private static final int READING_HEAD 			= 2;
+	private static final int READING_BODY 			= 3;
+	private static final int READING_CHUNK_SIZE 	= 4;
+	private static final int READING_CHUNK_DATA 	= 5;
+	private static final int READING_CHUNK_END 		= 6;
+	private static final int READING_TRAILERS 		= 7;
+	private static final int READING_UNTIL_CLOSE 	= 8;
+	private static final int IDLE 					= 9;
+	
+	/** A request on its way through the client. */
+	private static class Exchange
+	{
+		private AsyncHttpRequest _request;
+		private IAsyncHttpCallback _callback;
+		private AsyncHttpResponse _response;
+		private ByteBuffer _requestBytes;
+		private long _deadline;
+		private boolean _retried = false;
+		
+		public Exchange( AsyncHttpRequest request, IAsyncHttpCallback callback )
+		{
+			this._request = request;
+			this._callback = callback;
+			this._response = new AsyncHttpResponse( request );
+			this._requestBytes = request.encode();
+		}
+		
+		public boolean isRetriable()
+		{
+			String method = this._request.getMethod();
+			return !this._retried && ( method.equalsIgnoreCase( "GET" ) || method.equalsIgnoreCase( "HEAD" ) );
+		}
+	}
+	
+	/** The connections to (and requests waiting for) one host:port. */
+	private static class HostState
+	{
+		private InetSocketAddress _address;
+		private ArrayDeque<Connection> _idle = new ArrayDeque<Connection>();
+		private ArrayDeque<Exchange> _waiting = new ArrayDeque<Exchange>();
+		private int _open = 0;
+		
+		public HostState( InetSocketAddress address )
+		{
+			this._address = address;
+		}
+		
+		public Connection pollIdle()
+		{
+			Connection connection = this._idle.pollLast();
+			// Connections closed while idle are still in the queue
+			while( connection != null && connection._closed )
+				connection = this._idle.pollLast();
+			return connection;
+		}
+	}
+	
+	/** One keep-alive connection, parsing responses as the bytes arrive. */
+	private class Connection
+	{
+		private SocketChannel _channel;
+		private SelectionKey _key;
+		private HostState _host;
+		private Exchange _exchange = null;
+		private int _state = CONNECTING;
+		private boolean _closed = false;
+		private boolean _reused = false;
+		private boolean _receivedAny = false;
+		private boolean _closeAfter = false;
+		private long _remaining = 0;
+		private long _idleSince = 0;
+		private ByteArrayOutputStream _head = new ByteArrayOutputStream( 512 );
+		private int _headTail = 0;
+		private StringBuilder _line = new StringBuilder();
+		private int _lineLength = 0;
+		
+		public Connection( HostState host, SocketChannel channel )
+		{
+			this._host = host;
+			this._channel = channel;
+		}
+		
+		public void start( Exchange exchange ) throws IOException
+		{
+			this._exchange = exchange;
+			this._receivedAny = false;
+			this._closeAfter = false;
+			this._state = WRITING;
+			this.write();
+		}
+		
+		public void finishConnect() throws IOException
+		{
+			this._channel.finishConnect();
+			this.start( this._exchange );
+		}
+		
+		public void write() throws IOException
+		{
+			ByteBuffer requestBytes = this._exchange._requestBytes;
+			this._channel.write( requestBytes );
+			if( requestBytes.hasRemaining() )
+				this._key.interestOps( SelectionKey.OP_WRITE );
+			else
+			{
+				this._state = READING_HEAD;
+				this._head.reset();
+				this._headTail = 0;
+				this._key.interestOps( SelectionKey.OP_READ );
+			}
+		}
+		
+		public void read() throws IOException
+		{
+			ByteBuffer buffer = AsyncHttpClient.this._readBuffer;
+			byte[] bytes = buffer.array();
+			Exchange current = this._exchange;
+			
+			buffer.clear();
+			int n = this._channel.read( buffer );
+			while( n > 0 )
+			{
+				if( this._state == IDLE )
+				{
+					// Nothing should arrive on an idle connection
+					this.close();
+					return;
+				}
+				this._receivedAny = true;
+				this.consume( bytes, 0, n );
+				// Once the response is complete we're done, no pipelining
+				if( this._exchange != current || this._closed )
+					return;
+				buffer.clear();
+				n = this._channel.read( buffer );
+			}
+			
+			if( n == -1 )
+			{
+				if( this._state == IDLE )
+					this.close();
+				else if( this._state == READING_UNTIL_CLOSE )
+				{
+					this._closeAfter = true;
+					this.complete();
+				}
+				else throw new IOException( "Connection closed before the response was complete" );
+			}
+		}
+		
+		private void consume( byte[] bytes, int offset, int length ) throws IOException
+		{
+			int i = offset;
+			int end = offset + length;
+			AsyncHttpResponse response = this._exchange._response;
+			Exchange current = this._exchange;
+			while( i < end && this._exchange == current )
+			{
+				switch( this._state )
+				{
+				case READING_HEAD:
+				{
+					byte b = bytes[i++];
+					this._head.write( b );
+					this._headTail = ( this._headTail << 8 ) | ( b & 0xff );
+					if( this._headTail == 0x0D0A0D0A )
+						this.parseHead();
+					else if( this._head.size() > MAX_HEAD_SIZE )
+						throw new IOException( "Response head too large" );
+					break;
+				}
+				case READING_BODY:
+				case READING_CHUNK_DATA:
+				{
+					int n = (int) Math.min( this._remaining, end - i );
+					response.onBody( bytes, i, n );
+					i += n;
+					this._remaining -= n;
+					if( this._remaining == 0 )
+					{
+						if( this._state == READING_BODY )
+							this.complete();
+						else this._state = READING_CHUNK_END;
+					}
+					break;
+				}
+				case READING_UNTIL_CLOSE:
+				{
+					response.onBody( bytes, i, end - i );
+					i = end;
+					break;
+				}
+				case READING_CHUNK_SIZE:
+				{
+					byte b = bytes[i++];
+					if( b == '\n' )
+						this.parseChunkSize();
+					else if( b != '\r' )
+						this._line.append( (char) b );
+					break;
+				}
+				case READING_CHUNK_END:
+				{
+					// Skip the CRLF after the chunk data
+					if( bytes[i++] == '\n' )
+						this._state = READING_CHUNK_SIZE;
+					break;
+				}
+				case READING_TRAILERS:
+				{
+					// Trailers end with an empty line
+					byte b = bytes[i++];
+					if( b == '\n' )
+					{
+						if( this._lineLength == 0 )
+							this.complete();
+						this._lineLength = 0;
+					}
+					else if( b != '\r' )
+						this._lineLength++;
+					break;
+				}
+				default:
+					throw new IOException( "Unexpected data in state " + this._state );
+				}
+			}
+		}
+		
+		private void parseHead() throws IOException
+		{
+			AsyncHttpResponse response = this._exchange._response;
+			String[] lines = new String( this._head.toByteArray(), ISO_8859_1 ).split( "\r\n" );
+			String[] statusLine = lines[0].split( " ", 3 );
+			if( statusLine.length < 2 || !statusLine[0].startsWith( "HTTP/" ) )
+				throw new IOException( "Malformed status line: " + lines[0] );
+			
+			int statusCode = 0;
+			try
+			{
+				statusCode = Integer.parseInt( statusLine[1] );
+			}
+			catch( NumberFormatException e )
+			{
+				throw new IOException( "Malformed status line: " + lines[0] );
+			}
+			response.setStatusCode( statusCode );
+			for( int i = 1; i < lines.length; i++ )
+			{
+				int colon = lines[i].indexOf( ':' );
+				if( colon > 0 )
+					response.setHeader( lines[i].substring( 0, colon ).trim(), lines[i].substring( colon + 1 ).trim() );
+			}
+			
+			this._head.reset();
+			this._headTail = 0;
+			// Interim response (e.g., 100 Continue), the real one follows
+			if( statusCode >= 100 && statusCode < 200 )
+			{
+				response.getHeaders().clear();
+				return;
+			}
+			
+			String connection = response.getHeader( "Connection" );
+			if( connection != null && connection.equalsIgnoreCase( "close" ) )
+				this._closeAfter = true;
+			else if( statusLine[0].equals( "HTTP/1.0" ) && ( connection == null || !connection.equalsIgnoreCase( "keep-alive" ) ) )
+				this._closeAfter = true;
+			
+			if( !this._exchange._request.expectsBody() || statusCode == 204 || statusCode == 304 )
+			{
+				this.complete();
+				return;
+			}
+			
+			String transferEncoding = response.getHeader( "Transfer-Encoding" );
+			String contentLength = response.getHeader( "Content-Length" );
+			if( transferEncoding != null && transferEncoding.toLowerCase().contains( "chunked" ) )
+			{
+				this._line.setLength( 0 );
+				this._state = READING_CHUNK_SIZE;
+			}
+			else if( contentLength != null )
+			{
+				try
+				{
+					this._remaining = Long.parseLong( contentLength );
+				}
+				catch( NumberFormatException e )
+				{
+					throw new IOException( "Malformed Content-Length: " + contentLength );
+				}
+				if( this._remaining == 0 )
+					this.complete();
+				else this._state = READING_BODY;
+			}
+			else
+			{
+				// The body ends when the server closes the connection
+				this._closeAfter = true;
+				this._state = READING_UNTIL_CLOSE;
+			}
+		}
+		
+		private void parseChunkSize() throws IOException
+		{
+			String size = this._line.toString();
+			this._line.setLength( 0 );
+			// Ignore chunk extensions
+			int semicolon = size.indexOf( ';' );
+			if( semicolon >= 0 )
+				size = size.substring( 0, semicolon );
+			try
+			{
+				this._remaining = Long.parseLong( size.trim(), 16 );
+			}
+			catch( NumberFormatException e )
+			{
+				throw new IOException( "Malformed chunk size: " + size );
+			}
+			
+			if( this._remaining == 0 )
+			{
+				this._lineLength = 0;
+				this._state = READING_TRAILERS;
+			}
+			else this._state = READING_CHUNK_DATA;
+		}
+		
+		private void complete()
+		{
+			Exchange exchange = this._exchange;
+			this._exchange = null;
+			if( this._closeAfter )
+				this.close();
+			else
+			{
+				this._state = IDLE;
+				this._reused = true;
+				this._idleSince = System.nanoTime();
+				// Stay interested in reads to notice the server closing the connection
+				this._key.interestOps( SelectionKey.OP_READ );
+				this._host._idle.addLast( this );
+			}
+			
+			AsyncHttpClient.this.onCompleted( exchange );
+			AsyncHttpClient.this.dispatchWaiting( this._host );
+		}
+		
+		public void close()
+		{
+			if( this._closed )
+				return;
+			this._closed = true;
+			this._host._open--;
+			if( this._key != null )
+				this._key.cancel();
+			try
+			{
+				this._channel.close();
+			}
+			catch( IOException ioe )
+			{}
+		}
+	}
+	
+	private Selector _selector;
+	private int _maxConnectionsPerHost;
+	private long _timeoutNanos;
+	private long _idleTimeoutNanos;
+	private volatile boolean _done = false;
+	
+	private ConcurrentLinkedQueue<Exchange> _submitted = new ConcurrentLinkedQueue<Exchange>();
+	private AtomicBoolean _wakeupPending = new AtomicBoolean( false );
+	
+	// Only touched by the I/O thread
+	private HashMap<String,HostState> _hosts = new HashMap<String,HostState>();
+	private ByteBuffer _readBuffer = ByteBuffer.allocate( READ_BUFFER_SIZE );
+	
+	// Statistics
+	private AtomicLong _requests 			= new AtomicLong( 0 );
+	private AtomicLong _completed 			= new AtomicLong( 0 );
+	private AtomicLong _failed 				= new AtomicLong( 0 );
+	private AtomicLong _timeouts 			= new AtomicLong( 0 );
+	private AtomicLong _retries 			= new AtomicLong( 0 );
+	private AtomicLong _connectionsOpened 	= new AtomicLong( 0 );
+	private AtomicInteger _inFlight 		= new AtomicInteger( 0 );
+	private AtomicInteger _maxInFlight 		= new AtomicInteger( 0 );
+	
+	/**
+	 * Creates (but doesn't start) an asynchronous HTTP client.
+	 * 
+	 * @param maxConnectionsPerHost     Maximum number of connections to the same host:port.
+	 * @param timeout                   Time (in milliseconds) a request has to complete, including waiting for a connection.
+	 * @param idleTimeout               Time (in milliseconds) after which idle connections are closed; 0 to keep them open.
+	 * 
+	 * @throws IOException
+	 */
+	public AsyncHttpClient( int maxConnectionsPerHost, long timeout, long idleTimeout ) throws IOException
+	{
+		this._selector = Selector.open();
+		this._maxConnectionsPerHost = maxConnectionsPerHost;
+		this._timeoutNanos = timeout * 1000000;
+		this._idleTimeoutNanos = idleTimeout * 1000000;
+		this.setName( this.toString() );
+		this.setDaemon( true );
+	}
+	
+	/**
+	 * Checks whether this client can issue a request.
+	 * 
+	 * @param request   The request to check.
+	 * @return          True if the request can be issued by this client.
+	 */
+	public boolean supports( AsyncHttpRequest request )
+	{
+		return request.isSupported();
+	}
+	
+	/**
+	 * Issues a request. Returns right away, the callback is told about the
+	 * outcome on the I/O thread.
+	 * 
+	 * @param request   The request to issue.
+	 * @param callback  The callback to notify.
+	 */
+	public void execute( AsyncHttpRequest request, IAsyncHttpCallback callback )
+	{
+		if( !request.isSupported() )
+		{
+			callback.failed( request, new IOException( "Only plain http requests are supported: " + request ) );
+			return;
+		}
+		if( this._done )
+		{
+			callback.failed( request, new IOException( this + " shut down" ) );
+			return;
+		}
+		
+		Exchange exchange = new Exchange( request, callback );
+		exchange._deadline = System.nanoTime() + this._timeoutNanos;
+		
+		this._requests.incrementAndGet();
+		int inFlight = this._inFlight.incrementAndGet();
+		int maxInFlight = this._maxInFlight.get();
+		while( inFlight > maxInFlight && !this._maxInFlight.compareAndSet( maxInFlight, inFlight ) )
+			maxInFlight = this._maxInFlight.get();
+		
+		this._submitted.add( exchange );
+		// The I/O thread may have drained the queue for good in between, then
+		// whoever gets the exchange out of the queue fails it
+		if( this._done && this._submitted.remove( exchange ) )
+		{
+			this.fail( exchange, new IOException( this + " shut down" ) );
+			return;
+		}
+		// One wakeup per batch of submissions is enough
+		if( this._wakeupPending.compareAndSet( false, true ) )
+			this._selector.wakeup();
+	}
+	
+	public void run()
+	{
+		long lastSweep = System.nanoTime();
+		try
+		{
+			while( !this._done )
+			{
+				this._selector.select( SWEEP_INTERVAL_MSECS );
+				
+				// Pick up new requests
+				this._wakeupPending.set( false );
+				Exchange exchange = this._submitted.poll();
+				while( exchange != null )
+				{
+					this.dispatch( exchange );
+					exchange = this._submitted.poll();
+				}
+				
+				Iterator<SelectionKey> keys = this._selector.selectedKeys().iterator();
+				while( keys.hasNext() )
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+					Connection connection = (Connection) key.attachment();
+					if( !key.isValid() || connection._closed )
+						continue;
+					
+					try
+					{
+						if( key.isConnectable() )
+							connection.finishConnect();
+						else if( key.isWritable() )
+							connection.write();
+						else if( key.isReadable() )
+							connection.read();
+					}
+					catch( IOException e )
+					{
+						this.failConnection( connection, e );
+					}
+				}
+				
+				long now = System.nanoTime();
+				if( now - lastSweep >= SWEEP_INTERVAL_MSECS * 1000000 )
+				{
+					this.sweep( now );
+					lastSweep = now;
+				}
+			}
+		}
+		catch( Exception e )
+		{
+			System.out.println( this + " I/O thread died by exception! Reason: " + e.toString() );
+			e.printStackTrace();
+		}
+		finally
+		{
+			this.closeAll();
+		}
+	}
+	
+	/**
+	 * Stops the I/O thread, closes all the connections and fails the
+	 * requests still in flight.
+	 */
+	public void stopClient()
+	{
+		this._done = true;
+		this._selector.wakeup();
+		try
+		{
+			this.join( 1000 );
+		}
+		catch( InterruptedException ie )
+		{}
+	}
+	
+	private void dispatch( Exchange exchange )
+	{
+		AsyncHttpRequest request = exchange._request;
+		HostState host = this._hosts.get( request.getHostKey() );
+		if( host == null )
+		{
+			// Resolved once per host, on the I/O thread
+			InetSocketAddress address = new InetSocketAddress( request.getHost(), request.getPort() );
+			if( address.isUnresolved() )
+			{
+				this.fail( exchange, new UnknownHostException( request.getHost() ) );
+				return;
+			}
+			host = new HostState( address );
+			this._hosts.put( request.getHostKey(), host );
+		}
+		
+		Connection connection = host.pollIdle();
+		try
+		{
+			if( connection != null )
+				connection.start( exchange );
+			else if( host._open < this._maxConnectionsPerHost )
+				this.openConnection( host, exchange );
+			else host._waiting.addLast( exchange );
+		}
+		catch( IOException e )
+		{
+			if( connection != null )
+				this.failConnection( connection, e );
+			else this.fail( exchange, e );
+		}
+	}
+	
+	private void dispatchWaiting( HostState host )
+	{
+		while( !host._waiting.isEmpty() && ( !host._idle.isEmpty() || host._open < this._maxConnectionsPerHost ) )
+			this.dispatch( host._waiting.pollFirst() );
+	}
+	
+	private void openConnection( HostState host, Exchange exchange ) throws IOException
+	{
+		SocketChannel channel = SocketChannel.open();
+		Connection connection = new Connection( host, channel );
+		host._open++;
+		this._connectionsOpened.incrementAndGet();
+		try
+		{
+			channel.configureBlocking( false );
+			channel.socket().setTcpNoDelay( true );
+			connection._exchange = exchange;
+			connection._key = channel.register( this._selector, 0, connection );
+			if( channel.connect( host._address ) )
+				connection.start( exchange );
+			else connection._key.interestOps( SelectionKey.OP_CONNECT );
+		}
+		catch( IOException e )
+		{
+			connection._exchange = null;
+			connection.close();
+			throw e;
+		}
+	}
+	
+	private void failConnection( Connection connection, Throwable cause )
+	{
+		Exchange exchange = connection._exchange;
+		connection._exchange = null;
+		boolean staleConnection = connection._reused && !connection._receivedAny;
+		connection.close();
+		if( exchange != null )
+		{
+			if( staleConnection && exchange.isRetriable() && !( cause instanceof SocketTimeoutException ) )
+			{
+				// The server closed the kept-alive connection under us, try a fresh one
+				exchange._retried = true;
+				exchange._requestBytes.rewind();
+				exchange._response.reset();
+				this._retries.incrementAndGet();
+				this.dispatch( exchange );
+			}
+			else this.fail( exchange, cause );
+		}
+		this.dispatchWaiting( connection._host );
+	}
+	
+	private void onCompleted( Exchange exchange )
+	{
+		this._inFlight.decrementAndGet();
+		this._completed.incrementAndGet();
+		try
+		{
+			exchange._callback.completed( exchange._response );
+		}
+		catch( Throwable t )
+		{
+			System.out.println( this + " Error in completion callback for " + exchange._request + ". Reason: " + t.toString() );
+		}
+	}
+	
+	private void fail( Exchange exchange, Throwable cause )
+	{
+		this._inFlight.decrementAndGet();
+		this._failed.incrementAndGet();
+		if( cause instanceof SocketTimeoutException )
+			this._timeouts.incrementAndGet();
+		try
+		{
+			exchange._callback.failed( exchange._request, cause );
+		}
+		catch( Throwable t )
+		{
+			System.out.println( this + " Error in failure callback for " + exchange._request + ". Reason: " + t.toString() );
+		}
+	}
+	
+	/**
+	 * Fails requests that ran out of time and closes connections that have
+	 * been idle for too long.
+	 */
+	private void sweep( long now )
+	{
+		// Failing a request can open connections, so don't iterate over the live key set
+		ArrayList<SelectionKey> keys = new ArrayList<SelectionKey>( this._selector.keys() );
+		for( SelectionKey key : keys )
+		{
+			Connection connection = (Connection) key.attachment();
+			if( connection == null || connection._closed )
+				continue;
+			
+			if( connection._exchange != null && now - connection._exchange._deadline > 0 )
+				this.failConnection( connection, new SocketTimeoutException( "Timed out: " + connection._exchange._request ) );
+			else if( connection._state == IDLE && this._idleTimeoutNanos > 0 && now - connection._idleSince > this._idleTimeoutNanos )
+				connection.close();
+		}
+		
+		for( HostState host : this._hosts.values() )
+		{
+			Iterator<Exchange> waiting = host._waiting.iterator();
+			while( waiting.hasNext() )
+			{
+				Exchange exchange = waiting.next();
+				if( now - exchange._deadline > 0 )
+				{
+					waiting.remove();
+					this.fail( exchange, new SocketTimeoutException( "Timed out waiting for a connection: " + exchange._request ) );
+				}
+			}
+		}
+	}
+	
+	private void closeAll()
+	{
+		// Also when the I/O thread died, so that later requests fail right away
+		this._done = true;
+		IOException shutdown = new IOException( this + " shut down" );
+		for( SelectionKey key : new ArrayList<SelectionKey>( this._selector.keys() ) )
+		{
+			Connection connection = (Connection) key.attachment();
+			if( connection == null )
+				continue;
+			Exchange exchange = connection._exchange;
+			connection._exchange = null;
+			connection.close();
+			if( exchange != null )
+				this.fail( exchange, shutdown );
+		}
+		for( HostState host : this._hosts.values() )
+		{
+			Exchange exchange = host._waiting.pollFirst();
+			while( exchange != null )
+			{
+				this.fail( exchange, shutdown );
+				exchange = host._waiting.pollFirst();
+			}
+		}
+		Exchange exchange = this._submitted.poll();
+		while( exchange != null )
+		{
+			this.fail( exchange, shutdown );
+			exchange = this._submitted.poll();
+		}
+		try
+		{
+			this._selector.close();
+		}
+		catch( IOException ioe )
+		{}
+	}
+	
+	public int getMaxConnectionsPerHost() { return this._maxConnectionsPerHost; }
+	public long getRequests() { return this._requests.get(); }
+	public long getCompleted() { return this._completed.get(); }
+	public long getFailed() { return this._failed.get(); }
+	public long getTimeouts() { return this._timeouts.get(); }
+	public long getRetries() { return this._retries.get(); }
+	public long getConnectionsOpened() { return this._connectionsOpened.get(); }
+	public int getInFlight() { return this._inFlight.get(); }
+	public int getMaxInFlight() { return this._maxInFlight.get(); }
+	
+	public String toString()
+	{
+		return "[ASYNC HTTP]";
+	}
+}
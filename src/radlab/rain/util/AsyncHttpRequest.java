@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The AsyncHttpRequest class describes a request to be issued by the
+ * AsyncHttpClient and what to do with the response body (see
+ * <code>HttpTransport.ResponseMode</code>). Only plain HTTP is supported.
+ */
+public class AsyncHttpRequest 
+{
+	private static Charset ISO_8859_1 = Charset.forName( "ISO-8859-1" );
+	
+	private String _method;
+	private URI _uri;
+	private Map<String,String> _headers = new LinkedHashMap<String,String>();
+	private byte[] _body = null;
+	private HttpTransport.ResponseMode _responseMode = HttpTransport.ResponseMode.DISCARD;
+	private ResponseScanner _scanner = null;
+	
+	/**
+	 * Creates a GET request for the given URL.
+	 * 
+	 * @param url   The URL of the request.
+	 */
+	public AsyncHttpRequest( String url )
+	{
+		this( "GET", url );
+	}
+	
+	public AsyncHttpRequest( String method, String url )
+	{
+		this._method = method;
+		this._uri = URI.create( url );
+	}
+	
+	public String getMethod() { return this._method; }
+	public URI getURI() { return this._uri; }
+	public Map<String,String> getHeaders() { return this._headers; }
+	public byte[] getBody() { return this._body; }
+	public HttpTransport.ResponseMode getResponseMode() { return this._responseMode; }
+	public ResponseScanner getScanner() { return this._scanner; }
+	
+	public void setHeader( String name, String value ) { this._headers.put( name, value ); }
+	
+	/**
+	 * Sets the body of the request (e.g., for a POST).
+	 * 
+	 * @param contentType   The content type of the body.
+	 * @param body          The body.
+	 */
+	public void setBody( String contentType, byte[] body )
+	{
+		this._headers.put( "Content-Type", contentType );
+		this._body = body;
+	}
+	
+	/**
+	 * Sets what to do with the response body. Defaults to
+	 * <code>DISCARD</code>; <code>MATERIALIZE</code> keeps it as a String.
+	 * 
+	 * @param val   The response mode.
+	 */
+	public void setResponseMode( HttpTransport.ResponseMode val ) { this._responseMode = val; }
+	
+	/**
+	 * Scans the response body for the scanner's tokens instead of keeping it.
+	 * 
+	 * @param val   The scanner to feed the body to.
+	 */
+	public void setScanner( ResponseScanner val )
+	{
+		this._scanner = val;
+		this._responseMode = HttpTransport.ResponseMode.SCAN;
+	}
+	
+	public boolean isSupported() { return "http".equalsIgnoreCase( this._uri.getScheme() ) && this._uri.getHost() != null; }
+	
+	public String getHost() { return this._uri.getHost(); }
+	
+	public int getPort()
+	{
+		if( this._uri.getPort() == -1 )
+			return 80;
+		return this._uri.getPort();
+	}
+	
+	/** Returns the key requests to the same server share connections under. */
+	public String getHostKey() { return this.getHost() + ":" + this.getPort(); }
+	
+	public boolean expectsBody() { return !this._method.equalsIgnoreCase( "HEAD" ); }
+	
+	/**
+	 * Encodes the request line, headers and body.
+	 * 
+	 * @return  A buffer ready to be written to the connection.
+	 */
+	public ByteBuffer encode()
+	{
+		StringBuilder head = new StringBuilder( 256 );
+		String path = this._uri.getRawPath();
+		if( path == null || path.length() == 0 )
+			path = "/";
+		head.append( this._method ).append( ' ' ).append( path );
+		if( this._uri.getRawQuery() != null )
+			head.append( '?' ).append( this._uri.getRawQuery() );
+		head.append( " HTTP/1.1\r\n" );
+		
+		head.append( "Host: " ).append( this.getHost() );
+		if( this._uri.getPort() != -1 )
+			head.append( ':' ).append( this._uri.getPort() );
+		head.append( "\r\n" );
+		if( !this._headers.containsKey( "Accept-Language" ) )
+			head.append( "Accept-Language: en-us,en;q=0.5\r\n" );
+		for( Map.Entry<String,String> header : this._headers.entrySet() )
+			head.append( header.getKey() ).append( ": " ).append( header.getValue() ).append( "\r\n" );
+		if( this._body != null )
+			head.append( "Content-Length: " ).append( this._body.length ).append( "\r\n" );
+		head.append( "\r\n" );
+		
+		byte[] headBytes = head.toString().getBytes( ISO_8859_1 );
+		int bodyLength = ( this._body == null ) ? 0 : this._body.length;
+		ByteBuffer buffer = ByteBuffer.allocate( headBytes.length + bodyLength );
+		buffer.put( headBytes );
+		if( this._body != null )
+			buffer.put( this._body );
+		buffer.flip();
+		return buffer;
+	}
+	
+	public String toString()
+	{
+		return this._method + " " + this._uri;
+	}
+}
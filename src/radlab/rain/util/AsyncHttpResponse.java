@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Hashtable;
+
+/**
+ * The AsyncHttpResponse class holds the outcome of a request issued by the
+ * AsyncHttpClient. The body is only kept if the request asked for it.
+ */
+public class AsyncHttpResponse 
+{
+	private static Charset UTF8 = Charset.forName( "UTF-8" );
+	
+	private AsyncHttpRequest _request;
+	private int _statusCode = 0;
+	// Header names are lower-cased
+	private Hashtable<String,String> _headers = new Hashtable<String,String>();
+	private long _bytesReceived = 0;
+	private ByteArrayOutputStream _body = null;
+	
+	public AsyncHttpResponse( AsyncHttpRequest request )
+	{
+		this._request = request;
+		if( request.getResponseMode() == HttpTransport.ResponseMode.MATERIALIZE )
+			this._body = new ByteArrayOutputStream();
+		if( request.getScanner() != null )
+			request.getScanner().reset();
+	}
+	
+	public AsyncHttpRequest getRequest() { return this._request; }
+	public int getStatusCode() { return this._statusCode; }
+	public void setStatusCode( int val ) { this._statusCode = val; }
+	public Hashtable<String,String> getHeaders() { return this._headers; }
+	public String getHeader( String name ) { return this._headers.get( name.toLowerCase() ); }
+	public void setHeader( String name, String value ) { this._headers.put( name.toLowerCase(), value ); }
+	
+	/** Returns the number of bytes in the response body. */
+	public long getBytesReceived() { return this._bytesReceived; }
+	
+	/**
+	 * Returns the response body if the request asked for it to be
+	 * materialized, null otherwise.
+	 */
+	public String getBody()
+	{
+		if( this._body == null )
+			return null;
+		return new String( this._body.toByteArray(), UTF8 );
+	}
+	
+	/**
+	 * Handles the next piece of the response body according to the
+	 * request's response mode.
+	 */
+	public void onBody( byte[] buffer, int offset, int length )
+	{
+		this._bytesReceived += length;
+		if( this._body != null )
+			this._body.write( buffer, offset, length );
+		else if( this._request.getScanner() != null )
+			this._request.getScanner().update( buffer, offset, length );
+	}
+	
+	/** Discards everything received so far (e.g., before a retry). */
+	public void reset()
+	{
+		this._statusCode = 0;
+		this._headers.clear();
+		this._bytesReceived = 0;
+		if( this._body != null )
+			this._body.reset();
+		if( this._request.getScanner() != null )
+			this._request.getScanner().reset();
+	}
+}
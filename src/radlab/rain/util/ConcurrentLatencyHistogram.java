@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package radlab.rain.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free log-linear histogram of latencies (in nanos) that many threads
+ * can record into at once. Every power of two is split into 16 linear
+ * sub-buckets (about 6% relative error). Like the <code>StripedCounter</code>
+ * each thread records into one of several stripes, readers sum the stripes
+ * with <code>snapshot</code> and compute percentiles (or the difference
+ * between two snapshots) from the bucket counts. The bucket layout is a
+ * <code>Buckets</code>, which coarser histograms (e.g., the TimeSeries') use
+ * with their own parameters.
+ */
+public class ConcurrentLatencyHistogram 
+{
+	public static int DEFAULT_STRIPES 	= 8;
+	
+	/**
+	 * A log-linear bucket layout. Values below 2^subBucketBits units get a
+	 * bucket each, every power of two above that is split into
+	 * 2^subBucketBits linear sub-buckets, and values past 2^maxExponent units
+	 * all land in the last bucket. Values are in nanos.
+	 */
+	public static class Buckets
+	{
+		private final long _unitNanos;
+		private final int _subBucketBits;
+		private final int _subBuckets;
+		private final int _maxExponent;
+		private final int _count;
+		
+		/**
+		 * @param unitNanos       Nanos per unit, the width of the smallest buckets.
+		 * @param subBucketBits   Log2 of the number of sub-buckets per power of two.
+		 * @param maxExponent     Largest power of two (of units) with buckets of its own.
+		 */
+		public Buckets( long unitNanos, int subBucketBits, int maxExponent )
+		{
+			this._unitNanos = Math.max( 1, unitNanos );
+			this._subBucketBits = subBucketBits;
+			this._subBuckets = 1 << subBucketBits;
+			this._maxExponent = maxExponent;
+			this._count = ( maxExponent - subBucketBits + 2 ) * this._subBuckets;
+		}
+		
+		/** Returns the number of buckets. */
+		public int getCount() { return this._count; }
+		
+		public int bucketOf( long nanos )
+		{
+			long units = ( this._unitNanos == 1 ) ? nanos : nanos / this._unitNanos;
+			if( units < this._subBuckets )
+				return ( units < 0 ) ? 0 : (int) units;
+			int exponent = 63 - Long.numberOfLeadingZeros( units );
+			if( exponent > this._maxExponent )
+				return this._count - 1;
+			int subBucket = (int) ( units >>> ( exponent - this._subBucketBits ) ) & ( this._subBuckets - 1 );
+			return ( ( exponent - this._subBucketBits + 1 ) * this._subBuckets ) + subBucket;
+		}
+		
+		/**
+		 * Returns the midpoint (in nanos) of the values that map to a bucket.
+		 */
+		public long valueOf( int bucket )
+		{
+			long low = bucket;
+			long width = 1;
+			if( bucket >= this._subBuckets )
+			{
+				int exponent = ( bucket / this._subBuckets ) + this._subBucketBits - 1;
+				int subBucket = bucket % this._subBuckets;
+				width = 1L << ( exponent - this._subBucketBits );
+				low = ( this._subBuckets + subBucket ) * width;
+			}
+			return ( low * this._unitNanos ) + ( ( width * this._unitNanos ) / 2 );
+		}
+		
+		/**
+		 * Returns the given percentile (0-100) of the bucket counts, or 0 if
+		 * there are no counts.
+		 */
+		public long getPercentile( long[] counts, long total, double pct )
+		{
+			if( total == 0 )
+				return 0;
+			long rank = rankOf( total, pct );
+			long seen = 0;
+			for( int i = 0; i < counts.length; i++ )
+			{
+				seen += counts[i];
+				if( seen >= rank )
+					return this.valueOf( i );
+			}
+			return this.valueOf( counts.length - 1 );
+		}
+		
+		/** Same as above, for histograms that keep int counts to save memory. */
+		public long getPercentile( int[] counts, long total, double pct )
+		{
+			if( total == 0 )
+				return 0;
+			long rank = rankOf( total, pct );
+			long seen = 0;
+			for( int i = 0; i < counts.length; i++ )
+			{
+				seen += counts[i];
+				if( seen >= rank )
+					return this.valueOf( i );
+			}
+			return this.valueOf( counts.length - 1 );
+		}
+		
+		private static long rankOf( long total, double pct )
+		{
+			return Math.max( 1, (long) Math.ceil( ( pct / 100.0 ) * total ) );
+		}
+	}
+	
+	// 16 sub-buckets per power of two of nanos, values past 2^41 nanos (~36 minutes) all land in the last bucket
+	private static Buckets LAYOUT		= new Buckets( 1, 4, 41 );
+	public static int BUCKETS			= LAYOUT.getCount();
+	
+	private AtomicLongArray _counts;
+	private int _mask;
+	
+	public ConcurrentLatencyHistogram()
+	{
+		this( DEFAULT_STRIPES );
+	}
+	
+	/**
+	 * @param stripes   Number of stripes, rounded up to a power of two.
+	 */
+	public ConcurrentLatencyHistogram( int stripes )
+	{
+		int cells = 1;
+		while( cells < stripes )
+			cells <<= 1;
+		this._mask = cells - 1;
+		this._counts = new AtomicLongArray( cells * BUCKETS );
+	}
+	
+	public void record( long nanos )
+	{
+		int stripe = StripedCounter.stripeOf( this._mask );
+		this._counts.incrementAndGet( ( stripe * BUCKETS ) + bucketOf( nanos ) );
+	}
+	
+	/**
+	 * Sums the stripes into the given array (of length <code>BUCKETS</code>).
+	 */
+	public void snapshot( long[] counts )
+	{
+		for( int i = 0; i < BUCKETS; i++ )
+			counts[i] = 0;
+		for( int base = 0; base < this._counts.length(); base += BUCKETS )
+		{
+			for( int i = 0; i < BUCKETS; i++ )
+				counts[i] += this._counts.get( base + i );
+		}
+	}
+	
+	public long[] snapshot()
+	{
+		long[] counts = new long[BUCKETS];
+		this.snapshot( counts );
+		return counts;
+	}
+	
+	public static int bucketOf( long nanos )
+	{
+		return LAYOUT.bucketOf( nanos );
+	}
+	
+	/**
+	 * Returns the midpoint of the values that map to a bucket.
+	 */
+	public static long valueOf( int bucket )
+	{
+		return LAYOUT.valueOf( bucket );
+	}
+	
+	public static long totalCount( long[] counts )
+	{
+		long total = 0;
+		for( int i = 0; i < counts.length; i++ )
+			total += counts[i];
+		return total;
+	}
+	
+	/**
+	 * Returns the given percentile (0-100) of the bucket counts, or 0 if
+	 * there are no counts.
+	 */
+	public static long getPercentile( long[] counts, double pct )
+	{
+		return LAYOUT.getPercentile( counts, totalCount( counts ), pct );
+	}
+}
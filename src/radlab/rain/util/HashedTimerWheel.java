@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The HashedTimerWheel class is a single thread that keeps track of wakeups
+ * for any number of other threads (or tasks). Timeouts are hashed into a
+ * circular array of buckets by their tick, so registering a timeout is O(1)
+ * and each tick only looks at one bucket. Threads waiting on the wheel park
+ * without a timeout and are unparked by the wheel thread at the first tick
+ * past their deadline.<br />
+ * <br />
+ * Ticks can be well under a millisecond. To wake up even closer to the
+ * deadline a spin time can be set: sleepers are woken that much early and
+ * spin (yielding) through the final stretch.
+ */
+public class HashedTimerWheel extends Thread 
+{
+	public static long DEFAULT_TICK_NANOS	= 1000000; // 1 ms
+	public static long DEFAULT_SPIN_NANOS	= 0;
+	public static int DEFAULT_WHEEL_SIZE	= 512;
+	
+	/** Slack added to a sleeper's own park timeout in case the wheel stops. */
+	private static long PARK_SLACK_NANOS	= 100000000; // 100 ms
+	
+	private final long _tickNanos;
+	private final long _spinNanos;
+	private final int _mask;
+	private final Timeout[] _buckets;
+	
+	/** Timeouts registered since the last tick; only the wheel thread touches the buckets. */
+	private ConcurrentLinkedQueue<Timeout> _pending = new ConcurrentLinkedQueue<Timeout>();
+	
+	private volatile boolean _done = false;
+	private long _startTime = 0;
+	private long _tick = 0;
+	
+	/** Statistic: number of timeouts fired. */
+	private long _timeoutsFired = 0;
+	
+	public HashedTimerWheel()
+	{
+		this( DEFAULT_TICK_NANOS, DEFAULT_SPIN_NANOS, DEFAULT_WHEEL_SIZE );
+	}
+	
+	/**
+	 * Creates a new timer wheel, call <code>start</code> to start ticking.
+	 * 
+	 * @param tickNanos     Length of a tick in nanoseconds.
+	 * @param spinNanos     How long before its deadline a sleeper starts spinning.
+	 * @param wheelSize     Number of buckets (rounded up to a power of 2).
+	 */
+	public HashedTimerWheel( long tickNanos, long spinNanos, int wheelSize )
+	{
+		if( tickNanos <= 0 )
+			throw new IllegalArgumentException( "Tick must be positive: " + tickNanos );
+		
+		this._tickNanos = tickNanos;
+		this._spinNanos = Math.max( 0, spinNanos );
+		
+		int buckets = 1;
+		while( buckets < wheelSize )
+			buckets <<= 1;
+		this._buckets = new Timeout[buckets];
+		this._mask = buckets - 1;
+		
+		this.setName( "TimerWheel" );
+		this.setDaemon( true );
+	}
+	
+	public long getTickNanos() { return this._tickNanos; }
+	public long getSpinNanos() { return this._spinNanos; }
+	public long getTimeoutsFired() { return this._timeoutsFired; }
+	
+	/**
+	 * Sleeps the calling thread until the given time.
+	 * 
+	 * @param deadline      The time to wake up (as given by System.nanoTime()).
+	 * @return              The scheduling lateness, i.e., how long after the deadline (in nanos) we woke up.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public long sleepUntil( long deadline ) throws InterruptedException
+	{
+		long parkUntil = deadline - this._spinNanos;
+		long now = System.nanoTime();
+		if( parkUntil - now > 0 )
+		{
+			if( !this._done )
+			{
+				Timeout timeout = new Timeout( parkUntil, Thread.currentThread(), null );
+				this._pending.add( timeout );
+				while( !timeout._fired )
+				{
+					long remaining = parkUntil - System.nanoTime();
+					if( this._done )
+					{
+						// The wheel stopped, we're on our own
+						if( remaining <= 0 )
+							break;
+						LockSupport.parkNanos( this, remaining );
+					}
+					// The wheel should unpark us; the timeout is only a safety net
+					else LockSupport.parkNanos( this, Math.max( remaining, 0 ) + PARK_SLACK_NANOS );
+					
+					if( Thread.interrupted() )
+						throw new InterruptedException();
+				}
+			}
+			else
+			{
+				long remaining = parkUntil - now;
+				Thread.sleep( remaining / 1000000, (int) ( remaining % 1000000 ) );
+			}
+		}
+		
+		// Spin through the final stretch
+		while( deadline - System.nanoTime() > 0 )
+			Thread.yield();
+		
+		return System.nanoTime() - deadline;
+	}
+	
+	/**
+	 * Runs a task on the wheel thread at the first tick past the given time.
+	 * Tasks should only hand work off to other threads.
+	 * 
+	 * @param task          The task to run.
+	 * @param deadline      The time to run it (as given by System.nanoTime()).
+	 */
+	public void schedule( Runnable task, long deadline )
+	{
+		this._pending.add( new Timeout( deadline, null, task ) );
+	}
+	
+	/** Stops ticking; pending sleepers fall back to their own park timeouts. */
+	public void stopWheel()
+	{
+		this._done = true;
+		LockSupport.unpark( this );
+	}
+	
+	public void run()
+	{
+		this._startTime = System.nanoTime();
+		while( !this._done )
+		{
+			long tickDeadline = this._startTime + ( this._tick + 1 ) * this._tickNanos;
+			long sleepTime = tickDeadline - System.nanoTime();
+			while( sleepTime > 0 && !this._done )
+			{
+				LockSupport.parkNanos( this, sleepTime );
+				sleepTime = tickDeadline - System.nanoTime();
+			}
+			
+			this.transferPendingTimeouts();
+			this.expireTimeouts( (int) ( this._tick & this._mask ) );
+			this._tick++;
+		}
+		
+		// Wake everyone still waiting so nobody depends on the park slack
+		this.transferPendingTimeouts();
+		for( int i = 0; i < this._buckets.length; i++ )
+		{
+			Timeout timeout = this._buckets[i];
+			this._buckets[i] = null;
+			for( ; timeout != null; timeout = timeout._next )
+			{
+				if( timeout._waiter != null )
+					timeout.fire();
+			}
+		}
+	}
+	
+	private void transferPendingTimeouts()
+	{
+		Timeout timeout = null;
+		while( ( timeout = this._pending.poll() ) != null )
+		{
+			long calculated = ( timeout._deadline - this._startTime ) / this._tickNanos;
+			if( timeout._deadline - this._startTime < 0 )
+				calculated = 0;
+			timeout._remainingRounds = ( calculated - this._tick ) / this._buckets.length;
+			
+			// Anything already due goes in the current bucket
+			long ticks = Math.max( calculated, this._tick );
+			int index = (int) ( ticks & this._mask );
+			timeout._next = this._buckets[index];
+			this._buckets[index] = timeout;
+		}
+	}
+	
+	private void expireTimeouts( int index )
+	{
+		Timeout previous = null;
+		Timeout timeout = this._buckets[index];
+		while( timeout != null )
+		{
+			Timeout next = timeout._next;
+			if( timeout._remainingRounds <= 0 )
+			{
+				// Unlink and fire
+				if( previous == null )
+					this._buckets[index] = next;
+				else previous._next = next;
+				
+				timeout.fire();
+				this._timeoutsFired++;
+			}
+			else
+			{
+				timeout._remainingRounds--;
+				previous = timeout;
+			}
+			timeout = next;
+		}
+	}
+	
+	private static class Timeout
+	{
+		private final long _deadline;
+		private final Thread _waiter;
+		private final Runnable _task;
+		private long _remainingRounds = 0;
+		private Timeout _next = null;
+		private volatile boolean _fired = false;
+		
+		public Timeout( long deadline, Thread waiter, Runnable task )
+		{
+			this._deadline = deadline;
+			this._waiter = waiter;
+			this._task = task;
+		}
+		
+		public void fire()
+		{
+			this._fired = true;
+			if( this._waiter != null )
+			{
+				LockSupport.unpark( this._waiter );
+			}
+			else
+			{
+				try
+				{
+					this._task.run();
+				}
+				catch( Exception e )
+				{
+					System.out.println( "[TimerWheel] Timeout task failed. Reason: " + e.toString() );
+				}
+			}
+		}
+	}
+}
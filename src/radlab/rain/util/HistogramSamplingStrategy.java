@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util;
+
+import java.io.Serializable;
+import java.util.LinkedList;
+
+/**
+ * The HistogramSamplingStrategy class keeps every observation in a fixed-size,
+ * log-linear bucket array (in the style of HdrHistogram) instead of keeping a
+ * sample of the raw observations. Values are grouped into power-of-2 buckets,
+ * each split into linear sub-buckets, so the relative error of any reported
+ * percentile is bounded by the configured number of significant digits.<br />
+ * <br />
+ * Recording is O(1) and allocation free, percentiles are computed by a single
+ * pass over the counts, and two histograms with the same precision and max
+ * value merge without any loss.<br />
+ * <br />
+ * Histograms are serializable so merged scorecards can be shipped between
+ * an agent and a coordinator without losing any observations.
+ */
+public class HistogramSamplingStrategy implements ISamplingStrategy, Serializable 
+{
+	private static final long serialVersionUID = 1L;
+	
+	public static final int DEFAULT_SIGNIFICANT_DIGITS	= 2;
+	public static final long DEFAULT_MAX_VALUE			= 3600L * 1000000000L; // One hour in nanos
+	
+	private final int _significantDigits;
+	private final long _maxValue;
+	
+	// Layout of the counts array
+	private final int _subBucketHalfCountMagnitude;
+	private final int _subBucketHalfCount;
+	private final long _subBucketMask;
+	private final long[] _counts;
+	
+	private long _totalCount = 0;
+	private long _clampedCount = 0; // Observations outside [0, maxValue]
+	private long _minValue = Long.MAX_VALUE;
+	private long _maxObserved = 0;
+	private double _sum = 0.0;
+	private double _sumOfSquares = 0.0;
+	
+	public HistogramSamplingStrategy()
+	{
+		this( DEFAULT_SIGNIFICANT_DIGITS, DEFAULT_MAX_VALUE );
+	}
+	
+	/**
+	 * Creates a new histogram.
+	 * 
+	 * @param significantDigits     Number of significant decimal digits kept for each value (1-5).
+	 * @param maxValue              Largest value that can be recorded; larger values are clamped.
+	 */
+	public HistogramSamplingStrategy( int significantDigits, long maxValue )
+	{
+		if( significantDigits < 1 || significantDigits > 5 )
+			throw new IllegalArgumentException( "Significant digits must be between 1 and 5: " + significantDigits );
+		if( maxValue < 2 )
+			throw new IllegalArgumentException( "Max value must be at least 2: " + maxValue );
+		
+		this._significantDigits = significantDigits;
+		this._maxValue = maxValue;
+		
+		// Enough linear sub-buckets to tell apart values that differ in the
+		// last significant digit
+		long largestSingleUnitResolution = 2 * (long) Math.pow( 10, significantDigits );
+		int subBucketCountMagnitude = (int) Math.ceil( Math.log( largestSingleUnitResolution ) / Math.log( 2 ) );
+		this._subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+		int subBucketCount = 1 << subBucketCountMagnitude;
+		this._subBucketHalfCount = subBucketCount / 2;
+		this._subBucketMask = subBucketCount - 1;
+		
+		// Enough power-of-2 buckets to cover maxValue
+		long smallestUntrackableValue = subBucketCount;
+		int bucketCount = 1;
+		while( smallestUntrackableValue <= maxValue )
+		{
+			if( smallestUntrackableValue > Long.MAX_VALUE / 2 )
+			{
+				bucketCount++;
+				break;
+			}
+			smallestUntrackableValue <<= 1;
+			bucketCount++;
+		}
+		this._counts = new long[( bucketCount + 1 ) * this._subBucketHalfCount];
+	}
+	
+	public int getSignificantDigits() { return this._significantDigits; }
+	public long getMaxValue() { return this._maxValue; }
+	public long getTotalCount() { return this._totalCount; }
+	public long getClampedCount() { return this._clampedCount; }
+	public long getMinObserved() { return this._totalCount == 0 ? 0 : this._minValue; }
+	public long getMaxObserved() { return this._maxObserved; }
+	
+	/**
+	 * Returns a new, empty histogram with the same precision and max value,
+	 * i.e., one that this histogram can be merged into without loss.
+	 */
+	public HistogramSamplingStrategy createEmptyCopy()
+	{
+		return new HistogramSamplingStrategy( this._significantDigits, this._maxValue );
+	}
+	
+	private int countsIndexFor( long value )
+	{
+		int bucketIndex = 63 - Long.numberOfLeadingZeros( value | this._subBucketMask ) - this._subBucketHalfCountMagnitude;
+		int subBucketIndex = (int) ( value >>> bucketIndex );
+		return ( bucketIndex << this._subBucketHalfCountMagnitude ) + subBucketIndex;
+	}
+	
+	private long valueFromIndex( int index )
+	{
+		int bucketIndex = ( index >> this._subBucketHalfCountMagnitude ) - 1;
+		int subBucketIndex = ( index & ( this._subBucketHalfCount - 1 ) ) + this._subBucketHalfCount;
+		if( bucketIndex < 0 )
+		{
+			subBucketIndex -= this._subBucketHalfCount;
+			bucketIndex = 0;
+		}
+		return (long) subBucketIndex << bucketIndex;
+	}
+	
+	/** Returns the largest value that lands in the same bucket as the value at the given index. */
+	private long highestEquivalentValue( int index )
+	{
+		int bucketIndex = Math.max( 0, ( index >> this._subBucketHalfCountMagnitude ) - 1 );
+		return this.valueFromIndex( index ) + ( 1L << bucketIndex ) - 1;
+	}
+	
+	/**
+	 * Records a value a number of times.
+	 * 
+	 * @param value     The value to record.
+	 * @param count     The number of times to record it.
+	 */
+	public void recordValue( long value, long count )
+	{
+		if( count <= 0 )
+			return;
+		
+		long clamped = value;
+		if( value < 0 )
+			clamped = 0;
+		else if( value > this._maxValue )
+			clamped = this._maxValue;
+		if( clamped != value )
+			this._clampedCount += count;
+		
+		this._counts[this.countsIndexFor( clamped )] += count;
+		this._totalCount += count;
+		this._sum += (double) value * count;
+		this._sumOfSquares += (double) value * (double) value * count;
+		if( value < this._minValue )
+			this._minValue = value;
+		if( value > this._maxObserved )
+			this._maxObserved = value;
+	}
+	
+	/**
+	 * Returns the value at the given percentile, e.g., 99.9.
+	 * 
+	 * @param pct   The percentile (0-100).
+	 * @return      The highest value equivalent (within precision) to the value at that percentile.
+	 */
+	public long getPercentile( double pct )
+	{
+		if( this._totalCount == 0 )
+			return 0;
+		
+		double percentile = Math.min( Math.max( pct, 0.0 ), 100.0 );
+		long countAtPercentile = (long) Math.ceil( ( percentile / 100.0 ) * this._totalCount );
+		if( countAtPercentile < 1 )
+			countAtPercentile = 1;
+		
+		long runningCount = 0;
+		for( int i = 0; i < this._counts.length; i++ )
+		{
+			runningCount += this._counts[i];
+			if( runningCount >= countAtPercentile )
+				return Math.min( this.highestEquivalentValue( i ), this._maxObserved );
+		}
+		return this._maxObserved;
+	}
+	
+	/**
+	 * Adds the counts of another histogram to this one. Histograms with the
+	 * same precision and max value merge without loss; otherwise each of the
+	 * other histogram's buckets is re-recorded at its value.
+	 * 
+	 * @param rhs   The histogram to merge into this one.
+	 */
+	public void merge( HistogramSamplingStrategy rhs )
+	{
+		if( rhs._totalCount == 0 )
+			return;
+		
+		if( rhs._counts.length == this._counts.length && rhs._subBucketHalfCountMagnitude == this._subBucketHalfCountMagnitude )
+		{
+			for( int i = 0; i < this._counts.length; i++ )
+				this._counts[i] += rhs._counts[i];
+			this._totalCount += rhs._totalCount;
+			this._clampedCount += rhs._clampedCount;
+			this._sum += rhs._sum;
+			this._sumOfSquares += rhs._sumOfSquares;
+			this._minValue = Math.min( this._minValue, rhs._minValue );
+			this._maxObserved = Math.max( this._maxObserved, rhs._maxObserved );
+		}
+		else
+		{
+			for( int i = 0; i < rhs._counts.length; i++ )
+			{
+				if( rhs._counts[i] > 0 )
+					this.recordValue( rhs.valueFromIndex( i ), rhs._counts[i] );
+			}
+		}
+	}
+	
+	@Override
+	public boolean accept( long observation ) 
+	{
+		this.recordValue( observation, 1 );
+		return true;
+	}
+
+	@Override
+	public double getMeanSamplingInterval() 
+	{
+		return 0; // Every observation is recorded, so there is no sampling interval
+	}
+
+	@Override
+	public void setMeanSamplingInterval( double val ) 
+	{
+		// Empty by design (every observation is recorded)
+	}
+
+	@Override
+	public long getNthPercentile( int pct ) 
+	{
+		return this.getPercentile( pct );
+	}
+
+	@Override
+	public double getSampleMean() 
+	{
+		if( this._totalCount == 0 )
+			return 0.0;
+		return this._sum / (double) this._totalCount;
+	}
+
+	@Override
+	public double getSampleStandardDeviation() 
+	{
+		if( this._totalCount < 2 )
+			return 0.0;
+		
+		double mean = this.getSampleMean();
+		double variance = ( this._sumOfSquares - ( this._totalCount * mean * mean ) ) / (double) ( this._totalCount - 1 );
+		return Math.sqrt( Math.max( variance, 0.0 ) );
+	}
+
+	@Override
+	public double getTvalue( double populationMean ) 
+	{
+		if( this._totalCount < 2 )
+			return 0.0;
+		
+		return ( this.getSampleMean() - populationMean ) / ( this.getSampleStandardDeviation()/Math.sqrt( this._totalCount ) );
+	}
+
+	@Override
+	public int getSamplesCollected() 
+	{
+		return (int) Math.min( this._totalCount, Integer.MAX_VALUE );
+	}
+
+	@Override
+	public int getSamplesSeen() 
+	{
+		return (int) Math.min( this._totalCount, Integer.MAX_VALUE );
+	}
+
+	/**
+	 * The histogram does not keep raw observations, use <code>merge</code>
+	 * to combine histograms.
+	 * 
+	 * @return  An empty list.
+	 */
+	@Override
+	public LinkedList<Long> getRawSamples() 
+	{
+		return new LinkedList<Long>();
+	}
+
+	@Override
+	public void reset() 
+	{
+		java.util.Arrays.fill( this._counts, 0 );
+		this._totalCount = 0;
+		this._clampedCount = 0;
+		this._minValue = Long.MAX_VALUE;
+		this._maxObserved = 0;
+		this._sum = 0.0;
+		this._sumOfSquares = 0.0;
+	}
+}
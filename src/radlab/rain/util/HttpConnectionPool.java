@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpResponse;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * The HttpConnectionPool class is a connection manager shared by all the
+ * HttpTransports of a track. Every user still gets its own HTTP client (and
+ * with it its own cookies and session), only the connections (and their SSL
+ * handshakes) are pooled and kept alive across users.<br />
+ * <br />
+ * A background thread evicts expired and idle connections and samples the
+ * pool occupancy; the time requests spend waiting to lease a connection is
+ * measured on every lease.
+ */
+public class HttpConnectionPool 
+{
+	public static int DEFAULT_MAX_CONNECTIONS 				= 200;
+	public static int DEFAULT_MAX_CONNECTIONS_PER_ROUTE 	= 200;
+	public static long DEFAULT_IDLE_TIMEOUT_MSECS			= 30000;
+	public static long DEFAULT_KEEP_ALIVE_MSECS				= 30000;
+	public static long SAMPLE_INTERVAL_MSECS				= 1000;
+	
+	/** Connection manager that times how long each lease waits for a connection. */
+	private class TimedConnectionManager extends PoolingHttpClientConnectionManager
+	{
+		public TimedConnectionManager( Registry<ConnectionSocketFactory> socketFactoryRegistry )
+		{
+			super( socketFactoryRegistry );
+		}
+		
+		@Override
+		public ConnectionRequest requestConnection( HttpRoute route, Object state ) 
+		{
+			final ConnectionRequest request = super.requestConnection( route, state );
+			return new ConnectionRequest()
+			{
+				public HttpClientConnection get( long timeout, TimeUnit tunit ) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException
+				{
+					long start = System.nanoTime();
+					try
+					{
+						return request.get( timeout, tunit );
+					}
+					finally
+					{
+						HttpConnectionPool.this.recordLease( System.nanoTime() - start );
+					}
+				}
+				
+				public boolean cancel()
+				{
+					return request.cancel();
+				}
+			};
+		}
+	}
+	
+	private TimedConnectionManager _connectionManager;
+	private ConnectionKeepAliveStrategy _keepAliveStrategy;
+	private long _idleTimeout;
+	private long _keepAlive;
+	private Thread _evictor;
+	private volatile boolean _done = false;
+	
+	// Lease statistics
+	private AtomicLong _leases 				= new AtomicLong( 0 );
+	private AtomicLong _totalLeaseWaitNanos = new AtomicLong( 0 );
+	private AtomicLong _maxLeaseWaitNanos 	= new AtomicLong( 0 );
+	
+	// Occupancy statistics (sampled by the evictor)
+	private long _occupancySamples 			= 0;
+	private long _totalLeased 				= 0;
+	private long _maxLeased 				= 0;
+	private long _totalPending 				= 0;
+	private long _maxPending 				= 0;
+	
+	/**
+	 * Creates a connection pool.
+	 * 
+	 * @param maxConnections            Maximum number of open connections.
+	 * @param maxConnectionsPerRoute    Maximum number of open connections to the same host/port.
+	 * @param idleTimeout               Time (in milliseconds) after which idle connections are closed; 0 to keep them open.
+	 * @param keepAlive                 Time (in milliseconds) to keep connections alive when the server does not say; 0 to keep them alive indefinitely.
+	 */
+	public HttpConnectionPool( int maxConnections, int maxConnectionsPerRoute, long idleTimeout, long keepAlive )
+	{
+		RegistryBuilder<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create();
+		socketFactories.register( "http", PlainConnectionSocketFactory.getSocketFactory() );
+		try
+		{
+			// Same trust-everything SSL setup as the per-user clients, done once
+			socketFactories.register( "https", new SSLConnectionSocketFactory( HttpTransport.createTrustAllContext(), NoopHostnameVerifier.INSTANCE ) );
+		}
+		catch( Exception e )
+		{
+			System.out.println( this + " Error setting up SSL. Reason: " + e.toString() );
+			socketFactories.register( "https", SSLConnectionSocketFactory.getSocketFactory() );
+		}
+		
+		this._connectionManager = new TimedConnectionManager( socketFactories.build() );
+		this._connectionManager.setMaxTotal( maxConnections );
+		this._connectionManager.setDefaultMaxPerRoute( maxConnectionsPerRoute );
+		this._idleTimeout = idleTimeout;
+		this._keepAlive = keepAlive;
+		
+		this._keepAliveStrategy = new DefaultConnectionKeepAliveStrategy()
+		{
+			@Override
+			public long getKeepAliveDuration( HttpResponse response, HttpContext context ) 
+			{
+				// Honor the server's Keep-Alive header, otherwise use ours
+				long duration = super.getKeepAliveDuration( response, context );
+				if( duration <= 0 && HttpConnectionPool.this._keepAlive > 0 )
+					return HttpConnectionPool.this._keepAlive;
+				return duration;
+			}
+		};
+		
+		this._evictor = new Thread( this + " evictor" )
+		{
+			public void run()
+			{
+				HttpConnectionPool.this.evictLoop();
+			}
+		};
+		this._evictor.setDaemon( true );
+		this._evictor.start();
+	}
+	
+	/**
+	 * Creates an HTTP client that leases its connections from this pool. The
+	 * client has its own cookie store, so sessions stay per-user. Closing the
+	 * client leaves the pool alone.
+	 * 
+	 * @return  A new HTTP client backed by this pool.
+	 */
+	public CloseableHttpClient createClient()
+	{
+		return HttpClients.custom()
+			.setConnectionManager( this._connectionManager )
+			.setConnectionManagerShared( true )
+			.setKeepAliveStrategy( this._keepAliveStrategy )
+			.build();
+	}
+	
+	private void recordLease( long waitNanos )
+	{
+		this._leases.incrementAndGet();
+		this._totalLeaseWaitNanos.addAndGet( waitNanos );
+		long max = this._maxLeaseWaitNanos.get();
+		while( waitNanos > max && !this._maxLeaseWaitNanos.compareAndSet( max, waitNanos ) )
+			max = this._maxLeaseWaitNanos.get();
+	}
+	
+	private void evictLoop()
+	{
+		while( !this._done )
+		{
+			try
+			{
+				Thread.sleep( SAMPLE_INTERVAL_MSECS );
+			}
+			catch( InterruptedException ie )
+			{
+				break;
+			}
+			
+			PoolStats stats = this._connectionManager.getTotalStats();
+			synchronized( this )
+			{
+				this._occupancySamples++;
+				this._totalLeased += stats.getLeased();
+				this._maxLeased = Math.max( this._maxLeased, stats.getLeased() );
+				this._totalPending += stats.getPending();
+				this._maxPending = Math.max( this._maxPending, stats.getPending() );
+			}
+			
+			this._connectionManager.closeExpiredConnections();
+			if( this._idleTimeout > 0 )
+				this._connectionManager.closeIdleConnections( this._idleTimeout, TimeUnit.MILLISECONDS );
+		}
+	}
+	
+	/**
+	 * Stops the evictor and closes all the pooled connections.
+	 */
+	public void shutdown()
+	{
+		this._done = true;
+		this._evictor.interrupt();
+		this._connectionManager.shutdown();
+	}
+	
+	public int getMaxConnections() { return this._connectionManager.getMaxTotal(); }
+	public int getMaxConnectionsPerRoute() { return this._connectionManager.getDefaultMaxPerRoute(); }
+	public long getIdleTimeout() { return this._idleTimeout; }
+	public long getKeepAlive() { return this._keepAlive; }
+	public PoolStats getCurrentStats() { return this._connectionManager.getTotalStats(); }
+	
+	public long getLeases() { return this._leases.get(); }
+	public long getTotalLeaseWaitNanos() { return this._totalLeaseWaitNanos.get(); }
+	public long getMaxLeaseWaitNanos() { return this._maxLeaseWaitNanos.get(); }
+	
+	public double getAverageLeaseWaitNanos()
+	{
+		long leases = this._leases.get();
+		if( leases == 0 )
+			return 0.0;
+		return (double) this._totalLeaseWaitNanos.get() / (double) leases;
+	}
+	
+	public synchronized double getAverageLeased()
+	{
+		if( this._occupancySamples == 0 )
+			return 0.0;
+		return (double) this._totalLeased / (double) this._occupancySamples;
+	}
+	
+	public synchronized long getMaxLeased() { return this._maxLeased; }
+	
+	public synchronized double getAveragePending()
+	{
+		if( this._occupancySamples == 0 )
+			return 0.0;
+		return (double) this._totalPending / (double) this._occupancySamples;
+	}
+	
+	public synchronized long getMaxPending() { return this._maxPending; }
+	
+	public String toString()
+	{
+		return "[HTTP CONNECTION POOL]";
+	}
+}
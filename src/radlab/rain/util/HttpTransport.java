@@ -40,6 +40,8 @@ import java.util.ArrayList;
 import java.net.URI;
 
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 
 import org.apache.http.Header;
@@ -49,10 +51,12 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.client.DefaultHttpClient;
 //import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 //import org.apache.http.params.BasicHttpParams;
@@ -89,6 +93,75 @@ import org.apache.http.conn.ssl.SSLSocketFactory;
  */
 public class HttpTransport 
 {
+	/** What the caller needs from a response body. */
+	public enum ResponseMode
+	{
+		/** Decode the body into the response buffer. */
+		MATERIALIZE,
+		/** Read and throw away the body, only counting its bytes. */
+		DISCARD,
+		/** Match a set of tokens as the body streams by, without keeping it. */
+		SCAN
+	}
+	
+	/** Size of the buffer responses are drained/scanned through. */
+	public static int STREAM_BUFFER_SIZE = 16384;
+	
+	/** Per-thread streaming state: the reusable read buffer and a count of the bytes received. */
+	private static class StreamState
+	{
+		private byte[] _buffer = new byte[STREAM_BUFFER_SIZE];
+		private long _bytesReceived = 0;
+	}
+	
+	private static ThreadLocal<StreamState> streamState = new ThreadLocal<StreamState>()
+	{
+		protected StreamState initialValue()
+		{
+			return new StreamState();
+		}
+	};
+	
+	/** Counts the bytes read through it into the thread's stream state. */
+	private static class CountingInputStream extends FilterInputStream
+	{
+		private StreamState _state;
+		
+		public CountingInputStream( InputStream in, StreamState state )
+		{
+			super( in );
+			this._state = state;
+		}
+		
+		public int read() throws IOException
+		{
+			int b = super.read();
+			if( b != -1 )
+				this._state._bytesReceived++;
+			return b;
+		}
+		
+		public int read( byte[] b, int off, int len ) throws IOException
+		{
+			int n = super.read( b, off, len );
+			if( n > 0 )
+				this._state._bytesReceived += n;
+			return n;
+		}
+	}
+	
+	/**
+	 * Returns the number of response bytes received by HttpTransports on the
+	 * calling thread so far. Operations take the difference before and after
+	 * executing to find how many bytes they received.
+	 * 
+	 * @return  Bytes received on this thread.
+	 */
+	public static long getBytesReceivedByCurrentThread()
+	{
+		return streamState.get()._bytesReceived;
+	}
+	
 	/** Default HTTP headers required for a POST request. */
 	private static Map<String, String> postHeaders;
 	static 
@@ -100,6 +173,12 @@ public class HttpTransport
 	/** The HTTP client used to make requests. */
 	private HttpClient _httpClient;
 	
+	/** The shared pool the HTTP client leases connections from (null if the client has its own). */
+	private HttpConnectionPool _connectionPool = null;
+	
+	/** Context carrying the request settings to a pooled HTTP client (null if the client has its own). */
+	private HttpClientContext _context = null;
+	
 	/** Contents of the response of the last HTTP request executed. */
 	private StringBuilder _responseBuffer = new StringBuilder();
 	
@@ -297,7 +376,8 @@ public class HttpTransport
 		
 		if( entity != null )
 		{
-			BufferedReader reader = new BufferedReader( new InputStreamReader( entity.getContent() ) );
+			InputStream content = new CountingInputStream( entity.getContent(), streamState.get() );
+			BufferedReader reader = new BufferedReader( new InputStreamReader( content ) );
 			// Copy the response into the buffer one line at a time.
 			try 
 			{
@@ -323,6 +403,47 @@ public class HttpTransport
 		}
 	}
 	
+	/**
+	 * Reads the body of the given response through a reusable buffer without
+	 * decoding or keeping it, optionally feeding it to a scanner.
+	 * 
+	 * @param entity    The HTTP response entity to read.
+	 * @param scanner   The scanner to feed the body to; null to just discard it.
+	 * @return          The number of bytes read.
+	 * 
+	 * @throws IOException
+	 */
+	public static long streamResponse( HttpEntity entity, ResponseScanner scanner ) throws IOException
+	{
+		if( scanner != null )
+			scanner.reset();
+		
+		if( entity == null )
+			return 0;
+		
+		StreamState state = streamState.get();
+		byte[] buffer = state._buffer;
+		long bytesRead = 0;
+		InputStream content = entity.getContent();
+		try
+		{
+			int n = content.read( buffer );
+			while( n != -1 )
+			{
+				bytesRead += n;
+				if( scanner != null )
+					scanner.update( buffer, 0, n );
+				n = content.read( buffer );
+			}
+		}
+		finally
+		{
+			content.close();
+			state._bytesReceived += bytesRead;
+		}
+		return bytesRead;
+	}
+	
 	/**
 	 * Sets the headers of an HTTP request necessary to execute. 
 	 * 
@@ -396,8 +517,56 @@ public class HttpTransport
 		*/
 		
 		// Single-threaded (100% closed loop) operation
-		this._httpClient = wrapClient( new DefaultHttpClient() );
+		this._httpClient = createDefaultClient();
+		
+	}
+	
+	/**
+	 * Creates an HttpTransport whose HTTP client leases its connections from
+	 * a shared pool. The client (and its cookies) still belong to this
+	 * transport alone.
+	 * 
+	 * @param connectionPool    The shared pool; null to use a client of our own.
+	 */
+	public HttpTransport( HttpConnectionPool connectionPool )
+	{
+		this._connectionPool = connectionPool;
+		if( connectionPool == null )
+			this._httpClient = createDefaultClient();
+		else
+		{
+			this._httpClient = connectionPool.createClient();
+			this._context = HttpClientContext.create();
+		}
+	}
+	
+	private static HttpClient createDefaultClient()
+	{
+		return wrapClient( new DefaultHttpClient() );
+	}
+	
+	/**
+	 * Creates an SSL context that skips the checks for expired or
+	 * self-signed certificates.
+	 * 
+	 * @return  The SSL context.
+	 * 
+	 * @throws Exception
+	 */
+	public static SSLContext createTrustAllContext() throws Exception
+	{
+		SSLContext ctx = SSLContext.getInstance("TLS");
+		// Create a trust manager that skips all the certificate checks
+		X509TrustManager tm = new X509TrustManager() 
+		{
+			public void checkClientTrusted(X509Certificate[] xcs, String string) throws CertificateException {}
+			public void checkServerTrusted(X509Certificate[] xcs, String string) throws CertificateException {}
+			public X509Certificate[] getAcceptedIssuers() { return null; }
+		};
 		
+		// Initialize our SSLContext with the custom do-nothing trust manager
+		ctx.init( null, new TrustManager[]{tm}, null );
+		return ctx;
 	}
 	
 	// Allow the apache http client to skip checks (and avoid throwing exceptions) for expired or self-signed certificates
@@ -406,18 +575,7 @@ public class HttpTransport
 	{
 	    try
 	    {
-	        SSLContext ctx = SSLContext.getInstance("TLS");
-	        // Create a trust manager that skips all the certificate checks
-	        X509TrustManager tm = new X509TrustManager() 
-	        {
-	            public void checkClientTrusted(X509Certificate[] xcs, String string) throws CertificateException {}
-	            public void checkServerTrusted(X509Certificate[] xcs, String string) throws CertificateException {}
-	            public X509Certificate[] getAcceptedIssuers() { return null; }
-	        };
-	        
-	        // Initialize our SSLContext with the custom do-nothing trust manager
-	        ctx.init( null, new TrustManager[]{tm}, null );
-	        SSLSocketFactory ssf = new SSLSocketFactory( ctx, SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER );	        
+	        SSLSocketFactory ssf = new SSLSocketFactory( createTrustAllContext(), SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER );	        
 	        //ssf.setHostnameVerifier( SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER ); [deprecated]
 	        ClientConnectionManager ccm = base.getConnectionManager();
 	        SchemeRegistry sr = ccm.getSchemeRegistry();
@@ -440,6 +598,17 @@ public class HttpTransport
 	 */
 	private void configureHttpClient()
 	{
+		// Pooled clients take their settings with each request
+		if( this._context != null )
+		{
+			this._context.setRequestConfig( RequestConfig.custom()
+				.setRedirectsEnabled( !this._followRedirects )
+				.setConnectTimeout( this._connectTimeout )
+				.setSocketTimeout( this._socketIdleTimeout )
+				.build() );
+			return;
+		}
+		
 		HttpParams params = this._httpClient.getParams();
 		
 		// Specify whether the Apache htto client should follow redirects automatically.
@@ -612,6 +781,93 @@ public class HttpTransport
 	 * @throws IOException
 	 */
 	public StringBuilder fetch( HttpUriRequest httpRequest ) throws IOException
+	{
+		this.fetch( httpRequest, ResponseMode.MATERIALIZE, null );
+		return this._responseBuffer;
+	}
+	
+	/**
+	 * Executes the given URL as an HTTP GET request and discards the
+	 * response, e.g., to emulate a browser loading images and static files.
+	 * The response buffer keeps the last materialized response.
+	 * 
+	 * @param url   The URL of the request.
+	 * @return      The number of bytes in the response body.
+	 * 
+	 * @throws IOException
+	 */
+	public long drainUrl( String url ) throws IOException
+	{
+		return this.drainUrl( url, (Map<String, String>) null );
+	}
+	
+	/**
+	 * Executes the given URL as an HTTP GET request with the given headers
+	 * and discards the response.
+	 * 
+	 * @param url       The URL of the request.
+	 * @param headers   The headers to add to the request.
+	 * @return          The number of bytes in the response body.
+	 * 
+	 * @throws IOException
+	 */
+	public long drainUrl( String url, Map<String, String> headers ) throws IOException
+	{
+		HttpGet httpGet = new HttpGet( url );
+		if( headers != null )
+			HttpTransport.setHeaders( httpGet, headers );
+		return this.fetch( httpGet, ResponseMode.DISCARD, null );
+	}
+	
+	/**
+	 * Executes the given URL as an HTTP GET request and looks for the
+	 * scanner's tokens in the response without keeping it. Check the scanner
+	 * for the tokens found.
+	 * 
+	 * @param url       The URL of the request.
+	 * @param scanner   The scanner holding the tokens to look for.
+	 * @return          The number of bytes in the response body.
+	 * 
+	 * @throws IOException
+	 */
+	public long scanUrl( String url, ResponseScanner scanner ) throws IOException
+	{
+		return this.scanUrl( url, (Map<String, String>) null, scanner );
+	}
+	
+	/**
+	 * Executes the given URL as an HTTP GET request with the given headers
+	 * and looks for the scanner's tokens in the response.
+	 * 
+	 * @param url       The URL of the request.
+	 * @param headers   The headers to add to the request.
+	 * @param scanner   The scanner holding the tokens to look for.
+	 * @return          The number of bytes in the response body.
+	 * 
+	 * @throws IOException
+	 */
+	public long scanUrl( String url, Map<String, String> headers, ResponseScanner scanner ) throws IOException
+	{
+		HttpGet httpGet = new HttpGet( url );
+		if( headers != null )
+			HttpTransport.setHeaders( httpGet, headers );
+		return this.fetch( httpGet, ResponseMode.SCAN, scanner );
+	}
+	
+	/**
+	 * Executes a generic HTTP request and handles the response body the way
+	 * the caller asks for. Assumes that all headers and entities are already
+	 * set on the HTTP request. Only <code>MATERIALIZE</code> replaces the
+	 * contents of the response buffer.
+	 * 
+	 * @param httpRequest   The HTTP request to execute.
+	 * @param mode          What to do with the response body.
+	 * @param scanner       The scanner to feed the body to in <code>SCAN</code> mode.
+	 * @return              The number of bytes in the response body (characters when materialized).
+	 * 
+	 * @throws IOException
+	 */
+	public long fetch( HttpUriRequest httpRequest, ResponseMode mode, ResponseScanner scanner ) throws IOException
 	{
 		// Update the HTTP client configuration.
 		this.configureHttpClient();
@@ -621,7 +877,7 @@ public class HttpTransport
 		
 		long start = System.currentTimeMillis();
 		// Execute the HTTP request and get the response entity.
-		HttpResponse response = this._httpClient.execute( httpRequest );
+		HttpResponse response = this.execute( httpRequest );
 		long end = System.currentTimeMillis();
 		
 		if( this._debug )
@@ -690,7 +946,7 @@ public class HttpTransport
 						// Save the redirect URL
 						this._finalUrl = locationHeaders[0].getValue();
 						
-						response = this._httpClient.execute( httpRequest );
+						response = this.execute( httpRequest );
 						entity = response.getEntity();
 						
 						this._statusCode = response.getStatusLine().getStatusCode();
@@ -712,9 +968,17 @@ public class HttpTransport
 		
 		
 		// Read the final response of the request.
+		long length = 0;
 		try
 		{
-			HttpTransport.readResponseIntoBuffer( entity, this._responseBuffer );
+			if( mode == ResponseMode.MATERIALIZE )
+			{
+				HttpTransport.readResponseIntoBuffer( entity, this._responseBuffer );
+				length = this._responseBuffer.length();
+			}
+			else if( mode == ResponseMode.SCAN )
+				length = HttpTransport.streamResponse( entity, scanner );
+			else length = HttpTransport.streamResponse( entity, null );
 		}
 		catch( RuntimeException e )
 		{
@@ -727,14 +991,23 @@ public class HttpTransport
 			EntityUtils.consume( entity );
 		}
 		
-		return this._responseBuffer;
+		return length;
+	}
+	
+	private HttpResponse execute( HttpUriRequest httpRequest ) throws IOException
+	{
+		if( this._context != null )
+			return this._httpClient.execute( httpRequest, this._context );
+		return this._httpClient.execute( httpRequest );
 	}
 	
 	/**
-	 * Cleans up the HTTP client allocated for use by this HttpTransport.
+	 * Cleans up the HTTP client allocated for use by this HttpTransport. A
+	 * shared connection pool is left alone, its track shuts it down.
 	 */
 	public void dispose()
 	{
-		this._httpClient.getConnectionManager().shutdown();
+		if( this._connectionPool == null )
+			this._httpClient.getConnectionManager().shutdown();
 	}
 }
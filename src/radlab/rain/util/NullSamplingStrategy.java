@@ -31,10 +31,14 @@
 
 package radlab.rain.util;
 
+import java.io.Serializable;
 import java.util.LinkedList;
 
-public class NullSamplingStrategy implements ISamplingStrategy 
+// Serializable since scorecard snapshots (see ScorecardOutbox) are shipped to a coordinator with it
+public class NullSamplingStrategy implements ISamplingStrategy, Serializable 
 {
+	private static final long serialVersionUID = 1L;
+	
 	private LinkedList<Long> _samples = new LinkedList<Long>();
 	private int _currentSample = 0;
 	private long _sampleSum = 0;
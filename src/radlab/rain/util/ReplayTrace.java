@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * A pre-indexed binary request trace for replay, read through memory maps
+ * so any number of load generation threads can walk it without parsing or
+ * copying anything but the request they are about to send. Build one with
+ * ReplayTraceBuilder.<br />
+ * <br />
+ * The trace is split into shards by session (or by key) when it is built, so
+ * requests that belong together always go to the same user. Within the file
+ * the records are sorted by shard and then by time, each user replays the
+ * shards it owns (shard % users == user) and merges them by time.<br />
+ * <br />
+ * Layout (all numbers big endian):<br />
+ * <ul>
+ * <li>header: magic, version, shard key, shards, records, duration (usecs),
+ * start time (msecs), max request length, and the offsets of the sections below</li>
+ * <li>names: count, then each operation name as its UTF-8 length and bytes</li>
+ * <li>shard index: first record and number of records of each shard</li>
+ * <li>records: RECORD_BYTES each - offset from the start of the trace (usecs),
+ * request offset (into the data section), request length, operation name id,
+ * recorded latency (usecs), shard</li>
+ * <li>data: the requests (UTF-8)</li>
+ * </ul>
+ * Traces of commands (e.g. Redis) can hold each request as its list of
+ * arguments instead of a line of text, so arguments with whitespace or
+ * quotes in them come back exactly as recorded: a '*' followed by every
+ * argument as its length (in chars), a ':' and the argument itself.
+ */
+public class ReplayTrace 
+{
+	public static final int MAGIC				= 0x5252504C; // "RRPL"
+	public static final short VERSION			= 1;
+	public static final short SHARD_BY_SESSION	= 0;
+	public static final short SHARD_BY_KEY		= 1;
+	public static final int HEADER_BYTES		= 80;
+	public static final int RECORD_BYTES		= 32;
+	public static final String FILE_SUFFIX		= ".rrt";
+	public static final char COMMAND_MARKER		= '*';
+	
+	/** Sections are mapped in segments of (about) this size, a mapping can't exceed 2GB. */
+	public static long SEGMENT_BYTES			= 1L << 30;
+	
+	/** A request of the trace. Cursors reuse their entry for every request. */
+	public static class Entry
+	{
+		public long _offsetMicros			= 0; // From the start of the trace (plus the loops so far)
+		public int _operationId				= 0;
+		public String _operationName		= "";
+		public String _request				= "";
+		public long _recordedLatencyMicros	= 0;
+		public int _shard					= 0;
+		public int _loop					= 0;
+	}
+	
+	/**
+	 * Walks the shards of one user in time order. Not thread safe, every
+	 * user has its own.
+	 */
+	public class Cursor
+	{
+		private PriorityQueue<long[]> _heads = null; // { offset, next record, end record, shard }
+		private ArrayList<long[]> _shards = new ArrayList<long[]>();
+		private Entry _entry = new Entry();
+		private int _loop = 0;
+		private byte[] _bytes = new byte[256];
+		
+		private Cursor( int user, int users )
+		{
+			for( int shard = user; shard < ReplayTrace.this._shards; shard += users )
+			{
+				long count = ReplayTrace.this.getShardRecords( shard );
+				if( count > 0 )
+					this._shards.add( new long[] { ReplayTrace.this.getShardFirstRecord( shard ), count, shard } );
+			}
+			this._heads = new PriorityQueue<long[]>( Math.max( 1, this._shards.size() ), new Comparator<long[]>()
+			{
+				public int compare( long[] lhs, long[] rhs )
+				{
+					if( lhs[0] != rhs[0] )
+						return ( lhs[0] < rhs[0] ) ? -1 : 1;
+					return ( lhs[3] < rhs[3] ) ? -1 : ( lhs[3] == rhs[3] ? 0 : 1 );
+				}
+			} );
+			this.rewind( 0 );
+		}
+		
+		/** Number of shards (with requests) this cursor walks. */
+		public int getShards() { return this._shards.size(); }
+		
+		/**
+		 * Starts over from the beginning of the trace. Offsets of the
+		 * requests of the n-th loop are shifted by n times the duration of
+		 * the trace (plus a msec, so the last and the first request don't
+		 * coincide).
+		 */
+		public void rewind( int loop )
+		{
+			this._loop = loop;
+			this._heads.clear();
+			for( long[] shard : this._shards )
+			{
+				long first = shard[0];
+				this._heads.add( new long[] { ReplayTrace.this.getRecordOffset( first ), first, first + shard[1], shard[2] } );
+			}
+		}
+		
+		/**
+		 * Returns the next request (in time) of this user's shards, or null
+		 * once they are all done. The entry is reused by the next call.
+		 */
+		public Entry next()
+		{
+			long[] head = this._heads.poll();
+			if( head == null )
+				return null;
+			
+			long record = head[1];
+			Entry entry = this._entry;
+			ReplayTrace trace = ReplayTrace.this;
+			entry._offsetMicros = head[0] + ( this._loop * ( trace._durationMicros + 1000 ) );
+			entry._operationId = trace.getRecordOperation( record );
+			entry._operationName = trace._names.get( entry._operationId );
+			entry._recordedLatencyMicros = trace.getRecordInt( record, 24 ) & 0xFFFFFFFFL;
+			entry._shard = (int) head[3];
+			entry._loop = this._loop;
+			entry._request = this.readRequest( record );
+			
+			// Advance this shard
+			head[1] = record + 1;
+			if( head[1] < head[2] )
+			{
+				head[0] = trace.getRecordOffset( head[1] );
+				this._heads.add( head );
+			}
+			return entry;
+		}
+		
+		private String readRequest( long record )
+		{
+			ReplayTrace trace = ReplayTrace.this;
+			long position = trace.getRecordLong( record, 8 );
+			int length = trace.getRecordInt( record, 16 );
+			if( length > this._bytes.length )
+				this._bytes = new byte[Math.max( length, this._bytes.length * 2 )];
+			
+			// Segments overlap by the longest request, so a request never straddles two mappings
+			ByteBuffer data = trace._data[(int) ( position / SEGMENT_BYTES )];
+			int start = (int) ( position % SEGMENT_BYTES );
+			for( int i = 0; i < length; i++ )
+				this._bytes[i] = data.get( start + i );
+			return new String( this._bytes, 0, length, TRACE_CHARSET );
+		}
+	}
+	
+	static final java.nio.charset.Charset TRACE_CHARSET = java.nio.charset.Charset.forName( "UTF-8" );
+	
+	// Traces are shared by every thread (and track) that replays them
+	private static HashMap<String,ReplayTrace> _openTraces = new HashMap<String,ReplayTrace>();
+	
+	private File _file = null;
+	private short _shardKey = SHARD_BY_SESSION;
+	private int _shards = 0;
+	private long _records = 0;
+	private long _durationMicros = 0;
+	private long _startTime = 0;
+	private int _maxRequestBytes = 0;
+	private ArrayList<String> _names = new ArrayList<String>();
+	private long[] _shardIndex = null; // First record and count of each shard
+	private MappedByteBuffer[] _recordSegments = null;
+	private MappedByteBuffer[] _data = null;
+	
+	/**
+	 * Returns the (shared) trace in a file, mapping it on first use.
+	 */
+	public static ReplayTrace open( String filename ) throws IOException
+	{
+		File file = new File( filename ).getCanonicalFile();
+		synchronized( _openTraces )
+		{
+			ReplayTrace trace = _openTraces.get( file.getPath() );
+			if( trace == null )
+			{
+				trace = new ReplayTrace( file );
+				_openTraces.put( file.getPath(), trace );
+			}
+			return trace;
+		}
+	}
+	
+	public ReplayTrace( File file ) throws IOException
+	{
+		this._file = file;
+		RandomAccessFile raf = new RandomAccessFile( file, "r" );
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = channel.map( FileChannel.MapMode.READ_ONLY, 0, Math.min( channel.size(), HEADER_BYTES ) );
+			if( header.limit() < HEADER_BYTES || header.getInt( 0 ) != MAGIC )
+				throw new IOException( "Not a replay trace: " + file );
+			short version = header.getShort( 4 );
+			if( version != VERSION )
+				throw new IOException( "Unsupported replay trace version " + version + " in: " + file );
+			this._shardKey = header.getShort( 6 );
+			this._shards = header.getInt( 8 );
+			this._maxRequestBytes = header.getInt( 12 );
+			this._records = header.getLong( 16 );
+			this._durationMicros = header.getLong( 24 );
+			this._startTime = header.getLong( 32 );
+			long namesOffset = header.getLong( 40 );
+			long indexOffset = header.getLong( 48 );
+			long recordsOffset = header.getLong( 56 );
+			long dataOffset = header.getLong( 64 );
+			long dataBytes = header.getLong( 72 );
+			
+			// Names and the shard index are small, read them in
+			ByteBuffer names = channel.map( FileChannel.MapMode.READ_ONLY, namesOffset, indexOffset - namesOffset );
+			int nameCount = names.getInt();
+			for( int i = 0; i < nameCount; i++ )
+			{
+				byte[] bytes = new byte[names.getInt()];
+				names.get( bytes );
+				this._names.add( new String( bytes, TRACE_CHARSET ) );
+			}
+			
+			ByteBuffer index = channel.map( FileChannel.MapMode.READ_ONLY, indexOffset, (long) this._shards * 16 );
+			this._shardIndex = new long[this._shards * 2];
+			for( int i = 0; i < this._shardIndex.length; i++ )
+				this._shardIndex[i] = index.getLong();
+			
+			this._recordSegments = mapSegments( channel, recordsOffset, this._records * RECORD_BYTES, 0 );
+			this._data = mapSegments( channel, dataOffset, dataBytes, this._maxRequestBytes );
+		}
+		finally
+		{
+			// The mappings stay valid once the file is closed
+			raf.close();
+		}
+	}
+	
+	private static MappedByteBuffer[] mapSegments( FileChannel channel, long offset, long length, int overlap ) throws IOException
+	{
+		int segments = (int) Math.max( 1, ( length + SEGMENT_BYTES - 1 ) / SEGMENT_BYTES );
+		MappedByteBuffer[] buffers = new MappedByteBuffer[segments];
+		for( int i = 0; i < segments; i++ )
+		{
+			long start = i * SEGMENT_BYTES;
+			long size = Math.min( SEGMENT_BYTES + overlap, length - start );
+			buffers[i] = channel.map( FileChannel.MapMode.READ_ONLY, offset + start, Math.max( 0, size ) );
+		}
+		return buffers;
+	}
+	
+	public File getFile() { return this._file; }
+	public short getShardKey() { return this._shardKey; }
+	public int getShards() { return this._shards; }
+	public long getRecords() { return this._records; }
+	public long getDurationMicros() { return this._durationMicros; }
+	public long getStartTime() { return this._startTime; }
+	public ArrayList<String> getOperationNames() { return this._names; }
+	public long getShardFirstRecord( int shard ) { return this._shardIndex[shard * 2]; }
+	public long getShardRecords( int shard ) { return this._shardIndex[shard * 2 + 1]; }
+	
+	/**
+	 * Returns a cursor over the shards of a user.
+	 * 
+	 * @param user      The user (load generation thread id).
+	 * @param users     How many users share the trace.
+	 */
+	public Cursor createCursor( int user, int users )
+	{
+		return new Cursor( user, Math.max( 1, users ) );
+	}
+	
+	// Records never straddle segments (the segment size is a multiple of the record size)
+	private long getRecordLong( long record, int field )
+	{
+		long position = record * RECORD_BYTES;
+		return this._recordSegments[(int) ( position / SEGMENT_BYTES )].getLong( (int) ( position % SEGMENT_BYTES ) + field );
+	}
+	
+	private int getRecordInt( long record, int field )
+	{
+		long position = record * RECORD_BYTES;
+		return this._recordSegments[(int) ( position / SEGMENT_BYTES )].getInt( (int) ( position % SEGMENT_BYTES ) + field );
+	}
+	
+	private long getRecordOffset( long record ) { return this.getRecordLong( record, 0 ); }
+	private int getRecordOperation( long record ) { return this.getRecordInt( record, 20 ); }
+	
+	/**
+	 * Returns the shard of a session or key.
+	 */
+	public static int shardOf( String shardKey, int shards )
+	{
+		// Spread the String hash, nearby keys shouldn't pile up in neighbouring shards
+		int h = shardKey.hashCode();
+		h ^= ( h >>> 16 );
+		h *= 0x85EBCA6B;
+		h ^= ( h >>> 13 );
+		return ( h & 0x7FFFFFFF ) % shards;
+	}
+	
+	/**
+	 * Splits a command line into its arguments the way redis-cli does:
+	 * arguments are separated by whitespace and may be quoted. Double quoted
+	 * arguments understand the \\, \", \n, \r, \t, \b, \a and \xHH
+	 * escapes, single quoted ones only \'.
+	 * 
+	 * @param line      The command line, e.g. <code>SET greeting "hello world"</code>.
+	 * @return          The arguments, or null if a quote is not closed.
+	 */
+	public static ArrayList<String> splitCommand( String line )
+	{
+		ArrayList<String> arguments = new ArrayList<String>();
+		int length = line.length();
+		int i = 0;
+		while( true )
+		{
+			while( i < length && Character.isWhitespace( line.charAt( i ) ) )
+				i++;
+			if( i == length )
+				return arguments;
+			
+			StringBuilder argument = new StringBuilder();
+			char quote = 0;
+			boolean done = false;
+			while( !done )
+			{
+				if( i == length )
+				{
+					if( quote != 0 )
+						return null;
+					break;
+				}
+				
+				char c = line.charAt( i );
+				if( quote == '"' )
+				{
+					if( c == '\\' && i + 1 < length )
+					{
+						char next = line.charAt( ++i );
+						if( next == 'x' && i + 2 < length && isHexDigit( line.charAt( i + 1 ) ) && isHexDigit( line.charAt( i + 2 ) ) )
+						{
+							argument.append( (char) Integer.parseInt( line.substring( i + 1, i + 3 ), 16 ) );
+							i += 2;
+						}
+						else if( next == 'n' ) argument.append( '\n' );
+						else if( next == 'r' ) argument.append( '\r' );
+						else if( next == 't' ) argument.append( '\t' );
+						else if( next == 'b' ) argument.append( '\b' );
+						else if( next == 'a' ) argument.append( (char) 7 );
+						else argument.append( next );
+					}
+					else if( c == '"' )
+					{
+						// The closing quote must end the argument
+						if( i + 1 < length && !Character.isWhitespace( line.charAt( i + 1 ) ) )
+							return null;
+						done = true;
+					}
+					else argument.append( c );
+				}
+				else if( quote == '\'' )
+				{
+					if( c == '\\' && i + 1 < length && line.charAt( i + 1 ) == '\'' )
+					{
+						argument.append( '\'' );
+						i++;
+					}
+					else if( c == '\'' )
+					{
+						if( i + 1 < length && !Character.isWhitespace( line.charAt( i + 1 ) ) )
+							return null;
+						done = true;
+					}
+					else argument.append( c );
+				}
+				else if( Character.isWhitespace( c ) )
+					done = true;
+				else if( ( c == '"' || c == '\'' ) && argument.length() == 0 )
+					quote = c;
+				else argument.append( c );
+				i++;
+			}
+			arguments.add( argument.toString() );
+		}
+	}
+	
+	private static boolean isHexDigit( char c )
+	{
+		return Character.digit( c, 16 ) >= 0;
+	}
+	
+	/**
+	 * Encodes the arguments of a command as a request of the trace.
+	 */
+	public static String encodeCommand( ArrayList<String> arguments )
+	{
+		StringBuilder request = new StringBuilder();
+		request.append( COMMAND_MARKER );
+		for( String argument : arguments )
+			request.append( argument.length() ).append( ':' ).append( argument );
+		return request.toString();
+	}
+	
+	/**
+	 * Returns the arguments of a command request: decoded if the builder
+	 * stored them (see encodeCommand), split like redis-cli would otherwise.
+	 * 
+	 * @param request   The request.
+	 * @return          The arguments, or null if the request is malformed.
+	 */
+	public static ArrayList<String> decodeCommand( String request )
+	{
+		if( request.length() == 0 || request.charAt( 0 ) != COMMAND_MARKER )
+			return splitCommand( request );
+		
+		ArrayList<String> arguments = new ArrayList<String>();
+		int i = 1;
+		while( i < request.length() )
+		{
+			int colon = request.indexOf( ':', i );
+			if( colon < 0 )
+				return null;
+			int length = 0;
+			try
+			{
+				length = Integer.parseInt( request.substring( i, colon ) );
+			}
+			catch( NumberFormatException nfe )
+			{
+				return null;
+			}
+			if( length < 0 || colon + 1 + length > request.length() )
+				return null;
+			arguments.add( request.substring( colon + 1, colon + 1 + length ) );
+			i = colon + 1 + length;
+		}
+		return arguments;
+	}
+	
+	public String toString()
+	{
+		return "[REPLAY TRACE: " + this._file.getName() + "]";
+	}
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Builds a ReplayTrace from recorded requests. Understands Rain's own binary
+ * trace logs (.rtl), the per-thread text logs (the session is the thread) and
+ * tab separated files with a line per request:<br />
+ * <br />
+ * <code>timestamp (msecs) \t operation \t session \t request [\t latency (msecs)]</code><br />
+ * <br />
+ * When sharding by key, the key of a request is its second word when it has
+ * more than one (e.g. "GET /index.html" or "SET user:42 ...") and the whole
+ * request otherwise.<br />
+ * <br />
+ * Command requests (e.g. Redis, see setCommands) are split into their
+ * arguments, honoring redis-cli style quotes, and stored as argument lists so
+ * they replay exactly as recorded.<br />
+ * <br />
+ * Requests are spooled to disk as they are read; only their fixed size
+ * records are sorted in memory.
+ */
+public class ReplayTraceBuilder 
+{
+	public static int DEFAULT_SHARDS = 1024;
+	
+	private int _shards = DEFAULT_SHARDS;
+	private short _shardKey = ReplayTrace.SHARD_BY_SESSION;
+	private boolean _commands = false;
+	
+	private HashMap<String,Integer> _nameIds = new HashMap<String,Integer>();
+	private ArrayList<String> _names = new ArrayList<String>();
+	
+	// One slot per request, grown as needed
+	private int _count = 0;
+	private long[] _timeMicros = new long[1024];
+	private long[] _dataOffset = new long[1024];
+	private int[] _dataLength = new int[1024];
+	private int[] _operation = new int[1024];
+	private int[] _latencyMicros = new int[1024];
+	private int[] _shard = new int[1024];
+	private int _maxRequestBytes = 0;
+	
+	private File _spoolFile = null;
+	private DataOutputStream _spool = null;
+	private long _spoolBytes = 0;
+	
+	public ReplayTraceBuilder( int shards, short shardKey ) throws IOException
+	{
+		this._shards = Math.max( 1, shards );
+		this._shardKey = shardKey;
+		this._spoolFile = File.createTempFile( "rain-replay", ".spool" );
+		this._spoolFile.deleteOnExit();
+		this._spool = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( this._spoolFile ), 65536 ) );
+	}
+	
+	public long getRequests() { return this._count; }
+	
+	public boolean getCommands() { return this._commands; }
+	/** Whether requests are commands to be stored as their arguments. */
+	public void setCommands( boolean val ) { this._commands = val; }
+	
+	/**
+	 * Adds a request.
+	 * 
+	 * @param timestamp     When it was sent (msecs).
+	 * @param operation     The operation it belongs to.
+	 * @param session       The session (user, thread) that sent it.
+	 * @param request       The request itself.
+	 * @param latencyMicros Its recorded latency, or 0 if unknown.
+	 */
+	public void add( long timestamp, String operation, String session, String request, long latencyMicros ) throws IOException
+	{
+		if( this._count == this._timeMicros.length )
+		{
+			int size = this._count * 2;
+			this._timeMicros = Arrays.copyOf( this._timeMicros, size );
+			this._dataOffset = Arrays.copyOf( this._dataOffset, size );
+			this._dataLength = Arrays.copyOf( this._dataLength, size );
+			this._operation = Arrays.copyOf( this._operation, size );
+			this._latencyMicros = Arrays.copyOf( this._latencyMicros, size );
+			this._shard = Arrays.copyOf( this._shard, size );
+		}
+		
+		Integer id = this._nameIds.get( operation );
+		if( id == null )
+		{
+			id = this._names.size();
+			this._names.add( operation );
+			this._nameIds.put( operation, id );
+		}
+		
+		String shardKey = session;
+		if( this._commands )
+		{
+			// Replayed commands are traced as argument lists already
+			ArrayList<String> arguments = ReplayTrace.decodeCommand( request );
+			if( arguments == null )
+				throw new IOException( "Bad command (unbalanced quotes?): " + request );
+			if( this._shardKey == ReplayTrace.SHARD_BY_KEY )
+				shardKey = ( arguments.size() > 1 ) ? arguments.get( 1 ) : request;
+			request = ReplayTrace.encodeCommand( arguments );
+		}
+		else if( this._shardKey == ReplayTrace.SHARD_BY_KEY )
+			shardKey = keyOf( request );
+		
+		byte[] bytes = request.getBytes( ReplayTrace.TRACE_CHARSET );
+		this._spool.write( bytes );
+		
+		int i = this._count++;
+		this._timeMicros[i] = timestamp * 1000;
+		this._dataOffset[i] = this._spoolBytes;
+		this._dataLength[i] = bytes.length;
+		this._operation[i] = id;
+		this._latencyMicros[i] = (int) Math.min( Integer.MAX_VALUE, Math.max( 0, latencyMicros ) );
+		this._shard[i] = ReplayTrace.shardOf( shardKey, this._shards );
+		this._spoolBytes += bytes.length;
+		this._maxRequestBytes = Math.max( this._maxRequestBytes, bytes.length );
+	}
+	
+	public static String keyOf( String request )
+	{
+		String[] words = request.trim().split( "\\s+", 3 );
+		return ( words.length > 1 ) ? words[1] : request;
+	}
+	
+	/**
+	 * Adds the requests of a recorded trace log, a text thread log or a tab
+	 * separated file, depending on its name.
+	 */
+	public void addFile( File file ) throws IOException
+	{
+		String name = file.getName();
+		if( name.endsWith( TraceLogWriter.FILE_SUFFIX ) )
+			this.addTraceLog( file );
+		else if( name.endsWith( ".tsv" ) )
+			this.addTsv( file );
+		else this.addThreadLog( file );
+	}
+	
+	public void addTraceLog( File file ) throws IOException
+	{
+		TraceLogReader reader = new TraceLogReader( file );
+		try
+		{
+			TraceLogWriter.Record record = null;
+			while( ( record = reader.next() ) != null )
+			{
+				if( record._type != TraceLogWriter.TRACE_RECORD )
+					continue;
+				for( String request : record._lines )
+					this.add( record._timestamp, record._operationName, record._threadName, request, record._latencyNanos / 1000 );
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+	
+	public void addThreadLog( File file ) throws IOException
+	{
+		// thread-<name>.log, every line is: timestamp operation index request
+		String session = file.getName().replaceFirst( "^thread-", "" ).replaceFirst( "\\.log$", "" );
+		BufferedReader reader = new BufferedReader( new FileReader( file ) );
+		try
+		{
+			String line = null;
+			while( ( line = reader.readLine() ) != null )
+			{
+				String[] fields = line.split( " ", 4 );
+				if( fields.length < 4 )
+					continue;
+				try
+				{
+					this.add( Long.parseLong( fields[0] ), fields[1], session, fields[3], 0 );
+				}
+				catch( NumberFormatException nfe )
+				{
+					// Not a request line (e.g. an error log)
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+	
+	public void addTsv( File file ) throws IOException
+	{
+		BufferedReader reader = new BufferedReader( new FileReader( file ) );
+		try
+		{
+			String line = null;
+			int lineNumber = 0;
+			while( ( line = reader.readLine() ) != null )
+			{
+				lineNumber++;
+				if( line.length() == 0 || line.startsWith( "#" ) )
+					continue;
+				String[] fields = line.split( "\t" );
+				if( fields.length < 4 )
+					throw new IOException( file + ":" + lineNumber + ": expected timestamp, operation, session and request" );
+				try
+				{
+					long latencyMicros = ( fields.length > 4 ) ? (long) ( Double.parseDouble( fields[4] ) * 1000 ) : 0;
+					this.add( Long.parseLong( fields[0].trim() ), fields[1], fields[2], fields[3], latencyMicros );
+				}
+				catch( NumberFormatException nfe )
+				{
+					throw new IOException( file + ":" + lineNumber + ": bad number. Reason: " + nfe.toString() );
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Writes the trace. The builder can't be used afterwards.
+	 */
+	public void write( File file ) throws IOException
+	{
+		this._spool.close();
+		
+		long start = Long.MAX_VALUE;
+		long end = 0;
+		for( int i = 0; i < this._count; i++ )
+		{
+			start = Math.min( start, this._timeMicros[i] );
+			end = Math.max( end, this._timeMicros[i] );
+		}
+		if( this._count == 0 )
+			start = 0;
+		
+		// Sort by shard, then time, then the order they were recorded in
+		Integer[] order = new Integer[this._count];
+		for( int i = 0; i < order.length; i++ )
+			order[i] = i;
+		Arrays.sort( order, new Comparator<Integer>()
+		{
+			public int compare( Integer lhs, Integer rhs )
+			{
+				int l = lhs.intValue();
+				int r = rhs.intValue();
+				ReplayTraceBuilder b = ReplayTraceBuilder.this;
+				if( b._shard[l] != b._shard[r] )
+					return ( b._shard[l] < b._shard[r] ) ? -1 : 1;
+				if( b._timeMicros[l] != b._timeMicros[r] )
+					return ( b._timeMicros[l] < b._timeMicros[r] ) ? -1 : 1;
+				return ( l < r ) ? -1 : ( l == r ? 0 : 1 );
+			}
+		} );
+		
+		long[] shardIndex = new long[this._shards * 2];
+		for( int i = 0; i < this._count; i++ )
+			shardIndex[this._shard[i] * 2 + 1]++;
+		long first = 0;
+		for( int s = 0; s < this._shards; s++ )
+		{
+			shardIndex[s * 2] = first;
+			first += shardIndex[s * 2 + 1];
+		}
+		
+		int namesBytes = 4;
+		for( String name : this._names )
+			namesBytes += 4 + name.getBytes( ReplayTrace.TRACE_CHARSET ).length;
+		long namesOffset = ReplayTrace.HEADER_BYTES;
+		long indexOffset = namesOffset + namesBytes;
+		long recordsOffset = indexOffset + ( this._shards * 16L );
+		long dataOffset = recordsOffset + ( this._count * (long) ReplayTrace.RECORD_BYTES );
+		
+		DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), 65536 ) );
+		try
+		{
+			out.writeInt( ReplayTrace.MAGIC );
+			out.writeShort( ReplayTrace.VERSION );
+			out.writeShort( this._shardKey );
+			out.writeInt( this._shards );
+			out.writeInt( this._maxRequestBytes );
+			out.writeLong( this._count );
+			out.writeLong( end - start );
+			out.writeLong( start / 1000 );
+			out.writeLong( namesOffset );
+			out.writeLong( indexOffset );
+			out.writeLong( recordsOffset );
+			out.writeLong( dataOffset );
+			out.writeLong( this._spoolBytes );
+			
+			out.writeInt( this._names.size() );
+			for( String name : this._names )
+			{
+				byte[] bytes = name.getBytes( ReplayTrace.TRACE_CHARSET );
+				out.writeInt( bytes.length );
+				out.write( bytes );
+			}
+			
+			for( long value : shardIndex )
+				out.writeLong( value );
+			
+			for( Integer index : order )
+			{
+				int i = index.intValue();
+				out.writeLong( this._timeMicros[i] - start );
+				out.writeLong( this._dataOffset[i] );
+				out.writeInt( this._dataLength[i] );
+				out.writeInt( this._operation[i] );
+				out.writeInt( this._latencyMicros[i] );
+				out.writeInt( this._shard[i] );
+			}
+			
+			// The requests stay in the order they were read, the records point into them
+			InputStream spool = new FileInputStream( this._spoolFile );
+			try
+			{
+				copy( spool, out );
+			}
+			finally
+			{
+				spool.close();
+			}
+		}
+		finally
+		{
+			out.close();
+			this._spoolFile.delete();
+		}
+	}
+	
+	private static void copy( InputStream in, OutputStream out ) throws IOException
+	{
+		byte[] buffer = new byte[65536];
+		int read = 0;
+		while( ( read = in.read( buffer ) ) > 0 )
+			out.write( buffer, 0, read );
+	}
+	
+	public static void main( String[] args ) 
+	{
+		String output = null;
+		int shards = DEFAULT_SHARDS;
+		short shardKey = ReplayTrace.SHARD_BY_SESSION;
+		boolean commands = false;
+		ArrayList<String> files = new ArrayList<String>();
+		for( int i = 0; i < args.length; i++ )
+		{
+			if( args[i].equals( "-o" ) && i + 1 < args.length )
+				output = args[++i];
+			else if( args[i].equals( "-n" ) && i + 1 < args.length )
+				shards = Integer.parseInt( args[++i] );
+			else if( args[i].equals( "-s" ) && i + 1 < args.length )
+				shardKey = args[++i].equalsIgnoreCase( "key" ) ? ReplayTrace.SHARD_BY_KEY : ReplayTrace.SHARD_BY_SESSION;
+			else if( args[i].equals( "-p" ) && i + 1 < args.length )
+				commands = args[++i].equalsIgnoreCase( "redis" );
+			else files.add( args[i] );
+		}
+		
+		if( output == null || files.size() == 0 )
+		{
+			System.out.println( "Usage: ReplayTraceBuilder -o <trace" + ReplayTrace.FILE_SUFFIX + "> [-n <shards>] [-s session|key] [-p http|redis] <.rtl, thread log or .tsv file>..." );
+			System.exit( 1 );
+		}
+		
+		try
+		{
+			ReplayTraceBuilder builder = new ReplayTraceBuilder( shards, shardKey );
+			builder.setCommands( commands );
+			for( String filename : files )
+				builder.addFile( new File( filename ) );
+			long requests = builder.getRequests();
+			builder.write( new File( output ) );
+			
+			ReplayTrace trace = new ReplayTrace( new File( output ) );
+			System.out.println( "Wrote " + requests + " requests (" + trace.getOperationNames().size() + " operations, " 
+					+ ( trace.getDurationMicros() / 1000 ) + " msecs) in " + shards + " shards to " + output + "." );
+		}
+		catch( IOException ioe )
+		{
+			System.out.println( "Error building replay trace. Reason: " + ioe.toString() );
+			System.exit( 1 );
+		}
+	}
+}
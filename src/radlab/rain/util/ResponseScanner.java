@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util;
+
+import java.nio.charset.Charset;
+
+/**
+ * The ResponseScanner class looks for a handful of tokens in a response
+ * body as it streams by, so the body never has to be decoded or kept in
+ * memory. Each token is matched with its own Knuth-Morris-Pratt automaton
+ * over the raw (UTF-8) bytes, so matches that straddle two reads are found
+ * too.<br />
+ * <br />
+ * A scanner keeps state between reads; reuse it for many responses by
+ * calling <code>reset()</code> (HttpTransport does this before each scan).
+ */
+public class ResponseScanner 
+{
+	private static Charset UTF8 = Charset.forName( "UTF-8" );
+	
+	private String[] _tokens;
+	private byte[][] _patterns;
+	private int[][] _failure;
+	// Per token: how many bytes of the pattern are currently matched
+	private int[] _matched;
+	private boolean[] _found;
+	private int _foundCount = 0;
+	
+	public ResponseScanner( String ... tokens )
+	{
+		this._tokens = tokens;
+		this._patterns = new byte[tokens.length][];
+		this._failure = new int[tokens.length][];
+		this._matched = new int[tokens.length];
+		this._found = new boolean[tokens.length];
+		for( int i = 0; i < tokens.length; i++ )
+		{
+			this._patterns[i] = tokens[i].getBytes( UTF8 );
+			this._failure[i] = ResponseScanner.computeFailure( this._patterns[i] );
+		}
+	}
+	
+	/**
+	 * Computes the KMP failure function: for each prefix of the pattern, the
+	 * length of its longest proper prefix that is also a suffix.
+	 */
+	private static int[] computeFailure( byte[] pattern )
+	{
+		int[] failure = new int[pattern.length];
+		int k = 0;
+		for( int i = 1; i < pattern.length; i++ )
+		{
+			while( k > 0 && pattern[k] != pattern[i] )
+				k = failure[k - 1];
+			if( pattern[k] == pattern[i] )
+				k++;
+			failure[i] = k;
+		}
+		return failure;
+	}
+	
+	/**
+	 * Forgets everything scanned so far.
+	 */
+	public void reset()
+	{
+		for( int i = 0; i < this._tokens.length; i++ )
+		{
+			this._matched[i] = 0;
+			this._found[i] = false;
+		}
+		this._foundCount = 0;
+	}
+	
+	/**
+	 * Scans the next chunk of the response.
+	 * 
+	 * @param buffer    Buffer holding the chunk.
+	 * @param offset    Where the chunk starts in the buffer.
+	 * @param length    Length of the chunk.
+	 */
+	public void update( byte[] buffer, int offset, int length )
+	{
+		if( this.allFound() )
+			return;
+		
+		int end = offset + length;
+		for( int t = 0; t < this._patterns.length; t++ )
+		{
+			if( this._found[t] )
+				continue;
+			
+			byte[] pattern = this._patterns[t];
+			int[] failure = this._failure[t];
+			int matched = this._matched[t];
+			if( pattern.length == 0 )
+			{
+				this.markFound( t );
+				continue;
+			}
+			
+			for( int i = offset; i < end; i++ )
+			{
+				byte b = buffer[i];
+				while( matched > 0 && pattern[matched] != b )
+					matched = failure[matched - 1];
+				if( pattern[matched] == b )
+					matched++;
+				if( matched == pattern.length )
+				{
+					this.markFound( t );
+					break;
+				}
+			}
+			this._matched[t] = matched;
+		}
+	}
+	
+	private void markFound( int token )
+	{
+		this._found[token] = true;
+		this._foundCount++;
+	}
+	
+	public int getTokenCount() { return this._tokens.length; }
+	public String getToken( int token ) { return this._tokens[token]; }
+	public boolean isFound( int token ) { return this._found[token]; }
+	public int getFoundCount() { return this._foundCount; }
+	public boolean allFound() { return this._foundCount == this._tokens.length; }
+	public boolean anyFound() { return this._foundCount > 0; }
+}
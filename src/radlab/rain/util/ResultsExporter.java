@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package radlab.rain.util;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Writes the results of a run as structured records so tooling does not have
+ * to scrape the text report. Records are appended (and flushed) as they are
+ * produced, e.g., each time a load profile interval closes, so a partially
+ * written file can be read while the run is still going. An interval may be
+ * written more than once (each time it closes and again at the end of the
+ * run); the last record for an interval supersedes the earlier ones.<br />
+ * <br />
+ * With the "json" format every record is a JSON object on its own line. With
+ * the "csv" format every record is flattened into one row per metric with the
+ * columns: timestamp, record, track, name, metric, value. Nested metrics are
+ * named by their dotted path (e.g., operations.Login.p99).<br />
+ * <br />
+ * All times in the records are reported in seconds unless the metric name
+ * says otherwise.
+ */
+public class ResultsExporter 
+{
+	public static String CFG_FILENAME_KEY 	= "filename";
+	public static String CFG_FORMAT_KEY 	= "format";
+	
+	public static String JSON_FORMAT		= "json";
+	public static String CSV_FORMAT			= "csv";
+	
+	// Record types
+	public static String RUN_RECORD			= "run";
+	public static String INTERVAL_RECORD	= "interval";
+	public static String FINAL_RECORD		= "final";
+	public static String OBJECT_POOL_RECORD	= "objectPool";
+	public static String AGGREGATE_RECORD	= "aggregate";
+	public static String TIME_SERIES_RECORD	= "timeSeries";
+	public static String GENERATOR_HEALTH_RECORD = "generatorHealth";
+	public static String CAPACITY_RECORD	= "capacity";
+	public static String REPLAY_RECORD		= "replay";
+	
+	private static String CSV_HEADER		= "timestamp,record,track,name,metric,value";
+	
+	private String _filename = "";
+	private String _format = JSON_FORMAT;
+	private PrintStream _out = null;
+	private long _recordsWritten = 0;
+	
+	public ResultsExporter( JSONObject config ) throws JSONException
+	{
+		this._filename = config.getString( ResultsExporter.CFG_FILENAME_KEY );
+		if( config.has( ResultsExporter.CFG_FORMAT_KEY ) )
+			this._format = config.getString( ResultsExporter.CFG_FORMAT_KEY ).toLowerCase();
+		
+		if( !this._format.equals( JSON_FORMAT ) && !this._format.equals( CSV_FORMAT ) )
+			throw new JSONException( "Unknown results format: " + this._format + " (expected " + JSON_FORMAT + " or " + CSV_FORMAT + ")" );
+	}
+	
+	public String getFilename() { return this._filename; }
+	public String getFormat() { return this._format; }
+	public long getRecordsWritten() { return this._recordsWritten; }
+	
+	/**
+	 * Appends a record to the results file. Records from different tracks may
+	 * be written concurrently, so writes are serialized.
+	 * 
+	 * @param record        The kind of record (e.g., interval, final).
+	 * @param trackName     The track the record belongs to, if any.
+	 * @param name          The name of the record (e.g., the interval name).
+	 * @param payload       The metrics to write.
+	 */
+	public synchronized void writeRecord( String record, String trackName, String name, JSONObject payload )
+	{
+		long now = System.currentTimeMillis();
+		try
+		{
+			// Open the file lazily, the first record may not come until the end of ramp up
+			if( this._out == null )
+			{
+				this._out = new PrintStream( new File( this._filename ) );
+				if( this._format.equals( CSV_FORMAT ) )
+					this._out.println( CSV_HEADER );
+			}
+			
+			if( this._format.equals( CSV_FORMAT ) )
+			{
+				StringBuffer prefix = new StringBuffer();
+				prefix.append( now ).append( "," );
+				prefix.append( csvEscape( record ) ).append( "," );
+				prefix.append( csvEscape( trackName ) ).append( "," );
+				prefix.append( csvEscape( name ) ).append( "," );
+				this.writeCsvRows( prefix.toString(), "", payload );
+			}
+			else
+			{
+				JSONObject line = new JSONObject();
+				line.put( "timestamp", now );
+				line.put( "record", record );
+				line.put( "track", trackName );
+				line.put( "name", name );
+				line.put( "metrics", payload );
+				this._out.println( line.toString() );
+			}
+			this._out.flush();
+			this._recordsWritten++;
+		}
+		catch( Exception e )
+		{
+			System.out.println( this + " Error writing " + record + " record for track: " + trackName + ". Reason: " + e.toString() );
+		}
+	}
+	
+	public synchronized void close()
+	{
+		if( this._out != null )
+		{
+			this._out.flush();
+			this._out.close();
+			this._out = null;
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void writeCsvRows( String prefix, String path, JSONObject metrics ) throws JSONException
+	{
+		// Sort the keys so rows come out in the same order from run to run
+		ArrayList<String> keys = new ArrayList<String>();
+		Iterator<String> it = metrics.keys();
+		while( it.hasNext() )
+			keys.add( it.next() );
+		Collections.sort( keys );
+		
+		for( String key : keys )
+		{
+			String metric = ( path.length() == 0 ) ? key : path + "." + key;
+			Object value = metrics.get( key );
+			if( value instanceof JSONObject )
+				this.writeCsvRows( prefix, metric, (JSONObject) value );
+			else if( value instanceof JSONArray )
+			{
+				JSONArray values = (JSONArray) value;
+				for( int i = 0; i < values.length(); i++ )
+					this._out.println( prefix + csvEscape( metric + "." + i ) + "," + csvEscape( values.get( i ).toString() ) );
+			}
+			else this._out.println( prefix + csvEscape( metric ) + "," + csvEscape( value.toString() ) );
+		}
+	}
+	
+	private static String csvEscape( String value )
+	{
+		if( value == null )
+			return "";
+		if( value.indexOf( ',' ) < 0 && value.indexOf( '"' ) < 0 && value.indexOf( '\n' ) < 0 )
+			return value;
+		return "\"" + value.replace( "\"", "\"\"" ) + "\"";
+	}
+	
+	public String toString()
+	{
+		return "[RESULTS EXPORTER]";
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util;
+
+import java.util.Random;
+
+/**
+ * An unsynchronized SplitMix64 generator that can stand in wherever a
+ * java.util.Random is expected.<br />
+ * <br />
+ * java.util.Random advances its seed with a compare-and-set on an
+ * AtomicLong, so a single instance shared by many load generation threads
+ * turns every draw into a contended CAS loop. This generator keeps its
+ * state in plain fields and is meant to be owned by exactly one thread;
+ * independent streams are obtained with split() or by seeding new
+ * instances with RandomStreams.<br />
+ * <br />
+ * The algorithm follows Steele, Lea and Flood, "Fast Splittable
+ * Pseudorandom Number Generators" (OOPSLA 2014), the same one behind
+ * java.util.SplittableRandom, which is not available on Java 7.
+ */
+public class SplitMixRandom extends Random 
+{
+	private static final long serialVersionUID = 1L;
+	
+	/** Default gamma, the odd integer closest to 2^64 / phi. */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final double DOUBLE_UNIT = 1.0 / ( 1L << 53 );
+	
+	private long _seed;
+	private long _gamma;
+	private double _nextGaussian;
+	private boolean _haveNextGaussian;
+	
+	public SplitMixRandom( long seed )
+	{
+		this( seed, GOLDEN_GAMMA );
+	}
+	
+	private SplitMixRandom( long seed, long gamma )
+	{
+		// Random's constructor calls setSeed(), which we override below, so
+		// the state is (re)assigned here once the superclass is done.
+		super( 0L );
+		this._seed = seed;
+		this._gamma = gamma;
+		this._haveNextGaussian = false;
+	}
+	
+	/**
+	 * Returns a new generator whose stream is statistically independent
+	 * of this one. Advances this generator's state.
+	 */
+	public SplitMixRandom split()
+	{
+		return new SplitMixRandom( mix64( this.nextSeed() ), mixGamma( this.nextSeed() ) );
+	}
+	
+	@Override
+	public void setSeed( long seed )
+	{
+		this._seed = seed;
+		this._gamma = GOLDEN_GAMMA;
+		this._haveNextGaussian = false;
+	}
+	
+	@Override
+	protected int next( int bits )
+	{
+		return (int) ( mix64( this.nextSeed() ) >>> ( 64 - bits ) );
+	}
+	
+	@Override
+	public int nextInt()
+	{
+		return (int) ( mix64( this.nextSeed() ) >>> 32 );
+	}
+	
+	@Override
+	public long nextLong()
+	{
+		return mix64( this.nextSeed() );
+	}
+	
+	@Override
+	public double nextDouble()
+	{
+		return ( mix64( this.nextSeed() ) >>> 11 ) * DOUBLE_UNIT;
+	}
+	
+	@Override
+	public float nextFloat()
+	{
+		return ( mix64( this.nextSeed() ) >>> 40 ) / ( (float) ( 1 << 24 ) );
+	}
+	
+	@Override
+	public boolean nextBoolean()
+	{
+		return mix64( this.nextSeed() ) < 0;
+	}
+	
+	// Random.nextGaussian() is synchronized; this copy is not.
+	@Override
+	public double nextGaussian()
+	{
+		if( this._haveNextGaussian )
+		{
+			this._haveNextGaussian = false;
+			return this._nextGaussian;
+		}
+		
+		double v1, v2, s;
+		do
+		{
+			v1 = 2 * this.nextDouble() - 1;
+			v2 = 2 * this.nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while( s >= 1 || s == 0 );
+		double multiplier = StrictMath.sqrt( -2 * StrictMath.log( s ) / s );
+		this._nextGaussian = v2 * multiplier;
+		this._haveNextGaussian = true;
+		return v1 * multiplier;
+	}
+	
+	private long nextSeed()
+	{
+		return ( this._seed += this._gamma );
+	}
+	
+	/**
+	 * Stafford's variant 13 of the MurmurHash3 64-bit finalizer. Also used
+	 * by RandomStreams to scramble derived seeds.
+	 */
+	public static long mix64( long z )
+	{
+		z = ( z ^ ( z >>> 30 ) ) * 0xbf58476d1ce4e5b9L;
+		z = ( z ^ ( z >>> 27 ) ) * 0x94d049bb133111ebL;
+		return z ^ ( z >>> 31 );
+	}
+	
+	private static long mixGamma( long z )
+	{
+		z = ( z ^ ( z >>> 33 ) ) * 0xff51afd7ed558ccdL;
+		z = ( z ^ ( z >>> 33 ) ) * 0xc4ceb9fe1a85ec53L;
+		z = ( z ^ ( z >>> 33 ) ) | 1L;
+		// Gammas with too few bit transitions make poor streams
+		int n = Long.bitCount( z ^ ( z >>> 1 ) );
+		return ( n < 24 ) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+}
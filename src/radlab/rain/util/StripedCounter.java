@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package radlab.rain.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can add to without contending on a single
+ * memory location. Each thread adds to one of several cells (picked by its
+ * thread id) and readers sum the cells, so reads are only approximate while
+ * writers are active. Cells are padded to their own cache lines.
+ */
+public class StripedCounter 
+{
+	public static int DEFAULT_STRIPES	= 16;
+	// Longs per cache line, cells are this far apart
+	private static int PADDING			= 8;
+	
+	private AtomicLongArray _cells;
+	private int _mask;
+	
+	public StripedCounter()
+	{
+		this( DEFAULT_STRIPES );
+	}
+	
+	/**
+	 * @param stripes   Number of cells, rounded up to a power of two.
+	 */
+	public StripedCounter( int stripes )
+	{
+		int cells = 1;
+		while( cells < stripes )
+			cells <<= 1;
+		this._mask = cells - 1;
+		this._cells = new AtomicLongArray( cells * PADDING );
+	}
+	
+	/**
+	 * Returns the cell index used by the current thread.
+	 */
+	public static int stripeOf( int mask )
+	{
+		return (int) ( Thread.currentThread().getId() & mask );
+	}
+	
+	public void increment()
+	{
+		this._cells.incrementAndGet( stripeOf( this._mask ) * PADDING );
+	}
+	
+	public void decrement()
+	{
+		this._cells.decrementAndGet( stripeOf( this._mask ) * PADDING );
+	}
+	
+	public void add( long val )
+	{
+		this._cells.addAndGet( stripeOf( this._mask ) * PADDING, val );
+	}
+	
+	public long sum()
+	{
+		long sum = 0;
+		for( int i = 0; i < this._cells.length(); i += PADDING )
+			sum += this._cells.get( i );
+		return sum;
+	}
+	
+	public String toString()
+	{
+		return Long.toString( this.sum() );
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The TokenBucket class is a lock-free rate limiter shared by any number of
+ * threads. It is implemented as a virtual scheduler (GCRA): a single atomic
+ * timestamp tracks when the next token becomes available, each caller
+ * reserves a token with one CAS and is told how long to wait for it. The
+ * aggregate rate is therefore exact no matter how many threads share the
+ * bucket, and up to <code>burstSize</code> tokens can be taken at once after
+ * an idle period.
+ */
+public class TokenBucket 
+{
+	/** Rate settings, swapped as a unit so readers never see half an update. */
+	private static class Rate
+	{
+		private final double _opsPerSec;
+		private final long _burstSize;
+		private final long _intervalNanos;
+		private final long _toleranceNanos;
+		
+		public Rate( double opsPerSec, long burstSize )
+		{
+			this._opsPerSec = opsPerSec;
+			this._burstSize = burstSize;
+			if( opsPerSec > 0 )
+				this._intervalNanos = Math.max( 1, (long) ( 1000000000.0 / opsPerSec ) );
+			else this._intervalNanos = 0;
+			this._toleranceNanos = Math.max( 0, burstSize - 1 ) * this._intervalNanos;
+		}
+	}
+	
+	private volatile Rate _rate = new Rate( 0, 1 );
+	
+	/** When (System.nanoTime()) the next token is available. */
+	private AtomicLong _nextTokenTime = new AtomicLong( System.nanoTime() );
+	
+	// Statistics
+	private AtomicLong _tokensRequested 	= new AtomicLong( 0 );
+	private AtomicLong _tokensGranted 		= new AtomicLong( 0 ); // Granted without waiting
+	private AtomicLong _totalWaitNanos 		= new AtomicLong( 0 );
+	
+	public TokenBucket()
+	{
+	}
+	
+	public TokenBucket( double opsPerSec, long burstSize )
+	{
+		this.setRate( opsPerSec, burstSize );
+	}
+	
+	public double getRate() { return this._rate._opsPerSec; }
+	public long getBurstSize() { return this._rate._burstSize; }
+	public boolean isLimiting() { return this._rate._intervalNanos > 0; }
+	public long getTokensRequested() { return this._tokensRequested.get(); }
+	public long getTokensGranted() { return this._tokensGranted.get(); }
+	public long getTotalWaitNanos() { return this._totalWaitNanos.get(); }
+	
+	/**
+	 * Changes the rate. Tokens reserved at the old rate are honored, new
+	 * reservations are spaced at the new rate starting now (without a burst,
+	 * so a rate change never overshoots).
+	 * 
+	 * @param opsPerSec     Tokens per second; 0 turns rate limiting off.
+	 * @param burstSize     Tokens that can be taken at once after an idle period.
+	 */
+	public void setRate( double opsPerSec, long burstSize )
+	{
+		Rate current = this._rate;
+		if( current._opsPerSec == opsPerSec && current._burstSize == burstSize )
+			return;
+		
+		this._rate = new Rate( opsPerSec, burstSize );
+		this._nextTokenTime.set( System.nanoTime() );
+	}
+	
+	/**
+	 * Reserves a token.
+	 * 
+	 * @return  How long (in nanos) the caller has to wait before using the token, 0 to go right away.
+	 */
+	public long reserve()
+	{
+		Rate rate = this._rate;
+		if( rate._intervalNanos <= 0 )
+			return 0;
+		
+		this._tokensRequested.incrementAndGet();
+		while( true )
+		{
+			long now = System.nanoTime();
+			long nextTokenTime = this._nextTokenTime.get();
+			// Unused tokens accumulate up to the burst size
+			long earliest = now - rate._toleranceNanos;
+			long tokenTime = ( nextTokenTime - earliest > 0 ) ? nextTokenTime : earliest;
+			if( this._nextTokenTime.compareAndSet( nextTokenTime, tokenTime + rate._intervalNanos ) )
+			{
+				long wait = tokenTime - now;
+				if( wait <= 0 )
+				{
+					this._tokensGranted.incrementAndGet();
+					return 0;
+				}
+				this._totalWaitNanos.addAndGet( wait );
+				return wait;
+			}
+		}
+	}
+	
+	public void resetStatistics()
+	{
+		this._tokensRequested.set( 0 );
+		this._tokensGranted.set( 0 );
+		this._totalWaitNanos.set( 0 );
+	}
+}
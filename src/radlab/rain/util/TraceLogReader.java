@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.LinkedList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the binary trace logs written by TraceLogWriter. Run it from the
+ * command line to convert trace logs back to the text format of the
+ * per-thread logs (thread-[name].log and error-thread-[name].log):<br />
+ * <br />
+ * java radlab.rain.util.TraceLogReader [-d output-directory] trace-file...<br />
+ * <br />
+ * Pass the files of a track in order (trace-[track].0000.rtl, .0001, ...) so
+ * the records of each thread stay in the order they were written.
+ */
+public class TraceLogReader 
+{
+	private static String NEWLINE = System.getProperty( "line.separator" );
+	
+	private File _file = null;
+	private DataInputStream _in = null;
+	private String _trackName = "";
+	private long _created = 0;
+	private boolean _compressed = false;
+	private Inflater _inflater = null;
+	private DataInputStream _block = null;
+	private ArrayList<String> _names = new ArrayList<String>();
+	
+	public TraceLogReader( File file ) throws IOException
+	{
+		this._file = file;
+		this._in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ), 65536 ) );
+		
+		int magic = this._in.readInt();
+		if( magic != TraceLogWriter.MAGIC )
+		{
+			this._in.close();
+			throw new IOException( "Not a trace log: " + file );
+		}
+		short version = this._in.readShort();
+		if( version != TraceLogWriter.VERSION )
+		{
+			this._in.close();
+			throw new IOException( "Unsupported trace log version " + version + " in: " + file );
+		}
+		byte flags = this._in.readByte();
+		this._compressed = ( flags & TraceLogWriter.FLAG_COMPRESSED ) != 0;
+		if( this._compressed )
+			this._inflater = new Inflater();
+		this._trackName = readString( this._in );
+		this._created = this._in.readLong();
+	}
+	
+	public File getFile() { return this._file; }
+	public String getTrackName() { return this._trackName; }
+	public long getCreated() { return this._created; }
+	public boolean isCompressed() { return this._compressed; }
+	
+	/**
+	 * Returns the next trace or error record in the file, or null at the end
+	 * of the file.
+	 */
+	public TraceLogWriter.Record next() throws IOException
+	{
+		while( true )
+		{
+			if( this._block == null || this._block.available() == 0 )
+			{
+				if( !this.readBlock() )
+					return null;
+			}
+			
+			byte type = this._block.readByte();
+			if( type == TraceLogWriter.NAME_RECORD )
+			{
+				int id = this._block.readInt();
+				String name = readString( this._block );
+				if( id != this._names.size() )
+					throw new IOException( "Corrupt trace log, name " + id + " out of sequence in: " + this._file );
+				this._names.add( name );
+				continue;
+			}
+			if( type != TraceLogWriter.TRACE_RECORD && type != TraceLogWriter.ERROR_RECORD )
+				throw new IOException( "Corrupt trace log, unknown record type " + type + " in: " + this._file );
+			
+			long timestamp = this._block.readLong();
+			String operationName = this.lookupName( this._block.readInt() );
+			String threadName = this.lookupName( this._block.readInt() );
+			long latencyNanos = this._block.readLong();
+			byte status = this._block.readByte();
+			int lineCount = this._block.readInt();
+			LinkedList<String> lines = new LinkedList<String>();
+			for( int i = 0; i < lineCount; i++ )
+				lines.add( readString( this._block ) );
+			
+			return new TraceLogWriter.Record( type, timestamp, operationName, threadName, latencyNanos, status, lines );
+		}
+	}
+	
+	public void close() throws IOException
+	{
+		if( this._inflater != null )
+			this._inflater.end();
+		this._in.close();
+	}
+	
+	private boolean readBlock() throws IOException
+	{
+		// Only the end of the file between blocks is a clean one
+		int first = this._in.read();
+		if( first == -1 )
+			return false;
+		
+		int rawLength = 0;
+		byte[] stored = null;
+		try
+		{
+			rawLength = ( first << 24 ) | ( this._in.readUnsignedByte() << 16 ) | this._in.readUnsignedShort();
+			int storedLength = this._in.readInt();
+			if( rawLength < 0 || storedLength < 0 )
+				throw new IOException( "Corrupt trace log, negative block length in: " + this._file );
+			stored = new byte[storedLength];
+			this._in.readFully( stored );
+		}
+		catch( EOFException eof )
+		{
+			throw new IOException( "Corrupt trace log, truncated block in: " + this._file );
+		}
+		
+		byte[] raw = stored;
+		if( this._compressed )
+		{
+			raw = new byte[rawLength];
+			this._inflater.reset();
+			this._inflater.setInput( stored );
+			try
+			{
+				int n = 0;
+				while( n < rawLength && !this._inflater.finished() )
+				{
+					int inflated = this._inflater.inflate( raw, n, rawLength - n );
+					// No progress means the compressed data ran out (or wants a dictionary it never gets)
+					if( inflated == 0 && ( this._inflater.needsInput() || this._inflater.needsDictionary() ) )
+						throw new IOException( "Corrupt trace log, truncated block in: " + this._file );
+					n += inflated;
+				}
+				if( n != rawLength )
+					throw new IOException( "Corrupt trace log, short block in: " + this._file );
+			}
+			catch( DataFormatException dfe )
+			{
+				throw new IOException( "Corrupt trace log block in: " + this._file + " Reason: " + dfe.toString() );
+			}
+		}
+		this._block = new DataInputStream( new ByteArrayInputStream( raw, 0, rawLength ) );
+		return true;
+	}
+	
+	private String lookupName( int id ) throws IOException
+	{
+		if( id < 0 || id >= this._names.size() )
+			throw new IOException( "Corrupt trace log, unknown name " + id + " in: " + this._file );
+		return this._names.get( id );
+	}
+	
+	public static String readString( DataInputStream in ) throws IOException
+	{
+		int length = in.readInt();
+		byte[] bytes = new byte[length];
+		in.readFully( bytes );
+		return new String( bytes, "UTF-8" );
+	}
+	
+	/**
+	 * Writes a record the way the per-thread text logs do.
+	 */
+	public static void writeText( TraceLogWriter.Record record, Writer out ) throws IOException
+	{
+		if( record._type == TraceLogWriter.ERROR_RECORD )
+		{
+			boolean first = true;
+			for( String line : record._lines )
+			{
+				if( first )
+					out.write( "[" + record._threadName + "] " + line + NEWLINE );
+				else out.write( "at [" + record._threadName + "] " + line + NEWLINE );
+				first = false;
+			}
+			out.write( NEWLINE );
+		}
+		else
+		{
+			StringBuffer buf = new StringBuffer();
+			int i = 0;
+			for( String request : record._lines )
+			{
+				buf.append( record._timestamp );
+				buf.append( " " );
+				buf.append( record._operationName );
+				buf.append( " " );
+				buf.append( i );
+				buf.append( " " );
+				buf.append( request );
+				buf.append( "\n" );
+				i++;
+			}
+			out.write( buf.toString() + NEWLINE );
+		}
+	}
+	
+	public static void main( String[] args ) 
+	{
+		String outputDirectory = ".";
+		ArrayList<String> files = new ArrayList<String>();
+		for( int i = 0; i < args.length; i++ )
+		{
+			if( args[i].equals( "-d" ) && i + 1 < args.length )
+				outputDirectory = args[++i];
+			else files.add( args[i] );
+		}
+		
+		if( files.size() == 0 )
+		{
+			System.out.println( "Usage: TraceLogReader [-d <output directory>] <trace file>..." );
+			System.exit( 1 );
+		}
+		
+		Hashtable<String,Writer> writers = new Hashtable<String,Writer>();
+		long records = 0;
+		try
+		{
+			for( String filename : files )
+			{
+				TraceLogReader reader = new TraceLogReader( new File( filename ) );
+				try
+				{
+					TraceLogWriter.Record record = null;
+					while( ( record = reader.next() ) != null )
+					{
+						String logName = "thread-" + record._threadName + ".log";
+						if( record._type == TraceLogWriter.ERROR_RECORD )
+							logName = "error-" + logName;
+						
+						Writer out = writers.get( logName );
+						if( out == null )
+						{
+							out = new FileWriter( new File( outputDirectory, logName ) );
+							writers.put( logName, out );
+						}
+						writeText( record, out );
+						records++;
+					}
+				}
+				finally
+				{
+					reader.close();
+				}
+			}
+		}
+		catch( IOException ioe )
+		{
+			System.out.println( "Error converting trace logs. Reason: " + ioe.toString() );
+		}
+		finally
+		{
+			for( Writer out : writers.values() )
+			{
+				try
+				{
+					out.close();
+				}
+				catch( IOException ioe )
+				{
+					System.out.println( "Error closing converted trace log. Reason: " + ioe.toString() );
+				}
+			}
+		}
+		
+		System.out.println( "Converted " + records + " records into " + writers.size() + " logs." );
+	}
+}
@@ -0,0 +1,460 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Writes the trace and error logs of a track as compact binary files from a
+ * single background thread, instead of having every user thread keep its own
+ * pair of text logs open and format (and write) its records on the hot path.
+ * Producers hand records off through a lock-free queue; if the writer falls
+ * behind and the queue is full, records are dropped (and counted) rather than
+ * stalling the load generators.<br />
+ * <br />
+ * Each file starts with a header (magic, version, flags, track name, creation
+ * time) followed by blocks. A block is the raw length, the stored length and
+ * the (optionally deflated) records. Records are:<br />
+ * <ul>
+ * <li>name: id, string - interns an operation or thread name for the rest of the file</li>
+ * <li>trace/error: timestamp (msecs), operation name id, thread name id, latency (nanos),
+ * status, the number of lines and the lines themselves (the requests of a trace record;
+ * the failure reason followed by any stack frames of an error record)</li>
+ * </ul>
+ * Strings are written as their UTF-8 length followed by the bytes. Files are
+ * rolled once they grow past the rotation size; the name table starts over in
+ * every file so each one can be read on its own. Use TraceLogReader to convert
+ * the files back to the text format of the per-thread logs.
+ */
+public class TraceLogWriter extends Thread
+{
+	public static String CFG_DIRECTORY_KEY		= "directory";
+	public static String CFG_COMPRESS_KEY		= "compress";
+	public static String CFG_ROTATE_SIZE_KEY	= "rotateMBytes";
+	public static String CFG_BLOCK_SIZE_KEY		= "blockKBytes";
+	public static String CFG_QUEUE_CAPACITY_KEY	= "queueCapacity";
+	
+	public static final int MAGIC				= 0x5241494E; // "RAIN"
+	public static final short VERSION			= 1;
+	public static final byte FLAG_COMPRESSED	= 0x01;
+	
+	// Record types
+	public static final byte NAME_RECORD		= 0;
+	public static final byte TRACE_RECORD		= 1;
+	public static final byte ERROR_RECORD		= 2;
+	
+	public static final byte STATUS_SUCCEEDED	= 0;
+	public static final byte STATUS_FAILED		= 1;
+	
+	public static final String FILE_PREFIX		= "trace-";
+	public static final String FILE_SUFFIX		= ".rtl";
+	
+	public static final int DEFAULT_QUEUE_CAPACITY	= 65536;
+	public static final int DEFAULT_BLOCK_BYTES		= 64 * 1024;
+	public static final long DEFAULT_ROTATE_BYTES	= 64L * 1024L * 1024L;
+	
+	/** How long a partly filled block may sit in memory (in msecs) before it is written out anyway. */
+	public static long FLUSH_INTERVAL_MSECS			= 1000;
+	/** How long the writer parks (in nanos) when there is nothing to write. */
+	public static long IDLE_PARK_NANOS				= 5L * 1000000L;
+	
+	/**
+	 * A trace or error record. The lines are owned by the record once it has
+	 * been handed to the writer.
+	 */
+	public static class Record
+	{
+		public byte _type;
+		public long _timestamp;
+		public String _operationName;
+		public String _threadName;
+		public long _latencyNanos;
+		public byte _status;
+		public List<String> _lines;
+		
+		public Record( byte type, long timestamp, String operationName, String threadName, long latencyNanos, byte status, List<String> lines )
+		{
+			this._type = type;
+			this._timestamp = timestamp;
+			this._operationName = operationName;
+			this._threadName = threadName;
+			this._latencyNanos = latencyNanos;
+			this._status = status;
+			this._lines = lines;
+		}
+	}
+	
+	private String _trackName = "";
+	private String _directory = ".";
+	private boolean _compress = true;
+	private long _rotateBytes = DEFAULT_ROTATE_BYTES;
+	private int _blockBytes = DEFAULT_BLOCK_BYTES;
+	private int _queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	
+	private ConcurrentLinkedQueue<Record> _queue = new ConcurrentLinkedQueue<Record>();
+	private AtomicInteger _pending = new AtomicInteger( 0 );
+	private AtomicLong _dropped = new AtomicLong( 0 );
+	private volatile boolean _done = false;
+	// Set once the writer has stopped taking records off the queue
+	private volatile boolean _exited = false;
+	private boolean _failed = false;
+	
+	// Only touched by the writer thread
+	private DataOutputStream _out = null;
+	private int _fileIndex = 0;
+	private long _fileBytes = 0;
+	private long _bytesWritten = 0;
+	private long _recordsWritten = 0;
+	private ByteArrayOutputStream _blockBuffer = null;
+	private DataOutputStream _block = null;
+	private Deflater _deflater = null;
+	private byte[] _deflateBuffer = null;
+	private HashMap<String,Integer> _names = new HashMap<String,Integer>();
+	
+	public TraceLogWriter( String trackName, JSONObject config ) throws JSONException
+	{
+		this._trackName = trackName;
+		if( config.has( TraceLogWriter.CFG_DIRECTORY_KEY ) )
+			this._directory = config.getString( TraceLogWriter.CFG_DIRECTORY_KEY );
+		if( config.has( TraceLogWriter.CFG_COMPRESS_KEY ) )
+			this._compress = config.getBoolean( TraceLogWriter.CFG_COMPRESS_KEY );
+		if( config.has( TraceLogWriter.CFG_ROTATE_SIZE_KEY ) )
+			this._rotateBytes = (long) ( config.getDouble( TraceLogWriter.CFG_ROTATE_SIZE_KEY ) * 1024 * 1024 );
+		if( config.has( TraceLogWriter.CFG_BLOCK_SIZE_KEY ) )
+			this._blockBytes = config.getInt( TraceLogWriter.CFG_BLOCK_SIZE_KEY ) * 1024;
+		if( config.has( TraceLogWriter.CFG_QUEUE_CAPACITY_KEY ) )
+			this._queueCapacity = config.getInt( TraceLogWriter.CFG_QUEUE_CAPACITY_KEY );
+		
+		if( this._rotateBytes <= 0 || this._blockBytes <= 0 || this._queueCapacity <= 0 )
+			throw new JSONException( "Trace log rotation size, block size and queue capacity must be positive" );
+		
+		this._blockBuffer = new ByteArrayOutputStream( this._blockBytes + 4096 );
+		this._block = new DataOutputStream( this._blockBuffer );
+		if( this._compress )
+		{
+			this._deflater = new Deflater( Deflater.BEST_SPEED );
+			this._deflateBuffer = new byte[8192];
+		}
+		
+		this.setName( "TraceLogWriter-" + trackName );
+		this.setDaemon( true );
+	}
+	
+	public String getTrackName() { return this._trackName; }
+	public String getDirectory() { return this._directory; }
+	public boolean getCompress() { return this._compress; }
+	public long getRotateBytes() { return this._rotateBytes; }
+	public int getBlockBytes() { return this._blockBytes; }
+	public int getQueueCapacity() { return this._queueCapacity; }
+	
+	/** Number of records waiting to be written. */
+	public int getPending() { return this._pending.get(); }
+	/** Number of records dropped because the queue was full (or the writer was closed). */
+	public long getDropped() { return this._dropped.get(); }
+	/** The following are only accurate once the writer has been closed. */
+	public long getRecordsWritten() { return this._recordsWritten; }
+	public long getBytesWritten() { return this._bytesWritten; }
+	public int getFilesWritten() { return this._fileIndex; }
+	
+	/**
+	 * Returns the name of the n-th file this writer (would) write.
+	 */
+	public File getFile( int index )
+	{
+		return new File( this._directory, FILE_PREFIX + this._trackName + "." + String.format( "%04d", index ) + FILE_SUFFIX );
+	}
+	
+	/**
+	 * Hands a record to the writer thread. Never blocks.
+	 * 
+	 * @return  False if the record was dropped.
+	 */
+	public boolean offer( Record record )
+	{
+		if( this._done || this._pending.incrementAndGet() > this._queueCapacity )
+		{
+			if( !this._done )
+				this._pending.decrementAndGet();
+			this._dropped.incrementAndGet();
+			return false;
+		}
+		this._queue.offer( record );
+		// The writer may have drained the queue for the last time in between,
+		// then whoever gets the record out of the queue counts it as dropped
+		if( this._exited && this._queue.remove( record ) )
+		{
+			this._pending.decrementAndGet();
+			this._dropped.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+	
+	public void run()
+	{
+		long lastFlush = System.currentTimeMillis();
+		while( !this._done || !this._queue.isEmpty() )
+		{
+			Record record = this._queue.poll();
+			if( record == null )
+			{
+				long now = System.currentTimeMillis();
+				if( this._blockBuffer.size() > 0 && now - lastFlush >= FLUSH_INTERVAL_MSECS )
+				{
+					this.writeBlockSafely();
+					lastFlush = now;
+				}
+				LockSupport.parkNanos( this, IDLE_PARK_NANOS );
+				continue;
+			}
+			
+			this._pending.decrementAndGet();
+			if( this._failed )
+				continue;
+			
+			try
+			{
+				this.encode( record );
+				this._recordsWritten++;
+			}
+			catch( IOException ioe )
+			{
+				this.fail( ioe );
+				continue;
+			}
+			
+			if( this._blockBuffer.size() >= this._blockBytes )
+			{
+				this.writeBlockSafely();
+				lastFlush = System.currentTimeMillis();
+			}
+		}
+		
+		// Records offered while the writer was on its way out
+		this._exited = true;
+		Record late = this._queue.poll();
+		while( late != null )
+		{
+			this._pending.decrementAndGet();
+			this._dropped.incrementAndGet();
+			late = this._queue.poll();
+		}
+		
+		this.writeBlockSafely();
+		this.closeFile();
+		if( this._deflater != null )
+			this._deflater.end();
+	}
+	
+	/**
+	 * Stops accepting records, waits for the writer to drain the queue and
+	 * closes the current file.
+	 */
+	public void close()
+	{
+		this._done = true;
+		LockSupport.unpark( this );
+		try
+		{
+			if( this.isAlive() )
+				this.join();
+		}
+		catch( InterruptedException ie )
+		{
+			System.out.println( this + " Interrupted waiting for the trace log writer to exit!" );
+		}
+	}
+	
+	private void encode( Record record ) throws IOException
+	{
+		// Roll over to a new file at a block boundary so the name table of a file is self-contained 
+		if( this._blockBuffer.size() == 0 && ( this._out == null || this._fileBytes >= this._rotateBytes ) )
+			this.openNextFile();
+		
+		int operationId = this.nameId( record._operationName );
+		int threadId = this.nameId( record._threadName );
+		
+		this._block.writeByte( record._type );
+		this._block.writeLong( record._timestamp );
+		this._block.writeInt( operationId );
+		this._block.writeInt( threadId );
+		this._block.writeLong( record._latencyNanos );
+		this._block.writeByte( record._status );
+		if( record._lines == null )
+			this._block.writeInt( 0 );
+		else
+		{
+			this._block.writeInt( record._lines.size() );
+			for( String line : record._lines )
+				writeString( this._block, line == null ? "" : line );
+		}
+	}
+	
+	private int nameId( String name ) throws IOException
+	{
+		if( name == null )
+			name = "";
+		
+		Integer id = this._names.get( name );
+		if( id == null )
+		{
+			id = this._names.size();
+			this._names.put( name, id );
+			this._block.writeByte( NAME_RECORD );
+			this._block.writeInt( id );
+			writeString( this._block, name );
+		}
+		return id;
+	}
+	
+	private void openNextFile() throws IOException
+	{
+		this.closeFile();
+		
+		File file = this.getFile( this._fileIndex );
+		this._out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), 65536 ) );
+		this._fileIndex++;
+		this._names.clear();
+		
+		this._out.writeInt( MAGIC );
+		this._out.writeShort( VERSION );
+		this._out.writeByte( this._compress ? FLAG_COMPRESSED : 0 );
+		writeString( this._out, this._trackName );
+		this._out.writeLong( System.currentTimeMillis() );
+		this._fileBytes = this._out.size();
+		this._bytesWritten += this._fileBytes;
+	}
+	
+	private void writeBlockSafely()
+	{
+		if( this._failed )
+		{
+			this._blockBuffer.reset();
+			return;
+		}
+		
+		try
+		{
+			this.writeBlock();
+		}
+		catch( IOException ioe )
+		{
+			this.fail( ioe );
+		}
+	}
+	
+	private void writeBlock() throws IOException
+	{
+		int rawLength = this._blockBuffer.size();
+		if( rawLength == 0 )
+			return;
+		
+		byte[] raw = this._blockBuffer.toByteArray();
+		this._blockBuffer.reset();
+		
+		byte[] stored = raw;
+		int storedLength = rawLength;
+		if( this._deflater != null )
+		{
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream( rawLength / 2 + 64 );
+			this._deflater.reset();
+			this._deflater.setInput( raw, 0, rawLength );
+			this._deflater.finish();
+			while( !this._deflater.finished() )
+			{
+				int n = this._deflater.deflate( this._deflateBuffer );
+				compressed.write( this._deflateBuffer, 0, n );
+			}
+			stored = compressed.toByteArray();
+			storedLength = stored.length;
+		}
+		
+		this._out.writeInt( rawLength );
+		this._out.writeInt( storedLength );
+		this._out.write( stored, 0, storedLength );
+		this._out.flush();
+		this._fileBytes += 8 + storedLength;
+		this._bytesWritten += 8 + storedLength;
+	}
+	
+	private void closeFile()
+	{
+		if( this._out == null )
+			return;
+		
+		try
+		{
+			this._out.close();
+		}
+		catch( IOException ioe )
+		{
+			System.out.println( this + " Error closing trace log: " + this.getFile( this._fileIndex - 1 ) + " Reason: " + ioe.toString() );
+		}
+		this._out = null;
+	}
+	
+	private void fail( IOException ioe )
+	{
+		// Keep draining (and discarding) so producers never back up behind a broken disk
+		System.out.println( this + " Error writing trace log, discarding further trace records. Reason: " + ioe.toString() );
+		this._failed = true;
+		this._blockBuffer.reset();
+		this.closeFile();
+	}
+	
+	public static void writeString( DataOutputStream out, String val ) throws IOException
+	{
+		byte[] bytes = val.getBytes( "UTF-8" );
+		out.writeInt( bytes.length );
+		out.write( bytes );
+	}
+	
+	public String toString()
+	{
+		return "[TRACELOG: " + this._trackName + "]";
+	}
+}
@@ -41,8 +41,8 @@ public class Zipf
 	double _r = 0.0;
 	private Random _random;
 	
-	private boolean _first = true;
-	private double _c = 0; // Normalization constant
+	// Exact sampler for nextDouble2(), created on first use
+	private ZipfRejectionInversion _sampler = null;
 	
 	public Zipf( double a, double r, long L, long H )
 	{
@@ -64,35 +64,16 @@ public class Zipf
 	
 	public double nextDouble2()
 	{
-		
 		// Look at the gap between the upper and lower bound.
-		// We will be generating
+		// We will be generating ranks 1..N by rejection-inversion, which
+		// needs neither the harmonic normalization constant nor a scan
+		// over the ranks
 		long N = this._upperBound - this._lowerBound;
 		
-		if( this._first == true )
-		{
-			for( int i = 1; i <= N; i++ )
-				this._c = this._c + (1.0 / Math.pow( (double) i, this._a ) );
-			
-			this._c = 1.0 / this._c;
-			this._first = false;
-		}
-		
-		double rndU = 0.0;
-		double sumProb = 0.0;
-		
-		while( rndU == 0.0 )
-			rndU = this._random.nextDouble();
-		
-		// Map the random value to cdf
-		for( int i = 1; i <= N; i++ )
-		{
-			sumProb += this._c / Math.pow( (double) i , this._a );
-			if( sumProb >= rndU )
-				return i + this._lowerBound;
-		}
+		if( this._sampler == null )
+			this._sampler = new ZipfRejectionInversion( N, this._a );
 		
-		return 0;
+		return this._sampler.sample( this._random ) + this._lowerBound;
 	}
 	
 	public double nextDouble()
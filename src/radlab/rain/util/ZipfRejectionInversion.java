@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util;
+
+import java.util.Random;
+
+/**
+ * Draws exact Zipf distributed ranks in [1, n] with O(1) memory and
+ * expected O(1) time, for any exponent > 0 and n up to the range of a
+ * long, using the rejection-inversion method of W. Hormann and
+ * G. Derflinger, "Rejection-inversion to generate variates from monotone
+ * discrete distributions" (ACM TOMACS, 1996).<br />
+ * <br />
+ * Unlike computing the harmonic normalization or a CDF table, setup cost
+ * does not depend on n. Instances are immutable and can be shared between
+ * threads; each caller supplies its own random stream.
+ */
+public class ZipfRejectionInversion 
+{
+	private final long _n;
+	private final double _exponent;
+	private final double _hIntegralX1;
+	private final double _hIntegralN;
+	private final double _s;
+	
+	/**
+	 * @param n         Number of ranks, at least 1.
+	 * @param exponent  The Zipf exponent, greater than 0.
+	 */
+	public ZipfRejectionInversion( long n, double exponent )
+	{
+		if( n < 1 )
+			throw new IllegalArgumentException( "Zipf distribution needs at least one element: n = " + n );
+		if( !( exponent > 0 ) )
+			throw new IllegalArgumentException( "Zipf exponent must be greater than 0: " + exponent );
+		
+		this._n = n;
+		this._exponent = exponent;
+		this._hIntegralX1 = this.hIntegral( 1.5 ) - 1.0;
+		this._hIntegralN = this.hIntegral( n + 0.5 );
+		this._s = 2.0 - this.hIntegralInverse( this.hIntegral( 2.5 ) - this.h( 2 ) );
+	}
+	
+	public long getNumberOfElements() { return this._n; }
+	public double getExponent() { return this._exponent; }
+	
+	/**
+	 * Returns a rank in [1, n]; rank 1 is the most popular.
+	 */
+	public long sample( Random random )
+	{
+		while( true )
+		{
+			double u = this._hIntegralN + random.nextDouble() * ( this._hIntegralX1 - this._hIntegralN );
+			// u is uniform in (hIntegralX1, hIntegralN]
+			double x = this.hIntegralInverse( u );
+			long k = (long) ( x + 0.5 );
+			
+			// Guard against rounding at the edges of the range
+			if( k < 1 )
+				k = 1;
+			else if( k > this._n )
+				k = this._n;
+			
+			// Cheap squeeze first, the exact acceptance test only if that fails
+			if( k - x <= this._s || u >= this.hIntegral( k + 0.5 ) - this.h( k ) )
+				return k;
+		}
+	}
+	
+	// H(x) = ((x^(1-q)) - 1) / (1 - q), written to stay accurate as q -> 1
+	private double hIntegral( double x )
+	{
+		double logX = Math.log( x );
+		return helper2( ( 1.0 - this._exponent ) * logX ) * logX;
+	}
+	
+	// h(x) = x^-q
+	private double h( double x )
+	{
+		return Math.exp( -this._exponent * Math.log( x ) );
+	}
+	
+	private double hIntegralInverse( double x )
+	{
+		double t = x * ( 1.0 - this._exponent );
+		if( t < -1.0 )
+		{
+			// Limit to the smallest value of log1p's domain; only hit through rounding
+			t = -1.0;
+		}
+		return Math.exp( helper1( t ) * x );
+	}
+	
+	// log(1 + x) / x, with a series near 0
+	private static double helper1( double x )
+	{
+		if( Math.abs( x ) > 1e-8 )
+			return Math.log1p( x ) / x;
+		return 1.0 - x * ( 0.5 - x * ( 1.0 / 3.0 - 0.25 * x ) );
+	}
+	
+	// (exp(x) - 1) / x, with a series near 0
+	private static double helper2( double x )
+	{
+		if( Math.abs( x ) > 1e-8 )
+			return Math.expm1( x ) / x;
+		return 1.0 + x * 0.5 * ( 1.0 + x * 1.0 / 3.0 * ( 1.0 + 0.25 * x ) );
+	}
+}
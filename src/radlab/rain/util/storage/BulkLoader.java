@@ -0,0 +1,478 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util.storage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import radlab.rain.util.SplitMixRandom;
+
+/**
+ * Preloads a key range into a store in parallel. The range is cut into
+ * chunks that loader threads take one at a time, so fast and slow threads
+ * even out; each thread writes its chunks in batches through its own
+ * IBulkLoadWriter (i.e., with the store's batch or pipelining primitives),
+ * reusing the same value buffers for every batch.<br />
+ * <br />
+ * With a checkpoint file, every chunk is recorded once it has been written
+ * and flushed, and a later load with the same key range and chunk size skips
+ * the chunks already done, so an interrupted load can be resumed. Values are
+ * derived from the chunk, so a resumed load writes the same data.<br />
+ * <br />
+ * Progress (keys, MB and rates) is reported periodically and when the load
+ * is done.
+ */
+public class BulkLoader 
+{
+	public static int DEFAULT_THREADS			= 10;
+	public static int DEFAULT_BATCH_SIZE		= 100;
+	public static int DEFAULT_CHUNK_SIZE		= 100000;
+	public static int DEFAULT_RETRIES			= 3;
+	public static int DEFAULT_REPORT_INTERVAL	= 10; // Seconds
+	
+	/** Fresh random bytes for every value. */
+	public static String FILL_RANDOM			= "random";
+	/** Random bytes filled once per buffer, with the key stamped at the front. */
+	public static String FILL_STAMP				= "stamp";
+	
+	private static String CHECKPOINT_HEADER		= "# rain bulk load";
+	
+	private long _minKey = 1;
+	private long _maxKey = 100000;
+	private int _valueSize = 1024;
+	private int _threads = DEFAULT_THREADS;
+	private int _batchSize = DEFAULT_BATCH_SIZE;
+	private int _chunkSize = DEFAULT_CHUNK_SIZE;
+	private int _retries = DEFAULT_RETRIES;
+	private int _reportInterval = DEFAULT_REPORT_INTERVAL;
+	private String _fill = FILL_RANDOM;
+	private long _seed = 1;
+	private String _checkpointFilename = null;
+	
+	// Progress, shared by the loader threads
+	private AtomicLong _nextChunk = new AtomicLong();
+	private AtomicLong _keysLoaded = new AtomicLong();
+	private AtomicLong _batchesRetried = new AtomicLong();
+	private long _keysSkipped = 0;
+	private BitSet _chunksDone = new BitSet();
+	private FileOutputStream _checkpoint = null;
+	private volatile boolean _failed = false;
+	private PrintStream _out = System.out;
+	
+	public BulkLoader( long minKey, long maxKey, int valueSize )
+	{
+		this._minKey = minKey;
+		this._maxKey = maxKey;
+		this._valueSize = valueSize;
+	}
+	
+	public long getMinKey() { return this._minKey; }
+	public long getMaxKey() { return this._maxKey; }
+	public long getKeyCount() { return this._maxKey - this._minKey + 1; }
+	public int getValueSize() { return this._valueSize; }
+	public int getThreads() { return this._threads; }
+	public void setThreads( int val ) { this._threads = Math.max( 1, val ); }
+	public int getBatchSize() { return this._batchSize; }
+	public void setBatchSize( int val ) { this._batchSize = Math.max( 1, val ); }
+	public int getChunkSize() { return this._chunkSize; }
+	public void setChunkSize( int val ) { this._chunkSize = Math.max( 1, val ); }
+	public int getRetries() { return this._retries; }
+	public void setRetries( int val ) { this._retries = Math.max( 0, val ); }
+	public int getReportInterval() { return this._reportInterval; }
+	public void setReportInterval( int val ) { this._reportInterval = Math.max( 1, val ); }
+	public String getFill() { return this._fill; }
+	public void setFill( String val ) { this._fill = val; }
+	public long getSeed() { return this._seed; }
+	public void setSeed( long val ) { this._seed = val; }
+	public String getCheckpointFilename() { return this._checkpointFilename; }
+	public void setCheckpointFilename( String val ) { this._checkpointFilename = val; }
+	public long getKeysLoaded() { return this._keysLoaded.get(); }
+	
+	/**
+	 * Usage of the options understood by parseOptions().
+	 */
+	public static String getOptionsUsage()
+	{
+		return "[-threads <n>] [-batch <keys>] [-chunk <keys>] [-checkpoint <file>] [-fill random|stamp] [-retries <n>] [-report <secs>]";
+	}
+	
+	/**
+	 * Takes the loader options out of a command line.
+	 * 
+	 * @return  The remaining arguments.
+	 */
+	public static String[] parseOptions( String[] args, BulkLoader loader ) 
+	{
+		ArrayList<String> remaining = new ArrayList<String>();
+		for( int i = 0; i < args.length; i++ )
+		{
+			boolean hasValue = ( i + 1 < args.length );
+			if( args[i].equals( "-threads" ) && hasValue )
+				loader.setThreads( Integer.parseInt( args[++i] ) );
+			else if( args[i].equals( "-batch" ) && hasValue )
+				loader.setBatchSize( Integer.parseInt( args[++i] ) );
+			else if( args[i].equals( "-chunk" ) && hasValue )
+				loader.setChunkSize( Integer.parseInt( args[++i] ) );
+			else if( args[i].equals( "-checkpoint" ) && hasValue )
+				loader.setCheckpointFilename( args[++i] );
+			else if( args[i].equals( "-fill" ) && hasValue )
+				loader.setFill( args[++i] );
+			else if( args[i].equals( "-retries" ) && hasValue )
+				loader.setRetries( Integer.parseInt( args[++i] ) );
+			else if( args[i].equals( "-report" ) && hasValue )
+				loader.setReportInterval( Integer.parseInt( args[++i] ) );
+			else remaining.add( args[i] );
+		}
+		return remaining.toArray( new String[remaining.size()] );
+	}
+	
+	/**
+	 * Sets the key range and value size (after the options have been parsed,
+	 * so the options can be given anywhere on a command line).
+	 */
+	public void setRange( long minKey, long maxKey, int valueSize )
+	{
+		this._minKey = minKey;
+		this._maxKey = maxKey;
+		this._valueSize = valueSize;
+	}
+	
+	private long getChunkCount()
+	{
+		return ( this.getKeyCount() + this._chunkSize - 1 ) / this._chunkSize;
+	}
+	
+	/**
+	 * Loads the key range. Blocks until every loader thread is done.
+	 * 
+	 * @return  True if every key was loaded, false if the load failed (it can
+	 *          be resumed from the checkpoint, if any).
+	 */
+	public boolean load( IBulkLoadWriter.Factory factory ) throws IOException, InterruptedException
+	{
+		long chunks = this.getChunkCount();
+		if( chunks > Integer.MAX_VALUE )
+			throw new IOException( "Too many chunks (" + chunks + "), use a larger chunk size." );
+		
+		this._nextChunk.set( 0 );
+		this._keysLoaded.set( 0 );
+		this._batchesRetried.set( 0 );
+		this._failed = false;
+		this.openCheckpoint();
+		
+		this._keysSkipped = 0;
+		for( int chunk = this._chunksDone.nextSetBit( 0 ); chunk >= 0 && chunk < chunks; chunk = this._chunksDone.nextSetBit( chunk + 1 ) )
+			this._keysSkipped += this.getChunkLast( chunk ) - this.getChunkFirst( chunk ) + 1;
+		
+		long keysToLoad = this.getKeyCount() - this._keysSkipped;
+		this._out.println( this + " Loading keys " + this._minKey + " to " + this._maxKey + " (" + this.getKeyCount() + " keys of " + this._valueSize + " bytes) in "
+				+ chunks + " chunks of " + this._chunkSize + " with " + this._threads + " threads, " + this._batchSize + " keys per batch." );
+		if( this._keysSkipped > 0 )
+			this._out.println( this + " Resuming from checkpoint " + this._checkpointFilename + ": " + this._keysSkipped + " keys already loaded, " + keysToLoad + " to go." );
+		
+		ArrayList<LoaderThread> threads = new ArrayList<LoaderThread>();
+		try
+		{
+			for( int i = 0; i < this._threads; i++ )
+			{
+				try
+				{
+					threads.add( new LoaderThread( i, factory.createWriter( i ) ) );
+				}
+				catch( Exception e )
+				{
+					this._out.println( this + " Error creating the writer of loader thread " + i + ". Reason: " + e.toString() );
+					this._failed = true;
+					return false;
+				}
+			}
+			
+			long start = System.currentTimeMillis();
+			for( LoaderThread thread : threads )
+				thread.start();
+			
+			// Report progress until everyone's done
+			long lastReport = start;
+			long lastKeys = 0;
+			for( LoaderThread thread : threads )
+			{
+				while( thread.isAlive() )
+				{
+					thread.join( 1000 );
+					long now = System.currentTimeMillis();
+					if( now - lastReport >= this._reportInterval * 1000L )
+					{
+						long keys = this._keysLoaded.get();
+						this.printProgress( keys, keys - lastKeys, now - lastReport, now - start, keysToLoad );
+						lastReport = now;
+						lastKeys = keys;
+					}
+				}
+			}
+			
+			this.printSummary( System.currentTimeMillis() - start );
+			return !this._failed;
+		}
+		finally
+		{
+			for( LoaderThread thread : threads )
+				thread._writer.close();
+			this.closeCheckpoint();
+		}
+	}
+	
+	private long getChunkFirst( long chunk ) { return this._minKey + ( chunk * this._chunkSize ); }
+	private long getChunkLast( long chunk ) { return Math.min( this._maxKey, this.getChunkFirst( chunk ) + this._chunkSize - 1 ); }
+	
+	private void printProgress( long keys, long intervalKeys, long intervalMsecs, long elapsedMsecs, long keysToLoad )
+	{
+		double rate = intervalKeys / ( intervalMsecs / 1000.0 );
+		double overallRate = keys / ( Math.max( 1, elapsedMsecs ) / 1000.0 );
+		long etaSecs = ( overallRate > 0 ) ? (long) ( ( keysToLoad - keys ) / overallRate ) : -1;
+		this._out.println( this + " " + keys + "/" + keysToLoad + " keys (" + String.format( "%.1f", ( 100.0 * keys ) / Math.max( 1, keysToLoad ) ) + "%) "
+				+ String.format( "%.1f", rate ) + " keys/sec " + String.format( "%.2f", ( rate * this._valueSize ) / ( 1024 * 1024 ) ) + " MB/sec"
+				+ ( ( etaSecs >= 0 ) ? " eta: " + etaSecs + " secs" : "" ) );
+	}
+	
+	private void printSummary( long durationMsecs )
+	{
+		long keys = this._keysLoaded.get();
+		double durationSecs = Math.max( 1, durationMsecs ) / 1000.0;
+		double rate = keys / durationSecs;
+		this._out.println( this + " " + ( this._failed ? "Load FAILED" : "Load finished" ) + ": " + keys + " keys in " + durationSecs + " seconds"
+				+ ( this._keysSkipped > 0 ? " (" + this._keysSkipped + " keys loaded earlier)" : "" ) );
+		this._out.println( this + " Rate [" + this._valueSize + "]: " + String.format( "%.1f", rate ) + " puts/sec " 
+				+ String.format( "%.2f", ( rate * this._valueSize ) / ( 1024 * 1024 ) ) + " MB/sec, batches retried: " + this._batchesRetried.get() );
+		if( this._failed && this._checkpointFilename != null )
+			this._out.println( this + " Rerun with the same key range and -checkpoint " + this._checkpointFilename + " to resume." );
+	}
+	
+	/**
+	 * Reads the chunks done so far (if any) and opens the checkpoint for
+	 * appending. The checkpoint is a header line describing the load and the
+	 * number of each chunk done, a line each.
+	 */
+	private void openCheckpoint() throws IOException
+	{
+		this._chunksDone.clear();
+		if( this._checkpointFilename == null )
+			return;
+		
+		String header = CHECKPOINT_HEADER + " " + this._minKey + " " + this._maxKey + " " + this._chunkSize;
+		File file = new File( this._checkpointFilename );
+		boolean exists = file.exists() && file.length() > 0;
+		if( exists )
+		{
+			BufferedReader reader = new BufferedReader( new FileReader( file ) );
+			try
+			{
+				String line = reader.readLine();
+				if( line == null || !line.equals( header ) )
+					throw new IOException( "Checkpoint " + file + " is for a different load (" + line + "), expected: " + header );
+				while( ( line = reader.readLine() ) != null )
+				{
+					try
+					{
+						this._chunksDone.set( Integer.parseInt( line.trim() ) );
+					}
+					catch( NumberFormatException nfe )
+					{
+						// A line cut short when the last load died, that chunk will be reloaded
+					}
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		
+		this._checkpoint = new FileOutputStream( file, true );
+		if( !exists )
+			this._checkpoint.write( ( header + "\n" ).getBytes( "UTF-8" ) );
+	}
+	
+	private synchronized void checkpoint( long chunk ) throws IOException
+	{
+		this._chunksDone.set( (int) chunk );
+		if( this._checkpoint == null )
+			return;
+		this._checkpoint.write( ( chunk + "\n" ).getBytes( "UTF-8" ) );
+		this._checkpoint.getChannel().force( false );
+	}
+	
+	private synchronized boolean isChunkDone( long chunk )
+	{
+		return this._chunksDone.get( (int) chunk );
+	}
+	
+	private void closeCheckpoint()
+	{
+		if( this._checkpoint == null )
+			return;
+		try
+		{
+			this._checkpoint.close();
+		}
+		catch( IOException ioe )
+		{
+			this._out.println( this + " Error closing checkpoint. Reason: " + ioe.toString() );
+		}
+		this._checkpoint = null;
+	}
+	
+	/**
+	 * Loads chunks until there are none left (or the load failed).
+	 */
+	private class LoaderThread extends Thread
+	{
+		private IBulkLoadWriter _writer;
+		private byte[][] _values;
+		private SplitMixRandom _random = new SplitMixRandom( 0 );
+		
+		public LoaderThread( int id, IBulkLoadWriter writer )
+		{
+			this._writer = writer;
+			this.setName( "BulkLoader-" + id );
+			this.setDaemon( true );
+		}
+		
+		public void run()
+		{
+			BulkLoader loader = BulkLoader.this;
+			long chunks = loader.getChunkCount();
+			boolean stamp = loader._fill.equalsIgnoreCase( FILL_STAMP );
+			
+			// The only value buffers this thread ever uses
+			this._values = new byte[loader._batchSize][loader._valueSize];
+			if( stamp )
+			{
+				this._random.setSeed( loader._seed );
+				for( byte[] value : this._values )
+					fill( value, this._random );
+			}
+			
+			long chunk = 0;
+			try
+			{
+				while( !loader._failed && ( chunk = loader._nextChunk.getAndIncrement() ) < chunks )
+				{
+					if( loader.isChunkDone( chunk ) )
+						continue;
+					
+					// Values depend only on the chunk, so a resumed load writes the same data
+					this._random.setSeed( loader._seed ^ ( chunk * 0x9E3779B97F4A7C15L ) );
+					long last = loader.getChunkLast( chunk );
+					for( long key = loader.getChunkFirst( chunk ); key <= last && !loader._failed; key += loader._batchSize )
+					{
+						int count = (int) Math.min( loader._batchSize, last - key + 1 );
+						for( int i = 0; i < count; i++ )
+						{
+							if( stamp )
+								stamp( this._values[i], key + i );
+							else fill( this._values[i], this._random );
+						}
+						this.write( key, count );
+						loader._keysLoaded.addAndGet( count );
+					}
+					
+					if( loader._failed )
+						break;
+					this._writer.flush();
+					loader.checkpoint( chunk );
+				}
+			}
+			catch( Exception e )
+			{
+				loader._out.println( "[" + this.getName() + "] Error loading chunk " + chunk + " (keys " + loader.getChunkFirst( chunk ) + " to " + loader.getChunkLast( chunk ) + "). Reason: " + e.toString() );
+				loader._failed = true;
+			}
+		}
+		
+		private void write( long firstKey, int count ) throws Exception
+		{
+			BulkLoader loader = BulkLoader.this;
+			for( int attempt = 0; ; attempt++ )
+			{
+				try
+				{
+					this._writer.write( firstKey, count, this._values );
+					return;
+				}
+				catch( Exception e )
+				{
+					if( attempt >= loader._retries )
+						throw e;
+					loader._batchesRetried.incrementAndGet();
+					Thread.sleep( 100L << Math.min( attempt, 6 ) );
+				}
+			}
+		}
+	}
+	
+	/** Fills a buffer with random bytes, 8 at a time. */
+	private static void fill( byte[] value, SplitMixRandom random )
+	{
+		int i = 0;
+		for( ; i + 8 <= value.length; i += 8 )
+		{
+			long bits = random.nextLong();
+			for( int b = 0; b < 8; b++ )
+				value[i + b] = (byte) ( bits >>> ( b * 8 ) );
+		}
+		if( i < value.length )
+		{
+			long bits = random.nextLong();
+			for( ; i < value.length; i++, bits >>>= 8 )
+				value[i] = (byte) bits;
+		}
+	}
+	
+	/** Stamps a key over the first (up to) 8 bytes of a buffer. */
+	private static void stamp( byte[] value, long key )
+	{
+		for( int b = 0; b < 8 && b < value.length; b++ )
+			value[b] = (byte) ( key >>> ( b * 8 ) );
+	}
+	
+	public String toString()
+	{
+		return "[BULK LOADER]";
+	}
+}
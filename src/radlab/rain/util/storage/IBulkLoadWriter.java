@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util.storage;
+
+/**
+ * Writes batches of key-value pairs to a store for the BulkLoader. Every
+ * loader thread gets a writer of its own, so writers need not be thread
+ * safe. Writers should use the store's batch or pipelining primitives.
+ */
+public interface IBulkLoadWriter 
+{
+	/** Creates the writer of each loader thread. */
+	public interface Factory
+	{
+		IBulkLoadWriter createWriter( int worker ) throws Exception;
+	}
+	
+	/**
+	 * Writes the keys firstKey, firstKey + 1, ..., firstKey + count - 1 with
+	 * values[0], ..., values[count - 1]. The value buffers are refilled
+	 * for the next batch once this returns, so don't hold on to them.
+	 */
+	void write( long firstKey, int count, byte[][] values ) throws Exception;
+	
+	/**
+	 * Makes everything written so far durable, e.g., flushes write buffers.
+	 * Called before a chunk of keys is checkpointed.
+	 */
+	void flush() throws Exception;
+	
+	/** Releases the writer's connections. */
+	void close();
+}
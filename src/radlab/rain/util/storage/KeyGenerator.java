@@ -32,6 +32,7 @@
 package radlab.rain.util.storage;
 
 import java.lang.reflect.Constructor;
+import java.util.Random;
 
 import org.json.JSONObject;
 
@@ -74,6 +75,34 @@ public abstract class KeyGenerator
 	 */
 	public abstract int generateKey();
 	
+	/**
+	 * Generates a key drawing on the caller's random stream instead of the
+	 * generator's own one. Key generators hang off load profiles and are
+	 * shared by every user of a track, so generators should pass their
+	 * per-user stream here rather than contend on a common one.
+	 * 
+	 * @param random    The random stream to sample from.
+	 * @return          An integral key.
+	 */
+	public abstract int generateKey( Random random );
+	
+	/**
+	 * Generates a key from a keyspace that may not fit into an int. Key
+	 * generators limited to int keys simply widen generateKey( random ).
+	 * 
+	 * @param random    The random stream to sample from.
+	 * @return          A key in [getMinLongKey(), getMaxLongKey()).
+	 */
+	public long generateLongKey( Random random )
+	{
+		return this.generateKey( random );
+	}
+	
+	/** Lower bound of the keys generated, inclusive. */
+	public long getMinLongKey() { return this.lowerBound; }
+	/** Upper bound of the keys generated, exclusive. */
+	public long getMaxLongKey() { return this.upperBound; }
+	
 	/**
 	 * Returns the name of this generator.
 	 * 
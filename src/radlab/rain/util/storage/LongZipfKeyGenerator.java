@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.util.storage;
+
+import java.util.Random;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import radlab.rain.util.SplitMixRandom;
+import radlab.rain.util.ZipfRejectionInversion;
+
+/**
+ * Zipf key generator for keyspaces of up to billions of keys. Ranks are
+ * drawn by rejection-inversion, so nothing proportional to the keyspace is
+ * ever materialized, and then mapped onto keys with a seeded bijective
+ * scramble so popular keys are spread over the whole keyspace instead of
+ * being clustered at its start.<br />
+ * <br />
+ * Configuration: minKey and maxKey (inclusive, may exceed the int range),
+ * a (the exponent, any value greater than 0), rngSeed, and optionally
+ * scramble (default true).
+ */
+public class LongZipfKeyGenerator extends KeyGenerator 
+{
+	public static final String SCRAMBLE_CONFIG_KEY = "scramble";
+	
+	protected String name = "LongZipf";
+	
+	protected Random random = null;
+	
+	protected long minLongKey;
+	/** Number of keys in the keyspace. */
+	protected long keyCount;
+	protected boolean scramble = true;
+	
+	protected ZipfRejectionInversion sampler;
+	
+	// Scramble parameters: a permutation of [0, 2^bits) that is applied
+	// until the result falls inside the keyspace (cycle walking)
+	private final int _bits;
+	private final int _shift;
+	private final long _mask;
+	private final long _offset;
+	private final long _multiplier1;
+	private final long _multiplier2;
+	
+	public LongZipfKeyGenerator( JSONObject configObj ) throws JSONException
+	{
+		this( configObj.getDouble( A_CONFIG_KEY ),
+			  configObj.getLong( MIN_KEY_CONFIG_KEY ),
+			  configObj.getLong( MAX_KEY_CONFIG_KEY ),
+			  configObj.getLong( RNG_SEED_KEY ),
+			  configObj.has( SCRAMBLE_CONFIG_KEY ) ? configObj.getBoolean( SCRAMBLE_CONFIG_KEY ) : true );
+	}
+	
+	public LongZipfKeyGenerator( double a, long minKey, long maxKey, long seed )
+	{
+		this( a, minKey, maxKey, seed, true );
+	}
+	
+	public LongZipfKeyGenerator( double a, long minKey, long maxKey, long seed, boolean scramble )
+	{
+		if( maxKey < minKey || maxKey - minKey == Long.MAX_VALUE || maxKey - minKey < 0 )
+			throw new IllegalArgumentException( "Invalid key range: [" + minKey + ", " + maxKey + "]" );
+		
+		this.minLongKey = minKey;
+		this.keyCount = maxKey - minKey + 1;
+		// The int view of the bounds, for code that only knows about int keys
+		this.lowerBound = (int) Math.max( Integer.MIN_VALUE, Math.min( Integer.MAX_VALUE, minKey ) );
+		this.upperBound = (int) Math.max( Integer.MIN_VALUE, Math.min( Integer.MAX_VALUE, maxKey + 1 ) );
+		this.seed = seed;
+		this.scramble = scramble;
+		this.random = new Random( this.seed );
+		this.sampler = new ZipfRejectionInversion( this.keyCount, a );
+		
+		this._bits = Math.max( 1, 64 - Long.numberOfLeadingZeros( this.keyCount - 1 ) );
+		this._shift = this._bits / 2 + 1;
+		this._mask = ( this._bits == 64 ) ? -1L : ( 1L << this._bits ) - 1;
+		// Odd multipliers keep multiplication modulo 2^bits a bijection
+		this._offset = SplitMixRandom.mix64( seed );
+		this._multiplier1 = SplitMixRandom.mix64( this._offset ) | 1L;
+		this._multiplier2 = SplitMixRandom.mix64( this._multiplier1 ) | 1L;
+	}
+	
+	@Override
+	public long getMinLongKey() { return this.minLongKey; }
+	@Override
+	public long getMaxLongKey() { return this.minLongKey + this.keyCount; }
+	
+	@Override
+	public int generateKey()
+	{
+		return this.generateKey( this.random );
+	}
+	
+	@Override
+	public int generateKey( Random random )
+	{
+		long key = this.generateLongKey( random );
+		if( key > Integer.MAX_VALUE || key < Integer.MIN_VALUE )
+			throw new IllegalStateException( "Key " + key + " does not fit into an int, use generateLongKey()" );
+		return (int) key;
+	}
+	
+	@Override
+	public long generateLongKey( Random random )
+	{
+		long rank = this.sampler.sample( random ) - 1;
+		if( this.scramble )
+			rank = this.permute( rank );
+		return this.minLongKey + rank;
+	}
+	
+	/**
+	 * Maps [0, keyCount) onto itself one-to-one. Each round is a bijection
+	 * on [0, 2^bits); results outside the keyspace are fed back in until
+	 * one lands inside, which takes fewer than two rounds on average.
+	 */
+	protected long permute( long value )
+	{
+		long x = value;
+		do
+		{
+			x = ( x * this._multiplier1 + this._offset ) & this._mask;
+			x ^= x >>> this._shift;
+			x = ( x * this._multiplier2 ) & this._mask;
+			x ^= x >>> this._shift;
+		} while( x >= this.keyCount || x < 0 );
+		return x;
+	}
+}
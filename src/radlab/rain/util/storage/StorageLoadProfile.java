@@ -36,8 +36,8 @@ public class StorageLoadProfile extends LoadProfile
 		
 	protected int _numHotObjects 					= 0;
 	protected double _hotTrafficFraction 			= 0.0;
-	protected ArrayList<Integer> _hotObjectList		= new ArrayList<Integer>();
-	protected HashSet<Integer> _hotObjectSet		= new HashSet<Integer>();
+	protected ArrayList<Long> _hotObjectList		= new ArrayList<Long>();
+	protected HashSet<Long> _hotObjectSet			= new HashSet<Long>();
 	// We'll eventually add support for hotSet skew, in the short term all hot objects
 	// will be equally popular, later we'll let some be more popular than others
 	
@@ -91,7 +91,7 @@ public class StorageLoadProfile extends LoadProfile
 				JSONArray hotSet = profileObj.getJSONArray( CFG_HOT_SET_KEY );
 				for( int i = 0; i < hotSet.length(); i++ )
 				{
-					int obj = hotSet.getInt( i );
+					long obj = hotSet.getLong( i );
 					this._hotObjectList.add( obj );
 					this._hotObjectSet.add( obj );
 				}
@@ -107,23 +107,23 @@ public class StorageLoadProfile extends LoadProfile
 				this._hotObjectList.clear();
 				
 				Random rnd = new Random( this.getKeyGenerator().getSeed() );
-				int minKey = this._keyGenerator.getMinKey();
-				int maxKey = this._keyGenerator.getMaxKey();
-				// Pick hotspots independently
-				int numObjects =  maxKey - minKey;
+				// Pick hotspots independently, anywhere in the (long) keyspace
+				long minKey = this._keyGenerator.getMinLongKey();
+				long maxKey = this._keyGenerator.getMaxLongKey();
+				long numObjects = maxKey - minKey;
 				
 				if( this._numHotObjects >= numObjects )
 					throw new JSONException( "Number of hot objects must be less than the total number of objects" );
 					
 				while( this._hotObjectSet.size() < this._numHotObjects )
 				{
-					int key = rnd.nextInt( maxKey );
+					long key = uniformKey( rnd, minKey, maxKey );
 					if( !this._hotObjectSet.contains( key ) )
 						this._hotObjectSet.add( key );
 				}
 				
 				// Now that we have the hot objects save them in the profile
-				Iterator<Integer> it = this._hotObjectSet.iterator();
+				Iterator<Long> it = this._hotObjectSet.iterator();
 				while( it.hasNext() )
 				{
 					this._hotObjectList.add( it.next() );
@@ -161,8 +161,42 @@ public class StorageLoadProfile extends LoadProfile
 	public double getHotTrafficFraction() { return this._hotTrafficFraction; }
 	public void setHotTrafficFraction( double value ) { this._hotTrafficFraction = value; }
 	
-	public ArrayList<Integer> getHotObjectList() { return this._hotObjectList; }
-	public HashSet<Integer> getHotObjectSet() { return this._hotObjectSet; }
+	public ArrayList<Long> getHotObjectList() { return this._hotObjectList; }
+	public HashSet<Long> getHotObjectSet() { return this._hotObjectSet; }
+	
+	/**
+	 * Checks whether a key is one of the hot objects.
+	 */
+	public boolean isHotObject( long key )
+	{
+		return this._hotObjectSet.contains( key );
+	}
+	
+	/**
+	 * Draws a key uniformly from [minKey, maxKey).
+	 */
+	public static long uniformKey( Random rnd, long minKey, long maxKey )
+	{
+		long range = maxKey - minKey;
+		if( range <= 0 )
+		{
+			// The range overflowed a long, draw until we land in it
+			long key = rnd.nextLong();
+			while( key < minKey || key >= maxKey )
+				key = rnd.nextLong();
+			return key;
+		}
+		
+		// Reject the top of the 63-bit range that would bias the modulo (see Random.nextInt( n ))
+		long bits = rnd.nextLong() >>> 1;
+		long val = bits % range;
+		while( bits - val + ( range - 1 ) < 0 )
+		{
+			bits = rnd.nextLong() >>> 1;
+			val = bits % range;
+		}
+		return minKey + val;
+	}
 	
 	public int getSize() { return this._size; }
 	public void setSize( int value ) { this._size = value; };
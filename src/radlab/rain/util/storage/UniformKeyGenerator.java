@@ -59,6 +59,12 @@ public class UniformKeyGenerator extends KeyGenerator
 	
 	@Override
 	public int generateKey()
+	{
+		return this.generateKey( this.random );
+	}
+	
+	@Override
+	public int generateKey( Random random )
 	{
 		return random.nextInt( upperBound - lowerBound ) + lowerBound;
 	}
@@ -36,6 +36,7 @@ import java.util.Random;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import radlab.rain.util.AliasTable;
 import radlab.rain.util.Histogram;
 
 public class ZipfKeyGenerator extends KeyGenerator 
@@ -50,6 +51,8 @@ public class ZipfKeyGenerator extends KeyGenerator
 	public static final int DIRECT_SAMPLING_METHOD = 0;
 	/** Constant to specify the rejection inversion sampling method. */
 	public static final int REJECTION_SAMPLING_METHOD = 1;
+	/** Most ranks given their own alias table column by the direct sampling method (~48MB). */
+	public static final int MAX_ALIAS_TABLE_SIZE = 1 << 22;
 	/** Constant to specify the default sampling method. */
 	private static final int DEFAULT_SAMPLING_METHOD = DIRECT_SAMPLING_METHOD;
 
@@ -63,7 +66,8 @@ public class ZipfKeyGenerator extends KeyGenerator
 	/** Random number used to shuffle keys around. */
 	protected double r;
 
-	protected double[] cdf;
+	/** Shared by every user of the profile; built on first use. */
+	protected volatile DirectSampler directSampler;
 	
 	/** The sampling method (either direct or rejection sampling). */
 	protected int _method = DIRECT_SAMPLING_METHOD;
@@ -100,6 +104,11 @@ public class ZipfKeyGenerator extends KeyGenerator
 	}
 
 	public int generateKey()
+	{
+		return this.generateKey( this.random );
+	}
+	
+	public int generateKey( Random random )
 	{
 		int key = -1;
 
@@ -107,11 +116,11 @@ public class ZipfKeyGenerator extends KeyGenerator
 		{
 			case DIRECT_SAMPLING_METHOD:
 				// Generate zipf numbers directly
-				key = this.generateKeyDirect();
+				key = this.generateKeyDirect( random );
 				break;
 			case REJECTION_SAMPLING_METHOD:
 				// Generate zipf numbers directly
-				key = this.generateKeyReject();
+				key = this.generateKeyReject( random );
 				break;
 		}
 
@@ -119,76 +128,52 @@ public class ZipfKeyGenerator extends KeyGenerator
 	}
 	
 	public int generateKeyReject()
+	{
+		return this.generateKeyReject( this.random );
+	}
+	
+	public int generateKeyReject( Random random )
 	{
 		int k = -1;
 		do {
-			k = sampleZipfReject();
+			k = sampleZipfReject( random );
 		} while ( k > upperBound );
 		return Math.abs( (Double.valueOf( ( k + 1 ) * r ) ).hashCode() ) % ( upperBound - lowerBound ) + lowerBound;
 	}
 
 	public int generateKeyDirect()
 	{
-		int k = this.sampleZipfDirect();
+		return this.generateKeyDirect( this.random );
+	}
+	
+	public int generateKeyDirect( Random random )
+	{
+		int k = this.sampleZipfDirect( random );
 		// Unlike the rejection method, we won't get values out of bounds
 		return Math.abs( (Double.valueOf( ( k + 1 ) * r ) ).hashCode() ) % ( upperBound - lowerBound ) + lowerBound;
 	}
 	
-	// Compute Zipfian numbers directly
-	private double[] computeZipfCdf()
+	// Build the direct sampler: an alias table over the most popular ranks,
+	// plus (for very large keyspaces) one extra column standing for the tail
+	private synchronized DirectSampler getDirectSampler()
 	{
-		// Compute the zipf probabilities directly using the shape parameter
-		int keys = this.upperBound - this.lowerBound;
-		double[] probabilities = new double[keys];
-		double[] cdf = new double[keys];
-		double sum = 0.0;
-				
-		for( int i = 0; i < keys; i++ )
-		{
-			probabilities[i] = Math.pow( 1.0/(i+1), this.a );
-			sum += probabilities[i];
-			//System.out.println( "i: " + i + " p(i) raw: " + p_i[i] );
-		}
-		
-		//System.out.println( "Normalizing" );
-		
-		// Normalize the probabilities so they sum to 1, and compute the cdf using the normalized probabilities
-		for( int i = 0; i < keys; i++ )
-		{
-			probabilities[i] /= sum; // Normalized probability
-			
-			//System.out.println( Math.log( i+1 ) + "\t" + /*"i: " + i + " p(i) norm: " +*/ Math.log(probabilities[i]) );
-			
-			if( i == 0 )
-				cdf[i] = probabilities[i];
-			else cdf[i] = cdf[i-1] + probabilities[i];
-			
-			//System.out.println( (i+1) + " " + probabilities[i] + " " + cdf[i] );
-		}
-		return cdf;
+		if( this.directSampler == null )
+			this.directSampler = new DirectSampler( this.upperBound - this.lowerBound, this.a );
+		return this.directSampler;
 	}
 	
-	private int sampleZipfDirect()
+	private int sampleZipfDirect( Random random )
 	{
-		if( this.cdf == null )
-			this.cdf = this.computeZipfCdf();
-				
-		// Generate a random number
-		double rndVal = this.random.nextDouble();
-		int i = 0;
-		for( i = 0; i < cdf.length; i++ )
-		{
-			if( rndVal <= cdf[i] )
-				break;
-		}
-		
-		return i + this.lowerBound;
+		DirectSampler sampler = this.directSampler;
+		if( sampler == null )
+			sampler = this.getDirectSampler();
+		return sampler.sample( random ) + this.lowerBound;
 	}
 	
 	// Rejection method for generating Zipfian numbers
 	// See: Non-Uniform Random Variate Generation, Chapter 10: Discrete Univariate Distributions,  
 	// Luc Devroye (http://luc.devroye.org/rnbookindex.html)
-	private int sampleZipfReject()
+	private int sampleZipfReject( Random random )
 	{
 		double b = Math.pow( 2, a - 1 );
 		double u, v, x, t = 0.0;
@@ -215,6 +200,60 @@ public class ZipfKeyGenerator extends KeyGenerator
 		return method;
 	}
 
+	/**
+	 * Immutable O(1) sampler for Zipf ranks (0-based) out of a keyspace.
+	 * Every rank up to MAX_ALIAS_TABLE_SIZE gets its own alias table
+	 * column. Beyond that the remaining ranks share one column, and a rank
+	 * within the tail is drawn by inverting the CDF of the continuous power
+	 * law x^-a over [head + 0.5, keys + 0.5], which approximates the
+	 * discrete tail closely because the weights change very slowly there.
+	 */
+	protected static class DirectSampler
+	{
+		private final AliasTable _table;
+		private final int _head;
+		private final int _keys;
+		private final double _tailBase;
+		private final double _tailSpan;
+		private final double _tailExponent;
+		
+		public DirectSampler( int keys, double a )
+		{
+			this._keys = keys;
+			this._head = Math.min( keys, MAX_ALIAS_TABLE_SIZE );
+			boolean hasTail = keys > this._head;
+			
+			double[] weights = new double[hasTail ? this._head + 1 : this._head];
+			for( int i = 0; i < this._head; i++ )
+				weights[i] = Math.pow( 1.0/(i+1), a );
+			
+			double oneMinusA = 1.0 - a;
+			this._tailBase = Math.pow( this._head + 0.5, oneMinusA );
+			this._tailSpan = Math.pow( keys + 0.5, oneMinusA ) - this._tailBase;
+			this._tailExponent = 1.0 / oneMinusA;
+			// Integral of x^-a over the tail interval
+			if( hasTail )
+				weights[this._head] = this._tailSpan / oneMinusA;
+			
+			this._table = new AliasTable( weights );
+		}
+		
+		public int sample( Random random )
+		{
+			int rank = this._table.sample( random );
+			if( rank < this._head )
+				return rank;
+			
+			double x = Math.pow( this._tailBase + random.nextDouble() * this._tailSpan, this._tailExponent );
+			rank = (int) Math.round( x ) - 1;
+			if( rank < this._head )
+				return this._head;
+			if( rank >= this._keys )
+				return this._keys - 1;
+			return rank;
+		}
+	}
+	
 	public static void main( String[] args )
 	{
 		/*double probSum = 0.0;
@@ -156,7 +156,7 @@ public abstract class BookingOperation extends Operation
 			for (String imageUrl : imageUrls )
 			{
 				// Do not load if cached (adding returns false if present).
-				this._http.fetchUrl( imageUrl );
+				this._http.drainUrl( imageUrl );
 				imagesLoaded++;
 			}
 		}
@@ -192,7 +192,7 @@ public abstract class BookingOperation extends Operation
 
 			for ( String url : urls )
 			{
-				this._http.fetchUrl( url );
+				this._http.drainUrl( url );
 				staticsLoaded++;
 			}
 		}
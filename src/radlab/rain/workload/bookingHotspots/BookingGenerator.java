@@ -166,8 +166,8 @@ public class BookingGenerator extends Generator
 	 */
 	public void initialize()
 	{
-		this._randomNumberGenerator = new java.util.Random();
-		this._http = new HttpTransport();
+		this._randomNumberGenerator = this.getRandom();
+		this._http = this.createHttpTransport();
 	}
 	
 	/**
@@ -358,7 +358,7 @@ public class BookingGenerator extends Generator
 	 */
 	public SearchHotelOperation createSearchHotelOperation(BookingLoadProfile loadProfile)
 	{
-		Hotel hotel = loadProfile.nextHotel();
+		Hotel hotel = loadProfile.nextHotel( this._randomNumberGenerator );
 		SearchHotelOperation op = new SearchHotelOperation( this.getTrack().getInteractive(), this.getScoreboard(), hotel );
 		op.prepare( this );
 		return op;
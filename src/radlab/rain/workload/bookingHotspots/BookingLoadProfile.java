@@ -3,6 +3,8 @@ package radlab.rain.workload.bookingHotspots;
 //import org.json.JSONException;
 //import org.json.JSONObject;
 
+import java.util.Random;
+
 import radlab.rain.LoadProfile;
 import radlab.rain.hotspots.IObjectGenerator;
 
@@ -23,4 +25,8 @@ public class BookingLoadProfile extends LoadProfile {
 		return( hotelGenerator.next() );
 	}
 	
+	public Hotel nextHotel(Random random) {
+		return( hotelGenerator.next(random) );
+	}
+	
 }
@@ -153,7 +153,7 @@ public abstract class BookingOperation extends Operation
 			for (String imageUrl : imageUrls )
 			{
 				// Do not load if cached (adding returns false if present).
-				this._http.fetchUrl( imageUrl );
+				this._http.drainUrl( imageUrl );
 				imagesLoaded++;
 			}
 		}
@@ -176,7 +176,7 @@ public abstract class BookingOperation extends Operation
 		
 		for ( String url : urls )
 		{
-			this._http.fetchUrl( url );
+			this._http.drainUrl( url );
 			staticsLoaded++;
 		}
 		
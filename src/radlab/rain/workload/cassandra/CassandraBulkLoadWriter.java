@@ -0,0 +1,44 @@
+package radlab.rain.workload.cassandra;
+
+import java.text.NumberFormat;
+
+import radlab.rain.util.storage.IBulkLoadWriter;
+
+/**
+ * Loads batches of keys into Cassandra with batch mutations.
+ */
+public class CassandraBulkLoadWriter implements IBulkLoadWriter 
+{
+	private CassandraTransport _cassandraClient = null;
+	private String _columnFamilyName = "";
+	private String[] _keys = new String[0];
+	// DecimalFormat isn't thread safe, every loader thread formats its keys with its own
+	private NumberFormat _keyFormatter = (NumberFormat) CassandraUtil.KEY_FORMATTER.clone();
+	
+	public CassandraBulkLoadWriter( CassandraTransport cassandraClient, String columnFamilyName )
+	{
+		this._cassandraClient = cassandraClient;
+		this._columnFamilyName = columnFamilyName;
+	}
+	
+	public void write( long firstKey, int count, byte[][] values ) throws Exception
+	{
+		if( this._keys.length < count )
+			this._keys = new String[count];
+		for( int i = 0; i < count; i++ )
+			this._keys[i] = this._keyFormatter.format( firstKey + i );
+		
+		// The mutation is executed before this returns, so the values can be reused
+		this._cassandraClient.putMany( this._columnFamilyName, this._keys, values, count );
+	}
+	
+	public void flush()
+	{
+		// Every batch is executed before write() returns
+	}
+	
+	public void close()
+	{
+		this._cassandraClient.dispose();
+	}
+}
@@ -3,7 +3,6 @@ package radlab.rain.workload.cassandra;
 //import java.io.IOException;
 import java.util.ArrayList;
 import java.util.logging.Logger;
-import java.util.HashSet;
 import java.util.Random;
 
 import org.json.JSONException;
@@ -13,6 +12,7 @@ import radlab.rain.Generator;
 import radlab.rain.LoadProfile;
 import radlab.rain.ObjectPool;
 import radlab.rain.Operation;
+import radlab.rain.RandomStreams;
 import radlab.rain.ScenarioTrack;
 import radlab.rain.util.Histogram;
 import radlab.rain.util.NegativeExponential;
@@ -20,6 +20,12 @@ import radlab.rain.util.storage.KeyGenerator;
 
 public class CassandraGenerator extends Generator 
 {
+	// Pool slots of the operations, resolved once
+	private static int CASSANDRA_GET_SLOT = ObjectPool.slotOf( CassandraGetOperation.NAME );
+	private static int CASSANDRA_SCAN_SLOT = ObjectPool.slotOf( CassandraScanOperation.NAME );
+	private static int CASSANDRA_PUT_SLOT = ObjectPool.slotOf( CassandraPutOperation.NAME );
+	private static int CASSANDRA_DELETE_SLOT = ObjectPool.slotOf( CassandraDeleteOperation.NAME );
+	
 	public static String CFG_USE_POOLING_KEY 		= "usePooling";
 	public static String CFG_DEBUG_KEY		 		= "debug";
 	public static String CFG_RNG_SEED_KEY	 		= "rngSeed";
@@ -43,7 +49,9 @@ public class CassandraGenerator extends Generator
 	private boolean _usePooling						= true;
 	private boolean _debug 							= false;
 	
-	private static Random _random				= null; ///< The Random Number Generator
+	private Random _random							= null; ///< The Random Number Generator (this user's own stream)
+	private Random _keyRandom						= null; ///< This user's stream for key selection
+	private long _rngSeed							= -1; ///< The configured seed, negative to use the master seed
 	String _clusterName							= DEFAULT_CLUSTER_NAME;
 	String _keyspaceName						= DEFAULT_KEYSPACE_NAME;
 	String _columnFamilyName					= DEFAULT_COLUMN_FAMILY_NAME;
@@ -63,10 +71,9 @@ public class CassandraGenerator extends Generator
 	 * 
 	 * @return A Random object.
 	 */
-	public static Random getRandomGenerator()
+	public Random getRandomGenerator()
 	{
-		//NOTE: this method is not "synchronized" since java.util.Random is threadsafe.
-		return _random;
+		return this._random;
 	}
 
 	/**
@@ -74,27 +81,19 @@ public class CassandraGenerator extends Generator
 	 * 
 	 * @param value A Random object.
 	 */
-	protected static synchronized void setRandomGenerator(Random value)
+	protected void setRandomGenerator(Random value)
 	{
-		_random = value;
+		this._random = value;
 	}
 
 	/**
-	 * Initialize the shared random number generator.
+	 * Initialize this user's random number generators. Needs the user id,
+	 * so this runs from initialize() rather than configure().
 	 */
-	private static synchronized void initizializeRandomGenerator(long seed)
+	private void initizializeRandomGenerator()
 	{
-		if (_random == null)
-		{
-			if (seed >= 0)
-			{
-				_random = new Random(seed);
-			}
-			else
-			{
-				_random = new Random();
-			}
-		}
+		this._random = this.createRandom( this._rngSeed, RandomStreams.GENERATOR_STREAM );
+		this._keyRandom = this.createRandom( this._rngSeed, RandomStreams.KEY_STREAM );
 	}
 
 	public CassandraGenerator(ScenarioTrack track) 
@@ -121,16 +120,18 @@ public class CassandraGenerator extends Generator
 	@Override
 	public void initialize() 
 	{
+		this.initizializeRandomGenerator();
+		
 		// Setup think and cycle times
 		this._thinkTime = this.getTrack().getMeanThinkTime();
 		if (this._thinkTime > 0)
 		{
-			this._thinkTimeRng = new NegativeExponential(this._thinkTime, this._random);
+			this._thinkTimeRng = new NegativeExponential(this._thinkTime, this.createRandom(this._rngSeed, RandomStreams.THINK_TIME_STREAM));
 		}
 		this._cycleTime = this.getTrack().getMeanCycleTime();
 		if (this._cycleTime > 0)
 		{
-			this._cycleTimeRng = new NegativeExponential(this._cycleTime, this._random);
+			this._cycleTimeRng = new NegativeExponential(this._cycleTime, this.createRandom(this._rngSeed, RandomStreams.CYCLE_TIME_STREAM));
 		}
 		this._logger = Logger.getLogger(this.getName());
 	}
@@ -146,9 +147,7 @@ public class CassandraGenerator extends Generator
 		
 		// Look for a random number seed
 		if( config.has( CFG_RNG_SEED_KEY ) )
-			this.initizializeRandomGenerator( config.getLong( CFG_RNG_SEED_KEY ) );
-		else
-			this.initizializeRandomGenerator(-1);
+			this._rngSeed = config.getLong( CFG_RNG_SEED_KEY );
 	
 		if( config.has( CFG_CLUSTER_NAME_KEY ) )
 			this._clusterName = config.getString( CFG_CLUSTER_NAME_KEY );
@@ -227,14 +226,13 @@ public class CassandraGenerator extends Generator
 	{
 		LoadProfile currentLoad = this.getTrack().getCurrentLoadProfile();
 		this._latestLoadProfile = currentLoad;
-		int key = -1;
+		long key = -1;
 		
 		CassandraLoadProfile cassandraProfile = (CassandraLoadProfile) this._latestLoadProfile; 
 		
 		// Check whether we're sending traffic to hot objects or not
 		double rndVal = this._random.nextDouble();
-		ArrayList<Integer> hotObjectList = cassandraProfile.getHotObjectList();
-		HashSet<Integer> hotObjectSet = cassandraProfile.getHotObjectSet();
+		ArrayList<Long> hotObjectList = cassandraProfile.getHotObjectList();
 		
 		int numHotObjects = hotObjectList.size(); 
 		
@@ -261,10 +259,10 @@ public class CassandraGenerator extends Generator
 		{	
 			// Pick a key using the regular keygen strategy
 			KeyGenerator keyGen = cassandraProfile.getKeyGenerator();
-			key = keyGen.generateKey();
+			key = keyGen.generateLongKey( this._keyRandom );
 			// Check whether we picked a key that's in the hot set - if we did, try again
-			while( hotObjectSet.contains( key ) ) 
-				key = keyGen.generateKey();
+			while( cassandraProfile.isHotObject( key ) ) 
+				key = keyGen.generateLongKey( this._keyRandom );
 			
 			// Do some stats checking for non-hot objects
 			if( this._debug )
@@ -353,7 +351,7 @@ public class CassandraGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (CassandraGetOperation) pool.rentObject( CassandraGetOperation.NAME );	
+			op = (CassandraGetOperation) pool.rentObject( CASSANDRA_GET_SLOT );	
 		}
 		
 		if( op == null )
@@ -373,7 +371,7 @@ public class CassandraGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (CassandraScanOperation) pool.rentObject( CassandraScanOperation.NAME );	
+			op = (CassandraScanOperation) pool.rentObject( CASSANDRA_SCAN_SLOT );	
 		}
 		
 		if( op == null )
@@ -394,7 +392,7 @@ public class CassandraGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (CassandraPutOperation) pool.rentObject( CassandraPutOperation.NAME );	
+			op = (CassandraPutOperation) pool.rentObject( CASSANDRA_PUT_SLOT );	
 		}
 		
 		if( op == null )
@@ -425,7 +423,7 @@ public class CassandraGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (CassandraDeleteOperation) pool.rentObject( CassandraDeleteOperation.NAME );	
+			op = (CassandraDeleteOperation) pool.rentObject( CASSANDRA_DELETE_SLOT );	
 		}
 		
 		if( op == null )
@@ -157,6 +157,15 @@ public class CassandraTransport
 		mutator.insert( key, columnFamily, HFactory.createColumn( DEFAULT_COLUMN_NAME, value, StringSerializer.get(), BytesArraySerializer.get() ) );
 	}
 	
+	// Batch mutation: the first count keys go to Cassandra in one round trip
+	public void putMany( String columnFamily, String[] keys, byte[][] values, int count )
+	{
+		Mutator<String> mutator = HFactory.createMutator( this._keyspace, StringSerializer.get() );
+		for( int i = 0; i < count; i++ )
+			mutator.addInsertion( keys[i], columnFamily, HFactory.createColumn( DEFAULT_COLUMN_NAME, values[i], StringSerializer.get(), BytesArraySerializer.get() ) );
+		mutator.execute();
+	}
+	
 //[FIXME] Experimental: use templates instead of mutators
 //	public void put( String columnFamily, String key, byte[] value )
 //	{	
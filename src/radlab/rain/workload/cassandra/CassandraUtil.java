@@ -1,8 +1,11 @@
 package radlab.rain.workload.cassandra;
 
+import java.io.File;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.ArrayList;
+
+import radlab.rain.util.storage.BulkLoader;
+import radlab.rain.util.storage.IBulkLoadWriter;
 
 public class CassandraUtil 
 {
@@ -20,6 +23,9 @@ public class CassandraUtil
 		int maxKey = 100000;
 		int size = 1024;
 		
+		BulkLoader loader = new BulkLoader( minKey, maxKey, size );
+		args = BulkLoader.parseOptions( args, loader );
+		
 		if( args.length == 8 )
 		{
 			host = args[0];
@@ -49,57 +55,45 @@ public class CassandraUtil
 		}
 		else
 		{
-			System.out.println( "Usage   : CassandraUtil <host> <port> <clustername> <keyspace> <columnfamily> <min key> <max key> <size>" );
-			System.out.println( "Usage   : CassandraUtil <host> <port> <clustername> <keyspace> <columnfamily> <min key> <max key> <size> <replication factor>" );
+			System.out.println( "Usage   : CassandraUtil <host> <port> <clustername> <keyspace> <columnfamily> <min key> <max key> <size> " + BulkLoader.getOptionsUsage() );
+			System.out.println( "Usage   : CassandraUtil <host> <port> <clustername> <keyspace> <columnfamily> <min key> <max key> <size> <replication factor> " + BulkLoader.getOptionsUsage() );
 			System.out.println( "Example : CassandraUtil localhost 9160 rainclstr rainks raincf 1 100000 4096" );
 			System.out.println( "Example : CassandraUtil localhost 9160 rainclstr rainks raincf 1 100000 4096 2" );
 			System.exit( -1 );
 		}
 	
-		// Do data loads in parallel, shoot for using 10 threads
-		int keyCount = (maxKey - minKey) + 1;
-		int keyBlockSize = 10000;
-		int loaderThreads = new Double( Math.ceil( (double) keyCount / (double) keyBlockSize ) ).intValue();
-				
+		loader.setRange( minKey, maxKey, size );
+		final int loaderThreads = loader.getThreads();
+		
 		CassandraTransport adminClient = new CassandraTransport( clusterName, host, port, loaderThreads );
-		adminClient.deleteKeyspace( keyspaceName );
-		//if( true )
-		//	return;
+		// A resumed load keeps what's there
+		boolean resuming = loader.getCheckpointFilename() != null && new File( loader.getCheckpointFilename() ).exists();
+		if( !resuming )
+			adminClient.deleteKeyspace( keyspaceName );
 		
 		// Set the replication factor explicitly
 		adminClient.setReplicationFactor( replicationFactor );
-		adminClient.initialize( keyspaceName, true, columnFamilyName, true );
-				
-		ArrayList<CassandraLoaderThread> threads = new ArrayList<CassandraLoaderThread>();
-		for( int i = 0; i < loaderThreads; i++ )
-		{
-			CassandraTransport client = new CassandraTransport( clusterName, host, port, loaderThreads );
-			// Set the timeouts
-			//client.setConnectionTimeout( 60000 );
-			//client.setSocketIdleTimeout( 60000 );
-			// Explicitly initialize
-			client.initialize( keyspaceName, false, columnFamilyName, false );
-			int startKey = (i * keyBlockSize) + 1;
-			int endKey = Math.min( (startKey + keyCount) - 1 , (startKey + keyBlockSize) - 1 );
-			System.out.println( "Start key: " + KEY_FORMATTER.format( startKey ) + " end key: " + KEY_FORMATTER.format( endKey ) );
-			CassandraLoaderThread thread = new CassandraLoaderThread(  columnFamilyName, startKey, endKey, size, client );
-			threads.add( thread );
-		}
-		System.out.println( "Loading: " + ((maxKey - minKey)+1) + " keys with " + size + " byte(s) values each." );
-		long start = System.currentTimeMillis();
-		// Start all the loader threads
-		for( CassandraLoaderThread thread : threads )
-			thread.start();
+		adminClient.initialize( keyspaceName, !resuming, columnFamilyName, !resuming );
 		
-		// Wait on them to finish
-		for( CassandraLoaderThread thread : threads )
-			thread.join();
+		// Every loader thread gets a client of its own
+		final String cassandraHost = host;
+		final int cassandraPort = port;
+		final String cassandraCluster = clusterName;
+		final String cassandraKeyspace = keyspaceName;
+		final String cassandraColumnFamily = columnFamilyName;
+		boolean done = loader.load( new IBulkLoadWriter.Factory()
+		{
+			public IBulkLoadWriter createWriter( int worker )
+			{
+				CassandraTransport client = new CassandraTransport( cassandraCluster, cassandraHost, cassandraPort, loaderThreads );
+				// Explicitly initialize
+				client.initialize( cassandraKeyspace, false, cassandraColumnFamily, false );
+				return new CassandraBulkLoadWriter( client, cassandraColumnFamily );
+			}
+		} );
 		
-		long end = System.currentTimeMillis();
-		double durationSecs = (end - start)/1000.0;
-		double rate = keyCount/durationSecs;
-		System.out.println( "Load finished: " + durationSecs + " seconds. Rate: " + rate + " requests/sec" );
-				
 		adminClient.dispose();
+		if( !done )
+			System.exit( 1 );
 	}
 }
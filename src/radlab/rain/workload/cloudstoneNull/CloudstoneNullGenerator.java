@@ -42,6 +42,12 @@ import radlab.rain.util.NegativeExponential;
 
 public class CloudstoneNullGenerator extends Generator 
 {
+	// Pool slots of the operations, resolved once
+	private static int HOME_PAGE_NULL_SLOT = ObjectPool.slotOf( HomePageNullOperation.NAME );
+	private static int LOGIN_NULL_SLOT = ObjectPool.slotOf( LoginNullOperation.NAME );
+	private static int TAG_SEARCH_NULL_SLOT = ObjectPool.slotOf( TagSearchNullOperation.NAME );
+	private static int EVENT_DETAIL_NULL_SLOT = ObjectPool.slotOf( EventDetailNullOperation.NAME );
+	
 	private java.util.Random _rng;
 	//private radlab.rain.workload.cloudstone.Random _randomUtil;
 	//private HttpTransport _http;
@@ -175,7 +181,7 @@ public class CloudstoneNullGenerator extends Generator
 	{
 		HomePageNullOperation op = null;
 		ObjectPool pool = this.getTrack().getObjectPool();
-		op = (HomePageNullOperation) pool.rentObject( HomePageNullOperation.NAME );
+		op = (HomePageNullOperation) pool.rentObject( HOME_PAGE_NULL_SLOT );
 		// Nothing available in pool so get an instance the tried and true way.
 		if( op == null )
 			op = new HomePageNullOperation( this.getTrack().getInteractive(), this.getScoreboard() );
@@ -188,7 +194,7 @@ public class CloudstoneNullGenerator extends Generator
 	{
 		LoginNullOperation op = null;
 		ObjectPool pool = this.getTrack().getObjectPool();
-		op = (LoginNullOperation) pool.rentObject( LoginNullOperation.NAME );
+		op = (LoginNullOperation) pool.rentObject( LOGIN_NULL_SLOT );
 		
 		if( op == null )
 			op = new LoginNullOperation( this.getTrack().getInteractive(), this.getScoreboard() );
@@ -201,7 +207,7 @@ public class CloudstoneNullGenerator extends Generator
 	{
 		TagSearchNullOperation op = null; 
 		ObjectPool pool = this.getTrack().getObjectPool();
-		op = (TagSearchNullOperation) pool.rentObject( TagSearchNullOperation.NAME );
+		op = (TagSearchNullOperation) pool.rentObject( TAG_SEARCH_NULL_SLOT );
 		// Nothing available in pool so get an instance the tried and true way.
 		if( op == null )
 			op = new TagSearchNullOperation( this.getTrack().getInteractive(), this.getScoreboard() );
@@ -214,7 +220,7 @@ public class CloudstoneNullGenerator extends Generator
 	{
 		EventDetailNullOperation op = null;
 		ObjectPool pool = this.getTrack().getObjectPool();
-		op = (EventDetailNullOperation) pool.rentObject( EventDetailNullOperation.NAME );
+		op = (EventDetailNullOperation) pool.rentObject( EVENT_DETAIL_NULL_SLOT );
 		
 		if( op == null )
 			op = new EventDetailNullOperation( this.getTrack().getInteractive(), this.getScoreboard() );
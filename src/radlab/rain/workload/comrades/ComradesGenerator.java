@@ -53,6 +53,14 @@ import radlab.rain.util.NegativeExponential;
 
 public class ComradesGenerator extends Generator 
 {
+	// Pool slots of the operations, resolved once
+	private static int HOME_PAGE_SLOT = ObjectPool.slotOf( HomePageOperation.NAME );
+	private static int ADD_CANDIDATE_SLOT = ObjectPool.slotOf( AddCandidateOperation.NAME );
+	private static int SUBMIT_INTERVIEW_SLOT = ObjectPool.slotOf( SubmitInterviewOperation.NAME );
+	private static int CANDIDATE_DETAILS_SLOT = ObjectPool.slotOf( CandidateDetailsOperation.NAME );
+	private static int UPDATE_INTERVIEW_SLOT = ObjectPool.slotOf( UpdateInterviewOperation.NAME );
+	private static int SEARCH_CANDIDATES_SLOT = ObjectPool.slotOf( SearchCandidatesOperation.NAME );
+	
 	public static String CFG_USE_POOLING_KEY 			= "usePooling";
 	public static String CFG_DEBUG_KEY		 			= "debug";
 	public static String CFG_ZOOKEEPER_CONN_STRING		= "zookeeperConnString";
@@ -161,7 +169,7 @@ public class ComradesGenerator extends Generator
 	@Override
 	public void initialize() 
 	{
-		this._http = new HttpTransport();
+		this._http = this.createHttpTransport();
 		// Initialize think/cycle time random number generators (if you need/want them)
 		this._cycleTimeGenerator = new NegativeExponential( this._cycleTime );
 		this._thinkTimeGenerator = new NegativeExponential( this._thinkTime );
@@ -453,7 +461,7 @@ public class ComradesGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (HomePageOperation) pool.rentObject( HomePageOperation.NAME );	
+			op = (HomePageOperation) pool.rentObject( HOME_PAGE_SLOT );	
 		}
 		
 		if( op == null )
@@ -470,7 +478,7 @@ public class ComradesGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (AddCandidateOperation) pool.rentObject( AddCandidateOperation.NAME );	
+			op = (AddCandidateOperation) pool.rentObject( ADD_CANDIDATE_SLOT );	
 		}
 		
 		if( op == null )
@@ -487,7 +495,7 @@ public class ComradesGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (SubmitInterviewOperation) pool.rentObject( SubmitInterviewOperation.NAME );	
+			op = (SubmitInterviewOperation) pool.rentObject( SUBMIT_INTERVIEW_SLOT );	
 		}
 		
 		if( op == null )
@@ -504,7 +512,7 @@ public class ComradesGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (CandidateDetailsOperation) pool.rentObject( CandidateDetailsOperation.NAME );	
+			op = (CandidateDetailsOperation) pool.rentObject( CANDIDATE_DETAILS_SLOT );	
 		}
 		
 		if( op == null )
@@ -521,7 +529,7 @@ public class ComradesGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (UpdateInterviewOperation) pool.rentObject( UpdateInterviewOperation.NAME );	
+			op = (UpdateInterviewOperation) pool.rentObject( UPDATE_INTERVIEW_SLOT );	
 		}
 		
 		if( op == null )
@@ -538,7 +546,7 @@ public class ComradesGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (SearchCandidatesOperation) pool.rentObject( SearchCandidatesOperation.NAME );	
+			op = (SearchCandidatesOperation) pool.rentObject( SEARCH_CANDIDATES_SLOT );	
 		}
 		
 		if( op == null )
@@ -141,7 +141,7 @@ public abstract class ComradesOperation extends Operation
 		{
 			if ( this._cachedURLs.add( url ) ) 
 			{
-				this._http.fetchUrl( url );
+				this._http.drainUrl( url );
 				staticsLoaded++;
 			}
 		}
@@ -119,8 +119,8 @@ public class DayTraderGenerator extends Generator
 	 */
 	public void initialize()
 	{
-		this._randomNumberGenerator = new java.util.Random();
-		this._http = new HttpTransport();
+		this._randomNumberGenerator = this.getRandom();
+		this._http = this.createHttpTransport();
 	}
 	
 	/**
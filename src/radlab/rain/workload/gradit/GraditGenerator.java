@@ -52,6 +52,14 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 public class GraditGenerator extends Generator {
+	// Pool slots of the operations, resolved once
+	private static int HOME_PAGE_SLOT = ObjectPool.slotOf(HomePageOperation.NAME);
+	private static int LOGIN_SLOT = ObjectPool.slotOf(LoginOperation.NAME);
+	private static int REGISTER_USER_SLOT = ObjectPool.slotOf(RegisterUserOperation.NAME);
+	private static int LOGOUT_SLOT = ObjectPool.slotOf(LogoutOperation.NAME);
+	private static int DASHBOARD_SLOT = ObjectPool.slotOf(DashboardOperation.NAME);
+	private static int START_GAME_SLOT = ObjectPool.slotOf(StartGameOperation.NAME);
+
 	public static String CFG_USE_POOLING_KEY = "usePooling";
 	public static String CFG_DEBUG_KEY = "debug";
 	public static String CFG_ZOOKEEPER_CONN_STRING = "zookeeperConnString";
@@ -189,7 +197,7 @@ public class GraditGenerator extends Generator {
 
 	@Override
 	public void initialize() {
-		this._http = new HttpTransport();
+		this._http = this.createHttpTransport();
 		// Set the redirect limit to 5 for Gradit
 		this._http.setRedirectLimit( 10 );
 	}
@@ -395,7 +403,7 @@ public class GraditGenerator extends Generator {
 
 		if (this._usePooling) {
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (HomePageOperation) pool.rentObject(HomePageOperation.NAME);
+			op = (HomePageOperation) pool.rentObject(HOME_PAGE_SLOT);
 		}
 
 		if (op == null)
@@ -411,7 +419,7 @@ public class GraditGenerator extends Generator {
 
 		if (this._usePooling) {
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (LoginOperation) pool.rentObject(LoginOperation.NAME);
+			op = (LoginOperation) pool.rentObject(LOGIN_SLOT);
 		}
 
 		if (op == null)
@@ -428,7 +436,7 @@ public class GraditGenerator extends Generator {
 		if (this._usePooling) {
 			ObjectPool pool = this.getTrack().getObjectPool();
 			op = (RegisterUserOperation) pool
-					.rentObject(RegisterUserOperation.NAME);
+					.rentObject(REGISTER_USER_SLOT);
 		}
 
 		if (op == null)
@@ -444,7 +452,7 @@ public class GraditGenerator extends Generator {
 
 		if (this._usePooling) {
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (LogoutOperation) pool.rentObject(LogoutOperation.NAME);
+			op = (LogoutOperation) pool.rentObject(LOGOUT_SLOT);
 		}
 
 		if (op == null)
@@ -460,7 +468,7 @@ public class GraditGenerator extends Generator {
 
 		if (this._usePooling) {
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (DashboardOperation) pool.rentObject(DashboardOperation.NAME);
+			op = (DashboardOperation) pool.rentObject(DASHBOARD_SLOT);
 		}
 
 		if (op == null)
@@ -476,7 +484,7 @@ public class GraditGenerator extends Generator {
 
 		if (this._usePooling) {
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (StartGameOperation) pool.rentObject(StartGameOperation.NAME);
+			op = (StartGameOperation) pool.rentObject(START_GAME_SLOT);
 		}
 
 		if (op == null)
@@ -115,7 +115,7 @@ public class GraditOperation extends Operation
 		{
 			if ( this._cachedURLs.add( url ) ) 
 			{
-				this._http.fetchUrl( url );
+				this._http.drainUrl( url );
 				staticsLoaded++;
 			}
 		}
@@ -0,0 +1,45 @@
+package radlab.rain.workload.hbase;
+
+import java.text.NumberFormat;
+
+import radlab.rain.util.storage.IBulkLoadWriter;
+
+/**
+ * Loads batches of keys into HBase through the client's write buffer
+ * (puts are copied into it, so the value buffers can be reused).
+ */
+public class HBaseBulkLoadWriter implements IBulkLoadWriter 
+{
+	private HBaseTransport _hbaseClient = null;
+	private String _columnFamilyName = "";
+	private String[] _keys = new String[0];
+	// DecimalFormat isn't thread safe, every loader thread formats its keys with its own
+	private NumberFormat _keyFormatter = (NumberFormat) HBaseUtil.KEY_FORMATTER.clone();
+	
+	public HBaseBulkLoadWriter( HBaseTransport hbaseClient, String columnFamilyName )
+	{
+		this._hbaseClient = hbaseClient;
+		this._columnFamilyName = columnFamilyName;
+	}
+	
+	public void write( long firstKey, int count, byte[][] values ) throws Exception
+	{
+		if( this._keys.length < count )
+			this._keys = new String[count];
+		for( int i = 0; i < count; i++ )
+			this._keys[i] = this._keyFormatter.format( firstKey + i );
+		
+		this._hbaseClient.putMany( this._columnFamilyName, this._keys, values, count );
+	}
+	
+	public void flush() throws Exception
+	{
+		this._hbaseClient.flushCommits();
+	}
+	
+	public void close()
+	{
+		// Dispose flushes any outstanding commits and then closes the table
+		this._hbaseClient.dispose();
+	}
+}
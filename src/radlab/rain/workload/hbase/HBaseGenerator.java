@@ -2,7 +2,6 @@ package radlab.rain.workload.hbase;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Random;
 
 import org.json.JSONException;
@@ -12,12 +11,18 @@ import radlab.rain.Generator;
 import radlab.rain.LoadProfile;
 import radlab.rain.ObjectPool;
 import radlab.rain.Operation;
+import radlab.rain.RandomStreams;
 import radlab.rain.ScenarioTrack;
 import radlab.rain.util.Histogram;
 import radlab.rain.util.storage.KeyGenerator;
 
 public class HBaseGenerator extends Generator 
 {
+	// Pool slots of the operations, resolved once
+	private static int HBASE_GET_SLOT = ObjectPool.slotOf( HBaseGetOperation.NAME );
+	private static int HBASE_SCAN_SLOT = ObjectPool.slotOf( HBaseScanOperation.NAME );
+	private static int HBASE_PUT_SLOT = ObjectPool.slotOf( HBasePutOperation.NAME );
+	
 	public static String CFG_USE_POOLING_KEY 		= "usePooling";
 	public static String CFG_DEBUG_KEY		 		= "debug";
 	public static String CFG_RNG_SEED_KEY	 		= "rngSeed";
@@ -53,6 +58,7 @@ public class HBaseGenerator extends Generator
 	//private long _blockWriteEnd					= -1;
 	
 	private Random _random						= null;
+	private long _rngSeed						= -1;
 	String _tableName							= DEFAULT_TABLE_NAME;
 	String _columnFamilyName					= DEFAULT_COLUMN_FAMILY_NAME;
 	// Debug key popularity
@@ -74,7 +80,10 @@ public class HBaseGenerator extends Generator
 		
 	@Override
 	public void initialize() 
-	{}
+	{
+		// Every user gets its own stream, derived from the seed and the user id
+		this._random = this.createRandom( this._rngSeed, RandomStreams.GENERATOR_STREAM );
+	}
 
 	@Override
 	public void configure( JSONObject config ) throws JSONException
@@ -87,8 +96,7 @@ public class HBaseGenerator extends Generator
 		
 		// Look for a random number seed
 		if( config.has( CFG_RNG_SEED_KEY ) )
-			this._random = new Random( config.getLong( CFG_RNG_SEED_KEY ) );
-		else this._random = new Random();
+			this._rngSeed = config.getLong( CFG_RNG_SEED_KEY );
 	
 		if( config.has( CFG_TABLE_NAME_KEY ) )
 			this._tableName = config.getString( CFG_TABLE_NAME_KEY );
@@ -175,14 +183,13 @@ public class HBaseGenerator extends Generator
 	{
 		LoadProfile currentLoad = this.getTrack().getCurrentLoadProfile();
 		this._latestLoadProfile = currentLoad;
-		int key = -1;
+		long key = -1;
 		
 		HBaseLoadProfile hbaseProfile = (HBaseLoadProfile) this._latestLoadProfile; 
 		
 		// Check whether we're sending traffic to hot objects or not
 		double rndVal = this._random.nextDouble();
-		ArrayList<Integer> hotObjectList = hbaseProfile.getHotObjectList();
-		HashSet<Integer> hotObjectSet = hbaseProfile.getHotObjectSet();
+		ArrayList<Long> hotObjectList = hbaseProfile.getHotObjectList();
 		
 		int numHotObjects = hotObjectList.size(); 
 		
@@ -209,10 +216,10 @@ public class HBaseGenerator extends Generator
 		{	
 			// Pick a key using the regular keygen strategy
 			KeyGenerator keyGen = hbaseProfile.getKeyGenerator();
-			key = keyGen.generateKey();
+			key = keyGen.generateLongKey( this._random );
 			// Check whether we picked a key that's in the hot set - if we did, try again
-			while( hotObjectSet.contains( key ) ) 
-				key = keyGen.generateKey();
+			while( hbaseProfile.isHotObject( key ) ) 
+				key = keyGen.generateLongKey( this._random );
 			
 			// Do some stats checking for non-hot objects
 			if( this._debug )
@@ -299,7 +306,7 @@ public class HBaseGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (HBaseGetOperation) pool.rentObject( HBaseGetOperation.NAME );	
+			op = (HBaseGetOperation) pool.rentObject( HBASE_GET_SLOT );	
 		}
 		
 		if( op == null )
@@ -319,7 +326,7 @@ public class HBaseGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (HBaseScanOperation) pool.rentObject( HBaseScanOperation.NAME );	
+			op = (HBaseScanOperation) pool.rentObject( HBASE_SCAN_SLOT );	
 		}
 		
 		if( op == null )
@@ -340,7 +347,7 @@ public class HBaseGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (HBasePutOperation) pool.rentObject( HBasePutOperation.NAME );	
+			op = (HBasePutOperation) pool.rentObject( HBASE_PUT_SLOT );	
 		}
 		
 		if( op == null )
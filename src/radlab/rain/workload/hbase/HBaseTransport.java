@@ -170,12 +170,18 @@ public class HBaseTransport
 	
 	// We can use this to do put-range (sorted keys) or multi-put writes (unsorted keys)
 	public void putMany( String columnFamilyName, String[] keys, byte[][] values ) throws IOException
+	{
+		this.putMany( columnFamilyName, keys, values, keys.length );
+	}
+	
+	// Writes the first count keys; with auto flush off the puts go to the write buffer
+	public void putMany( String columnFamilyName, String[] keys, byte[][] values, int count ) throws IOException
 	{
 		String qualifier = "";
-		ArrayList<Put> puts = new ArrayList<Put>();
+		ArrayList<Put> puts = new ArrayList<Put>( count );
 		
 		// Collect all of the data to be written and create the list of puts
-		for( int i = 0; i < keys.length; i++ )
+		for( int i = 0; i < count; i++ )
 		{
 			String key = keys[i];
 			// Do write
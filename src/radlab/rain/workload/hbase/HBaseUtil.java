@@ -1,11 +1,15 @@
 package radlab.rain.workload.hbase;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.ArrayList;
 
 import org.apache.hadoop.hbase.TableNotFoundException;
 
+import radlab.rain.util.storage.BulkLoader;
+import radlab.rain.util.storage.IBulkLoadWriter;
+
 public class HBaseUtil 
 {
 	public static NumberFormat KEY_FORMATTER = new DecimalFormat( "000000000" );
@@ -21,7 +25,10 @@ public class HBaseUtil
 		int size = 1024;//16384;//4096;
 		int numRegions = -1;
 		
-		// HBaseUtil <host> <port> <table> <column family> <min key> <max key> <size>
+		BulkLoader loader = new BulkLoader( minKey, maxKey, size );
+		args = BulkLoader.parseOptions( args, loader );
+		
+		// HBaseUtil <host> <port> <table> <column family> <min key> <max key> <size> [loader options]
 		if( args.length == 7 )
 		{
 			host = args[0];
@@ -50,18 +57,14 @@ public class HBaseUtil
 		}
 		else
 		{
-			System.out.println( "Usage   : HBaseUtil <host> <port> <tableName> <column family> <min key> <max key> <size>" );
-			System.out.println( "Usage   : HBaseUtil <host> <port> <tableName> <column family> <min key> <max key> <size> <num regions>" );
+			System.out.println( "Usage   : HBaseUtil <host> <port> <tableName> <column family> <min key> <max key> <size> " + BulkLoader.getOptionsUsage() );
+			System.out.println( "Usage   : HBaseUtil <host> <port> <tableName> <column family> <min key> <max key> <size> <num regions> " + BulkLoader.getOptionsUsage() );
 			System.out.println( "Example : HBaseUtil localhost 60000 raintbl raincf 1 100000 4096" );
 			System.out.println( "Example : HBaseUtil localhost 60000 raintbl raincf 1 100000 4096 4" );
 			System.exit( -1 );
 		}
 	
-		// Do data loads in parallel, shoot for using 10 threads
-		int keyCount = (maxKey - minKey) + 1;
-		int loaderThreads = 10; //new Double( Math.ceil( (double) keyCount / (double) keyBlockSize ) ).intValue();
-		
-		int keyBlockSize = (int) Math.ceil( keyCount/loaderThreads );//10000;
+		loader.setRange( minKey, maxKey, size );
 		
 		HBaseTransport adminClient = null;
 		
@@ -70,54 +73,44 @@ public class HBaseUtil
 			adminClient = new HBaseTransport( host, port, HBaseTransport.DEFAULT_ZOOKEEPER_PORT );
 		else adminClient = new HBaseTransport( host, port, HBaseTransport.DEFAULT_ZOOKEEPER_PORT, KEY_FORMATTER.format( minKey ).getBytes(), KEY_FORMATTER.format( maxKey ).getBytes(), numRegions );
 		
-		// Before we start the load, delete the table and then re-create it
-		try
-		{
-			adminClient.deleteTable( tableName );
-		}
-		catch( TableNotFoundException e )
+		// Before we start a fresh load, delete the table and then re-create it (a resumed load keeps what's there)
+		boolean resuming = loader.getCheckpointFilename() != null && new File( loader.getCheckpointFilename() ).exists();
+		if( !resuming )
 		{
-			// Table may not exists
+			try
+			{
+				adminClient.deleteTable( tableName );
+			}
+			catch( TableNotFoundException e )
+			{
+				// Table may not exists
+			}
 		}
 		
-		int writeBufferMB = 2;
-		adminClient.initialize( tableName, columnFamilyName, true, writeBufferMB );
+		final int writeBufferMB = 2;
+		adminClient.initialize( tableName, columnFamilyName, !resuming, writeBufferMB );
 		
-		ArrayList<HBaseLoaderThread> threads = new ArrayList<HBaseLoaderThread>();
-		for( int i = 0; i < loaderThreads; i++ )
+		// Every loader thread gets a client (and write buffer) of its own
+		final String hbaseHost = host;
+		final int hbasePort = port;
+		final String hbaseTable = tableName;
+		final String hbaseColumnFamily = columnFamilyName;
+		boolean done = loader.load( new IBulkLoadWriter.Factory()
 		{
-			HBaseTransport client = new HBaseTransport( host, port, HBaseTransport.DEFAULT_ZOOKEEPER_PORT );
-			// Set the timeouts
-			client.setTimeout( 60000 );
-			// Explicitly initialize
-			client.initialize( tableName, columnFamilyName, false, writeBufferMB );
-			int startKey = (i * keyBlockSize) + 1;
-			int endKey = Math.min( (startKey + keyCount) -1 , (startKey + keyBlockSize) - 1 );//(startKey + keyBlockSize) - 1;
-			System.out.println( "Start key: " + KEY_FORMATTER.format( startKey ) + " end key: " + KEY_FORMATTER.format( endKey ) );
-			HBaseLoaderThread thread = new HBaseLoaderThread( tableName, columnFamilyName, startKey, endKey, size, client );
-			threads.add( thread );
-		}
-		
-		System.out.println( "Loading: " + ((maxKey - minKey)+1) + " keys with " + size + " byte(s) values each." );
-		long start = System.currentTimeMillis();
-		// Start all the loader threads
-		for( HBaseLoaderThread thread : threads )
-			thread.start();
-		
-		// Wait on them to finish
-		for( HBaseLoaderThread thread : threads )
-			thread.join();
-		
-		long end = System.currentTimeMillis();
-		double durationSecs = (end-start)/1000.0; 
-		double avgResponseTimeSecs = durationSecs/keyCount;
+			public IBulkLoadWriter createWriter( int worker ) throws IOException
+			{
+				HBaseTransport client = new HBaseTransport( hbaseHost, hbasePort, HBaseTransport.DEFAULT_ZOOKEEPER_PORT );
+				// Set the timeouts
+				client.setTimeout( 60000 );
+				// Explicitly initialize
+				client.initialize( hbaseTable, hbaseColumnFamily, false, writeBufferMB );
+				return new HBaseBulkLoadWriter( client, hbaseColumnFamily );
+			}
+		} );
 		
 		// Dispose of the client
 		adminClient.dispose();
-		
-		System.out.println( "Load finished : " +  durationSecs + " seconds" );
-		System.out.println( "Rate [" + size + "]    : " +  keyCount/durationSecs + " puts/sec" );
-		NumberFormat formatter = new DecimalFormat( "#0.0000" );
-		System.out.println( "Avg resp time [" + size + "]: " +  formatter.format( avgResponseTimeSecs ) + "secs" );
+		if( !done )
+			System.exit( 1 );
 	}
 }
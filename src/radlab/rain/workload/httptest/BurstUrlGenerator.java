@@ -34,6 +34,9 @@ public class BurstUrlGenerator extends Generator
 	private int _connectionTimeoutMsecs = 1000;
 	private int _socketTimeoutMsecs = 1000;
 	private int _burstSize = 0;	
+	// The operation name of the burst size (and its pool slot), so they aren't rebuilt per operation
+	private String _operationName = null;
+	private int _operationSlot = -1;
 	
 	public BurstUrlGenerator(ScenarioTrack track) 
 	{
@@ -74,7 +77,7 @@ public class BurstUrlGenerator extends Generator
 	@Override
 	public void initialize()
 	{
-		this._http = new HttpTransport();
+		this._http = this.createHttpTransport();
 		this._thinkTimeGenerator = new NegativeExponential( this._thinkTime );
 	}
 	
@@ -94,7 +97,7 @@ public class BurstUrlGenerator extends Generator
 			this._connectionTimeoutMsecs = config.getInt(CFG_CONNECTION_TIMEOUT);
 		
 		//if( config.has( CFG_BURST_SIZE_KEY) )
-		this._burstSize = config.getInt( CFG_BURST_SIZE_KEY );
+		this.setBurstSize( config.getInt( CFG_BURST_SIZE_KEY ) );
 				
 		this._http.setConnectTimeout( this._connectionTimeoutMsecs );
 		//System.out.println( "Setting connection timeout (msecs): " + this._http.getConnectTimeout() );
@@ -112,7 +115,12 @@ public class BurstUrlGenerator extends Generator
     }
 
 	public int getBurstSize() {	return this._burstSize; }
-	public void setBurstSize( int val ) { this._burstSize = val; }
+	public void setBurstSize( int val )
+	{
+		this._burstSize = val;
+		this._operationName = BurstUrlOperation.NAME + "(" + val + ")";
+		this._operationSlot = ObjectPool.slotOf( this._operationName );
+	}
 	
 	private void printConfig( PrintStream out )
 	{
@@ -138,19 +146,18 @@ public class BurstUrlGenerator extends Generator
 	
 	private BurstUrlOperation createBurstUrlOperation()
 	{
-		StringBuilder opName = new StringBuilder( BurstUrlOperation.NAME ).append( "(" ).append( this._burstSize ).append( ")" );
 		BurstUrlOperation op = null;
 				
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (BurstUrlOperation) pool.rentObject( opName.toString() );	
+			op = (BurstUrlOperation) pool.rentObject( this._operationSlot );	
 		}
 		
 		if( op == null )
 			op = new BurstUrlOperation( this.getTrack().getInteractive(), this.getScoreboard() );
 		
-		op.setName( opName.toString() );
+		op.setName( this._operationName );
 		op.prepare( this );
 		return op;
 	}
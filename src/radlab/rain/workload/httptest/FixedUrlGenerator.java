@@ -15,6 +15,9 @@ import radlab.rain.util.NegativeExponential;
 
 public class FixedUrlGenerator extends Generator 
 {
+	// Pool slots of the operations, resolved once
+	private static int FIXED_URL_SLOT = ObjectPool.slotOf( FixedUrlOperation.NAME );
+	
 	public static String CFG_USE_POOLING_KEY = "usePooling";
 	public static String CFG_MAX_POOL_SIZE_KEY = "maxPoolSize";
 	
@@ -72,7 +75,7 @@ public class FixedUrlGenerator extends Generator
 	@Override
 	public void initialize()
 	{
-		this._http = new HttpTransport();
+		this._http = this.createHttpTransport();
 		this._thinkTimeGenerator = new NegativeExponential( this._thinkTime );
 	}
 
@@ -133,7 +136,7 @@ public class FixedUrlGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (FixedUrlOperation) pool.rentObject( FixedUrlOperation.NAME );	
+			op = (FixedUrlOperation) pool.rentObject( FIXED_URL_SLOT );	
 		}
 		
 		if( op == null )
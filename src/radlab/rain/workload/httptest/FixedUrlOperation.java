@@ -5,10 +5,12 @@ import java.io.IOException;
 import radlab.rain.Generator;
 import radlab.rain.IScoreboard;
 import radlab.rain.LoadProfile;
-import radlab.rain.Operation;
+import radlab.rain.AsyncHttpOperation;
+import radlab.rain.util.AsyncHttpRequest;
+import radlab.rain.util.AsyncHttpResponse;
 import radlab.rain.util.HttpTransport;
 
-public class FixedUrlOperation extends Operation 
+public class FixedUrlOperation extends AsyncHttpOperation 
 {
 	// These references will be set by the Generator.
 	protected HttpTransport _http;
@@ -42,10 +44,11 @@ public class FixedUrlOperation extends Operation
 	public void execute() throws Throwable 
 	{
 		// Fetch the base url
-		StringBuilder response = this._http.fetchUrl( this.getGenerator()._baseUrl );
+		// We only care that something came back, so don't keep the response
+		long bytesReceived = this._http.drainUrl( this.getGenerator()._baseUrl );
 		
 		this.trace( this.getGenerator()._baseUrl );
-		if( response.length() == 0 )
+		if( bytesReceived == 0 )
 		{
 			String errorMessage = "Url GET ERROR - Received an empty response";
 			throw new IOException (errorMessage);
@@ -55,6 +58,21 @@ public class FixedUrlOperation extends Operation
 		this.setFailed( false );
 	}
 
+	@Override
+	public AsyncHttpRequest createAsyncRequest()
+	{
+		return new AsyncHttpRequest( this.getGenerator()._baseUrl );
+	}
+	
+	@Override
+	public void checkAsyncResponse( AsyncHttpResponse response ) throws Throwable
+	{
+		super.checkAsyncResponse( response );
+		this.trace( this.getGenerator()._baseUrl );
+		if( response.getBytesReceived() == 0 )
+			throw new IOException( "Url GET ERROR - Received an empty response" );
+	}
+	
 	@Override
 	public void prepare(Generator generator) 
 	{
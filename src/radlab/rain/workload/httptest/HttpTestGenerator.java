@@ -48,6 +48,9 @@ import radlab.rain.util.HttpTransport;
  */
 public class HttpTestGenerator extends Generator
 {
+	// Pool slots of the operations, resolved once
+	private static int PING_HOME_PAGE_SLOT = ObjectPool.slotOf( PingHomePageOperation.NAME );
+	
 	public static String CFG_USE_POOLING_KEY = "usePooling";
 	public static String CFG_MAX_POOL_SIZE_KEY = "maxPoolSize";
 	
@@ -78,7 +81,7 @@ public class HttpTestGenerator extends Generator
 	public void initialize()
 	{
 		//this._randomNumberGenerator = new java.util.Random();
-		this._http = new HttpTransport();
+		this._http = this.createHttpTransport();
 	}
 	
 	@Override
@@ -195,7 +198,7 @@ public class HttpTestGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (PingHomePageOperation) pool.rentObject( PingHomePageOperation.NAME );	
+			op = (PingHomePageOperation) pool.rentObject( PING_HOME_PAGE_SLOT );	
 		}
 		
 		if( op == null )
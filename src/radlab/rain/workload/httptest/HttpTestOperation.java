@@ -34,14 +34,14 @@ package radlab.rain.workload.httptest;
 import radlab.rain.Generator;
 import radlab.rain.IScoreboard;
 import radlab.rain.LoadProfile;
-import radlab.rain.Operation;
+import radlab.rain.AsyncHttpOperation;
 import radlab.rain.util.HttpTransport;
 
 /**
  * The HttpTestOperation class contains common static methods for use by the
  * operations that inherit from this abstract class.
  */
-public abstract class HttpTestOperation extends Operation 
+public abstract class HttpTestOperation extends AsyncHttpOperation 
 {
 	// These references will be set by the Generator.
 	protected HttpTransport _http;
@@ -34,6 +34,8 @@ package radlab.rain.workload.httptest;
 import java.io.IOException;
 
 import radlab.rain.IScoreboard;
+import radlab.rain.util.AsyncHttpRequest;
+import radlab.rain.util.AsyncHttpResponse;
 
 public class PingHomePageOperation extends HttpTestOperation 
 {
@@ -50,10 +52,11 @@ public class PingHomePageOperation extends HttpTestOperation
 	public void execute() throws Throwable 
 	{
 		// Fetch the base url
-		StringBuilder response = this._http.fetchUrl( this.getGenerator()._baseUrl );
+		// We only care that something came back, so don't keep the response
+		long bytesReceived = this._http.drainUrl( this.getGenerator()._baseUrl );
 		
 		this.trace( this.getGenerator()._baseUrl );
-		if( response.length() == 0 )
+		if( bytesReceived == 0 )
 		{
 			String errorMessage = "Home page GET ERROR - Received an empty response";
 			throw new IOException (errorMessage);
@@ -62,4 +65,19 @@ public class PingHomePageOperation extends HttpTestOperation
 		// Once we get here mark the operation as successful
 		this.setFailed( false );
 	}
+	
+	@Override
+	public AsyncHttpRequest createAsyncRequest()
+	{
+		return new AsyncHttpRequest( this.getGenerator()._baseUrl );
+	}
+	
+	@Override
+	public void checkAsyncResponse( AsyncHttpResponse response ) throws Throwable
+	{
+		super.checkAsyncResponse( response );
+		this.trace( this.getGenerator()._baseUrl );
+		if( response.getBytesReceived() == 0 )
+			throw new IOException( "Home page GET ERROR - Received an empty response" );
+	}
 }
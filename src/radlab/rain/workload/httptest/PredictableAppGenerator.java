@@ -92,6 +92,9 @@ public class PredictableAppGenerator extends Generator
 	private String[] _memorySizes 		= null;
 	private float[] _memoryMix 			= null;
 	private int[] _operationBusyPct 	= null; 
+	// Operation names (and their pool slots) by work done choice, so they aren't rebuilt per operation
+	private String[] _operationNames	= null;
+	private int[] _operationSlots		= null;
 		
 	public PredictableAppGenerator(ScenarioTrack track) 
 	{
@@ -105,7 +108,7 @@ public class PredictableAppGenerator extends Generator
 	@Override
 	public void initialize()
 	{
-		this._http = new HttpTransport();
+		this._http = this.createHttpTransport();
 		this._thinkTimeGenerator = new NegativeExponential( this._thinkTime );
 	}
 
@@ -165,6 +168,8 @@ public class PredictableAppGenerator extends Generator
 		this._operationWorkDone = new int[numOperations];
 		this._operationMix = new float[numOperations];
 		this._operationBusyPct = new int[numOperations];
+		this._operationNames = new String[numOperations];
+		this._operationSlots = new int[numOperations];
 		
 		int operationMixSum = 0;
 		
@@ -173,6 +178,8 @@ public class PredictableAppGenerator extends Generator
 			this._operationWorkDone[i] = operationWorkDone.getInt( i );
 			this._operationBusyPct[i] = operationBusyPct.getInt( i );
 			this._operationMix[i] = operationMix.getInt( i );
+			this._operationNames[i] = PredictableAppOperation.NAME_PREFIX + this._operationWorkDone[i];
+			this._operationSlots[i] = ObjectPool.slotOf( this._operationNames[i] );
 			operationMixSum += this._operationMix[i]; 
 		}
 		
@@ -308,6 +315,7 @@ public class PredictableAppGenerator extends Generator
 		int workDone = this._operationWorkDone[i];
 		// Busy pct is linked to the amount of workDone
 		int busyPct = this._operationBusyPct[i];
+		int operationIndex = i;
 		
 		float memorySizeRand = this._random.nextFloat();
 		i = 0;
@@ -318,18 +326,17 @@ public class PredictableAppGenerator extends Generator
 		}
 		String memorySize = this._memorySizes[i];
 		
-		return this.createPredictableOperation( workDone, memorySize, busyPct );
+		return this.createPredictableOperation( workDone, memorySize, busyPct, this._operationNames[operationIndex], this._operationSlots[operationIndex] );
 	}
 
-	private PredictableAppOperation createPredictableOperation( int workDone, String memorySize, int busyPct )
+	private PredictableAppOperation createPredictableOperation( int workDone, String memorySize, int busyPct, String opName, int poolSlot )
 	{
 		PredictableAppOperation op = null;
-		StringBuilder opName = new StringBuilder( PredictableAppOperation.NAME_PREFIX ).append( workDone );
 		
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (PredictableAppOperation) pool.rentObject( opName.toString() );	
+			op = (PredictableAppOperation) pool.rentObject( poolSlot );	
 		}
 		
 		if( op == null )
@@ -340,7 +347,7 @@ public class PredictableAppGenerator extends Generator
 		op._memorySize = memorySize;
 		op._busyPct = busyPct;
 		// Set the name so that the different workDone operations can be separated on the scoreboard
-		op.setName( opName.toString() );
+		op.setName( opName );
 		
 		op.prepare( this );
 		return op;
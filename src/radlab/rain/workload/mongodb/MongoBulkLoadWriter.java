@@ -0,0 +1,65 @@
+package radlab.rain.workload.mongodb;
+
+import java.util.ArrayList;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+import radlab.rain.util.storage.IBulkLoadWriter;
+
+/**
+ * Loads batches of keys into a MongoDB collection with bulk inserts. The
+ * documents are encoded when they're sent, so the value buffers can be
+ * reused.
+ */
+public class MongoBulkLoadWriter implements IBulkLoadWriter 
+{
+	private MongoTransport _mongoClient = null;
+	private String _dbName = "";
+	private String _collectionName = "";
+	private ArrayList<DBObject> _batch = new ArrayList<DBObject>();
+	
+	public MongoBulkLoadWriter( MongoTransport mongoClient, String dbName, String collectionName )
+	{
+		this._mongoClient = mongoClient;
+		this._dbName = dbName;
+		this._collectionName = collectionName;
+	}
+	
+	public void write( long firstKey, int count, byte[][] values ) throws Exception
+	{
+		this._batch.clear();
+		for( int i = 0; i < count; i++ )
+		{
+			BasicDBObject kv = new BasicDBObject();
+			kv.put( "_id", String.valueOf( firstKey + i ) );
+			kv.put( "value", values[i] );
+			this._batch.add( kv );
+		}
+		
+		try
+		{
+			this._mongoClient.insertMany( this._dbName, this._collectionName, this._batch );
+		}
+		catch( MongoException.DuplicateKey e )
+		{
+			// Part of this batch made it in before the last load was interrupted, overwrite it
+			this._mongoClient.saveMany( this._dbName, this._collectionName, this._batch );
+		}
+		finally
+		{
+			this._batch.clear();
+		}
+	}
+	
+	public void flush()
+	{
+		// Inserts are safe, they're acknowledged before write() returns
+	}
+	
+	public void close()
+	{
+		this._mongoClient.close();
+	}
+}
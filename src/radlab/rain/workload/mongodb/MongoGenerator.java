@@ -2,7 +2,6 @@ package radlab.rain.workload.mongodb;
 
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Random;
 
 import org.json.JSONException;
@@ -12,6 +11,7 @@ import radlab.rain.Generator;
 import radlab.rain.LoadProfile;
 import radlab.rain.ObjectPool;
 import radlab.rain.Operation;
+import radlab.rain.RandomStreams;
 import radlab.rain.ScenarioTrack;
 
 import radlab.rain.util.storage.KeyGenerator;
@@ -19,6 +19,10 @@ import radlab.rain.util.Histogram;
 
 public class MongoGenerator extends Generator 
 {
+	// Pool slots of the operations, resolved once
+	private static int MONGO_GET_SLOT = ObjectPool.slotOf( MongoGetOperation.NAME );
+	private static int MONGO_PUT_SLOT = ObjectPool.slotOf( MongoPutOperation.NAME );
+	
 	public static String CFG_USE_POOLING_KEY 		= "usePooling";
 	public static String CFG_DEBUG_KEY		 		= "debug";
 	public static String CFG_RNG_SEED_KEY	 		= "rngSeed";
@@ -38,6 +42,7 @@ public class MongoGenerator extends Generator
 	private boolean _usePooling					= true;
 	private boolean _debug 						= false;
 	private Random _random						= null;
+	private long _rngSeed						= -1;
 	String _dbName								= DEFAULT_DB_NAME;
 	String _collectionName						= DEFAULT_COLLECTION_NAME;
 	// Debug key popularity
@@ -83,7 +88,9 @@ public class MongoGenerator extends Generator
 
 	@Override
 	public void initialize() 
-	{}
+	{
+		this._random = this.createRandom( this._rngSeed, RandomStreams.GENERATOR_STREAM );
+	}
 
 	public void setUsePooling( boolean value ) { this._usePooling = value; }
 	public boolean getUsePooling() { return this._usePooling; }
@@ -99,8 +106,7 @@ public class MongoGenerator extends Generator
 		
 		// Look for a random number seed
 		if( config.has( CFG_RNG_SEED_KEY ) )
-			this._random = new Random( config.getLong(CFG_RNG_SEED_KEY) );
-		else this._random = new Random();
+			this._rngSeed = config.getLong( CFG_RNG_SEED_KEY );
 	
 		if( config.has( CFG_DB_NAME_KEY ) )
 			this._dbName = config.getString( CFG_DB_NAME_KEY );
@@ -124,14 +130,13 @@ public class MongoGenerator extends Generator
 	{
 		LoadProfile currentLoad = this.getTrack().getCurrentLoadProfile();
 		this._latestLoadProfile = currentLoad;
-		int key = -1;
+		long key = -1;
 		
 		MongoLoadProfile mongoProfile = (MongoLoadProfile) this._latestLoadProfile; 
 		
 		// Check whether we're sending traffic to hot objects or not
 		double rndVal = this._random.nextDouble();
-		ArrayList<Integer> hotObjectList = mongoProfile.getHotObjectList();
-		HashSet<Integer> hotObjectSet = mongoProfile.getHotObjectSet();
+		ArrayList<Long> hotObjectList = mongoProfile.getHotObjectList();
 		
 		int numHotObjects = hotObjectList.size(); 
 		
@@ -147,10 +152,10 @@ public class MongoGenerator extends Generator
 		{	
 			// Pick a key using the regular keygen strategy
 			KeyGenerator keyGen = mongoProfile.getKeyGenerator();
-			key = keyGen.generateKey();
+			key = keyGen.generateLongKey( this._random );
 			// Check whether we picked a key that's in the hot set - if we did, try again
-			while( hotObjectSet.contains( key ) ) 
-				key = keyGen.generateKey();
+			while( mongoProfile.isHotObject( key ) ) 
+				key = keyGen.generateLongKey( this._random );
 			
 			// Do some stats checking for non-hot objects
 			if( this._debug )
@@ -203,7 +208,7 @@ public class MongoGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (MongoGetOperation) pool.rentObject( MongoGetOperation.NAME );	
+			op = (MongoGetOperation) pool.rentObject( MONGO_GET_SLOT );	
 		}
 		
 		if( op == null )
@@ -223,7 +228,7 @@ public class MongoGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (MongoPutOperation) pool.rentObject( MongoPutOperation.NAME );	
+			op = (MongoPutOperation) pool.rentObject( MONGO_PUT_SLOT );	
 		}
 		
 		if( op == null )
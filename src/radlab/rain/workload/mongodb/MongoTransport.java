@@ -2,6 +2,7 @@ package radlab.rain.workload.mongodb;
 
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.List;
 //import java.util.Hashtable;
 
 import com.mongodb.BasicDBObject;
@@ -11,6 +12,7 @@ import com.mongodb.Mongo;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import com.mongodb.MongoException;
 import com.mongodb.MongoOptions;
 import com.mongodb.ServerAddress;
 import com.mongodb.WriteConcern;
@@ -169,6 +171,59 @@ public class MongoTransport
 		return result;
 	}	
 	
+	/**
+	 * Inserts a batch of documents with one (safe) insert. Unlike the other
+	 * operations, errors are thrown: a bulk load needs to know which batch
+	 * failed (e.g. MongoException.DuplicateKey when a batch is written twice).
+	 */
+	public WriteResult insertMany( String dbName, String collectionName, List<DBObject> objs ) throws MongoException
+	{
+		if( !this._initialized )
+			this.initialize();
+		
+		// Make any per-request changes
+		this.configure();
+		
+		DB db = null;
+		try
+		{
+			db = this._conn.getDB( dbName );
+			DBCollection collection = db.getCollection( collectionName );
+			return collection.insert( objs, WriteConcern.SAFE );
+		}
+		finally
+		{
+			if( db != null )
+				db.requestDone();
+		}
+	}
+	
+	/**
+	 * Saves (inserts or replaces, by _id) a batch of documents one at a time.
+	 */
+	public void saveMany( String dbName, String collectionName, List<DBObject> objs ) throws MongoException
+	{
+		if( !this._initialized )
+			this.initialize();
+		
+		// Make any per-request changes
+		this.configure();
+		
+		DB db = null;
+		try
+		{
+			db = this._conn.getDB( dbName );
+			DBCollection collection = db.getCollection( collectionName );
+			for( DBObject obj : objs )
+				collection.save( obj, WriteConcern.SAFE );
+		}
+		finally
+		{
+			if( db != null )
+				db.requestDone();
+		}
+	}
+	
 	public WriteResult updateOne( String dbName, String collectionName, DBObject query, DBObject obj )
 	{
 		if( !this._initialized )
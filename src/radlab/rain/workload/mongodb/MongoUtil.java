@@ -1,14 +1,16 @@
 package radlab.rain.workload.mongodb;
 
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.util.ArrayList;
+import java.io.File;
+import java.net.UnknownHostException;
 import java.util.Random;
 
 import com.mongodb.CommandResult;
 import com.mongodb.BasicDBObject;
 import com.mongodb.WriteResult;
 
+import radlab.rain.util.storage.BulkLoader;
+import radlab.rain.util.storage.IBulkLoadWriter;
+
 public class MongoUtil 
 {
 	public static void createIndex( MongoTransport mongoClient, String dbName, String collectionName, int keyField )
@@ -54,7 +56,10 @@ public class MongoUtil
 		int maxKey = 100000;
 		int size = 1024;
 		
-		// MongoUtil <host> <port> <db> <col>
+		BulkLoader loader = new BulkLoader( minKey, maxKey, size );
+		args = BulkLoader.parseOptions( args, loader );
+		
+		// MongoUtil <host> <port> <db> <col> <min key> <max key> <size> [loader options]
 		if( args.length == 7 )
 		{
 			host = args[0];
@@ -71,32 +76,12 @@ public class MongoUtil
 		}
 		else
 		{
-			System.out.println( "Usage   : MongoUtil <host> <port> <dbName> <collection name> <min key> <max key> <size>" );
+			System.out.println( "Usage   : MongoUtil <host> <port> <dbName> <collection name> <min key> <max key> <size> " + BulkLoader.getOptionsUsage() );
 			System.out.println( "Example : MongoUtil localhost 27017 test test-ns 1 100000 4096" );
 			System.exit( -1 );
 		}
 	
-		// Do data loads in parallel, shoot for using 10 threads
-		int keyCount = (maxKey - minKey) + 1;
-		int keyBlockSize = 10000;
-		int loaderThreads = new Double( Math.ceil( (double) keyCount / (double) keyBlockSize ) ).intValue();
-				
-		ArrayList<MongoLoaderThread> threads = new ArrayList<MongoLoaderThread>();
-		for( int i = 0; i < loaderThreads; i++ )
-		{
-			MongoTransport client = new MongoTransport( host, port );
-			// String dbName, String collectionName, int minKey, int maxKey, int size, MongoTransport client )
-			// Set the timeouts
-			client.setConnectionTimeout( 60000 );
-			client.setSocketIdleTimeout( 60000 );
-			// Explicitly initialize
-			client.initialize();
-			int startKey = (i * keyBlockSize) + 1;
-			int endKey = Math.min( (startKey + keyCount) -1 , (startKey + keyBlockSize) - 1 );//(startKey + keyBlockSize) - 1;
-			System.out.println( "Start key: " + startKey + " end key: " + endKey );
-			MongoLoaderThread thread = new MongoLoaderThread( dbName, dbCollection, startKey, endKey, size, client );
-			threads.add( thread );
-		}
+		loader.setRange( minKey, maxKey, size );
 		
 		MongoTransport mongoClient = new MongoTransport( host, port );
 		// Set the timeouts
@@ -105,30 +90,37 @@ public class MongoUtil
 		// Explicitly initialize
 		mongoClient.initialize();
 		int indexField = 1; // create an index on the "first" field of the preloaded key-value pairs i.e., our integer keys
-		System.out.println( "Dropping index on collection: " + dbCollection + " index field: " + indexField );
-		mongoClient.dropIndex( dbName, dbCollection, indexField );
-		// Drop the database first (if it exists)
-		System.out.println( "Dropping collection: " + dbCollection );
-		mongoClient.dropCollection( dbName, dbCollection );
-		System.out.println( "Loading: " + ((maxKey - minKey)+1) + " keys with " + size + " byte(s) values each." );
-		long start = System.currentTimeMillis();
-		// Start all the loader threads
-		for( MongoLoaderThread thread : threads )
-			thread.start();
-		
-		// Wait on them to finish
-		for( MongoLoaderThread thread : threads )
-			thread.join();
-		
-		//MongoUtil.loadDbCollection( mongoClient, dbName, dbCollection, minKey, maxKey, size );
-		long end = System.currentTimeMillis();
-		double durationSecs = (end-start)/1000.0; 
-		double avgResponseTimeSecs = durationSecs/keyCount;
+		// A resumed load keeps what's there
+		if( loader.getCheckpointFilename() == null || !new File( loader.getCheckpointFilename() ).exists() )
+		{
+			System.out.println( "Dropping index on collection: " + dbCollection + " index field: " + indexField );
+			mongoClient.dropIndex( dbName, dbCollection, indexField );
+			// Drop the database first (if it exists)
+			System.out.println( "Dropping collection: " + dbCollection );
+			mongoClient.dropCollection( dbName, dbCollection );
+		}
 		
-		System.out.println( "Load finished: " + (end-start)/1000.0 + " seconds" );
-		System.out.println( "Rate [" + size + "]    : " +  keyCount/durationSecs + " puts/sec" );
-		NumberFormat formatter = new DecimalFormat( "#0.0000" );
-		System.out.println( "Avg resp time [" + size + "]: " +  formatter.format( avgResponseTimeSecs ) + "secs" );
+		// Every loader thread gets a client of its own
+		final String mongoHost = host;
+		final int mongoPort = port;
+		final String mongoDbName = dbName;
+		final String mongoCollection = dbCollection;
+		boolean done = loader.load( new IBulkLoadWriter.Factory()
+		{
+			public IBulkLoadWriter createWriter( int worker ) throws UnknownHostException
+			{
+				MongoTransport client = new MongoTransport( mongoHost, mongoPort );
+				// Set the timeouts
+				client.setConnectionTimeout( 60000 );
+				client.setSocketIdleTimeout( 60000 );
+				// Explicitly initialize
+				client.initialize();
+				return new MongoBulkLoadWriter( client, mongoDbName, mongoCollection );
+			}
+		} );
+		mongoClient.close();
+		if( !done )
+			System.exit( 1 );
 		
 		//System.out.println( "Creating index on collection: " + dbCollection + " index field: " + indexField );
 		// Create the index
@@ -9,6 +9,9 @@ import radlab.rain.util.HttpTransport;
 
 public class WebGenerator extends Generator
 {
+	// Pool slots of the operations, resolved once
+	private static int GET_SLOT = ObjectPool.slotOf( GetOperation.NAME );
+	
 	// Operation indices used in the mix matrix.
 	public static final int GET = 0;
 		
@@ -51,7 +54,7 @@ public class WebGenerator extends Generator
 	@Override
 	public void initialize()
 	{
-		this._http = new HttpTransport();
+		this._http = this.createHttpTransport();
 
 	}
 
@@ -91,7 +94,7 @@ public class WebGenerator extends Generator
 	{
 		GetOperation op = null;
 		ObjectPool pool = this.getTrack().getObjectPool();
-		op = (GetOperation) pool.rentObject( GetOperation.NAME );
+		op = (GetOperation) pool.rentObject( GET_SLOT );
 		// Nothing available in pool so get an instance the tried and true way.
 		if( op == null )
 			op = new GetOperation( this.getTrack().getInteractive(), this.getScoreboard() );
@@ -143,15 +143,15 @@ public class LoginOperation extends OlioOperation
 		switch (this.getConfiguration().getIncarnation())
 		{
 			case OlioConfiguration.JAVA_INCARNATION:
-				response = this.getHttpTransport().fetchUrl(this.getGenerator().getHomePageURL());
-				if (response.indexOf("Username") != -1)
+				this.getHttpTransport().scanUrl(this.getGenerator().getHomePageURL(), this.getGenerator().getLoginFormScanner());
+				if (this.getGenerator().getLoginFormScanner().isFound(0))
 				{
 					failed = true;
 				}
 				break;
 			case OlioConfiguration.PHP_INCARNATION:
-				response = this.getHttpTransport().fetchUrl(this.getGenerator().getHomePageURL());
-				if (response.indexOf("Username") != -1)
+				this.getHttpTransport().scanUrl(this.getGenerator().getHomePageURL(), this.getGenerator().getLoginFormScanner());
+				if (this.getGenerator().getLoginFormScanner().isFound(0))
 				{
 					failed = true;
 				}
@@ -45,9 +45,11 @@ import org.json.JSONException;
 import radlab.rain.Generator;
 import radlab.rain.LoadProfile;
 import radlab.rain.Operation;
+import radlab.rain.RandomStreams;
 import radlab.rain.ScenarioTrack;
 import radlab.rain.util.HttpTransport;
 import radlab.rain.util.NegativeExponential;
+import radlab.rain.util.ResponseScanner;
 
 
 /**
@@ -326,9 +328,10 @@ public class OlioGenerator extends Generator
 	public static final String ADD_EVENT_OP_NAME     = "AddEvent";
 
 
-	private static Random _rng; ///< The Random Number Generator
 	private static OlioConfiguration _conf; ///< The Olio-related configuration found in JSON profile file
+	private Random _rng; ///< The Random Number Generator (this user's own stream)
 	private HttpTransport _http;
+	private ResponseScanner _loginFormScanner = new ResponseScanner("Username"); ///< Finds the login form on the home page of a user who is not logged in
 	private Logger _logger;
 	private OlioUtility _utility;
 	private OlioSessionState _sessionState; ///< Holds user session data
@@ -375,10 +378,9 @@ public class OlioGenerator extends Generator
 	 * 
 	 * @return A Random object.
 	 */
-	public static Random getRandomGenerator()
+	public Random getRandomGenerator()
 	{
-		//NOTE: this method is not "synchronized" since java.util.Random is threadsafe.
-		return _rng;
+		return this._rng;
 	}
 
 	/**
@@ -386,9 +388,9 @@ public class OlioGenerator extends Generator
 	 * 
 	 * @param value A Random object.
 	 */
-	protected static synchronized void setRandomGenerator(Random value)
+	protected void setRandomGenerator(Random value)
 	{
-		_rng = value;
+		this._rng = value;
 	}
 
 	/**
@@ -423,21 +425,11 @@ public class OlioGenerator extends Generator
 	}
 
 	/**
-	 * Initialize the shared random number generator.
+	 * Initialize this user's random number generator.
 	 */
-	private static synchronized void initializeRandomGenerator()
+	private void initializeRandomGenerator()
 	{
-		if (_rng == null)
-		{
-			if (getConfiguration().getRngSeed() >= 0)
-			{
-				_rng = new Random(getConfiguration().getRngSeed());
-			}
-			else
-			{
-				_rng = new Random();
-			}
-		}
+		this._rng = this.createRandom(getConfiguration().getRngSeed(), RandomStreams.GENERATOR_STREAM);
 	}
 
 	/**
@@ -463,7 +455,7 @@ public class OlioGenerator extends Generator
 	public void initialize()
 	{
 		this.initializeRandomGenerator();
-		this._http = new HttpTransport();
+		this._http = this.createHttpTransport();
 		this._logger = Logger.getLogger(this.getName());
 		this._utility = new OlioUtility(this._rng, this._conf);
 		this._sessionState = new OlioSessionState();
@@ -473,13 +465,13 @@ public class OlioGenerator extends Generator
 		this._thinkTime = this.getTrack().getMeanThinkTime();
 		if (this._thinkTime > 0)
 		{
-			this._thinkTimeRng = new NegativeExponential(this._thinkTime, this._rng);
+			this._thinkTimeRng = new NegativeExponential(this._thinkTime, this.createRandom(getConfiguration().getRngSeed(), RandomStreams.THINK_TIME_STREAM));
 		}
 		//this._cycleTime = this.getTrack().getMeanCycleTime()*1000;
 		this._cycleTime = this.getTrack().getMeanCycleTime();
 		if (this._cycleTime > 0)
 		{
-			this._cycleTimeRng = new NegativeExponential(this._cycleTime, this._rng);
+			this._cycleTimeRng = new NegativeExponential(this._cycleTime, this.createRandom(getConfiguration().getRngSeed(), RandomStreams.CYCLE_TIME_STREAM));
 		}
 
 //		// Select a random user for current session (if needed)
@@ -598,6 +590,17 @@ public class OlioGenerator extends Generator
 		return this._http;
 	}
 
+	/**
+	 * Returns the scanner that finds the login form on the home page; the
+	 * form is only shown when the session is not logged in.
+	 *
+	 * @return A ResponseScanner object.
+	 */
+	public ResponseScanner getLoginFormScanner()
+	{
+		return this._loginFormScanner;
+	}
+
 	/**
 	 * Returns the <code>Logger</code> associated with this generator.
 	 * 
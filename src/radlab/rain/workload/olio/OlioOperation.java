@@ -292,7 +292,7 @@ public abstract class OlioOperation extends Operation
 					URI uri = new URI(this.getGenerator().getBaseURL());
 					String url = uri.resolve(imageUrl).toString();
 					this.getLogger().finer("Loading image: " + url);
-					this.getHttpTransport().fetchUrl(url);
+					this.getHttpTransport().drainUrl(url);
 					++imagesLoaded;
 				} 
 				else
@@ -324,7 +324,7 @@ public abstract class OlioOperation extends Operation
 				URI uri = new URI(this.getGenerator().getBaseURL());
 				String url = uri.resolve(staticUrl).toString();
 				this.getLogger().finer("Loading image: " + url);
-				this.getHttpTransport().fetchUrl(url, this._cachedHeaders);
+				this.getHttpTransport().drainUrl(url, this._cachedHeaders);
 				++staticsLoaded;
 			}
 			else 
@@ -92,8 +92,8 @@ public class RadditGenerator extends Generator
 	 */
 	public void initialize()
 	{
-		this._randomNumberGenerator = new java.util.Random();
-		this._http = new HttpTransport();
+		this._randomNumberGenerator = this.getRandom();
+		this._http = this.createHttpTransport();
 	}
 	
 	/**
@@ -0,0 +1,41 @@
+package radlab.rain.workload.redis;
+
+import java.io.IOException;
+
+import radlab.rain.util.storage.IBulkLoadWriter;
+
+/**
+ * Loads batches of keys into Redis with pipelined sets.
+ */
+public class RedisBulkLoadWriter implements IBulkLoadWriter 
+{
+	private RedisTransport _redisClient = null;
+	private String[] _keys = new String[0];
+	
+	public RedisBulkLoadWriter( RedisTransport redisClient )
+	{
+		this._redisClient = redisClient;
+	}
+	
+	public void write( long firstKey, int count, byte[][] values ) throws Exception
+	{
+		if( this._keys.length < count )
+			this._keys = new String[count];
+		for( int i = 0; i < count; i++ )
+			this._keys[i] = String.valueOf( firstKey + i );
+		
+		int failures = this._redisClient.setMany( this._keys, values, count );
+		if( failures > 0 )
+			throw new IOException( failures + " of " + count + " sets failed starting at key " + firstKey );
+	}
+	
+	public void flush()
+	{
+		// Every batch is synced before write() returns
+	}
+	
+	public void close()
+	{
+		this._redisClient.close();
+	}
+}
@@ -1,7 +1,6 @@
 package radlab.rain.workload.redis;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Random;
 
 import org.json.JSONException;
@@ -11,6 +10,7 @@ import radlab.rain.Generator;
 import radlab.rain.LoadProfile;
 import radlab.rain.ObjectPool;
 import radlab.rain.Operation;
+import radlab.rain.RandomStreams;
 import radlab.rain.ScenarioTrack;
 import radlab.rain.util.Histogram;
 import radlab.rain.util.NegativeExponential;
@@ -18,6 +18,11 @@ import radlab.rain.util.storage.KeyGenerator;
 
 public class RedisGenerator extends Generator 
 {
+	// Pool slots of the operations, resolved once
+	private static int REDIS_GET_SLOT = ObjectPool.slotOf( RedisGetOperation.NAME );
+	private static int REDIS_SET_SLOT = ObjectPool.slotOf( RedisSetOperation.NAME );
+	private static int REDIS_DEL_SLOT = ObjectPool.slotOf( RedisDelOperation.NAME );
+	
 	public static final String CFG_USE_POOLING_KEY 			= "usePooling";
 	public static final String CFG_DEBUG_KEY		 		= "debug";
 	public static final String CFG_RNG_SEED_KEY	 			= "rngSeed";
@@ -34,7 +39,9 @@ public class RedisGenerator extends Generator
 	private RedisTransport _redis 				= null;
 	private boolean _usePooling					= true;
 	private boolean _debug 						= false;
-	private static Random _random				= null; ///< The Random Number Generator
+	private Random _random						= null; ///< The Random Number Generator (this user's own stream)
+	private Random _keyRandom					= null; ///< This user's stream for key selection
+	private long _rngSeed						= -1; ///< The configured seed, negative to use the master seed
 	// Debug key popularity
 	Histogram<String> _keyHist					= new Histogram<String>();
 	// Debug hot object popularity
@@ -49,10 +56,9 @@ public class RedisGenerator extends Generator
 	 * 
 	 * @return A Random object.
 	 */
-	public static Random getRandomGenerator()
+	public Random getRandomGenerator()
 	{
-		//NOTE: this method is not "synchronized" since java.util.Random is threadsafe.
-		return _random;
+		return this._random;
 	}
 
 	/**
@@ -60,27 +66,19 @@ public class RedisGenerator extends Generator
 	 * 
 	 * @param value A Random object.
 	 */
-	protected static synchronized void setRandomGenerator(Random value)
+	protected void setRandomGenerator(Random value)
 	{
-		_random = value;
+		this._random = value;
 	}
 
 	/**
-	 * Initialize the shared random number generator.
+	 * Initialize this user's random number generators. Needs the user id,
+	 * so this runs from initialize() rather than configure().
 	 */
-	private static synchronized void initizializeRandomGenerator(long seed)
+	private void initizializeRandomGenerator()
 	{
-		if (_random == null)
-		{
-			if (seed >= 0)
-			{
-				_random = new Random(seed);
-			}
-			else
-			{
-				_random = new Random();
-			}
-		}
+		this._random = this.createRandom( this._rngSeed, RandomStreams.GENERATOR_STREAM );
+		this._keyRandom = this.createRandom( this._rngSeed, RandomStreams.KEY_STREAM );
 	}
 
 	public RedisGenerator(ScenarioTrack track) 
@@ -138,16 +136,18 @@ public class RedisGenerator extends Generator
 	@Override
 	public void initialize() 
 	{
+		this.initizializeRandomGenerator();
+		
 		// Setup think and cycle times
 		this._thinkTime = this.getTrack().getMeanThinkTime();
 		if (this._thinkTime > 0)
 		{
-			this._thinkTimeRng = new NegativeExponential(this._thinkTime, this._random);
+			this._thinkTimeRng = new NegativeExponential(this._thinkTime, this.createRandom(this._rngSeed, RandomStreams.THINK_TIME_STREAM));
 		}
 		this._cycleTime = this.getTrack().getMeanCycleTime();
 		if (this._cycleTime > 0)
 		{
-			this._cycleTimeRng = new NegativeExponential(this._cycleTime, this._random);
+			this._cycleTimeRng = new NegativeExponential(this._cycleTime, this.createRandom(this._rngSeed, RandomStreams.CYCLE_TIME_STREAM));
 		}
 	}
 
@@ -170,9 +170,7 @@ public class RedisGenerator extends Generator
 		
 		// Look for a random number seed
 		if( config.has( CFG_RNG_SEED_KEY ) )
-			this.initizializeRandomGenerator( config.getLong( CFG_RNG_SEED_KEY ) );
-		else
-			this.initizializeRandomGenerator(-1);
+			this._rngSeed = config.getLong( CFG_RNG_SEED_KEY );
 		
 		this._redis = new RedisTransport( this._loadTrack.getTargetHostName(), this._loadTrack.getTargetHostPort() );
 	}
@@ -182,14 +180,13 @@ public class RedisGenerator extends Generator
 	{
 		LoadProfile currentLoad = this.getTrack().getCurrentLoadProfile();
 		this._latestLoadProfile = currentLoad;
-		int key = -1;
+		long key = -1;
 		
 		RedisLoadProfile redisProfile = (RedisLoadProfile) this._latestLoadProfile;
 		
 		// Check whether we're sending traffic to hot objects or not
 		double rndVal = this._random.nextDouble();
-		ArrayList<Integer> hotObjectList = redisProfile.getHotObjectList();
-		HashSet<Integer> hotObjectSet = redisProfile.getHotObjectSet();
+		ArrayList<Long> hotObjectList = redisProfile.getHotObjectList();
 		
 		int numHotObjects = hotObjectList.size(); 
 		
@@ -206,10 +203,10 @@ public class RedisGenerator extends Generator
 		{	
 			// Pick a key using the regular keygen strategy
 			KeyGenerator keyGen = redisProfile.getKeyGenerator();
-			key = keyGen.generateKey();
+			key = keyGen.generateLongKey( this._keyRandom );
 			// Check whether we picked a key that's in the hot set - if we did, try again
-			while( hotObjectSet.contains( key ) ) 
-				key = keyGen.generateKey();
+			while( redisProfile.isHotObject( key ) ) 
+				key = keyGen.generateLongKey( this._keyRandom );
 			
 			// Make collection of non-hot object stats configurable/optional
 			// Do some stats checking for non-hot objects
@@ -264,7 +261,7 @@ public class RedisGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (RedisGetOperation) pool.rentObject( RedisGetOperation.NAME );	
+			op = (RedisGetOperation) pool.rentObject( REDIS_GET_SLOT );	
 		}
 		
 		if( op == null )
@@ -284,7 +281,7 @@ public class RedisGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (RedisSetOperation) pool.rentObject( RedisSetOperation.NAME );	
+			op = (RedisSetOperation) pool.rentObject( REDIS_SET_SLOT );	
 		}
 		
 		if( op == null )
@@ -318,7 +315,7 @@ public class RedisGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (RedisDelOperation) pool.rentObject( RedisDelOperation.NAME );	
+			op = (RedisDelOperation) pool.rentObject( REDIS_DEL_SLOT );	
 		}
 		
 		if( op == null )
@@ -10,6 +10,7 @@ import redis.clients.jedis.Jedis;
 //import org.apache.commons.pool.impl.GenericObjectPool.Config;
 import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisCommands;
+import redis.clients.jedis.Pipeline;
 
 public class RedisTransport 
 {
@@ -67,6 +68,13 @@ public class RedisTransport
 		// We could try to set the timeout parameter here
 	}
 	
+	public void close()
+	{
+		if( this._usingCluster )
+			this._redisCluster.close();
+		else this._redis.close();
+	}
+	
 	public JedisCommands getRedisClient()
 	{ return this._redis; }
 	
@@ -109,6 +117,37 @@ public class RedisTransport
 		}
 	}
 	
+	/**
+	 * Sets the first count keys to their values with one round trip
+	 * (pipelined). A cluster has no pipelining, so there the keys are set one
+	 * at a time.
+	 * 
+	 * @return  The number of sets that didn't reply OK.
+	 */
+	public int setMany( String[] keys, byte[][] values, int count )
+	{
+		int failures = 0;
+		if( this._usingCluster )
+		{
+			for( int i = 0; i < count; i++ )
+			{
+				if( !"OK".equalsIgnoreCase( this._redisCluster.set( keys[i], new String( values[i] ) ) ) )
+					failures++;
+			}
+			return failures;
+		}
+		
+		Pipeline pipeline = this._redis.pipelined();
+		for( int i = 0; i < count; i++ )
+			pipeline.set( keys[i].getBytes(), values[i] );
+		for( Object reply : pipeline.syncAndReturnAll() )
+		{
+			if( !"OK".equals( reply ) )
+				failures++;
+		}
+		return failures;
+	}
+	
 	public byte[] get( String key )
 	{
 		if( this._usingCluster )
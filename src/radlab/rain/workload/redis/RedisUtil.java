@@ -1,10 +1,10 @@
 package radlab.rain.workload.redis;
 
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.util.ArrayList;
 import java.util.Random;
 
+import radlab.rain.util.storage.BulkLoader;
+import radlab.rain.util.storage.IBulkLoadWriter;
+
 public class RedisUtil 
 {
 	public static long loadDbCollection( RedisTransport redisClient, int minKey, int maxKey, int size )
@@ -52,7 +52,10 @@ public class RedisUtil
 		int maxKey = 100000;
 		int size = 1024;//16384;//32768;//16384;//4096;
 		
-		// RiakUtil <host> <port> <min key> <max key>
+		BulkLoader loader = new BulkLoader( minKey, maxKey, size );
+		args = BulkLoader.parseOptions( args, loader );
+		
+		// RedisUtil <host> <port> <min key> <max key> <size> [loader options]
 		if( args.length == 5 )
 		{
 			host = args[0];
@@ -67,45 +70,24 @@ public class RedisUtil
 		}
 		else
 		{
-			System.out.println( "Usage   : RedisUtil <host> <port> <min key> <max key> <size>" );
-			System.out.println( "Example : RedisUtil localhost 6379 1 100000 4096" );
+			System.out.println( "Usage   : RedisUtil <host> <port> <min key> <max key> <size> " + BulkLoader.getOptionsUsage() );
+			System.out.println( "Example : RedisUtil localhost 6379 1 100000 4096 -threads 16 -batch 500 -checkpoint redis.load" );
 			System.exit( -1 );
 		}
-	
-		// Do data loads in parallel, shoot for using 10 threads
-		int keyCount = (maxKey - minKey) + 1;
-		int keyBlockSize = 10000;
-		int loaderThreads = new Double( Math.ceil( (double) keyCount / (double) keyBlockSize ) ).intValue();
+		loader.setRange( minKey, maxKey, size );
 		
-		ArrayList<RedisLoaderThread> threads = new ArrayList<RedisLoaderThread>();
-		for( int i = 0; i < loaderThreads; i++ )
+		// Every loader thread gets a connection of its own, the batches are pipelined
+		final String redisHost = host;
+		final int redisPort = port;
+		boolean done = loader.load( new IBulkLoadWriter.Factory()
 		{
-			RedisTransport client = new RedisTransport( host, port );
-			int startKey = (i * keyBlockSize) + 1;
-			int endKey = Math.min( (startKey + keyCount) -1 , (startKey + keyBlockSize) - 1 );//(startKey + keyBlockSize) - 1;
-			System.out.println( "Start key: " + startKey + " end key: " + endKey );
-			RedisLoaderThread thread = new RedisLoaderThread( client, startKey, endKey, size );
-			threads.add( thread );
-		}
-		
-		long start = System.currentTimeMillis();
-		// Start all the loader threads
-		for( RedisLoaderThread thread : threads )
-			thread.start();
-		
-		// Wait on them to finish
-		for( RedisLoaderThread thread : threads )
-			thread.join();
-		
-		//MongoUtil.loadDbCollection( mongoClient, dbName, dbCollection, minKey, maxKey, size );
-		long end = System.currentTimeMillis();
-		double durationSecs = (end-start)/1000.0; 
-		double avgResponseTimeSecs = durationSecs/keyCount;
-		
-		System.out.println( "Load finished: " + (end-start)/1000.0 + " seconds" );
-		System.out.println( "Rate [" + size + "]    : " +  keyCount/durationSecs + " puts/sec" );
-		NumberFormat formatter = new DecimalFormat( "#0.0000" );
-		System.out.println( "Avg resp time [" + size + "]: " +  formatter.format( avgResponseTimeSecs ) + "secs" );
+			public IBulkLoadWriter createWriter( int worker )
+			{
+				return new RedisBulkLoadWriter( new RedisTransport( redisHost, redisPort ) );
+			}
+		} );
+		if( !done )
+			System.exit( 1 );
 		
 		/*
 		RedisTransport redisClient = new RedisTransport( host, port );
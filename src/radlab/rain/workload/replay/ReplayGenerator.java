@@ -0,0 +1,153 @@
+package radlab.rain.workload.replay;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import radlab.rain.Generator;
+import radlab.rain.IReplayGenerator;
+import radlab.rain.Operation;
+import radlab.rain.ScenarioTrack;
+import radlab.rain.util.HttpTransport;
+import radlab.rain.util.ReplayTrace;
+
+/**
+ * The ReplayGenerator turns the requests of a replay trace into operations,
+ * for use with the ReplayLoadGeneration strategy. Operations are named after
+ * the operations they were recorded as.<br />
+ * <br />
+ * HTTP requests (the default protocol) are recorded as
+ * <code>[METHOD] url [body]</code>. The scheme, host and port of absolute
+ * URLs are replaced by the track's target, so a trace recorded against
+ * production can be replayed against a test system.<br />
+ * <br />
+ * Redis requests are recorded as commands, e.g. <code>SET user:42 alice</code>,
+ * and sent to the track's target. Arguments with whitespace in them are
+ * quoted like in redis-cli, e.g. <code>SET greeting "hello world"</code>;
+ * build the trace with <code>-p redis</code> so they are split once, when
+ * the trace is built.
+ */
+public class ReplayGenerator extends Generator implements IReplayGenerator
+{
+	public static String CFG_PROTOCOL 		= "protocol";
+	public static String CFG_CONTENT_TYPE	= "contentType";
+	
+	public static String HTTP_PROTOCOL		= "http";
+	public static String REDIS_PROTOCOL		= "redis";
+	
+	private String _protocol = HTTP_PROTOCOL;
+	private String _contentType = "application/x-www-form-urlencoded";
+	private ReplayTrace.Entry _entry = null;
+	private HttpTransport _http;
+	
+	// Async operations of this user may overlap, each takes a connection of its own
+	private ConcurrentLinkedQueue<RespConnection> _connections = new ConcurrentLinkedQueue<RespConnection>();
+	
+	public String _baseUrl;
+	
+	public ReplayGenerator( ScenarioTrack track )
+	{
+		super( track );
+		this._baseUrl = "http://" + this._loadTrack.getTargetHostName() + ":" + this._loadTrack.getTargetHostPort();
+	}
+	
+	@Override
+	public void configure( JSONObject config ) throws JSONException
+	{
+		this._protocol = config.optString( CFG_PROTOCOL, HTTP_PROTOCOL );
+		this._contentType = config.optString( CFG_CONTENT_TYPE, this._contentType );
+		if( !this._protocol.equalsIgnoreCase( HTTP_PROTOCOL ) && !this._protocol.equalsIgnoreCase( REDIS_PROTOCOL ) )
+			throw new JSONException( "Unknown replay protocol: " + this._protocol + " (expected " + HTTP_PROTOCOL + " or " + REDIS_PROTOCOL + ")" );
+	}
+	
+	public void initialize()
+	{
+		if( this._protocol.equalsIgnoreCase( HTTP_PROTOCOL ) )
+			this._http = this.createHttpTransport();
+	}
+	
+	public void setReplayEntry( ReplayTrace.Entry entry )
+	{
+		this._entry = entry;
+	}
+	
+	/**
+	 * Returns an operation for the request set by setReplayEntry().
+	 */
+	public Operation nextRequest( int lastOperation )
+	{
+		if( this._entry == null )
+			return null;
+		
+		this._latestLoadProfile = this.getTrack().getCurrentLoadProfile();
+		Operation op = null;
+		if( this._protocol.equalsIgnoreCase( REDIS_PROTOCOL ) )
+			op = new ReplayRedisOperation( this._entry._operationName, this._entry._operationId, this._entry._request, this.getTrack().getInteractive(), this.getScoreboard() );
+		else op = new ReplayHttpOperation( this._entry._operationName, this._entry._operationId, this._entry._request, this.getTrack().getInteractive(), this.getScoreboard() );
+		this._entry = null;
+		op.prepare( this );
+		return op;
+	}
+	
+	/** Replays are open loop, there's no think time. */
+	public long getThinkTime()
+	{
+		return 0;
+	}
+	
+	/** Replays are open loop, the trace sets when requests go out. */
+	public long getCycleTime()
+	{
+		return 0;
+	}
+	
+	public void dispose()
+	{
+		RespConnection connection = null;
+		while( ( connection = this._connections.poll() ) != null )
+			connection.close();
+	}
+	
+	public HttpTransport getHttpTransport()
+	{
+		return this._http;
+	}
+	
+	public String getContentType()
+	{
+		return this._contentType;
+	}
+	
+	/**
+	 * Takes an idle connection to the Redis target, or opens one.
+	 */
+	public RespConnection takeConnection() throws IOException
+	{
+		RespConnection connection = this._connections.poll();
+		if( connection != null )
+			return connection;
+		return new RespConnection( this.getTrack().getTargetHostName(), this.getTrack().getTargetHostPort() );
+	}
+	
+	public void returnConnection( RespConnection connection )
+	{
+		this._connections.add( connection );
+	}
+	
+	/**
+	 * Rewrites a recorded URL to point at the track's target.
+	 */
+	public String retarget( String url )
+	{
+		if( url.startsWith( "/" ) )
+			return this._baseUrl + url;
+		
+		int scheme = url.indexOf( "://" );
+		if( scheme < 0 )
+			return this._baseUrl + "/" + url;
+		int path = url.indexOf( '/', scheme + 3 );
+		return ( path < 0 ) ? this._baseUrl + "/" : this._baseUrl + url.substring( path );
+	}
+}
@@ -0,0 +1,144 @@
+package radlab.rain.workload.replay;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+
+import radlab.rain.AsyncHttpOperation;
+import radlab.rain.Generator;
+import radlab.rain.IScoreboard;
+import radlab.rain.LoadProfile;
+import radlab.rain.util.AsyncHttpRequest;
+import radlab.rain.util.AsyncHttpResponse;
+import radlab.rain.util.HttpTransport;
+
+/**
+ * Replays a recorded HTTP request: <code>[METHOD] url [body]</code>.
+ */
+public class ReplayHttpOperation extends AsyncHttpOperation 
+{
+	private static String[] METHODS = { "GET", "POST", "PUT", "DELETE", "HEAD" };
+	private static Charset UTF_8 = Charset.forName( "UTF-8" );
+	
+	// These references will be set by the Generator.
+	protected HttpTransport _http;
+	
+	private String _method = "GET";
+	private String _url = "";
+	private String _body = null;
+	
+	public ReplayHttpOperation( String name, int index, String request, boolean interactive, IScoreboard scoreboard ) 
+	{
+		super( interactive, scoreboard );
+		this._operationName = name;
+		this._operationIndex = index;
+		this._operationRequest = request;
+	}
+	
+	public ReplayGenerator getGenerator()
+	{
+		return (ReplayGenerator) this._generator;
+	}
+	
+	/**
+	 * Splits the recorded request into method, URL (pointed at the track's
+	 * target) and body.
+	 */
+	private void parse( String request )
+	{
+		String[] words = request.trim().split( "\\s+", 3 );
+		int url = 0;
+		for( String method : METHODS )
+		{
+			if( words.length > 1 && words[0].equalsIgnoreCase( method ) )
+			{
+				this._method = method;
+				url = 1;
+				break;
+			}
+		}
+		this._url = this.getGenerator().retarget( words[url] );
+		if( words.length > url + 1 )
+			this._body = ( url == 0 ) ? request.trim().substring( words[0].length() ).trim() : words[2];
+	}
+	
+	@Override
+	public void cleanup() 
+	{
+		
+	}
+	
+	@Override
+	public void execute() throws Throwable 
+	{
+		HttpUriRequest request = null;
+		if( this._method.equals( "POST" ) )
+			request = this.withBody( new HttpPost( this._url ) );
+		else if( this._method.equals( "PUT" ) )
+			request = this.withBody( new HttpPut( this._url ) );
+		else if( this._method.equals( "DELETE" ) )
+			request = new HttpDelete( this._url );
+		else if( this._method.equals( "HEAD" ) )
+			request = new HttpHead( this._url );
+		else request = new HttpGet( this._url );
+		
+		// We only care that something came back, so don't keep the response
+		this._http.fetch( request, HttpTransport.ResponseMode.DISCARD, null );
+		this.trace( this._operationRequest );
+		
+		int status = this._http.getStatusCode();
+		if( status >= 400 )
+			throw new IOException( "HTTP status code " + status + " for " + this._method + " " + this._url );
+		
+		this.setFailed( false );
+	}
+	
+	private HttpUriRequest withBody( HttpEntityEnclosingRequestBase request )
+	{
+		if( this._body != null )
+		{
+			ByteArrayEntity entity = new ByteArrayEntity( this._body.getBytes( UTF_8 ) );
+			entity.setContentType( this.getGenerator().getContentType() );
+			request.setEntity( entity );
+		}
+		return request;
+	}
+	
+	@Override
+	public AsyncHttpRequest createAsyncRequest()
+	{
+		AsyncHttpRequest request = new AsyncHttpRequest( this._method, this._url );
+		if( this._body != null && ( this._method.equals( "POST" ) || this._method.equals( "PUT" ) ) )
+			request.setBody( this.getGenerator().getContentType(), this._body.getBytes( UTF_8 ) );
+		return request;
+	}
+	
+	@Override
+	public void checkAsyncResponse( AsyncHttpResponse response ) throws Throwable
+	{
+		super.checkAsyncResponse( response );
+		this.trace( this._operationRequest );
+	}
+	
+	@Override
+	public void prepare( Generator generator ) 
+	{
+		this._generator = generator;
+		ReplayGenerator replayGenerator = (ReplayGenerator) generator;
+		
+		LoadProfile currentLoadProfile = generator.getLatestLoadProfile();
+		if( currentLoadProfile != null )
+			this.setGeneratedDuringProfile( currentLoadProfile );
+		
+		this._http = replayGenerator.getHttpTransport();
+		this.parse( this._operationRequest );
+	}
+}
@@ -0,0 +1,69 @@
+package radlab.rain.workload.replay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import radlab.rain.Generator;
+import radlab.rain.IScoreboard;
+import radlab.rain.LoadProfile;
+import radlab.rain.Operation;
+import radlab.rain.util.ReplayTrace;
+
+/**
+ * Replays a recorded Redis command, e.g. <code>GET user:42</code>.
+ */
+public class ReplayRedisOperation extends Operation 
+{
+	private ArrayList<String> _command;
+	
+	public ReplayRedisOperation( String name, int index, String request, boolean interactive, IScoreboard scoreboard ) 
+	{
+		super( interactive, scoreboard );
+		this._operationName = name;
+		this._operationIndex = index;
+		this._operationRequest = request;
+		this._command = ReplayTrace.decodeCommand( request );
+		if( this._command == null )
+			this._command = new ArrayList<String>( Arrays.asList( request.trim().split( "\\s+" ) ) );
+	}
+	
+	public ReplayGenerator getGenerator()
+	{
+		return (ReplayGenerator) this._generator;
+	}
+	
+	@Override
+	public void cleanup() 
+	{
+		
+	}
+	
+	@Override
+	public void execute() throws Throwable 
+	{
+		ReplayGenerator generator = this.getGenerator();
+		RespConnection connection = generator.takeConnection();
+		try
+		{
+			this.addBytesReceived( connection.execute( this._command ) );
+		}
+		finally
+		{
+			if( connection.isBroken() )
+				connection.close();
+			else generator.returnConnection( connection );
+		}
+		
+		this.trace( this._operationRequest );
+		this.setFailed( false );
+	}
+	
+	@Override
+	public void prepare( Generator generator ) 
+	{
+		this._generator = generator;
+		LoadProfile currentLoadProfile = generator.getLatestLoadProfile();
+		if( currentLoadProfile != null )
+			this.setGeneratedDuringProfile( currentLoadProfile );
+	}
+}
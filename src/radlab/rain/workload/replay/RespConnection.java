@@ -0,0 +1,161 @@
+package radlab.rain.workload.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * A bare bones Redis (RESP) connection: sends a command and reads (and
+ * counts) its reply, which is all a replay needs.
+ */
+public class RespConnection 
+{
+	public static int CONNECT_TIMEOUT = 5000;
+	public static int READ_TIMEOUT = 30000;
+	
+	private static Charset UTF_8 = Charset.forName( "UTF-8" );
+	private static byte[] CRLF = { '\r', '\n' };
+	
+	private Socket _socket = null;
+	private InputStream _in = null;
+	private OutputStream _out = null;
+	private long _bytesRead = 0;
+	private boolean _broken = false;
+	
+	/** An error reply. The connection can still be used. */
+	public static class ErrorReply extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+		
+		public ErrorReply( String message )
+		{
+			super( message );
+		}
+	}
+	
+	public RespConnection( String host, int port ) throws IOException
+	{
+		this._socket = new Socket();
+		this._socket.setTcpNoDelay( true );
+		this._socket.setSoTimeout( READ_TIMEOUT );
+		this._socket.connect( new InetSocketAddress( host, port ), CONNECT_TIMEOUT );
+		this._in = new BufferedInputStream( this._socket.getInputStream(), 8192 );
+		this._out = new BufferedOutputStream( this._socket.getOutputStream(), 8192 );
+	}
+	
+	/**
+	 * Sends a command and reads its reply.
+	 * 
+	 * @return  The number of bytes in the reply.
+	 * @throws IOException  If the connection fails or the reply is an error.
+	 */
+	public long execute( List<String> command ) throws IOException
+	{
+		long before = this._bytesRead;
+		try
+		{
+			this.writeLine( "*" + command.size() );
+			for( String argument : command )
+			{
+				byte[] bytes = argument.getBytes( UTF_8 );
+				this.writeLine( "$" + bytes.length );
+				this._out.write( bytes );
+				this._out.write( CRLF );
+			}
+			this._out.flush();
+			this.readReply();
+		}
+		catch( ErrorReply e )
+		{
+			throw e;
+		}
+		catch( IOException e )
+		{
+			// Who knows where in the stream we are, don't reuse the connection
+			this._broken = true;
+			throw e;
+		}
+		return this._bytesRead - before;
+	}
+	
+	public boolean isBroken() { return this._broken; }
+	
+	private void writeLine( String line ) throws IOException
+	{
+		this._out.write( line.getBytes( UTF_8 ) );
+		this._out.write( CRLF );
+	}
+	
+	private void readReply() throws IOException
+	{
+		int type = this.read();
+		String line = this.readLine();
+		switch( type )
+		{
+			case '+': 
+			case ':': 
+				return;
+			case '-': 
+				throw new ErrorReply( "Redis error: " + line );
+			case '$':
+			{
+				int length = Integer.parseInt( line );
+				if( length >= 0 )
+					this.skip( length + 2 );
+				return;
+			}
+			case '*':
+			{
+				int count = Integer.parseInt( line );
+				for( int i = 0; i < count; i++ )
+					this.readReply();
+				return;
+			}
+			default:
+				throw new IOException( "Unexpected Redis reply type: " + (char) type );
+		}
+	}
+	
+	private int read() throws IOException
+	{
+		int b = this._in.read();
+		if( b < 0 )
+			throw new IOException( "Redis connection closed" );
+		this._bytesRead++;
+		return b;
+	}
+	
+	private String readLine() throws IOException
+	{
+		StringBuilder line = new StringBuilder();
+		int b = 0;
+		while( ( b = this.read() ) != '\r' )
+			line.append( (char) b );
+		this.read(); // \n
+		return line.toString();
+	}
+	
+	private void skip( long count ) throws IOException
+	{
+		for( long i = 0; i < count; i++ )
+			this.read();
+	}
+	
+	public void close()
+	{
+		try
+		{
+			this._socket.close();
+		}
+		catch( IOException ioe )
+		{
+			// Nothing to do
+		}
+	}
+}
@@ -1,7 +1,6 @@
 package radlab.rain.workload.riak;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Random;
 
 import org.json.JSONException;
@@ -13,12 +12,17 @@ import radlab.rain.Generator;
 import radlab.rain.LoadProfile;
 import radlab.rain.ObjectPool;
 import radlab.rain.Operation;
+import radlab.rain.RandomStreams;
 import radlab.rain.ScenarioTrack;
 import radlab.rain.util.Histogram;
 import radlab.rain.util.storage.KeyGenerator;
 
 public class RiakGenerator extends Generator 
 {
+	// Pool slots of the operations, resolved once
+	private static int RIAK_FETCH_SLOT = ObjectPool.slotOf( RiakFetchOperation.NAME );
+	private static int RIAK_STORE_SLOT = ObjectPool.slotOf( RiakStoreOperation.NAME );
+	
 	public static final String CFG_USE_POOLING_KEY 			= "usePooling";
 	public static final String CFG_DEBUG_KEY		 		= "debug";
 	public static final String CFG_RNG_SEED_KEY	 			= "rngSeed";
@@ -42,6 +46,7 @@ public class RiakGenerator extends Generator
 	private boolean _usePooling					= true;
 	private boolean _debug 						= false;
 	private Random _random						= null;
+	private long _rngSeed						= -1;
 	// Debug key popularity
 	Histogram<String> _keyHist					= new Histogram<String>();
 	// Debug hot object popularity
@@ -85,7 +90,7 @@ public class RiakGenerator extends Generator
 	@Override
 	public void initialize() 
 	{
-
+		this._random = this.createRandom( this._rngSeed, RandomStreams.GENERATOR_STREAM );
 	}
 
 	public RiakTransport getRiakTransport()
@@ -107,8 +112,7 @@ public class RiakGenerator extends Generator
 		
 		// Look for a random number seed
 		if( config.has( CFG_RNG_SEED_KEY ) )
-			this._random = new Random( config.getLong( CFG_RNG_SEED_KEY ) );
-		else this._random = new Random();
+			this._rngSeed = config.getLong( CFG_RNG_SEED_KEY );
 		
 		// Get the bucket to use - we can support a list of buckets at some later point
 		if( config.has( CFG_BUCKET_KEY ) )
@@ -129,14 +133,13 @@ public class RiakGenerator extends Generator
 	{
 		LoadProfile currentLoad = this.getTrack().getCurrentLoadProfile();
 		this._latestLoadProfile = currentLoad;
-		int key = -1;
+		long key = -1;
 		
 		RiakLoadProfile riakProfile = (RiakLoadProfile) this._latestLoadProfile;
 		
 		// Check whether we're sending traffic to hot objects or not
 		double rndVal = this._random.nextDouble();
-		ArrayList<Integer> hotObjectList = riakProfile.getHotObjectList();
-		HashSet<Integer> hotObjectSet = riakProfile.getHotObjectSet();
+		ArrayList<Long> hotObjectList = riakProfile.getHotObjectList();
 		
 		int numHotObjects = hotObjectList.size(); 
 		
@@ -151,10 +154,10 @@ public class RiakGenerator extends Generator
 		{	
 			// Pick a key using the regular keygen strategy
 			KeyGenerator keyGen = riakProfile.getKeyGenerator();
-			key = keyGen.generateKey();
+			key = keyGen.generateLongKey( this._random );
 			// Check whether we picked a key that's in the hot set - if we did, try again
-			while( hotObjectSet.contains( key ) ) 
-				key = keyGen.generateKey();
+			while( riakProfile.isHotObject( key ) ) 
+				key = keyGen.generateLongKey( this._random );
 			
 			// Do some stats checking for non-hot objects
 			this._keyHist.addObservation( String.valueOf( key ) );
@@ -206,7 +209,7 @@ public class RiakGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (RiakFetchOperation) pool.rentObject( RiakFetchOperation.NAME );	
+			op = (RiakFetchOperation) pool.rentObject( RIAK_FETCH_SLOT );	
 		}
 		
 		if( op == null )
@@ -226,7 +229,7 @@ public class RiakGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (RiakStoreOperation) pool.rentObject( RiakStoreOperation.NAME );	
+			op = (RiakStoreOperation) pool.rentObject( RIAK_STORE_SLOT );	
 		}
 		
 		if( op == null )
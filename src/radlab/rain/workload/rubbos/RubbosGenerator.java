@@ -43,6 +43,7 @@ import org.json.JSONException;
 import radlab.rain.Generator;
 import radlab.rain.LoadProfile;
 import radlab.rain.Operation;
+import radlab.rain.RandomStreams;
 import radlab.rain.ScenarioTrack;
 import radlab.rain.util.HttpTransport;
 import radlab.rain.util.NegativeExponential;
@@ -86,8 +87,8 @@ public class RubbosGenerator extends Generator
 	public static final int EOS_SPECIAL_OP = 25; ///< Terminate the current user session
 
 	// Static members shared among all instances
-	private static Random _rng; ///< The Random Number Generator
 	private static RubbosConfiguration _conf; ///< The RUBBoS-related configuration found in the JSON profile file
+	private Random _rng; ///< The Random Number Generator (this user's own stream)
 
 
 	private int _nextOp = INVALID_OP; ///< The next operation that should be deterministically executed at the next schedule
@@ -131,10 +132,9 @@ public class RubbosGenerator extends Generator
 	 * 
 	 * @return A Random object.
 	 */
-	public static Random getRandomGenerator()
+	public Random getRandomGenerator()
 	{
-		//NOTE: this method is not "synchronized" since java.util.Random is threadsafe.
-		return _rng;
+		return this._rng;
 	}
 
 	/**
@@ -142,9 +142,9 @@ public class RubbosGenerator extends Generator
 	 * 
 	 * @param value A Random object.
 	 */
-	protected static synchronized void setRandomGenerator(Random value)
+	protected void setRandomGenerator(Random value)
 	{
-		_rng = value;
+		this._rng = value;
 	}
 
 	/**
@@ -179,21 +179,11 @@ public class RubbosGenerator extends Generator
 	}
 
 	/**
-	 * Initialize the shared random number generator.
+	 * Initialize this user's random number generator.
 	 */
-	private static synchronized void initizializeRandomGenerator()
+	private void initizializeRandomGenerator()
 	{
-		if (_rng == null)
-		{
-			if (getConfiguration().getRngSeed() >= 0)
-			{
-				_rng = new Random(getConfiguration().getRngSeed());
-			}
-			else
-			{
-				_rng = new Random();
-			}
-		}
+		this._rng = this.createRandom(getConfiguration().getRngSeed(), RandomStreams.GENERATOR_STREAM);
 	}
 
 
@@ -218,7 +208,7 @@ public class RubbosGenerator extends Generator
 	public void initialize()
 	{
 		this.initizializeRandomGenerator();
-		this._http = new HttpTransport();
+		this._http = this.createHttpTransport();
 		this._logger = Logger.getLogger(this.getName());
 		this._sessionState = new RubbosSessionState();
 		this._utility = new RubbosUtility(this._rng, this._conf);
@@ -227,12 +217,12 @@ public class RubbosGenerator extends Generator
 		this._thinkTime = this.getTrack().getMeanThinkTime();
 		if (this._thinkTime > 0)
 		{
-			this._thinkTimeRng = new NegativeExponential(this._thinkTime, this._rng);
+			this._thinkTimeRng = new NegativeExponential(this._thinkTime, this.createRandom(getConfiguration().getRngSeed(), RandomStreams.THINK_TIME_STREAM));
 		}
 		this._cycleTime = this.getTrack().getMeanCycleTime();
 		if (this._cycleTime > 0)
 		{
-			this._cycleTimeRng = new NegativeExponential(this._cycleTime, this._rng);
+			this._cycleTimeRng = new NegativeExponential(this._cycleTime, this.createRandom(getConfiguration().getRngSeed(), RandomStreams.CYCLE_TIME_STREAM));
 		}
 
 		// Select a random user for current session (if needed)
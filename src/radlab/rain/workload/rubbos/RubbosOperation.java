@@ -234,7 +234,7 @@ public abstract class RubbosOperation extends Operation
 				URI uri = new URI(this.getGenerator().getBaseURL());
 				String url = uri.resolve(imageUrl).toString();
 				this.getLogger().finer("Loading image: " + url);
-				this.getHttpTransport().fetchUrl(url);
+				this.getHttpTransport().drainUrl(url);
 				++imagesLoaded;
 			}
 		}
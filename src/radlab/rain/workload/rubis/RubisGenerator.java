@@ -46,6 +46,7 @@ import org.json.JSONException;
 import radlab.rain.Generator;
 import radlab.rain.LoadProfile;
 import radlab.rain.Operation;
+import radlab.rain.RandomStreams;
 import radlab.rain.ScenarioTrack;
 import radlab.rain.util.HttpTransport;
 import radlab.rain.util.NegativeExponential;
@@ -97,8 +98,8 @@ public class RubisGenerator extends Generator
 	public static final int EOS_SPECIAL_OP = 28; ///< Terminate the current user session
 
 	// Static members shared among all instances
-	private static Random _rng; ///< The Random Number Generator
 	private static RubisConfiguration _conf; ///< The RUBiS-related configuration found in the JSON profile file
+	private Random _rng; ///< The Random Number Generator (this user's own stream)
 
 
 	private int _nextOp = INVALID_OP; ///< The next operation that should be deterministically executed at the next schedule
@@ -145,10 +146,9 @@ public class RubisGenerator extends Generator
 	 * 
 	 * @return A Random object.
 	 */
-	public static Random getRandomGenerator()
+	public Random getRandomGenerator()
 	{
-		//NOTE: this method is not "synchronized" since java.util.Random is threadsafe.
-		return _rng;
+		return this._rng;
 	}
 
 	/**
@@ -156,9 +156,9 @@ public class RubisGenerator extends Generator
 	 * 
 	 * @param value A Random object.
 	 */
-	protected static synchronized void setRandomGenerator(Random value)
+	protected void setRandomGenerator(Random value)
 	{
-		_rng = value;
+		this._rng = value;
 	}
 
 	/**
@@ -193,21 +193,15 @@ public class RubisGenerator extends Generator
 	}
 
 	/**
-	 * Initialize the shared random number generator.
+	 * Initialize this user's random number generator.
+	 *
+	 * Each generator draws from its own stream, derived from the configured
+	 * seed (or the scenario's master seed) and the user id, so seeded runs
+	 * are reproducible and users do not contend on a shared generator.
 	 */
-	private static synchronized void initizializeRandomGenerator()
+	private void initizializeRandomGenerator()
 	{
-		if (_rng == null)
-		{
-			if (getConfiguration().getRngSeed() >= 0)
-			{
-				_rng = new Random(getConfiguration().getRngSeed());
-			}
-			else
-			{
-				_rng = new Random();
-			}
-		}
+		this._rng = this.createRandom(getConfiguration().getRngSeed(), RandomStreams.GENERATOR_STREAM);
 	}
 
 
@@ -232,7 +226,7 @@ public class RubisGenerator extends Generator
 	public void initialize()
 	{
 		this.initizializeRandomGenerator();
-		this._http = new HttpTransport();
+		this._http = this.createHttpTransport();
 		this._logger = Logger.getLogger(this.getName());
 		this._sessionState = new RubisSessionState();
 		this._utility = new RubisUtility(this._rng, this._conf);
@@ -241,12 +235,12 @@ public class RubisGenerator extends Generator
 		this._thinkTime = this.getTrack().getMeanThinkTime();
 		if (this._thinkTime > 0)
 		{
-			this._thinkTimeRng = new NegativeExponential(this._thinkTime, this._rng);
+			this._thinkTimeRng = new NegativeExponential(this._thinkTime, this.createRandom(getConfiguration().getRngSeed(), RandomStreams.THINK_TIME_STREAM));
 		}
 		this._cycleTime = this.getTrack().getMeanCycleTime();
 		if (this._cycleTime > 0)
 		{
-			this._cycleTimeRng = new NegativeExponential(this._cycleTime, this._rng);
+			this._cycleTimeRng = new NegativeExponential(this._cycleTime, this.createRandom(getConfiguration().getRngSeed(), RandomStreams.CYCLE_TIME_STREAM));
 		}
 
 		// Select a random user for current session (if needed)
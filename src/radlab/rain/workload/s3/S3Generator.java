@@ -15,10 +15,23 @@ import radlab.rain.Generator;
 import radlab.rain.LoadProfile;
 import radlab.rain.ObjectPool;
 import radlab.rain.Operation;
+import radlab.rain.RandomStreams;
 import radlab.rain.ScenarioTrack;
 
 public class S3Generator extends Generator 
 {
+	// Pool slots of the operations, resolved once
+	private static int S3_GET_SLOT = ObjectPool.slotOf( S3GetOperation.NAME );
+	private static int S3_PUT_SLOT = ObjectPool.slotOf( S3PutOperation.NAME );
+	private static int S3_HEAD_SLOT = ObjectPool.slotOf( S3HeadOperation.NAME );
+	private static int S3_DELETE_SLOT = ObjectPool.slotOf( S3DeleteOperation.NAME );
+	private static int S3_CREATE_BUCKET_SLOT = ObjectPool.slotOf( S3CreateBucketOperation.NAME );
+	private static int S3_LIST_BUCKET_SLOT = ObjectPool.slotOf( S3ListBucketOperation.NAME );
+	private static int S3_DELETE_BUCKET_SLOT = ObjectPool.slotOf( S3DeleteBucketOperation.NAME );
+	private static int S3_LIST_ALL_BUCKETS_SLOT = ObjectPool.slotOf( S3ListAllBucketsOperation.NAME );
+	private static int S3_MOVE_SLOT = ObjectPool.slotOf( S3MoveOperation.NAME );
+	private static int S3_RENAME_SLOT = ObjectPool.slotOf( S3RenameOperation.NAME );
+	
 	public static String AWS_PROPERTIES_FILE			= "aws.properties";
 	public static final String AWS_ACCESS_KEY_PROPERTY 	= "awsAccessKey";
     public static final String AWS_SECRET_KEY_PROPERTY 	= "awsSecretKey";
@@ -61,6 +74,7 @@ public class S3Generator extends Generator
 	
 	private boolean _debug 								= false;
 	private Random _random								= null;
+	private long _rngSeed								= -1;
 	private S3Transport _s3Client						= null;
 	private int[] _objectKeys							= null;						
 	private HashMap<Integer,String> _objectKeyPrefixes 	= null;
@@ -90,7 +104,10 @@ public class S3Generator extends Generator
 	}
 
 	@Override
-	public void initialize() {}
+	public void initialize() 
+	{
+		this._random = this.createRandom( this._rngSeed, RandomStreams.GENERATOR_STREAM );
+	}
 
 	public void setUsePooling( boolean value ) { this._usePooling = value; }
 	public boolean getUsePooling() { return this._usePooling; }
@@ -108,8 +125,7 @@ public class S3Generator extends Generator
 		
 		// Look for a random number seed
 		if( config.has( CFG_RNG_SEED_KEY ) )
-			this._random = new Random( config.getLong(CFG_RNG_SEED_KEY) );
-		else this._random = new Random();
+			this._rngSeed = config.getLong( CFG_RNG_SEED_KEY );
 		
 		// Configure the s3 transport with the credentials we need to connect etc. 
 		// - load from a local properties file.
@@ -312,7 +328,7 @@ public class S3Generator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (S3GetOperation) pool.rentObject( S3GetOperation.NAME );	
+			op = (S3GetOperation) pool.rentObject( S3_GET_SLOT );	
 		}
 		
 		if( op == null )
@@ -333,7 +349,7 @@ public class S3Generator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (S3PutOperation) pool.rentObject( S3PutOperation.NAME );	
+			op = (S3PutOperation) pool.rentObject( S3_PUT_SLOT );	
 		}
 		
 		if( op == null )
@@ -366,7 +382,7 @@ public class S3Generator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (S3HeadOperation) pool.rentObject( S3HeadOperation.NAME );	
+			op = (S3HeadOperation) pool.rentObject( S3_HEAD_SLOT );	
 		}
 		
 		if( op == null )
@@ -387,7 +403,7 @@ public class S3Generator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (S3DeleteOperation) pool.rentObject( S3DeleteOperation.NAME );	
+			op = (S3DeleteOperation) pool.rentObject( S3_DELETE_SLOT );	
 		}
 		
 		if( op == null )
@@ -408,7 +424,7 @@ public class S3Generator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (S3CreateBucketOperation) pool.rentObject( S3CreateBucketOperation.NAME );	
+			op = (S3CreateBucketOperation) pool.rentObject( S3_CREATE_BUCKET_SLOT );	
 		}
 		
 		if( op == null )
@@ -428,7 +444,7 @@ public class S3Generator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (S3ListBucketOperation) pool.rentObject( S3ListBucketOperation.NAME );	
+			op = (S3ListBucketOperation) pool.rentObject( S3_LIST_BUCKET_SLOT );	
 		}
 		
 		if( op == null )
@@ -448,7 +464,7 @@ public class S3Generator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (S3DeleteBucketOperation) pool.rentObject( S3DeleteBucketOperation.NAME );	
+			op = (S3DeleteBucketOperation) pool.rentObject( S3_DELETE_BUCKET_SLOT );	
 		}
 		
 		if( op == null )
@@ -468,7 +484,7 @@ public class S3Generator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (S3ListAllBucketsOperation) pool.rentObject( S3ListAllBucketsOperation.NAME );	
+			op = (S3ListAllBucketsOperation) pool.rentObject( S3_LIST_ALL_BUCKETS_SLOT );	
 		}
 		
 		if( op == null )
@@ -487,7 +503,7 @@ public class S3Generator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (S3MoveOperation) pool.rentObject( S3MoveOperation.NAME );	
+			op = (S3MoveOperation) pool.rentObject( S3_MOVE_SLOT );	
 		}
 		
 		if( op == null )
@@ -510,7 +526,7 @@ public class S3Generator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (S3RenameOperation) pool.rentObject( S3RenameOperation.NAME );	
+			op = (S3RenameOperation) pool.rentObject( S3_RENAME_SLOT );	
 		}
 		
 		if( op == null )
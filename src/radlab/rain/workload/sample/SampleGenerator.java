@@ -68,8 +68,8 @@ public class SampleGenerator extends Generator
 	 */
 	public void initialize()
 	{
-		this._randomNumberGenerator = new java.util.Random();
-		this._http = new HttpTransport();
+		this._randomNumberGenerator = this.getRandom();
+		this._http = this.createHttpTransport();
 	}
 	
 	/**
@@ -39,6 +39,7 @@ import radlab.rain.RainConfig;
 import radlab.rain.ScenarioTrack;
 import radlab.rain.util.HttpTransport;
 import radlab.rain.util.NegativeExponential;
+import radlab.rain.util.ResponseScanner;
 import radlab.rain.util.AppServerStats;
 
 import org.json.JSONObject;
@@ -53,6 +54,15 @@ import java.util.Vector;
 
 public class ScadrGenerator extends Generator 
 {
+	// Pool slots of the operations, resolved once
+	private static int HOME_PAGE_SLOT = ObjectPool.slotOf( HomePageOperation.NAME );
+	private static int LOGIN_SLOT = ObjectPool.slotOf( LoginOperation.NAME );
+	private static int CREATE_USER_SLOT = ObjectPool.slotOf( CreateUserOperation.NAME );
+	private static int CREATE_SUBSCRIPTION_SLOT = ObjectPool.slotOf( CreateSubscriptionOperation.NAME );
+	private static int POST_THOUGHT_SLOT = ObjectPool.slotOf( PostThoughtOperation.NAME );
+	private static int LOGOUT_SLOT = ObjectPool.slotOf( LogoutOperation.NAME );
+	private static int SCADR_NULL_SLOT = ObjectPool.slotOf( ScadrNullOperation.NAME );
+	
 	public static String CFG_USE_POOLING_KEY = "usePooling";
 	public static String CFG_DEBUG_KEY		 = "debug";
 	public static String CFG_ZOOKEEPER_CONN_STRING		= "zookeeperConnString";
@@ -448,6 +458,8 @@ public class ScadrGenerator extends Generator
 	
 	//public String _loginAuthToken;
 	public String _username;
+	// Looks for the "does not exist" notice on a user page; reused across subscribes
+	public ResponseScanner _userMissingScanner = new ResponseScanner( "does not exist" );
 	
 	// Keep track of every app server we talk to so we can check whether the load
 	// is being rotated like we expect
@@ -501,7 +513,7 @@ public class ScadrGenerator extends Generator
 	@Override
 	public void initialize() 
 	{
-		this._http = new HttpTransport();
+		this._http = this.createHttpTransport();
 		// Initialize think/cycle time random number generators (if you need/want them)
 		this._cycleTimeGenerator = new NegativeExponential( this._cycleTime );
 		this._thinkTimeGenerator = new NegativeExponential( this._thinkTime );
@@ -709,7 +721,7 @@ public class ScadrGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (HomePageOperation) pool.rentObject( HomePageOperation.NAME );	
+			op = (HomePageOperation) pool.rentObject( HOME_PAGE_SLOT );	
 		}
 		
 		if( op == null )
@@ -726,7 +738,7 @@ public class ScadrGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (LoginOperation) pool.rentObject( LoginOperation.NAME );	
+			op = (LoginOperation) pool.rentObject( LOGIN_SLOT );	
 		}
 		
 		if( op == null )
@@ -743,7 +755,7 @@ public class ScadrGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (CreateUserOperation) pool.rentObject( CreateUserOperation.NAME );	
+			op = (CreateUserOperation) pool.rentObject( CREATE_USER_SLOT );	
 		}
 		
 		if( op == null )
@@ -760,7 +772,7 @@ public class ScadrGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (CreateSubscriptionOperation) pool.rentObject( CreateSubscriptionOperation.NAME );	
+			op = (CreateSubscriptionOperation) pool.rentObject( CREATE_SUBSCRIPTION_SLOT );	
 		}
 		
 		if( op == null )
@@ -777,7 +789,7 @@ public class ScadrGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (PostThoughtOperation) pool.rentObject( PostThoughtOperation.NAME );	
+			op = (PostThoughtOperation) pool.rentObject( POST_THOUGHT_SLOT );	
 		}
 		
 		if( op == null )
@@ -794,7 +806,7 @@ public class ScadrGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (LogoutOperation) pool.rentObject( LogoutOperation.NAME );	
+			op = (LogoutOperation) pool.rentObject( LOGOUT_SLOT );	
 		}
 		
 		if( op == null )
@@ -811,7 +823,7 @@ public class ScadrGenerator extends Generator
 		if( this._usePooling )
 		{
 			ObjectPool pool = this.getTrack().getObjectPool();
-			op = (ScadrNullOperation) pool.rentObject( ScadrNullOperation.NAME );	
+			op = (ScadrNullOperation) pool.rentObject( SCADR_NULL_SLOT );	
 		}
 		
 		if( op == null )
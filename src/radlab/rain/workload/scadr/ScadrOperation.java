@@ -143,7 +143,7 @@ public abstract class ScadrOperation extends Operation
 		{
 			if ( this._cachedURLs.add( url ) ) 
 			{
-				this._http.fetchUrl( url );
+				this._http.drainUrl( url );
 				staticsLoaded++;
 			}
 		}
@@ -609,9 +609,9 @@ public abstract class ScadrOperation extends Operation
 				
 		String targetUserUrl = String.format( this.getGenerator()._postThoughtUrlTemplate, targetUser );
 		// Do a get for that user - look for a subscribe button
-		StringBuilder response = this._http.fetchUrl( targetUserUrl );
+		long length = this._http.scanUrl( targetUserUrl, this.getGenerator()._userMissingScanner );
 		this.trace( targetUserUrl );
-		if( response == null || (response.length() == 0 || this._http.getStatusCode() > 399) || response.toString().contains( "does not exist" ) )
+		if( length == 0 || this._http.getStatusCode() > 399 || this.getGenerator()._userMissingScanner.isFound( 0 ) )
 		{
 			// Create user if they don't exist
 			/*if( !createTargetUser )
@@ -653,7 +653,7 @@ public abstract class ScadrOperation extends Operation
 		httpPost.setEntity( entity );
 		
 		// Make the POST request and verify that it succeeds.
-		response = this._http.fetch( httpPost );
+		StringBuilder response = this._http.fetch( httpPost );
 		
 		String successMessage1 = "Subscribed to " + targetUser;
 		String successMessage2 = "You are subscribed to " + targetUser;
@@ -11,6 +11,9 @@ import org.json.JSONException;
 
 public class WebGenerator extends Generator
 {
+	// Pool slots of the operations, resolved once
+	private static int GET_SLOT = ObjectPool.slotOf( GetOperation.NAME );
+	
    public static String CFG_TARGET_URL = "targetUrl";
     // Operation indices used in the mix matrix.
     public static final int GET = 0;
@@ -55,7 +58,7 @@ public class WebGenerator extends Generator
 	@Override
 	public void initialize()
 	{
-		this._http = new HttpTransport();
+		this._http = this.createHttpTransport();
 
 	}
 
@@ -108,7 +111,7 @@ public class WebGenerator extends Generator
 	{
 		GetOperation op = null;
 		ObjectPool pool = this.getTrack().getObjectPool();
-		op = (GetOperation) pool.rentObject( GetOperation.NAME );
+		op = (GetOperation) pool.rentObject( GET_SLOT );
 		// Nothing available in pool so get an instance the tried and true way.
 		if( op == null )
 			op = new GetOperation( this.getTrack().getInteractive(), this.getScoreboard() );
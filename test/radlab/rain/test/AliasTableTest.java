@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package radlab.rain.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import radlab.rain.util.AliasTable;
+
+public class AliasTableTest {
+	
+	private static final int SWEEP = 1000000;
+	
+	// Walks [0, 1) in even steps, so the sampled frequencies are (nearly) the exact probabilities
+	private static class SweepRandom extends Random {
+		private static final long serialVersionUID = 1L;
+		private int next = 0;
+		
+		public double nextDouble() {
+			return ( ( next++ % SWEEP ) + 0.5 ) / SWEEP;
+		}
+	}
+	
+	private static double[] frequencies( AliasTable table ) {
+		Random random = new SweepRandom();
+		double[] counts = new double[table.size()];
+		for( int i = 0; i < SWEEP; i++ )
+			counts[table.sample( random )]++;
+		for( int i = 0; i < counts.length; i++ )
+			counts[i] /= SWEEP;
+		return counts;
+	}
+	
+	private static void assertDistribution( double[] weights ) {
+		double sum = 0.0;
+		for( double weight : weights )
+			sum += weight;
+		
+		AliasTable table = new AliasTable( weights );
+		assertEquals( weights.length, table.size() );
+		double[] frequencies = frequencies( table );
+		// Every column of the sweep is off by at most one step
+		double tolerance = 2.0 * weights.length / SWEEP;
+		for( int i = 0; i < weights.length; i++ ) {
+			if( weights[i] == 0.0 )
+				assertEquals( "Index " + i, 0.0, frequencies[i], 0.0 );
+			else assertEquals( "Index " + i, weights[i] / sum, frequencies[i], tolerance );
+		}
+	}
+	
+	@Test
+	public void testUniform() {
+		assertDistribution( new double[] { 1, 1, 1, 1, 1, 1, 1 } );
+	}
+	
+	@Test
+	public void testSkewed() {
+		double[] weights = new double[100];
+		for( int i = 0; i < weights.length; i++ )
+			weights[i] = 1.0 / Math.pow( i + 1, 1.2 );
+		assertDistribution( weights );
+	}
+	
+	@Test
+	public void testMixMatrixRow() {
+		// Unnormalized percentages, like a row of a mix matrix
+		assertDistribution( new double[] { 0.0, 11.0, 52.0, 36.0, 0.0, 1.0, 0.0 } );
+	}
+	
+	@Test
+	public void testSingleWeight() {
+		assertDistribution( new double[] { 3.0 } );
+		assertDistribution( new double[] { 0.0, 0.0, 5.0, 0.0 } );
+	}
+	
+	@Test
+	public void testRandomStream() {
+		// With a real random stream every index stays in range and the zero weight never comes up
+		AliasTable table = new AliasTable( new double[] { 2.0, 0.0, 1.0 } );
+		Random random = new Random( 7 );
+		int[] counts = new int[3];
+		for( int i = 0; i < 30000; i++ )
+			counts[table.sample( random )]++;
+		assertEquals( 0, counts[1] );
+		assertEquals( 2.0, (double) counts[0] / counts[2], 0.1 );
+	}
+	
+	@Test( expected = IllegalArgumentException.class )
+	public void testNoWeights() {
+		new AliasTable( new double[0] );
+	}
+	
+	@Test( expected = IllegalArgumentException.class )
+	public void testAllZero() {
+		new AliasTable( new double[] { 0.0, 0.0 } );
+	}
+	
+	@Test( expected = IllegalArgumentException.class )
+	public void testNegativeWeight() {
+		new AliasTable( new double[] { 1.0, -1.0 } );
+	}
+	
+	@Test( expected = IllegalArgumentException.class )
+	public void testNaNWeight() {
+		new AliasTable( new double[] { 1.0, Double.NaN } );
+	}
+}
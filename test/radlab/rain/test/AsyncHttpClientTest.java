@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import radlab.rain.util.AsyncHttpClient;
+import radlab.rain.util.AsyncHttpRequest;
+import radlab.rain.util.AsyncHttpResponse;
+import radlab.rain.util.HttpTransport;
+import radlab.rain.util.IAsyncHttpCallback;
+
+public class AsyncHttpClientTest {
+	
+	private static final String OK = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok";
+	
+	private ServerSocket server;
+	private AsyncHttpClient client;
+	// What each accepted connection does, in order
+	private LinkedList<Script> scripts = new LinkedList<Script>();
+	private LinkedList<Socket> sockets = new LinkedList<Socket>();
+	
+	/** The responses one connection sends, one per request read. */
+	private static class Script {
+		private String[] responses;
+		// Close after the last response, otherwise wait for the client to close
+		private boolean closeAfter;
+		
+		public Script(boolean closeAfter, String... responses) {
+			this.closeAfter = closeAfter;
+			this.responses = responses;
+		}
+	}
+	
+	/** Waits for the outcome of one request. */
+	private static class Result implements IAsyncHttpCallback {
+		private CountDownLatch done = new CountDownLatch(1);
+		private AsyncHttpResponse response;
+		private Throwable cause;
+		
+		public void completed(AsyncHttpResponse response) {
+			this.response = response;
+			this.done.countDown();
+		}
+		
+		public void failed(AsyncHttpRequest request, Throwable cause) {
+			this.cause = cause;
+			this.done.countDown();
+		}
+		
+		public AsyncHttpResponse await() throws Exception {
+			assertTrue("no callback", this.done.await(5, TimeUnit.SECONDS));
+			if (this.cause != null)
+				throw new AssertionError("request failed: " + this.cause);
+			return this.response;
+		}
+	}
+	
+	@Before
+	public void setUp() throws IOException {
+		server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		Thread acceptor = new Thread("AsyncHttpClientTest.Server") {
+			public void run() {
+				try {
+					while (true) {
+						final Socket socket = server.accept();
+						final Script script;
+						synchronized (scripts) {
+							sockets.add(socket);
+							script = scripts.poll();
+						}
+						new Thread("AsyncHttpClientTest.Connection") {
+							public void run() {
+								serve(socket, script);
+							}
+						}.start();
+					}
+				} catch (IOException e) {
+					// Server closed
+				}
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+		
+		client = new AsyncHttpClient(10, 5000, 0);
+		client.start();
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		client.stopClient();
+		server.close();
+		synchronized (scripts) {
+			for (Socket socket : sockets)
+				socket.close();
+		}
+	}
+	
+	private void script(boolean closeAfter, String... responses) {
+		synchronized (scripts) {
+			scripts.add(new Script(closeAfter, responses));
+		}
+	}
+	
+	private void serve(Socket socket, Script script) {
+		try {
+			InputStream in = socket.getInputStream();
+			OutputStream out = socket.getOutputStream();
+			if (script != null) {
+				for (String response : script.responses) {
+					if (!readHead(in))
+						return;
+					// No response, the server drops the connection
+					if (response == null) {
+						socket.close();
+						return;
+					}
+					out.write(response.getBytes("ISO-8859-1"));
+					out.flush();
+				}
+				if (script.closeAfter) {
+					socket.close();
+					return;
+				}
+			}
+			while (in.read() != -1)
+				;
+		} catch (IOException e) {
+			// Closed by the test
+		}
+	}
+	
+	private static boolean readHead(InputStream in) throws IOException {
+		int tail = 0;
+		while (tail != 0x0D0A0D0A) {
+			int b = in.read();
+			if (b == -1)
+				return false;
+			tail = (tail << 8) | b;
+		}
+		return true;
+	}
+	
+	private AsyncHttpResponse get(String path) throws Exception {
+		AsyncHttpRequest request = new AsyncHttpRequest("http://127.0.0.1:" + server.getLocalPort() + path);
+		request.setResponseMode(HttpTransport.ResponseMode.MATERIALIZE);
+		Result result = new Result();
+		client.execute(request, result);
+		return result.await();
+	}
+	
+	@Test
+	public void testContentLength() throws Exception {
+		script(false, "HTTP/1.1 200 OK\r\nContent-Length: 11\r\nX-Test: a\r\n\r\nhello world");
+		AsyncHttpResponse response = get("/");
+		assertEquals(200, response.getStatusCode());
+		assertEquals("a", response.getHeader("X-Test"));
+		assertEquals("hello world", response.getBody());
+		assertEquals(11, response.getBytesReceived());
+	}
+	
+	@Test
+	public void testChunked() throws Exception {
+		script(false,
+				"HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n6;name=value\r\n world\r\n0\r\nX-Trailer: a\r\n\r\n",
+				OK);
+		assertEquals("hello world", get("/").getBody());
+		// The connection is reused once the last chunk and the trailers are in
+		assertEquals("ok", get("/").getBody());
+		assertEquals(1, client.getConnectionsOpened());
+	}
+	
+	@Test
+	public void testCloseDelimited() throws Exception {
+		script(true, "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n\r\nuntil the end");
+		script(false, OK);
+		AsyncHttpResponse response = get("/");
+		assertEquals(200, response.getStatusCode());
+		assertEquals("until the end", response.getBody());
+		// The connection can't be reused
+		assertEquals("ok", get("/").getBody());
+		assertEquals(2, client.getConnectionsOpened());
+	}
+	
+	@Test
+	public void testInterimResponse() throws Exception {
+		script(false, "HTTP/1.1 100 Continue\r\nX-Interim: a\r\n\r\nHTTP/1.1 201 Created\r\nContent-Length: 2\r\nX-Final: b\r\n\r\nok");
+		AsyncHttpResponse response = get("/");
+		assertEquals(201, response.getStatusCode());
+		assertNull(response.getHeader("X-Interim"));
+		assertEquals("b", response.getHeader("X-Final"));
+		assertEquals("ok", response.getBody());
+	}
+	
+	@Test
+	public void testRetryOnStaleConnection() throws Exception {
+		// The second request finds its kept-alive connection dropped by the server
+		script(false, OK, null);
+		script(false, "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nretry");
+		assertEquals("ok", get("/").getBody());
+		assertEquals("retry", get("/").getBody());
+		assertEquals(1, client.getRetries());
+		assertEquals(2, client.getConnectionsOpened());
+	}
+	
+	@Test
+	public void testEveryRequestIsAnsweredAcrossShutdown() throws Exception {
+		// Connections that never answer, the requests are in flight when the client stops
+		for (int i = 0; i < 10; i++)
+			script(false);
+		final AtomicInteger issued = new AtomicInteger(0);
+		final AtomicInteger answered = new AtomicInteger(0);
+		final IAsyncHttpCallback callback = new IAsyncHttpCallback() {
+			public void completed(AsyncHttpResponse response) {
+				answered.incrementAndGet();
+			}
+			
+			public void failed(AsyncHttpRequest request, Throwable cause) {
+				answered.incrementAndGet();
+			}
+		};
+		final String url = "http://127.0.0.1:" + server.getLocalPort() + "/";
+		Thread submitter = new Thread() {
+			public void run() {
+				for (int i = 0; i < 20000; i++) {
+					issued.incrementAndGet();
+					client.execute(new AsyncHttpRequest(url), callback);
+				}
+			}
+		};
+		submitter.start();
+		while (issued.get() < 1000)
+			Thread.sleep(1);
+		client.stopClient();
+		submitter.join();
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		while (answered.get() < issued.get() && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertEquals(issued.get(), answered.get());
+		assertEquals(0, client.getInFlight());
+	}
+}
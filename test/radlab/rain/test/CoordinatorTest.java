@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package radlab.rain.test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import radlab.rain.Benchmark;
+import radlab.rain.communication.AgentStatusReplyMessage;
+import radlab.rain.communication.AgentStatusRequestMessage;
+import radlab.rain.communication.Coordinator;
+import radlab.rain.communication.MessageHeader;
+import radlab.rain.communication.RainMessage;
+import radlab.rain.communication.ScorecardReplyMessage;
+import radlab.rain.communication.ScorecardRequestMessage;
+import radlab.rain.communication.StatusMessage;
+import radlab.rain.util.ResultsExporter;
+
+public class CoordinatorTest {
+	
+	private static final int AGENT_COUNT = 3;
+	private static final String TRACK_NAME = "null-001";
+	private static final String GENERATOR_CLASS = "radlab.rain.workload.cloudstoneNull.CloudstoneNullGenerator";
+	
+	// Scorecard counters that must add up across agents
+	private static final String[] CARD_COUNTERS = { "operationsInitiated", "operationsSuccessful", "operationsLate", "operationsFailed", "operationsAsync", "operationsSync" };
+	private static final String[] OPERATION_COUNTERS = { "succeeded", "failed", "actions", "asyncInvocations", "syncInvocations", "samplesSeen" };
+	
+	private File workDir;
+	private LinkedList<Process> agents = new LinkedList<Process>();
+	
+	// Keeps the global final scorecards instead of writing them out
+	private static class RecordingExporter extends ResultsExporter {
+		public LinkedList<JSONObject> finalCards = new LinkedList<JSONObject>();
+		
+		public RecordingExporter( JSONObject config ) throws JSONException {
+			super( config );
+		}
+		
+		public synchronized void writeRecord( String record, String trackName, String name, JSONObject payload ) {
+			if( record.equals( ResultsExporter.FINAL_RECORD ) )
+				this.finalCards.add( payload );
+		}
+	}
+	
+	// Answers like an agent whose run never finishes, or fails
+	private static class FakeAgent extends Thread {
+		private ServerSocket server;
+		private boolean failed;
+		
+		public FakeAgent( boolean failed ) throws IOException {
+			this.server = new ServerSocket( 0 );
+			this.failed = failed;
+			this.setDaemon( true );
+		}
+		
+		public int getPort() {
+			return this.server.getLocalPort();
+		}
+		
+		public void close() throws IOException {
+			this.server.close();
+		}
+		
+		private RainMessage reply( RainMessage request ) {
+			if( request instanceof AgentStatusRequestMessage ) {
+				AgentStatusReplyMessage status = new AgentStatusReplyMessage();
+				status._state = Benchmark.WAITING;
+				status._trackMaxUsers.put( TRACK_NAME, 10L );
+				status._runDuration = 1000;
+				status._agentTimestamp = System.currentTimeMillis();
+				return status;
+			}
+			if( request instanceof ScorecardRequestMessage ) {
+				ScorecardReplyMessage scorecards = new ScorecardReplyMessage();
+				scorecards._finished = this.failed;
+				scorecards._failed = this.failed;
+				return scorecards;
+			}
+			StatusMessage status = new StatusMessage();
+			status._statusCode = MessageHeader.OK;
+			return status;
+		}
+		
+		public void run() {
+			try {
+				while( true ) {
+					Socket socket = this.server.accept();
+					try {
+						ObjectInputStream in = new ObjectInputStream( socket.getInputStream() );
+						RainMessage reply = this.reply( (RainMessage) in.readObject() );
+						ObjectOutputStream out = new ObjectOutputStream( socket.getOutputStream() );
+						out.writeObject( reply );
+						out.flush();
+					}
+					catch( ClassNotFoundException e ) {
+					}
+					finally {
+						socket.close();
+					}
+				}
+			}
+			catch( IOException e ) {
+				// Closed
+			}
+		}
+	}
+	
+	@Before
+	public void setUp() throws Exception {
+		// The agents would die at start up and leave the coordinator waiting on them
+		try {
+			Class.forName( GENERATOR_CLASS );
+		}
+		catch( ClassNotFoundException e ) {
+			fail( "Generator " + GENERATOR_CLASS + " not on the class path, build it first (ant build-cloudstoneNull)." );
+		}
+		
+		this.workDir = File.createTempFile( "coordinator", "" );
+		this.workDir.delete();
+		this.workDir.mkdirs();
+		
+		JSONArray mix = new JSONArray();
+		for( int i = 0; i < 7; i++ ) {
+			JSONArray row = new JSONArray();
+			for( int j = 0; j < 7; j++ )
+				row.put( 100.0 / 7.0 );
+			mix.put( row );
+		}
+		JSONObject behavior = new JSONObject();
+		behavior.put( "default", mix );
+		
+		JSONArray loadProfile = new JSONArray();
+		loadProfile.put( new JSONObject().put( "interval", 2 ).put( "users", 10 ).put( "mix", "default" ).put( "name", "a" ) );
+		loadProfile.put( new JSONObject().put( "interval", 2 ).put( "users", 20 ).put( "mix", "default" ).put( "name", "b" ) );
+		
+		JSONObject track = new JSONObject();
+		track.put( "generator", GENERATOR_CLASS );
+		track.put( "track", "radlab.rain.DefaultScenarioTrack" );
+		track.put( "resourcePath", new File( "resources" ).getAbsolutePath() + File.separator );
+		track.put( "behavior", behavior );
+		track.put( "loadProfile", loadProfile );
+		track.put( "target", new JSONObject().put( "hostname", "localhost" ).put( "port", 80 ) );
+		track.put( "pLogSampling", 0.0 );
+		track.put( "pOpenLoop", 0.3 );
+		track.put( "meanCycleTime", 0 );
+		track.put( "meanThinkTime", 0 );
+		track.put( "interactive", true );
+		track.put( "metricSnapshotInterval", 60 );
+		track.put( "objectPoolMaxSize", 50000 );
+		track.put( "meanResponseTimeSamplingInterval", 1000 );
+		track.put( "responseTimeSampler", "histogram" );
+		
+		JSONObject profiles = new JSONObject();
+		profiles.put( TRACK_NAME, track );
+		write( new File( this.workDir, "profiles.json" ), profiles );
+	}
+	
+	@After
+	public void tearDown() {
+		for( Process agent : this.agents )
+			agent.destroy();
+		if( this.workDir == null )
+			return;
+		File[] files = this.workDir.listFiles();
+		for( int i = 0; files != null && i < files.length; i++ )
+			files[i].delete();
+		this.workDir.delete();
+	}
+	
+	private static void write( File file, JSONObject json ) throws IOException {
+		PrintStream out = new PrintStream( new FileOutputStream( file ) );
+		out.println( json.toString() );
+		out.close();
+	}
+	
+	private static int getFreePort() throws IOException {
+		ServerSocket socket = new ServerSocket( 0 );
+		int port = socket.getLocalPort();
+		socket.close();
+		return port;
+	}
+	
+	// The agents run elsewhere, the class path must not be relative
+	private static String getClassPath() {
+		StringBuffer classPath = new StringBuffer();
+		for( String entry : System.getProperty( "java.class.path" ).split( File.pathSeparator ) ) {
+			if( classPath.length() > 0 )
+				classPath.append( File.pathSeparator );
+			classPath.append( new File( entry ).getAbsolutePath() );
+		}
+		return classPath.toString();
+	}
+	
+	// Runs an agent in its own JVM (the benchmark is a singleton), waiting for the coordinator
+	private File startAgent( int index, int port ) throws Exception {
+		File results = new File( this.workDir, "agent" + index + ".jsonl" );
+		JSONObject config = new JSONObject();
+		config.put( "profiles", new File( this.workDir, "profiles.json" ).getAbsolutePath() );
+		config.put( "timing", new JSONObject().put( "rampUp", 1 ).put( "duration", 4 ).put( "rampDown", 1 ) );
+		config.put( "usePipe", true );
+		config.put( "waitForStartSignal", true );
+		config.put( "pipePort", port );
+		config.put( "results", new JSONObject().put( ResultsExporter.CFG_FILENAME_KEY, results.getAbsolutePath() ) );
+		File configFile = new File( this.workDir, "agent" + index + ".json" );
+		write( configFile, config );
+		
+		String java = System.getProperty( "java.home" ) + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder( java, "-cp", getClassPath(), "radlab.rain.Benchmark", configFile.getAbsolutePath() );
+		// The agents write their logs to their working directory
+		builder.directory( this.workDir );
+		builder.redirectErrorStream( true );
+		builder.redirectOutput( new File( this.workDir, "agent" + index + ".out" ) );
+		this.agents.add( builder.start() );
+		return results;
+	}
+	
+	private static JSONObject readFinalCard( File results ) throws Exception {
+		JSONObject card = null;
+		BufferedReader in = new BufferedReader( new FileReader( results ) );
+		String line = null;
+		while( ( line = in.readLine() ) != null ) {
+			JSONObject record = new JSONObject( line );
+			if( record.getString( "record" ).equals( ResultsExporter.FINAL_RECORD ) && record.getString( "track" ).equals( TRACK_NAME ) )
+				card = record.getJSONObject( "metrics" );
+		}
+		in.close();
+		assertNotNull( "No final results in: " + results, card );
+		return card;
+	}
+	
+	@Test( timeout = 120000 )
+	public void testFinalScorecardIsSumOfAgents() throws Exception {
+		JSONObject exporterConfig = new JSONObject();
+		exporterConfig.put( ResultsExporter.CFG_FILENAME_KEY, new File( this.workDir, "global.jsonl" ).getAbsolutePath() );
+		RecordingExporter exporter = new RecordingExporter( exporterConfig );
+		
+		Coordinator coordinator = new Coordinator();
+		coordinator.setStartDelay( 2000 );
+		coordinator.setPollInterval( 500 );
+		coordinator.setResultsExporter( exporter );
+		
+		LinkedList<File> agentResults = new LinkedList<File>();
+		for( int i = 0; i < AGENT_COUNT; i++ ) {
+			int port = getFreePort();
+			agentResults.add( this.startAgent( i, port ) );
+			coordinator.addAgent( "localhost", port );
+		}
+		
+		coordinator.connect( 30000 );
+		coordinator.assign();
+		coordinator.startAgents();
+		coordinator.collect();
+		PrintStream report = new PrintStream( new FileOutputStream( new File( this.workDir, "coordinator.out" ) ) );
+		coordinator.printStatistics( report );
+		report.close();
+		assertFalse( "Lost an agent", coordinator.lostAgents() );
+		
+		for( Process agent : this.agents )
+			agent.waitFor();
+		
+		LinkedList<JSONObject> cards = new LinkedList<JSONObject>();
+		for( File results : agentResults )
+			cards.add( readFinalCard( results ) );
+		
+		assertEquals( 1, exporter.finalCards.size() );
+		JSONObject global = exporter.finalCards.getFirst();
+		assertEquals( AGENT_COUNT, global.getInt( "agents" ) );
+		
+		for( String counter : CARD_COUNTERS ) {
+			long sum = 0;
+			for( JSONObject card : cards )
+				sum += card.getLong( counter );
+			assertEquals( counter, sum, global.getLong( counter ) );
+		}
+		
+		// Every agent did part of the work
+		for( JSONObject card : cards )
+			assertTrue( card.getLong( "operationsSuccessful" ) > 0 );
+		
+		JSONObject globalOperations = global.getJSONObject( "operations" );
+		int operationCount = 0;
+		for( JSONObject card : cards ) {
+			Iterator<?> names = card.getJSONObject( "operations" ).keys();
+			while( names.hasNext() )
+				assertTrue( globalOperations.has( (String) names.next() ) );
+		}
+		
+		Iterator<?> names = globalOperations.keys();
+		while( names.hasNext() ) {
+			String name = (String) names.next();
+			JSONObject operation = globalOperations.getJSONObject( name );
+			operationCount++;
+			
+			double min = Double.MAX_VALUE;
+			double max = 0.0;
+			double totalResponseTime = 0.0;
+			for( String counter : OPERATION_COUNTERS ) {
+				long sum = 0;
+				for( JSONObject card : cards ) {
+					JSONObject agentOperation = card.getJSONObject( "operations" ).optJSONObject( name );
+					if( agentOperation != null )
+						sum += agentOperation.getLong( counter );
+				}
+				assertEquals( name + " " + counter, sum, operation.getLong( counter ) );
+			}
+			for( JSONObject card : cards ) {
+				JSONObject agentOperation = card.getJSONObject( "operations" ).optJSONObject( name );
+				if( agentOperation == null || agentOperation.getLong( "succeeded" ) == 0 )
+					continue;
+				min = Math.min( min, agentOperation.getDouble( "minResponseTime" ) );
+				max = Math.max( max, agentOperation.getDouble( "maxResponseTime" ) );
+				totalResponseTime += agentOperation.getDouble( "averageResponseTime" ) * agentOperation.getLong( "succeeded" );
+			}
+			if( operation.getLong( "succeeded" ) == 0 )
+				continue;
+			assertEquals( name + " min", min, operation.getDouble( "minResponseTime" ), 1e-9 );
+			assertEquals( name + " max", max, operation.getDouble( "maxResponseTime" ), 1e-9 );
+			assertEquals( name + " average", totalResponseTime / operation.getLong( "succeeded" ), operation.getDouble( "averageResponseTime" ), 1e-6 );
+		}
+		assertTrue( operationCount > 0 );
+	}
+	
+	private static Coordinator runAgainst( FakeAgent agent ) throws Exception {
+		Coordinator coordinator = new Coordinator();
+		coordinator.setStartDelay( 0 );
+		coordinator.setPollInterval( 200 );
+		coordinator.setAgentTimeout( 2000 );
+		coordinator.addAgent( "localhost", agent.getPort() );
+		coordinator.connect( 5000 );
+		coordinator.assign();
+		coordinator.startAgents();
+		coordinator.collect();
+		return coordinator;
+	}
+	
+	@Test( timeout = 30000 )
+	public void testGivesUpOnStuckAgent() throws Exception {
+		FakeAgent agent = new FakeAgent( false );
+		agent.start();
+		try {
+			long start = System.currentTimeMillis();
+			Coordinator coordinator = runAgainst( agent );
+			assertTrue( coordinator.lostAgents() );
+			// Not before the end of the run (1 sec) plus the agent timeout (2 secs)
+			assertTrue( System.currentTimeMillis() - start >= 3000 );
+		}
+		finally {
+			agent.close();
+		}
+	}
+	
+	@Test( timeout = 30000 )
+	public void testFailedAgentIsLost() throws Exception {
+		FakeAgent agent = new FakeAgent( true );
+		agent.start();
+		try {
+			long start = System.currentTimeMillis();
+			Coordinator coordinator = runAgainst( agent );
+			assertTrue( coordinator.lostAgents() );
+			assertTrue( System.currentTimeMillis() - start < 3000 );
+		}
+		finally {
+			agent.close();
+		}
+	}
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package radlab.rain.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import radlab.rain.Scorecard;
+import radlab.rain.ScorecardOutbox;
+import radlab.rain.communication.AgentAssignmentMessage;
+import radlab.rain.communication.AgentStatusReplyMessage;
+import radlab.rain.communication.BenchmarkStartMessage;
+import radlab.rain.communication.DynamicLoadProfileMessage;
+import radlab.rain.communication.FramedJsonCodec;
+import radlab.rain.communication.MessageHeader;
+import radlab.rain.communication.RainMessage;
+import radlab.rain.communication.ScorecardReplyMessage;
+import radlab.rain.communication.StatusMessage;
+import radlab.rain.communication.SubscriptionMessage;
+import radlab.rain.communication.TimeSeriesRequestMessage;
+import radlab.rain.communication.TrackListReplyMessage;
+
+public class FramedJsonCodecTest {
+	
+	// Sends a message through a frame and reads it back
+	private static JSONObject roundTrip( JSONObject message ) throws IOException, JSONException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FramedJsonCodec.writeFrame( out, message );
+		ByteArrayInputStream in = new ByteArrayInputStream( out.toByteArray() );
+		JSONObject read = FramedJsonCodec.readFrame( in );
+		assertEquals( "Frame not fully read", 0, in.available() );
+		return read;
+	}
+	
+	private static RainMessage decode( JSONObject request ) throws IOException, JSONException {
+		return FramedJsonCodec.decode( roundTrip( request ) );
+	}
+	
+	private static JSONObject profile( String track, long interval, int users, String mix ) throws JSONException {
+		JSONObject profile = new JSONObject();
+		profile.put( "track", track );
+		profile.put( "interval", interval );
+		profile.put( "users", users );
+		profile.put( "mix", mix );
+		return profile;
+	}
+	
+	@Test
+	public void testFrameLayout() throws Exception {
+		JSONObject message = new JSONObject();
+		message.put( FramedJsonCodec.TYPE_KEY, MessageHeader.TRACK_LIST_REQUEST_MSG_TYPE );
+		message.put( FramedJsonCodec.ID_KEY, 7 );
+		ByteBuffer frame = FramedJsonCodec.encodeFrame( message );
+		byte[] body = message.toString().getBytes( FramedJsonCodec.CHARSET );
+		assertEquals( 4 + body.length, frame.remaining() );
+		assertEquals( body.length, frame.getInt() );
+		byte[] rest = new byte[frame.remaining()];
+		frame.get( rest );
+		assertArrayEquals( body, rest );
+	}
+	
+	@Test
+	public void testLoadProfile() throws Exception {
+		JSONObject request = profile( "track1", 30, 100, "browse" );
+		request.put( FramedJsonCodec.TYPE_KEY, MessageHeader.DYNAMIC_LOAD_PROFILE_MSG_TYPE );
+		request.put( "transitionTime", 5 );
+		request.put( "name", "peak" );
+		
+		DynamicLoadProfileMessage msg = (DynamicLoadProfileMessage) decode( request );
+		assertEquals( MessageHeader.DYNAMIC_LOAD_PROFILE_MSG_TYPE, msg._header._messageType );
+		assertEquals( "track1", msg._destTrackName );
+		assertEquals( 30, msg._interval );
+		assertEquals( 5, msg._transitionTime );
+		assertEquals( 100, msg._numberOfUsers );
+		assertEquals( "browse", msg._mixName );
+		assertEquals( "peak", msg._name );
+		assertEquals( 0, msg._additionalProfiles.size() );
+	}
+	
+	@Test
+	public void testLoadProfiles() throws Exception {
+		JSONArray profiles = new JSONArray();
+		profiles.put( profile( "track1", 30, 100, "browse" ) );
+		profiles.put( profile( "track2", 60, 20, "buy" ) );
+		profiles.put( profile( "track3", 10, 1, "mixed" ) );
+		JSONObject request = new JSONObject();
+		request.put( FramedJsonCodec.TYPE_KEY, MessageHeader.DYNAMIC_LOAD_PROFILE_MSG_TYPE );
+		request.put( "profiles", profiles );
+		
+		DynamicLoadProfileMessage msg = (DynamicLoadProfileMessage) decode( request );
+		assertEquals( 3, msg.getProfileMessages().size() );
+		int i = 0;
+		for( DynamicLoadProfileMessage each : msg.getProfileMessages() ) {
+			JSONObject expected = profiles.getJSONObject( i++ );
+			assertEquals( expected.getString( "track" ), each._destTrackName );
+			assertEquals( expected.getLong( "interval" ), each._interval );
+			assertEquals( expected.getInt( "users" ), each._numberOfUsers );
+			assertEquals( expected.getString( "mix" ), each._mixName );
+			assertEquals( 0, each._transitionTime );
+			assertEquals( "", each._name );
+		}
+	}
+	
+	@Test( expected = JSONException.class )
+	public void testEmptyLoadProfiles() throws Exception {
+		JSONObject request = new JSONObject();
+		request.put( FramedJsonCodec.TYPE_KEY, MessageHeader.DYNAMIC_LOAD_PROFILE_MSG_TYPE );
+		request.put( "profiles", new JSONArray() );
+		decode( request );
+	}
+	
+	@Test
+	public void testRequests() throws Exception {
+		JSONObject start = new JSONObject();
+		start.put( FramedJsonCodec.TYPE_KEY, MessageHeader.BENCHMARK_START_MSG_TYPE );
+		start.put( "startTime", 1234567890123L );
+		assertEquals( 1234567890123L, ( (BenchmarkStartMessage) decode( start ) )._controllerTimestamp );
+		
+		JSONObject series = new JSONObject();
+		series.put( FramedJsonCodec.TYPE_KEY, MessageHeader.TIME_SERIES_REQUEST_MSG_TYPE );
+		series.put( "track", "track1" );
+		series.put( "from", 1000 );
+		TimeSeriesRequestMessage seriesMsg = (TimeSeriesRequestMessage) decode( series );
+		assertEquals( "track1", seriesMsg._destTrackName );
+		assertNull( seriesMsg._operationName );
+		assertEquals( 1000, seriesMsg._fromTime );
+		assertEquals( Long.MAX_VALUE, seriesMsg._toTime );
+		
+		JSONObject firstUser = new JSONObject();
+		firstUser.put( "track1", 50 );
+		JSONObject userCount = new JSONObject();
+		userCount.put( "track1", 25 );
+		userCount.put( "track2", 0 );
+		JSONObject assignment = new JSONObject();
+		assignment.put( FramedJsonCodec.TYPE_KEY, MessageHeader.AGENT_ASSIGNMENT_MSG_TYPE );
+		assignment.put( "agentIndex", 2 );
+		assignment.put( "agentCount", 3 );
+		assignment.put( "firstUser", firstUser );
+		assignment.put( "userCount", userCount );
+		AgentAssignmentMessage assignmentMsg = (AgentAssignmentMessage) decode( assignment );
+		assertEquals( 2, assignmentMsg._agentIndex );
+		assertEquals( 3, assignmentMsg._agentCount );
+		assertEquals( 50, assignmentMsg.getFirstUser( "track1" ) );
+		assertEquals( 25, assignmentMsg.getUserCount( "track1" ) );
+		assertEquals( 0, assignmentMsg.getFirstUser( "track2" ) );
+		assertEquals( 0, assignmentMsg.getUserCount( "track2" ) );
+		
+		JSONObject unsubscribe = new JSONObject();
+		unsubscribe.put( FramedJsonCodec.TYPE_KEY, MessageHeader.UNSUBSCRIBE_MSG_TYPE );
+		unsubscribe.put( "tracks", new JSONArray().put( "track1" ).put( "track2" ) );
+		SubscriptionMessage subscriptionMsg = (SubscriptionMessage) decode( unsubscribe );
+		assertFalse( subscriptionMsg.isSubscribe() );
+		assertEquals( 2, subscriptionMsg._trackNames.size() );
+		assertEquals( "track2", subscriptionMsg._trackNames.getLast() );
+	}
+	
+	@Test
+	public void testUnknownType() throws Exception {
+		JSONObject request = new JSONObject();
+		request.put( FramedJsonCodec.TYPE_KEY, MessageHeader.SCORECARD_PUSH_MSG_TYPE );
+		assertNull( decode( request ) );
+	}
+	
+	@Test
+	public void testReplies() throws Exception {
+		StatusMessage status = new StatusMessage();
+		status._statusCode = MessageHeader.OK;
+		status._trackStatusCodes.put( "track1", MessageHeader.ERROR );
+		JSONObject statusJson = roundTrip( FramedJsonCodec.encode( status ) );
+		assertEquals( MessageHeader.STATUS_MSG_TYPE, statusJson.getInt( FramedJsonCodec.TYPE_KEY ) );
+		assertEquals( MessageHeader.OK, statusJson.getInt( "statusCode" ) );
+		assertEquals( MessageHeader.ERROR, statusJson.getJSONObject( "trackStatusCodes" ).getInt( "track1" ) );
+		
+		TrackListReplyMessage tracks = new TrackListReplyMessage();
+		tracks._trackNames.add( "track1" );
+		tracks._trackNames.add( "track2" );
+		JSONArray trackNames = roundTrip( FramedJsonCodec.encode( tracks ) ).getJSONArray( "tracks" );
+		assertEquals( 2, trackNames.length() );
+		assertEquals( "track1", trackNames.getString( 0 ) );
+		assertEquals( "track2", trackNames.getString( 1 ) );
+		
+		AgentStatusReplyMessage agent = new AgentStatusReplyMessage();
+		agent._agentTimestamp = 1234567890123L;
+		agent._state = 2;
+		agent._trackMaxUsers.put( "track1", 400L );
+		agent._runDuration = 90000;
+		JSONObject agentJson = roundTrip( FramedJsonCodec.encode( agent ) );
+		assertEquals( 1234567890123L, agentJson.getLong( "agentTimestamp" ) );
+		assertEquals( 2, agentJson.getInt( "state" ) );
+		assertEquals( 400, agentJson.getJSONObject( "trackMaxUsers" ).getLong( "track1" ) );
+		assertEquals( 90000, agentJson.getLong( "runDuration" ) );
+	}
+	
+	@Test
+	public void testScorecardReply() throws Exception {
+		Scorecard card = new Scorecard( "final", 60.0, "track1" );
+		card._totalOpsInitiated = 12;
+		card._totalOpsSuccessful = 10;
+		card._totalOpsFailed = 2;
+		card._totalOpResponseTime = 5000000000L;
+		
+		ScorecardOutbox.Snapshot snapshot = new ScorecardOutbox.Snapshot();
+		snapshot._sequence = 9;
+		snapshot._trackName = "track1";
+		snapshot._final = true;
+		snapshot._card = card;
+		ScorecardReplyMessage reply = new ScorecardReplyMessage();
+		reply._finished = true;
+		reply._snapshots.add( snapshot );
+		
+		JSONObject json = roundTrip( FramedJsonCodec.encode( reply ) );
+		assertEquals( MessageHeader.SCORECARD_REPLY_MSG_TYPE, json.getInt( FramedJsonCodec.TYPE_KEY ) );
+		assertTrue( json.getBoolean( "finished" ) );
+		assertFalse( json.getBoolean( "failed" ) );
+		JSONArray snapshots = json.getJSONArray( "snapshots" );
+		assertEquals( 1, snapshots.length() );
+		JSONObject s = snapshots.getJSONObject( 0 );
+		assertEquals( 9, s.getLong( "sequence" ) );
+		assertEquals( "track1", s.getString( "track" ) );
+		assertEquals( 0, s.getInt( "activation" ) );
+		assertTrue( s.getBoolean( "final" ) );
+		JSONObject cardJson = s.getJSONObject( "scorecard" );
+		assertEquals( "final", cardJson.getString( "name" ) );
+		assertEquals( 10, cardJson.getLong( "operationsSuccessful" ) );
+		assertEquals( 2, cardJson.getLong( "operationsFailed" ) );
+		assertEquals( 0.5, cardJson.getDouble( "averageResponseTime" ), 1e-9 );
+	}
+	
+	@Test
+	public void testPipelinedFrames() throws Exception {
+		// Several requests in flight on one connection keep their ids and order
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for( int id = 1; id <= 3; id++ ) {
+			JSONObject request = new JSONObject();
+			request.put( FramedJsonCodec.TYPE_KEY, MessageHeader.SCORECARD_REQUEST_MSG_TYPE );
+			request.put( FramedJsonCodec.ID_KEY, id );
+			request.put( "afterSequence", id * 10 );
+			FramedJsonCodec.writeFrame( out, request );
+		}
+		ByteArrayInputStream in = new ByteArrayInputStream( out.toByteArray() );
+		for( int id = 1; id <= 3; id++ ) {
+			JSONObject request = FramedJsonCodec.readFrame( in );
+			assertEquals( id, request.getInt( FramedJsonCodec.ID_KEY ) );
+			assertEquals( id * 10, request.getLong( "afterSequence" ) );
+		}
+		assertEquals( 0, in.available() );
+	}
+	
+	@Test
+	public void testNonAsciiText() throws Exception {
+		String track = "tr\u00e4ck-\u6f22\u5b57";
+		JSONObject request = new JSONObject();
+		request.put( FramedJsonCodec.TYPE_KEY, MessageHeader.SUBSCRIBE_MSG_TYPE );
+		request.put( "tracks", new JSONArray().put( track ) );
+		ByteBuffer frame = FramedJsonCodec.encodeFrame( request );
+		// The length counts bytes, not characters
+		assertEquals( frame.remaining() - 4, frame.getInt( 0 ) );
+		
+		SubscriptionMessage msg = (SubscriptionMessage) decode( request );
+		assertTrue( msg.isSubscribe() );
+		assertEquals( track, msg._trackNames.getFirst() );
+	}
+	
+	@Test( expected = IOException.class )
+	public void testOversizedFrame() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new DataOutputStream( out ).writeInt( FramedJsonCodec.MAX_FRAME_BYTES + 1 );
+		FramedJsonCodec.readFrame( new ByteArrayInputStream( out.toByteArray() ) );
+	}
+	
+	@Test( expected = IOException.class )
+	public void testTruncatedFrame() throws Exception {
+		JSONObject request = new JSONObject();
+		request.put( FramedJsonCodec.TYPE_KEY, MessageHeader.TRACK_LIST_REQUEST_MSG_TYPE );
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FramedJsonCodec.writeFrame( out, request );
+		byte[] bytes = out.toByteArray();
+		FramedJsonCodec.readFrame( new ByteArrayInputStream( bytes, 0, bytes.length - 1 ) );
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package radlab.rain.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import radlab.rain.util.HistogramSamplingStrategy;
+
+public class HistogramSamplingStrategyTest {
+	
+	private static final double[] PERCENTILES = { 0.0, 1.0, 10.0, 25.0, 50.0, 75.0, 90.0, 95.0, 99.0, 99.9, 100.0 };
+	private static final int SAMPLES = 100000;
+	
+	private Random random = new Random( 42 );
+	
+	// The value at the percentile of a sorted array, the way the histogram counts it
+	private static long referencePercentile( long[] sorted, double pct ) {
+		int index = (int) Math.ceil( ( pct / 100.0 ) * sorted.length ) - 1;
+		return sorted[Math.max( 0, Math.min( sorted.length - 1, index ) )];
+	}
+	
+	private static void assertPercentiles( HistogramSamplingStrategy histogram, long[] values, double relativeError ) {
+		long[] sorted = values.clone();
+		Arrays.sort( sorted );
+		for( double pct : PERCENTILES ) {
+			long expected = referencePercentile( sorted, pct );
+			long actual = histogram.getPercentile( pct );
+			long tolerance = (long) ( expected * relativeError ) + 1;
+			assertTrue( pct + "th percentile: " + actual + " vs. " + expected, Math.abs( actual - expected ) <= tolerance );
+		}
+	}
+	
+	private static HistogramSamplingStrategy record( HistogramSamplingStrategy histogram, long[] values, int from, int to ) {
+		for( int i = from; i < to; i++ )
+			histogram.accept( values[i] );
+		return histogram;
+	}
+	
+	private long[] uniform( long max ) {
+		long[] values = new long[SAMPLES];
+		for( int i = 0; i < values.length; i++ )
+			values[i] = (long) ( random.nextDouble() * max );
+		return values;
+	}
+	
+	private long[] exponential( double mean ) {
+		long[] values = new long[SAMPLES];
+		for( int i = 0; i < values.length; i++ )
+			values[i] = (long) ( -mean * Math.log( 1.0 - random.nextDouble() ) );
+		return values;
+	}
+	
+	// Mostly fast responses with a slow mode 100x out
+	private long[] bimodal() {
+		long[] values = new long[SAMPLES];
+		for( int i = 0; i < values.length; i++ ) {
+			if( random.nextDouble() < 0.95 )
+				values[i] = 2000000 + (long) ( random.nextGaussian() * 200000 );
+			else values[i] = 200000000 + (long) ( random.nextGaussian() * 20000000 );
+			values[i] = Math.max( 0, values[i] );
+		}
+		return values;
+	}
+	
+	@Test
+	public void testPercentilesWithinPrecision() {
+		for( int digits = 1; digits <= 3; digits++ ) {
+			double relativeError = Math.pow( 10, -digits );
+			long[][] distributions = { uniform( 1000000 ), exponential( 100000000 ), bimodal() };
+			for( long[] values : distributions ) {
+				HistogramSamplingStrategy histogram = record( new HistogramSamplingStrategy( digits, HistogramSamplingStrategy.DEFAULT_MAX_VALUE ), values, 0, values.length );
+				assertEquals( values.length, histogram.getTotalCount() );
+				assertEquals( 0, histogram.getClampedCount() );
+				assertPercentiles( histogram, values, relativeError );
+			}
+		}
+	}
+	
+	@Test
+	public void testSmallValuesAreExact() {
+		HistogramSamplingStrategy histogram = new HistogramSamplingStrategy();
+		long[] values = new long[100];
+		for( int i = 0; i < values.length; i++ )
+			values[i] = i + 1;
+		record( histogram, values, 0, values.length );
+		assertPercentiles( histogram, values, 0.0 );
+		assertEquals( 50.5, histogram.getSampleMean(), 1e-9 );
+	}
+	
+	@Test
+	public void testMergeSameLayoutIsLossless() {
+		long[] values = exponential( 5000000 );
+		HistogramSamplingStrategy all = record( new HistogramSamplingStrategy(), values, 0, values.length );
+		HistogramSamplingStrategy lhs = record( new HistogramSamplingStrategy(), values, 0, values.length / 3 );
+		HistogramSamplingStrategy rhs = record( lhs.createEmptyCopy(), values, values.length / 3, values.length );
+		lhs.merge( rhs );
+		
+		assertEquals( all.getTotalCount(), lhs.getTotalCount() );
+		assertEquals( all.getMinObserved(), lhs.getMinObserved() );
+		assertEquals( all.getMaxObserved(), lhs.getMaxObserved() );
+		assertEquals( all.getSampleMean(), lhs.getSampleMean(), 1e-6 * all.getSampleMean() );
+		for( double pct : PERCENTILES )
+			assertEquals( all.getPercentile( pct ), lhs.getPercentile( pct ) );
+	}
+	
+	@Test
+	public void testMergeDifferentLayout() {
+		long[] values = bimodal();
+		// Finer precision and a smaller max value on one side
+		HistogramSamplingStrategy lhs = record( new HistogramSamplingStrategy( 3, 10L * 1000000000L ), values, 0, values.length / 2 );
+		HistogramSamplingStrategy rhs = record( new HistogramSamplingStrategy( 2, HistogramSamplingStrategy.DEFAULT_MAX_VALUE ), values, values.length / 2, values.length );
+		lhs.merge( rhs );
+		
+		assertEquals( values.length, lhs.getTotalCount() );
+		// Values from the coarser side are off by up to its precision, plus ours
+		assertPercentiles( lhs, values, 0.01 + 0.001 );
+	}
+	
+	@Test
+	public void testMergeEmpty() {
+		HistogramSamplingStrategy histogram = record( new HistogramSamplingStrategy(), new long[] { 10, 20, 30 }, 0, 3 );
+		histogram.merge( new HistogramSamplingStrategy() );
+		assertEquals( 3, histogram.getTotalCount() );
+		assertEquals( 30, histogram.getPercentile( 100.0 ) );
+	}
+	
+	@Test
+	public void testClamping() {
+		long maxValue = 1000000;
+		HistogramSamplingStrategy histogram = new HistogramSamplingStrategy( 2, maxValue );
+		histogram.accept( -5 );
+		histogram.accept( 500 );
+		histogram.accept( maxValue * 10 );
+		
+		assertEquals( 3, histogram.getTotalCount() );
+		assertEquals( 2, histogram.getClampedCount() );
+		// Negative values count as 0, values above the max as the max
+		assertEquals( 0, histogram.getPercentile( 0.0 ) );
+		long top = histogram.getPercentile( 100.0 );
+		assertTrue( "100th percentile: " + top, top >= maxValue && top <= maxValue + maxValue / 100 );
+		
+		// Clamped values stay clamped when merged
+		HistogramSamplingStrategy merged = histogram.createEmptyCopy();
+		merged.merge( histogram );
+		assertEquals( 2, merged.getClampedCount() );
+		assertEquals( top, merged.getPercentile( 100.0 ) );
+	}
+	
+	@Test( expected = IllegalArgumentException.class )
+	public void testBadPrecision() {
+		new HistogramSamplingStrategy( 6, HistogramSamplingStrategy.DEFAULT_MAX_VALUE );
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package radlab.rain.test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import radlab.rain.util.storage.LongZipfKeyGenerator;
+
+public class LongZipfKeyGeneratorTest {
+	
+	// Exposes the scramble
+	private static class ScrambleProbe extends LongZipfKeyGenerator {
+		public ScrambleProbe( long minKey, long maxKey, long seed ) {
+			super( 1.0, minKey, maxKey, seed );
+		}
+		
+		public long scramble( long rank ) {
+			return this.permute( rank );
+		}
+	}
+	
+	@Test
+	public void testScrambleIsBijection() {
+		long[] keyCounts = { 1, 2, 3, 7, 8, 9, 1000, 1024, 65537 };
+		long[] seeds = { 0, 1, 42, -7 };
+		for( long keyCount : keyCounts ) {
+			for( long seed : seeds ) {
+				ScrambleProbe probe = new ScrambleProbe( 0, keyCount - 1, seed );
+				boolean[] seen = new boolean[(int) keyCount];
+				for( long rank = 0; rank < keyCount; rank++ ) {
+					long key = probe.scramble( rank );
+					assertTrue( "Key " + key + " out of [0, " + keyCount + ")", key >= 0 && key < keyCount );
+					assertFalse( "Key " + key + " hit twice (keyCount " + keyCount + ", seed " + seed + ")", seen[(int) key] );
+					seen[(int) key] = true;
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testScrambleIsInjectiveOnHugeKeyspace() {
+		// Too big to enumerate: distinct ranks must still give distinct keys in range
+		long keyCount = 5000000000L;
+		ScrambleProbe probe = new ScrambleProbe( 0, keyCount - 1, 3 );
+		HashSet<Long> keys = new HashSet<Long>();
+		Random random = new Random( 11 );
+		for( int i = 0; i < 100000; i++ ) {
+			long rank = ( i < 50000 ) ? i : (long) ( random.nextDouble() * keyCount );
+			long key = probe.scramble( rank );
+			assertTrue( key >= 0 && key < keyCount );
+			if( i < 50000 )
+				assertTrue( "Key " + key + " hit twice", keys.add( key ) );
+		}
+	}
+	
+	@Test
+	public void testKeysInRange() {
+		long minKey = 3000000000L;
+		long maxKey = 3000999999L;
+		LongZipfKeyGenerator generator = new LongZipfKeyGenerator( 0.99, minKey, maxKey, 17 );
+		Random random = new Random( 17 );
+		for( int i = 0; i < 100000; i++ ) {
+			long key = generator.generateLongKey( random );
+			assertTrue( "Key " + key + " out of range", key >= minKey && key <= maxKey );
+		}
+	}
+	
+	@Test
+	public void testUnscrambledMostPopularKeyIsMinKey() {
+		LongZipfKeyGenerator generator = new LongZipfKeyGenerator( 1.5, 100, 10099, 5, false );
+		Random random = new Random( 5 );
+		int[] counts = new int[10];
+		for( int i = 0; i < 100000; i++ ) {
+			long key = generator.generateLongKey( random );
+			if( key < 110 )
+				counts[(int) ( key - 100 )]++;
+		}
+		for( int i = 1; i < counts.length; i++ )
+			assertTrue( "Key " + ( 100 + i ) + " more popular than key " + ( 99 + i ), counts[i] < counts[i - 1] );
+	}
+	
+	@Test
+	public void testSeedChangesScramble() {
+		ScrambleProbe lhs = new ScrambleProbe( 0, 999999, 1 );
+		ScrambleProbe rhs = new ScrambleProbe( 0, 999999, 2 );
+		int same = 0;
+		for( long rank = 0; rank < 1000; rank++ ) {
+			if( lhs.scramble( rank ) == rhs.scramble( rank ) )
+				same++;
+		}
+		assertTrue( same < 10 );
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import radlab.rain.DefaultScenarioTrack;
+import radlab.rain.Generator;
+import radlab.rain.LoadGenerationStrategy;
+import radlab.rain.Operation;
+import radlab.rain.OperationExecution;
+import radlab.rain.Scoreboard;
+import radlab.rain.util.TokenBucket;
+
+public class RateLimitTest {
+	
+	private static final long IDLE_MSECS = 2;
+	private static final long MAX_QUEUEING_NANOS = 15000000;
+	
+	private DefaultScenarioTrack track;
+	private RecordingScoreboard scoreboard;
+	private ExecutorService workPool;
+	private LoadGenerationStrategy lgStrategy;
+	
+	// Keeps every result dropped off instead of tallying them
+	private static class RecordingScoreboard extends Scoreboard {
+		public Vector<Long> executionNanos = new Vector<Long>();
+		public Vector<Long> queueingNanos = new Vector<Long>();
+		
+		public RecordingScoreboard() {
+			super( "throttled" );
+		}
+		
+		public void dropOff( OperationExecution result ) {
+			this.executionNanos.add( result.getExecutionTimeNanos() );
+			this.queueingNanos.add( result.getQueueingDelayNanos() );
+		}
+	}
+	
+	// An operation against a target that is never busy
+	private static class IdleOperation extends Operation {
+		public IdleOperation( String name, Scoreboard scoreboard ) {
+			super( true, scoreboard );
+			this._operationName = name;
+			this.setAsync( true );
+		}
+		
+		public void prepare( Generator generator ) {}
+		
+		public void execute() throws Throwable {
+			Thread.sleep( IDLE_MSECS );
+		}
+		
+		public void cleanup() {}
+	}
+	
+	@Before
+	public void setUp() {
+		track = new DefaultScenarioTrack( "throttled", null );
+		scoreboard = new RecordingScoreboard();
+		workPool = Executors.newFixedThreadPool( 4 );
+		Generator generator = new Generator( track ) {
+			public long getThinkTime() { return 0; }
+			public long getCycleTime() { return 0; }
+			public Operation nextRequest( int lastOperation ) { return null; }
+			public void initialize() {}
+			public void dispose() {}
+		};
+		lgStrategy = new LoadGenerationStrategy( generator, 1 ) {
+			public void run() {}
+			public void dispose() {}
+		};
+		lgStrategy.setSharedWorkPool( workPool );
+	}
+	
+	@After
+	public void tearDown() throws InterruptedException {
+		workPool.shutdown();
+		workPool.awaitTermination( 5, TimeUnit.SECONDS );
+	}
+	
+	private void issue( String operationName, int count ) throws InterruptedException {
+		for( int i = 0; i < count; i++ )
+			lgStrategy.doOperation( new IdleOperation( operationName, scoreboard ) );
+		workPool.shutdown();
+		assertTrue( workPool.awaitTermination( 5, TimeUnit.SECONDS ) );
+		assertEquals( count, scoreboard.queueingNanos.size() );
+	}
+	
+	private void assertNotQueued() {
+		for( int i = 0; i < scoreboard.queueingNanos.size(); i++ ) {
+			long corrected = scoreboard.queueingNanos.get( i ) + scoreboard.executionNanos.get( i );
+			long execution = scoreboard.executionNanos.get( i );
+			assertTrue( "Corrected response time " + corrected + " ns vs. execution time " + execution + " ns",
+					corrected - execution < MAX_QUEUEING_NANOS );
+		}
+	}
+	
+	@Test
+	public void testTrackRateLimitIsNotQueueing() throws InterruptedException {
+		// 20 ops/sec, every operation but the first waits 50 ms for its token
+		track.getRateLimiter().setRate( 20, 1 );
+		long start = System.nanoTime();
+		issue( "Idle", 10 );
+		long elapsedMsecs = ( System.nanoTime() - start ) / 1000000;
+		
+		assertTrue( "Took " + elapsedMsecs + " ms", elapsedMsecs >= 400 );
+		assertNotQueued();
+	}
+	
+	@Test
+	public void testOperationRateLimitIsNotQueueing() throws InterruptedException {
+		track.getRateLimiter().setRate( 100, 1 );
+		TokenBucket operationRateLimiter = new TokenBucket( 20, 1 );
+		track.getOperationRateLimiters().put( "Idle", operationRateLimiter );
+		long start = System.nanoTime();
+		issue( "Idle", 10 );
+		long elapsedMsecs = ( System.nanoTime() - start ) / 1000000;
+		
+		assertTrue( "Took " + elapsedMsecs + " ms", elapsedMsecs >= 400 );
+		assertNotQueued();
+		// The track's tokens are taken once the operation's are good, so they
+		// are (nearly) always there
+		assertTrue( track.getRateLimiter().getTotalWaitNanos() < operationRateLimiter.getTotalWaitNanos() / 10 );
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import radlab.rain.util.storage.KeyGenerator;
+import radlab.rain.util.storage.LongZipfKeyGenerator;
+import radlab.rain.util.storage.StorageLoadProfile;
+
+public class StorageLoadProfileTest {
+	
+	private static StorageLoadProfile profile( long minKey, long maxKey, int numHotObjects ) throws JSONException {
+		JSONObject keyGeneratorConfig = new JSONObject();
+		keyGeneratorConfig.put( KeyGenerator.A_CONFIG_KEY, 0.99 );
+		keyGeneratorConfig.put( KeyGenerator.MIN_KEY_CONFIG_KEY, minKey );
+		keyGeneratorConfig.put( KeyGenerator.MAX_KEY_CONFIG_KEY, maxKey );
+		keyGeneratorConfig.put( KeyGenerator.RNG_SEED_KEY, 7 );
+		
+		JSONObject profileObj = new JSONObject();
+		profileObj.put( "interval", 60 );
+		profileObj.put( "users", 10 );
+		profileObj.put( "mix", "default" );
+		profileObj.put( StorageLoadProfile.CFG_LOAD_PROFILE_REQUEST_SIZE_KEY, 4096 );
+		profileObj.put( StorageLoadProfile.CFG_LOAD_PROFILE_READ_PCT_KEY, 0.9 );
+		profileObj.put( StorageLoadProfile.CFG_LOAD_PROFILE_WRITE_PCT_KEY, 0.1 );
+		profileObj.put( StorageLoadProfile.CFG_LOAD_PROFILE_KEY_GENERATOR_KEY, LongZipfKeyGenerator.class.getName() );
+		profileObj.put( StorageLoadProfile.CFG_LOAD_PROFILE_KEY_GENERATOR_CONFIG_KEY, keyGeneratorConfig );
+		profileObj.put( StorageLoadProfile.CFG_HOT_TRAFFIC_FRACTION_KEY, 0.5 );
+		profileObj.put( StorageLoadProfile.CFG_NUM_HOT_OBJECTS_KEY, numHotObjects );
+		return new StorageLoadProfile( profileObj );
+	}
+	
+	@Test
+	public void testHotObjectsSpanLongKeyspace() throws JSONException {
+		long minKey = 3000000000L;
+		long maxKey = 9000000000L;
+		StorageLoadProfile profile = profile( minKey, maxKey, 1000 );
+		assertEquals( 1000, profile.getHotObjectList().size() );
+		
+		long above = 0;
+		for( long key : profile.getHotObjectList() ) {
+			assertTrue( "Key " + key + " out of range", key >= minKey && key <= maxKey );
+			assertTrue( profile.isHotObject( key ) );
+			if( key > ( minKey + maxKey ) / 2 )
+				above++;
+		}
+		// Uniform over the whole range, not just the int view of it
+		assertTrue( above > 400 && above < 600 );
+		assertFalse( profile.isHotObject( minKey - 1 ) );
+	}
+	
+	@Test
+	public void testHotObjectsRespectMinKey() throws JSONException {
+		StorageLoadProfile profile = profile( 1000, 1099, 50 );
+		assertEquals( 50, profile.getHotObjectSet().size() );
+		for( long key : profile.getHotObjectList() )
+			assertTrue( "Key " + key + " out of range", key >= 1000 && key <= 1099 );
+	}
+	
+	@Test( expected = JSONException.class )
+	public void testTooManyHotObjects() throws JSONException {
+		profile( 0, 9, 10 );
+	}
+	
+	@Test
+	public void testUniformKeyCoversRange() {
+		Random random = new Random( 3 );
+		int[] counts = new int[10];
+		for( int i = 0; i < 100000; i++ ) {
+			long key = StorageLoadProfile.uniformKey( random, -5, 5 );
+			assertTrue( key >= -5 && key < 5 );
+			counts[(int) ( key + 5 )]++;
+		}
+		for( int count : counts )
+			assertTrue( count > 9000 && count < 11000 );
+	}
+	
+	@Test
+	public void testUniformKeyOnOverflowingRange() {
+		Random random = new Random( 3 );
+		for( int i = 0; i < 10000; i++ ) {
+			long key = StorageLoadProfile.uniformKey( random, Long.MIN_VALUE / 2, Long.MAX_VALUE );
+			assertTrue( key >= Long.MIN_VALUE / 2 );
+		}
+	}
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package radlab.rain.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import radlab.rain.util.TraceLogReader;
+import radlab.rain.util.TraceLogWriter;
+
+public class TraceLogTest {
+	
+	private static final String TRACK_NAME = "trace-001";
+	// The magic, version, flags, track name and creation time
+	private static final int HEADER_LENGTH = 4 + 2 + 1 + 4 + TRACK_NAME.length() + 8;
+	
+	private File workDir;
+	
+	@Before
+	public void setUp() throws IOException {
+		workDir = File.createTempFile("tracelog", "");
+		workDir.delete();
+		assertTrue(workDir.mkdir());
+	}
+	
+	@After
+	public void tearDown() {
+		if (workDir == null)
+			return;
+		File[] files = workDir.listFiles();
+		for (int i = 0; files != null && i < files.length; i++)
+			files[i].delete();
+		workDir.delete();
+	}
+	
+	private TraceLogWriter newWriter(boolean compress, double rotateMBytes) throws JSONException {
+		JSONObject config = new JSONObject();
+		config.put(TraceLogWriter.CFG_DIRECTORY_KEY, workDir.getAbsolutePath());
+		config.put(TraceLogWriter.CFG_COMPRESS_KEY, compress);
+		config.put(TraceLogWriter.CFG_ROTATE_SIZE_KEY, rotateMBytes);
+		config.put(TraceLogWriter.CFG_BLOCK_SIZE_KEY, 1);
+		TraceLogWriter writer = new TraceLogWriter(TRACK_NAME, config);
+		writer.start();
+		return writer;
+	}
+	
+	private static List<TraceLogWriter.Record> records(int count) {
+		List<TraceLogWriter.Record> records = new ArrayList<TraceLogWriter.Record>();
+		for (int i = 0; i < count; i++) {
+			if (i % 5 == 4)
+				records.add(new TraceLogWriter.Record(TraceLogWriter.ERROR_RECORD, 1000L + i, "Op" + (i % 3), "thread-" + (i % 4), 0, TraceLogWriter.STATUS_FAILED,
+						Arrays.asList("java.io.IOException: failed " + i, "Foo.bar(Foo.java:" + i + ")")));
+			else
+				records.add(new TraceLogWriter.Record(TraceLogWriter.TRACE_RECORD, 1000L + i, "Op" + (i % 3), "thread-" + (i % 4), 1234567L * i, TraceLogWriter.STATUS_SUCCEEDED,
+						Arrays.asList("/item?id=" + i, "/caf\u00e9/" + i)));
+		}
+		return records;
+	}
+	
+	private List<TraceLogWriter.Record> write(TraceLogWriter writer, List<TraceLogWriter.Record> records) {
+		for (TraceLogWriter.Record record : records)
+			assertTrue(writer.offer(record));
+		writer.close();
+		assertEquals(0, writer.getDropped());
+		assertEquals(records.size(), writer.getRecordsWritten());
+		return records;
+	}
+	
+	private List<TraceLogWriter.Record> read(TraceLogWriter writer) throws IOException {
+		List<TraceLogWriter.Record> read = new ArrayList<TraceLogWriter.Record>();
+		for (int i = 0; i < writer.getFilesWritten(); i++) {
+			TraceLogReader reader = new TraceLogReader(writer.getFile(i));
+			try {
+				assertEquals(TRACK_NAME, reader.getTrackName());
+				TraceLogWriter.Record record = null;
+				while ((record = reader.next()) != null)
+					read.add(record);
+			} finally {
+				reader.close();
+			}
+		}
+		return read;
+	}
+	
+	private static void assertSameRecords(List<TraceLogWriter.Record> expected, List<TraceLogWriter.Record> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			TraceLogWriter.Record e = expected.get(i);
+			TraceLogWriter.Record a = actual.get(i);
+			assertEquals(e._type, a._type);
+			assertEquals(e._timestamp, a._timestamp);
+			assertEquals(e._operationName, a._operationName);
+			assertEquals(e._threadName, a._threadName);
+			assertEquals(e._latencyNanos, a._latencyNanos);
+			assertEquals(e._status, a._status);
+			assertEquals(e._lines, a._lines);
+		}
+	}
+	
+	@Test
+	public void testRoundTripCompressed() throws Exception {
+		TraceLogWriter writer = newWriter(true, 64);
+		List<TraceLogWriter.Record> records = write(writer, records(1000));
+		assertEquals(1, writer.getFilesWritten());
+		assertSameRecords(records, read(writer));
+	}
+	
+	@Test
+	public void testRoundTripUncompressed() throws Exception {
+		TraceLogWriter writer = newWriter(false, 64);
+		List<TraceLogWriter.Record> records = write(writer, records(1000));
+		assertFalse(new TraceLogReader(writer.getFile(0)).isCompressed());
+		assertSameRecords(records, read(writer));
+	}
+	
+	@Test
+	public void testRotatedFilesReadOnTheirOwn() throws Exception {
+		// About 4 KB per file, so the names have to be interned again in every file
+		TraceLogWriter writer = newWriter(true, 4.0 / 1024);
+		List<TraceLogWriter.Record> records = write(writer, records(2000));
+		assertTrue(writer.getFilesWritten() > 1);
+		assertSameRecords(records, read(writer));
+	}
+	
+	@Test(timeout = 10000)
+	public void testTruncatedFile() throws Exception {
+		for (boolean compress : new boolean[] { true, false }) {
+			TraceLogWriter writer = newWriter(compress, 64);
+			write(writer, records(1000));
+			File file = writer.getFile(0);
+			byte[] bytes = readFile(file);
+			int firstBlockEnd = HEADER_LENGTH + 8 + readInt(bytes, HEADER_LENGTH + 4);
+			assertTrue(firstBlockEnd < bytes.length);
+			
+			// In the middle of the lengths of the next block
+			truncate(file, firstBlockEnd + 3);
+			assertCorrupt(file);
+			// Ending between blocks is fine
+			truncate(file, firstBlockEnd);
+			assertTrue(readAll(file) > 0);
+			// In the middle of the data of the first block
+			truncate(file, firstBlockEnd - 10);
+			assertCorrupt(file);
+			file.delete();
+		}
+	}
+	
+	@Test(timeout = 10000)
+	public void testTruncatedCompressedData() throws Exception {
+		TraceLogWriter writer = newWriter(true, 64);
+		write(writer, records(100));
+		File file = writer.getFile(0);
+		byte[] bytes = readFile(file);
+		
+		int header = HEADER_LENGTH;
+		int rawLength = readInt(bytes, header);
+		int storedLength = readInt(bytes, header + 4);
+		
+		// A first block that is consistent on disk but whose deflated data stops halfway
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buffer);
+		out.write(bytes, 0, header);
+		out.writeInt(rawLength);
+		out.writeInt(storedLength / 2);
+		out.write(bytes, header + 8, storedLength / 2);
+		out.close();
+		OutputStream file2 = new FileOutputStream(file);
+		file2.write(buffer.toByteArray());
+		file2.close();
+		
+		assertCorrupt(file);
+	}
+	
+	@Test
+	public void testOfferAfterCloseIsDropped() throws Exception {
+		TraceLogWriter writer = newWriter(true, 64);
+		List<TraceLogWriter.Record> records = write(writer, records(10));
+		assertFalse(writer.offer(records.get(0)));
+		assertEquals(1, writer.getDropped());
+		assertEquals(0, writer.getPending());
+		assertSameRecords(records, read(writer));
+	}
+	
+	@Test
+	public void testEveryRecordIsWrittenOrDroppedAcrossClose() throws Exception {
+		final TraceLogWriter writer = newWriter(true, 64);
+		final List<TraceLogWriter.Record> records = records(100);
+		final int[] offered = new int[1];
+		Thread producer = new Thread() {
+			public void run() {
+				for (int i = 0; i < 200000; i++) {
+					writer.offer(records.get(i % records.size()));
+					offered[0]++;
+				}
+			}
+		};
+		producer.start();
+		Thread.sleep(20);
+		writer.close();
+		producer.join();
+		
+		assertEquals(0, writer.getPending());
+		assertEquals(offered[0], writer.getRecordsWritten() + writer.getDropped());
+		assertEquals(writer.getRecordsWritten(), read(writer).size());
+	}
+	
+	private static void truncate(File file, long length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(length);
+		raf.close();
+	}
+	
+	private static void assertCorrupt(File file) throws IOException {
+		assertEquals(-1, readAll(file));
+	}
+	
+	/** Returns the number of records in the file, or -1 if reading it fails. */
+	private static int readAll(File file) throws IOException {
+		TraceLogReader reader = new TraceLogReader(file);
+		int count = 0;
+		try {
+			while (reader.next() != null)
+				count++;
+			return count;
+		} catch (IOException e) {
+			return -1;
+		} finally {
+			reader.close();
+		}
+	}
+	
+	private static byte[] readFile(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] bytes = new byte[(int) file.length()];
+			int n = 0;
+			while (n < bytes.length)
+				n += in.read(bytes, n, bytes.length - n);
+			return bytes;
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static int readInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16) | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+	}
+}
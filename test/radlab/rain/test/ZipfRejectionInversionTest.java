@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2010, Regents of the University of California
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the University of California, Berkeley
+ * nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package radlab.rain.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import radlab.rain.util.ZipfRejectionInversion;
+
+public class ZipfRejectionInversionTest {
+	
+	private static final int SAMPLES = 1000000;
+	
+	// Compares the sampled frequency of every rank with the exact Zipf pmf
+	private static void assertZipf( int n, double exponent ) {
+		double norm = 0.0;
+		for( int k = 1; k <= n; k++ )
+			norm += Math.pow( k, -exponent );
+		
+		ZipfRejectionInversion zipf = new ZipfRejectionInversion( n, exponent );
+		Random random = new Random( 1234 );
+		long[] counts = new long[n + 1];
+		for( int i = 0; i < SAMPLES; i++ ) {
+			long rank = zipf.sample( random );
+			assertTrue( "Rank " + rank + " out of [1, " + n + "]", rank >= 1 && rank <= n );
+			counts[(int) rank]++;
+		}
+		
+		for( int k = 1; k <= n; k++ ) {
+			double p = Math.pow( k, -exponent ) / norm;
+			// Five standard deviations of the binomial count
+			double tolerance = 5.0 * Math.sqrt( SAMPLES * p * ( 1.0 - p ) ) + 1.0;
+			assertEquals( "n = " + n + ", exponent = " + exponent + ", rank " + k, SAMPLES * p, counts[k], tolerance );
+		}
+	}
+	
+	@Test
+	public void testMatchesPmf() {
+		assertZipf( 10, 0.5 );
+		assertZipf( 10, 1.0 );
+		assertZipf( 50, 0.99 );
+		assertZipf( 50, 1.2 );
+		assertZipf( 20, 3.0 );
+	}
+	
+	@Test
+	public void testSingleElement() {
+		ZipfRejectionInversion zipf = new ZipfRejectionInversion( 1, 1.1 );
+		Random random = new Random( 1 );
+		for( int i = 0; i < 1000; i++ )
+			assertEquals( 1, zipf.sample( random ) );
+	}
+	
+	@Test
+	public void testHugeRange() {
+		long n = Long.MAX_VALUE / 2;
+		double[] exponents = { 0.1, 0.5, 1.0, 2.0 };
+		for( double exponent : exponents ) {
+			ZipfRejectionInversion zipf = new ZipfRejectionInversion( n, exponent );
+			Random random = new Random( 99 );
+			for( int i = 0; i < 100000; i++ ) {
+				long rank = zipf.sample( random );
+				assertTrue( "Rank " + rank + " out of range", rank >= 1 && rank <= n );
+			}
+		}
+	}
+	
+	@Test
+	public void testDeterministic() {
+		ZipfRejectionInversion zipf = new ZipfRejectionInversion( 1000000, 0.8 );
+		Random lhs = new Random( 5 );
+		Random rhs = new Random( 5 );
+		for( int i = 0; i < 1000; i++ )
+			assertEquals( zipf.sample( lhs ), zipf.sample( rhs ) );
+	}
+	
+	@Test( expected = IllegalArgumentException.class )
+	public void testNoElements() {
+		new ZipfRejectionInversion( 0, 1.0 );
+	}
+	
+	@Test( expected = IllegalArgumentException.class )
+	public void testBadExponent() {
+		new ZipfRejectionInversion( 10, 0.0 );
+	}
+}